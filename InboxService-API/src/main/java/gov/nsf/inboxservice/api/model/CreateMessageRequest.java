@@ -8,6 +8,8 @@ import java.util.List;
 
 /**
  * Wrapper for CreateMessage requests
+ *
+ * Recipients are listed in lanIds, named in groups whose stored members the service expands, or both
  */
 @JsonInclude(JsonInclude.Include.ALWAYS)
 @JsonIgnoreProperties(ignoreUnknown = true)
@@ -15,6 +17,10 @@ import java.util.List;
 public class CreateMessageRequest {
     private Message message;
     private List<String> lanIds;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private DedupeMode dedupe;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<String> groups;
 
     public CreateMessageRequest(){
 
@@ -25,6 +31,19 @@ public class CreateMessageRequest {
         this.lanIds = lanIds;
     }
 
+    public CreateMessageRequest(Message message, List<String> lanIds, DedupeMode dedupe){
+        this.message = message;
+        this.lanIds = lanIds;
+        this.dedupe = dedupe;
+    }
+
+    public CreateMessageRequest(Message message, List<String> lanIds, List<String> groups, DedupeMode dedupe){
+        this.message = message;
+        this.lanIds = lanIds;
+        this.groups = groups;
+        this.dedupe = dedupe;
+    }
+
     public Message getMessage() {
         return message;
     }
@@ -40,4 +59,30 @@ public class CreateMessageRequest {
     public void setLanIds(List<String> lanIds) {
         this.lanIds = lanIds;
     }
+
+    /**
+     * Returns how recipients with an identical active message are treated, null for DedupeMode.None
+     *
+     * @return DedupeMode
+     */
+    public DedupeMode getDedupe() {
+        return dedupe;
+    }
+
+    public void setDedupe(DedupeMode dedupe) {
+        this.dedupe = dedupe;
+    }
+
+    /**
+     * Returns the names of the recipient groups whose members also receive the message, null if none
+     *
+     * @return List of group names
+     */
+    public List<String> getGroups() {
+        return groups;
+    }
+
+    public void setGroups(List<String> groups) {
+        this.groups = groups;
+    }
 }
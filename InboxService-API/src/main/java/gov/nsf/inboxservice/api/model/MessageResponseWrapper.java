@@ -18,6 +18,9 @@ public class MessageResponseWrapper extends BaseResponseWrapper {
 
     private List<Message> messages;
 
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextCursor; //Opaque paging cursor, null when there are no more messages
+
 
     public MessageResponseWrapper(){
 
@@ -38,4 +41,12 @@ public class MessageResponseWrapper extends BaseResponseWrapper {
     public void setMessage(List<Message> messages) {
         this.messages = messages;
     }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
 }
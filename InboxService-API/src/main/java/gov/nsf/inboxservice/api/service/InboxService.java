@@ -1,12 +1,18 @@
 package gov.nsf.inboxservice.api.service;
 
+import gov.nsf.common.exception.FormValidationException;
 import gov.nsf.common.exception.RollbackException;
 import gov.nsf.common.model.BaseResponseWrapper;
 import gov.nsf.common.model.ExpirationFilter;
+import gov.nsf.inboxservice.api.model.DedupeMode;
+import gov.nsf.inboxservice.api.model.DeleteMessagesResponseWrapper;
 import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessageCountResponseWrapper;
 import gov.nsf.inboxservice.api.model.MessageResponseWrapper;
+import gov.nsf.inboxservice.api.model.RecipientGroupResponseWrapper;
 
 import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -39,6 +45,56 @@ public interface InboxService {
      */
     public MessageResponseWrapper getMessages(String lanId, ExpirationFilter activeFilter) throws RollbackException;
 
+    /**
+     * Retrieves one page of messages for the passed user's lan ID filtered by the "active" parameter
+     *
+     * Messages are ordered by creation date. The returned wrapper carries a next cursor
+     * when more messages are available
+     *
+     * @param lanId
+     *      - the user's lan ID
+     * @param activeFilter
+     *      - the expiration filter, see getMessages(String, ExpirationFilter)
+     * @param limit
+     *      - the maximum number of messages to return
+     * @param after
+     *      - the next cursor of the previous page, null for the first page
+     * @return MessageResponseWrapper containing the retrieved Message objects and the next cursor
+     * @throws RollbackException
+     */
+    public MessageResponseWrapper getMessages(String lanId, ExpirationFilter activeFilter, int limit, String after) throws RollbackException;
+
+    /**
+     * Retrieves one page of message headers for the passed user's lan ID filtered by the "active" parameter
+     *
+     * Same as getMessages(String, ExpirationFilter, int, String) but the returned messages have no summary
+     *
+     * @param lanId
+     *      - the user's lan ID
+     * @param activeFilter
+     *      - the expiration filter, see getMessages(String, ExpirationFilter)
+     * @param limit
+     *      - the maximum number of messages to return
+     * @param after
+     *      - the next cursor of the previous page, null for the first page
+     * @return MessageResponseWrapper containing the retrieved Message headers and the next cursor
+     * @throws RollbackException
+     */
+    public MessageResponseWrapper getMessageHeaders(String lanId, ExpirationFilter activeFilter, int limit, String after) throws RollbackException;
+
+    /**
+     * Retrieves the number of messages for the passed user's lan ID per message type and priority
+     *
+     * Each count carries the totals for the ACTIVE, INACTIVE and ALL filters. Only messages still in the
+     * inbox are counted, messages the sweeper moved to the archive are not, even though archive mode reads return them
+     *
+     * @param lanId
+     *      - the user's lan ID
+     * @return MessageCountResponseWrapper containing one MessageCount per type and priority
+     * @throws RollbackException
+     */
+    public MessageCountResponseWrapper getMessageCounts(String lanId) throws RollbackException;
+
     /**
      * Stores the message for the given list of user lan IDs
      *
@@ -51,6 +107,130 @@ public interface InboxService {
      */
     public MessageResponseWrapper createMessage(Message message, List<String> lanIds) throws RollbackException;
 
+    /**
+     * Stores the message for the given list of user lan IDs, skipping or refreshing the recipients that already
+     * have an active message with the same content
+     *
+     * @param message
+     *      - the message to store
+     * @param lanIds
+     *      - the list of user's lan IDs
+     * @param dedupe
+     *      - how recipients with an identical active message are treated
+     * @return MessageResponseWrapper containing the created, skipped and refreshed Message objects
+     * @throws RollbackException
+     */
+    public MessageResponseWrapper createMessage(Message message, List<String> lanIds, DedupeMode dedupe) throws RollbackException;
+
+    /**
+     * Stores the message for the given lan IDs and for the members of the named recipient groups
+     *
+     * A recipient listed in lanIds or in several groups receives the message once
+     *
+     * @param message
+     *      - the message to store
+     * @param lanIds
+     *      - the list of user's lan IDs, may be empty when groups are passed
+     * @param groups
+     *      - the names of stored recipient groups
+     * @param dedupe
+     *      - how recipients with an identical active message are treated
+     * @return MessageResponseWrapper containing the created, skipped and refreshed Message objects
+     * @throws RollbackException
+     */
+    public MessageResponseWrapper createMessage(Message message, List<String> lanIds, List<String> groups, DedupeMode dedupe) throws RollbackException;
+
+    /**
+     * Adds and removes members of the named recipient group, creating the group on its first update
+     *
+     * @param groupName
+     *      - the group name
+     * @param add
+     *      - the lan IDs to add, may be null
+     * @param remove
+     *      - the lan IDs to remove, may be null
+     * @param version
+     *      - the group version the deltas were computed against, null to apply them to any version
+     * @param lastUpdtUser
+     *      - the user updating the group
+     * @return RecipientGroupResponseWrapper containing the updated group
+     * @throws FormValidationException if the group is no longer at the passed version
+     * @throws RollbackException
+     */
+    public RecipientGroupResponseWrapper updateRecipientGroup(String groupName, List<String> add, List<String> remove, Integer version, String lastUpdtUser) throws RollbackException, FormValidationException;
+
+    /**
+     * Retrieves the named recipient group's version and member count
+     *
+     * @param groupName
+     *      - the group name
+     * @return RecipientGroupResponseWrapper containing the group
+     * @throws RollbackException
+     */
+    public RecipientGroupResponseWrapper getRecipientGroup(String groupName) throws RollbackException;
+
+    /**
+     * Stores the passed message once as a global broadcast, shown to every user
+     *
+     * Broadcasts are merged into getMessages(String, ExpirationFilter) and the message counts at read time,
+     * under an ID starting with "B". A user deleting a broadcast through deleteMessageForUser only dismisses it for themselves
+     *
+     * @param message
+     *      - the broadcast message, its lan ID is ignored
+     * @return MessageResponseWrapper containing the stored broadcast
+     * @throws RollbackException
+     */
+    public MessageResponseWrapper createBroadcast(Message message) throws RollbackException;
+
+    /**
+     * Deletes the global broadcast for every user
+     *
+     * @param broadcastId
+     *      - the broadcast ID, "B" followed by an integer
+     * @return MessageResponseWrapper containing the deleted broadcast
+     * @throws RollbackException
+     */
+    public MessageResponseWrapper deleteBroadcast(String broadcastId) throws RollbackException;
+
+    /**
+     * Renders the registered template once per recipient and stores the rendered messages
+     *
+     * @param templateId
+     *      - the ID of the registered template
+     * @param recipients
+     *      - the values of the template's {name} placeholders keyed by recipient lan ID
+     * @param expirationDate
+     *      - the expiration date of the messages, required for Information templates
+     * @return MessageResponseWrapper containing the created Message objects
+     * @throws FormValidationException if a recipient is missing a placeholder value or a rendered message is invalid
+     * @throws RollbackException
+     */
+    public MessageResponseWrapper createTemplatedMessage(String templateId, Map<String, Map<String, String>> recipients, String expirationDate) throws RollbackException, FormValidationException;
+
+    /**
+     * Registers the passed message as a template, replacing the template stored under the same ID
+     *
+     * The summary, action link and action label may contain {name} placeholders
+     *
+     * @param templateId
+     *      - the template ID
+     * @param template
+     *      - the template message, its lan ID and expiration date are ignored
+     * @return MessageResponseWrapper containing the stored template
+     * @throws RollbackException
+     */
+    public MessageResponseWrapper saveMessageTemplate(String templateId, Message template) throws RollbackException;
+
+    /**
+     * Retrieves the template registered under the passed ID
+     *
+     * @param templateId
+     *      - the template ID
+     * @return MessageResponseWrapper containing the template
+     * @throws RollbackException
+     */
+    public MessageResponseWrapper getMessageTemplate(String templateId) throws RollbackException;
+
     /**
      * Deletes the stored message give its message ID
      * @param msgId
@@ -60,6 +240,30 @@ public interface InboxService {
      */
     public MessageResponseWrapper deleteMessage(String msgId) throws RollbackException;
 
+    /**
+     * Deletes the stored message given its message ID if it is owned by the passed user and is not a Task
+     *
+     * A global broadcast ID dismisses the broadcast for the user instead
+     *
+     * @param lanId
+     *      - the owner's lan ID
+     * @param msgId
+     *      - the integer message ID, or a broadcast ID
+     * @return MessageResponseWrapper containing the deleted Message object
+     * @throws RollbackException
+     */
+    public MessageResponseWrapper deleteMessageForUser(String lanId, String msgId) throws RollbackException;
+
+    /**
+     * Deletes the stored messages given their message IDs in a single transaction
+     *
+     * @param msgIds
+     *      - the integer message IDs
+     * @return DeleteMessagesResponseWrapper containing the outcome of each message ID
+     * @throws RollbackException
+     */
+    public DeleteMessagesResponseWrapper deleteMessages(List<String> msgIds) throws RollbackException;
+
     /**
      * Deletes all expired information messages for the passed user's lan ID
      *
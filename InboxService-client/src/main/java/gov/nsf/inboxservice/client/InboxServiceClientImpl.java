@@ -8,20 +8,33 @@ import gov.nsf.common.exception.RollbackException;
 import gov.nsf.common.model.BaseResponseWrapper;
 import gov.nsf.common.model.ExpirationFilter;
 import gov.nsf.inboxservice.api.model.CreateMessageRequest;
+import gov.nsf.inboxservice.api.model.CreateTemplatedMessageRequest;
+import gov.nsf.inboxservice.api.model.DedupeMode;
+import gov.nsf.inboxservice.api.model.DeleteMessagesRequest;
+import gov.nsf.inboxservice.api.model.DeleteMessagesResponseWrapper;
 import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessageCountResponseWrapper;
 import gov.nsf.inboxservice.api.model.MessageResponseWrapper;
+import gov.nsf.inboxservice.api.model.RecipientGroupResponseWrapper;
+import gov.nsf.inboxservice.api.model.UpdateRecipientGroupRequest;
 import gov.nsf.inboxservice.api.service.InboxService;
 import org.apache.commons.codec.binary.Base64;
 import org.springframework.http.*;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
 
 /**
@@ -29,11 +42,16 @@ import java.util.List;
  */
 public class InboxServiceClientImpl implements InboxService {
 
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 5000;
+
     private String inboxServiceURL;
     private String inboxServiceUserName;
     private String inboxServicePassword;
     private boolean authenticationRequired;
     private int requestTimeout;
+    private int createMessageRetries = 2;
+    private long retryBackoffMillis = 200;
 
 
     @Override
@@ -65,16 +83,97 @@ public class InboxServiceClientImpl implements InboxService {
         return wrapper;
     }
 
+    @Override
+    public MessageResponseWrapper getMessages(String lanId, ExpirationFilter activeFilter, int limit, String after) throws RollbackException {
+        return getMessagesPage(lanId, activeFilter, limit, after, true);
+    }
+
+    @Override
+    public MessageResponseWrapper getMessageHeaders(String lanId, ExpirationFilter activeFilter, int limit, String after) throws RollbackException {
+        return getMessagesPage(lanId, activeFilter, limit, after, false);
+    }
+
+    private MessageResponseWrapper getMessagesPage(String lanId, ExpirationFilter activeFilter, int limit, String after, boolean summary) throws RollbackException {
+
+        String URL = inboxServiceURL + "/users/" + lanId + "/messages?active=" + activeFilter.getCode() + "&limit=" + limit;
+        if (!summary) {
+            URL += "&summary=false";
+        }
+        if (after != null && !after.isEmpty()) {
+            try {
+                URL += "&after=" + URLEncoder.encode(after, "UTF-8");
+            } catch (UnsupportedEncodingException ex) {
+                throw new RollbackException(ex);
+            }
+        }
+        String responseBody = sendRequest(URL, HttpMethod.GET, null);
+        MessageResponseWrapper wrapper = null;
+        try {
+            wrapper = (MessageResponseWrapper)extractWrapperResponse(responseBody, MessageResponseWrapper.class, "messageResponseWrapper");
+        } catch (IOException ex){
+            throw new RollbackException(ex);
+        }
+
+        return wrapper;
+    }
+
+    @Override
+    public MessageCountResponseWrapper getMessageCounts(String lanId) throws RollbackException {
+
+        String URL = inboxServiceURL + "/users/" + lanId + "/messages/counts";
+        String responseBody = sendRequest(URL, HttpMethod.GET, null);
+        MessageCountResponseWrapper wrapper = null;
+        try {
+            wrapper = (MessageCountResponseWrapper)extractWrapperResponse(responseBody, MessageCountResponseWrapper.class, "messageCountResponseWrapper");
+        } catch (IOException ex){
+            throw new RollbackException(ex);
+        }
+
+        return wrapper;
+    }
+
     @Override
     public MessageResponseWrapper createMessage(Message message, List<String> lanIds) throws RollbackException {
+        return createMessage(message, lanIds, null);
+    }
+
+    @Override
+    public MessageResponseWrapper createMessage(Message message, List<String> lanIds, DedupeMode dedupe) throws RollbackException {
+        return createMessage(message, lanIds, null, dedupe);
+    }
+
+    @Override
+    public MessageResponseWrapper createMessage(Message message, List<String> lanIds, List<String> groups, DedupeMode dedupe) throws RollbackException {
         String jsonBody = null;
         try {
-           jsonBody = new ObjectMapper().writeValueAsString(new CreateMessageRequest(message, lanIds));
+           jsonBody = new ObjectMapper().writeValueAsString(new CreateMessageRequest(message, lanIds, groups, dedupe));
         } catch (JsonProcessingException e) {
             throw new RollbackException(e);
         }
 
+        //Retries carry the same key, so the service stores the messages once
         String URL = inboxServiceURL + "/messages";
+        String responseBody = sendRequest(URL, HttpMethod.POST, jsonBody, UUID.randomUUID().toString(), createMessageRetries);
+        MessageResponseWrapper wrapper = null;
+        try {
+            wrapper = (MessageResponseWrapper)extractWrapperResponse(responseBody, MessageResponseWrapper.class, "messageResponseWrapper");
+        } catch (IOException ex){
+            throw new RollbackException(ex);
+        }
+
+        return wrapper;
+    }
+
+    @Override
+    public MessageResponseWrapper createTemplatedMessage(String templateId, Map<String, Map<String, String>> recipients, String expirationDate) throws RollbackException {
+        String jsonBody = null;
+        try {
+            jsonBody = new ObjectMapper().writeValueAsString(new CreateTemplatedMessageRequest(templateId, recipients, expirationDate));
+        } catch (JsonProcessingException e) {
+            throw new RollbackException(e);
+        }
+
+        String URL = inboxServiceURL + "/messages/templated";
         String responseBody = sendRequest(URL, HttpMethod.POST, jsonBody);
         MessageResponseWrapper wrapper = null;
         try {
@@ -86,6 +185,113 @@ public class InboxServiceClientImpl implements InboxService {
         return wrapper;
     }
 
+    @Override
+    public MessageResponseWrapper saveMessageTemplate(String templateId, Message template) throws RollbackException {
+        String jsonBody = null;
+        try {
+            jsonBody = new ObjectMapper().writeValueAsString(template);
+        } catch (JsonProcessingException e) {
+            throw new RollbackException(e);
+        }
+
+        //Saving a template replaces it, so a retry is harmless
+        String URL = inboxServiceURL + "/templates/" + templateId;
+        String responseBody = sendRequest(URL, HttpMethod.PUT, jsonBody, null, createMessageRetries);
+        MessageResponseWrapper wrapper = null;
+        try {
+            wrapper = (MessageResponseWrapper)extractWrapperResponse(responseBody, MessageResponseWrapper.class, "messageResponseWrapper");
+        } catch (IOException ex){
+            throw new RollbackException(ex);
+        }
+
+        return wrapper;
+    }
+
+    @Override
+    public MessageResponseWrapper getMessageTemplate(String templateId) throws RollbackException {
+        String URL = inboxServiceURL + "/templates/" + templateId;
+        String responseBody = sendRequest(URL, HttpMethod.GET, null);
+        MessageResponseWrapper wrapper = null;
+        try {
+            wrapper = (MessageResponseWrapper)extractWrapperResponse(responseBody, MessageResponseWrapper.class, "messageResponseWrapper");
+        } catch (IOException ex){
+            throw new RollbackException(ex);
+        }
+
+        return wrapper;
+    }
+
+    @Override
+    public RecipientGroupResponseWrapper updateRecipientGroup(String groupName, List<String> add, List<String> remove, Integer version, String lastUpdtUser) throws RollbackException {
+        String jsonBody = null;
+        try {
+            jsonBody = new ObjectMapper().writeValueAsString(new UpdateRecipientGroupRequest(add, remove, version, lastUpdtUser));
+        } catch (JsonProcessingException e) {
+            throw new RollbackException(e);
+        }
+
+        String URL = inboxServiceURL + "/groups/" + groupName + "/members";
+        String responseBody = sendRequest(URL, HttpMethod.POST, jsonBody);
+        RecipientGroupResponseWrapper wrapper = null;
+        try {
+            wrapper = (RecipientGroupResponseWrapper)extractWrapperResponse(responseBody, RecipientGroupResponseWrapper.class, "recipientGroupResponseWrapper");
+        } catch (IOException ex){
+            throw new RollbackException(ex);
+        }
+
+        return wrapper;
+    }
+
+    @Override
+    public RecipientGroupResponseWrapper getRecipientGroup(String groupName) throws RollbackException {
+        String URL = inboxServiceURL + "/groups/" + groupName;
+        String responseBody = sendRequest(URL, HttpMethod.GET, null);
+        RecipientGroupResponseWrapper wrapper = null;
+        try {
+            wrapper = (RecipientGroupResponseWrapper)extractWrapperResponse(responseBody, RecipientGroupResponseWrapper.class, "recipientGroupResponseWrapper");
+        } catch (IOException ex){
+            throw new RollbackException(ex);
+        }
+
+        return wrapper;
+    }
+
+    @Override
+    public MessageResponseWrapper createBroadcast(Message message) throws RollbackException {
+        String jsonBody = null;
+        try {
+            jsonBody = new ObjectMapper().writeValueAsString(message);
+        } catch (JsonProcessingException e) {
+            throw new RollbackException(e);
+        }
+
+        //Not retried, a retry after a lost response would store the broadcast twice
+        String URL = inboxServiceURL + "/broadcasts";
+        String responseBody = sendRequest(URL, HttpMethod.POST, jsonBody);
+        MessageResponseWrapper wrapper = null;
+        try {
+            wrapper = (MessageResponseWrapper)extractWrapperResponse(responseBody, MessageResponseWrapper.class, "messageResponseWrapper");
+        } catch (IOException ex){
+            throw new RollbackException(ex);
+        }
+
+        return wrapper;
+    }
+
+    @Override
+    public MessageResponseWrapper deleteBroadcast(String broadcastId) throws RollbackException {
+        String URL = inboxServiceURL + "/broadcasts/" + broadcastId;
+        String responseBody = sendRequest(URL, HttpMethod.DELETE, null);
+        MessageResponseWrapper wrapper = null;
+        try {
+            wrapper = (MessageResponseWrapper)extractWrapperResponse(responseBody, MessageResponseWrapper.class, "messageResponseWrapper");
+        } catch (IOException ex){
+            throw new RollbackException(ex);
+        }
+
+        return wrapper;
+    }
+
     @Override
     public MessageResponseWrapper deleteMessage(String msgId) throws RollbackException {
         String URL = inboxServiceURL + "/messages/" + msgId;
@@ -100,6 +306,42 @@ public class InboxServiceClientImpl implements InboxService {
         return wrapper;
     }
 
+    @Override
+    public MessageResponseWrapper deleteMessageForUser(String lanId, String msgId) throws RollbackException {
+        String URL = inboxServiceURL + "/users/" + lanId + "/messages/" + msgId;
+        String responseBody = sendRequest(URL, HttpMethod.DELETE, null);
+        MessageResponseWrapper wrapper = null;
+        try {
+            //The session user route returns the deleted message under the base wrapper name
+            wrapper = (MessageResponseWrapper)extractWrapperResponse(responseBody, MessageResponseWrapper.class, "baseResponseWrapper");
+        } catch (IOException ex){
+            throw new RollbackException(ex);
+        }
+
+        return wrapper;
+    }
+
+    @Override
+    public DeleteMessagesResponseWrapper deleteMessages(List<String> msgIds) throws RollbackException {
+        String jsonBody = null;
+        try {
+            jsonBody = new ObjectMapper().writeValueAsString(new DeleteMessagesRequest(msgIds));
+        } catch (JsonProcessingException e) {
+            throw new RollbackException(e);
+        }
+
+        String URL = inboxServiceURL + "/messages/delete";
+        String responseBody = sendRequest(URL, HttpMethod.POST, jsonBody);
+        DeleteMessagesResponseWrapper wrapper = null;
+        try {
+            wrapper = (DeleteMessagesResponseWrapper)extractWrapperResponse(responseBody, DeleteMessagesResponseWrapper.class, "deleteMessagesResponseWrapper");
+        } catch (IOException ex){
+            throw new RollbackException(ex);
+        }
+
+        return wrapper;
+    }
+
     @Override
     public BaseResponseWrapper deleteExpiredMessages(String lanId) throws RollbackException {
         String URL = inboxServiceURL + "/users/" + lanId + "/messages";
@@ -150,6 +392,20 @@ public class InboxServiceClientImpl implements InboxService {
     }
 
     private String sendRequest(String URL, HttpMethod httpMethod, String jsonBody ){
+        return sendRequest(URL, httpMethod, jsonBody, null, 0);
+    }
+
+    /**
+     * Sends the request, sending it again up to retries times after a timeout, connection failure or server error
+     *
+     * Each retry waits a random time of up to retryBackoffMillis, doubled per attempt, so the clients that failed
+     * together do not all retry together
+     *
+     * @param idempotencyKey - Idempotency-Key header value, null to send none
+     * @param retries - only for requests the service can safely repeat
+     * @return the body of the last response
+     */
+    private String sendRequest(String URL, HttpMethod httpMethod, String jsonBody, String idempotencyKey, int retries){
 
         RestTemplate restTemplate = null;
 
@@ -165,22 +421,58 @@ public class InboxServiceClientImpl implements InboxService {
         } else {
             httpEntity = new HttpEntity<String>(jsonBody, getBaseHeaders());
         }
+        if (idempotencyKey != null) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.putAll(httpEntity.getHeaders());
+            headers.set(IDEMPOTENCY_KEY_HEADER, idempotencyKey);
+            httpEntity = new HttpEntity<String>(jsonBody, headers);
+        }
 
         ResponseEntity<String> response = null;
         String responseBody = null;
 
-        try {
-            response = restTemplate.exchange(URL, httpMethod, httpEntity, String.class);
-            responseBody = response.getBody();
-        } catch (HttpClientErrorException ex) {
-            responseBody = ex.getResponseBodyAsString();
-        } catch (HttpServerErrorException ex){
-            responseBody = ex.getResponseBodyAsString();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                response = restTemplate.exchange(URL, httpMethod, httpEntity, String.class);
+                responseBody = response.getBody();
+                break;
+            } catch (HttpClientErrorException ex) {
+                responseBody = ex.getResponseBodyAsString();
+                break;
+            } catch (HttpServerErrorException ex){
+                responseBody = ex.getResponseBodyAsString();
+                if (attempt >= retries || !backoff(attempt)) {
+                    break;
+                }
+            } catch (ResourceAccessException ex) {
+                if (attempt >= retries || !backoff(attempt)) {
+                    throw ex;
+                }
+            }
         }
 
         return responseBody;
     }
 
+    /**
+     * Waits before the retry following the passed attempt
+     *
+     * @return false if interrupted, in which case the request is not retried
+     */
+    private boolean backoff(int attempt) {
+        long ceiling = Math.min(retryBackoffMillis << Math.min(attempt, 16), MAX_RETRY_BACKOFF_MILLIS);
+        if (ceiling <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
     public String getInboxServiceURL() {
         return inboxServiceURL;
     }
@@ -221,5 +513,31 @@ public class InboxServiceClientImpl implements InboxService {
         this.requestTimeout = requestTimeout;
     }
 
+    public int getCreateMessageRetries() {
+        return createMessageRetries;
+    }
+
+    /**
+     * Number of times createMessage is sent again after a timeout or server error, 0 to never retry
+     *
+     * @param createMessageRetries
+     */
+    public void setCreateMessageRetries(int createMessageRetries) {
+        this.createMessageRetries = createMessageRetries;
+    }
+
+    public long getRetryBackoffMillis() {
+        return retryBackoffMillis;
+    }
+
+    /**
+     * Upper bound of the random wait before the first retry, doubled for each further retry up to 5 seconds, 0 to retry at once
+     *
+     * @param retryBackoffMillis
+     */
+    public void setRetryBackoffMillis(long retryBackoffMillis) {
+        this.retryBackoffMillis = retryBackoffMillis;
+    }
+
 
 }
@@ -0,0 +1,209 @@
+package gov.nsf.inboxservice.cache;
+
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.common.model.ExpirationFilter;
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.common.util.Constants;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache of the global broadcasts
+ *
+ * Every inbox read merges the broadcasts into the user's messages, so the whole (small) list is kept in memory
+ * and reloaded once it is older than ttlMillis. Only one reader reloads at a time, readers arriving
+ * meanwhile wait for it and get the reloaded list.
+ *
+ * Creates and deletes on this node drop the list before the write and again after commit, and publish
+ * BROADCAST_INVALIDATION_KEY on the InvalidationChannel, a lan ID no user can have, so the other nodes drop theirs
+ * on their next poll. ttlMillis only bounds staleness when an invalidation is lost.
+ */
+@ManagedResource(objectName = "gov.nsf.inboxservice:name=BroadcastCache",
+        description = "Global broadcast cache")
+public class BroadcastCache {
+
+    private boolean enabled = true;
+    private long ttlMillis = Constants.DEFAULT_BROADCAST_CACHE_TTL_MILLIS;
+    private InvalidationChannel invalidationChannel;
+
+    private volatile Snapshot snapshot;
+    private final Object loadLock = new Object();
+
+    private final AtomicLong invalidationCount = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong remoteInvalidations = new AtomicLong();
+
+    /**
+     * Loads the broadcasts from the DB when the cached list is missing or expired
+     */
+    @FunctionalInterface
+    public interface Loader {
+        List<Message> load() throws RollbackException;
+    }
+
+    private static final class Snapshot {
+        private final List<Message> broadcasts;
+        private final long expiresMillis;
+
+        private Snapshot(List<Message> broadcasts, long expiresMillis) {
+            this.broadcasts = broadcasts;
+            this.expiresMillis = expiresMillis;
+        }
+    }
+
+    /**
+     * Returns every stored broadcast, loading them if the cached list is missing or expired
+     *
+     * @param loader
+     *      - reads the broadcasts from the DB
+     * @return List of Message objects, shared with the cache and not to be modified
+     * @throws RollbackException
+     */
+    public List<Message> getBroadcasts(Loader loader) throws RollbackException {
+        if( !enabled ){
+            return loader.load();
+        }
+
+        Snapshot current = snapshot;
+        if( current != null && System.currentTimeMillis() < current.expiresMillis ){
+            hits.incrementAndGet();
+            return current.broadcasts;
+        }
+
+        synchronized( loadLock ){
+            current = snapshot;
+            if( current != null && System.currentTimeMillis() < current.expiresMillis ){
+                hits.incrementAndGet();
+                return current.broadcasts;
+            }
+
+            long invalidationsBefore = invalidationCount.get();
+            List<Message> broadcasts = Collections.unmodifiableList(loader.load());
+            loads.incrementAndGet();
+            if( invalidationCount.get() == invalidationsBefore ){
+                snapshot = new Snapshot(broadcasts, System.currentTimeMillis() + ttlMillis);
+            }
+            return broadcasts;
+        }
+    }
+
+    /**
+     * Drops the cached broadcasts on this node, and again after commit inside a transaction, and publishes
+     * the invalidation to the other nodes
+     *
+     * @throws RollbackException
+     */
+    public void invalidate() throws RollbackException {
+        if( !enabled ){
+            return;
+        }
+
+        if( invalidationChannel != null ){
+            invalidationChannel.publish(Collections.singleton(Constants.BROADCAST_INVALIDATION_KEY));
+        }
+        clear();
+        if( TransactionSynchronizationManager.isSynchronizationActive() ){
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    clear();
+                }
+            });
+        }
+    }
+
+    /**
+     * Drops the cached broadcasts on this node if the invalidation received from another node is the broadcast key
+     *
+     * @param lanId
+     *      - the invalidated lan ID
+     */
+    public void evict(String lanId) {
+        if( lanId != null && Constants.BROADCAST_INVALIDATION_KEY.equals(lanId.trim()) ){
+            remoteInvalidations.incrementAndGet();
+            clear();
+        }
+    }
+
+    /**
+     * Returns the broadcasts matching the filter, the same way cached inboxes are filtered
+     *
+     * @param broadcasts
+     * @param filter
+     *      - the expiration filter
+     * @return List of Message objects
+     */
+    public static List<Message> filter(List<Message> broadcasts, ExpirationFilter filter) {
+        return InboxCache.filter(broadcasts, filter, System.currentTimeMillis());
+    }
+
+    /**
+     * Drops the cached broadcasts on this node
+     */
+    @ManagedOperation(description = "Drops the cached broadcasts on this node")
+    public void clear() {
+        invalidationCount.incrementAndGet();
+        snapshot = null;
+    }
+
+    @ManagedAttribute(description = "True if broadcast reads are served from the cache")
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @ManagedAttribute(description = "Milliseconds the broadcasts stay cached")
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public void setTtlMillis(long ttlMillis) {
+        if( ttlMillis < 1 ){
+            throw new IllegalArgumentException("ttlMillis must be greater than 0: " + ttlMillis);
+        }
+        this.ttlMillis = ttlMillis;
+    }
+
+    public InvalidationChannel getInvalidationChannel() {
+        return invalidationChannel;
+    }
+
+    public void setInvalidationChannel(InvalidationChannel invalidationChannel) {
+        this.invalidationChannel = invalidationChannel;
+        if( invalidationChannel != null ){
+            invalidationChannel.addListener(this::evict);
+        }
+    }
+
+    @ManagedAttribute(description = "Invalidations received from the other nodes")
+    public long getRemoteInvalidations() {
+        return remoteInvalidations.get();
+    }
+
+    @ManagedAttribute(description = "Reads served from the cached broadcasts")
+    public long getHits() {
+        return hits.get();
+    }
+
+    @ManagedAttribute(description = "Reads that loaded the broadcasts from the DB")
+    public long getLoads() {
+        return loads.get();
+    }
+
+    @ManagedAttribute(description = "Number of cached broadcasts")
+    public int getSize() {
+        Snapshot current = snapshot;
+        return current != null ? current.broadcasts.size() : 0;
+    }
+}
@@ -0,0 +1,124 @@
+package gov.nsf.inboxservice.cache;
+
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.inboxservice.common.util.Constants;
+import gov.nsf.inboxservice.dao.CacheInvalidationDao;
+import org.apache.log4j.Logger;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * InvalidationChannel backed by the dbo.inbx_cache_invl change table
+ *
+ * Invalidations are inserted in the publishing transaction, so other nodes only see committed changes.
+ * Every node polls the table on a schedule. Each poll re-reads the last overlapMillis of invalidations,
+ * which catches rows committed late by transactions that stamped them before the previous poll.
+ * Invalidations older than retentionMillis are deleted by whichever node polls.
+ */
+@ManagedResource(objectName = "gov.nsf.inboxservice:name=InboxCacheInvalidationChannel",
+        description = "Polls inbox cache invalidations from the DB")
+public class DbPolledInvalidationChannel implements InvalidationChannel {
+
+    private CacheInvalidationDao cacheInvalidationDao;
+    private long overlapMillis = Constants.DEFAULT_INVALIDATION_OVERLAP_MILLIS;
+    private long retentionMillis = Constants.DEFAULT_INVALIDATION_RETENTION_MILLIS;
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<Consumer<String>>();
+
+    private Timestamp lastPollTime;
+
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong failedPolls = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+
+    private static final Logger LOGGER = Logger.getLogger(DbPolledInvalidationChannel.class);
+
+    @Override
+    public void publish(Collection<String> lanIds) throws RollbackException {
+        getCacheInvalidationDao().insertInvalidations(lanIds);
+    }
+
+    @Override
+    public void addListener(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Passes the invalidations recorded since the previous poll to the listeners
+     *
+     * The first poll only records the DB time, there is nothing cached to invalidate yet.
+     * A failed poll is retried from the same point by the next one.
+     */
+    public synchronized void poll() {
+        try {
+            Timestamp now = getCacheInvalidationDao().getCurrentTime();
+            if( lastPollTime != null ){
+                for( String lanId : getCacheInvalidationDao().getInvalidatedLanIds(new Timestamp(lastPollTime.getTime() - overlapMillis)) ){
+                    received.incrementAndGet();
+                    for( Consumer<String> listener : listeners ){
+                        listener.accept(lanId);
+                    }
+                }
+                getCacheInvalidationDao().deleteInvalidations(new Timestamp(now.getTime() - retentionMillis));
+            }
+            lastPollTime = now;
+            polls.incrementAndGet();
+        } catch (RollbackException ex) {
+            failedPolls.incrementAndGet();
+            LOGGER.error(Constants.ERROR_POLLING_CACHE_INVALIDATIONS + ex.getErrMsg());
+        }
+    }
+
+    public CacheInvalidationDao getCacheInvalidationDao() {
+        return cacheInvalidationDao;
+    }
+
+    public void setCacheInvalidationDao(CacheInvalidationDao cacheInvalidationDao) {
+        this.cacheInvalidationDao = cacheInvalidationDao;
+    }
+
+    @ManagedAttribute(description = "Milliseconds of invalidations re-read by every poll")
+    public long getOverlapMillis() {
+        return overlapMillis;
+    }
+
+    public void setOverlapMillis(long overlapMillis) {
+        if( overlapMillis < 0 ){
+            throw new IllegalArgumentException("overlapMillis cannot be negative: " + overlapMillis);
+        }
+        this.overlapMillis = overlapMillis;
+    }
+
+    @ManagedAttribute(description = "Milliseconds invalidations are kept in the DB")
+    public long getRetentionMillis() {
+        return retentionMillis;
+    }
+
+    public void setRetentionMillis(long retentionMillis) {
+        if( retentionMillis < 1 ){
+            throw new IllegalArgumentException("retentionMillis must be greater than 0: " + retentionMillis);
+        }
+        this.retentionMillis = retentionMillis;
+    }
+
+    @ManagedAttribute(description = "Successful polls")
+    public long getPolls() {
+        return polls.get();
+    }
+
+    @ManagedAttribute(description = "Polls that failed with a DB error")
+    public long getFailedPolls() {
+        return failedPolls.get();
+    }
+
+    @ManagedAttribute(description = "Invalidations received, including this node's own")
+    public long getReceived() {
+        return received.get();
+    }
+}
@@ -0,0 +1,130 @@
+package gov.nsf.inboxservice.cache;
+
+import gov.nsf.inboxservice.common.util.Constants;
+import gov.nsf.inboxservice.dao.IdempotencyRecord;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recently used idempotency keys of create requests, so a retry on the same node replays the stored
+ * response without a DB round trip
+ *
+ * Only committed keys are cached. Keys never change once stored, so entries need no invalidation;
+ * the cache holds at most maxEntries keys and evicts the least recently used first.
+ */
+@ManagedResource(objectName = "gov.nsf.inboxservice:name=IdempotencyCache",
+        description = "Idempotency key cache")
+public class IdempotencyCache {
+
+    private boolean enabled = true;
+    private int maxEntries = Constants.DEFAULT_IDEMPOTENCY_CACHE_MAX_ENTRIES;
+
+    private final LinkedHashMap<String, IdempotencyRecord> entries = new LinkedHashMap<String, IdempotencyRecord>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Returns the cached record of the passed key
+     *
+     * @param key
+     *      - the idempotency key
+     * @return IdempotencyRecord, null if not cached
+     */
+    public IdempotencyRecord get(String key) {
+        if( !enabled ){
+            return null;
+        }
+
+        IdempotencyRecord record;
+        synchronized( this ){
+            record = entries.get(key);
+        }
+        (record != null ? hits : misses).incrementAndGet();
+        return record;
+    }
+
+    /**
+     * Caches the passed record, after commit inside a transaction
+     *
+     * @param record
+     */
+    public void put(IdempotencyRecord record) {
+        if( !enabled ){
+            return;
+        }
+
+        if( TransactionSynchronizationManager.isSynchronizationActive() ){
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    store(record);
+                }
+            });
+        } else {
+            store(record);
+        }
+    }
+
+    /**
+     * Drops every cached key on this node
+     */
+    @ManagedOperation(description = "Drops every cached idempotency key on this node")
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private synchronized void store(IdempotencyRecord record) {
+        entries.put(record.getKey(), record);
+
+        Iterator<Map.Entry<String, IdempotencyRecord>> eldest = entries.entrySet().iterator();
+        while( entries.size() > maxEntries && eldest.hasNext() ){
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    @ManagedAttribute(description = "True if idempotency keys are cached")
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @ManagedAttribute(description = "Maximum number of cached idempotency keys")
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        if( maxEntries < 1 ){
+            throw new IllegalArgumentException("maxEntries must be greater than 0: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    @ManagedAttribute(description = "Retries answered from the cache")
+    public long getHits() {
+        return hits.get();
+    }
+
+    @ManagedAttribute(description = "Keyed requests that went to the DB")
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @ManagedAttribute(description = "Number of cached idempotency keys")
+    public synchronized int getSize() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,468 @@
+package gov.nsf.inboxservice.cache;
+
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.common.model.ExpirationFilter;
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessageType;
+import gov.nsf.inboxservice.common.util.Constants;
+import gov.nsf.inboxservice.dao.MessageCursor;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache of each user's full inbox, keyed by lan ID
+ *
+ * Only the ALL list is stored, sorted by creation date and message ID. ACTIVE and INACTIVE lists
+ * and pages are derived from it in memory using the message type and expiration date.
+ *
+ * The cache is bounded by the estimated size of the cached messages and evicts the least recently
+ * used inboxes first. Entries also expire after ttlMillis, which bounds how long changes the cache
+ * is not told about (such as the expired message sweep) stay invisible.
+ *
+ * Invalidations are applied locally after the changing transaction commits and published to the
+ * other nodes through the InvalidationChannel.
+ *
+ * The cache is bypassed in archive mode, since archived messages cannot be told apart in memory.
+ */
+@ManagedResource(objectName = "gov.nsf.inboxservice:name=InboxCache",
+        description = "Per-user inbox cache")
+public class InboxCache {
+
+    private static final long ENTRY_OVERHEAD_BYTES = 64;
+    private static final long MESSAGE_OVERHEAD_BYTES = 160;
+
+    private static final Comparator<Message> CURSOR_ORDER = Comparator
+            .comparing((Message message) -> Timestamp.valueOf(message.getCreationDate().trim()))
+            .thenComparing(message -> Long.parseLong(message.getId().trim()));
+
+    private boolean enabled = true;
+    private boolean archiveEnabled;
+    private long maxWeightBytes = Constants.DEFAULT_INBOX_CACHE_MAX_WEIGHT_BYTES;
+    private long ttlMillis = Constants.DEFAULT_INBOX_CACHE_TTL_MILLIS;
+    private InvalidationChannel invalidationChannel;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long weightBytes;
+
+    private final AtomicLong invalidationCount = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong oversizedLoads = new AtomicLong();
+    private final AtomicLong localInvalidations = new AtomicLong();
+    private final AtomicLong remoteInvalidations = new AtomicLong();
+
+    private static final Logger LOGGER = Logger.getLogger(InboxCache.class);
+
+    /**
+     * Loads a user's full inbox from the DB on a cache miss
+     */
+    @FunctionalInterface
+    public interface Loader {
+        List<Message> load(String lanId) throws RollbackException;
+    }
+
+    private static final class Entry {
+        private final List<Message> messages;
+        private final long weightBytes;
+        private final long loadedMillis;
+
+        private Entry(List<Message> messages, long weightBytes, long loadedMillis) {
+            this.messages = messages;
+            this.weightBytes = weightBytes;
+            this.loadedMillis = loadedMillis;
+        }
+    }
+
+    /**
+     * Returns the user's messages matching the filter, loading the full inbox on a miss
+     *
+     * @param lanId
+     *      - the user's lan ID
+     * @param filter
+     *      - the expiration filter
+     * @param loader
+     *      - reads the user's ALL list from the DB
+     * @return List of Message objects, shared with the cache and not to be modified
+     * @throws RollbackException
+     */
+    public List<Message> getMessages(String lanId, ExpirationFilter filter, Loader loader) throws RollbackException {
+        if( !isEnabled() ){
+            return filter(loader.load(lanId), filter, System.currentTimeMillis());
+        }
+
+        List<Message> messages = getCachedMessages(lanId);
+        if( messages == null ){
+            messages = load(lanId, loader);
+        }
+        return filter(messages, filter, System.currentTimeMillis());
+    }
+
+    /**
+     * Returns one page of the user's messages matching the filter if the user's inbox is cached
+     *
+     * Pages are never loaded through the cache, so a miss costs a single page query rather than the full inbox
+     *
+     * @param lanId
+     *      - the user's lan ID
+     * @param filter
+     *      - the expiration filter
+     * @param limit
+     *      - the maximum number of messages to return
+     * @param after
+     *      - the position after which the page starts, null for the first page
+     * @param includeSummary
+     *      - false to return message headers
+     * @return List of Message objects, or null on a miss
+     */
+    public List<Message> getMessagesPage(String lanId, ExpirationFilter filter, int limit, MessageCursor after, boolean includeSummary) {
+        List<Message> messages = getCachedMessages(lanId);
+        if( messages == null ){
+            return null;
+        }
+
+        List<Message> page = new ArrayList<Message>(Math.min(limit, messages.size()));
+        long now = System.currentTimeMillis();
+        for( Message message : messages ){
+            if( page.size() == limit ){
+                break;
+            }
+            if( (after == null || isAfter(message, after)) && matches(message, filter, now) ){
+                page.add(includeSummary ? message : toHeader(message));
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Invalidates the passed users' inboxes on this node and publishes the invalidation to the other nodes
+     *
+     * Inside a transaction the local entries are dropped again after commit, so a read racing the
+     * transaction cannot cache the uncommitted state
+     *
+     * @param lanIds
+     *      - the users' lan IDs
+     * @throws RollbackException
+     */
+    public void invalidate(Collection<String> lanIds) throws RollbackException {
+        if( !isEnabled() || lanIds.isEmpty() ){
+            return;
+        }
+
+        if( invalidationChannel != null ){
+            invalidationChannel.publish(lanIds);
+        }
+        evictAll(lanIds, localInvalidations);
+        if( TransactionSynchronizationManager.isSynchronizationActive() ){
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    evictAll(lanIds, null);
+                }
+            });
+        }
+    }
+
+    /**
+     * Drops the user's inbox on this node after an invalidation from another node
+     *
+     * @param lanId
+     */
+    public void evict(String lanId) {
+        evictAll(Collections.singleton(lanId), remoteInvalidations);
+    }
+
+    /**
+     * Drops every cached inbox on this node
+     */
+    @ManagedOperation(description = "Drops every cached inbox on this node")
+    public synchronized void clear() {
+        invalidationCount.incrementAndGet();
+        entries.clear();
+        weightBytes = 0;
+    }
+
+    private void evictAll(Collection<String> lanIds, AtomicLong counter) {
+        invalidationCount.incrementAndGet();
+        synchronized( this ){
+            for( String lanId : lanIds ){
+                Entry entry = entries.remove(normalize(lanId));
+                if( entry != null ){
+                    weightBytes -= entry.weightBytes;
+                }
+            }
+        }
+        if( counter != null ){
+            counter.addAndGet(lanIds.size());
+        }
+    }
+
+    private List<Message> getCachedMessages(String lanId) {
+        if( !isEnabled() ){
+            return null;
+        }
+
+        String key = normalize(lanId);
+        synchronized( this ){
+            Entry entry = entries.get(key);
+            if( entry != null && System.currentTimeMillis() - entry.loadedMillis >= ttlMillis ){
+                entries.remove(key);
+                weightBytes -= entry.weightBytes;
+                expirations.incrementAndGet();
+                entry = null;
+            }
+            if( entry != null ){
+                hits.incrementAndGet();
+                return entry.messages;
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Loads the user's inbox and caches it unless it was invalidated while loading or is too large
+     */
+    private List<Message> load(String lanId, Loader loader) throws RollbackException {
+        long invalidationsBefore = invalidationCount.get();
+        List<Message> messages = new ArrayList<Message>(loader.load(lanId));
+        messages.sort(CURSOR_ORDER);
+        messages = Collections.unmodifiableList(messages);
+
+        long weight = weigh(messages);
+        if( weight > maxWeightBytes ){
+            oversizedLoads.incrementAndGet();
+            return messages;
+        }
+
+        synchronized( this ){
+            if( invalidationCount.get() != invalidationsBefore ){
+                return messages;
+            }
+            Entry previous = entries.put(normalize(lanId), new Entry(messages, weight, System.currentTimeMillis()));
+            weightBytes += weight - (previous != null ? previous.weightBytes : 0);
+
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while( weightBytes > maxWeightBytes && eldest.hasNext() ){
+                weightBytes -= eldest.next().getValue().weightBytes;
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Returns the messages matching the filter, derived the same way as the DB predicates on active_until
+     *
+     * @param messages
+     * @param filter
+     * @param now
+     * @return List of Message objects
+     */
+    protected static List<Message> filter(List<Message> messages, ExpirationFilter filter, long now) {
+        if( filter != ExpirationFilter.ACTIVE && filter != ExpirationFilter.INACTIVE ){
+            return new ArrayList<Message>(messages);
+        }
+
+        List<Message> filtered = new ArrayList<Message>();
+        for( Message message : messages ){
+            if( matches(message, filter, now) ){
+                filtered.add(message);
+            }
+        }
+        return filtered;
+    }
+
+    private static boolean matches(Message message, ExpirationFilter filter, long now) {
+        if( filter != ExpirationFilter.ACTIVE && filter != ExpirationFilter.INACTIVE ){
+            return true;
+        }
+
+        Long activeUntil = getActiveUntilMillis(message);
+        if( activeUntil == null ){
+            //No active_until in the DB, matched by neither predicate
+            return false;
+        }
+        return filter == ExpirationFilter.ACTIVE ? activeUntil > now : activeUntil <= now;
+    }
+
+    private static Long getActiveUntilMillis(Message message) {
+        if( message.getType() != MessageType.Information ){
+            return Long.MAX_VALUE;
+        }
+        if( StringUtils.isBlank(message.getExpirationDate()) ){
+            return null;
+        }
+        try {
+            return Timestamp.valueOf(message.getExpirationDate().trim()).getTime();
+        } catch (IllegalArgumentException ex) {
+            LOGGER.warn("Unreadable expiration date on message " + message.getId() + ": " + message.getExpirationDate());
+            return null;
+        }
+    }
+
+    private static boolean isAfter(Message message, MessageCursor after) {
+        int compare = Timestamp.valueOf(message.getCreationDate().trim()).compareTo(after.getCreationDate());
+        return compare > 0 || (compare == 0 && Long.parseLong(message.getId().trim()) > after.getMsgId());
+    }
+
+    private static Message toHeader(Message message) {
+        Message header = new Message();
+        header.setId(message.getId());
+        header.setLanId(message.getLanId());
+        header.setCreationDate(message.getCreationDate());
+        header.setPriority(message.getPriority());
+        header.setType(message.getType());
+        header.setActionLink(message.getActionLink());
+        header.setActionLabel(message.getActionLabel());
+        header.setInternal(message.isInternal());
+        header.setExpirationDate(message.getExpirationDate());
+        header.setLastUpdtUser(message.getLastUpdtUser());
+        return header;
+    }
+
+    /**
+     * Estimates the heap size of the cached list
+     *
+     * @param messages
+     * @return size in bytes
+     */
+    protected static long weigh(List<Message> messages) {
+        long weight = ENTRY_OVERHEAD_BYTES;
+        for( Message message : messages ){
+            weight += MESSAGE_OVERHEAD_BYTES + 2L * (length(message.getId()) + length(message.getLanId()) +
+                    length(message.getSummary()) + length(message.getCreationDate()) + length(message.getActionLink()) +
+                    length(message.getActionLabel()) + length(message.getExpirationDate()) + length(message.getLastUpdtUser()));
+        }
+        return weight;
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    private static String normalize(String lanId) {
+        return lanId.toLowerCase().trim();
+    }
+
+    @ManagedAttribute(description = "True if reads are served from the cache")
+    public boolean isEnabled() {
+        return enabled && !archiveEnabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isArchiveEnabled() {
+        return archiveEnabled;
+    }
+
+    public void setArchiveEnabled(boolean archiveEnabled) {
+        this.archiveEnabled = archiveEnabled;
+    }
+
+    @ManagedAttribute(description = "Maximum estimated size of the cached inboxes in bytes")
+    public long getMaxWeightBytes() {
+        return maxWeightBytes;
+    }
+
+    public void setMaxWeightBytes(long maxWeightBytes) {
+        if( maxWeightBytes < 1 ){
+            throw new IllegalArgumentException("maxWeightBytes must be greater than 0: " + maxWeightBytes);
+        }
+        this.maxWeightBytes = maxWeightBytes;
+    }
+
+    @ManagedAttribute(description = "Milliseconds an inbox stays cached")
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public void setTtlMillis(long ttlMillis) {
+        if( ttlMillis < 1 ){
+            throw new IllegalArgumentException("ttlMillis must be greater than 0: " + ttlMillis);
+        }
+        this.ttlMillis = ttlMillis;
+    }
+
+    public InvalidationChannel getInvalidationChannel() {
+        return invalidationChannel;
+    }
+
+    public void setInvalidationChannel(InvalidationChannel invalidationChannel) {
+        this.invalidationChannel = invalidationChannel;
+        if( invalidationChannel != null ){
+            invalidationChannel.addListener(this::evict);
+        }
+    }
+
+    @ManagedAttribute(description = "Reads served from the cache")
+    public long getHits() {
+        return hits.get();
+    }
+
+    @ManagedAttribute(description = "Reads that went to the DB")
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @ManagedAttribute(description = "Share of reads served from the cache")
+    public double getHitRatio() {
+        long total = hits.get() + misses.get();
+        return total > 0 ? (double) hits.get() / total : 0;
+    }
+
+    @ManagedAttribute(description = "Inboxes evicted to stay within the size bound")
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @ManagedAttribute(description = "Inboxes dropped after their TTL")
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    @ManagedAttribute(description = "Loaded inboxes too large to cache")
+    public long getOversizedLoads() {
+        return oversizedLoads.get();
+    }
+
+    @ManagedAttribute(description = "Invalidations made on this node")
+    public long getLocalInvalidations() {
+        return localInvalidations.get();
+    }
+
+    @ManagedAttribute(description = "Invalidations received from the channel, including this node's own")
+    public long getRemoteInvalidations() {
+        return remoteInvalidations.get();
+    }
+
+    @ManagedAttribute(description = "Number of cached inboxes")
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    @ManagedAttribute(description = "Estimated size of the cached inboxes in bytes")
+    public synchronized long getWeightBytes() {
+        return weightBytes;
+    }
+}
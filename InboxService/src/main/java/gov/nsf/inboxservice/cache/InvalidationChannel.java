@@ -0,0 +1,32 @@
+package gov.nsf.inboxservice.cache;
+
+import gov.nsf.common.exception.RollbackException;
+
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * InvalidationChannel interface
+ *
+ * Carries inbox cache invalidations between cluster nodes
+ */
+public interface InvalidationChannel {
+
+    /**
+     * Tells every node that the passed users' inboxes changed
+     *
+     * Called inside the transaction that changed the messages, so implementations may join it
+     *
+     * @param lanIds
+     *      - the users' lan IDs
+     * @throws RollbackException
+     */
+    public void publish(Collection<String> lanIds) throws RollbackException;
+
+    /**
+     * Adds a listener called with the lan ID of every invalidation received from the channel
+     *
+     * @param listener
+     */
+    public void addListener(Consumer<String> listener);
+}
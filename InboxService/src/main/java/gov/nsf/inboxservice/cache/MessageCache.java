@@ -0,0 +1,306 @@
+package gov.nsf.inboxservice.cache;
+
+import gov.nsf.common.exception.ResourceNotFoundException;
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.common.util.Constants;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache of single messages, keyed by message ID
+ *
+ * Message IDs that do not exist are cached as well, for notFoundTtlMillis, so repeated reads of a stale ID
+ * neither query the DB nor log the DAO's not found error. Found messages are cached for ttlMillis.
+ * The cache holds at most maxEntries messages and evicts the least recently used first.
+ *
+ * Messages are never updated, only deleted. Deletes on this node evict the message before the delete
+ * and again after commit. Deletes on other nodes arrive as user invalidations through the
+ * InvalidationChannel, and ttlMillis bounds how long a deleted message can still be read otherwise.
+ */
+@ManagedResource(objectName = "gov.nsf.inboxservice:name=MessageCache",
+        description = "Message by ID cache")
+public class MessageCache {
+
+    private boolean enabled = true;
+    private int maxEntries = Constants.DEFAULT_MESSAGE_CACHE_MAX_ENTRIES;
+    private long ttlMillis = Constants.DEFAULT_MESSAGE_CACHE_TTL_MILLIS;
+    private long notFoundTtlMillis = Constants.DEFAULT_MESSAGE_CACHE_NOT_FOUND_TTL_MILLIS;
+    private InvalidationChannel invalidationChannel;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    //Cached message IDs per lower-cased lan ID, so a user is evicted without scanning every entry
+    private final Map<String, Set<String>> keysByUser = new HashMap<String, Set<String>>();
+
+    private final AtomicLong invalidationCount = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong notFoundHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Loads a message from the DB on a cache miss
+     */
+    @FunctionalInterface
+    public interface Loader {
+        Message load(String msgId) throws RollbackException;
+    }
+
+    private static final class Entry {
+        //Null for a message ID that does not exist
+        private final Message message;
+        private final long expiresMillis;
+
+        private Entry(Message message, long expiresMillis) {
+            this.message = message;
+            this.expiresMillis = expiresMillis;
+        }
+    }
+
+    /**
+     * Returns the message for the passed ID, loading it on a miss
+     *
+     * @param msgId
+     *      - the message ID
+     * @param loader
+     *      - reads the message from the DB
+     * @return Message, shared with the cache and not to be modified
+     * @throws ResourceNotFoundException if the message does not exist
+     * @throws RollbackException
+     */
+    public Message getMessage(String msgId, Loader loader) throws RollbackException {
+        if( !enabled ){
+            return loader.load(msgId);
+        }
+
+        String key = msgId.trim();
+        synchronized( this ){
+            Entry entry = entries.get(key);
+            if( entry != null && System.currentTimeMillis() < entry.expiresMillis ){
+                if( entry.message == null ){
+                    notFoundHits.incrementAndGet();
+                    throw new ResourceNotFoundException(Constants.MSG_NOT_FOUND + msgId);
+                }
+                hits.incrementAndGet();
+                return entry.message;
+            }
+        }
+        misses.incrementAndGet();
+
+        long invalidationsBefore = invalidationCount.get();
+        try {
+            Message message = loader.load(msgId);
+            put(key, new Entry(message, System.currentTimeMillis() + ttlMillis), invalidationsBefore);
+            return message;
+        } catch (ResourceNotFoundException ex) {
+            put(key, new Entry(null, System.currentTimeMillis() + notFoundTtlMillis), invalidationsBefore);
+            throw ex;
+        }
+    }
+
+    /**
+     * Evicts the passed message IDs on this node, and again after commit inside a transaction
+     *
+     * @param msgIds
+     *      - the message IDs
+     */
+    public void invalidate(Collection<String> msgIds) {
+        if( !enabled || msgIds.isEmpty() ){
+            return;
+        }
+
+        evictAll(msgIds);
+        if( TransactionSynchronizationManager.isSynchronizationActive() ){
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    evictAll(msgIds);
+                }
+            });
+        }
+    }
+
+    /**
+     * Evicts every cached message of the passed user on this node
+     *
+     * @param lanId
+     *      - the user's lan ID
+     */
+    public void evictUser(String lanId) {
+        invalidationCount.incrementAndGet();
+        synchronized( this ){
+            Set<String> keys = keysByUser.remove(getUserKey(lanId));
+            if( keys != null ){
+                for( String key : keys ){
+                    entries.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops every cached message on this node
+     */
+    @ManagedOperation(description = "Drops every cached message on this node")
+    public synchronized void clear() {
+        invalidationCount.incrementAndGet();
+        entries.clear();
+        keysByUser.clear();
+    }
+
+    private void evictAll(Collection<String> msgIds) {
+        invalidationCount.incrementAndGet();
+        synchronized( this ){
+            for( String msgId : msgIds ){
+                String key = msgId.trim();
+                unindex(key, entries.remove(key));
+            }
+        }
+    }
+
+    /**
+     * Caches the loaded entry unless an invalidation happened while loading
+     */
+    private synchronized void put(String key, Entry entry, long invalidationsBefore) {
+        if( invalidationCount.get() != invalidationsBefore ){
+            return;
+        }
+        unindex(key, entries.put(key, entry));
+        if( entry.message != null && entry.message.getLanId() != null ){
+            Set<String> keys = keysByUser.get(getUserKey(entry.message.getLanId()));
+            if( keys == null ){
+                keys = new HashSet<String>();
+                keysByUser.put(getUserKey(entry.message.getLanId()), keys);
+            }
+            keys.add(key);
+        }
+
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while( entries.size() > maxEntries && eldest.hasNext() ){
+            Map.Entry<String, Entry> evicted = eldest.next();
+            eldest.remove();
+            unindex(evicted.getKey(), evicted.getValue());
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes the key of a removed entry from its user's cached message IDs
+     */
+    private void unindex(String key, Entry entry) {
+        if( entry == null || entry.message == null || entry.message.getLanId() == null ){
+            return;
+        }
+        String user = getUserKey(entry.message.getLanId());
+        Set<String> keys = keysByUser.get(user);
+        if( keys != null && keys.remove(key) && keys.isEmpty() ){
+            keysByUser.remove(user);
+        }
+    }
+
+    private static String getUserKey(String lanId) {
+        return lanId.trim().toLowerCase(Locale.ROOT);
+    }
+
+    @ManagedAttribute(description = "True if message reads are served from the cache")
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @ManagedAttribute(description = "Maximum number of cached messages")
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        if( maxEntries < 1 ){
+            throw new IllegalArgumentException("maxEntries must be greater than 0: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    @ManagedAttribute(description = "Milliseconds a message stays cached")
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public void setTtlMillis(long ttlMillis) {
+        if( ttlMillis < 1 ){
+            throw new IllegalArgumentException("ttlMillis must be greater than 0: " + ttlMillis);
+        }
+        this.ttlMillis = ttlMillis;
+    }
+
+    @ManagedAttribute(description = "Milliseconds a missing message ID stays cached")
+    public long getNotFoundTtlMillis() {
+        return notFoundTtlMillis;
+    }
+
+    public void setNotFoundTtlMillis(long notFoundTtlMillis) {
+        if( notFoundTtlMillis < 0 ){
+            throw new IllegalArgumentException("notFoundTtlMillis cannot be negative: " + notFoundTtlMillis);
+        }
+        this.notFoundTtlMillis = notFoundTtlMillis;
+    }
+
+    public InvalidationChannel getInvalidationChannel() {
+        return invalidationChannel;
+    }
+
+    public void setInvalidationChannel(InvalidationChannel invalidationChannel) {
+        this.invalidationChannel = invalidationChannel;
+        if( invalidationChannel != null ){
+            invalidationChannel.addListener(this::evictUser);
+        }
+    }
+
+    @ManagedAttribute(description = "Reads served from cached messages")
+    public long getHits() {
+        return hits.get();
+    }
+
+    @ManagedAttribute(description = "Reads answered from cached missing message IDs")
+    public long getNotFoundHits() {
+        return notFoundHits.get();
+    }
+
+    @ManagedAttribute(description = "Reads that went to the DB")
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @ManagedAttribute(description = "Share of reads served from the cache")
+    public double getHitRatio() {
+        long cached = hits.get() + notFoundHits.get();
+        long total = cached + misses.get();
+        return total > 0 ? (double) cached / total : 0;
+    }
+
+    @ManagedAttribute(description = "Messages evicted to stay within maxEntries")
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @ManagedAttribute(description = "Number of cached message IDs")
+    public synchronized int getSize() {
+        return entries.size();
+    }
+}
@@ -1,146 +1,785 @@
-package gov.nsf.inboxservice.common.util;
-
-/**
- * Constants for InboxService
- */
-public final class Constants {
-
-    //CreateMessagRequest JSON fields
-    public static final String REQUEST_MESSAGE_FIELD = "message";
-    public static final String REQUEST_LAN_IDS_FIELD = "lanIds";
-
-    //Message JSON fields
-    public static final String MSG_ID_FIELD = "msgID";
-    public static final String MSG_LAN_ID_FIELD = "lanId";
-    public static final String MSG_SUMMARY_FIELD = "summary";
-    public static final String MSG_CREATION_DATE_FIELD = "creationDate";
-    public static final String MSG_PRIORITY_FIELD = "priority";
-    public static final String MSG_TYPE_FIELD = "type";
-    public static final String MSG_ACTION_LINK_FIELD = "actionLink";
-    public static final String MSG_ACTION_LABEL_FIELD = "actionLabel";
-    public static final String MSG_INTERNAL_FIELD = "internal";
-    public static final String MSG_EXP_DATE_FIELD = "expirationDate";
-    public static final String MSG_LAST_UPDT_USER_FIELD = "lastUpdtUser";
-
-    //Message DB column names
-    public static final String MSG_ID_COLNAME = "inbx_msg_id";
-    public static final String MSG_LAN_ID_COLNAME = "user_lan_id";
-    public static final String MSG_CREATION_DATE_COLNAME = "cre_date";
-    public static final String MSG_SUMMARY_COLNAME = "smry";
-    public static final String MSG_PRIORITY_COLNAME = "prty";
-    public static final String MSG_TYPE_COLNAME = "type";
-    public static final String MSG_ACTION_LINK_COLNAME = "actn_link";
-    public static final String MSG_ACTION_LABEL_COLNAME = "actn_lbl";
-    public static final String MSG_INTERNAL_COLNAME = "innl";
-    public static final String MSG_EXP_DATE_COLNAME = "exp_date";
-    public static final String LAST_UPDT_PGM_COLNAME = "last_updt_pgm";
-    public static final String LAST_UPDT_USER_COLNAME = "last_updt_user";
-    public static final String LAST_UPDT_TMSP_COLNAME = "last_updt_tmsp";
-
-    //Validation error strings
-    public static final String MISSING_NULL_FIELD = "The field cannot be missing or null: ";
-    public static final String UNSUPPORTED_CHARACTERS_FIELD = "The field cannot contain unsupported characters: ";
-    public static final String INVALID_MESSAGE_TYPE = "Value for type can only be \'Information\' or \'Task\'";
-    public static final String INVALID_MESSAGE_PRIORITY = "Value for priority can only be \'High\' or \'Low\'";
-    public static final String MISSING_NULL_EMPTY_FIELD = "The field cannot be null, missing, or empty: ";
-    public static final String FIELD_LENGTH_TOO_LONG = "The field cannot exceed the maximum number of characters: ";
-    public static final String CONTAINS_NULL_EMPTY_STRING = "The field cannot contain a null or empty string";
-    public static final String CONTAINS_UNSUPPORTED_CHARACTERS_STRING = "The field cannot contain a string with unsupported characters";
-
-
-    // Exception messages
-    public static final String SERVER_500_ERROR = "Server Error";
-    public static final String DB_TRANSACTION_ERROR = "DB Transaction Error";
-    public static final String INVALID_FORM_DATA = "Invalid/Missing Form Data";
-    public static final String ACCESS_DENIED_EXCEPTION = "Access Denied";
-    public static final String INVALID_REQUEST_PARAMETER = "Invalid/Missing request parameter";
-    public static final String UNABLE_TO_READ_JSON = "Unable to read JSON";
-    public static final String INCORRECT_FORMAT_PARAMETERS = "Incorrect format of parameters";
-
-    //Response wrapper names
-    public static final String BASE_RESPONSE_WRAPPER = "baseResponseWrapper";
-    public static final String MESSAGE_RESPONSE_WRAPPER = "messageResponseWrapper";
-
-
-    public static final String GET_ACTIVE_MESSAGES_FOR_USER_QUERY =
-            "select * from dbo.inbx_msg " +
-                    "where " + Constants.MSG_LAN_ID_COLNAME + " = " + ":" + Constants.MSG_LAN_ID_COLNAME + " and  (" +
-                    Constants.MSG_TYPE_COLNAME + " != 'I'" +
-                    " or ( " + Constants.MSG_TYPE_COLNAME + " = 'I' and " + Constants.MSG_EXP_DATE_COLNAME + " > getdate()))";
-
-    public static final String GET_INACTIVE_MESSAGES_FOR_USER_QUERY =
-            "select * from dbo.inbx_msg " +
-                    "where " + Constants.MSG_LAN_ID_COLNAME + " = " + ":" + Constants.MSG_LAN_ID_COLNAME + " and  " +
-                    "(" + Constants.MSG_TYPE_COLNAME + " = 'I' and " + Constants.MSG_EXP_DATE_COLNAME + " <= getdate())";
-
-    public static final String GET_ALL_MESSAGES_FOR_USER_QUERY =
-            "select * from dbo.inbx_msg " +
-                    "where " + Constants.MSG_LAN_ID_COLNAME + " = " + ":" + Constants.MSG_LAN_ID_COLNAME;
-
-    public static final String GET_LAST_INSERTED_MESSAGE_QUERY =
-            "select * from dbo.inbx_msg " +
-                    "where inbx_msg_id in(select max(inbx_msg_id) from dbo.inbx_msg) " +
-                    "and user_lan_id = :" + Constants.MSG_LAN_ID_COLNAME;
-
-
-    public static final String INSERT_MESSAGE_QUERY =
-            "INSERT INTO dbo.inbx_msg" +
-                    "(" +
-                    Constants.MSG_LAN_ID_COLNAME + ", " +
-                    Constants.MSG_SUMMARY_COLNAME + ", " +
-                    Constants.MSG_CREATION_DATE_COLNAME + ", " +
-                    Constants.MSG_PRIORITY_COLNAME + ", " +
-                    Constants.MSG_TYPE_COLNAME + ", " +
-                    Constants.MSG_ACTION_LINK_COLNAME + ", " +
-                    Constants.MSG_ACTION_LABEL_COLNAME + ", " +
-                    Constants.MSG_INTERNAL_COLNAME + ", " +
-                    Constants.MSG_EXP_DATE_COLNAME + ", " +
-                    Constants.LAST_UPDT_PGM_COLNAME + ", " +
-                    Constants.LAST_UPDT_USER_COLNAME + ", " +
-                    Constants.LAST_UPDT_TMSP_COLNAME + " " +
-                    ") VALUES" +
-                    "(" +
-                    ":" + Constants.MSG_LAN_ID_COLNAME + ", " +
-                    ":" + Constants.MSG_SUMMARY_COLNAME + ", " +
-                    "getdate(), " +
-                    ":" + Constants.MSG_PRIORITY_COLNAME + ", " +
-                    ":" + Constants.MSG_TYPE_COLNAME + ", " +
-                    ":" + Constants.MSG_ACTION_LINK_COLNAME + ", " +
-                    ":" + Constants.MSG_ACTION_LABEL_COLNAME + ", " +
-                    ":" + Constants.MSG_INTERNAL_COLNAME + ", " +
-                    ":" + Constants.MSG_EXP_DATE_COLNAME + ", " +
-                    "'InboxService', " +
-                    ":" + Constants.LAST_UPDT_USER_COLNAME + ", " +
-                    "getdate()" +
-                    ")";
-
-    public static final String GET_MESSAGE_BY_ID_QUERY = "select * " +
-            "from dbo.inbx_msg " +
-            "where " + Constants.MSG_ID_COLNAME + " = " + ":" + Constants.MSG_ID_COLNAME;
-
-    public static final String DELETE_MESSAGE_QUERY = "delete from dbo.inbx_msg " +
-            "where " + Constants.MSG_ID_COLNAME + " = " + ":" + Constants.MSG_ID_COLNAME;
-
-    public static final String DELETE_EXPIRED_MESSAGES_QUERY = "delete from dbo.inbx_msg " +
-            "where " + Constants.MSG_LAN_ID_COLNAME + " = " + ":" + Constants.MSG_LAN_ID_COLNAME + " " +
-            "and " + Constants.MSG_TYPE_COLNAME + " = 'I' " +
-            "and " + Constants.MSG_EXP_DATE_COLNAME + " < getdate()";
-
-
-    public static final String ERROR_GETTING_MESSAGES_FOR_USER = "Could not retrieve messages for lanId: ";
-    public static final String ERROR_INSERTING_MESSAGE = "Could not insert message into the database: ";
-    public static final String ERROR_GETTING_MESSAGE = "Could not retrieve message: ";
-    public static final String ERROR_GETTING_MESSAGE_AFTER_INSERT = "Error retrieving the inserted message: ";
-    public static final String ERROR_DELETING_MESSAGE = "Could not delete message: ";
-    public static final String INVALID_DATE_TIME = "Invalid date/time format: ";
-    public static final String EXP_DATE_LESS_THAN_CURRENT_DATE = "Expiration date/time must be after current date/time";
-    public static final String LAN_IDS_CONTAINS_INVALID_LAN_ID = "The field cannot contain an invalid LAN ID format";
-    public static final String INVALID_LAN_ID = "The field cannot have an invalid LAN ID format";
-    public static final String ERROR_ACCESS_DENIED = "You are not allowed to access this information";
-
-    public static final int LAN_ID_MAX_LENGTH = 8;
-    public static final int MSG_ACTION_LABEL_MAX_LEGNTH = 25;
-    public static final int MESSAGE_PLAIN_TEXT_MAX_LENGTH = 140;
-    public static final String MSG_ID_NON_NUMERIC = "Message ID has to be a valid integer";
-    public static final String MSG_NOT_FOUND = "Message ID does not exist: ";
+package gov.nsf.inboxservice.common.util;
+
+/**
+ * Constants for InboxService
+ */
+public final class Constants {
+
+    //CreateMessagRequest JSON fields
+    public static final String REQUEST_MESSAGE_FIELD = "message";
+    public static final String REQUEST_LAN_IDS_FIELD = "lanIds";
+    public static final String REQUEST_MSG_IDS_FIELD = "msgIds";
+    public static final String REQUEST_DEDUPE_FIELD = "dedupe";
+
+    //CreateTemplatedMessageRequest JSON fields
+    public static final String REQUEST_TEMPLATE_ID_FIELD = "templateId";
+    public static final String REQUEST_RECIPIENTS_FIELD = "recipients";
+
+    //Recipient group JSON fields and path variables
+    public static final String REQUEST_GROUPS_FIELD = "groups";
+    public static final String REQUEST_GROUP_NAME_FIELD = "groupName";
+    public static final String REQUEST_ADD_FIELD = "add";
+    public static final String REQUEST_REMOVE_FIELD = "remove";
+    public static final String REQUEST_VERSION_FIELD = "version";
+
+    //Global broadcast path variable
+    public static final String BROADCAST_ID_FIELD = "broadcastId";
+
+    //Message JSON fields
+    public static final String MSG_ID_FIELD = "msgID";
+    public static final String MSG_LAN_ID_FIELD = "lanId";
+    public static final String MSG_SUMMARY_FIELD = "summary";
+    public static final String MSG_CREATION_DATE_FIELD = "creationDate";
+    public static final String MSG_PRIORITY_FIELD = "priority";
+    public static final String MSG_TYPE_FIELD = "type";
+    public static final String MSG_ACTION_LINK_FIELD = "actionLink";
+    public static final String MSG_ACTION_LABEL_FIELD = "actionLabel";
+    public static final String MSG_INTERNAL_FIELD = "internal";
+    public static final String MSG_EXP_DATE_FIELD = "expirationDate";
+    public static final String MSG_LAST_UPDT_USER_FIELD = "lastUpdtUser";
+
+    //Message DB column names
+    public static final String MSG_ID_COLNAME = "inbx_msg_id";
+    public static final String MSG_LAN_ID_COLNAME = "user_lan_id";
+    public static final String MSG_CREATION_DATE_COLNAME = "cre_date";
+    public static final String MSG_SUMMARY_COLNAME = "smry";
+    public static final String MSG_PRIORITY_COLNAME = "prty";
+    public static final String MSG_TYPE_COLNAME = "type";
+    public static final String MSG_ACTION_LINK_COLNAME = "actn_link";
+    public static final String MSG_ACTION_LABEL_COLNAME = "actn_lbl";
+    public static final String MSG_INTERNAL_COLNAME = "innl";
+    public static final String MSG_EXP_DATE_COLNAME = "exp_date";
+    public static final String MSG_ACTIVE_UNTIL_COLNAME = "active_until";
+    public static final String LAST_UPDT_PGM_COLNAME = "last_updt_pgm";
+    public static final String LAST_UPDT_USER_COLNAME = "last_updt_user";
+    public static final String LAST_UPDT_TMSP_COLNAME = "last_updt_tmsp";
+    public static final String ARCH_MONTH_COLNAME = "arch_month";
+    public static final String MSG_CONTENT_HASH_COLNAME = "cntnt_hash";
+    public static final String MSG_CONTENT_ID_COLNAME = "cntnt_id";
+    public static final String MSG_BATCH_TOKEN_COLNAME = "btch_tkn";
+    public static final String TEMPLATE_ID_COLNAME = "tmpl_id";
+    public static final String GROUP_NAME_COLNAME = "grp_name";
+    public static final String GROUP_VERSION_COLNAME = "vrsn";
+    public static final String GROUP_MEMBER_COUNT_COLNAME = "mbr_cnt";
+    public static final String BROADCAST_ID_COLNAME = "bcst_id";
+
+    //Validation error strings
+    public static final String MISSING_NULL_FIELD = "The field cannot be missing or null: ";
+    public static final String UNSUPPORTED_CHARACTERS_FIELD = "The field cannot contain unsupported characters: ";
+    public static final String INVALID_MESSAGE_TYPE = "Value for type can only be \'Information\' or \'Task\'";
+    public static final String INVALID_MESSAGE_PRIORITY = "Value for priority can only be \'High\' or \'Low\'";
+    public static final String INVALID_DEDUPE_MODE = "Value for dedupe can only be \'None\', \'Skip\' or \'Refresh\'";
+    public static final String MISSING_NULL_EMPTY_FIELD = "The field cannot be null, missing, or empty: ";
+    public static final String FIELD_LENGTH_TOO_LONG = "The field cannot exceed the maximum number of characters: ";
+    public static final String CONTAINS_NULL_EMPTY_STRING = "The field cannot contain a null or empty string";
+    public static final String CONTAINS_UNSUPPORTED_CHARACTERS_STRING = "The field cannot contain a string with unsupported characters";
+    public static final String INVALID_IDEMPOTENCY_KEY = "The header can only contain printable ASCII characters: ";
+    public static final String IDEMPOTENCY_KEY_REUSED = "The key was already used for a different request: ";
+    public static final String INVALID_NAME_CHARACTERS = "The field can only contain letters, digits, \'.\', \'_\' and \'-\': ";
+    public static final String MISSING_TEMPLATE_PARAMETER = "No value was passed for the template placeholder: ";
+    public static final String MISSING_GROUP_DELTA = "The request has to add or remove at least one lan ID: ";
+    public static final String INVALID_GROUP_VERSION = "The field cannot be negative: ";
+    public static final String RECIPIENT_GROUP_VERSION_CONFLICT = "The group was updated since the passed version, its current version is: ";
+
+
+    // Exception messages
+    public static final String SERVER_500_ERROR = "Server Error";
+    public static final String DB_TRANSACTION_ERROR = "DB Transaction Error";
+    public static final String INVALID_FORM_DATA = "Invalid/Missing Form Data";
+    public static final String ACCESS_DENIED_EXCEPTION = "Access Denied";
+    public static final String INVALID_REQUEST_PARAMETER = "Invalid/Missing request parameter";
+    public static final String UNABLE_TO_READ_JSON = "Unable to read JSON";
+    public static final String INCORRECT_FORMAT_PARAMETERS = "Incorrect format of parameters";
+
+    //Response wrapper names
+    public static final String BASE_RESPONSE_WRAPPER = "baseResponseWrapper";
+    public static final String MESSAGE_RESPONSE_WRAPPER = "messageResponseWrapper";
+    public static final String MESSAGE_COUNT_RESPONSE_WRAPPER = "messageCountResponseWrapper";
+    public static final String DELETE_MESSAGES_RESPONSE_WRAPPER = "deleteMessagesResponseWrapper";
+    public static final String RECIPIENT_GROUP_RESPONSE_WRAPPER = "recipientGroupResponseWrapper";
+    public static final String MESSAGES_FIELD = "messages";
+
+    //Header that makes POST /messages safe to retry
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    public static final int IDEMPOTENCY_KEY_MAX_LENGTH = 64;
+
+
+    //Paging request parameters
+    public static final String PAGE_LIMIT_FIELD = "limit";
+    public static final String PAGE_AFTER_FIELD = "after";
+
+    //Keyset paging query parameters
+    public static final String AFTER_CREATION_DATE_PARAM = "after_cre_date";
+    public static final String AFTER_MSG_ID_PARAM = "after_inbx_msg_id";
+
+    //Columns read by MessageRowMapper. List views that only show headers skip the summary
+    public static final String MESSAGE_HEADER_COLUMNS =
+            Constants.MSG_ID_COLNAME + ", " +
+                    Constants.MSG_LAN_ID_COLNAME + ", " +
+                    Constants.MSG_CREATION_DATE_COLNAME + ", " +
+                    Constants.MSG_PRIORITY_COLNAME + ", " +
+                    Constants.MSG_TYPE_COLNAME + ", " +
+                    Constants.MSG_ACTION_LINK_COLNAME + ", " +
+                    Constants.MSG_ACTION_LABEL_COLNAME + ", " +
+                    Constants.MSG_INTERNAL_COLNAME + ", " +
+                    Constants.MSG_EXP_DATE_COLNAME + ", " +
+                    Constants.LAST_UPDT_USER_COLNAME;
+
+    public static final String MESSAGE_COLUMNS =
+            Constants.MESSAGE_HEADER_COLUMNS + ", " + Constants.MSG_SUMMARY_COLNAME;
+
+    //Normalized storage. Broadcasts keep their summary and action in one dbo.inbx_msg_cntnt row that the
+    //recipient rows point to, so reads join the content and fall back to the columns of the recipient row
+    public static final String MESSAGE_TABLES = "dbo.inbx_msg m left join dbo.inbx_msg_cntnt c " +
+            "on c." + Constants.MSG_CONTENT_ID_COLNAME + " = m." + Constants.MSG_CONTENT_ID_COLNAME;
+
+    public static final String STORED_MESSAGE_HEADER_COLUMNS =
+            Constants.MSG_ID_COLNAME + ", " +
+                    Constants.MSG_LAN_ID_COLNAME + ", " +
+                    Constants.MSG_CREATION_DATE_COLNAME + ", " +
+                    Constants.MSG_PRIORITY_COLNAME + ", " +
+                    Constants.MSG_TYPE_COLNAME + ", " +
+                    "coalesce(c." + Constants.MSG_ACTION_LINK_COLNAME + ", m." + Constants.MSG_ACTION_LINK_COLNAME + ") as " + Constants.MSG_ACTION_LINK_COLNAME + ", " +
+                    "coalesce(c." + Constants.MSG_ACTION_LABEL_COLNAME + ", m." + Constants.MSG_ACTION_LABEL_COLNAME + ") as " + Constants.MSG_ACTION_LABEL_COLNAME + ", " +
+                    Constants.MSG_INTERNAL_COLNAME + ", " +
+                    Constants.MSG_EXP_DATE_COLNAME + ", " +
+                    Constants.LAST_UPDT_USER_COLNAME;
+
+    public static final String STORED_MESSAGE_COLUMNS = Constants.STORED_MESSAGE_HEADER_COLUMNS + ", " +
+            "coalesce(c." + Constants.MSG_SUMMARY_COLNAME + ", m." + Constants.MSG_SUMMARY_COLNAME + ") as " + Constants.MSG_SUMMARY_COLNAME;
+
+    public static final String MESSAGES_FOR_USER_FROM_CLAUSE =
+            "from " + Constants.MESSAGE_TABLES + " " +
+                    "where " + Constants.MSG_LAN_ID_COLNAME + " = " + ":" + Constants.MSG_LAN_ID_COLNAME;
+
+    //Task messages never expire, so they are stored as active until the end of time
+    public static final String TASK_ACTIVE_UNTIL = "9999-12-31 23:59:59";
+
+    //Sybase datetime counts 1/300 second ticks, so multiples of 10 milliseconds are stored exactly
+    public static final long DB_DATETIME_RESOLUTION_MILLIS = 10;
+
+    public static final String ACTIVE_MESSAGES_PREDICATE =
+            " and " + Constants.MSG_ACTIVE_UNTIL_COLNAME + " > getdate()";
+
+    public static final String INACTIVE_MESSAGES_PREDICATE =
+            " and " + Constants.MSG_ACTIVE_UNTIL_COLNAME + " <= getdate()";
+
+    public static final String ALL_MESSAGES_PREDICATE = "";
+
+    public static final String GET_ACTIVE_MESSAGES_FOR_USER_QUERY =
+            "select " + Constants.STORED_MESSAGE_COLUMNS + " " + Constants.MESSAGES_FOR_USER_FROM_CLAUSE + Constants.ACTIVE_MESSAGES_PREDICATE;
+
+    public static final String GET_INACTIVE_MESSAGES_FOR_USER_QUERY =
+            "select " + Constants.STORED_MESSAGE_COLUMNS + " " + Constants.MESSAGES_FOR_USER_FROM_CLAUSE + Constants.INACTIVE_MESSAGES_PREDICATE;
+
+    public static final String GET_ALL_MESSAGES_FOR_USER_QUERY =
+            "select " + Constants.STORED_MESSAGE_COLUMNS + " " + Constants.MESSAGES_FOR_USER_FROM_CLAUSE + Constants.ALL_MESSAGES_PREDICATE;
+
+
+    public static final String INSERT_MESSAGE_QUERY =
+            "INSERT INTO dbo.inbx_msg" +
+                    "(" +
+                    Constants.MSG_LAN_ID_COLNAME + ", " +
+                    Constants.MSG_SUMMARY_COLNAME + ", " +
+                    Constants.MSG_CREATION_DATE_COLNAME + ", " +
+                    Constants.MSG_PRIORITY_COLNAME + ", " +
+                    Constants.MSG_TYPE_COLNAME + ", " +
+                    Constants.MSG_ACTION_LINK_COLNAME + ", " +
+                    Constants.MSG_ACTION_LABEL_COLNAME + ", " +
+                    Constants.MSG_INTERNAL_COLNAME + ", " +
+                    Constants.MSG_EXP_DATE_COLNAME + ", " +
+                    Constants.MSG_ACTIVE_UNTIL_COLNAME + ", " +
+                    Constants.MSG_CONTENT_HASH_COLNAME + ", " +
+                    Constants.MSG_CONTENT_ID_COLNAME + ", " +
+                    Constants.MSG_BATCH_TOKEN_COLNAME + ", " +
+                    Constants.LAST_UPDT_PGM_COLNAME + ", " +
+                    Constants.LAST_UPDT_USER_COLNAME + ", " +
+                    Constants.LAST_UPDT_TMSP_COLNAME + " " +
+                    ") VALUES" +
+                    "(" +
+                    ":" + Constants.MSG_LAN_ID_COLNAME + ", " +
+                    ":" + Constants.MSG_SUMMARY_COLNAME + ", " +
+                    ":" + Constants.MSG_CREATION_DATE_COLNAME + ", " +
+                    ":" + Constants.MSG_PRIORITY_COLNAME + ", " +
+                    ":" + Constants.MSG_TYPE_COLNAME + ", " +
+                    ":" + Constants.MSG_ACTION_LINK_COLNAME + ", " +
+                    ":" + Constants.MSG_ACTION_LABEL_COLNAME + ", " +
+                    ":" + Constants.MSG_INTERNAL_COLNAME + ", " +
+                    ":" + Constants.MSG_EXP_DATE_COLNAME + ", " +
+                    ":" + Constants.MSG_ACTIVE_UNTIL_COLNAME + ", " +
+                    ":" + Constants.MSG_CONTENT_HASH_COLNAME + ", " +
+                    ":" + Constants.MSG_CONTENT_ID_COLNAME + ", " +
+                    ":" + Constants.MSG_BATCH_TOKEN_COLNAME + ", " +
+                    "'InboxService', " +
+                    ":" + Constants.LAST_UPDT_USER_COLNAME + ", " +
+                    "getdate()" +
+                    ")";
+
+    public static final String INSERT_MESSAGE_CONTENT_QUERY = "insert into dbo.inbx_msg_cntnt (" +
+            Constants.MSG_SUMMARY_COLNAME + ", " + Constants.MSG_ACTION_LINK_COLNAME + ", " + Constants.MSG_ACTION_LABEL_COLNAME + ", " +
+            Constants.LAST_UPDT_TMSP_COLNAME + ") " +
+            "values (:" + Constants.MSG_SUMMARY_COLNAME + ", :" + Constants.MSG_ACTION_LINK_COLNAME + ", :" + Constants.MSG_ACTION_LABEL_COLNAME + ", :" + Constants.LAST_UPDT_TMSP_COLNAME + ")";
+
+    //Content no recipient row points to any more. Recent rows are left alone, their recipients may not be committed yet.
+    //Both the stored time and the cutoff come from the application clock
+    public static final String DELETE_ORPHANED_MESSAGE_CONTENT_DELETE = "delete top ";
+
+    public static final String DELETE_ORPHANED_MESSAGE_CONTENT_FROM_CLAUSE = " from dbo.inbx_msg_cntnt " +
+            "where " + Constants.LAST_UPDT_TMSP_COLNAME + " < :" + Constants.LAST_UPDT_TMSP_COLNAME + " " +
+            "and not exists (select 1 from dbo.inbx_msg m where m." + Constants.MSG_CONTENT_ID_COLNAME + " = dbo.inbx_msg_cntnt." + Constants.MSG_CONTENT_ID_COLNAME + ")";
+
+    public static final String MESSAGES_PAGE_SELECT = "select top ";
+
+    public static final String MESSAGES_PAGE_AFTER_CURSOR_PREDICATE =
+            " and (" + Constants.MSG_CREATION_DATE_COLNAME + " > :" + Constants.AFTER_CREATION_DATE_PARAM +
+                    " or (" + Constants.MSG_CREATION_DATE_COLNAME + " = :" + Constants.AFTER_CREATION_DATE_PARAM +
+                    " and " + Constants.MSG_ID_COLNAME + " > :" + Constants.AFTER_MSG_ID_PARAM + "))";
+
+    public static final String MESSAGES_PAGE_ORDER_BY =
+            " order by " + Constants.MSG_CREATION_DATE_COLNAME + ", " + Constants.MSG_ID_COLNAME;
+
+    //Every row of an insert batch carries the batch's random token, so concurrent batches never read each other's rows back
+    public static final String GET_INSERTED_MESSAGES_QUERY =
+            "select " + Constants.STORED_MESSAGE_COLUMNS + " from " + Constants.MESSAGE_TABLES + " " +
+                    "where " + Constants.MSG_BATCH_TOKEN_COLNAME + " = :" + Constants.MSG_BATCH_TOKEN_COLNAME;
+
+    public static final String GET_MESSAGE_BY_ID_QUERY = "select " + Constants.STORED_MESSAGE_COLUMNS + " " +
+            "from " + Constants.MESSAGE_TABLES + " " +
+            "where " + Constants.MSG_ID_COLNAME + " = " + ":" + Constants.MSG_ID_COLNAME;
+
+    public static final String DELETE_MESSAGE_QUERY = "delete from dbo.inbx_msg " +
+            "where " + Constants.MSG_ID_COLNAME + " = " + ":" + Constants.MSG_ID_COLNAME;
+
+    public static final String GET_MESSAGES_BY_IDS_QUERY = "select " + Constants.STORED_MESSAGE_COLUMNS + " " +
+            "from " + Constants.MESSAGE_TABLES + " " +
+            "where " + Constants.MSG_ID_COLNAME + " in (:" + Constants.MSG_ID_COLNAME + ")";
+
+    //Active messages with the same content hash, for dedupe. One query covers every recipient of a batch
+    public static final String GET_DUPLICATE_MESSAGES_FOR_USERS_QUERY = "select " + Constants.STORED_MESSAGE_COLUMNS + " " +
+            "from " + Constants.MESSAGE_TABLES + " " +
+            "where " + Constants.MSG_CONTENT_HASH_COLNAME + " = :" + Constants.MSG_CONTENT_HASH_COLNAME + " " +
+            "and " + Constants.MSG_LAN_ID_COLNAME + " in (:" + Constants.MSG_LAN_ID_COLNAME + ")" +
+            Constants.ACTIVE_MESSAGES_PREDICATE;
+
+    public static final String REFRESH_MESSAGES_QUERY = "update dbo.inbx_msg " +
+            "set " + Constants.MSG_CREATION_DATE_COLNAME + " = :" + Constants.MSG_CREATION_DATE_COLNAME + ", " +
+            Constants.MSG_PRIORITY_COLNAME + " = :" + Constants.MSG_PRIORITY_COLNAME + ", " +
+            Constants.MSG_INTERNAL_COLNAME + " = :" + Constants.MSG_INTERNAL_COLNAME + ", " +
+            Constants.MSG_EXP_DATE_COLNAME + " = :" + Constants.MSG_EXP_DATE_COLNAME + ", " +
+            Constants.MSG_ACTIVE_UNTIL_COLNAME + " = :" + Constants.MSG_ACTIVE_UNTIL_COLNAME + ", " +
+            Constants.LAST_UPDT_TMSP_COLNAME + " = getdate() " +
+            "where " + Constants.MSG_ID_COLNAME + " in (:" + Constants.MSG_ID_COLNAME + ")";
+
+    public static final String DELETE_MESSAGES_BY_IDS_QUERY = "delete from dbo.inbx_msg " +
+            "where " + Constants.MSG_ID_COLNAME + " in (:" + Constants.MSG_ID_COLNAME + ")";
+
+    //Exclusive row lock on the message until the transaction ends, touches no data and no index; 0 rows when it does not exist
+    //Sybase ASE only honours "for update" in cursors and H2 rejects it on joins, an update locks the same in both
+    public static final String LOCK_MESSAGE_QUERY = "update dbo.inbx_msg " +
+            "set " + Constants.LAST_UPDT_TMSP_COLNAME + " = " + Constants.LAST_UPDT_TMSP_COLNAME + " " +
+            "where " + Constants.MSG_ID_COLNAME + " = :" + Constants.MSG_ID_COLNAME;
+
+    public static final String DELETE_EXPIRED_MESSAGES_QUERY = "delete from dbo.inbx_msg " +
+            "where " + Constants.MSG_LAN_ID_COLNAME + " = " + ":" + Constants.MSG_LAN_ID_COLNAME + " " +
+            "and " + Constants.MSG_ACTIVE_UNTIL_COLNAME + " < getdate()";
+
+    //Cluster-wide expiry sweep, the row count is appended after the "top"
+    public static final String DELETE_EXPIRED_MESSAGES_CHUNK_DELETE = "delete top ";
+
+    public static final String DELETE_EXPIRED_MESSAGES_CHUNK_FROM_CLAUSE = " from dbo.inbx_msg " +
+            "where " + Constants.MSG_ACTIVE_UNTIL_COLNAME + " < getdate()";
+
+    //Lease lock table
+    public static final String LOCK_NAME_COLNAME = "lock_name";
+    public static final String LOCK_OWNER_COLNAME = "ownr";
+    public static final String LOCK_LEASE_UNTIL_COLNAME = "lease_until";
+    public static final String LEASE_SECONDS_PARAM = "lease_seconds";
+
+    public static final String ACQUIRE_LEASE_QUERY = "update dbo.inbx_lock " +
+            "set " + Constants.LOCK_OWNER_COLNAME + " = :" + Constants.LOCK_OWNER_COLNAME + ", " +
+            Constants.LOCK_LEASE_UNTIL_COLNAME + " = dateadd(ss, :" + Constants.LEASE_SECONDS_PARAM + ", getdate()) " +
+            "where " + Constants.LOCK_NAME_COLNAME + " = :" + Constants.LOCK_NAME_COLNAME + " " +
+            "and (" + Constants.LOCK_OWNER_COLNAME + " = :" + Constants.LOCK_OWNER_COLNAME +
+            " or " + Constants.LOCK_LEASE_UNTIL_COLNAME + " is null" +
+            " or " + Constants.LOCK_LEASE_UNTIL_COLNAME + " < getdate())";
+
+    public static final String RELEASE_LEASE_QUERY = "update dbo.inbx_lock " +
+            "set " + Constants.LOCK_OWNER_COLNAME + " = null, " + Constants.LOCK_LEASE_UNTIL_COLNAME + " = null " +
+            "where " + Constants.LOCK_NAME_COLNAME + " = :" + Constants.LOCK_NAME_COLNAME + " " +
+            "and " + Constants.LOCK_OWNER_COLNAME + " = :" + Constants.LOCK_OWNER_COLNAME;
+
+    public static final String EXPIRED_MESSAGE_SWEEPER_LOCK = "EXPIRED_MSG_SWEEPER";
+
+    //Archive. Rows keep their inbx_msg_id, arch_month (yyyymm) and type select the partition
+    public static final String MSG_IDS_PARAM = "inbx_msg_ids";
+    public static final String CREATED_BEFORE_PARAM = "created_before";
+    public static final String ARCH_MONTH_BEFORE_PARAM = "arch_month_before";
+
+    public static final String ARCHIVED_COLUMNS =
+            Constants.MESSAGE_COLUMNS + ", " +
+                    Constants.MSG_ACTIVE_UNTIL_COLNAME + ", " +
+                    Constants.LAST_UPDT_PGM_COLNAME + ", " +
+                    Constants.LAST_UPDT_TMSP_COLNAME;
+
+    //Archived rows hold their own copy of the content
+    public static final String STORED_ARCHIVED_COLUMNS =
+            Constants.STORED_MESSAGE_COLUMNS + ", " +
+                    Constants.MSG_ACTIVE_UNTIL_COLNAME + ", " +
+                    "m." + Constants.LAST_UPDT_PGM_COLNAME + ", " +
+                    "m." + Constants.LAST_UPDT_TMSP_COLNAME;
+
+    public static final String ARCHIVED_MESSAGES_FOR_USER_FROM_CLAUSE =
+            "from dbo.inbx_msg_arch " +
+                    "where " + Constants.MSG_LAN_ID_COLNAME + " = " + ":" + Constants.MSG_LAN_ID_COLNAME;
+
+    //Messages archived by age before they expired are still active, so they only show up under ALL
+    public static final String GET_INACTIVE_MESSAGES_WITH_ARCHIVE_FOR_USER_QUERY =
+            Constants.GET_INACTIVE_MESSAGES_FOR_USER_QUERY +
+                    " union all " +
+                    "select " + Constants.MESSAGE_COLUMNS + " " + Constants.ARCHIVED_MESSAGES_FOR_USER_FROM_CLAUSE + Constants.INACTIVE_MESSAGES_PREDICATE;
+
+    public static final String GET_ALL_MESSAGES_WITH_ARCHIVE_FOR_USER_QUERY =
+            Constants.GET_ALL_MESSAGES_FOR_USER_QUERY +
+                    " union all " +
+                    "select " + Constants.MESSAGE_COLUMNS + " " + Constants.ARCHIVED_MESSAGES_FOR_USER_FROM_CLAUSE;
+
+    public static final String DELETE_EXPIRED_ARCHIVED_MESSAGES_QUERY = "delete from dbo.inbx_msg_arch " +
+            "where " + Constants.MSG_LAN_ID_COLNAME + " = " + ":" + Constants.MSG_LAN_ID_COLNAME + " " +
+            "and " + Constants.MSG_ACTIVE_UNTIL_COLNAME + " < getdate()";
+
+    //Row count is appended after the "top"
+    public static final String SELECT_ARCHIVE_CANDIDATES = "select top ";
+
+    public static final String EXPIRED_ARCHIVE_CANDIDATES_FROM_CLAUSE = " " + Constants.MSG_ID_COLNAME + " from dbo.inbx_msg " +
+            "where " + Constants.MSG_ACTIVE_UNTIL_COLNAME + " < getdate()";
+
+    public static final String AGED_ARCHIVE_CANDIDATES_FROM_CLAUSE = " " + Constants.MSG_ID_COLNAME + " from dbo.inbx_msg " +
+            "where " + Constants.MSG_TYPE_COLNAME + " = :" + Constants.MSG_TYPE_COLNAME + " " +
+            "and " + Constants.MSG_CREATION_DATE_COLNAME + " < :" + Constants.CREATED_BEFORE_PARAM;
+
+    //Skips rows a previous, interrupted move already copied
+    public static final String COPY_TO_ARCHIVE_QUERY =
+            "insert into dbo.inbx_msg_arch (" + Constants.ARCHIVED_COLUMNS + ", " + Constants.ARCH_MONTH_COLNAME + ") " +
+                    "select " + Constants.STORED_ARCHIVED_COLUMNS + ", :" + Constants.ARCH_MONTH_COLNAME + " " +
+                    "from " + Constants.MESSAGE_TABLES + " " +
+                    "where m." + Constants.MSG_ID_COLNAME + " in (:" + Constants.MSG_IDS_PARAM + ") " +
+                    "and not exists (select 1 from dbo.inbx_msg_arch a where a." + Constants.MSG_ID_COLNAME + " = m." + Constants.MSG_ID_COLNAME + ")";
+
+    //Only deletes rows whose archive copy exists
+    public static final String DELETE_ARCHIVED_FROM_HOT_QUERY = "delete from dbo.inbx_msg " +
+            "where " + Constants.MSG_ID_COLNAME + " in (:" + Constants.MSG_IDS_PARAM + ") " +
+            "and exists (select 1 from dbo.inbx_msg_arch a where a." + Constants.MSG_ID_COLNAME + " = dbo.inbx_msg." + Constants.MSG_ID_COLNAME + ")";
+
+    public static final String GET_ARCHIVE_MONTHS_BEFORE_QUERY = "select distinct " + Constants.ARCH_MONTH_COLNAME + " " +
+            "from dbo.inbx_msg_arch " +
+            "where " + Constants.MSG_TYPE_COLNAME + " = :" + Constants.MSG_TYPE_COLNAME + " " +
+            "and " + Constants.ARCH_MONTH_COLNAME + " < :" + Constants.ARCH_MONTH_BEFORE_PARAM;
+
+    //Placeholders in the partition drop statement
+    public static final String PARTITION_NAME_PLACEHOLDER = "{partition}";
+    public static final String PARTITION_MONTH_PLACEHOLDER = "{month}";
+    public static final String PARTITION_TYPE_PLACEHOLDER = "{type}";
+
+    //Sybase range partitions of dbo.inbx_msg_arch are named p<yyyymm><type code>
+    public static final String DEFAULT_DROP_ARCHIVE_PARTITION_STATEMENT =
+            "truncate table dbo.inbx_msg_arch partition " + Constants.PARTITION_NAME_PLACEHOLDER;
+
+    //Message counters. One row per user, type, priority and active day holds the number of dbo.inbx_msg rows
+    //with those values. The active day is the midnight starting the day active_until falls on, so a user has at
+    //most one counter per type and priority for each day messages expire on. Messages count as ACTIVE until the
+    //end of the day they expire on
+    public static final String MSG_COUNT_COLNAME = "msg_cnt";
+    public static final String ACTIVE_COUNT_COLNAME = "active_cnt";
+    public static final String INACTIVE_COUNT_COLNAME = "inactive_cnt";
+
+    //Wrapped around a datetime expression, gives the midnight starting its day
+    public static final String ACTIVE_DAY_START = "dateadd(dd, datediff(dd, '1900-01-01', ";
+    public static final String ACTIVE_DAY_END = "), '1900-01-01')";
+    public static final String TODAY = Constants.ACTIVE_DAY_START + "getdate()" + Constants.ACTIVE_DAY_END;
+
+    public static final String MESSAGE_COUNT_KEY_PREDICATE =
+            "where " + Constants.MSG_LAN_ID_COLNAME + " = :" + Constants.MSG_LAN_ID_COLNAME + " " +
+                    "and " + Constants.MSG_TYPE_COLNAME + " = :" + Constants.MSG_TYPE_COLNAME + " " +
+                    "and " + Constants.MSG_PRIORITY_COLNAME + " = :" + Constants.MSG_PRIORITY_COLNAME + " " +
+                    "and " + Constants.MSG_ACTIVE_UNTIL_COLNAME + " = :" + Constants.MSG_ACTIVE_UNTIL_COLNAME;
+
+    //Creates the missing counter row, so the increment below always finds one
+    public static final String SEED_MESSAGE_COUNT_QUERY = "insert into dbo.inbx_msg_cnt (" +
+            Constants.MSG_LAN_ID_COLNAME + ", " + Constants.MSG_TYPE_COLNAME + ", " + Constants.MSG_PRIORITY_COLNAME + ", " +
+            Constants.MSG_ACTIVE_UNTIL_COLNAME + ", " + Constants.MSG_COUNT_COLNAME + ") " +
+            "select :" + Constants.MSG_LAN_ID_COLNAME + ", :" + Constants.MSG_TYPE_COLNAME + ", :" + Constants.MSG_PRIORITY_COLNAME + ", :" +
+            Constants.MSG_ACTIVE_UNTIL_COLNAME + ", 0 " +
+            "where not exists (select 1 from dbo.inbx_msg_cnt " + Constants.MESSAGE_COUNT_KEY_PREDICATE + ")";
+
+    public static final String INCREMENT_MESSAGE_COUNT_QUERY = "update dbo.inbx_msg_cnt " +
+            "set " + Constants.MSG_COUNT_COLNAME + " = " + Constants.MSG_COUNT_COLNAME + " + 1 " +
+            Constants.MESSAGE_COUNT_KEY_PREDICATE;
+
+    //Matches the counter row of the message by its ID, so it has to run before the message is deleted
+    public static final String MESSAGE_COUNT_FOR_MESSAGE_PREDICATE =
+            "where " + Constants.MSG_LAN_ID_COLNAME + " = (select " + Constants.MSG_LAN_ID_COLNAME + " from dbo.inbx_msg " +
+                    "where " + Constants.MSG_ID_COLNAME + " = :" + Constants.MSG_ID_COLNAME + ") " +
+                    "and exists (select 1 from dbo.inbx_msg m " +
+                    "where m." + Constants.MSG_ID_COLNAME + " = :" + Constants.MSG_ID_COLNAME + " " +
+                    "and m." + Constants.MSG_TYPE_COLNAME + " = dbo.inbx_msg_cnt." + Constants.MSG_TYPE_COLNAME + " " +
+                    "and m." + Constants.MSG_PRIORITY_COLNAME + " = dbo.inbx_msg_cnt." + Constants.MSG_PRIORITY_COLNAME + " " +
+                    "and " + Constants.ACTIVE_DAY_START + "m." + Constants.MSG_ACTIVE_UNTIL_COLNAME + Constants.ACTIVE_DAY_END +
+                    " = dbo.inbx_msg_cnt." + Constants.MSG_ACTIVE_UNTIL_COLNAME + ")";
+
+    public static final String DECREMENT_MESSAGE_COUNT_QUERY = "update dbo.inbx_msg_cnt " +
+            "set " + Constants.MSG_COUNT_COLNAME + " = " + Constants.MSG_COUNT_COLNAME + " - 1 " +
+            Constants.MESSAGE_COUNT_FOR_MESSAGE_PREDICATE;
+
+    public static final String DECREMENT_MESSAGE_COUNT_BY_KEY_QUERY = "update dbo.inbx_msg_cnt " +
+            "set " + Constants.MSG_COUNT_COLNAME + " = " + Constants.MSG_COUNT_COLNAME + " - 1 " +
+            Constants.MESSAGE_COUNT_KEY_PREDICATE;
+
+    public static final String DELETE_EMPTY_MESSAGE_COUNT_BY_KEY_QUERY = "delete from dbo.inbx_msg_cnt " +
+            Constants.MESSAGE_COUNT_KEY_PREDICATE + " " +
+            "and " + Constants.MSG_COUNT_COLNAME + " <= 0";
+
+    public static final String DELETE_EMPTY_MESSAGE_COUNT_QUERY = "delete from dbo.inbx_msg_cnt " +
+            Constants.MESSAGE_COUNT_FOR_MESSAGE_PREDICATE + " " +
+            "and " + Constants.MSG_COUNT_COLNAME + " <= 0";
+
+    //Counts the messages of the counter row's user, type and priority expiring on its active day, seeking on
+    //dbo.inbx_msg's active_until. Only used on past and current days, so the day after never overflows
+    public static final String COUNT_MESSAGES_FOR_COUNTER_QUERY = "(select count(*) from dbo.inbx_msg m " +
+            "where m." + Constants.MSG_LAN_ID_COLNAME + " = dbo.inbx_msg_cnt." + Constants.MSG_LAN_ID_COLNAME + " " +
+            "and m." + Constants.MSG_ACTIVE_UNTIL_COLNAME + " >= dbo.inbx_msg_cnt." + Constants.MSG_ACTIVE_UNTIL_COLNAME + " " +
+            "and m." + Constants.MSG_ACTIVE_UNTIL_COLNAME + " < dateadd(dd, 1, dbo.inbx_msg_cnt." + Constants.MSG_ACTIVE_UNTIL_COLNAME + ") " +
+            "and m." + Constants.MSG_TYPE_COLNAME + " = dbo.inbx_msg_cnt." + Constants.MSG_TYPE_COLNAME + " " +
+            "and m." + Constants.MSG_PRIORITY_COLNAME + " = dbo.inbx_msg_cnt." + Constants.MSG_PRIORITY_COLNAME + ")";
+
+    //Runs after the user's expired messages are deleted: past days only held expired messages, and the
+    //current day is recounted since it may still hold messages expiring later today
+    public static final String DELETE_EXPIRED_MESSAGE_COUNTS_QUERY = "delete from dbo.inbx_msg_cnt " +
+            "where " + Constants.MSG_LAN_ID_COLNAME + " = :" + Constants.MSG_LAN_ID_COLNAME + " " +
+            "and " + Constants.MSG_ACTIVE_UNTIL_COLNAME + " < " + Constants.TODAY;
+
+    public static final String RECOUNT_TODAYS_MESSAGE_COUNTS_QUERY = "update dbo.inbx_msg_cnt " +
+            "set " + Constants.MSG_COUNT_COLNAME + " = " + Constants.COUNT_MESSAGES_FOR_COUNTER_QUERY + " " +
+            "where " + Constants.MSG_LAN_ID_COLNAME + " = :" + Constants.MSG_LAN_ID_COLNAME + " " +
+            "and " + Constants.MSG_ACTIVE_UNTIL_COLNAME + " = " + Constants.TODAY;
+
+    public static final String DELETE_EMPTY_MESSAGE_COUNTS_FOR_USER_QUERY = "delete from dbo.inbx_msg_cnt " +
+            "where " + Constants.MSG_LAN_ID_COLNAME + " = :" + Constants.MSG_LAN_ID_COLNAME + " " +
+            "and " + Constants.MSG_COUNT_COLNAME + " <= 0";
+
+    //At most one row per type and priority of each active day, with no dbo.inbx_msg access
+    public static final String GET_MESSAGE_COUNTS_FOR_USER_QUERY = "select " +
+            Constants.MSG_TYPE_COLNAME + ", " + Constants.MSG_PRIORITY_COLNAME + ", " +
+            "sum(case when " + Constants.MSG_ACTIVE_UNTIL_COLNAME + " >= " + Constants.TODAY + " then " + Constants.MSG_COUNT_COLNAME + " else 0 end) as " + Constants.ACTIVE_COUNT_COLNAME + ", " +
+            "sum(case when " + Constants.MSG_ACTIVE_UNTIL_COLNAME + " < " + Constants.TODAY + " then " + Constants.MSG_COUNT_COLNAME + " else 0 end) as " + Constants.INACTIVE_COUNT_COLNAME + " " +
+            "from dbo.inbx_msg_cnt " +
+            "where " + Constants.MSG_LAN_ID_COLNAME + " = :" + Constants.MSG_LAN_ID_COLNAME + " " +
+            "group by " + Constants.MSG_TYPE_COLNAME + ", " + Constants.MSG_PRIORITY_COLNAME;
+
+    //Background jobs delete expired messages in chunks across users, so the counters of past days and the
+    //current day are recounted afterwards
+    public static final String RECOUNT_EXPIRED_MESSAGE_COUNTS_QUERY = "update dbo.inbx_msg_cnt " +
+            "set " + Constants.MSG_COUNT_COLNAME + " = " + Constants.COUNT_MESSAGES_FOR_COUNTER_QUERY + " " +
+            "where " + Constants.MSG_ACTIVE_UNTIL_COLNAME + " <= " + Constants.TODAY;
+
+    public static final String DELETE_EMPTY_EXPIRED_MESSAGE_COUNTS_QUERY = "delete from dbo.inbx_msg_cnt " +
+            "where " + Constants.MSG_ACTIVE_UNTIL_COLNAME + " <= " + Constants.TODAY + " " +
+            "and " + Constants.MSG_COUNT_COLNAME + " <= 0";
+
+    public static final String DELETE_MESSAGE_COUNTS_FOR_USERS_QUERY = "delete from dbo.inbx_msg_cnt " +
+            "where " + Constants.MSG_LAN_ID_COLNAME + " in (:" + Constants.MSG_LAN_ID_COLNAME + ")";
+
+    public static final String COUNT_MESSAGES_FOR_USERS_QUERY = "insert into dbo.inbx_msg_cnt (" +
+            Constants.MSG_LAN_ID_COLNAME + ", " + Constants.MSG_TYPE_COLNAME + ", " + Constants.MSG_PRIORITY_COLNAME + ", " +
+            Constants.MSG_ACTIVE_UNTIL_COLNAME + ", " + Constants.MSG_COUNT_COLNAME + ") " +
+            "select " + Constants.MSG_LAN_ID_COLNAME + ", " + Constants.MSG_TYPE_COLNAME + ", " + Constants.MSG_PRIORITY_COLNAME + ", " +
+            Constants.ACTIVE_DAY_START + Constants.MSG_ACTIVE_UNTIL_COLNAME + Constants.ACTIVE_DAY_END + ", count(*) " +
+            "from dbo.inbx_msg " +
+            "where " + Constants.MSG_LAN_ID_COLNAME + " in (:" + Constants.MSG_LAN_ID_COLNAME + ") " +
+            "and " + Constants.MSG_ACTIVE_UNTIL_COLNAME + " is not null " +
+            "group by " + Constants.MSG_LAN_ID_COLNAME + ", " + Constants.MSG_TYPE_COLNAME + ", " + Constants.MSG_PRIORITY_COLNAME + ", " +
+            Constants.ACTIVE_DAY_START + Constants.MSG_ACTIVE_UNTIL_COLNAME + Constants.ACTIVE_DAY_END;
+
+    public static final String GET_ARCHIVED_MESSAGE_USERS_QUERY = "select distinct " + Constants.MSG_LAN_ID_COLNAME + " " +
+            "from dbo.inbx_msg_arch " +
+            "where " + Constants.MSG_ID_COLNAME + " in (:" + Constants.MSG_IDS_PARAM + ")";
+
+    //Inbox cache invalidations, polled by every node
+    public static final String INSERT_CACHE_INVALIDATION_QUERY = "insert into dbo.inbx_cache_invl (" +
+            Constants.MSG_LAN_ID_COLNAME + ", " + Constants.MSG_CREATION_DATE_COLNAME + ") " +
+            "values (:" + Constants.MSG_LAN_ID_COLNAME + ", getdate())";
+
+    public static final String GET_DB_TIME_QUERY = "select getdate()";
+
+    public static final String GET_CACHE_INVALIDATIONS_SINCE_QUERY = "select distinct " + Constants.MSG_LAN_ID_COLNAME + " " +
+            "from dbo.inbx_cache_invl " +
+            "where " + Constants.MSG_CREATION_DATE_COLNAME + " >= :" + Constants.MSG_CREATION_DATE_COLNAME;
+
+    //Published on the invalidation channel when a broadcast changes, not a valid lan ID and within user_lan_id's char(8)
+    public static final String BROADCAST_INVALIDATION_KEY = "*bcast";
+
+    public static final String DELETE_CACHE_INVALIDATIONS_BEFORE_QUERY = "delete from dbo.inbx_cache_invl " +
+            "where " + Constants.MSG_CREATION_DATE_COLNAME + " < :" + Constants.MSG_CREATION_DATE_COLNAME;
+
+    //Idempotency keys of create requests, with the response returned to the first request
+    public static final String IDEMPOTENCY_KEY_COLNAME = "idem_key";
+    public static final String IDEMPOTENCY_REQUEST_HASH_COLNAME = "req_hash";
+    public static final String IDEMPOTENCY_RESPONSE_COLNAME = "rsp_body";
+
+    public static final String INSERT_IDEMPOTENCY_KEY_QUERY = "insert into dbo.inbx_idem_key (" +
+            Constants.IDEMPOTENCY_KEY_COLNAME + ", " + Constants.IDEMPOTENCY_REQUEST_HASH_COLNAME + ", " +
+            Constants.IDEMPOTENCY_RESPONSE_COLNAME + ", " + Constants.MSG_CREATION_DATE_COLNAME + ") " +
+            "values (:" + Constants.IDEMPOTENCY_KEY_COLNAME + ", :" + Constants.IDEMPOTENCY_REQUEST_HASH_COLNAME + ", null, getdate())";
+
+    public static final String UPDATE_IDEMPOTENCY_RESPONSE_QUERY = "update dbo.inbx_idem_key " +
+            "set " + Constants.IDEMPOTENCY_RESPONSE_COLNAME + " = :" + Constants.IDEMPOTENCY_RESPONSE_COLNAME + " " +
+            "where " + Constants.IDEMPOTENCY_KEY_COLNAME + " = :" + Constants.IDEMPOTENCY_KEY_COLNAME;
+
+    public static final String GET_IDEMPOTENCY_KEY_QUERY = "select " + Constants.IDEMPOTENCY_KEY_COLNAME + ", " +
+            Constants.IDEMPOTENCY_REQUEST_HASH_COLNAME + ", " + Constants.IDEMPOTENCY_RESPONSE_COLNAME + " " +
+            "from dbo.inbx_idem_key " +
+            "where " + Constants.IDEMPOTENCY_KEY_COLNAME + " = :" + Constants.IDEMPOTENCY_KEY_COLNAME;
+
+    public static final String DELETE_IDEMPOTENCY_KEYS_BEFORE_QUERY = "delete from dbo.inbx_idem_key " +
+            "where " + Constants.MSG_CREATION_DATE_COLNAME + " < :" + Constants.MSG_CREATION_DATE_COLNAME;
+
+    //Registered message templates, rendered once per recipient by POST /messages/templated
+    public static final String MESSAGE_TEMPLATE_COLUMNS =
+            Constants.TEMPLATE_ID_COLNAME + ", " +
+                    Constants.MSG_SUMMARY_COLNAME + ", " +
+                    Constants.MSG_PRIORITY_COLNAME + ", " +
+                    Constants.MSG_TYPE_COLNAME + ", " +
+                    Constants.MSG_ACTION_LINK_COLNAME + ", " +
+                    Constants.MSG_ACTION_LABEL_COLNAME + ", " +
+                    Constants.MSG_INTERNAL_COLNAME + ", " +
+                    Constants.LAST_UPDT_USER_COLNAME;
+
+    public static final String GET_MESSAGE_TEMPLATE_QUERY = "select " + Constants.MESSAGE_TEMPLATE_COLUMNS + " " +
+            "from dbo.inbx_msg_tmpl " +
+            "where " + Constants.TEMPLATE_ID_COLNAME + " = :" + Constants.TEMPLATE_ID_COLNAME;
+
+    public static final String INSERT_MESSAGE_TEMPLATE_QUERY = "insert into dbo.inbx_msg_tmpl (" +
+            Constants.MESSAGE_TEMPLATE_COLUMNS + ", " + Constants.LAST_UPDT_PGM_COLNAME + ", " + Constants.LAST_UPDT_TMSP_COLNAME + ") " +
+            "values (:" + Constants.TEMPLATE_ID_COLNAME + ", :" + Constants.MSG_SUMMARY_COLNAME + ", :" + Constants.MSG_PRIORITY_COLNAME + ", " +
+            ":" + Constants.MSG_TYPE_COLNAME + ", :" + Constants.MSG_ACTION_LINK_COLNAME + ", :" + Constants.MSG_ACTION_LABEL_COLNAME + ", " +
+            ":" + Constants.MSG_INTERNAL_COLNAME + ", :" + Constants.LAST_UPDT_USER_COLNAME + ", 'InboxService', getdate())";
+
+    public static final String UPDATE_MESSAGE_TEMPLATE_QUERY = "update dbo.inbx_msg_tmpl " +
+            "set " + Constants.MSG_SUMMARY_COLNAME + " = :" + Constants.MSG_SUMMARY_COLNAME + ", " +
+            Constants.MSG_PRIORITY_COLNAME + " = :" + Constants.MSG_PRIORITY_COLNAME + ", " +
+            Constants.MSG_TYPE_COLNAME + " = :" + Constants.MSG_TYPE_COLNAME + ", " +
+            Constants.MSG_ACTION_LINK_COLNAME + " = :" + Constants.MSG_ACTION_LINK_COLNAME + ", " +
+            Constants.MSG_ACTION_LABEL_COLNAME + " = :" + Constants.MSG_ACTION_LABEL_COLNAME + ", " +
+            Constants.MSG_INTERNAL_COLNAME + " = :" + Constants.MSG_INTERNAL_COLNAME + ", " +
+            Constants.LAST_UPDT_USER_COLNAME + " = :" + Constants.LAST_UPDT_USER_COLNAME + ", " +
+            Constants.LAST_UPDT_TMSP_COLNAME + " = getdate() " +
+            "where " + Constants.TEMPLATE_ID_COLNAME + " = :" + Constants.TEMPLATE_ID_COLNAME;
+
+    //Recipient groups named in create requests in place of their members' lan IDs
+    public static final String AFTER_LAN_ID_PARAM = "after_user_lan_id";
+
+    public static final String GET_RECIPIENT_GROUP_QUERY = "select g." + Constants.GROUP_NAME_COLNAME + ", " +
+            "g." + Constants.GROUP_VERSION_COLNAME + ", " +
+            "g." + Constants.LAST_UPDT_USER_COLNAME + ", " +
+            "(select count(*) from dbo.inbx_rcpt_grp_mbr m where m." + Constants.GROUP_NAME_COLNAME + " = g." + Constants.GROUP_NAME_COLNAME + ") " + Constants.GROUP_MEMBER_COUNT_COLNAME + " " +
+            "from dbo.inbx_rcpt_grp g " +
+            "where g." + Constants.GROUP_NAME_COLNAME + " = :" + Constants.GROUP_NAME_COLNAME;
+
+    public static final String GET_RECIPIENT_GROUP_NAMES_QUERY = "select " + Constants.GROUP_NAME_COLNAME + " " +
+            "from dbo.inbx_rcpt_grp " +
+            "where " + Constants.GROUP_NAME_COLNAME + " in (:" + Constants.GROUP_NAME_COLNAME + ")";
+
+    public static final String INSERT_RECIPIENT_GROUP_QUERY = "insert into dbo.inbx_rcpt_grp (" +
+            Constants.GROUP_NAME_COLNAME + ", " + Constants.GROUP_VERSION_COLNAME + ", " + Constants.LAST_UPDT_USER_COLNAME + ", " +
+            Constants.LAST_UPDT_PGM_COLNAME + ", " + Constants.LAST_UPDT_TMSP_COLNAME + ") " +
+            "values (:" + Constants.GROUP_NAME_COLNAME + ", 1, :" + Constants.LAST_UPDT_USER_COLNAME + ", 'InboxService', getdate())";
+
+    public static final String UPDATE_RECIPIENT_GROUP_VERSION_QUERY = "update dbo.inbx_rcpt_grp " +
+            "set " + Constants.GROUP_VERSION_COLNAME + " = " + Constants.GROUP_VERSION_COLNAME + " + 1, " +
+            Constants.LAST_UPDT_USER_COLNAME + " = :" + Constants.LAST_UPDT_USER_COLNAME + ", " +
+            Constants.LAST_UPDT_TMSP_COLNAME + " = getdate() " +
+            "where " + Constants.GROUP_NAME_COLNAME + " = :" + Constants.GROUP_NAME_COLNAME;
+
+    public static final String RECIPIENT_GROUP_VERSION_PREDICATE =
+            " and " + Constants.GROUP_VERSION_COLNAME + " = :" + Constants.GROUP_VERSION_COLNAME;
+
+    public static final String INSERT_RECIPIENT_GROUP_MEMBER_QUERY = "insert into dbo.inbx_rcpt_grp_mbr (" +
+            Constants.GROUP_NAME_COLNAME + ", " + Constants.MSG_LAN_ID_COLNAME + ") " +
+            "values (:" + Constants.GROUP_NAME_COLNAME + ", :" + Constants.MSG_LAN_ID_COLNAME + ")";
+
+    public static final String DELETE_RECIPIENT_GROUP_MEMBERS_QUERY = "delete from dbo.inbx_rcpt_grp_mbr " +
+            "where " + Constants.GROUP_NAME_COLNAME + " = :" + Constants.GROUP_NAME_COLNAME + " " +
+            "and " + Constants.MSG_LAN_ID_COLNAME + " in (:" + Constants.MSG_LAN_ID_COLNAME + ")";
+
+    //Members of several groups are read once, the page size follows "select top"
+    public static final String RECIPIENT_GROUP_MEMBERS_PAGE_SELECT = "select top ";
+
+    public static final String RECIPIENT_GROUP_MEMBERS_PAGE_CLAUSE = " " + Constants.MSG_LAN_ID_COLNAME + " " +
+            "from dbo.inbx_rcpt_grp_mbr " +
+            "where " + Constants.GROUP_NAME_COLNAME + " in (:" + Constants.GROUP_NAME_COLNAME + ") " +
+            "and " + Constants.MSG_LAN_ID_COLNAME + " > :" + Constants.AFTER_LAN_ID_PARAM + " " +
+            "group by " + Constants.MSG_LAN_ID_COLNAME + " " +
+            "order by " + Constants.MSG_LAN_ID_COLNAME;
+
+
+    //Global broadcasts, stored once and merged into every user's message list under the ID "B" + bcst_id
+    public static final String BROADCAST_ID_PREFIX = "B";
+
+    public static final String BROADCAST_COLUMNS =
+            Constants.BROADCAST_ID_COLNAME + " as " + Constants.MSG_ID_COLNAME + ", " +
+                    "'' as " + Constants.MSG_LAN_ID_COLNAME + ", " +
+                    Constants.MSG_CREATION_DATE_COLNAME + ", " +
+                    Constants.MSG_PRIORITY_COLNAME + ", " +
+                    Constants.MSG_TYPE_COLNAME + ", " +
+                    Constants.MSG_ACTION_LINK_COLNAME + ", " +
+                    Constants.MSG_ACTION_LABEL_COLNAME + ", " +
+                    Constants.MSG_INTERNAL_COLNAME + ", " +
+                    Constants.MSG_EXP_DATE_COLNAME + ", " +
+                    Constants.LAST_UPDT_USER_COLNAME + ", " +
+                    Constants.MSG_SUMMARY_COLNAME;
+
+    public static final String GET_BROADCASTS_QUERY = "select " + Constants.BROADCAST_COLUMNS + " " +
+            "from dbo.inbx_bcst " +
+            "order by " + Constants.MSG_CREATION_DATE_COLNAME + ", " + Constants.BROADCAST_ID_COLNAME;
+
+    public static final String GET_BROADCAST_BY_ID_QUERY = "select " + Constants.BROADCAST_COLUMNS + " " +
+            "from dbo.inbx_bcst " +
+            "where " + Constants.BROADCAST_ID_COLNAME + " = :" + Constants.BROADCAST_ID_COLNAME;
+
+    public static final String INSERT_BROADCAST_QUERY = "insert into dbo.inbx_bcst (" +
+            Constants.MSG_SUMMARY_COLNAME + ", " + Constants.MSG_CREATION_DATE_COLNAME + ", " + Constants.MSG_PRIORITY_COLNAME + ", " +
+            Constants.MSG_TYPE_COLNAME + ", " + Constants.MSG_ACTION_LINK_COLNAME + ", " + Constants.MSG_ACTION_LABEL_COLNAME + ", " +
+            Constants.MSG_INTERNAL_COLNAME + ", " + Constants.MSG_EXP_DATE_COLNAME + ", " + Constants.MSG_ACTIVE_UNTIL_COLNAME + ", " +
+            Constants.LAST_UPDT_USER_COLNAME + ", " + Constants.LAST_UPDT_PGM_COLNAME + ", " + Constants.LAST_UPDT_TMSP_COLNAME + ") " +
+            "values (:" + Constants.MSG_SUMMARY_COLNAME + ", :" + Constants.MSG_CREATION_DATE_COLNAME + ", :" + Constants.MSG_PRIORITY_COLNAME + ", " +
+            ":" + Constants.MSG_TYPE_COLNAME + ", :" + Constants.MSG_ACTION_LINK_COLNAME + ", :" + Constants.MSG_ACTION_LABEL_COLNAME + ", " +
+            ":" + Constants.MSG_INTERNAL_COLNAME + ", :" + Constants.MSG_EXP_DATE_COLNAME + ", :" + Constants.MSG_ACTIVE_UNTIL_COLNAME + ", " +
+            ":" + Constants.LAST_UPDT_USER_COLNAME + ", 'InboxService', getdate())";
+
+    public static final String DELETE_BROADCAST_QUERY = "delete from dbo.inbx_bcst " +
+            "where " + Constants.BROADCAST_ID_COLNAME + " = :" + Constants.BROADCAST_ID_COLNAME;
+
+    public static final String GET_DISMISSED_BROADCAST_IDS_QUERY = "select " + Constants.BROADCAST_ID_COLNAME + " " +
+            "from dbo.inbx_bcst_dsms " +
+            "where " + Constants.MSG_LAN_ID_COLNAME + " = :" + Constants.MSG_LAN_ID_COLNAME;
+
+    public static final String INSERT_BROADCAST_DISMISSAL_QUERY = "insert into dbo.inbx_bcst_dsms (" +
+            Constants.MSG_LAN_ID_COLNAME + ", " + Constants.BROADCAST_ID_COLNAME + ") " +
+            "values (:" + Constants.MSG_LAN_ID_COLNAME + ", :" + Constants.BROADCAST_ID_COLNAME + ")";
+
+    public static final String DELETE_BROADCAST_DISMISSALS_QUERY = "delete from dbo.inbx_bcst_dsms " +
+            "where " + Constants.BROADCAST_ID_COLNAME + " = :" + Constants.BROADCAST_ID_COLNAME;
+
+    //Both deletes use the same cutoff from the application clock, so they remove the same broadcasts
+    public static final String DELETE_EXPIRED_BROADCAST_DISMISSALS_QUERY = "delete from dbo.inbx_bcst_dsms " +
+            "where " + Constants.BROADCAST_ID_COLNAME + " in (select " + Constants.BROADCAST_ID_COLNAME + " from dbo.inbx_bcst " +
+            "where " + Constants.MSG_ACTIVE_UNTIL_COLNAME + " < :" + Constants.MSG_ACTIVE_UNTIL_COLNAME + ")";
+
+    public static final String DELETE_EXPIRED_BROADCASTS_QUERY = "delete from dbo.inbx_bcst " +
+            "where " + Constants.MSG_ACTIVE_UNTIL_COLNAME + " < :" + Constants.MSG_ACTIVE_UNTIL_COLNAME;
+
+
+    public static final String ERROR_GETTING_MESSAGES_FOR_USER = "Could not retrieve messages for lanId: ";
+    public static final String ERROR_INSERTING_MESSAGE = "Could not insert message into the database: ";
+    public static final String ERROR_GETTING_MESSAGE = "Could not retrieve message: ";
+    public static final String ERROR_GETTING_MESSAGE_AFTER_INSERT = "Error retrieving the inserted message: ";
+    public static final String ERROR_NO_GENERATED_KEY = "No message ID was generated for the inserted message";
+    public static final String ERROR_DELETING_MESSAGE = "Could not delete message: ";
+    public static final String ERROR_GETTING_DUPLICATE_MESSAGES = "Could not check for duplicate messages: ";
+    public static final String ERROR_REFRESHING_MESSAGES = "Could not refresh duplicate messages: ";
+    public static final String ERROR_SWEEPING_EXPIRED_MESSAGES = "Could not delete expired messages: ";
+    public static final String ERROR_INSERTING_MESSAGE_CONTENT = "Could not insert message content: ";
+    public static final String ERROR_DELETING_ORPHANED_MESSAGE_CONTENT = "Could not delete orphaned message content: ";
+    public static final String ERROR_ACQUIRING_LEASE = "Could not acquire lease: ";
+    public static final String ERROR_RELEASING_LEASE = "Could not release lease: ";
+    public static final String ERROR_ARCHIVING_MESSAGES = "Could not archive messages: ";
+    public static final String ERROR_DROPPING_ARCHIVE_PARTITION = "Could not drop archive partition: ";
+    public static final String ERROR_GETTING_MESSAGE_COUNTS = "Could not retrieve message counts for lanId: ";
+    public static final String ERROR_UPDATING_MESSAGE_COUNTS = "Could not update message counts: ";
+    public static final String ERROR_PUBLISHING_CACHE_INVALIDATION = "Could not publish inbox cache invalidation: ";
+    public static final String ERROR_POLLING_CACHE_INVALIDATIONS = "Could not poll inbox cache invalidations: ";
+    public static final String ERROR_INGEST_NOT_ACCEPTING = "The ingest queue is not accepting requests";
+    public static final String ERROR_INGEST_QUEUE_FULL = "The ingest queue is full, retry later";
+    public static final String ERROR_INGEST_JOURNAL = "Could not write the ingest journal: ";
+    public static final String ERROR_APPLYING_INGESTED_MESSAGES = "Could not apply ingested messages: ";
+    public static final String ERROR_STORING_IDEMPOTENCY_KEY = "Could not store idempotency key: ";
+    public static final String ERROR_GETTING_IDEMPOTENCY_KEY = "Could not retrieve idempotency key: ";
+    public static final String ERROR_DELETING_IDEMPOTENCY_KEYS = "Could not delete idempotency keys: ";
+    public static final String ERROR_REPLAYING_IDEMPOTENT_RESPONSE = "Could not replay the response stored for idempotency key: ";
+    public static final String ERROR_GETTING_MESSAGE_TEMPLATE = "Could not retrieve message template: ";
+    public static final String ERROR_SAVING_MESSAGE_TEMPLATE = "Could not save message template: ";
+    public static final String ERROR_GETTING_RECIPIENT_GROUP = "Could not retrieve recipient group: ";
+    public static final String ERROR_UPDATING_RECIPIENT_GROUP = "Could not update recipient group: ";
+    public static final String ERROR_GETTING_RECIPIENT_GROUP_MEMBERS = "Could not retrieve recipient group members: ";
+    public static final String ERROR_GETTING_BROADCASTS = "Could not retrieve broadcasts: ";
+    public static final String ERROR_INSERTING_BROADCAST = "Could not insert broadcast: ";
+    public static final String ERROR_DELETING_BROADCAST = "Could not delete broadcast: ";
+    public static final String ERROR_GETTING_DISMISSED_BROADCASTS = "Could not retrieve dismissed broadcasts for lanId: ";
+    public static final String ERROR_DISMISSING_BROADCAST = "Could not dismiss broadcast: ";
+    public static final String ERROR_ON_INBOX_SHARD = "Inbox shard operation failed: ";
+    public static final String ERROR_SHARD_MSG_ID_OUT_OF_RANGE = "Message ID does not fit the ID range of its shard: ";
+    public static final String ERROR_JOINING_SHARD_TRANSACTION = "Could not open the transaction of inbox shard ";
+    public static final String ERROR_COMPLETING_SHARD_TRANSACTION = "Could not complete the transaction of inbox shard ";
+    public static final String INVALID_DATE_TIME = "Invalid date/time format: ";
+    public static final String EXP_DATE_LESS_THAN_CURRENT_DATE = "Expiration date/time must be after current date/time";
+    public static final String LAN_IDS_CONTAINS_INVALID_LAN_ID = "The field cannot contain an invalid LAN ID format";
+    public static final String INVALID_LAN_ID = "The field cannot have an invalid LAN ID format";
+    public static final String ERROR_ACCESS_DENIED = "You are not allowed to access this information";
+
+    public static final int LAN_ID_MAX_LENGTH = 8;
+    public static final int DEFAULT_INSERT_BATCH_SIZE = 500;
+    public static final int DEFAULT_NORMALIZED_MIN_RECIPIENTS = 2;
+    public static final int ORPHANED_CONTENT_MIN_AGE_MINUTES = 60;
+    public static final int DELETE_MESSAGES_MAX_IDS = 5000;
+    public static final int DEFAULT_STREAM_FETCH_SIZE = 200;
+    //Message IDs of shard n are n << SHARD_MSG_ID_BITS | the shard's own ID. 40 bits hold any numeric(10,0) ID, and
+    //MAX_INBOX_SHARDS keeps the IDs below 2^53 so JSON clients reading them as numbers do not round them
+    public static final int SHARD_MSG_ID_BITS = 40;
+    public static final int MAX_INBOX_SHARDS = 256;
+    public static final int DEFAULT_IN_MEMORY_LOCK_STRIPES = 64;
+    public static final int STREAM_FLUSH_ROWS = 100;
+    public static final int DEFAULT_SWEEP_CHUNK_SIZE = 100;
+    public static final long DEFAULT_SWEEP_PAUSE_MILLIS = 250;
+    public static final int DEFAULT_SWEEP_MAX_CHUNKS_PER_RUN = 1000;
+    public static final int DEFAULT_SWEEP_LEASE_SECONDS = 60;
+    public static final int DEFAULT_INGEST_SEGMENT_SIZE_BYTES = 64 * 1024 * 1024;
+    public static final int DEFAULT_INGEST_MAX_PENDING = 100000;
+    public static final int DEFAULT_INGEST_BATCH_SIZE = 100;
+    public static final long DEFAULT_INGEST_RETRY_MILLIS = 1000;
+    public static final long MAX_INGEST_RETRY_MILLIS = 30000;
+    public static final int DEFAULT_INGEST_MAX_ATTEMPTS = 30;
+    public static final long DEFAULT_INGEST_SHUTDOWN_TIMEOUT_MILLIS = 30000;
+    public static final long DEFAULT_INBOX_CACHE_MAX_WEIGHT_BYTES = 64L * 1024 * 1024;
+    public static final long DEFAULT_INBOX_CACHE_TTL_MILLIS = 300000;
+    public static final long DEFAULT_INVALIDATION_OVERLAP_MILLIS = 30000;
+    public static final long DEFAULT_INVALIDATION_RETENTION_MILLIS = 600000;
+    public static final int DEFAULT_MESSAGE_CACHE_MAX_ENTRIES = 10000;
+    public static final long DEFAULT_MESSAGE_CACHE_TTL_MILLIS = 60000;
+    public static final long DEFAULT_MESSAGE_CACHE_NOT_FOUND_TTL_MILLIS = 5000;
+    public static final long DEFAULT_BROADCAST_CACHE_TTL_MILLIS = 30000;
+    public static final int DEFAULT_IDEMPOTENCY_CACHE_MAX_ENTRIES = 10000;
+    public static final int DEFAULT_IDEMPOTENCY_KEY_RETENTION_HOURS = 24;
+    public static final long DEFAULT_READ_YOUR_WRITES_WINDOW_MILLIS = 5000;
+    public static final int DEFAULT_READ_YOUR_WRITES_MAX_ENTRIES = 10000;
+    public static final String DEFAULT_POOL_NAME = "InboxSvcPool";
+    public static final int DEFAULT_POOL_MAX_SIZE = 20;
+    public static final int DEFAULT_POOL_MIN_IDLE = 5;
+    public static final long DEFAULT_POOL_CONNECTION_TIMEOUT_MILLIS = 5000;
+    public static final long MIN_POOL_CONNECTION_TIMEOUT_MILLIS = 250;
+    public static final long DEFAULT_POOL_IDLE_TIMEOUT_MILLIS = 600000;
+    public static final long DEFAULT_POOL_MAX_LIFETIME_MILLIS = 1800000;
+    public static final int MSG_ACTION_LABEL_MAX_LEGNTH = 25;
+    public static final int MESSAGE_PLAIN_TEXT_MAX_LENGTH = 140;
+    public static final String MSG_ID_NON_NUMERIC = "Message ID has to be a valid integer";
+    public static final String TOO_MANY_MSG_IDS = "The number of message IDs cannot exceed ";
+    public static final String MSG_NOT_FOUND = "Message ID does not exist: ";
+    public static final String TEMPLATE_NOT_FOUND = "Template ID does not exist: ";
+    public static final int TEMPLATE_ID_MAX_LENGTH = 64;
+    public static final String RECIPIENT_GROUP_NOT_FOUND = "Recipient group does not exist: ";
+    public static final String BROADCAST_NOT_FOUND = "Broadcast ID does not exist: ";
+    public static final String BROADCAST_ID_INVALID = "Broadcast ID has to be \'" + BROADCAST_ID_PREFIX + "\' followed by a valid integer";
+    public static final int GROUP_NAME_MAX_LENGTH = 64;
+    public static final int DEFAULT_PAGE_LIMIT = 100;
+    public static final int MAX_PAGE_LIMIT = 500;
+    public static final String INVALID_PAGE_LIMIT = "The field has to be an integer between 1 and " + MAX_PAGE_LIMIT + ": ";
+    public static final String INVALID_PAGE_CURSOR = "The field is not a valid paging cursor: ";
 }
@@ -1,5 +1,10 @@
 package gov.nsf.inboxservice.controller;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import gov.nsf.common.exception.FormValidationException;
 import gov.nsf.common.exception.RollbackException;
 import gov.nsf.common.model.BaseResponseWrapper;
@@ -7,11 +12,14 @@ import gov.nsf.common.model.ExpirationFilter;
 import gov.nsf.exception.CommonUtilException;
 import gov.nsf.inboxservice.api.model.*;
 import gov.nsf.inboxservice.common.util.Constants;
+import gov.nsf.inboxservice.ingest.MessageIngestQueue;
 import gov.nsf.inboxservice.validator.*;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.web.bind.annotation.*;
@@ -19,6 +27,14 @@ import org.springframework.web.bind.annotation.*;
 import gov.nsf.common.ember.model.EmberModel;
 
 import gov.nsf.inboxservice.api.service.InboxService;
+import gov.nsf.inboxservice.service.InboxIdempotencyService;
+import gov.nsf.inboxservice.service.InboxStreamService;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
 
 /**
  * Controller to serve /inboxservice requests
@@ -30,6 +46,19 @@ public class InboxController extends InboxBaseController {
     @Autowired
     private InboxService inboxService;
 
+    @Autowired
+    private InboxStreamService inboxStreamService;
+
+    @Autowired
+    private InboxIdempotencyService inboxIdempotencyService;
+
+    @Autowired
+    private MessageIngestQueue messageIngestQueue;
+
+    //The MVC message converter's mapper, so streamed messages serialize like the other responses
+    @Autowired
+    private ObjectMapper objectMapper;
+
     /**
      * GET handler /auth/messages/{msgId}
      *
@@ -90,16 +119,18 @@ public class InboxController extends InboxBaseController {
     @RequestMapping(value = "/auth/users/{lanId}/messages", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
     @ApiOperation(value = "Get Message for user",
-            notes = "This API returns Messages for user.",
+            notes = "This API returns Messages for user. Pass limit and after to page through them, summary=false to page through headers only.",
             response = MessageResponseWrapper.class)
     @ApiResponses(value = {
             @ApiResponse(code = 500, message = "Internal Server Error"),
             @ApiResponse(code = 200, message = "Success"),
             @ApiResponse(code = 404, message = "Not Found")})
-    public EmberModel getMessagesForUser(@PathVariable("lanId") String lanId, @RequestParam(value="active", required = false, defaultValue = "ALL") String active) throws RollbackException, FormValidationException {
-        GetMessagesValidator.validateRequest(lanId);
+    public EmberModel getMessagesForUser(@PathVariable("lanId") String lanId, @RequestParam(value="active", required = false, defaultValue = "ALL") String active,
+                                         @RequestParam(value="limit", required = false) String limit, @RequestParam(value="after", required = false) String after,
+                                         @RequestParam(value="summary", required = false, defaultValue = "true") boolean summary) throws RollbackException, FormValidationException {
+        GetMessagesValidator.validateRequest(lanId, limit, after);
 
-        MessageResponseWrapper wrapper = inboxService.getMessages(lanId, ExpirationFilter.forValue(active));
+        MessageResponseWrapper wrapper = getMessages(lanId, active, limit, after, summary);
         return new EmberModel.Builder<MessageResponseWrapper>(Constants.MESSAGE_RESPONSE_WRAPPER, wrapper).build();
 
     }
@@ -112,47 +143,341 @@ public class InboxController extends InboxBaseController {
     @RequestMapping(value = "/users/{lanId}/messages", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
     @ApiOperation(value = "Get Message for session user",
-            notes = "This API returns Messages for session user.",
+            notes = "This API returns Messages for session user. Pass limit and after to page through them, summary=false to page through headers only.",
             response = MessageResponseWrapper.class)
     @ApiResponses(value = {
             @ApiResponse(code = 500, message = "Internal Server Error"),
             @ApiResponse(code = 200, message = "Success"),
             @ApiResponse(code = 404, message = "Not Found"),
             @ApiResponse(code = 403, message = "Access Denied")})
-    public EmberModel getMessagesForSessionUser(@PathVariable("lanId") String lanId, @RequestParam(value="active", required = false, defaultValue = "ALL") String active) throws RollbackException, CommonUtilException, FormValidationException {
-        GetMessagesValidator.validateRequest(lanId);
+    public EmberModel getMessagesForSessionUser(@PathVariable("lanId") String lanId, @RequestParam(value="active", required = false, defaultValue = "ALL") String active,
+                                                @RequestParam(value="limit", required = false) String limit, @RequestParam(value="after", required = false) String after,
+                                                @RequestParam(value="summary", required = false, defaultValue = "true") boolean summary) throws RollbackException, CommonUtilException, FormValidationException {
+        GetMessagesValidator.validateRequest(lanId, limit, after);
 
         //Compare lanId w/ sessionId
         String sessionId = getUserIdentity().getId();
         if( !lanId.equalsIgnoreCase(sessionId) ){
             throw new AccessDeniedException(Constants.ERROR_ACCESS_DENIED);
         }
-        MessageResponseWrapper wrapper = inboxService.getMessages(lanId, ExpirationFilter.forValue(active));
+        MessageResponseWrapper wrapper = getMessages(lanId, active, limit, after, summary);
         return new EmberModel.Builder<MessageResponseWrapper>(Constants.MESSAGE_RESPONSE_WRAPPER, wrapper).build();
 
     }
 
+    /**
+     * GET handler for /auth/users/{lanId}/messages?stream=true
+     *
+     * Writes the same JSON as the unpaged GET, one message at a time as it is read from the DB
+     */
+    @RequestMapping(value = "/auth/users/{lanId}/messages", params = "stream=true", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Stream Messages for user",
+            notes = "This API streams all Messages for user using chunked transfer, memory use does not grow with the size of the inbox.",
+            response = MessageResponseWrapper.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 500, message = "Internal Server Error"),
+            @ApiResponse(code = 200, message = "Success")})
+    public void streamMessagesForUser(@PathVariable("lanId") String lanId, @RequestParam(value="active", required = false, defaultValue = "ALL") String active,
+                                      HttpServletResponse response) throws RollbackException, FormValidationException, IOException {
+        GetMessagesValidator.validateRequest(lanId);
+
+        streamMessages(lanId, active, response);
+    }
+
+    /**
+     * GET handler for /users/{lanId}/messages?stream=true
+     *
+     * Writes the same JSON as the unpaged GET, one message at a time as it is read from the DB
+     */
+    @RequestMapping(value = "/users/{lanId}/messages", params = "stream=true", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Stream Messages for session user",
+            notes = "This API streams all Messages for session user using chunked transfer, memory use does not grow with the size of the inbox.",
+            response = MessageResponseWrapper.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 500, message = "Internal Server Error"),
+            @ApiResponse(code = 200, message = "Success"),
+            @ApiResponse(code = 403, message = "Access Denied")})
+    public void streamMessagesForSessionUser(@PathVariable("lanId") String lanId, @RequestParam(value="active", required = false, defaultValue = "ALL") String active,
+                                             HttpServletResponse response) throws RollbackException, CommonUtilException, FormValidationException, IOException {
+        GetMessagesValidator.validateRequest(lanId);
+
+        String sessionId = getUserIdentity().getId();
+        if( !lanId.equalsIgnoreCase(sessionId) ){
+            throw new AccessDeniedException(Constants.ERROR_ACCESS_DENIED);
+        }
+        streamMessages(lanId, active, response);
+    }
+
+    /**
+     * GET handler for /users/{lanId}/messages/counts
+     *
+     * @return JSON MessageCountResponseWrapper
+     */
+    @RequestMapping(value = "/users/{lanId}/messages/counts", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    @ApiOperation(value = "Get Message counts for session user",
+            notes = "This API returns the number of Messages for session user per type and priority, for the ACTIVE, INACTIVE and ALL filters. " +
+                    "Counts are kept per expiration day, so a message is counted as ACTIVE until the end of the day it expires on.",
+            response = MessageCountResponseWrapper.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 500, message = "Internal Server Error"),
+            @ApiResponse(code = 200, message = "Success"),
+            @ApiResponse(code = 403, message = "Access Denied")})
+    public EmberModel getMessageCountsForSessionUser(@PathVariable("lanId") String lanId) throws RollbackException, CommonUtilException, FormValidationException {
+        GetMessagesValidator.validateRequest(lanId);
+
+        String sessionId = getUserIdentity().getId();
+        if( !lanId.equalsIgnoreCase(sessionId) ){
+            throw new AccessDeniedException(Constants.ERROR_ACCESS_DENIED);
+        }
+        MessageCountResponseWrapper wrapper = inboxService.getMessageCounts(lanId);
+        return new EmberModel.Builder<MessageCountResponseWrapper>(Constants.MESSAGE_COUNT_RESPONSE_WRAPPER, wrapper).build();
+
+    }
+
     /**
      * POST handler for /messages
      *
+     * Requests with an Idempotency-Key header store their messages once per key; a retry with the same key
+     * returns the response of the first request. Requests with a dedupe mode skip or refresh the recipients
+     * that already have an identical active message. Requests naming recipient groups are sent to their stored members
+     *
      * @return JSON MessageResponseWrapper
      */
     @RequestMapping(value = {"/auth/messages","/messages"}, method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
     @ApiOperation(value = "Create Message for single and multiple user",
-            notes = "This API creates Messages for single and multiple user.",
+            notes = "This API creates Messages for single and multiple user. Requests sent with an Idempotency-Key header can be retried without creating the Messages twice.",
             response = MessageResponseWrapper.class)
     @ApiResponses(value = {
             @ApiResponse(code = 500, message = "Internal Server Error"),
             @ApiResponse(code = 200, message = "Success"),
             @ApiResponse(code = 404, message = "Not Found")})
-    public EmberModel createMessage(@RequestBody CreateMessageRequest request) throws RollbackException, FormValidationException {
-        CreateMessageValidator.validateRequest(request);
+    public EmberModel createMessage(@RequestBody CreateMessageRequest request,
+                                    @RequestHeader(value = Constants.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) throws RollbackException, FormValidationException {
+        CreateMessageValidator.validateRequest(request, idempotencyKey);
+
+        MessageResponseWrapper wrapper;
+        boolean groups = request.getGroups() != null && !request.getGroups().isEmpty();
+        if( idempotencyKey != null && groups ){
+            wrapper = inboxIdempotencyService.createMessage(request.getMessage(), request.getLanIds(), request.getGroups(), request.getDedupe(), idempotencyKey);
+        } else if( idempotencyKey != null ){
+            wrapper = inboxIdempotencyService.createMessage(request.getMessage(), request.getLanIds(), request.getDedupe(), idempotencyKey);
+        } else if( groups ){
+            wrapper = inboxService.createMessage(request.getMessage(), request.getLanIds(), request.getGroups(), request.getDedupe());
+        } else if( request.getDedupe() != null && request.getDedupe() != DedupeMode.None ){
+            wrapper = inboxService.createMessage(request.getMessage(), request.getLanIds(), request.getDedupe());
+        } else {
+            wrapper = inboxService.createMessage(request.getMessage(), request.getLanIds());
+        }
+        return new EmberModel.Builder<MessageResponseWrapper>(Constants.MESSAGE_RESPONSE_WRAPPER, wrapper).build();
+    }
+
+    /**
+     * POST handler for /messages/templated
+     *
+     * Renders a registered template once per recipient with the recipient's placeholder values
+     *
+     * @return JSON MessageResponseWrapper
+     */
+    @RequestMapping(value = {"/auth/messages/templated","/messages/templated"}, method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    @ApiOperation(value = "Create personalized Messages from a registered template",
+            notes = "This API renders the template's {name} placeholders with each recipient's values and stores the Messages in a single transaction.",
+            response = MessageResponseWrapper.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 500, message = "Internal Server Error"),
+            @ApiResponse(code = 200, message = "Success"),
+            @ApiResponse(code = 400, message = "Bad Request"),
+            @ApiResponse(code = 404, message = "Not Found")})
+    public EmberModel createTemplatedMessage(@RequestBody CreateTemplatedMessageRequest request) throws RollbackException, FormValidationException {
+        MessageTemplateValidator.validateRequest(request);
 
-        MessageResponseWrapper wrapper = inboxService.createMessage(request.getMessage(), request.getLanIds());
+        MessageResponseWrapper wrapper = inboxService.createTemplatedMessage(request.getTemplateId(), request.getRecipients(), request.getExpirationDate());
         return new EmberModel.Builder<MessageResponseWrapper>(Constants.MESSAGE_RESPONSE_WRAPPER, wrapper).build();
     }
 
+    /**
+     * PUT handler for /templates/{templateId}
+     *
+     * @return JSON MessageResponseWrapper
+     */
+    @RequestMapping(value = {"/auth/templates/{templateId}","/templates/{templateId}"}, method = RequestMethod.PUT, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    @ApiOperation(value = "Register a Message template",
+            notes = "This API stores the Message as a template under the passed ID, replacing the template stored under the same ID. The summary, action link and action label may contain {name} placeholders.",
+            response = MessageResponseWrapper.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 500, message = "Internal Server Error"),
+            @ApiResponse(code = 200, message = "Success"),
+            @ApiResponse(code = 400, message = "Bad Request")})
+    public EmberModel saveMessageTemplate(@PathVariable("templateId") String templateId, @RequestBody Message template) throws RollbackException, FormValidationException {
+        MessageTemplateValidator.validateTemplate(templateId, template);
+
+        MessageResponseWrapper wrapper = inboxService.saveMessageTemplate(templateId, template);
+        return new EmberModel.Builder<MessageResponseWrapper>(Constants.MESSAGE_RESPONSE_WRAPPER, wrapper).build();
+    }
+
+    /**
+     * GET handler for /templates/{templateId}
+     *
+     * @return JSON MessageResponseWrapper
+     */
+    @RequestMapping(value = {"/auth/templates/{templateId}","/templates/{templateId}"}, method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    @ApiOperation(value = "Get Message template by ID",
+            notes = "This API returns the template registered under the passed ID.",
+            response = MessageResponseWrapper.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 500, message = "Internal Server Error"),
+            @ApiResponse(code = 200, message = "Success"),
+            @ApiResponse(code = 404, message = "Not Found")})
+    public EmberModel getMessageTemplate(@PathVariable("templateId") String templateId) throws RollbackException, FormValidationException {
+        MessageTemplateValidator.validateTemplateIdRequest(templateId);
+
+        MessageResponseWrapper wrapper = inboxService.getMessageTemplate(templateId);
+        return new EmberModel.Builder<MessageResponseWrapper>(Constants.MESSAGE_RESPONSE_WRAPPER, wrapper).build();
+    }
+
+    /**
+     * POST handler for /groups/{groupName}/members
+     *
+     * Applies add/remove deltas to the group's stored membership
+     *
+     * @return JSON RecipientGroupResponseWrapper
+     */
+    @RequestMapping(value = {"/auth/groups/{groupName}/members","/groups/{groupName}/members"}, method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    @ApiOperation(value = "Add and remove recipient group members",
+            notes = "This API adds and removes the passed lan IDs, creating the group on its first update. A request sent with the version it was computed against fails if the group was updated since.",
+            response = RecipientGroupResponseWrapper.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 500, message = "Internal Server Error"),
+            @ApiResponse(code = 200, message = "Success"),
+            @ApiResponse(code = 400, message = "Bad Request"),
+            @ApiResponse(code = 404, message = "Not Found")})
+    public EmberModel updateRecipientGroup(@PathVariable("groupName") String groupName, @RequestBody UpdateRecipientGroupRequest request) throws RollbackException, FormValidationException {
+        RecipientGroupValidator.validateRequest(groupName, request);
+
+        RecipientGroupResponseWrapper wrapper = inboxService.updateRecipientGroup(groupName, request.getAdd(), request.getRemove(), request.getVersion(), request.getLastUpdtUser());
+        return new EmberModel.Builder<RecipientGroupResponseWrapper>(Constants.RECIPIENT_GROUP_RESPONSE_WRAPPER, wrapper).build();
+    }
+
+    /**
+     * GET handler for /groups/{groupName}
+     *
+     * @return JSON RecipientGroupResponseWrapper
+     */
+    @RequestMapping(value = {"/auth/groups/{groupName}","/groups/{groupName}"}, method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    @ApiOperation(value = "Get recipient group by name",
+            notes = "This API returns the group's version and member count.",
+            response = RecipientGroupResponseWrapper.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 500, message = "Internal Server Error"),
+            @ApiResponse(code = 200, message = "Success"),
+            @ApiResponse(code = 404, message = "Not Found")})
+    public EmberModel getRecipientGroup(@PathVariable("groupName") String groupName) throws RollbackException, FormValidationException {
+        RecipientGroupValidator.validateGroupNameRequest(groupName);
+
+        RecipientGroupResponseWrapper wrapper = inboxService.getRecipientGroup(groupName);
+        return new EmberModel.Builder<RecipientGroupResponseWrapper>(Constants.RECIPIENT_GROUP_RESPONSE_WRAPPER, wrapper).build();
+    }
+
+    /**
+     * POST handler for /broadcasts
+     *
+     * @return JSON MessageResponseWrapper
+     */
+    @RequestMapping(value = {"/auth/broadcasts","/broadcasts"}, method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    @ApiOperation(value = "Create global broadcast",
+            notes = "This API stores the Message once and shows it to every user, under an ID starting with 'B'. Users delete it from their own inbox only.",
+            response = MessageResponseWrapper.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 500, message = "Internal Server Error"),
+            @ApiResponse(code = 200, message = "Success"),
+            @ApiResponse(code = 400, message = "Bad Request")})
+    public EmberModel createBroadcast(@RequestBody Message message) throws RollbackException, FormValidationException {
+        BroadcastValidator.validateRequest(message);
+
+        MessageResponseWrapper wrapper = inboxService.createBroadcast(message);
+        return new EmberModel.Builder<MessageResponseWrapper>(Constants.MESSAGE_RESPONSE_WRAPPER, wrapper).build();
+    }
+
+    /**
+     * DELETE handler for /broadcasts/{broadcastId}
+     *
+     * @return JSON MessageResponseWrapper
+     */
+    @RequestMapping(value = {"/auth/broadcasts/{broadcastId}","/broadcasts/{broadcastId}"}, method = RequestMethod.DELETE, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    @ApiOperation(value = "Delete global broadcast",
+            notes = "This API deletes the broadcast for every user.",
+            response = MessageResponseWrapper.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 500, message = "Internal Server Error"),
+            @ApiResponse(code = 200, message = "Success"),
+            @ApiResponse(code = 400, message = "Bad Request"),
+            @ApiResponse(code = 404, message = "Not Found")})
+    public EmberModel deleteBroadcast(@PathVariable("broadcastId") String broadcastId) throws RollbackException, FormValidationException {
+        BroadcastValidator.validateBroadcastIdRequest(broadcastId);
+
+        MessageResponseWrapper wrapper = inboxService.deleteBroadcast(broadcastId);
+        return new EmberModel.Builder<MessageResponseWrapper>(Constants.MESSAGE_RESPONSE_WRAPPER, wrapper).build();
+    }
+
+    /**
+     * POST handler for /messages?async=true
+     *
+     * @return JSON BaseResponseWrapper
+     */
+    @RequestMapping(value = {"/auth/messages","/messages"}, params = "async=true", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    @ApiOperation(value = "Create Message for single and multiple user asynchronously",
+            notes = "This API journals the request and returns before the Messages are stored. When async ingest is disabled the Messages are stored before returning.",
+            response = BaseResponseWrapper.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 500, message = "Internal Server Error"),
+            @ApiResponse(code = 202, message = "Accepted"),
+            @ApiResponse(code = 400, message = "Bad Request")})
+    public EmberModel createMessageAsync(@RequestBody CreateMessageRequest request) throws RollbackException, FormValidationException {
+        CreateMessageValidator.validateRequest(request);
+
+        if( messageIngestQueue.isAccepting() ){
+            messageIngestQueue.accept(request);
+        } else {
+            if( request.getGroups() != null && !request.getGroups().isEmpty() ){
+                inboxService.createMessage(request.getMessage(), request.getLanIds(), request.getGroups(), request.getDedupe());
+            } else {
+                inboxService.createMessage(request.getMessage(), request.getLanIds(), request.getDedupe());
+            }
+        }
+        return new EmberModel.Builder<BaseResponseWrapper>(Constants.BASE_RESPONSE_WRAPPER, new BaseResponseWrapper()).build();
+    }
+
+
+    /**
+     * POST handler for /messages/delete
+     *
+     * @return JSON DeleteMessagesResponseWrapper
+     */
+    @RequestMapping(value = {"/auth/messages/delete","/messages/delete"}, method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    @ApiOperation(value = "Deletes Messages by ID",
+            notes = "This API deletes the Messages given their message IDs in a single transaction and returns the outcome of each ID",
+            response = DeleteMessagesResponseWrapper.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 500, message = "Internal Server Error"),
+            @ApiResponse(code = 200, message = "Success"),
+            @ApiResponse(code = 400, message = "Bad Request")})
+    public EmberModel deleteMessages(@RequestBody DeleteMessagesRequest request) throws RollbackException, FormValidationException {
+        DeleteMessagesValidator.validateRequest(request);
+
+        DeleteMessagesResponseWrapper wrapper = inboxService.deleteMessages(request.getMsgIds());
+        return new EmberModel.Builder<DeleteMessagesResponseWrapper>(Constants.DELETE_MESSAGES_RESPONSE_WRAPPER, wrapper).build();
+    }
 
     /**
      * DELETE handler /auth/messages/{msgId} (auth route)
@@ -183,7 +508,7 @@ public class InboxController extends InboxBaseController {
      */
     @RequestMapping(value = "/users/{lanId}/messages/{msgId}", method = RequestMethod.DELETE, produces = MediaType.APPLICATION_JSON_VALUE)
     @ApiOperation(value = "Deletes Message by ID for the session user",
-            notes = "This API deletes the Message given its message ID. Message must be owned by the session user",
+            notes = "This API deletes the Message given its message ID. Message must be owned by the session user. A global broadcast ID dismisses the broadcast for the session user",
             response = MessageResponseWrapper.class)
     @ApiResponses(value = {
             @ApiResponse(code = 500, message = "Internal Server Error"),
@@ -193,17 +518,15 @@ public class InboxController extends InboxBaseController {
     @ResponseBody
     public EmberModel deleteMessageByIdForSessionUser(@PathVariable("lanId") String lanId,@PathVariable("msgId") String msgId) throws RollbackException, FormValidationException, CommonUtilException {
         GetMessagesValidator.validateRequest(lanId);
-        DeleteMessageValidator.validateRequest(msgId);
-        
-
-        Message message = inboxService.getMessage(msgId).getMessages().get(0);
+        DeleteMessageValidator.validateUserRequest(msgId);
 
         String sessionId = getUserIdentity().getId();
-        if( !lanId.equalsIgnoreCase(sessionId) || message.getType() == MessageType.Task){
+        if( !lanId.equalsIgnoreCase(sessionId) ){
             throw new AccessDeniedException(Constants.ERROR_ACCESS_DENIED);
         }
 
-        MessageResponseWrapper wrapper = inboxService.deleteMessage(msgId);
+        //Owner and type are checked by the service, a Task or another user's message is a 403
+        MessageResponseWrapper wrapper = inboxService.deleteMessageForUser(lanId, msgId);
         return new EmberModel.Builder<MessageResponseWrapper>(Constants.BASE_RESPONSE_WRAPPER, wrapper).build();
 
     }
@@ -235,6 +558,76 @@ public class InboxController extends InboxBaseController {
 
     }
 
+    /**
+     * Retrieves the user's messages, paged when a limit or cursor was requested
+     *
+     * Header-only reads are always paged
+     *
+     * @param lanId
+     * @param active
+     * @param limit
+     * @param after
+     * @param summary
+     *      - false to leave out the message summaries
+     * @return MessageResponseWrapper
+     * @throws RollbackException
+     */
+    private MessageResponseWrapper getMessages(String lanId, String active, String limit, String after, boolean summary) throws RollbackException {
+        if( summary && StringUtils.isEmpty(limit) && StringUtils.isEmpty(after) ){
+            return inboxService.getMessages(lanId, ExpirationFilter.forValue(active));
+        }
+
+        int pageLimit = StringUtils.isEmpty(limit) ? Constants.DEFAULT_PAGE_LIMIT : Integer.parseInt(limit);
+        if( !summary ){
+            return inboxService.getMessageHeaders(lanId, ExpirationFilter.forValue(active), pageLimit, after);
+        }
+        return inboxService.getMessages(lanId, ExpirationFilter.forValue(active), pageLimit, after);
+    }
 
+    /**
+     * Writes {"messageResponseWrapper":{"messages":[...]}} to the response as the messages are read
+     *
+     * The wrapper's other fields are taken from an empty MessageResponseWrapper, so the body is the same
+     * JSON the non-streamed request returns for the same messages.
+     *
+     * The response has no content length, so the container sends it chunked. Output is flushed every
+     * STREAM_FLUSH_ROWS messages. Errors after the first flush cannot change the status any more and
+     * end the response early.
+     *
+     * @param lanId
+     * @param active
+     * @param response
+     * @throws RollbackException
+     * @throws IOException
+     */
+    private void streamMessages(String lanId, String active, HttpServletResponse response) throws RollbackException, IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream(), JsonEncoding.UTF8);
+        generator.writeStartObject();
+        generator.writeObjectFieldStart(Constants.MESSAGE_RESPONSE_WRAPPER);
+        ObjectNode emptyWrapper = objectMapper.valueToTree(new MessageResponseWrapper(Collections.<Message>emptyList()));
+        emptyWrapper.remove(Constants.MESSAGES_FIELD);
+        Iterator<Map.Entry<String, JsonNode>> fields = emptyWrapper.fields();
+        while( fields.hasNext() ){
+            Map.Entry<String, JsonNode> field = fields.next();
+            generator.writeFieldName(field.getKey());
+            generator.writeTree(field.getValue());
+        }
+        generator.writeArrayFieldStart(Constants.MESSAGES_FIELD);
+
+        int[] written = new int[1];
+        inboxStreamService.streamMessages(lanId, ExpirationFilter.forValue(active), message -> {
+            generator.writeObject(message);
+            if( ++written[0] % Constants.STREAM_FLUSH_ROWS == 0 ){
+                generator.flush();
+            }
+        });
+
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.writeEndObject();
+        generator.close();
+    }
 
 }
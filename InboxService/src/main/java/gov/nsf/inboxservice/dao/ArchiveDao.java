@@ -0,0 +1,51 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.inboxservice.api.model.MessageType;
+
+import java.sql.Timestamp;
+
+/**
+ * ArchiveDao interface
+ *
+ * Moves messages out of dbo.inbx_msg into the month-partitioned dbo.inbx_msg_arch table
+ * and drops archive partitions that are past retention
+ */
+public interface ArchiveDao {
+
+    /**
+     * Moves at most chunkSize expired messages across all users to the archive
+     *
+     * @param chunkSize
+     *      - the maximum number of messages to move
+     * @return the number of messages moved
+     * @throws RollbackException
+     */
+    public int archiveExpiredMessagesChunk(int chunkSize) throws RollbackException;
+
+    /**
+     * Moves at most chunkSize messages of the passed type created before the passed time to the archive
+     *
+     * @param type
+     *      - the message type
+     * @param createdBefore
+     *      - messages created before this time are moved
+     * @param chunkSize
+     *      - the maximum number of messages to move
+     * @return the number of messages moved
+     * @throws RollbackException
+     */
+    public int archiveAgedMessagesChunk(MessageType type, Timestamp createdBefore, int chunkSize) throws RollbackException;
+
+    /**
+     * Drops the archive partitions of the passed type archived before the passed month
+     *
+     * @param type
+     *      - the message type
+     * @param monthBefore
+     *      - yyyymm, partitions of earlier months are dropped
+     * @return the number of partitions dropped
+     * @throws RollbackException
+     */
+    public int dropArchivePartitions(MessageType type, int monthBefore) throws RollbackException;
+}
@@ -0,0 +1,239 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.inboxservice.api.model.MessageType;
+import gov.nsf.inboxservice.common.util.Constants;
+import org.apache.log4j.Logger;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ArchiveDaoImpl implements the ArchiveDao methods against the dbo.inbx_msg_arch table
+ *
+ * Messages are moved by copying the rows that are not archived yet and then deleting the rows that are.
+ * Each statement commits on its own, so an interrupted move is completed by the next one.
+ */
+public class ArchiveDaoImpl implements ArchiveDao {
+
+    private DataSource dataSource;
+    private NamedParameterJdbcTemplate jdbcTemplate;
+    private String dropPartitionStatement = Constants.DEFAULT_DROP_ARCHIVE_PARTITION_STATEMENT;
+    private MessageCountDao messageCountDao;
+
+    private static final Logger LOGGER = Logger.getLogger(ArchiveDaoImpl.class);
+
+    /**
+     * DataSource getter
+     *
+     * @return DataSource
+     */
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * DataSource setter
+     *
+     * @param dataSource
+     */
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+        this.setJdbcTemplate(new NamedParameterJdbcTemplate(dataSource));
+    }
+
+    /**
+     * NamedParameterJdbcTemplate getter
+     *
+     * @return NamedParameterJdbcTemplate
+     */
+    public NamedParameterJdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    /**
+     * NamedParameterJdbcTemplate setter
+     *
+     * @param jdbcTemplate
+     */
+    public void setJdbcTemplate(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Partition drop statement getter
+     *
+     * @return the statement run for each partition past retention
+     */
+    public String getDropPartitionStatement() {
+        return dropPartitionStatement;
+    }
+
+    /**
+     * Partition drop statement setter
+     *
+     * {partition}, {month} and {type} are replaced with the partition name, its yyyymm month and the message type code
+     *
+     * @param dropPartitionStatement
+     */
+    public void setDropPartitionStatement(String dropPartitionStatement) {
+        this.dropPartitionStatement = dropPartitionStatement;
+    }
+
+    /**
+     * MessageCountDao getter
+     *
+     * @return messageCountDao
+     */
+    public MessageCountDao getMessageCountDao() {
+        return messageCountDao;
+    }
+
+    /**
+     * MessageCountDao setter
+     *
+     * When set, the counters of users whose unexpired messages were archived are recounted
+     *
+     * @param messageCountDao
+     */
+    public void setMessageCountDao(MessageCountDao messageCountDao) {
+        this.messageCountDao = messageCountDao;
+    }
+
+    /**
+     * Moves at most chunkSize expired messages across all users to the archive
+     *
+     * @param chunkSize
+     *      - the maximum number of messages to move
+     * @return the number of messages moved
+     * @throws RollbackException
+     */
+    @Override
+    public int archiveExpiredMessagesChunk(int chunkSize) throws RollbackException {
+        return archiveChunk(Constants.EXPIRED_ARCHIVE_CANDIDATES_FROM_CLAUSE, Collections.<String, Object>emptyMap(), chunkSize, false);
+    }
+
+    /**
+     * Moves at most chunkSize messages of the passed type created before the passed time to the archive
+     *
+     * @param type
+     *      - the message type
+     * @param createdBefore
+     *      - messages created before this time are moved
+     * @param chunkSize
+     *      - the maximum number of messages to move
+     * @return the number of messages moved
+     * @throws RollbackException
+     */
+    @Override
+    public int archiveAgedMessagesChunk(MessageType type, Timestamp createdBefore, int chunkSize) throws RollbackException {
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(Constants.MSG_TYPE_COLNAME, type.getCode());
+        parameters.put(Constants.CREATED_BEFORE_PARAM, createdBefore);
+
+        return archiveChunk(Constants.AGED_ARCHIVE_CANDIDATES_FROM_CLAUSE, parameters, chunkSize, true);
+    }
+
+    /**
+     * Drops the archive partitions of the passed type archived before the passed month
+     *
+     * @param type
+     *      - the message type
+     * @param monthBefore
+     *      - yyyymm, partitions of earlier months are dropped
+     * @return the number of partitions dropped
+     * @throws RollbackException
+     */
+    @Override
+    public int dropArchivePartitions(MessageType type, int monthBefore) throws RollbackException {
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(Constants.MSG_TYPE_COLNAME, type.getCode());
+        parameters.put(Constants.ARCH_MONTH_BEFORE_PARAM, monthBefore);
+
+        String statement = null;
+        try {
+            List<Integer> months = this.getJdbcTemplate().queryForList(Constants.GET_ARCHIVE_MONTHS_BEFORE_QUERY, parameters, Integer.class);
+            for( Integer month : months ){
+                statement = getDropPartitionStatement(type, month);
+                this.getJdbcTemplate().update(statement, Collections.<String, Object>emptyMap());
+                LOGGER.info("Dropped archive partition: " + statement);
+            }
+            return months.size();
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_DROPPING_ARCHIVE_PARTITION + statement + " : " + ex);
+            throw new RollbackException(Constants.ERROR_DROPPING_ARCHIVE_PARTITION + statement);
+        }
+    }
+
+    /**
+     * Returns the drop statement for the partition holding the passed type and month
+     *
+     * @param type
+     * @param month
+     *      - yyyymm
+     * @return String
+     */
+    protected String getDropPartitionStatement(MessageType type, int month) {
+        return dropPartitionStatement
+                .replace(Constants.PARTITION_NAME_PLACEHOLDER, "p" + month + type.getCode())
+                .replace(Constants.PARTITION_MONTH_PLACEHOLDER, String.valueOf(month))
+                .replace(Constants.PARTITION_TYPE_PLACEHOLDER, type.getCode());
+    }
+
+    /**
+     * Returns the current month as yyyymm
+     *
+     * @return int
+     */
+    protected int getCurrentArchiveMonth() {
+        YearMonth now = YearMonth.now();
+        return now.getYear() * 100 + now.getMonthValue();
+    }
+
+    /**
+     * Selects at most chunkSize candidate message IDs and moves those rows to the archive
+     *
+     * @param candidatesFromClause
+     *      - the column, table and predicate following "select top N"
+     * @param parameters
+     * @param chunkSize
+     * @param recount
+     *      - true if the moved messages may still be counted as active, expired counters are recounted by the sweeper
+     * @return the number of messages moved
+     * @throws RollbackException
+     */
+    private int archiveChunk(String candidatesFromClause, Map<String, Object> parameters, int chunkSize, boolean recount) throws RollbackException {
+        if( chunkSize < 1 ){
+            throw new IllegalArgumentException("chunkSize must be greater than 0: " + chunkSize);
+        }
+
+        try {
+            List<Long> msgIds = this.getJdbcTemplate().queryForList(Constants.SELECT_ARCHIVE_CANDIDATES + chunkSize + candidatesFromClause,
+                    parameters, Long.class);
+            if( msgIds.isEmpty() ){
+                return 0;
+            }
+
+            Map<String, Object> moveParameters = new HashMap<String, Object>();
+            moveParameters.put(Constants.MSG_IDS_PARAM, msgIds);
+            moveParameters.put(Constants.ARCH_MONTH_COLNAME, getCurrentArchiveMonth());
+            this.getJdbcTemplate().update(Constants.COPY_TO_ARCHIVE_QUERY, moveParameters);
+            int rows = this.getJdbcTemplate().update(Constants.DELETE_ARCHIVED_FROM_HOT_QUERY, moveParameters);
+            if( recount && rows > 0 && messageCountDao != null ){
+                messageCountDao.recountMessages(this.getJdbcTemplate().queryForList(Constants.GET_ARCHIVED_MESSAGE_USERS_QUERY, moveParameters, String.class));
+            }
+            return rows;
+        } catch (RollbackException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_ARCHIVING_MESSAGES + ex);
+            throw new RollbackException(Constants.ERROR_ARCHIVING_MESSAGES + ex);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.inboxservice.api.model.Message;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * BroadcastDao interface
+ *
+ * Global broadcasts, stored once for every user, and the users' dismissals of them.
+ * Broadcasts are returned as Messages with the ID Constants.BROADCAST_ID_PREFIX + bcst_id and an empty lan ID
+ */
+public interface BroadcastDao {
+
+    /**
+     * Retrieves every stored broadcast, oldest first
+     *
+     * @return List of Message objects
+     * @throws RollbackException
+     */
+    public List<Message> getBroadcasts() throws RollbackException;
+
+    /**
+     * Retrieves the broadcast stored under the passed ID
+     *
+     * @param broadcastId
+     *      - the numeric broadcast ID, without the prefix
+     * @return Message
+     * @throws RollbackException
+     */
+    public Message getBroadcast(long broadcastId) throws RollbackException;
+
+    /**
+     * Inserts the Message as a broadcast, its lan ID is ignored
+     *
+     * @param message
+     *      - Message object
+     * @return the stored Message
+     * @throws RollbackException
+     */
+    public Message insertBroadcast(Message message) throws RollbackException;
+
+    /**
+     * Deletes the broadcast and its dismissals
+     *
+     * @param broadcastId
+     *      - the numeric broadcast ID, without the prefix
+     * @return false if the broadcast is not stored
+     * @throws RollbackException
+     */
+    public boolean deleteBroadcast(long broadcastId) throws RollbackException;
+
+    /**
+     * Retrieves the IDs of the broadcasts the user dismissed
+     *
+     * @param lanId
+     *      - the user's lan ID
+     * @return Set of broadcast IDs, with the prefix
+     * @throws RollbackException
+     */
+    public Set<String> getDismissedBroadcastIds(String lanId) throws RollbackException;
+
+    /**
+     * Records that the user dismissed the broadcast
+     *
+     * @param broadcastId
+     *      - the numeric broadcast ID, without the prefix
+     * @param lanId
+     *      - the user's lan ID
+     * @return false if the user already dismissed the broadcast
+     * @throws RollbackException
+     */
+    public boolean dismissBroadcast(long broadcastId, String lanId) throws RollbackException;
+
+    /**
+     * Deletes the broadcasts that expired before the passed time, with their dismissals
+     *
+     * @param expiredBefore
+     *      - the cutoff
+     * @return number of deleted broadcasts
+     * @throws RollbackException
+     */
+    public int deleteExpiredBroadcasts(Timestamp expiredBefore) throws RollbackException;
+}
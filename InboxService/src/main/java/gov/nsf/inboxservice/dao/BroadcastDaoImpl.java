@@ -0,0 +1,267 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.exception.ResourceNotFoundException;
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessageType;
+import gov.nsf.inboxservice.common.util.Constants;
+import gov.nsf.inboxservice.dao.rowmapper.MessageRowMapper;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * BroadcastDaoImpl implements the BroadcastDao methods against the dbo.inbx_bcst and dbo.inbx_bcst_dsms tables
+ */
+public class BroadcastDaoImpl implements BroadcastDao {
+
+    private DataSource dataSource;
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private static final Logger LOGGER = Logger.getLogger(BroadcastDaoImpl.class);
+
+    /**
+     * DataSource getter
+     *
+     * @return DataSource
+     */
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * DataSource setter
+     *
+     * @param dataSource
+     */
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+        this.setJdbcTemplate(new NamedParameterJdbcTemplate(dataSource));
+    }
+
+    /**
+     * NamedParameterJdbcTemplate getter
+     *
+     * @return NamedParameterJdbcTemplate
+     */
+    public NamedParameterJdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    /**
+     * NamedParameterJdbcTemplate setter
+     *
+     * @param jdbcTemplate
+     */
+    public void setJdbcTemplate(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Retrieves every stored broadcast, oldest first
+     *
+     * @return List of Message objects
+     * @throws RollbackException
+     */
+    @Override
+    public List<Message> getBroadcasts() throws RollbackException {
+        try {
+            return this.getJdbcTemplate().query(Constants.GET_BROADCASTS_QUERY, getBroadcastRowMapper());
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_GETTING_BROADCASTS + ex);
+            throw new RollbackException(Constants.ERROR_GETTING_BROADCASTS + ex);
+        }
+    }
+
+    /**
+     * Retrieves the broadcast stored under the passed ID
+     *
+     * @param broadcastId
+     *      - the numeric broadcast ID, without the prefix
+     * @return Message
+     * @throws ResourceNotFoundException if the broadcast is not stored
+     * @throws RollbackException
+     */
+    @Override
+    public Message getBroadcast(long broadcastId) throws RollbackException {
+        try {
+            return this.getJdbcTemplate().queryForObject(Constants.GET_BROADCAST_BY_ID_QUERY,
+                    Collections.singletonMap(Constants.BROADCAST_ID_COLNAME, broadcastId), getBroadcastRowMapper());
+        } catch (EmptyResultDataAccessException ex) {
+            throw new ResourceNotFoundException(Constants.BROADCAST_NOT_FOUND + Constants.BROADCAST_ID_PREFIX + broadcastId);
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_GETTING_BROADCASTS + ex);
+            throw new RollbackException(Constants.ERROR_GETTING_BROADCASTS + ex);
+        }
+    }
+
+    /**
+     * Inserts the Message as a broadcast, its lan ID is ignored
+     *
+     * The stored Message is built from the generated ID and the inserted values, so no follow-up query is needed
+     *
+     * @param message
+     *      - Message object
+     * @return the stored Message
+     * @throws RollbackException
+     */
+    @Override
+    public Message insertBroadcast(Message message) throws RollbackException {
+        Timestamp creationDate = new Timestamp(System.currentTimeMillis());
+        boolean task = message.getType() == MessageType.Task;
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue(Constants.MSG_SUMMARY_COLNAME, message.getSummary())
+                .addValue(Constants.MSG_CREATION_DATE_COLNAME, creationDate)
+                .addValue(Constants.MSG_PRIORITY_COLNAME, Integer.parseInt(message.getPriority().getCode()))
+                .addValue(Constants.MSG_TYPE_COLNAME, message.getType().getCode())
+                .addValue(Constants.MSG_ACTION_LINK_COLNAME, task ? message.getActionLink() : null)
+                .addValue(Constants.MSG_ACTION_LABEL_COLNAME, task ? message.getActionLabel() : null)
+                .addValue(Constants.MSG_INTERNAL_COLNAME, message.isInternal())
+                .addValue(Constants.MSG_EXP_DATE_COLNAME, task ? null : message.getExpirationDate())
+                .addValue(Constants.MSG_ACTIVE_UNTIL_COLNAME, task ? Constants.TASK_ACTIVE_UNTIL : message.getExpirationDate())
+                .addValue(Constants.LAST_UPDT_USER_COLNAME, message.getLastUpdtUser());
+
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        Number broadcastId = null;
+        try {
+            this.getJdbcTemplate().update(Constants.INSERT_BROADCAST_QUERY, parameters, keyHolder);
+            broadcastId = keyHolder.getKey();
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_INSERTING_BROADCAST + ex);
+            throw new RollbackException(Constants.ERROR_INSERTING_BROADCAST + ex);
+        }
+        if( broadcastId == null ){
+            LOGGER.error(Constants.ERROR_INSERTING_BROADCAST + Constants.ERROR_NO_GENERATED_KEY);
+            throw new RollbackException(Constants.ERROR_INSERTING_BROADCAST + Constants.ERROR_NO_GENERATED_KEY);
+        }
+
+        Message storedMessage = new Message();
+        storedMessage.setId(Constants.BROADCAST_ID_PREFIX + broadcastId.longValue());
+        storedMessage.setLanId("");
+        storedMessage.setSummary(StringUtils.trimToEmpty(message.getSummary()));
+        storedMessage.setCreationDate(creationDate.toString());
+        storedMessage.setPriority(message.getPriority());
+        storedMessage.setType(message.getType());
+        storedMessage.setActionLink(task ? StringUtils.trimToEmpty(message.getActionLink()) : "");
+        storedMessage.setActionLabel(task ? StringUtils.trimToEmpty(message.getActionLabel()) : "");
+        storedMessage.setInternal(message.isInternal());
+        storedMessage.setExpirationDate(task ? "" : StringUtils.trimToEmpty(message.getExpirationDate()));
+        storedMessage.setLastUpdtUser(StringUtils.trimToEmpty(message.getLastUpdtUser()));
+        return storedMessage;
+    }
+
+    /**
+     * Deletes the broadcast and its dismissals
+     *
+     * @param broadcastId
+     *      - the numeric broadcast ID, without the prefix
+     * @return false if the broadcast is not stored
+     * @throws RollbackException
+     */
+    @Override
+    public boolean deleteBroadcast(long broadcastId) throws RollbackException {
+        MapSqlParameterSource parameters = new MapSqlParameterSource(Constants.BROADCAST_ID_COLNAME, broadcastId);
+        try {
+            this.getJdbcTemplate().update(Constants.DELETE_BROADCAST_DISMISSALS_QUERY, parameters);
+            return this.getJdbcTemplate().update(Constants.DELETE_BROADCAST_QUERY, parameters) == 1;
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_DELETING_BROADCAST + ex);
+            throw new RollbackException(Constants.ERROR_DELETING_BROADCAST + ex);
+        }
+    }
+
+    /**
+     * Retrieves the IDs of the broadcasts the user dismissed
+     *
+     * @param lanId
+     *      - the user's lan ID
+     * @return Set of broadcast IDs, with the prefix
+     * @throws RollbackException
+     */
+    @Override
+    public Set<String> getDismissedBroadcastIds(String lanId) throws RollbackException {
+        Set<String> broadcastIds = new HashSet<String>();
+        try {
+            this.getJdbcTemplate().query(Constants.GET_DISMISSED_BROADCAST_IDS_QUERY,
+                    Collections.singletonMap(Constants.MSG_LAN_ID_COLNAME, lanId),
+                    rs -> {
+                        broadcastIds.add(Constants.BROADCAST_ID_PREFIX + rs.getLong(Constants.BROADCAST_ID_COLNAME));
+                    });
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_GETTING_DISMISSED_BROADCASTS + lanId + " " + ex);
+            throw new RollbackException(Constants.ERROR_GETTING_DISMISSED_BROADCASTS + lanId + " " + ex);
+        }
+        return broadcastIds;
+    }
+
+    /**
+     * Records that the user dismissed the broadcast
+     *
+     * @param broadcastId
+     *      - the numeric broadcast ID, without the prefix
+     * @param lanId
+     *      - the user's lan ID
+     * @return false if the user already dismissed the broadcast
+     * @throws RollbackException
+     */
+    @Override
+    public boolean dismissBroadcast(long broadcastId, String lanId) throws RollbackException {
+        MapSqlParameterSource parameters = new MapSqlParameterSource(Constants.BROADCAST_ID_COLNAME, broadcastId)
+                .addValue(Constants.MSG_LAN_ID_COLNAME, lanId);
+        try {
+            return this.getJdbcTemplate().update(Constants.INSERT_BROADCAST_DISMISSAL_QUERY, parameters) == 1;
+        } catch (DuplicateKeyException ex) {
+            return false;
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_DISMISSING_BROADCAST + ex);
+            throw new RollbackException(Constants.ERROR_DISMISSING_BROADCAST + ex);
+        }
+    }
+
+    /**
+     * Deletes the broadcasts that expired before the passed time, with their dismissals
+     *
+     * @param expiredBefore
+     *      - the cutoff
+     * @return number of deleted broadcasts
+     * @throws RollbackException
+     */
+    @Override
+    public int deleteExpiredBroadcasts(Timestamp expiredBefore) throws RollbackException {
+        MapSqlParameterSource parameters = new MapSqlParameterSource(Constants.MSG_ACTIVE_UNTIL_COLNAME, expiredBefore);
+        try {
+            this.getJdbcTemplate().update(Constants.DELETE_EXPIRED_BROADCAST_DISMISSALS_QUERY, parameters);
+            return this.getJdbcTemplate().update(Constants.DELETE_EXPIRED_BROADCASTS_QUERY, parameters);
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_DELETING_BROADCAST + ex);
+            throw new RollbackException(Constants.ERROR_DELETING_BROADCAST + ex);
+        }
+    }
+
+    /**
+     * Returns a mapper of broadcast rows, which prefixes the broadcast ID
+     *
+     * @return RowMapper of Message objects
+     */
+    private static RowMapper<Message> getBroadcastRowMapper() {
+        MessageRowMapper messageRowMapper = new MessageRowMapper();
+        return (rs, rowNum) -> {
+            Message message = messageRowMapper.mapRow(rs, rowNum);
+            message.setId(Constants.BROADCAST_ID_PREFIX + message.getId());
+            return message;
+        };
+    }
+}
@@ -0,0 +1,52 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.exception.RollbackException;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * CacheInvalidationDao interface
+ *
+ * Change table through which nodes tell each other which users' inboxes changed
+ */
+public interface CacheInvalidationDao {
+
+    /**
+     * Records an invalidation for each of the passed lan IDs
+     *
+     * @param lanIds
+     *      - the users' lan IDs
+     * @throws RollbackException
+     */
+    public void insertInvalidations(Collection<String> lanIds) throws RollbackException;
+
+    /**
+     * Returns the DB's current time, which invalidations are stamped with
+     *
+     * @return Timestamp
+     * @throws RollbackException
+     */
+    public Timestamp getCurrentTime() throws RollbackException;
+
+    /**
+     * Retrieves the lan IDs invalidated at or after the passed time
+     *
+     * @param since
+     *      - DB time
+     * @return List of lan IDs without duplicates
+     * @throws RollbackException
+     */
+    public List<String> getInvalidatedLanIds(Timestamp since) throws RollbackException;
+
+    /**
+     * Deletes the invalidations recorded before the passed time
+     *
+     * @param before
+     *      - DB time
+     * @return the number of invalidations deleted
+     * @throws RollbackException
+     */
+    public int deleteInvalidations(Timestamp before) throws RollbackException;
+}
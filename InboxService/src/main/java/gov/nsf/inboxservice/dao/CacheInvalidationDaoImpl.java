@@ -0,0 +1,141 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.inboxservice.common.util.Constants;
+import org.apache.log4j.Logger;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * CacheInvalidationDaoImpl implements the CacheInvalidationDao methods against the dbo.inbx_cache_invl table
+ *
+ * Invalidations are stamped and compared with the DB clock, so cluster nodes do not need synchronized clocks
+ */
+public class CacheInvalidationDaoImpl implements CacheInvalidationDao {
+
+    private DataSource dataSource;
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private static final Logger LOGGER = Logger.getLogger(CacheInvalidationDaoImpl.class);
+
+    /**
+     * DataSource getter
+     *
+     * @return DataSource
+     */
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * DataSource setter
+     *
+     * @param dataSource
+     */
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+        this.setJdbcTemplate(new NamedParameterJdbcTemplate(dataSource));
+    }
+
+    /**
+     * NamedParameterJdbcTemplate getter
+     *
+     * @return NamedParameterJdbcTemplate
+     */
+    public NamedParameterJdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    /**
+     * NamedParameterJdbcTemplate setter
+     *
+     * @param jdbcTemplate
+     */
+    public void setJdbcTemplate(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Records an invalidation for each of the passed lan IDs as a single JDBC batch
+     *
+     * @param lanIds
+     *      - the users' lan IDs
+     * @throws RollbackException
+     */
+    @Override
+    public void insertInvalidations(Collection<String> lanIds) throws RollbackException {
+        SqlParameterSource[] batchParameters = new SqlParameterSource[lanIds.size()];
+        int i = 0;
+        for( String lanId : lanIds ){
+            batchParameters[i++] = new MapSqlParameterSource(Constants.MSG_LAN_ID_COLNAME, lanId);
+        }
+
+        try {
+            this.getJdbcTemplate().batchUpdate(Constants.INSERT_CACHE_INVALIDATION_QUERY, batchParameters);
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_PUBLISHING_CACHE_INVALIDATION + ex);
+            throw new RollbackException(Constants.ERROR_PUBLISHING_CACHE_INVALIDATION + ex);
+        }
+    }
+
+    /**
+     * Returns the DB's current time, which invalidations are stamped with
+     *
+     * @return Timestamp
+     * @throws RollbackException
+     */
+    @Override
+    public Timestamp getCurrentTime() throws RollbackException {
+        try {
+            return this.getJdbcTemplate().queryForObject(Constants.GET_DB_TIME_QUERY, Collections.<String, Object>emptyMap(), Timestamp.class);
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_POLLING_CACHE_INVALIDATIONS + ex);
+            throw new RollbackException(Constants.ERROR_POLLING_CACHE_INVALIDATIONS + ex);
+        }
+    }
+
+    /**
+     * Retrieves the lan IDs invalidated at or after the passed time
+     *
+     * @param since
+     *      - DB time
+     * @return List of lan IDs without duplicates
+     * @throws RollbackException
+     */
+    @Override
+    public List<String> getInvalidatedLanIds(Timestamp since) throws RollbackException {
+        try {
+            return this.getJdbcTemplate().queryForList(Constants.GET_CACHE_INVALIDATIONS_SINCE_QUERY,
+                    Collections.singletonMap(Constants.MSG_CREATION_DATE_COLNAME, since), String.class);
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_POLLING_CACHE_INVALIDATIONS + ex);
+            throw new RollbackException(Constants.ERROR_POLLING_CACHE_INVALIDATIONS + ex);
+        }
+    }
+
+    /**
+     * Deletes the invalidations recorded before the passed time
+     *
+     * @param before
+     *      - DB time
+     * @return the number of invalidations deleted
+     * @throws RollbackException
+     */
+    @Override
+    public int deleteInvalidations(Timestamp before) throws RollbackException {
+        try {
+            return this.getJdbcTemplate().update(Constants.DELETE_CACHE_INVALIDATIONS_BEFORE_QUERY,
+                    Collections.singletonMap(Constants.MSG_CREATION_DATE_COLNAME, before));
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_POLLING_CACHE_INVALIDATIONS + ex);
+            throw new RollbackException(Constants.ERROR_POLLING_CACHE_INVALIDATIONS + ex);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.exception.RollbackException;
+
+import java.sql.Timestamp;
+
+/**
+ * IdempotencyDao interface
+ *
+ * Idempotency keys of create requests and the responses returned to them
+ */
+public interface IdempotencyDao {
+
+    /**
+     * Claims the passed key for a request with the passed hash
+     *
+     * Blocks while another transaction holds an uncommitted claim on the key
+     *
+     * @param key
+     *      - the idempotency key
+     * @param requestHash
+     *      - hash of the request
+     * @return true if the key was claimed, false if it was already stored
+     * @throws RollbackException
+     */
+    public boolean insertKey(String key, String requestHash) throws RollbackException;
+
+    /**
+     * Stores the response returned to the request that claimed the passed key
+     *
+     * @param key
+     *      - the idempotency key
+     * @param response
+     *      - the response JSON
+     * @throws RollbackException
+     */
+    public void updateResponse(String key, String response) throws RollbackException;
+
+    /**
+     * Retrieves the stored key
+     *
+     * @param key
+     *      - the idempotency key
+     * @return IdempotencyRecord, null if the key is not stored
+     * @throws RollbackException
+     */
+    public IdempotencyRecord getRecord(String key) throws RollbackException;
+
+    /**
+     * Deletes the keys stored before the passed time
+     *
+     * @param before
+     *      - DB time
+     * @return the number of keys deleted
+     * @throws RollbackException
+     */
+    public int deleteKeys(Timestamp before) throws RollbackException;
+}
@@ -0,0 +1,151 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.inboxservice.common.util.Constants;
+import org.apache.log4j.Logger;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * IdempotencyDaoImpl implements the IdempotencyDao methods against the dbo.inbx_idem_key table
+ */
+public class IdempotencyDaoImpl implements IdempotencyDao {
+
+    private DataSource dataSource;
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private static final Logger LOGGER = Logger.getLogger(IdempotencyDaoImpl.class);
+
+    /**
+     * DataSource getter
+     *
+     * @return DataSource
+     */
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * DataSource setter
+     *
+     * @param dataSource
+     */
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+        this.setJdbcTemplate(new NamedParameterJdbcTemplate(dataSource));
+    }
+
+    /**
+     * NamedParameterJdbcTemplate getter
+     *
+     * @return NamedParameterJdbcTemplate
+     */
+    public NamedParameterJdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    /**
+     * NamedParameterJdbcTemplate setter
+     *
+     * @param jdbcTemplate
+     */
+    public void setJdbcTemplate(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Claims the passed key for a request with the passed hash
+     *
+     * The insert waits on the primary key while another transaction holds an uncommitted claim,
+     * so a false return means the other request has committed its response
+     *
+     * @param key
+     *      - the idempotency key
+     * @param requestHash
+     *      - hash of the request
+     * @return true if the key was claimed, false if it was already stored
+     * @throws RollbackException
+     */
+    @Override
+    public boolean insertKey(String key, String requestHash) throws RollbackException {
+        MapSqlParameterSource parameters = new MapSqlParameterSource(Constants.IDEMPOTENCY_KEY_COLNAME, key)
+                .addValue(Constants.IDEMPOTENCY_REQUEST_HASH_COLNAME, requestHash);
+        try {
+            this.getJdbcTemplate().update(Constants.INSERT_IDEMPOTENCY_KEY_QUERY, parameters);
+            return true;
+        } catch (DuplicateKeyException ex) {
+            return false;
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_STORING_IDEMPOTENCY_KEY + ex);
+            throw new RollbackException(Constants.ERROR_STORING_IDEMPOTENCY_KEY + ex);
+        }
+    }
+
+    /**
+     * Stores the response returned to the request that claimed the passed key
+     *
+     * @param key
+     *      - the idempotency key
+     * @param response
+     *      - the response JSON
+     * @throws RollbackException
+     */
+    @Override
+    public void updateResponse(String key, String response) throws RollbackException {
+        MapSqlParameterSource parameters = new MapSqlParameterSource(Constants.IDEMPOTENCY_KEY_COLNAME, key)
+                .addValue(Constants.IDEMPOTENCY_RESPONSE_COLNAME, response);
+        try {
+            this.getJdbcTemplate().update(Constants.UPDATE_IDEMPOTENCY_RESPONSE_QUERY, parameters);
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_STORING_IDEMPOTENCY_KEY + ex);
+            throw new RollbackException(Constants.ERROR_STORING_IDEMPOTENCY_KEY + ex);
+        }
+    }
+
+    /**
+     * Retrieves the stored key
+     *
+     * @param key
+     *      - the idempotency key
+     * @return IdempotencyRecord, null if the key is not stored
+     * @throws RollbackException
+     */
+    @Override
+    public IdempotencyRecord getRecord(String key) throws RollbackException {
+        List<IdempotencyRecord> records;
+        try {
+            records = this.getJdbcTemplate().query(Constants.GET_IDEMPOTENCY_KEY_QUERY,
+                    Collections.singletonMap(Constants.IDEMPOTENCY_KEY_COLNAME, key),
+                    (rs, rowNum) -> new IdempotencyRecord(rs.getString(1).trim(), rs.getString(2).trim(), rs.getString(3)));
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_GETTING_IDEMPOTENCY_KEY + ex);
+            throw new RollbackException(Constants.ERROR_GETTING_IDEMPOTENCY_KEY + ex);
+        }
+        return records.isEmpty() ? null : records.get(0);
+    }
+
+    /**
+     * Deletes the keys stored before the passed time
+     *
+     * @param before
+     *      - DB time
+     * @return the number of keys deleted
+     * @throws RollbackException
+     */
+    @Override
+    public int deleteKeys(Timestamp before) throws RollbackException {
+        try {
+            return this.getJdbcTemplate().update(Constants.DELETE_IDEMPOTENCY_KEYS_BEFORE_QUERY,
+                    Collections.singletonMap(Constants.MSG_CREATION_DATE_COLNAME, before));
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_DELETING_IDEMPOTENCY_KEYS + ex);
+            throw new RollbackException(Constants.ERROR_DELETING_IDEMPOTENCY_KEYS + ex);
+        }
+    }
+}
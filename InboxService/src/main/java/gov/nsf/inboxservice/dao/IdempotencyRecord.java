@@ -0,0 +1,34 @@
+package gov.nsf.inboxservice.dao;
+
+/**
+ * Idempotency key of a create request, with the hash of that request and the response returned to it
+ */
+public class IdempotencyRecord {
+
+    private final String key;
+    private final String requestHash;
+    private final String response;
+
+    public IdempotencyRecord(String key, String requestHash, String response) {
+        this.key = key;
+        this.requestHash = requestHash;
+        this.response = response;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getRequestHash() {
+        return requestHash;
+    }
+
+    /**
+     * Returns the MessageResponseWrapper JSON returned to the first request
+     *
+     * @return JSON, null while the first request has not committed
+     */
+    public String getResponse() {
+        return response;
+    }
+}
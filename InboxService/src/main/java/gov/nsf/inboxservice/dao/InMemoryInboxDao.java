@@ -0,0 +1,714 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.exception.ResourceNotFoundException;
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.common.model.ExpirationFilter;
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessagePriority;
+import gov.nsf.inboxservice.api.model.MessageType;
+import gov.nsf.inboxservice.common.util.Constants;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * InboxDao keeping the messages in memory, for load tests without a DB and as a baseline for the JDBC engine
+ *
+ * The messages live in lock stripes. A message ID maps to a stripe by its low bits and a lan ID by its hash.
+ * Each stripe holds a long keyed open-addressing map of its message IDs and a sorted set per user of its lan IDs,
+ * ordered by (creation date, message ID) like the paged queries. Ordering the inboxes by priority first was dropped
+ * on purpose: the JDBC engine returns (creation date, message ID) order, and the keyset cursors of the paged reads
+ * can only seek in that order. Writes lock the user's stripe and the message's stripe, lowest index first; reads by
+ * user or by ID lock one stripe for reading. A global index of the messages ordered by active until date drives
+ * the expiry sweeps.
+ *
+ * Nothing is persisted. Copies of a message share its content objects, so there is never orphaned content, and
+ * archive mode, batch sizes and fetch sizes do not apply. It can stand in for an InboxDaoImpl shard engine.
+ */
+public class InMemoryInboxDao implements InboxDao {
+
+    private static final Logger LOGGER = Logger.getLogger(InMemoryInboxDao.class);
+
+    private static final long TASK_ACTIVE_UNTIL_MILLIS = Timestamp.valueOf(Constants.TASK_ACTIVE_UNTIL).getTime();
+    //Information messages stored without an expiration date are neither active nor inactive, like a null active_until
+    private static final long NO_ACTIVE_UNTIL = Long.MIN_VALUE;
+
+    private static final Comparator<Record> INBOX_ORDER = Comparator.<Record, Timestamp>comparing(record -> record.creationDate)
+            .thenComparingLong(record -> record.id);
+    private static final Comparator<Record> EXPIRY_ORDER = Comparator.<Record>comparingLong(record -> record.activeUntil)
+            .thenComparingLong(record -> record.id);
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final AtomicLong nextMsgId = new AtomicLong(1);
+    private final ConcurrentSkipListSet<Record> expiryIndex = new ConcurrentSkipListSet<Record>(EXPIRY_ORDER);
+
+    public InMemoryInboxDao() {
+        this(Constants.DEFAULT_IN_MEMORY_LOCK_STRIPES);
+    }
+
+    /**
+     * @param stripeCount
+     *      - the number of lock stripes, a power of two
+     */
+    public InMemoryInboxDao(int stripeCount) {
+        if( stripeCount < 1 || Integer.bitCount(stripeCount) != 1 ){
+            throw new IllegalArgumentException("stripeCount must be a power of two: " + stripeCount);
+        }
+        stripes = new Stripe[stripeCount];
+        for( int i = 0; i < stripeCount; i++ ){
+            stripes[i] = new Stripe(i);
+        }
+        stripeMask = stripeCount - 1;
+    }
+
+    /**
+     * Stores the passed messages under their own IDs, as read from the DB, replacing messages with the same ID
+     *
+     * Used to start a load test from a snapshot. New messages get IDs above the highest loaded one
+     *
+     * @param messages
+     *      - Message objects with their ID, lan ID and creation date set
+     */
+    public void load(Collection<Message> messages) {
+        for( Message message : messages ){
+            long msgId = Long.parseLong(message.getId().trim());
+            Timestamp creationDate = Timestamp.valueOf(message.getCreationDate().trim());
+            Timestamp expirationDate = StringUtils.isBlank(message.getExpirationDate()) ? null : Timestamp.valueOf(message.getExpirationDate().trim());
+            remove(msgId, null);
+            insert(new Record(msgId, message, StringUtils.trimToEmpty(message.getLanId()), creationDate, expirationDate,
+                    InboxDaoImpl.getContentHash(message)));
+            nextMsgId.accumulateAndGet(msgId + 1, Math::max);
+        }
+    }
+
+    /**
+     * Returns the number of stored messages
+     *
+     * @return int
+     */
+    public int getMessageCount() {
+        int count = 0;
+        for( Stripe stripe : stripes ){
+            stripe.lock.readLock().lock();
+            try {
+                count += stripe.records.size();
+            } finally {
+                stripe.lock.readLock().unlock();
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public Message getMessageById(String msgId) throws RollbackException {
+        Record record = get(Long.parseLong(msgId));
+        if( record == null ){
+            throw new ResourceNotFoundException(Constants.MSG_NOT_FOUND + msgId);
+        }
+        return record.toMessage(true);
+    }
+
+    @Override
+    public List<Message> getMessagesForUser(String lanId, ExpirationFilter active) throws RollbackException {
+        return toMessages(getRecordsForUser(lanId, active, Integer.MAX_VALUE, null), true);
+    }
+
+    @Override
+    public List<Message> getMessagesForUser(String lanId, ExpirationFilter active, int limit, MessageCursor after) throws RollbackException {
+        return toMessages(getRecordsForUser(lanId, active, checkLimit(limit), after), true);
+    }
+
+    @Override
+    public List<Message> getMessageHeadersForUser(String lanId, ExpirationFilter active, int limit, MessageCursor after) throws RollbackException {
+        return toMessages(getRecordsForUser(lanId, active, checkLimit(limit), after), false);
+    }
+
+    /**
+     * Passes the messages of the passed lan ID to the handler
+     *
+     * The user's messages are collected under the stripe lock and handed over once it is released,
+     * so a slow handler does not hold up writers
+     */
+    @Override
+    public void streamMessagesForUser(String lanId, ExpirationFilter active, MessageHandler handler) throws RollbackException, IOException {
+        for( Record record : getRecordsForUser(lanId, active, Integer.MAX_VALUE, null) ){
+            handler.handle(record.toMessage(true));
+        }
+    }
+
+    @Override
+    public Message createMessage(Message message) throws RollbackException {
+        return store(message, message.getLanId(), new Timestamp(System.currentTimeMillis()), InboxDaoImpl.getContentHash(message)).toMessage(true);
+    }
+
+    @Override
+    public List<Message> createMessages(Message message, Collection<String> lanIds) throws RollbackException {
+        Timestamp creationDate = new Timestamp(System.currentTimeMillis());
+        byte[] contentHash = InboxDaoImpl.getContentHash(message);
+
+        List<Message> storedMessages = new ArrayList<Message>(lanIds.size());
+        for( String lanId : lanIds ){
+            storedMessages.add(store(message, lanId, creationDate, contentHash).toMessage(true));
+        }
+        return storedMessages;
+    }
+
+    @Override
+    public List<Message> createMessages(List<Message> messages) throws RollbackException {
+        Timestamp creationDate = new Timestamp(System.currentTimeMillis());
+
+        List<Message> storedMessages = new ArrayList<Message>(messages.size());
+        for( Message message : messages ){
+            storedMessages.add(store(message, message.getLanId(), creationDate, InboxDaoImpl.getContentHash(message)).toMessage(true));
+        }
+        return storedMessages;
+    }
+
+    /**
+     * Returns, for each of the passed lan IDs, the most recent active message with the same content hash
+     */
+    @Override
+    public Map<String, Message> getDuplicateMessages(Message message, Collection<String> lanIds) throws RollbackException {
+        byte[] contentHash = InboxDaoImpl.getContentHash(message);
+        long now = System.currentTimeMillis();
+
+        Map<String, Message> duplicates = new LinkedHashMap<String, Message>();
+        for( String lanId : lanIds ){
+            String key = StringUtils.trimToEmpty(lanId);
+            Stripe stripe = getUserStripe(key);
+            Record duplicate = null;
+            stripe.lock.readLock().lock();
+            try {
+                NavigableSet<Record> inbox = stripe.inboxes.get(key);
+                if( inbox != null ){
+                    for( Record record : inbox ){
+                        if( record.isActive(now) && Arrays.equals(record.contentHash, contentHash)
+                                && (duplicate == null || duplicate.id < record.id) ){
+                            duplicate = record;
+                        }
+                    }
+                }
+            } finally {
+                stripe.lock.readLock().unlock();
+            }
+            if( duplicate != null ){
+                duplicates.put(duplicate.lanId, duplicate.toMessage(true));
+            }
+        }
+        return duplicates;
+    }
+
+    @Override
+    public int refreshMessages(Message message, Collection<Long> msgIds) throws RollbackException {
+        Timestamp creationDate = new Timestamp(System.currentTimeMillis());
+        Timestamp expirationDate = getExpirationDate(message);
+
+        int refreshed = 0;
+        for( long msgId : msgIds ){
+            Record record = get(msgId);
+            if( record == null ){
+                continue;
+            }
+
+            Stripe userStripe = getUserStripe(record.lanId);
+            Stripe idStripe = getIdStripe(msgId);
+            lock(userStripe, idStripe);
+            try {
+                Record current = idStripe.records.get(msgId);
+                if( current != null ){
+                    unindex(userStripe, current);
+                    Record refreshedRecord = current.refresh(message, creationDate, expirationDate);
+                    idStripe.records.put(msgId, refreshedRecord);
+                    index(userStripe, refreshedRecord);
+                    refreshed++;
+                }
+            } finally {
+                unlock(userStripe, idStripe);
+            }
+        }
+        return refreshed;
+    }
+
+    @Override
+    public Message deleteMessage(String msgId) throws RollbackException {
+        Record record = remove(Long.parseLong(msgId), null);
+        if( record == null ){
+            LOGGER.error(Constants.ERROR_DELETING_MESSAGE + Constants.MSG_NOT_FOUND + msgId);
+            throw new ResourceNotFoundException(Constants.MSG_NOT_FOUND + msgId);
+        }
+        return record.toMessage(true);
+    }
+
+    @Override
+    public UserDeleteResult deleteMessageForUser(String msgId, String lanId) throws RollbackException {
+        String key = StringUtils.trimToEmpty(lanId);
+        long id = Long.parseLong(msgId);
+        Record record = remove(id, candidate -> candidate.lanId.equals(key) && candidate.type != MessageType.Task);
+        if( record != null ){
+            return UserDeleteResult.deleted(record.toMessage(true));
+        }
+        return get(id) != null ? UserDeleteResult.forbidden() : UserDeleteResult.notFound();
+    }
+
+    @Override
+    public List<Message> getMessagesByIds(Collection<Long> msgIds) throws RollbackException {
+        List<Message> messages = new ArrayList<Message>(msgIds.size());
+        for( Long msgId : msgIds ){
+            Record record = get(msgId);
+            if( record != null ){
+                messages.add(record.toMessage(true));
+            }
+        }
+        return messages;
+    }
+
+    @Override
+    public int deleteMessages(Collection<Long> msgIds) throws RollbackException {
+        int deleted = 0;
+        for( Long msgId : msgIds ){
+            if( remove(msgId, null) != null ){
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public void deleteExpiredMessages(String lanId) throws RollbackException {
+        long now = System.currentTimeMillis();
+        for( Record record : getRecordsForUser(lanId, ExpirationFilter.ALL, Integer.MAX_VALUE, null) ){
+            if( record.isExpired(now) ){
+                remove(record.id, current -> current.isExpired(now));
+            }
+        }
+    }
+
+    /**
+     * Deletes at most chunkSize expired messages across all users, taking them from the head of the expiry index
+     */
+    @Override
+    public int deleteExpiredMessagesChunk(int chunkSize) throws RollbackException {
+        if( chunkSize < 1 ){
+            throw new IllegalArgumentException("chunkSize must be greater than 0: " + chunkSize);
+        }
+
+        long now = System.currentTimeMillis();
+        int deleted = 0;
+        Iterator<Record> expiring = expiryIndex.iterator();
+        while( deleted < chunkSize && expiring.hasNext() ){
+            Record record = expiring.next();
+            if( !record.isExpired(now) ){
+                break;
+            }
+            if( remove(record.id, current -> current.isExpired(now)) != null ){
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Copies of a message share their content in memory, so there is never orphaned content to delete
+     */
+    @Override
+    public int deleteOrphanedContentChunk(Timestamp storedBefore, int chunkSize) throws RollbackException {
+        if( chunkSize < 1 ){
+            throw new IllegalArgumentException("chunkSize must be greater than 0: " + chunkSize);
+        }
+        return 0;
+    }
+
+    /**
+     * Stores a copy of the message for the passed lan ID under a new message ID
+     */
+    private Record store(Message message, String lanId, Timestamp creationDate, byte[] contentHash) throws RollbackException {
+        Timestamp expirationDate = getExpirationDate(message);
+        Record record = new Record(nextMsgId.getAndIncrement(), message, StringUtils.trimToEmpty(lanId), creationDate,
+                expirationDate, contentHash);
+        insert(record);
+        return record;
+    }
+
+    private void insert(Record record) {
+        Stripe userStripe = getUserStripe(record.lanId);
+        Stripe idStripe = getIdStripe(record.id);
+        lock(userStripe, idStripe);
+        try {
+            idStripe.records.put(record.id, record);
+            index(userStripe, record);
+        } finally {
+            unlock(userStripe, idStripe);
+        }
+    }
+
+    private Record get(long msgId) {
+        Stripe stripe = getIdStripe(msgId);
+        stripe.lock.readLock().lock();
+        try {
+            return stripe.records.get(msgId);
+        } finally {
+            stripe.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the message if it exists and matches the condition
+     *
+     * @param msgId
+     * @param condition
+     *      - checked against the stored message under the locks, null to remove it unconditionally
+     * @return the removed Record, null if none was removed
+     */
+    private Record remove(long msgId, Predicate<Record> condition) {
+        Record record = get(msgId);
+        if( record == null ){
+            return null;
+        }
+
+        //A message never changes owner, so its user stripe is known before locking
+        Stripe userStripe = getUserStripe(record.lanId);
+        Stripe idStripe = getIdStripe(msgId);
+        lock(userStripe, idStripe);
+        try {
+            Record current = idStripe.records.get(msgId);
+            if( current == null || (condition != null && !condition.test(current)) ){
+                return null;
+            }
+            idStripe.records.remove(msgId);
+            unindex(userStripe, current);
+            return current;
+        } finally {
+            unlock(userStripe, idStripe);
+        }
+    }
+
+    private void index(Stripe userStripe, Record record) {
+        userStripe.inboxes.computeIfAbsent(record.lanId, lanId -> new TreeSet<Record>(INBOX_ORDER)).add(record);
+        if( record.activeUntil != NO_ACTIVE_UNTIL ){
+            expiryIndex.add(record);
+        }
+    }
+
+    private void unindex(Stripe userStripe, Record record) {
+        NavigableSet<Record> inbox = userStripe.inboxes.get(record.lanId);
+        inbox.remove(record);
+        if( inbox.isEmpty() ){
+            userStripe.inboxes.remove(record.lanId);
+        }
+        expiryIndex.remove(record);
+    }
+
+    /**
+     * Returns up to limit of the user's messages matching the filter, after the cursor position if one is passed
+     */
+    private List<Record> getRecordsForUser(String lanId, ExpirationFilter active, int limit, MessageCursor after) {
+        String key = StringUtils.trimToEmpty(lanId);
+        Stripe stripe = getUserStripe(key);
+        long now = System.currentTimeMillis();
+
+        List<Record> records = new ArrayList<Record>();
+        stripe.lock.readLock().lock();
+        try {
+            NavigableSet<Record> inbox = stripe.inboxes.get(key);
+            if( inbox == null ){
+                return records;
+            }
+            if( after != null ){
+                inbox = inbox.tailSet(Record.position(after), false);
+            }
+            for( Record record : inbox ){
+                if( records.size() == limit ){
+                    break;
+                }
+                if( active == ExpirationFilter.ALL
+                        || (active == ExpirationFilter.ACTIVE && record.isActive(now))
+                        || (active == ExpirationFilter.INACTIVE && record.isInactive(now)) ){
+                    records.add(record);
+                }
+            }
+        } finally {
+            stripe.lock.readLock().unlock();
+        }
+        return records;
+    }
+
+    private static List<Message> toMessages(List<Record> records, boolean includeSummary) {
+        List<Message> messages = new ArrayList<Message>(records.size());
+        for( Record record : records ){
+            messages.add(record.toMessage(includeSummary));
+        }
+        return messages;
+    }
+
+    private static int checkLimit(int limit) {
+        if( limit < 1 ){
+            throw new IllegalArgumentException("limit must be greater than 0: " + limit);
+        }
+        return limit;
+    }
+
+    /**
+     * Returns the expiration date of an Information message, null for a Task
+     *
+     * @throws RollbackException if the date cannot be read, as the DB would refuse it
+     */
+    private static Timestamp getExpirationDate(Message message) throws RollbackException {
+        if( message.getType() != MessageType.Information || StringUtils.isBlank(message.getExpirationDate()) ){
+            return null;
+        }
+        try {
+            return Timestamp.valueOf(message.getExpirationDate().trim());
+        } catch (IllegalArgumentException ex) {
+            LOGGER.error(Constants.ERROR_INSERTING_MESSAGE + ex);
+            throw new RollbackException(Constants.ERROR_INSERTING_MESSAGE + ex);
+        }
+    }
+
+    private Stripe getIdStripe(long msgId) {
+        return stripes[(int) msgId & stripeMask];
+    }
+
+    private Stripe getUserStripe(String lanId) {
+        int hash = lanId.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & stripeMask];
+    }
+
+    /**
+     * Write-locks both stripes, lowest index first so concurrent writers cannot deadlock
+     */
+    private static void lock(Stripe first, Stripe second) {
+        Lock lowest = (first.index <= second.index ? first : second).lock.writeLock();
+        Lock highest = (first.index <= second.index ? second : first).lock.writeLock();
+        lowest.lock();
+        if( highest != lowest ){
+            highest.lock();
+        }
+    }
+
+    private static void unlock(Stripe first, Stripe second) {
+        first.lock.writeLock().unlock();
+        if( second != first ){
+            second.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Lock stripe holding the messages of its message IDs and the inboxes of its lan IDs
+     */
+    private static final class Stripe {
+        private final int index;
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final LongRecordMap records = new LongRecordMap();
+        private final Map<String, NavigableSet<Record>> inboxes = new HashMap<String, NavigableSet<Record>>();
+
+        private Stripe(int index) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * Stored message, replaced rather than changed so readers never see a half-updated one
+     */
+    private static final class Record {
+        private final long id;
+        private final String lanId;
+        private final String summary;
+        private final Timestamp creationDate;
+        private final MessagePriority priority;
+        private final MessageType type;
+        private final String actionLink;
+        private final String actionLabel;
+        private final boolean internal;
+        private final Timestamp expirationDate;
+        private final long activeUntil;
+        private final String lastUpdtUser;
+        private final byte[] contentHash;
+
+        private Record(long id, Message message, String lanId, Timestamp creationDate, Timestamp expirationDate, byte[] contentHash) {
+            boolean task = message.getType() == MessageType.Task;
+            this.id = id;
+            this.lanId = lanId;
+            this.summary = StringUtils.trimToEmpty(message.getSummary());
+            this.creationDate = creationDate;
+            this.priority = message.getPriority();
+            this.type = message.getType();
+            this.actionLink = task ? StringUtils.trimToEmpty(message.getActionLink()) : "";
+            this.actionLabel = task ? StringUtils.trimToEmpty(message.getActionLabel()) : "";
+            this.internal = message.isInternal();
+            this.expirationDate = expirationDate;
+            this.activeUntil = task ? TASK_ACTIVE_UNTIL_MILLIS : expirationDate != null ? expirationDate.getTime() : NO_ACTIVE_UNTIL;
+            this.lastUpdtUser = StringUtils.trimToEmpty(message.getLastUpdtUser());
+            this.contentHash = contentHash;
+        }
+
+        private Record(Record record, Timestamp creationDate, MessagePriority priority, boolean internal, Timestamp expirationDate) {
+            this.id = record.id;
+            this.lanId = record.lanId;
+            this.summary = record.summary;
+            this.creationDate = creationDate;
+            this.priority = priority;
+            this.type = record.type;
+            this.actionLink = record.actionLink;
+            this.actionLabel = record.actionLabel;
+            this.internal = internal;
+            this.expirationDate = expirationDate;
+            this.activeUntil = type == MessageType.Task ? TASK_ACTIVE_UNTIL_MILLIS : expirationDate != null ? expirationDate.getTime() : NO_ACTIVE_UNTIL;
+            this.lastUpdtUser = record.lastUpdtUser;
+            this.contentHash = record.contentHash;
+        }
+
+        /**
+         * Returns the record moved to the top of its inbox with the priority, internal flag and expiration date of the passed Message
+         */
+        private Record refresh(Message message, Timestamp creationDate, Timestamp expirationDate) {
+            return new Record(this, creationDate, message.getPriority(), message.isInternal(),
+                    message.getType() == MessageType.Information ? expirationDate : null);
+        }
+
+        /**
+         * Returns a probe positioned at the cursor, for seeking in an inbox
+         */
+        private static Record position(MessageCursor after) {
+            Message probe = new Message();
+            probe.setType(MessageType.Task);
+            return new Record(after.getMsgId(), probe, "", after.getCreationDate(), null, null);
+        }
+
+        private boolean isActive(long now) {
+            return activeUntil != NO_ACTIVE_UNTIL && activeUntil > now;
+        }
+
+        private boolean isInactive(long now) {
+            return activeUntil != NO_ACTIVE_UNTIL && activeUntil <= now;
+        }
+
+        private boolean isExpired(long now) {
+            return activeUntil != NO_ACTIVE_UNTIL && activeUntil < now;
+        }
+
+        /**
+         * Returns the Message as MessageRowMapper would read it from the DB
+         */
+        private Message toMessage(boolean includeSummary) {
+            Message message = new Message();
+            message.setId(String.valueOf(id));
+            message.setLanId(lanId);
+            if( includeSummary ){
+                message.setSummary(summary);
+            }
+            message.setCreationDate(creationDate.toString());
+            message.setPriority(priority);
+            message.setType(type);
+            message.setActionLink(actionLink);
+            message.setActionLabel(actionLabel);
+            message.setInternal(internal);
+            message.setExpirationDate(expirationDate != null ? expirationDate.toString() : "");
+            message.setLastUpdtUser(lastUpdtUser);
+            return message;
+        }
+    }
+
+    /**
+     * Open-addressing map of message IDs to records, without boxing the keys
+     *
+     * Linear probing with backward-shift deletion, so removals leave no tombstones. Not thread-safe,
+     * every access holds the lock of the stripe owning the map
+     */
+    private static final class LongRecordMap {
+        private long[] keys = new long[16];
+        private Record[] values = new Record[16];
+        private int size;
+
+        private int size() {
+            return size;
+        }
+
+        private Record get(long key) {
+            int mask = keys.length - 1;
+            for( int i = slot(key, mask); values[i] != null; i = (i + 1) & mask ){
+                if( keys[i] == key ){
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        private Record put(long key, Record value) {
+            if( (size + 1) * 2 > keys.length ){
+                resize();
+            }
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            for( ; values[i] != null; i = (i + 1) & mask ){
+                if( keys[i] == key ){
+                    Record previous = values[i];
+                    values[i] = value;
+                    return previous;
+                }
+            }
+            keys[i] = key;
+            values[i] = value;
+            size++;
+            return null;
+        }
+
+        private Record remove(long key) {
+            int mask = keys.length - 1;
+            for( int i = slot(key, mask); values[i] != null; i = (i + 1) & mask ){
+                if( keys[i] == key ){
+                    Record previous = values[i];
+                    //Moves back the following entries that may no longer be reachable past the emptied slot
+                    int gap = i;
+                    for( int j = (gap + 1) & mask; values[j] != null; j = (j + 1) & mask ){
+                        if( ((j - slot(keys[j], mask)) & mask) >= ((j - gap) & mask) ){
+                            keys[gap] = keys[j];
+                            values[gap] = values[j];
+                            gap = j;
+                        }
+                    }
+                    values[gap] = null;
+                    size--;
+                    return previous;
+                }
+            }
+            return null;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            Record[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new Record[oldValues.length * 2];
+            size = 0;
+            for( int i = 0; i < oldKeys.length; i++ ){
+                if( oldValues[i] != null ){
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+    }
+}
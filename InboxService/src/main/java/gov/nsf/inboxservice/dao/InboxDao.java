@@ -4,7 +4,11 @@ import gov.nsf.common.exception.RollbackException;
 import gov.nsf.common.model.ExpirationFilter;
 import gov.nsf.inboxservice.api.model.Message;
 
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * InboxDao interface
@@ -36,6 +40,42 @@ public interface InboxDao {
      */
     public List<Message> getMessagesForUser(String lanId, ExpirationFilter active) throws RollbackException;
 
+    /**
+     * Retrieves one page of Message objects from the DB given the user's lan ID and filtered by the "active" parameter
+     *
+     * Messages are ordered by creation date and message ID
+     *
+     * @param lanId
+     *      - the user's lan ID
+     * @param active
+     *      - the expiration filter, see getMessagesForUser(String, ExpirationFilter)
+     * @param limit
+     *      - the maximum number of messages to return
+     * @param after
+     *      - the position after which the page starts, null for the first page
+     * @return List of Message objects (empty if none exist)
+     * @throws RollbackException
+     */
+    public List<Message> getMessagesForUser(String lanId, ExpirationFilter active, int limit, MessageCursor after) throws RollbackException;
+
+    /**
+     * Retrieves one page of Message headers from the DB given the user's lan ID and filtered by the "active" parameter
+     *
+     * Same as getMessagesForUser(String, ExpirationFilter, int, MessageCursor) but the summary is not read
+     *
+     * @param lanId
+     *      - the user's lan ID
+     * @param active
+     *      - the expiration filter, see getMessagesForUser(String, ExpirationFilter)
+     * @param limit
+     *      - the maximum number of messages to return
+     * @param after
+     *      - the position after which the page starts, null for the first page
+     * @return List of Message objects without summaries (empty if none exist)
+     * @throws RollbackException
+     */
+    public List<Message> getMessageHeadersForUser(String lanId, ExpirationFilter active, int limit, MessageCursor after) throws RollbackException;
+
     /**
      * Inserts the Message object into the DB
      *
@@ -46,6 +86,67 @@ public interface InboxDao {
      */
     public Message createMessage(Message message) throws RollbackException;
 
+    /**
+     * Inserts a copy of the Message object into the DB for each of the passed lan IDs
+     *
+     * @param message
+     *      - the Message object
+     * @param lanIds
+     *      - the recipients' lan IDs
+     * @return List of the stored Message objects
+     * @throws RollbackException
+     */
+    public List<Message> createMessages(Message message, Collection<String> lanIds) throws RollbackException;
+
+    /**
+     * Inserts each of the passed Message objects into the DB for the lan ID it carries
+     *
+     * @param messages
+     *      - Message objects of distinct lan IDs, all with the same last update user
+     * @return List of the stored Message objects
+     * @throws RollbackException
+     */
+    public List<Message> createMessages(List<Message> messages) throws RollbackException;
+
+    /**
+     * Retrieves, for each of the passed lan IDs, the active message with the same content as the passed Message
+     *
+     * @param message
+     *      - the Message object
+     * @param lanIds
+     *      - the recipients' lan IDs
+     * @return Map of lan ID to the stored duplicate Message, lan IDs without one are left out
+     * @throws RollbackException
+     */
+    public Map<String, Message> getDuplicateMessages(Message message, Collection<String> lanIds) throws RollbackException;
+
+    /**
+     * Moves the messages with the passed message IDs to the top of their inboxes with the priority, internal flag
+     * and expiration date of the passed Message
+     *
+     * @param message
+     *      - the Message object
+     * @param msgIds
+     *      - the message IDs
+     * @return the number of refreshed messages
+     * @throws RollbackException
+     */
+    public int refreshMessages(Message message, Collection<Long> msgIds) throws RollbackException;
+
+    /**
+     * Passes the messages of the passed lan ID filtered by the "active" parameter to the handler as they are read
+     *
+     * @param lanId
+     *      - the user's lan ID
+     * @param active
+     *      - the expiration filter
+     * @param handler
+     *      - receives each message
+     * @throws RollbackException
+     * @throws IOException if the handler fails
+     */
+    public void streamMessagesForUser(String lanId, ExpirationFilter active, MessageHandler handler) throws RollbackException, IOException;
+
     /**
      * Deletes the message from the DB for the given its message ID
      *
@@ -56,6 +157,39 @@ public interface InboxDao {
      */
     public Message deleteMessage(String msgId) throws RollbackException;
 
+    /**
+     * Deletes the message if it belongs to the passed lan ID and is not a Task
+     *
+     * @param msgId
+     *      - the message ID
+     * @param lanId
+     *      - the owner's lan ID
+     * @return Deleted with the deleted Message, NotFound if no message has the ID, Forbidden if it belongs to
+     *      another user or is a Task
+     * @throws RollbackException
+     */
+    public UserDeleteResult deleteMessageForUser(String msgId, String lanId) throws RollbackException;
+
+    /**
+     * Retrieves the messages with the passed message IDs, missing IDs are skipped
+     *
+     * @param msgIds
+     *      - the message IDs
+     * @return List of Message objects
+     * @throws RollbackException
+     */
+    public List<Message> getMessagesByIds(Collection<Long> msgIds) throws RollbackException;
+
+    /**
+     * Deletes the messages with the passed message IDs
+     *
+     * @param msgIds
+     *      - the message IDs
+     * @return the number of deleted messages
+     * @throws RollbackException
+     */
+    public int deleteMessages(Collection<Long> msgIds) throws RollbackException;
+
     /**
      * Deletes all expired messages for the passed lan ID
      *
@@ -64,4 +198,26 @@ public interface InboxDao {
      * @throws RollbackException
      */
     public void deleteExpiredMessages(String lanId) throws RollbackException;
+
+    /**
+     * Deletes at most chunkSize expired messages across all users
+     *
+     * @param chunkSize
+     *      - the maximum number of rows to delete
+     * @return the number of rows deleted
+     * @throws RollbackException
+     */
+    public int deleteExpiredMessagesChunk(int chunkSize) throws RollbackException;
+
+    /**
+     * Deletes at most chunkSize content rows stored before the passed time that no message points to
+     *
+     * @param storedBefore
+     *      - content stored after this time is kept
+     * @param chunkSize
+     *      - the maximum number of rows to delete
+     * @return the number of rows deleted
+     * @throws RollbackException
+     */
+    public int deleteOrphanedContentChunk(Timestamp storedBefore, int chunkSize) throws RollbackException;
 }
@@ -3,6 +3,13 @@ package gov.nsf.inboxservice.dao;
 import gov.nsf.common.exception.ResourceNotFoundException;
 import gov.nsf.common.exception.RollbackException;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
 import java.util.*;
 
 import javax.sql.DataSource;
@@ -13,10 +20,17 @@ import gov.nsf.inboxservice.api.model.MessageType;
 import gov.nsf.inboxservice.common.util.Constants;
 import gov.nsf.inboxservice.dao.rowmapper.MessageResultSetExtractor;
 import gov.nsf.inboxservice.dao.rowmapper.MessageRowMapper;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 
 /**
  * InboxDaoImpl implements the InboxDao methods for retrieving information from
@@ -28,6 +42,12 @@ public class InboxDaoImpl implements InboxDao {
     @Autowired
     private DataSource dataSource;
     private NamedParameterJdbcTemplate jdbcTemplate;
+    private NamedParameterJdbcTemplate streamingJdbcTemplate;
+    private int streamFetchSize = Constants.DEFAULT_STREAM_FETCH_SIZE;
+    private int batchSize = Constants.DEFAULT_INSERT_BATCH_SIZE;
+    private boolean archiveEnabled;
+    private boolean normalizedStorage;
+    private int normalizedMinRecipients = Constants.DEFAULT_NORMALIZED_MIN_RECIPIENTS;
 
     private static final Logger LOGGER = Logger.getLogger(InboxDaoImpl.class);
 
@@ -48,6 +68,7 @@ public class InboxDaoImpl implements InboxDao {
     public void setDataSource(DataSource dataSource) {
         this.dataSource = dataSource;
         this.setJdbcTemplate(new NamedParameterJdbcTemplate(dataSource));
+        this.streamingJdbcTemplate = null;
     }
 
     /**
@@ -68,6 +89,121 @@ public class InboxDaoImpl implements InboxDao {
         this.jdbcTemplate = jdbcTemplate;
     }
 
+    /**
+     * Stream fetch size getter
+     *
+     * @return the number of rows the driver fetches per round trip while streaming
+     */
+    public int getStreamFetchSize() {
+        return streamFetchSize;
+    }
+
+    /**
+     * Stream fetch size setter
+     *
+     * @param streamFetchSize
+     */
+    public void setStreamFetchSize(int streamFetchSize) {
+        if( streamFetchSize < 1 ){
+            throw new IllegalArgumentException("streamFetchSize must be greater than 0: " + streamFetchSize);
+        }
+        this.streamFetchSize = streamFetchSize;
+        this.streamingJdbcTemplate = null;
+    }
+
+    /**
+     * Returns the template used for streaming reads, which sets streamFetchSize on its statements
+     *
+     * Kept apart from jdbcTemplate so the fetch size does not apply to the other queries
+     */
+    protected NamedParameterJdbcTemplate getStreamingJdbcTemplate() {
+        if( dataSource == null ){
+            return this.getJdbcTemplate();
+        }
+        if( streamingJdbcTemplate == null ){
+            JdbcTemplate template = new JdbcTemplate(dataSource);
+            template.setFetchSize(streamFetchSize);
+            streamingJdbcTemplate = new NamedParameterJdbcTemplate(template);
+        }
+        return streamingJdbcTemplate;
+    }
+
+    /**
+     * Insert batch size getter
+     *
+     * @return the maximum number of rows sent to the DB in a single JDBC batch
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Insert batch size setter
+     *
+     * @param batchSize
+     */
+    public void setBatchSize(int batchSize) {
+        if( batchSize < 1 ){
+            throw new IllegalArgumentException("batchSize must be greater than 0: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Archive mode getter
+     *
+     * @return true if INACTIVE and ALL reads include dbo.inbx_msg_arch
+     */
+    public boolean isArchiveEnabled() {
+        return archiveEnabled;
+    }
+
+    /**
+     * Archive mode setter
+     *
+     * @param archiveEnabled
+     */
+    public void setArchiveEnabled(boolean archiveEnabled) {
+        this.archiveEnabled = archiveEnabled;
+    }
+
+    /**
+     * Normalized storage getter
+     *
+     * @return true if messages sent to at least normalizedMinRecipients users store their content once in dbo.inbx_msg_cntnt
+     */
+    public boolean isNormalizedStorage() {
+        return normalizedStorage;
+    }
+
+    /**
+     * Normalized storage setter
+     *
+     * Only affects new messages, reads handle rows stored either way
+     *
+     * @param normalizedStorage
+     */
+    public void setNormalizedStorage(boolean normalizedStorage) {
+        this.normalizedStorage = normalizedStorage;
+    }
+
+    public int getNormalizedMinRecipients() {
+        return normalizedMinRecipients;
+    }
+
+    /**
+     * Normalized storage threshold setter
+     *
+     * A content row costs an extra insert and a join on every read, so messages with fewer recipients keep their content inline
+     *
+     * @param normalizedMinRecipients
+     */
+    public void setNormalizedMinRecipients(int normalizedMinRecipients) {
+        if( normalizedMinRecipients < 1 ){
+            throw new IllegalArgumentException("normalizedMinRecipients must be greater than 0: " + normalizedMinRecipients);
+        }
+        this.normalizedMinRecipients = normalizedMinRecipients;
+    }
 
     /**
      * Retrieves the Message object from the DB given its message ID
@@ -83,7 +219,7 @@ public class InboxDaoImpl implements InboxDao {
 
         try {
             message = this.getJdbcTemplate().queryForObject(Constants.GET_MESSAGE_BY_ID_QUERY,
-                    Collections.singletonMap(Constants.MSG_ID_COLNAME, Integer.parseInt(msgId)),
+                    Collections.singletonMap(Constants.MSG_ID_COLNAME, Long.parseLong(msgId)),
                     new MessageRowMapper());
         } catch(EmptyResultDataAccessException ex){
             LOGGER.error(Constants.ERROR_GETTING_MESSAGE + Constants.MSG_NOT_FOUND + msgId + ": " + ex);
@@ -125,9 +261,123 @@ public class InboxDaoImpl implements InboxDao {
         return messages;
     }
 
+    /**
+     * Passes the messages of the passed lan ID filtered by the "active" parameter to the handler as they are read
+     *
+     * The rows are fetched streamFetchSize at a time and never collected, so memory use does not grow with
+     * the size of the inbox. The connection is held until the handler has seen the last row.
+     *
+     * @param lanId
+     *      - the user's lan ID
+     * @param active
+     *      - the expiration filter
+     * @param handler
+     *      - receives each message
+     * @throws RollbackException
+     * @throws IOException if the handler fails
+     */
+    @Override
+    public void streamMessagesForUser(String lanId, ExpirationFilter active, MessageHandler handler) throws RollbackException, IOException {
+        MessageRowMapper rowMapper = new MessageRowMapper();
+        try {
+            this.getStreamingJdbcTemplate().query(getMessagesQuery(active),
+                    Collections.singletonMap(Constants.MSG_LAN_ID_COLNAME, lanId),
+                    (RowCallbackHandler) resultSet -> {
+                        try {
+                            handler.handle(rowMapper.mapRow(resultSet, resultSet.getRow()));
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                    });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_GETTING_MESSAGES_FOR_USER + lanId + " : " + ex);
+            throw new RollbackException(Constants.ERROR_GETTING_MESSAGES_FOR_USER + lanId);
+        }
+    }
+
+    /**
+     * Retrieves one page of Message objects from the DB given the user's lan ID and filtered by the "active" parameter
+     *
+     * The page is read with a "top" query seeking past the passed cursor, so the DB never reads past the requested page
+     *
+     * @param lanId
+     *      - the user's lan ID
+     * @param active
+     *      - the expiration filter
+     * @param limit
+     *      - the maximum number of messages to return
+     * @param after
+     *      - the position after which the page starts, null for the first page
+     * @return List of Message objects
+     * @throws RollbackException
+     */
+    @Override
+    public List<Message> getMessagesForUser(String lanId, ExpirationFilter active, int limit, MessageCursor after) throws RollbackException {
+        return getMessagesPage(lanId, active, limit, after, true);
+    }
+
+    /**
+     * Retrieves one page of Message headers from the DB given the user's lan ID and filtered by the "active" parameter
+     *
+     * Only Constants.MESSAGE_HEADER_COLUMNS are selected, so the summary never leaves the DB
+     *
+     * @param lanId
+     *      - the user's lan ID
+     * @param active
+     *      - the expiration filter
+     * @param limit
+     *      - the maximum number of messages to return
+     * @param after
+     *      - the position after which the page starts, null for the first page
+     * @return List of Message objects without summaries
+     * @throws RollbackException
+     */
+    @Override
+    public List<Message> getMessageHeadersForUser(String lanId, ExpirationFilter active, int limit, MessageCursor after) throws RollbackException {
+        return getMessagesPage(lanId, active, limit, after, false);
+    }
+
+    /**
+     * Reads one page of the user's messages, with or without their summaries
+     *
+     * @param lanId
+     * @param active
+     * @param limit
+     * @param after
+     * @param includeSummary
+     * @return List of Message objects
+     * @throws RollbackException
+     */
+    private List<Message> getMessagesPage(String lanId, ExpirationFilter active, int limit, MessageCursor after, boolean includeSummary) throws RollbackException {
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(Constants.MSG_LAN_ID_COLNAME, lanId);
+        if( after != null ){
+            parameters.put(Constants.AFTER_CREATION_DATE_PARAM, after.getCreationDate());
+            parameters.put(Constants.AFTER_MSG_ID_PARAM, after.getMsgId());
+        }
+
+        List<Message> messages = null;
+        try {
+            messages = this.getJdbcTemplate().query(getMessagesPageQuery(active, limit, after != null,
+                            includeSummary ? Constants.MESSAGE_COLUMNS : Constants.MESSAGE_HEADER_COLUMNS),
+                    parameters,
+                    new MessageResultSetExtractor(includeSummary));
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_GETTING_MESSAGES_FOR_USER + lanId + " : " + ex);
+            throw new RollbackException(Constants.ERROR_GETTING_MESSAGES_FOR_USER + lanId);
+        }
+
+        return messages;
+    }
+
     /**
      * Inserts the Message object into the DB
      *
+     * The stored Message is built from the generated message ID and the inserted values,
+     * so no follow-up query is needed
+     *
      * @param message
      *      - Message object
      * @return Message
@@ -135,23 +385,328 @@ public class InboxDaoImpl implements InboxDao {
      */
     @Override
     public Message createMessage(Message message) throws RollbackException {
+        return createMessage(message, message.getLanId());
+    }
+
+    /**
+     * Inserts a copy of the Message object into the DB for the passed lan ID and builds the stored Message
+     * from the generated message ID
+     *
+     * The creation date is cut to the DB's datetime resolution before the insert, so the returned
+     * creation date is the one later reads return
+     *
+     * @param message
+     * @param lanId
+     * @return Message
+     * @throws RollbackException
+     */
+    private Message createMessage(Message message, String lanId) throws RollbackException {
+        Timestamp creationDate = toDatetimeResolution(getCurrentTime());
+        KeyHolder keyHolder = new GeneratedKeyHolder();
         try {
-            this.getJdbcTemplate().update(Constants.INSERT_MESSAGE_QUERY, getInsertMessageParameterMap(message));
+            this.getJdbcTemplate().update(Constants.INSERT_MESSAGE_QUERY,
+                    new MapSqlParameterSource(getInsertMessageParameterMap(message, lanId, creationDate)),
+                    keyHolder);
         } catch (Exception ex) {
             LOGGER.error(Constants.ERROR_INSERTING_MESSAGE + ex);
             throw new RollbackException(Constants.ERROR_INSERTING_MESSAGE + ex);
         }
 
-        Message storedMessage = null;
+        Number msgId = null;
         try {
-            storedMessage = this.getJdbcTemplate().queryForObject(Constants.GET_LAST_INSERTED_MESSAGE_QUERY,
-                    Collections.singletonMap(Constants.MSG_LAN_ID_COLNAME, message.getLanId()),
-                    new MessageRowMapper());
+            msgId = keyHolder.getKey();
         } catch (Exception ex) {
-              LOGGER.error(Constants.ERROR_INSERTING_MESSAGE + Constants.ERROR_GETTING_MESSAGE_AFTER_INSERT + ex);
-              throw new RollbackException(Constants.ERROR_INSERTING_MESSAGE + Constants.ERROR_GETTING_MESSAGE_AFTER_INSERT + ex);
+            LOGGER.error(Constants.ERROR_INSERTING_MESSAGE + ex);
+            throw new RollbackException(Constants.ERROR_INSERTING_MESSAGE + ex);
         }
-        return storedMessage;
+        if( msgId == null ){
+            LOGGER.error(Constants.ERROR_INSERTING_MESSAGE + Constants.ERROR_NO_GENERATED_KEY);
+            throw new RollbackException(Constants.ERROR_INSERTING_MESSAGE + Constants.ERROR_NO_GENERATED_KEY);
+        }
+
+        return getStoredMessage(message, lanId, msgId.longValue(), creationDate);
+    }
+
+    /**
+     * Inserts a copy of the Message object into the DB for each of the passed lan IDs
+     *
+     * The inserts are sent as JDBC batches of at most batchSize rows, and the stored rows of each
+     * batch are read back with a single query, so the number of round trips grows with the number
+     * of batches rather than the number of recipients. A single recipient is inserted on its own
+     * and built from its generated message ID
+     *
+     * With normalized storage the summary and action are inserted once as a content row, and the
+     * recipient rows only point to it
+     *
+     * @param message
+     *      - Message object
+     * @param lanIds
+     *      - the recipients' lan IDs
+     * @return List of the stored Message objects
+     * @throws RollbackException
+     */
+    @Override
+    public List<Message> createMessages(Message message, Collection<String> lanIds) throws RollbackException {
+        List<Message> storedMessages = new ArrayList<Message>(lanIds.size());
+        List<String> batch = new ArrayList<String>(Math.min(batchSize, lanIds.size()));
+        Long contentId = normalizedStorage && lanIds.size() >= normalizedMinRecipients ? createMessageContent(message) : null;
+        if( lanIds.size() == 1 && contentId == null ){
+            storedMessages.add(createMessage(message, lanIds.iterator().next()));
+            return storedMessages;
+        }
+
+        for( String lanId : lanIds ){
+            batch.add(lanId);
+            if( batch.size() == batchSize ){
+                storedMessages.addAll(createMessageBatch(message, batch, contentId));
+                batch.clear();
+            }
+        }
+        if( !batch.isEmpty() ){
+            storedMessages.addAll(createMessageBatch(message, batch, contentId));
+        }
+
+        return storedMessages;
+    }
+
+    /**
+     * Inserts each of the passed Message objects into the DB for the lan ID it carries
+     *
+     * Used for messages rendered per recipient, which differ in content and so are always stored in the
+     * recipient rows. The inserts are sent as JDBC batches of at most batchSize rows, like createMessages(Message, Collection),
+     * and a single message is inserted on its own
+     *
+     * @param messages
+     *      - Message objects of distinct lan IDs, all with the same last update user
+     * @return List of the stored Message objects
+     * @throws RollbackException
+     */
+    @Override
+    public List<Message> createMessages(List<Message> messages) throws RollbackException {
+        List<Message> storedMessages = new ArrayList<Message>(messages.size());
+        if( messages.size() == 1 ){
+            storedMessages.add(createMessage(messages.get(0)));
+            return storedMessages;
+        }
+        for( int from = 0; from < messages.size(); from += batchSize ){
+            storedMessages.addAll(createMessageBatch(messages.subList(from, Math.min(from + batchSize, messages.size()))));
+        }
+        return storedMessages;
+    }
+
+    /**
+     * Inserts a single JDBC batch of copies of the message and reads the stored rows back
+     *
+     * @param message
+     * @param lanIds
+     * @param contentId
+     *      - the content row the recipient rows point to, null to store the content in each row
+     * @return List of the stored Message objects
+     * @throws RollbackException
+     */
+    private List<Message> createMessageBatch(Message message, List<String> lanIds, Long contentId) throws RollbackException {
+        Timestamp creationDate = getCurrentTime();
+        byte[] batchToken = newBatchToken();
+
+        SqlParameterSource[] batchParameters = new SqlParameterSource[lanIds.size()];
+        for( int i = 0; i < lanIds.size(); i++ ){
+            Map parameters = getInsertMessageParameterMap(message, lanIds.get(i), creationDate, contentId);
+            parameters.put(Constants.MSG_BATCH_TOKEN_COLNAME, batchToken);
+            batchParameters[i] = new MapSqlParameterSource(parameters);
+        }
+
+        return insertMessageBatch(batchParameters, batchToken);
+    }
+
+    /**
+     * Inserts a single JDBC batch of per-recipient messages and reads the stored rows back
+     *
+     * @param messages
+     *      - Message objects of distinct lan IDs, all with the same last update user
+     * @return List of the stored Message objects
+     * @throws RollbackException
+     */
+    private List<Message> createMessageBatch(List<Message> messages) throws RollbackException {
+        Timestamp creationDate = getCurrentTime();
+        byte[] batchToken = newBatchToken();
+
+        SqlParameterSource[] batchParameters = new SqlParameterSource[messages.size()];
+        for( int i = 0; i < messages.size(); i++ ){
+            Message message = messages.get(i);
+            Map parameters = getInsertMessageParameterMap(message, message.getLanId(), creationDate);
+            parameters.put(Constants.MSG_BATCH_TOKEN_COLNAME, batchToken);
+            batchParameters[i] = new MapSqlParameterSource(parameters);
+        }
+
+        return insertMessageBatch(batchParameters, batchToken);
+    }
+
+    /**
+     * Runs the insert batch and reads the stored rows back
+     *
+     * Every row of the batch carries the same random batch token, which finds exactly the inserted rows
+     * even when another batch for the same users and sender is stored within the same datetime tick
+     *
+     * @param batchParameters
+     * @param batchToken
+     *      - the token stored in every row of the batch
+     * @return List of the stored Message objects
+     * @throws RollbackException
+     */
+    private List<Message> insertMessageBatch(SqlParameterSource[] batchParameters, byte[] batchToken) throws RollbackException {
+        try {
+            this.getJdbcTemplate().batchUpdate(Constants.INSERT_MESSAGE_QUERY, batchParameters);
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_INSERTING_MESSAGE + ex);
+            throw new RollbackException(Constants.ERROR_INSERTING_MESSAGE + ex);
+        }
+
+        List<Message> storedMessages = null;
+        try {
+            storedMessages = this.getJdbcTemplate().query(Constants.GET_INSERTED_MESSAGES_QUERY,
+                    Collections.singletonMap(Constants.MSG_BATCH_TOKEN_COLNAME, batchToken),
+                    new MessageResultSetExtractor());
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_INSERTING_MESSAGE + Constants.ERROR_GETTING_MESSAGE_AFTER_INSERT + ex);
+            throw new RollbackException(Constants.ERROR_INSERTING_MESSAGE + Constants.ERROR_GETTING_MESSAGE_AFTER_INSERT + ex);
+        }
+        return storedMessages;
+    }
+
+    /**
+     * Returns a random token identifying the rows of one insert batch
+     *
+     * @return 16 byte token
+     */
+    private static byte[] newBatchToken() {
+        UUID token = UUID.randomUUID();
+        return ByteBuffer.allocate(16).putLong(token.getMostSignificantBits()).putLong(token.getLeastSignificantBits()).array();
+    }
+
+    /**
+     * Returns the time stored as the creation date of new messages
+     *
+     * @return Timestamp
+     */
+    protected Timestamp getCurrentTime() {
+        return new Timestamp(System.currentTimeMillis());
+    }
+
+    /**
+     * Cuts the passed time down to a multiple of Constants.DB_DATETIME_RESOLUTION_MILLIS, which the DB
+     * stores without rounding
+     *
+     * @param time
+     * @return Timestamp
+     */
+    static Timestamp toDatetimeResolution(Timestamp time) {
+        return new Timestamp(time.getTime() - Math.floorMod(time.getTime(), Constants.DB_DATETIME_RESOLUTION_MILLIS));
+    }
+
+    /**
+     * Inserts the summary and action of the Message as a content row
+     *
+     * @param message
+     * @return the generated content ID
+     * @throws RollbackException
+     */
+    private long createMessageContent(Message message) throws RollbackException {
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(Constants.MSG_SUMMARY_COLNAME, message.getSummary());
+        parameters.put(Constants.MSG_ACTION_LINK_COLNAME, message.getType() == MessageType.Task ? message.getActionLink() : null);
+        parameters.put(Constants.MSG_ACTION_LABEL_COLNAME, message.getType() == MessageType.Task ? message.getActionLabel() : null);
+        parameters.put(Constants.LAST_UPDT_TMSP_COLNAME, new Timestamp(System.currentTimeMillis()));
+
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        Number contentId = null;
+        try {
+            this.getJdbcTemplate().update(Constants.INSERT_MESSAGE_CONTENT_QUERY, new MapSqlParameterSource(parameters), keyHolder);
+            contentId = keyHolder.getKey();
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_INSERTING_MESSAGE_CONTENT + ex);
+            throw new RollbackException(Constants.ERROR_INSERTING_MESSAGE_CONTENT + ex);
+        }
+        if( contentId == null ){
+            LOGGER.error(Constants.ERROR_INSERTING_MESSAGE_CONTENT + Constants.ERROR_NO_GENERATED_KEY);
+            throw new RollbackException(Constants.ERROR_INSERTING_MESSAGE_CONTENT + Constants.ERROR_NO_GENERATED_KEY);
+        }
+        return contentId.longValue();
+    }
+
+    /**
+     * Retrieves, for each of the passed lan IDs, the active message with the same content as the
+     * passed Message, lan IDs without one are skipped
+     *
+     * The lan IDs are sent as IN lists of at most batchSize IDs, and when a user has several
+     * matching messages the most recent one is returned
+     *
+     * @param message
+     *      - Message object
+     * @param lanIds
+     *      - the recipients' lan IDs
+     * @return Map of lan ID to the stored duplicate Message
+     * @throws RollbackException
+     */
+    @Override
+    public Map<String, Message> getDuplicateMessages(Message message, Collection<String> lanIds) throws RollbackException {
+        Map<String, Message> duplicates = new LinkedHashMap<String, Message>();
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(Constants.MSG_CONTENT_HASH_COLNAME, getContentHash(message));
+
+        List<String> chunk = new ArrayList<String>(Math.min(batchSize, lanIds.size()));
+        Iterator<String> iterator = lanIds.iterator();
+        try {
+            while( iterator.hasNext() ){
+                chunk.add(iterator.next());
+                if( chunk.size() == batchSize || !iterator.hasNext() ){
+                    parameters.put(Constants.MSG_LAN_ID_COLNAME, chunk);
+                    for( Message duplicate : this.getJdbcTemplate().query(Constants.GET_DUPLICATE_MESSAGES_FOR_USERS_QUERY,
+                            parameters, new MessageRowMapper()) ){
+                        Message current = duplicates.get(duplicate.getLanId());
+                        if( current == null || Long.parseLong(current.getId()) < Long.parseLong(duplicate.getId()) ){
+                            duplicates.put(duplicate.getLanId(), duplicate);
+                        }
+                    }
+                    chunk = new ArrayList<String>(batchSize);
+                }
+            }
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_GETTING_DUPLICATE_MESSAGES + ex);
+            throw new RollbackException(Constants.ERROR_GETTING_DUPLICATE_MESSAGES + ex);
+        }
+
+        return duplicates;
+    }
+
+    /**
+     * Moves the messages with the passed message IDs to the top of their inboxes, updating their
+     * priority, internal flag and expiration date from the passed Message
+     *
+     * The IDs are sent as IN lists of at most batchSize IDs
+     *
+     * @param message
+     *      - Message object
+     * @param msgIds
+     *      - the message IDs
+     * @return the number of refreshed messages
+     * @throws RollbackException
+     */
+    @Override
+    public int refreshMessages(Message message, Collection<Long> msgIds) throws RollbackException {
+        Map parameters = getInsertMessageParameterMap(message, null, getCurrentTime());
+        int refreshed = 0;
+
+        try {
+            for( List<Long> chunk : partition(msgIds) ){
+                parameters.put(Constants.MSG_ID_COLNAME, chunk);
+                refreshed += this.getJdbcTemplate().update(Constants.REFRESH_MESSAGES_QUERY, parameters);
+            }
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_REFRESHING_MESSAGES + ex);
+            throw new RollbackException(Constants.ERROR_REFRESHING_MESSAGES + ex);
+        }
+
+        return refreshed;
     }
 
     /**
@@ -177,7 +732,7 @@ public class InboxDaoImpl implements InboxDao {
         }
 
         try {
-            this.getJdbcTemplate().update(Constants.DELETE_MESSAGE_QUERY, Collections.singletonMap(Constants.MSG_ID_COLNAME, Integer.parseInt(msgId)));
+            this.getJdbcTemplate().update(Constants.DELETE_MESSAGE_QUERY, Collections.singletonMap(Constants.MSG_ID_COLNAME, Long.parseLong(msgId)));
         } catch (Exception ex) {
             LOGGER.error(Constants.ERROR_DELETING_MESSAGE + ex);
             throw new RollbackException(Constants.ERROR_DELETING_MESSAGE + ex);
@@ -186,9 +741,118 @@ public class InboxDaoImpl implements InboxDao {
         return message;
     }
 
+    /**
+     * Deletes the message if it belongs to the passed lan ID and is not a Task
+     *
+     * The row is locked first, so the row read and checked is the row deleted: a concurrent delete or refresh of
+     * the same message waits for this transaction, and finds it gone. Must run inside the caller's transaction.
+     *
+     * @param msgId
+     *      - the message ID
+     * @param lanId
+     *      - the owner's lan ID
+     * @return Deleted with the deleted Message, NotFound if no message has the ID, Forbidden if it belongs to
+     *      another user or is a Task
+     * @throws RollbackException
+     */
+    @Override
+    public UserDeleteResult deleteMessageForUser(String msgId, String lanId) throws RollbackException {
+        Map<String, Object> params = Collections.singletonMap(Constants.MSG_ID_COLNAME, Long.parseLong(msgId));
+
+        try {
+            if( this.getJdbcTemplate().update(Constants.LOCK_MESSAGE_QUERY, params) == 0 ){
+                return UserDeleteResult.notFound();
+            }
+            Message message = this.getJdbcTemplate().queryForObject(Constants.GET_MESSAGE_BY_ID_QUERY, params, new MessageRowMapper());
+            if( !message.getLanId().equals(StringUtils.trimToEmpty(lanId)) || message.getType() == MessageType.Task ){
+                return UserDeleteResult.forbidden();
+            }
+            return this.getJdbcTemplate().update(Constants.DELETE_MESSAGE_QUERY, params) == 1 ?
+                    UserDeleteResult.deleted(message) : UserDeleteResult.notFound();
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_DELETING_MESSAGE + ex);
+            throw new RollbackException(Constants.ERROR_DELETING_MESSAGE + ex);
+        }
+    }
+
+    /**
+     * Retrieves the messages with the passed message IDs, missing IDs are skipped
+     *
+     * The IDs are sent as IN lists of at most batchSize IDs
+     *
+     * @param msgIds
+     *      - the message IDs
+     * @return List of Message objects
+     * @throws RollbackException
+     */
+    @Override
+    public List<Message> getMessagesByIds(Collection<Long> msgIds) throws RollbackException {
+        List<Message> messages = new ArrayList<Message>(msgIds.size());
+
+        try {
+            for( List<Long> chunk : partition(msgIds) ){
+                messages.addAll(this.getJdbcTemplate().query(Constants.GET_MESSAGES_BY_IDS_QUERY,
+                        Collections.singletonMap(Constants.MSG_ID_COLNAME, chunk), new MessageRowMapper()));
+            }
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_GETTING_MESSAGE + ex);
+            throw new RollbackException(Constants.ERROR_GETTING_MESSAGE + ex);
+        }
+
+        return messages;
+    }
+
+    /**
+     * Deletes the messages with the passed message IDs
+     *
+     * The IDs are sent as IN lists of at most batchSize IDs
+     *
+     * @param msgIds
+     *      - the message IDs
+     * @return the number of deleted messages
+     * @throws RollbackException
+     */
+    @Override
+    public int deleteMessages(Collection<Long> msgIds) throws RollbackException {
+        int deleted = 0;
+
+        try {
+            for( List<Long> chunk : partition(msgIds) ){
+                deleted += this.getJdbcTemplate().update(Constants.DELETE_MESSAGES_BY_IDS_QUERY,
+                        Collections.singletonMap(Constants.MSG_ID_COLNAME, chunk));
+            }
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_DELETING_MESSAGE + ex);
+            throw new RollbackException(Constants.ERROR_DELETING_MESSAGE + ex);
+        }
+
+        return deleted;
+    }
+
+    /**
+     * Splits the passed IDs into chunks of at most batchSize
+     */
+    private List<List<Long>> partition(Collection<Long> ids) {
+        List<List<Long>> chunks = new ArrayList<List<Long>>();
+        List<Long> chunk = new ArrayList<Long>(Math.min(batchSize, ids.size()));
+        for( Long id : ids ){
+            chunk.add(id);
+            if( chunk.size() == batchSize ){
+                chunks.add(chunk);
+                chunk = new ArrayList<Long>(batchSize);
+            }
+        }
+        if( !chunk.isEmpty() ){
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
     /**
      * Deletes all expired messages for the passed lan ID
      *
+     * In archive mode the user's archived expired messages are deleted as well
+     *
      * @param lanId
      *      - the user's lan ID
      * @throws RollbackException
@@ -197,12 +861,65 @@ public class InboxDaoImpl implements InboxDao {
     public void deleteExpiredMessages(String lanId) throws RollbackException {
         try {
             this.getJdbcTemplate().update(Constants.DELETE_EXPIRED_MESSAGES_QUERY, Collections.singletonMap(Constants.MSG_LAN_ID_COLNAME, lanId));
+            if( archiveEnabled ){
+                this.getJdbcTemplate().update(Constants.DELETE_EXPIRED_ARCHIVED_MESSAGES_QUERY, Collections.singletonMap(Constants.MSG_LAN_ID_COLNAME, lanId));
+            }
         } catch (Exception ex) {
             LOGGER.error(Constants.ERROR_DELETING_MESSAGE + ex);
             throw new RollbackException(Constants.ERROR_DELETING_MESSAGE + ex);
         }
     }
 
+    /**
+     * Deletes at most chunkSize expired messages across all users
+     *
+     * The statement runs in its own transaction, so the chunk size bounds how many row locks are held at once
+     *
+     * @param chunkSize
+     *      - the maximum number of rows to delete, must be positive
+     * @return the number of rows deleted
+     * @throws RollbackException
+     */
+    @Override
+    public int deleteExpiredMessagesChunk(int chunkSize) throws RollbackException {
+        if( chunkSize < 1 ){
+            throw new IllegalArgumentException("chunkSize must be greater than 0: " + chunkSize);
+        }
+
+        try {
+            return this.getJdbcTemplate().update(Constants.DELETE_EXPIRED_MESSAGES_CHUNK_DELETE + chunkSize + Constants.DELETE_EXPIRED_MESSAGES_CHUNK_FROM_CLAUSE,
+                    Collections.<String, Object>emptyMap());
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_SWEEPING_EXPIRED_MESSAGES + ex);
+            throw new RollbackException(Constants.ERROR_SWEEPING_EXPIRED_MESSAGES + ex);
+        }
+    }
+
+
+    /**
+     * Deletes at most chunkSize content rows stored before the passed time that no message points to
+     *
+     * @param storedBefore
+     *      - content stored after this time is kept, its recipient rows may not be committed yet
+     * @param chunkSize
+     *      - the maximum number of rows to delete, must be positive
+     * @return the number of rows deleted
+     * @throws RollbackException
+     */
+    @Override
+    public int deleteOrphanedContentChunk(Timestamp storedBefore, int chunkSize) throws RollbackException {
+        if( chunkSize < 1 ){
+            throw new IllegalArgumentException("chunkSize must be greater than 0: " + chunkSize);
+        }
+
+        try {
+            return this.getJdbcTemplate().update(Constants.DELETE_ORPHANED_MESSAGE_CONTENT_DELETE + chunkSize + Constants.DELETE_ORPHANED_MESSAGE_CONTENT_FROM_CLAUSE,
+                    Collections.singletonMap(Constants.LAST_UPDT_TMSP_COLNAME, storedBefore));
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_DELETING_ORPHANED_MESSAGE_CONTENT + ex);
+            throw new RollbackException(Constants.ERROR_DELETING_ORPHANED_MESSAGE_CONTENT + ex);
+        }
+    }
 
     /**
      * Returns the getMessagesForUser query based on the 'active' parameter
@@ -216,34 +933,174 @@ public class InboxDaoImpl implements InboxDao {
         if( activeFilter == ExpirationFilter.ACTIVE ){
             query = Constants.GET_ACTIVE_MESSAGES_FOR_USER_QUERY;
         } else if( activeFilter == ExpirationFilter.INACTIVE ) {
-            query = Constants.GET_INACTIVE_MESSAGES_FOR_USER_QUERY;
+            query = archiveEnabled ? Constants.GET_INACTIVE_MESSAGES_WITH_ARCHIVE_FOR_USER_QUERY : Constants.GET_INACTIVE_MESSAGES_FOR_USER_QUERY;
         } else {
-            query = Constants.GET_ALL_MESSAGES_FOR_USER_QUERY;
+            query = archiveEnabled ? Constants.GET_ALL_MESSAGES_WITH_ARCHIVE_FOR_USER_QUERY : Constants.GET_ALL_MESSAGES_FOR_USER_QUERY;
         }
 
         return query;
     }
 
+    /**
+     * Returns the paged getMessagesForUser query based on the 'active' parameter
+     *
+     * @param activeFilter
+     * @param limit
+     *      - the page size, must be positive
+     * @param hasCursor
+     *      - true if the page starts after a cursor position
+     * @return
+     */
+    protected String getMessagesPageQuery(ExpirationFilter activeFilter, int limit, boolean hasCursor){
+        return getMessagesPageQuery(activeFilter, limit, hasCursor, Constants.MESSAGE_COLUMNS);
+    }
+
+    /**
+     * Returns the paged getMessagesForUser query selecting the passed columns
+     *
+     * @param activeFilter
+     * @param limit
+     *      - the page size, must be positive
+     * @param hasCursor
+     *      - true if the page starts after a cursor position
+     * @param columns
+     *      - Constants.MESSAGE_COLUMNS or Constants.MESSAGE_HEADER_COLUMNS
+     * @return
+     */
+    protected String getMessagesPageQuery(ExpirationFilter activeFilter, int limit, boolean hasCursor, String columns){
+        if( limit < 1 ){
+            throw new IllegalArgumentException("limit must be greater than 0: " + limit);
+        }
+
+        String predicate = "";
+        if( activeFilter == ExpirationFilter.ACTIVE ){
+            predicate = Constants.ACTIVE_MESSAGES_PREDICATE;
+        } else if( activeFilter == ExpirationFilter.INACTIVE ) {
+            predicate = Constants.INACTIVE_MESSAGES_PREDICATE;
+        } else {
+            predicate = Constants.ALL_MESSAGES_PREDICATE;
+        }
+
+        //The hot table joins the content of normalized rows, the archive holds its own copy
+        String storedColumns = Constants.MESSAGE_COLUMNS.equals(columns) ? Constants.STORED_MESSAGE_COLUMNS : Constants.STORED_MESSAGE_HEADER_COLUMNS;
+        String cursorPredicate = hasCursor ? Constants.MESSAGES_PAGE_AFTER_CURSOR_PREDICATE : "";
+        if( archiveEnabled && activeFilter != ExpirationFilter.ACTIVE ){
+            //Each branch applies the filter and seeks past the cursor on its own index before the rows are merged
+            return Constants.MESSAGES_PAGE_SELECT + limit + " " + columns + " from (" +
+                    "select " + storedColumns + " " + Constants.MESSAGES_FOR_USER_FROM_CLAUSE + predicate + cursorPredicate +
+                    " union all " +
+                    "select " + columns + " " + Constants.ARCHIVED_MESSAGES_FOR_USER_FROM_CLAUSE + predicate + cursorPredicate +
+                    ") m" +
+                    Constants.MESSAGES_PAGE_ORDER_BY;
+        }
+
+        return Constants.MESSAGES_PAGE_SELECT + limit + " " + storedColumns + " " +
+                Constants.MESSAGES_FOR_USER_FROM_CLAUSE +
+                predicate +
+                cursorPredicate +
+                Constants.MESSAGES_PAGE_ORDER_BY;
+    }
+
+    /**
+     * Returns the Message as it was stored in the DB
+     *
+     * Mirrors the values MessageRowMapper would read back for the inserted row
+     *
+     * @param message
+     * @param lanId
+     * @param msgId
+     * @param creationDate
+     * @return Message
+     */
+    private static Message getStoredMessage(Message message, String lanId, long msgId, Timestamp creationDate){
+        Message storedMessage = new Message();
+        storedMessage.setId(String.valueOf(msgId));
+        storedMessage.setLanId(StringUtils.trimToEmpty(lanId));
+        storedMessage.setSummary(StringUtils.trimToEmpty(message.getSummary()));
+        storedMessage.setCreationDate(creationDate.toString());
+        storedMessage.setPriority(message.getPriority());
+        storedMessage.setType(message.getType());
+        storedMessage.setActionLink(message.getType() == MessageType.Task ? StringUtils.trimToEmpty(message.getActionLink()) : "");
+        storedMessage.setActionLabel(message.getType() == MessageType.Task ? StringUtils.trimToEmpty(message.getActionLabel()) : "");
+        storedMessage.setInternal(message.isInternal());
+        storedMessage.setExpirationDate(message.getType() == MessageType.Information ? StringUtils.trimToEmpty(message.getExpirationDate()) : "");
+        storedMessage.setLastUpdtUser(StringUtils.trimToEmpty(message.getLastUpdtUser()));
+
+        return storedMessage;
+    }
+
     /**
      * Returns the parameter map for inserting a message
      *
      * @param message
+     * @param lanId
+     * @param creationDate
+     * @return Map of parameters
+     */
+    private static Map getInsertMessageParameterMap(Message message, String lanId, Timestamp creationDate){
+        return getInsertMessageParameterMap(message, lanId, creationDate, null);
+    }
+
+    /**
+     * Returns the parameter map for inserting a message that points to the passed content row
+     *
+     * The summary and action are left null in the recipient row when a content ID is passed
+     *
+     * @param message
+     * @param lanId
+     * @param creationDate
+     * @param contentId
+     *      - the content row ID, null to store the content in the recipient row
      * @return Map of parameters
      */
-    private static Map getInsertMessageParameterMap(Message message){
+    private static Map getInsertMessageParameterMap(Message message, String lanId, Timestamp creationDate, Long contentId){
         Map parameters = new HashMap();
-        parameters.put(Constants.MSG_LAN_ID_COLNAME, message.getLanId());
+        parameters.put(Constants.MSG_LAN_ID_COLNAME, lanId);
         parameters.put(Constants.MSG_SUMMARY_COLNAME, message.getSummary());
+        parameters.put(Constants.MSG_CREATION_DATE_COLNAME, creationDate);
         parameters.put(Constants.MSG_PRIORITY_COLNAME, Integer.parseInt(message.getPriority().getCode()));
         parameters.put(Constants.MSG_TYPE_COLNAME, message.getType().getCode());
         parameters.put(Constants.MSG_ACTION_LINK_COLNAME, message.getType() == MessageType.Task ? message.getActionLink() : null );
         parameters.put(Constants.MSG_ACTION_LABEL_COLNAME, message.getType() == MessageType.Task ? message.getActionLabel() : null );
         parameters.put(Constants.MSG_INTERNAL_COLNAME, message.isInternal());
         parameters.put(Constants.MSG_EXP_DATE_COLNAME, message.getType() == MessageType.Information ? message.getExpirationDate() : null);
+        parameters.put(Constants.MSG_ACTIVE_UNTIL_COLNAME, message.getType() == MessageType.Information ? message.getExpirationDate() : Constants.TASK_ACTIVE_UNTIL);
         parameters.put(Constants.LAST_UPDT_USER_COLNAME, message.getLastUpdtUser());
+        parameters.put(Constants.MSG_CONTENT_HASH_COLNAME, getContentHash(message));
+        parameters.put(Constants.MSG_CONTENT_ID_COLNAME, contentId);
+        parameters.put(Constants.MSG_BATCH_TOKEN_COLNAME, null);
+        if( contentId != null ){
+            parameters.put(Constants.MSG_SUMMARY_COLNAME, null);
+            parameters.put(Constants.MSG_ACTION_LINK_COLNAME, null);
+            parameters.put(Constants.MSG_ACTION_LABEL_COLNAME, null);
+        }
 
         return parameters;
     }
 
+    /**
+     * Returns the SHA-256 of the Message content used to detect duplicates
+     *
+     * Covers the values a recipient sees (type, summary, action link and label) and the sender,
+     * but not the recipient, so one hash is shared by every copy of a message
+     *
+     * @param message
+     * @return 32 byte hash
+     */
+    static byte[] getContentHash(Message message){
+        StringBuilder content = new StringBuilder();
+        content.append(message.getType().getCode()).append('\0');
+        content.append(StringUtils.trimToEmpty(message.getSummary())).append('\0');
+        content.append(message.getType() == MessageType.Task ? StringUtils.trimToEmpty(message.getActionLink()) : "").append('\0');
+        content.append(message.getType() == MessageType.Task ? StringUtils.trimToEmpty(message.getActionLabel()) : "").append('\0');
+        content.append(StringUtils.trimToEmpty(message.getLastUpdtUser()));
+
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
 
 }
@@ -0,0 +1,38 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.exception.RollbackException;
+
+/**
+ * LeaseDao interface
+ *
+ * Leases are rows in the lock table that one owner holds until the lease runs out or is released
+ */
+public interface LeaseDao {
+
+    /**
+     * Acquires or renews the named lease for the passed owner
+     *
+     * Succeeds when the lease is free, expired, or already held by the owner
+     *
+     * @param lockName
+     *      - the lease name
+     * @param owner
+     *      - the unique ID of the caller
+     * @param leaseSeconds
+     *      - how long the lease is held for without renewal
+     * @return true if the owner now holds the lease
+     * @throws RollbackException
+     */
+    public boolean acquireLease(String lockName, String owner, int leaseSeconds) throws RollbackException;
+
+    /**
+     * Releases the named lease if it is held by the passed owner
+     *
+     * @param lockName
+     *      - the lease name
+     * @param owner
+     *      - the unique ID of the caller
+     * @throws RollbackException
+     */
+    public void releaseLease(String lockName, String owner) throws RollbackException;
+}
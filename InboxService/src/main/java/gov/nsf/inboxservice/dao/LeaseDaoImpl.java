@@ -0,0 +1,112 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.inboxservice.common.util.Constants;
+import org.apache.log4j.Logger;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * LeaseDaoImpl implements the LeaseDao methods against the dbo.inbx_lock table
+ *
+ * Lease times are compared with the DB clock, so cluster nodes do not need synchronized clocks
+ */
+public class LeaseDaoImpl implements LeaseDao {
+
+    private DataSource dataSource;
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private static final Logger LOGGER = Logger.getLogger(LeaseDaoImpl.class);
+
+    /**
+     * DataSource getter
+     *
+     * @return DataSource
+     */
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * DataSource setter
+     *
+     * @param dataSource
+     */
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+        this.setJdbcTemplate(new NamedParameterJdbcTemplate(dataSource));
+    }
+
+    /**
+     * NamedParameterJdbcTemplate getter
+     *
+     * @return NamedParameterJdbcTemplate
+     */
+    public NamedParameterJdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    /**
+     * NamedParameterJdbcTemplate setter
+     *
+     * @param jdbcTemplate
+     */
+    public void setJdbcTemplate(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Acquires or renews the named lease for the passed owner
+     *
+     * A single conditional update, so two nodes racing for a free lease cannot both win
+     *
+     * @param lockName
+     *      - the lease name
+     * @param owner
+     *      - the unique ID of the caller
+     * @param leaseSeconds
+     *      - how long the lease is held for without renewal
+     * @return true if the owner now holds the lease
+     * @throws RollbackException
+     */
+    @Override
+    public boolean acquireLease(String lockName, String owner, int leaseSeconds) throws RollbackException {
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(Constants.LOCK_NAME_COLNAME, lockName);
+        parameters.put(Constants.LOCK_OWNER_COLNAME, owner);
+        parameters.put(Constants.LEASE_SECONDS_PARAM, leaseSeconds);
+
+        try {
+            return this.getJdbcTemplate().update(Constants.ACQUIRE_LEASE_QUERY, parameters) == 1;
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_ACQUIRING_LEASE + lockName + " : " + ex);
+            throw new RollbackException(Constants.ERROR_ACQUIRING_LEASE + lockName);
+        }
+    }
+
+    /**
+     * Releases the named lease if it is held by the passed owner
+     *
+     * @param lockName
+     *      - the lease name
+     * @param owner
+     *      - the unique ID of the caller
+     * @throws RollbackException
+     */
+    @Override
+    public void releaseLease(String lockName, String owner) throws RollbackException {
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(Constants.LOCK_NAME_COLNAME, lockName);
+        parameters.put(Constants.LOCK_OWNER_COLNAME, owner);
+
+        try {
+            this.getJdbcTemplate().update(Constants.RELEASE_LEASE_QUERY, parameters);
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_RELEASING_LEASE + lockName + " : " + ex);
+            throw new RollbackException(Constants.ERROR_RELEASING_LEASE + lockName);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessageCount;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * MessageCountDao interface
+ *
+ * Keeps the per-user message counters in step with dbo.inbx_msg, so counts are read without scanning messages
+ *
+ * Archived messages in dbo.inbx_msg_arch are not counted
+ */
+public interface MessageCountDao {
+
+    /**
+     * Retrieves the user's message counts per message type and priority
+     *
+     * Types and priorities the user has no messages for are left out
+     *
+     * @param lanId
+     *      - the user's lan ID
+     * @return List of MessageCount objects
+     * @throws RollbackException
+     */
+    public List<MessageCount> getMessageCounts(String lanId) throws RollbackException;
+
+    /**
+     * Counts a copy of the Message object for each of the passed lan IDs
+     *
+     * @param message
+     *      - the created Message object
+     * @param lanIds
+     *      - the recipients' lan IDs, without duplicates
+     * @throws RollbackException
+     */
+    public void incrementCounts(Message message, Collection<String> lanIds) throws RollbackException;
+
+    /**
+     * Stops counting the message with the passed message ID
+     *
+     * Has to be called before the message is deleted
+     *
+     * @param msgId
+     *      - the message ID
+     * @throws RollbackException
+     */
+    public void decrementCount(String msgId) throws RollbackException;
+
+    /**
+     * Stops counting the passed deleted message
+     *
+     * The counter is found from the message's own lan ID, type, priority and expiration, so it can be
+     * called after the message is deleted
+     *
+     * @param message
+     *      - the deleted Message object
+     * @throws RollbackException
+     */
+    public void decrementCount(Message message) throws RollbackException;
+
+    /**
+     * Stops counting the expired messages of the passed lan ID
+     *
+     * @param lanId
+     *      - the user's lan ID
+     * @throws RollbackException
+     */
+    public void deleteExpiredCounts(String lanId) throws RollbackException;
+
+    /**
+     * Recounts the expired counters of all users from dbo.inbx_msg
+     *
+     * Catches up with expired messages that were removed without going through this DAO
+     *
+     * @return the number of empty counters deleted
+     * @throws RollbackException
+     */
+    public int recountExpiredCounts() throws RollbackException;
+
+    /**
+     * Rebuilds all counters of the passed lan IDs from dbo.inbx_msg
+     *
+     * @param lanIds
+     *      - the users' lan IDs
+     * @throws RollbackException
+     */
+    public void recountMessages(Collection<String> lanIds) throws RollbackException;
+}
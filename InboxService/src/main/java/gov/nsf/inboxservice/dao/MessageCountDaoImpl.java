@@ -0,0 +1,317 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessageCount;
+import gov.nsf.inboxservice.api.model.MessageType;
+import gov.nsf.inboxservice.common.util.Constants;
+import gov.nsf.inboxservice.dao.rowmapper.MessageCountRowMapper;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MessageCountDaoImpl implements the MessageCountDao methods against the dbo.inbx_msg_cnt table
+ *
+ * Counters are keyed by user, type, priority and the day active_until falls on, so a counter moves from
+ * ACTIVE to INACTIVE on its own when its day ends, and a user's counts are read from at most one row per
+ * type and priority of each day messages expire on. Callers update the counters in the same
+ * transaction as the messages they count.
+ */
+public class MessageCountDaoImpl implements MessageCountDao {
+
+    private DataSource dataSource;
+    private NamedParameterJdbcTemplate jdbcTemplate;
+    private int batchSize = Constants.DEFAULT_INSERT_BATCH_SIZE;
+
+    private static final Logger LOGGER = Logger.getLogger(MessageCountDaoImpl.class);
+
+    /**
+     * DataSource getter
+     *
+     * @return DataSource
+     */
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * DataSource setter
+     *
+     * @param dataSource
+     */
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+        this.setJdbcTemplate(new NamedParameterJdbcTemplate(dataSource));
+    }
+
+    /**
+     * NamedParameterJdbcTemplate getter
+     *
+     * @return NamedParameterJdbcTemplate
+     */
+    public NamedParameterJdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    /**
+     * NamedParameterJdbcTemplate setter
+     *
+     * @param jdbcTemplate
+     */
+    public void setJdbcTemplate(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Batch size getter
+     *
+     * @return the maximum number of counters sent to the DB in a single JDBC batch
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Batch size setter
+     *
+     * @param batchSize
+     */
+    public void setBatchSize(int batchSize) {
+        if( batchSize < 1 ){
+            throw new IllegalArgumentException("batchSize must be greater than 0: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Retrieves the user's message counts per message type and priority
+     *
+     * Only the user's counters are read, one per type, priority and active day
+     *
+     * @param lanId
+     *      - the user's lan ID
+     * @return List of MessageCount objects
+     * @throws RollbackException
+     */
+    @Override
+    public List<MessageCount> getMessageCounts(String lanId) throws RollbackException {
+        try {
+            return this.getJdbcTemplate().query(Constants.GET_MESSAGE_COUNTS_FOR_USER_QUERY,
+                    Collections.singletonMap(Constants.MSG_LAN_ID_COLNAME, lanId),
+                    new MessageCountRowMapper());
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_GETTING_MESSAGE_COUNTS + lanId + " : " + ex);
+            throw new RollbackException(Constants.ERROR_GETTING_MESSAGE_COUNTS + lanId);
+        }
+    }
+
+    /**
+     * Counts a copy of the Message object for each of the passed lan IDs
+     *
+     * Missing counters are created first and then every counter is incremented, each as JDBC batches
+     * of at most batchSize rows
+     *
+     * @param message
+     *      - the created Message object
+     * @param lanIds
+     *      - the recipients' lan IDs, without duplicates
+     * @throws RollbackException
+     */
+    @Override
+    public void incrementCounts(Message message, Collection<String> lanIds) throws RollbackException {
+        List<SqlParameterSource> batch = new ArrayList<SqlParameterSource>(Math.min(batchSize, lanIds.size()));
+
+        for( String lanId : lanIds ){
+            batch.add(getMessageCountParameters(message, lanId));
+            if( batch.size() == batchSize ){
+                incrementCountBatch(batch.toArray(new SqlParameterSource[batch.size()]));
+                batch.clear();
+            }
+        }
+        if( !batch.isEmpty() ){
+            incrementCountBatch(batch.toArray(new SqlParameterSource[batch.size()]));
+        }
+    }
+
+    /**
+     * Seeds and increments a single batch of counters
+     *
+     * Seeding only inserts missing counters, so it is repeated when a concurrent request created one of them first
+     *
+     * @param batchParameters
+     * @throws RollbackException
+     */
+    private void incrementCountBatch(SqlParameterSource[] batchParameters) throws RollbackException {
+        try {
+            try {
+                this.getJdbcTemplate().batchUpdate(Constants.SEED_MESSAGE_COUNT_QUERY, batchParameters);
+            } catch (DuplicateKeyException ex) {
+                LOGGER.info("Message counter created concurrently, seeding again: " + ex);
+                this.getJdbcTemplate().batchUpdate(Constants.SEED_MESSAGE_COUNT_QUERY, batchParameters);
+            }
+            this.getJdbcTemplate().batchUpdate(Constants.INCREMENT_MESSAGE_COUNT_QUERY, batchParameters);
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_UPDATING_MESSAGE_COUNTS + ex);
+            throw new RollbackException(Constants.ERROR_UPDATING_MESSAGE_COUNTS + ex);
+        }
+    }
+
+    /**
+     * Stops counting the message with the passed message ID
+     *
+     * The counter is found through the message row, and deleted once it reaches zero
+     *
+     * @param msgId
+     *      - the message ID
+     * @throws RollbackException
+     */
+    @Override
+    public void decrementCount(String msgId) throws RollbackException {
+        try {
+            this.getJdbcTemplate().update(Constants.DECREMENT_MESSAGE_COUNT_QUERY, Collections.singletonMap(Constants.MSG_ID_COLNAME, Long.parseLong(msgId)));
+            this.getJdbcTemplate().update(Constants.DELETE_EMPTY_MESSAGE_COUNT_QUERY, Collections.singletonMap(Constants.MSG_ID_COLNAME, Long.parseLong(msgId)));
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_UPDATING_MESSAGE_COUNTS + ex);
+            throw new RollbackException(Constants.ERROR_UPDATING_MESSAGE_COUNTS + ex);
+        }
+    }
+
+    /**
+     * Stops counting the passed deleted message
+     *
+     * The counter is deleted once it reaches zero. Information messages without an expiration date are not counted.
+     *
+     * @param message
+     *      - the deleted Message object
+     * @throws RollbackException
+     */
+    @Override
+    public void decrementCount(Message message) throws RollbackException {
+        if( message.getType() == MessageType.Information && StringUtils.isBlank(message.getExpirationDate()) ){
+            return;
+        }
+
+        SqlParameterSource parameters = getMessageCountParameters(message, message.getLanId());
+        try {
+            this.getJdbcTemplate().update(Constants.DECREMENT_MESSAGE_COUNT_BY_KEY_QUERY, parameters);
+            this.getJdbcTemplate().update(Constants.DELETE_EMPTY_MESSAGE_COUNT_BY_KEY_QUERY, parameters);
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_UPDATING_MESSAGE_COUNTS + ex);
+            throw new RollbackException(Constants.ERROR_UPDATING_MESSAGE_COUNTS + ex);
+        }
+    }
+
+    /**
+     * Stops counting the expired messages of the passed lan ID
+     *
+     * Runs after the user's expired messages are deleted. The counters of past days are deleted, and the
+     * current day's counters are recounted since they may still count messages expiring later today
+     *
+     * @param lanId
+     *      - the user's lan ID
+     * @throws RollbackException
+     */
+    @Override
+    public void deleteExpiredCounts(String lanId) throws RollbackException {
+        try {
+            Map<String, String> parameters = Collections.singletonMap(Constants.MSG_LAN_ID_COLNAME, lanId);
+            this.getJdbcTemplate().update(Constants.DELETE_EXPIRED_MESSAGE_COUNTS_QUERY, parameters);
+            this.getJdbcTemplate().update(Constants.RECOUNT_TODAYS_MESSAGE_COUNTS_QUERY, parameters);
+            this.getJdbcTemplate().update(Constants.DELETE_EMPTY_MESSAGE_COUNTS_FOR_USER_QUERY, parameters);
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_UPDATING_MESSAGE_COUNTS + ex);
+            throw new RollbackException(Constants.ERROR_UPDATING_MESSAGE_COUNTS + ex);
+        }
+    }
+
+    /**
+     * Recounts the expired counters of all users from dbo.inbx_msg
+     *
+     * Only the counters of past days and the current day are touched, each recount seeks the user's
+     * messages on their active_until
+     *
+     * @return the number of empty counters deleted
+     * @throws RollbackException
+     */
+    @Override
+    public int recountExpiredCounts() throws RollbackException {
+        try {
+            this.getJdbcTemplate().update(Constants.RECOUNT_EXPIRED_MESSAGE_COUNTS_QUERY, Collections.<String, Object>emptyMap());
+            return this.getJdbcTemplate().update(Constants.DELETE_EMPTY_EXPIRED_MESSAGE_COUNTS_QUERY, Collections.<String, Object>emptyMap());
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_UPDATING_MESSAGE_COUNTS + ex);
+            throw new RollbackException(Constants.ERROR_UPDATING_MESSAGE_COUNTS + ex);
+        }
+    }
+
+    /**
+     * Rebuilds all counters of the passed lan IDs from dbo.inbx_msg
+     *
+     * The lan IDs are sent as IN lists of at most batchSize lan IDs
+     *
+     * @param lanIds
+     *      - the users' lan IDs
+     * @throws RollbackException
+     */
+    @Override
+    public void recountMessages(Collection<String> lanIds) throws RollbackException {
+        if( lanIds.isEmpty() ){
+            return;
+        }
+
+        List<String> users = new ArrayList<String>(lanIds);
+        try {
+            for( int from = 0; from < users.size(); from += batchSize ){
+                List<String> chunk = users.subList(from, Math.min(from + batchSize, users.size()));
+                this.getJdbcTemplate().update(Constants.DELETE_MESSAGE_COUNTS_FOR_USERS_QUERY, Collections.singletonMap(Constants.MSG_LAN_ID_COLNAME, chunk));
+                this.getJdbcTemplate().update(Constants.COUNT_MESSAGES_FOR_USERS_QUERY, Collections.singletonMap(Constants.MSG_LAN_ID_COLNAME, chunk));
+            }
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_UPDATING_MESSAGE_COUNTS + ex);
+            throw new RollbackException(Constants.ERROR_UPDATING_MESSAGE_COUNTS + ex);
+        }
+    }
+
+    /**
+     * Returns the counter key of the message stored for the passed lan ID
+     *
+     * @param message
+     * @param lanId
+     * @return SqlParameterSource
+     */
+    private static SqlParameterSource getMessageCountParameters(Message message, String lanId){
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        parameters.addValue(Constants.MSG_LAN_ID_COLNAME, lanId);
+        parameters.addValue(Constants.MSG_TYPE_COLNAME, message.getType().getCode());
+        parameters.addValue(Constants.MSG_PRIORITY_COLNAME, Integer.parseInt(message.getPriority().getCode()));
+        parameters.addValue(Constants.MSG_ACTIVE_UNTIL_COLNAME,
+                getActiveDay(message.getType() == MessageType.Information ? message.getExpirationDate() : Constants.TASK_ACTIVE_UNTIL));
+
+        return parameters;
+    }
+
+    /**
+     * Returns the active day of the passed active_until, the midnight starting the day it falls on
+     *
+     * Bound as a Timestamp, so the key matches the stored datetime whatever format the date was read in
+     *
+     * @param activeUntil
+     *      - date/time in Timestamp format
+     * @return Timestamp
+     */
+    static Timestamp getActiveDay(String activeUntil){
+        return Timestamp.valueOf(Timestamp.valueOf(activeUntil.trim()).toLocalDateTime().toLocalDate().atStartOfDay());
+    }
+}
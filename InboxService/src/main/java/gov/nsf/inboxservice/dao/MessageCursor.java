@@ -0,0 +1,94 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.inboxservice.api.model.Message;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Base64;
+
+/**
+ * Keyset position within a user's messages, ordered by (creation date, message ID)
+ *
+ * Clients only see the encoded form, which is an opaque URL-safe string
+ */
+public class MessageCursor {
+
+    private static final char SEPARATOR = '|';
+
+    private final Timestamp creationDate;
+    private final long msgId;
+
+    public MessageCursor(Timestamp creationDate, long msgId) {
+        if( creationDate == null ){
+            throw new IllegalArgumentException("creationDate cannot be null");
+        }
+        this.creationDate = creationDate;
+        this.msgId = msgId;
+    }
+
+    public Timestamp getCreationDate() {
+        return creationDate;
+    }
+
+    public long getMsgId() {
+        return msgId;
+    }
+
+    /**
+     * Returns the cursor positioned at the passed message
+     *
+     * @param message
+     * @return MessageCursor
+     */
+    public static MessageCursor fromMessage(Message message) {
+        return new MessageCursor(Timestamp.valueOf(message.getCreationDate().trim()), Long.parseLong(message.getId().trim()));
+    }
+
+    /**
+     * Returns the opaque string form of the cursor
+     *
+     * @return encoded cursor
+     */
+    public String encode() {
+        String value = creationDate.toString() + SEPARATOR + msgId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor previously returned by encode()
+     *
+     * @param cursor
+     * @return MessageCursor
+     * @throws IllegalArgumentException if the passed string is not a valid cursor
+     */
+    public static MessageCursor decode(String cursor) {
+        String value;
+        try {
+            value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Invalid message cursor: " + cursor, ex);
+        }
+
+        int separatorIndex = value.lastIndexOf(SEPARATOR);
+        if( separatorIndex < 0 ){
+            throw new IllegalArgumentException("Invalid message cursor: " + cursor);
+        }
+        return new MessageCursor(Timestamp.valueOf(value.substring(0, separatorIndex)),
+                Long.parseLong(value.substring(separatorIndex + 1)));
+    }
+
+    /**
+     * Returns true if the passed string can be decoded into a MessageCursor
+     *
+     * @param cursor
+     * @return boolean
+     */
+    public static boolean isValid(String cursor) {
+        try {
+            decode(cursor);
+            return true;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+}
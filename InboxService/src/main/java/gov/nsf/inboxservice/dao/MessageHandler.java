@@ -0,0 +1,20 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.inboxservice.api.model.Message;
+
+import java.io.IOException;
+
+/**
+ * Receives messages one at a time as they are read from the DB
+ */
+@FunctionalInterface
+public interface MessageHandler {
+
+    /**
+     * Handles one message
+     *
+     * @param message
+     * @throws IOException if the message could not be written out
+     */
+    void handle(Message message) throws IOException;
+}
@@ -0,0 +1,33 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.inboxservice.api.model.Message;
+
+/**
+ * MessageTemplateDao interface
+ *
+ * Registered message templates, keyed by template ID
+ */
+public interface MessageTemplateDao {
+
+    /**
+     * Retrieves the template stored under the passed ID
+     *
+     * @param templateId
+     *      - the template ID
+     * @return Message holding the template, its ID is the template ID
+     * @throws RollbackException
+     */
+    public Message getTemplate(String templateId) throws RollbackException;
+
+    /**
+     * Stores the passed template under the passed ID, replacing the template stored under the same ID
+     *
+     * @param templateId
+     *      - the template ID
+     * @param template
+     *      - the template message
+     * @throws RollbackException
+     */
+    public void saveTemplate(String templateId, Message template) throws RollbackException;
+}
@@ -0,0 +1,146 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.exception.ResourceNotFoundException;
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessagePriority;
+import gov.nsf.inboxservice.api.model.MessageType;
+import gov.nsf.inboxservice.common.util.Constants;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+
+/**
+ * MessageTemplateDaoImpl implements the MessageTemplateDao methods against the dbo.inbx_msg_tmpl table
+ */
+public class MessageTemplateDaoImpl implements MessageTemplateDao {
+
+    private DataSource dataSource;
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private static final Logger LOGGER = Logger.getLogger(MessageTemplateDaoImpl.class);
+
+    /**
+     * DataSource getter
+     *
+     * @return DataSource
+     */
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * DataSource setter
+     *
+     * @param dataSource
+     */
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+        this.setJdbcTemplate(new NamedParameterJdbcTemplate(dataSource));
+    }
+
+    /**
+     * NamedParameterJdbcTemplate getter
+     *
+     * @return NamedParameterJdbcTemplate
+     */
+    public NamedParameterJdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    /**
+     * NamedParameterJdbcTemplate setter
+     *
+     * @param jdbcTemplate
+     */
+    public void setJdbcTemplate(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Retrieves the template stored under the passed ID
+     *
+     * @param templateId
+     *      - the template ID
+     * @return Message holding the template, its ID is the template ID
+     * @throws ResourceNotFoundException if no template is stored under the ID
+     * @throws RollbackException
+     */
+    @Override
+    public Message getTemplate(String templateId) throws RollbackException {
+        try {
+            return this.getJdbcTemplate().queryForObject(Constants.GET_MESSAGE_TEMPLATE_QUERY,
+                    Collections.singletonMap(Constants.TEMPLATE_ID_COLNAME, templateId),
+                    (rs, rowNum) -> mapTemplate(rs));
+        } catch (EmptyResultDataAccessException ex) {
+            throw new ResourceNotFoundException(Constants.TEMPLATE_NOT_FOUND + templateId);
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_GETTING_MESSAGE_TEMPLATE + ex);
+            throw new RollbackException(Constants.ERROR_GETTING_MESSAGE_TEMPLATE + ex);
+        }
+    }
+
+    /**
+     * Stores the passed template under the passed ID, replacing the template stored under the same ID
+     *
+     * The update is tried first since templates are saved again far more often than they are added. An insert
+     * that loses the race against a concurrent insert of the same ID falls back to the update
+     *
+     * @param templateId
+     *      - the template ID
+     * @param template
+     *      - the template message
+     * @throws RollbackException
+     */
+    @Override
+    public void saveTemplate(String templateId, Message template) throws RollbackException {
+        MapSqlParameterSource parameters = new MapSqlParameterSource(Constants.TEMPLATE_ID_COLNAME, templateId)
+                .addValue(Constants.MSG_SUMMARY_COLNAME, template.getSummary())
+                .addValue(Constants.MSG_PRIORITY_COLNAME, Integer.parseInt(template.getPriority().getCode()))
+                .addValue(Constants.MSG_TYPE_COLNAME, template.getType().getCode())
+                .addValue(Constants.MSG_ACTION_LINK_COLNAME, template.getType() == MessageType.Task ? template.getActionLink() : null)
+                .addValue(Constants.MSG_ACTION_LABEL_COLNAME, template.getType() == MessageType.Task ? template.getActionLabel() : null)
+                .addValue(Constants.MSG_INTERNAL_COLNAME, template.isInternal())
+                .addValue(Constants.LAST_UPDT_USER_COLNAME, template.getLastUpdtUser());
+        try {
+            if( this.getJdbcTemplate().update(Constants.UPDATE_MESSAGE_TEMPLATE_QUERY, parameters) == 0 ){
+                try {
+                    this.getJdbcTemplate().update(Constants.INSERT_MESSAGE_TEMPLATE_QUERY, parameters);
+                } catch (DuplicateKeyException ex) {
+                    this.getJdbcTemplate().update(Constants.UPDATE_MESSAGE_TEMPLATE_QUERY, parameters);
+                }
+            }
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_SAVING_MESSAGE_TEMPLATE + ex);
+            throw new RollbackException(Constants.ERROR_SAVING_MESSAGE_TEMPLATE + ex);
+        }
+    }
+
+    /**
+     * Returns the template Message of the current row
+     *
+     * @param rs
+     * @return Message
+     * @throws SQLException
+     */
+    private static Message mapTemplate(ResultSet rs) throws SQLException {
+        Message template = new Message();
+        template.setId(StringUtils.trimToEmpty(rs.getString(Constants.TEMPLATE_ID_COLNAME)));
+        template.setSummary(StringUtils.trimToEmpty(rs.getString(Constants.MSG_SUMMARY_COLNAME)));
+        template.setPriority(MessagePriority.getPriorityFromCode(rs.getString(Constants.MSG_PRIORITY_COLNAME)));
+        template.setType(MessageType.getTypeFromCode(rs.getString(Constants.MSG_TYPE_COLNAME)));
+        template.setActionLink(StringUtils.trimToEmpty(rs.getString(Constants.MSG_ACTION_LINK_COLNAME)));
+        template.setActionLabel(StringUtils.trimToEmpty(rs.getString(Constants.MSG_ACTION_LABEL_COLNAME)));
+        template.setInternal(rs.getBoolean(Constants.MSG_INTERNAL_COLNAME));
+        template.setLastUpdtUser(StringUtils.trimToEmpty(rs.getString(Constants.LAST_UPDT_USER_COLNAME)));
+        return template;
+    }
+}
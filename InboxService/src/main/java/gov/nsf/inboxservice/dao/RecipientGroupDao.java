@@ -0,0 +1,97 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.inboxservice.api.model.RecipientGroup;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * RecipientGroupDao interface
+ *
+ * Named recipient groups and their members, keyed by group name
+ */
+public interface RecipientGroupDao {
+
+    /**
+     * Retrieves the named group with its member count
+     *
+     * @param groupName
+     *      - the group name
+     * @return RecipientGroup
+     * @throws RollbackException
+     */
+    public RecipientGroup getGroup(String groupName) throws RollbackException;
+
+    /**
+     * Returns which of the passed group names are stored
+     *
+     * @param groupNames
+     *      - the group names
+     * @return List of stored group names
+     * @throws RollbackException
+     */
+    public List<String> getGroupNames(Collection<String> groupNames) throws RollbackException;
+
+    /**
+     * Stores a new group at version 1
+     *
+     * @param groupName
+     *      - the group name
+     * @param lastUpdtUser
+     *      - the user creating the group
+     * @return false if the group is already stored
+     * @throws RollbackException
+     */
+    public boolean insertGroup(String groupName, String lastUpdtUser) throws RollbackException;
+
+    /**
+     * Increments the group's version, locking its row until the transaction ends
+     *
+     * @param groupName
+     *      - the group name
+     * @param expectedVersion
+     *      - the version the group has to be at, null for any version
+     * @param lastUpdtUser
+     *      - the user updating the group
+     * @return false if the group is not stored or is at another version
+     * @throws RollbackException
+     */
+    public boolean incrementVersion(String groupName, Integer expectedVersion, String lastUpdtUser) throws RollbackException;
+
+    /**
+     * Adds the passed lan IDs to the group, lan IDs that are already members are left as they are
+     *
+     * @param groupName
+     *      - the group name
+     * @param lanIds
+     *      - the sanitized lan IDs to add
+     * @throws RollbackException
+     */
+    public void addMembers(String groupName, Collection<String> lanIds) throws RollbackException;
+
+    /**
+     * Removes the passed lan IDs from the group
+     *
+     * @param groupName
+     *      - the group name
+     * @param lanIds
+     *      - the sanitized lan IDs to remove
+     * @throws RollbackException
+     */
+    public void removeMembers(String groupName, Collection<String> lanIds) throws RollbackException;
+
+    /**
+     * Retrieves a page of the members of the passed groups in lan ID order, each member once
+     *
+     * @param groupNames
+     *      - the group names
+     * @param afterLanId
+     *      - the last lan ID of the previous page, empty for the first page
+     * @param limit
+     *      - the maximum number of lan IDs to return
+     * @return List of lan IDs, shorter than limit on the last page
+     * @throws RollbackException
+     */
+    public List<String> getMembersPage(Collection<String> groupNames, String afterLanId, int limit) throws RollbackException;
+}
@@ -0,0 +1,277 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.exception.ResourceNotFoundException;
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.inboxservice.api.model.RecipientGroup;
+import gov.nsf.inboxservice.common.util.Constants;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * RecipientGroupDaoImpl implements the RecipientGroupDao methods against the dbo.inbx_rcpt_grp and
+ * dbo.inbx_rcpt_grp_mbr tables
+ */
+public class RecipientGroupDaoImpl implements RecipientGroupDao {
+
+    private DataSource dataSource;
+    private NamedParameterJdbcTemplate jdbcTemplate;
+    private int batchSize = Constants.DEFAULT_INSERT_BATCH_SIZE;
+
+    private static final Logger LOGGER = Logger.getLogger(RecipientGroupDaoImpl.class);
+
+    /**
+     * DataSource getter
+     *
+     * @return DataSource
+     */
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * DataSource setter
+     *
+     * @param dataSource
+     */
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+        this.setJdbcTemplate(new NamedParameterJdbcTemplate(dataSource));
+    }
+
+    /**
+     * NamedParameterJdbcTemplate getter
+     *
+     * @return NamedParameterJdbcTemplate
+     */
+    public NamedParameterJdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    /**
+     * NamedParameterJdbcTemplate setter
+     *
+     * @param jdbcTemplate
+     */
+    public void setJdbcTemplate(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Batch size getter
+     *
+     * @return the maximum number of members sent to the DB in a single JDBC batch or IN list
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Batch size setter
+     *
+     * @param batchSize
+     */
+    public void setBatchSize(int batchSize) {
+        if( batchSize < 1 ){
+            throw new IllegalArgumentException("batchSize must be greater than 0: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Retrieves the named group with its member count
+     *
+     * @param groupName
+     *      - the group name
+     * @return RecipientGroup
+     * @throws ResourceNotFoundException if the group is not stored
+     * @throws RollbackException
+     */
+    @Override
+    public RecipientGroup getGroup(String groupName) throws RollbackException {
+        try {
+            return this.getJdbcTemplate().queryForObject(Constants.GET_RECIPIENT_GROUP_QUERY,
+                    Collections.singletonMap(Constants.GROUP_NAME_COLNAME, groupName),
+                    (rs, rowNum) -> new RecipientGroup(StringUtils.trimToEmpty(rs.getString(Constants.GROUP_NAME_COLNAME)),
+                            rs.getInt(Constants.GROUP_VERSION_COLNAME),
+                            rs.getInt(Constants.GROUP_MEMBER_COUNT_COLNAME),
+                            StringUtils.trimToEmpty(rs.getString(Constants.LAST_UPDT_USER_COLNAME))));
+        } catch (EmptyResultDataAccessException ex) {
+            throw new ResourceNotFoundException(Constants.RECIPIENT_GROUP_NOT_FOUND + groupName);
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_GETTING_RECIPIENT_GROUP + ex);
+            throw new RollbackException(Constants.ERROR_GETTING_RECIPIENT_GROUP + ex);
+        }
+    }
+
+    /**
+     * Returns which of the passed group names are stored
+     *
+     * @param groupNames
+     *      - the group names
+     * @return List of stored group names
+     * @throws RollbackException
+     */
+    @Override
+    public List<String> getGroupNames(Collection<String> groupNames) throws RollbackException {
+        try {
+            return this.getJdbcTemplate().query(Constants.GET_RECIPIENT_GROUP_NAMES_QUERY,
+                    Collections.singletonMap(Constants.GROUP_NAME_COLNAME, groupNames),
+                    (rs, rowNum) -> StringUtils.trimToEmpty(rs.getString(Constants.GROUP_NAME_COLNAME)));
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_GETTING_RECIPIENT_GROUP + ex);
+            throw new RollbackException(Constants.ERROR_GETTING_RECIPIENT_GROUP + ex);
+        }
+    }
+
+    /**
+     * Stores a new group at version 1
+     *
+     * @param groupName
+     *      - the group name
+     * @param lastUpdtUser
+     *      - the user creating the group
+     * @return false if the group is already stored
+     * @throws RollbackException
+     */
+    @Override
+    public boolean insertGroup(String groupName, String lastUpdtUser) throws RollbackException {
+        MapSqlParameterSource parameters = new MapSqlParameterSource(Constants.GROUP_NAME_COLNAME, groupName)
+                .addValue(Constants.LAST_UPDT_USER_COLNAME, lastUpdtUser);
+        try {
+            return this.getJdbcTemplate().update(Constants.INSERT_RECIPIENT_GROUP_QUERY, parameters) == 1;
+        } catch (DuplicateKeyException ex) {
+            return false;
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_UPDATING_RECIPIENT_GROUP + ex);
+            throw new RollbackException(Constants.ERROR_UPDATING_RECIPIENT_GROUP + ex);
+        }
+    }
+
+    /**
+     * Increments the group's version, locking its row until the transaction ends
+     *
+     * The version is incremented before the members are changed, so concurrent updates of a group
+     * are applied one after the other
+     *
+     * @param groupName
+     *      - the group name
+     * @param expectedVersion
+     *      - the version the group has to be at, null for any version
+     * @param lastUpdtUser
+     *      - the user updating the group
+     * @return false if the group is not stored or is at another version
+     * @throws RollbackException
+     */
+    @Override
+    public boolean incrementVersion(String groupName, Integer expectedVersion, String lastUpdtUser) throws RollbackException {
+        MapSqlParameterSource parameters = new MapSqlParameterSource(Constants.GROUP_NAME_COLNAME, groupName)
+                .addValue(Constants.LAST_UPDT_USER_COLNAME, lastUpdtUser)
+                .addValue(Constants.GROUP_VERSION_COLNAME, expectedVersion);
+        String query = Constants.UPDATE_RECIPIENT_GROUP_VERSION_QUERY + (expectedVersion != null ? Constants.RECIPIENT_GROUP_VERSION_PREDICATE : "");
+        try {
+            return this.getJdbcTemplate().update(query, parameters) == 1;
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_UPDATING_RECIPIENT_GROUP + ex);
+            throw new RollbackException(Constants.ERROR_UPDATING_RECIPIENT_GROUP + ex);
+        }
+    }
+
+    /**
+     * Adds the passed lan IDs to the group, lan IDs that are already members are left as they are
+     *
+     * The lan IDs are deleted before they are inserted, so a member added twice does not fail the batch on
+     * the primary key. Both run as JDBC batches or IN lists of at most batchSize lan IDs
+     *
+     * @param groupName
+     *      - the group name
+     * @param lanIds
+     *      - the sanitized lan IDs to add
+     * @throws RollbackException
+     */
+    @Override
+    public void addMembers(String groupName, Collection<String> lanIds) throws RollbackException {
+        List<String> members = new ArrayList<String>(lanIds);
+        try {
+            for( int start = 0; start < members.size(); start += batchSize ){
+                List<String> chunk = members.subList(start, Math.min(start + batchSize, members.size()));
+                this.getJdbcTemplate().update(Constants.DELETE_RECIPIENT_GROUP_MEMBERS_QUERY, getMembersParameters(groupName, chunk));
+
+                SqlParameterSource[] batch = new SqlParameterSource[chunk.size()];
+                for( int i = 0; i < chunk.size(); i++ ){
+                    batch[i] = new MapSqlParameterSource(Constants.GROUP_NAME_COLNAME, groupName)
+                            .addValue(Constants.MSG_LAN_ID_COLNAME, chunk.get(i));
+                }
+                this.getJdbcTemplate().batchUpdate(Constants.INSERT_RECIPIENT_GROUP_MEMBER_QUERY, batch);
+            }
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_UPDATING_RECIPIENT_GROUP + ex);
+            throw new RollbackException(Constants.ERROR_UPDATING_RECIPIENT_GROUP + ex);
+        }
+    }
+
+    /**
+     * Removes the passed lan IDs from the group, as IN lists of at most batchSize lan IDs
+     *
+     * @param groupName
+     *      - the group name
+     * @param lanIds
+     *      - the sanitized lan IDs to remove
+     * @throws RollbackException
+     */
+    @Override
+    public void removeMembers(String groupName, Collection<String> lanIds) throws RollbackException {
+        List<String> members = new ArrayList<String>(lanIds);
+        try {
+            for( int start = 0; start < members.size(); start += batchSize ){
+                List<String> chunk = members.subList(start, Math.min(start + batchSize, members.size()));
+                this.getJdbcTemplate().update(Constants.DELETE_RECIPIENT_GROUP_MEMBERS_QUERY, getMembersParameters(groupName, chunk));
+            }
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_UPDATING_RECIPIENT_GROUP + ex);
+            throw new RollbackException(Constants.ERROR_UPDATING_RECIPIENT_GROUP + ex);
+        }
+    }
+
+    /**
+     * Retrieves a page of the members of the passed groups in lan ID order, each member once
+     *
+     * Pages are read with a lan ID cursor, so every page is an index range read of the primary key
+     *
+     * @param groupNames
+     *      - the group names
+     * @param afterLanId
+     *      - the last lan ID of the previous page, empty for the first page
+     * @param limit
+     *      - the maximum number of lan IDs to return
+     * @return List of lan IDs, shorter than limit on the last page
+     * @throws RollbackException
+     */
+    @Override
+    public List<String> getMembersPage(Collection<String> groupNames, String afterLanId, int limit) throws RollbackException {
+        MapSqlParameterSource parameters = new MapSqlParameterSource(Constants.GROUP_NAME_COLNAME, groupNames)
+                .addValue(Constants.AFTER_LAN_ID_PARAM, afterLanId);
+        try {
+            return this.getJdbcTemplate().query(Constants.RECIPIENT_GROUP_MEMBERS_PAGE_SELECT + limit + Constants.RECIPIENT_GROUP_MEMBERS_PAGE_CLAUSE,
+                    parameters, (rs, rowNum) -> StringUtils.trimToEmpty(rs.getString(Constants.MSG_LAN_ID_COLNAME)));
+        } catch (Exception ex) {
+            LOGGER.error(Constants.ERROR_GETTING_RECIPIENT_GROUP_MEMBERS + ex);
+            throw new RollbackException(Constants.ERROR_GETTING_RECIPIENT_GROUP_MEMBERS + ex);
+        }
+    }
+
+    private static MapSqlParameterSource getMembersParameters(String groupName, List<String> lanIds) {
+        return new MapSqlParameterSource(Constants.GROUP_NAME_COLNAME, groupName)
+                .addValue(Constants.MSG_LAN_ID_COLNAME, lanIds);
+    }
+}
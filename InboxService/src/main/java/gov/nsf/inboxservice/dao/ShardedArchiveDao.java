@@ -0,0 +1,70 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.inboxservice.api.model.MessageType;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ArchiveDao archiving every DB shard of ShardedInboxDao into that shard's own dbo.inbx_msg_arch
+ *
+ * A shard's archive and counters live next to its messages, so each shard's ArchiveDaoImpl moves and recounts
+ * its own users. Chunks are filled from the shards in order and never exceed the chunk size.
+ */
+public class ShardedArchiveDao implements ArchiveDao {
+
+    private List<ArchiveDao> shards = Collections.emptyList();
+
+    public List<ArchiveDao> getShards() {
+        return shards;
+    }
+
+    /**
+     * Shards setter
+     *
+     * @param shards
+     *      - the archive of each shard, in the order of the ShardedInboxDao's shards
+     */
+    public void setShards(List<ArchiveDao> shards) {
+        if( shards == null || shards.isEmpty() ){
+            throw new IllegalArgumentException("shards must hold at least one ArchiveDao");
+        }
+        this.shards = Collections.unmodifiableList(new ArrayList<ArchiveDao>(shards));
+    }
+
+    @Override
+    public int archiveExpiredMessagesChunk(int chunkSize) throws RollbackException {
+        int moved = 0;
+        for( int i = 0; i < shards.size() && moved < chunkSize; i++ ){
+            moved += shards.get(i).archiveExpiredMessagesChunk(chunkSize - moved);
+        }
+        return moved;
+    }
+
+    @Override
+    public int archiveAgedMessagesChunk(MessageType type, Timestamp createdBefore, int chunkSize) throws RollbackException {
+        int moved = 0;
+        for( int i = 0; i < shards.size() && moved < chunkSize; i++ ){
+            moved += shards.get(i).archiveAgedMessagesChunk(type, createdBefore, chunkSize - moved);
+        }
+        return moved;
+    }
+
+    /**
+     * Drops the archive partitions of the passed type archived before the passed month on every shard
+     *
+     * @return the number of partitions dropped across the shards
+     * @throws RollbackException
+     */
+    @Override
+    public int dropArchivePartitions(MessageType type, int monthBefore) throws RollbackException {
+        int dropped = 0;
+        for( ArchiveDao shard : shards ){
+            dropped += shard.dropArchivePartitions(type, monthBefore);
+        }
+        return dropped;
+    }
+}
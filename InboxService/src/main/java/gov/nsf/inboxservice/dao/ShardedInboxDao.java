@@ -0,0 +1,811 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.exception.ResourceNotFoundException;
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.common.model.ExpirationFilter;
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.common.util.Constants;
+import org.apache.log4j.Logger;
+import org.springframework.jdbc.datasource.ConnectionHolder;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * InboxDao spreading dbo.inbx_msg over several DBs, each served by its own InboxDao engine (an InboxDaoImpl)
+ *
+ * A user's messages all live on one shard, picked by rendezvous hashing of the normalized lan ID, so adding a
+ * shard only moves the users that hash to the new one. Their messages have to be copied over before it is added.
+ * Message IDs encode their shard: shard n hands out n << Constants.SHARD_MSG_ID_BITS | its own ID, so reads and
+ * deletes by ID go straight to one shard, and the IDs of shard 0 are the unsharded IDs.
+ *
+ * Calls touching several shards, like broadcasts to many recipients, run the part of each shard in parallel on the
+ * shard executor, the part of the caller's own DataSource on the caller's thread. The first failing part fails the
+ * whole call once every part has finished.
+ *
+ * Shard 0 is the main DataSource and joins the caller's transaction. Inside a transaction the other shards' writes
+ * run in a transaction of their own on that shard, which commits just before the caller's and rolls back with it.
+ * A shard failing its commit fails the caller's commit, so the caller's transaction and the shards not yet
+ * committed roll back and the caller gets the exception. Without XA, only the shards that committed before a later
+ * commit failed keep their writes.
+ *
+ * ShardedMessageCountDao and ShardedArchiveDao route the counters and archive of each shard's users the same way.
+ */
+@ManagedResource(objectName = "gov.nsf.inboxservice:name=ShardedInboxDao",
+        description = "Routes inbox messages to their DB shard")
+public class ShardedInboxDao implements InboxDao {
+
+    private static final Logger LOGGER = Logger.getLogger(ShardedInboxDao.class);
+
+    private static final long LOCAL_ID_MASK = (1L << Constants.SHARD_MSG_ID_BITS) - 1;
+
+    private List<InboxDao> shards = Collections.emptyList();
+    private List<DataSource> shardDataSources = Collections.emptyList();
+
+    private ExecutorService executor;
+
+    private final AtomicLong singleShardCalls = new AtomicLong();
+    private final AtomicLong multiShardCalls = new AtomicLong();
+
+    /**
+     * Runs one part of a call on a single shard
+     */
+    @FunctionalInterface
+    private interface ShardOperation<K, R> {
+        R run(InboxDao shard, K keys) throws RollbackException;
+    }
+
+    /**
+     * Runs one part of a call on the shard with the passed index, for the DAOs kept next to each shard's messages
+     */
+    @FunctionalInterface
+    interface ShardTask<K, R> {
+        R run(int shardIndex, K keys) throws RollbackException;
+    }
+
+    public List<InboxDao> getShards() {
+        return shards;
+    }
+
+    /**
+     * Shards setter
+     *
+     * The position of a shard is encoded in its message IDs, so shards are only ever appended
+     *
+     * @param shards
+     *      - the per-shard engines, shard 0 first
+     */
+    public void setShards(List<InboxDao> shards) {
+        if( shards == null || shards.isEmpty() || shards.size() > Constants.MAX_INBOX_SHARDS ){
+            throw new IllegalArgumentException("shards must hold 1 to " + Constants.MAX_INBOX_SHARDS + " InboxDao engines");
+        }
+        this.shards = Collections.unmodifiableList(new ArrayList<InboxDao>(shards));
+    }
+
+    public List<DataSource> getShardDataSources() {
+        return shardDataSources;
+    }
+
+    /**
+     * Shard DataSources setter
+     *
+     * @param shardDataSources
+     *      - the DataSource of each shard, in the order of the shards. Writes to a shard whose DataSource is not
+     *      already in the caller's transaction get a transaction of their own on it
+     */
+    public void setShardDataSources(List<DataSource> shardDataSources) {
+        this.shardDataSources = shardDataSources != null
+                ? Collections.unmodifiableList(new ArrayList<DataSource>(shardDataSources))
+                : Collections.<DataSource>emptyList();
+    }
+
+    /**
+     * Starts the executor running the per-shard parts of multi-shard calls, one thread per shard
+     *
+     * Without it, or with a single shard, those parts run one after the other on the caller's thread
+     */
+    public synchronized void start() {
+        if( executor != null || shards.size() < 2 ){
+            return;
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(shards.size(), runnable -> {
+            Thread thread = new Thread(runnable, "inbox-shard-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        LOGGER.info("Routing inbox messages to " + shards.size() + " shards");
+    }
+
+    /**
+     * Stops the executor, letting the per-shard parts in flight finish
+     *
+     * @throws InterruptedException
+     */
+    public synchronized void stop() throws InterruptedException {
+        if( executor == null ){
+            return;
+        }
+        executor.shutdown();
+        if( !executor.awaitTermination(30, TimeUnit.SECONDS) ){
+            LOGGER.warn("Inbox shard tasks did not finish before shutdown");
+        }
+        executor = null;
+    }
+
+    @ManagedAttribute(description = "Number of DB shards")
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    @ManagedAttribute(description = "Calls served by a single shard")
+    public long getSingleShardCalls() {
+        return singleShardCalls.get();
+    }
+
+    @ManagedAttribute(description = "Calls split across several shards")
+    public long getMultiShardCalls() {
+        return multiShardCalls.get();
+    }
+
+    /**
+     * Returns the shard holding the passed user's messages
+     *
+     * Each shard scores the lan ID and the highest score wins, so only the users won by a new shard move to it
+     *
+     * @param lanId
+     *      - the user's lan ID
+     * @return the shard index
+     */
+    public int getShardIndex(String lanId) {
+        if( shards.size() == 1 ){
+            return 0;
+        }
+
+        long hash = hash(lanId.toLowerCase().trim());
+        int shardIndex = 0;
+        long maxScore = Long.MIN_VALUE;
+        for( int i = 0; i < shards.size(); i++ ){
+            long score = mix(hash + (i + 1) * 0x9E3779B97F4A7C15L);
+            if( score > maxScore ){
+                maxScore = score;
+                shardIndex = i;
+            }
+        }
+        return shardIndex;
+    }
+
+    /**
+     * Returns the shard the message ID points to
+     *
+     * @param msgId
+     *      - a message ID handed out by this DAO
+     * @return the shard index, which may not be configured
+     */
+    public static int shardOf(long msgId) {
+        return (int) (msgId >>> Constants.SHARD_MSG_ID_BITS);
+    }
+
+    /**
+     * Returns the shard's own ID of the passed message ID
+     *
+     * @param msgId
+     *      - a message ID handed out by this DAO
+     * @return the ID of the message in its shard
+     */
+    public static long toLocalId(long msgId) {
+        return msgId & LOCAL_ID_MASK;
+    }
+
+    /**
+     * Makes the shard's writes part of the caller's transaction, if there is one
+     *
+     * Does nothing outside a transaction, without shard DataSources, or when the shard's DataSource is already
+     * in the transaction, like shard 0's. Otherwise binds a connection of the shard with auto-commit off, which
+     * JdbcTemplate picks up for the rest of the transaction, commits it as part of the caller's commit and rolls it
+     * back with the caller's rollback.
+     *
+     * @param shardIndex
+     * @throws RollbackException if no connection to the shard could be opened
+     */
+    public void joinTransaction(int shardIndex) throws RollbackException {
+        if( shardDataSources.isEmpty() || !TransactionSynchronizationManager.isSynchronizationActive() ){
+            return;
+        }
+        if( shardDataSources.size() != shards.size() ){
+            throw new IllegalStateException("shardDataSources must hold one DataSource per shard");
+        }
+        DataSource dataSource = shardDataSources.get(shardIndex);
+        if( TransactionSynchronizationManager.hasResource(dataSource) ){
+            return;
+        }
+
+        Connection connection = null;
+        try {
+            connection = dataSource.getConnection();
+            connection.setAutoCommit(false);
+        } catch (SQLException ex) {
+            close(connection);
+            LOGGER.error(Constants.ERROR_JOINING_SHARD_TRANSACTION + shardIndex + ": " + ex);
+            throw new RollbackException(Constants.ERROR_JOINING_SHARD_TRANSACTION + shardIndex + ": " + ex);
+        }
+        ConnectionHolder holder = new ShardConnectionHolder(connection);
+        holder.setSynchronizedWithTransaction(true);
+        TransactionSynchronizationManager.bindResource(dataSource, holder);
+        TransactionSynchronizationManager.registerSynchronization(new ShardTransactionSynchronization(shardIndex, dataSource, holder));
+    }
+
+    /**
+     * Retrieves the Message object from the shard its message ID points to
+     *
+     * @param msgId
+     *      - the integer message ID
+     * @return Message
+     * @throws RollbackException
+     */
+    @Override
+    public Message getMessageById(String msgId) throws RollbackException {
+        long id = Long.parseLong(msgId);
+        return toGlobal(getShardOfMessage(id, msgId).getMessageById(String.valueOf(toLocalId(id))), shardOf(id));
+    }
+
+    @Override
+    public List<Message> getMessagesForUser(String lanId, ExpirationFilter active) throws RollbackException {
+        int shardIndex = getShardIndex(lanId);
+        return toGlobal(getShard(shardIndex).getMessagesForUser(lanId, active), shardIndex);
+    }
+
+    @Override
+    public List<Message> getMessagesForUser(String lanId, ExpirationFilter active, int limit, MessageCursor after) throws RollbackException {
+        int shardIndex = getShardIndex(lanId);
+        return toGlobal(getShard(shardIndex).getMessagesForUser(lanId, active, limit, toLocal(after)), shardIndex);
+    }
+
+    @Override
+    public List<Message> getMessageHeadersForUser(String lanId, ExpirationFilter active, int limit, MessageCursor after) throws RollbackException {
+        int shardIndex = getShardIndex(lanId);
+        return toGlobal(getShard(shardIndex).getMessageHeadersForUser(lanId, active, limit, toLocal(after)), shardIndex);
+    }
+
+    @Override
+    public void streamMessagesForUser(String lanId, ExpirationFilter active, MessageHandler handler) throws RollbackException, IOException {
+        int shardIndex = getShardIndex(lanId);
+        getShard(shardIndex).streamMessagesForUser(lanId, active, message -> handler.handle(toGlobal(message, shardIndex)));
+    }
+
+    @Override
+    public Message createMessage(Message message) throws RollbackException {
+        int shardIndex = getShardIndex(message.getLanId());
+        joinTransaction(shardIndex);
+        return toGlobal(checkRange(getShard(shardIndex).createMessage(message), shardIndex), shardIndex);
+    }
+
+    /**
+     * Inserts a copy of the Message object for each of the passed lan IDs, each shard inserting its own users' copies
+     *
+     * @param message
+     *      - the Message object
+     * @param lanIds
+     *      - the recipients' lan IDs
+     * @return List of the stored Message objects
+     * @throws RollbackException
+     */
+    @Override
+    public List<Message> createMessages(Message message, Collection<String> lanIds) throws RollbackException {
+        return concat(checkRange(onShards(groupByShard(lanIds, this::getShardIndex), true,
+                (shard, shardLanIds) -> shard.createMessages(message, shardLanIds))));
+    }
+
+    @Override
+    public List<Message> createMessages(List<Message> messages) throws RollbackException {
+        return concat(checkRange(onShards(groupByShard(messages, message -> getShardIndex(message.getLanId())), true,
+                InboxDao::createMessages)));
+    }
+
+    @Override
+    public Map<String, Message> getDuplicateMessages(Message message, Collection<String> lanIds) throws RollbackException {
+        Map<Integer, Map<String, Message>> duplicatesByShard = onShards(groupByShard(lanIds, this::getShardIndex), false,
+                (shard, shardLanIds) -> shard.getDuplicateMessages(message, shardLanIds));
+
+        Map<String, Message> duplicates = new LinkedHashMap<String, Message>();
+        for( Map.Entry<Integer, Map<String, Message>> shardDuplicates : duplicatesByShard.entrySet() ){
+            for( Map.Entry<String, Message> duplicate : shardDuplicates.getValue().entrySet() ){
+                duplicates.put(duplicate.getKey(), toGlobal(duplicate.getValue(), shardDuplicates.getKey()));
+            }
+        }
+        return duplicates;
+    }
+
+    @Override
+    public int refreshMessages(Message message, Collection<Long> msgIds) throws RollbackException {
+        return sum(onShards(groupIdsByShard(msgIds), true, (shard, localIds) -> shard.refreshMessages(message, localIds)));
+    }
+
+    @Override
+    public Message deleteMessage(String msgId) throws RollbackException {
+        long id = Long.parseLong(msgId);
+        InboxDao shard = getShardOfMessage(id, msgId);
+        joinTransaction(shardOf(id));
+        return toGlobal(shard.deleteMessage(String.valueOf(toLocalId(id))), shardOf(id));
+    }
+
+    @Override
+    public UserDeleteResult deleteMessageForUser(String msgId, String lanId) throws RollbackException {
+        long id = Long.parseLong(msgId);
+        int shardIndex = shardOf(id);
+        if( shardIndex >= shards.size() ){
+            return UserDeleteResult.notFound();
+        }
+        //A message of another user's shard cannot belong to this user, whether it exists or not
+        if( shardIndex != getShardIndex(lanId) ){
+            return UserDeleteResult.forbidden();
+        }
+        joinTransaction(shardIndex);
+        UserDeleteResult result = getShard(shardIndex).deleteMessageForUser(String.valueOf(toLocalId(id)), lanId);
+        return result.getStatus() == UserDeleteResult.Status.Deleted ?
+                UserDeleteResult.deleted(toGlobal(result.getMessage(), shardIndex)) : result;
+    }
+
+    @Override
+    public List<Message> getMessagesByIds(Collection<Long> msgIds) throws RollbackException {
+        Map<Integer, List<Message>> messagesByShard = onShards(groupIdsByShard(msgIds), false, InboxDao::getMessagesByIds);
+
+        List<Message> messages = new ArrayList<Message>(msgIds.size());
+        for( Map.Entry<Integer, List<Message>> shardMessages : messagesByShard.entrySet() ){
+            messages.addAll(toGlobal(shardMessages.getValue(), shardMessages.getKey()));
+        }
+        return messages;
+    }
+
+    @Override
+    public int deleteMessages(Collection<Long> msgIds) throws RollbackException {
+        return sum(onShards(groupIdsByShard(msgIds), true, InboxDao::deleteMessages));
+    }
+
+    @Override
+    public void deleteExpiredMessages(String lanId) throws RollbackException {
+        int shardIndex = getShardIndex(lanId);
+        joinTransaction(shardIndex);
+        getShard(shardIndex).deleteExpiredMessages(lanId);
+    }
+
+    /**
+     * Deletes at most chunkSize expired messages, taking them from the shards in order
+     *
+     * @param chunkSize
+     *      - the maximum number of rows to delete, must be positive
+     * @return the number of rows deleted
+     * @throws RollbackException
+     */
+    @Override
+    public int deleteExpiredMessagesChunk(int chunkSize) throws RollbackException {
+        int deleted = 0;
+        for( int i = 0; i < shards.size() && deleted < chunkSize; i++ ){
+            joinTransaction(i);
+            deleted += shards.get(i).deleteExpiredMessagesChunk(chunkSize - deleted);
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes at most chunkSize orphaned content rows, taking them from the shards in order
+     *
+     * @param storedBefore
+     *      - content stored after this time is kept
+     * @param chunkSize
+     *      - the maximum number of rows to delete, must be positive
+     * @return the number of rows deleted
+     * @throws RollbackException
+     */
+    @Override
+    public int deleteOrphanedContentChunk(Timestamp storedBefore, int chunkSize) throws RollbackException {
+        int deleted = 0;
+        for( int i = 0; i < shards.size() && deleted < chunkSize; i++ ){
+            joinTransaction(i);
+            deleted += shards.get(i).deleteOrphanedContentChunk(storedBefore, chunkSize - deleted);
+        }
+        return deleted;
+    }
+
+    private <K, R> Map<Integer, R> onShards(Map<Integer, K> keysByShard, boolean write, ShardOperation<K, R> operation) throws RollbackException {
+        return forEachShard(keysByShard, write, (shardIndex, keys) -> operation.run(getShard(shardIndex), keys));
+    }
+
+    /**
+     * Runs the task on every shard of the passed map with that shard's keys
+     *
+     * Several shards run in parallel on the executor. A shard writing in a shard transaction gets that transaction's
+     * connection bound on the executor thread for its part. A part needing the connection of the caller's own
+     * transaction, like shard 0's, runs on the caller's thread, so no connection is used by two threads at once.
+     * Every part is waited for before the first failure is thrown, so no shard is still writing once the call
+     * returns, and the failure rolls back the caller's transaction along with every shard transaction in it.
+     *
+     * @param keysByShard
+     * @param write
+     *      - true to run the shards' parts in the caller's transaction
+     * @param task
+     * @return Map of shard index to the shard's result, in the order of keysByShard
+     * @throws RollbackException
+     */
+    <K, R> Map<Integer, R> forEachShard(Map<Integer, K> keysByShard, boolean write, ShardTask<K, R> task) throws RollbackException {
+        Map<Integer, R> results = new LinkedHashMap<Integer, R>();
+        ExecutorService currentExecutor = executor;
+        if( keysByShard.size() < 2 || currentExecutor == null ){
+            (keysByShard.size() < 2 ? singleShardCalls : multiShardCalls).incrementAndGet();
+            for( Map.Entry<Integer, K> keys : keysByShard.entrySet() ){
+                if( write ){
+                    joinTransaction(keys.getKey());
+                }
+                results.put(keys.getKey(), task.run(keys.getKey(), keys.getValue()));
+            }
+            return results;
+        }
+
+        multiShardCalls.incrementAndGet();
+        Map<Integer, Future<R>> futures = new LinkedHashMap<Integer, Future<R>>();
+        List<Map.Entry<Integer, K>> callerParts = new ArrayList<Map.Entry<Integer, K>>();
+        Exception failure = null;
+        for( Map.Entry<Integer, K> keys : keysByShard.entrySet() ){
+            int shardIndex = keys.getKey();
+            Object resource;
+            try {
+                if( write ){
+                    joinTransaction(shardIndex);
+                }
+                resource = getBoundResource(shardIndex);
+            } catch (RollbackException | RuntimeException ex) {
+                failure = ex;
+                break;
+            }
+            if( needsCallerThread(resource) ){
+                callerParts.add(keys);
+            } else {
+                futures.put(shardIndex, currentExecutor.submit(() -> runBound(shardIndex, resource, () -> task.run(shardIndex, keys.getValue()))));
+            }
+        }
+
+        for( Map.Entry<Integer, K> keys : callerParts ){
+            if( failure != null ){
+                break;
+            }
+            try {
+                results.put(keys.getKey(), task.run(keys.getKey(), keys.getValue()));
+            } catch (RollbackException | RuntimeException ex) {
+                LOGGER.error(Constants.ERROR_ON_INBOX_SHARD + keys.getKey() + " " + ex);
+                failure = ex;
+            }
+        }
+
+        for( Map.Entry<Integer, Future<R>> future : futures.entrySet() ){
+            try {
+                results.put(future.getKey(), getUninterruptibly(future.getValue()));
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                LOGGER.error(Constants.ERROR_ON_INBOX_SHARD + future.getKey() + " " + cause);
+                if( failure == null ){
+                    failure = cause instanceof Exception ? (Exception) cause : new RollbackException(Constants.ERROR_ON_INBOX_SHARD + cause);
+                }
+            }
+        }
+
+        if( failure instanceof RollbackException ){
+            throw (RollbackException) failure;
+        } else if( failure instanceof RuntimeException ){
+            throw (RuntimeException) failure;
+        } else if( failure != null ){
+            throw new RollbackException(Constants.ERROR_ON_INBOX_SHARD + failure);
+        }
+
+        Map<Integer, R> ordered = new LinkedHashMap<Integer, R>();
+        for( Integer shardIndex : keysByShard.keySet() ){
+            ordered.put(shardIndex, results.get(shardIndex));
+        }
+        return ordered;
+    }
+
+    /**
+     * Tells whether a shard's part has to run in the caller's transaction on the caller's thread
+     *
+     * True when the caller's own transaction holds the shard's DataSource, or when a transaction is active but
+     * there are no shard DataSources to tell
+     */
+    private boolean needsCallerThread(Object resource) {
+        if( !TransactionSynchronizationManager.isSynchronizationActive() ){
+            return false;
+        }
+        return shardDataSources.isEmpty() || (resource != null && !(resource instanceof ShardConnectionHolder));
+    }
+
+    /**
+     * Returns what the caller's transaction holds for the DataSource of the passed shard
+     *
+     * @return the ShardConnectionHolder bound by joinTransaction, the holder of the caller's own transaction, or null
+     */
+    private Object getBoundResource(int shardIndex) {
+        if( shardDataSources.isEmpty() || !TransactionSynchronizationManager.isSynchronizationActive() ){
+            return null;
+        }
+        return TransactionSynchronizationManager.getResource(shardDataSources.get(shardIndex));
+    }
+
+    /**
+     * Runs a shard's part on an executor thread, with the shard transaction's connection bound while it runs
+     */
+    private <R> R runBound(int shardIndex, Object resource, Callable<R> part) throws Exception {
+        if( resource == null ){
+            return part.call();
+        }
+        DataSource dataSource = shardDataSources.get(shardIndex);
+        TransactionSynchronizationManager.bindResource(dataSource, resource);
+        try {
+            return part.call();
+        } finally {
+            TransactionSynchronizationManager.unbindResource(dataSource);
+        }
+    }
+
+    /**
+     * Waits for the future, remembering an interrupt until it is done
+     */
+    private static <R> R getUninterruptibly(Future<R> future) throws ExecutionException {
+        boolean interrupted = false;
+        try {
+            while( true ){
+                try {
+                    return future.get();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if( interrupted ){
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Splits the passed items by the shard the key function maps them to, keeping their order within each shard
+     */
+    static <T> Map<Integer, List<T>> groupByShard(Collection<T> items, Function<T, Integer> shardIndex) {
+        Map<Integer, List<T>> itemsByShard = new LinkedHashMap<Integer, List<T>>();
+        for( T item : items ){
+            itemsByShard.computeIfAbsent(shardIndex.apply(item), index -> new ArrayList<T>()).add(item);
+        }
+        return itemsByShard;
+    }
+
+    /**
+     * Splits the passed message IDs by shard and turns them into the shards' own IDs, IDs of unknown shards are skipped
+     */
+    private Map<Integer, List<Long>> groupIdsByShard(Collection<Long> msgIds) {
+        Map<Integer, List<Long>> idsByShard = new LinkedHashMap<Integer, List<Long>>();
+        for( Long msgId : msgIds ){
+            if( shardOf(msgId) < shards.size() ){
+                idsByShard.computeIfAbsent(shardOf(msgId), index -> new ArrayList<Long>()).add(toLocalId(msgId));
+            }
+        }
+        return idsByShard;
+    }
+
+    private InboxDao getShard(int shardIndex) {
+        return shards.get(shardIndex);
+    }
+
+    /**
+     * Returns the shard the message ID points to
+     *
+     * @throws ResourceNotFoundException if no such shard is configured
+     */
+    private InboxDao getShardOfMessage(long id, String msgId) {
+        if( shardOf(id) >= shards.size() ){
+            throw new ResourceNotFoundException(Constants.MSG_NOT_FOUND + msgId);
+        }
+        return getShard(shardOf(id));
+    }
+
+    /**
+     * Turns a cursor of this service's message IDs into one of the shard's own IDs
+     *
+     * The shard of a user is fixed and its IDs keep their order, so only the shard bits have to go
+     */
+    private static MessageCursor toLocal(MessageCursor after) {
+        if( after == null ){
+            return null;
+        }
+        return new MessageCursor(after.getCreationDate(), toLocalId(after.getMsgId()));
+    }
+
+    /**
+     * Replaces the shard's own message ID of the passed Message with the one encoding the shard
+     *
+     * @return the same Message
+     */
+    private static Message toGlobal(Message message, int shardIndex) {
+        if( shardIndex > 0 ){
+            message.setId(String.valueOf((long) shardIndex << Constants.SHARD_MSG_ID_BITS | Long.parseLong(message.getId().trim())));
+        }
+        return message;
+    }
+
+    private static List<Message> toGlobal(List<Message> messages, int shardIndex) {
+        if( shardIndex > 0 ){
+            for( Message message : messages ){
+                toGlobal(message, shardIndex);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Checks that a message just stored by the shard got an ID that leaves room for the shard bits
+     *
+     * @return the same Message
+     * @throws RollbackException if the shard's IDs outgrew their range
+     */
+    private Message checkRange(Message message, int shardIndex) throws RollbackException {
+        if( shards.size() > 1 && Long.parseLong(message.getId().trim()) > LOCAL_ID_MASK ){
+            LOGGER.error(Constants.ERROR_SHARD_MSG_ID_OUT_OF_RANGE + message.getId() + " on shard " + shardIndex);
+            throw new RollbackException(Constants.ERROR_SHARD_MSG_ID_OUT_OF_RANGE + message.getId() + " on shard " + shardIndex);
+        }
+        return message;
+    }
+
+    private Map<Integer, List<Message>> checkRange(Map<Integer, List<Message>> messagesByShard) throws RollbackException {
+        for( Map.Entry<Integer, List<Message>> shardMessages : messagesByShard.entrySet() ){
+            for( Message message : shardMessages.getValue() ){
+                checkRange(message, shardMessages.getKey());
+            }
+        }
+        return messagesByShard;
+    }
+
+    private static List<Message> concat(Map<Integer, List<Message>> messagesByShard) {
+        if( messagesByShard.size() == 1 ){
+            Map.Entry<Integer, List<Message>> shardMessages = messagesByShard.entrySet().iterator().next();
+            return toGlobal(shardMessages.getValue(), shardMessages.getKey());
+        }
+
+        List<Message> messages = new ArrayList<Message>();
+        for( Map.Entry<Integer, List<Message>> shardMessages : messagesByShard.entrySet() ){
+            messages.addAll(toGlobal(shardMessages.getValue(), shardMessages.getKey()));
+        }
+        return messages;
+    }
+
+    static int sum(Map<Integer, Integer> countsByShard) {
+        int total = 0;
+        for( Integer count : countsByShard.values() ){
+            total += count;
+        }
+        return total;
+    }
+
+    private static void close(Connection connection) {
+        if( connection != null ){
+            try {
+                connection.close();
+            } catch (SQLException ex) {
+                LOGGER.warn("Could not close inbox shard connection: " + ex);
+            }
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the lan ID, stable across JVMs and releases unlike String.hashCode spreading
+     */
+    private static long hash(String lanId) {
+        long hash = 0xcbf29ce484222325L;
+        for( byte b : lanId.getBytes(StandardCharsets.UTF_8) ){
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * MurmurHash3 finalizer, so neighbouring inputs get unrelated scores
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    /**
+     * Connection of a shard transaction bound by joinTransaction, as opposed to the caller's own transaction
+     */
+    private static class ShardConnectionHolder extends ConnectionHolder {
+        private ShardConnectionHolder(Connection connection) {
+            super(connection);
+        }
+    }
+
+    /**
+     * Completes a shard's transaction along with the caller's
+     *
+     * The shard commits just before the caller does, and a failing shard commit is thrown into the caller's commit,
+     * which then rolls back the caller's transaction. Whatever did not commit is rolled back on completion.
+     */
+    private static class ShardTransactionSynchronization extends TransactionSynchronizationAdapter {
+        private final int shardIndex;
+        private final DataSource dataSource;
+        private final ConnectionHolder holder;
+        private boolean committed;
+
+        private ShardTransactionSynchronization(int shardIndex, DataSource dataSource, ConnectionHolder holder) {
+            this.shardIndex = shardIndex;
+            this.dataSource = dataSource;
+            this.holder = holder;
+        }
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(dataSource);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(dataSource, holder);
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            try {
+                holder.getConnection().commit();
+                committed = true;
+            } catch (SQLException ex) {
+                LOGGER.error(Constants.ERROR_COMPLETING_SHARD_TRANSACTION + shardIndex + ": " + ex);
+                throw new TransactionSystemException(Constants.ERROR_COMPLETING_SHARD_TRANSACTION + shardIndex + ": " + ex, ex);
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(dataSource);
+            Connection connection = holder.getConnection();
+            try {
+                if( !committed ){
+                    connection.rollback();
+                }
+            } catch (SQLException ex) {
+                LOGGER.error(Constants.ERROR_COMPLETING_SHARD_TRANSACTION + shardIndex + ": " + ex);
+            } finally {
+                try {
+                    connection.setAutoCommit(true);
+                } catch (SQLException ex) {
+                    LOGGER.warn("Could not reset auto-commit on inbox shard " + shardIndex + ": " + ex);
+                }
+                close(connection);
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessageCount;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * MessageCountDao keeping each user's counters on the DB shard that holds the user's messages
+ *
+ * Every shard carries its own dbo.inbx_msg_cnt, counted from its own dbo.inbx_msg, so the counters are routed by
+ * the same lan ID hashing and message ID encoding as ShardedInboxDao, and written in the same shard transaction.
+ * Counters of several shards are written in parallel on the ShardedInboxDao's shard executor.
+ */
+public class ShardedMessageCountDao implements MessageCountDao {
+
+    private ShardedInboxDao inboxDao;
+    private List<MessageCountDao> shards = Collections.emptyList();
+
+    public ShardedInboxDao getInboxDao() {
+        return inboxDao;
+    }
+
+    /**
+     * InboxDao setter
+     *
+     * @param inboxDao
+     *      - the ShardedInboxDao routing the messages the counters count
+     */
+    public void setInboxDao(ShardedInboxDao inboxDao) {
+        this.inboxDao = inboxDao;
+    }
+
+    public List<MessageCountDao> getShards() {
+        return shards;
+    }
+
+    /**
+     * Shards setter
+     *
+     * @param shards
+     *      - the counters of each shard, in the order of the inboxDao's shards
+     */
+    public void setShards(List<MessageCountDao> shards) {
+        if( shards == null || shards.isEmpty() ){
+            throw new IllegalArgumentException("shards must hold at least one MessageCountDao");
+        }
+        this.shards = Collections.unmodifiableList(new ArrayList<MessageCountDao>(shards));
+    }
+
+    @Override
+    public List<MessageCount> getMessageCounts(String lanId) throws RollbackException {
+        return getShard(inboxDao.getShardIndex(lanId)).getMessageCounts(lanId);
+    }
+
+    @Override
+    public void incrementCounts(Message message, Collection<String> lanIds) throws RollbackException {
+        inboxDao.forEachShard(ShardedInboxDao.groupByShard(lanIds, inboxDao::getShardIndex), true, (shardIndex, shardLanIds) -> {
+            getShard(shardIndex).incrementCounts(message, shardLanIds);
+            return null;
+        });
+    }
+
+    /**
+     * Stops counting the message with the passed message ID on the shard the ID points to
+     *
+     * @param msgId
+     *      - a message ID handed out by the ShardedInboxDao
+     * @throws RollbackException
+     */
+    @Override
+    public void decrementCount(String msgId) throws RollbackException {
+        long id = Long.parseLong(msgId.trim());
+        int shardIndex = ShardedInboxDao.shardOf(id);
+        if( shardIndex >= shards.size() ){
+            return;
+        }
+        inboxDao.joinTransaction(shardIndex);
+        getShard(shardIndex).decrementCount(String.valueOf(ShardedInboxDao.toLocalId(id)));
+    }
+
+    @Override
+    public void decrementCount(Message message) throws RollbackException {
+        int shardIndex = inboxDao.getShardIndex(message.getLanId());
+        inboxDao.joinTransaction(shardIndex);
+        getShard(shardIndex).decrementCount(message);
+    }
+
+    @Override
+    public void deleteExpiredCounts(String lanId) throws RollbackException {
+        int shardIndex = inboxDao.getShardIndex(lanId);
+        inboxDao.joinTransaction(shardIndex);
+        getShard(shardIndex).deleteExpiredCounts(lanId);
+    }
+
+    /**
+     * Recounts the expired counters of every shard from that shard's own messages
+     *
+     * @return the number of empty counters deleted across the shards
+     * @throws RollbackException
+     */
+    @Override
+    public int recountExpiredCounts() throws RollbackException {
+        int deleted = 0;
+        for( int i = 0; i < shards.size(); i++ ){
+            inboxDao.joinTransaction(i);
+            deleted += shards.get(i).recountExpiredCounts();
+        }
+        return deleted;
+    }
+
+    @Override
+    public void recountMessages(Collection<String> lanIds) throws RollbackException {
+        inboxDao.forEachShard(ShardedInboxDao.groupByShard(lanIds, inboxDao::getShardIndex), true, (shardIndex, shardLanIds) -> {
+            getShard(shardIndex).recountMessages(shardLanIds);
+            return null;
+        });
+    }
+
+    /**
+     * Returns the counters of the passed shard
+     *
+     * @throws IllegalStateException if the shards do not match the inboxDao's shards
+     */
+    private MessageCountDao getShard(int shardIndex) {
+        if( shards.size() != inboxDao.getShardCount() ){
+            throw new IllegalStateException("shards must hold one MessageCountDao per inbox shard");
+        }
+        return shards.get(shardIndex);
+    }
+}
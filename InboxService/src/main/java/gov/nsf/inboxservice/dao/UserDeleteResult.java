@@ -0,0 +1,51 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.inboxservice.api.model.Message;
+
+/**
+ * Outcome of deleting one message on behalf of a user, with the deleted message when this delete removed it
+ */
+public class UserDeleteResult {
+
+    public enum Status {
+        Deleted,
+        NotFound,
+        Forbidden
+    }
+
+    private static final UserDeleteResult NOT_FOUND = new UserDeleteResult(Status.NotFound, null);
+    private static final UserDeleteResult FORBIDDEN = new UserDeleteResult(Status.Forbidden, null);
+
+    private final Status status;
+    private final Message message;
+
+    private UserDeleteResult(Status status, Message message) {
+        this.status = status;
+        this.message = message;
+    }
+
+    public static UserDeleteResult deleted(Message message) {
+        return new UserDeleteResult(Status.Deleted, message);
+    }
+
+    public static UserDeleteResult notFound() {
+        return NOT_FOUND;
+    }
+
+    public static UserDeleteResult forbidden() {
+        return FORBIDDEN;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns the deleted message
+     *
+     * @return Message, null unless the status is Deleted
+     */
+    public Message getMessage() {
+        return message;
+    }
+}
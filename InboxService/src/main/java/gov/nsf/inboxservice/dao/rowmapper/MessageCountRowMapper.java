@@ -0,0 +1,31 @@
+package gov.nsf.inboxservice.dao.rowmapper;
+
+import gov.nsf.inboxservice.api.model.MessageCount;
+import gov.nsf.inboxservice.api.model.MessagePriority;
+import gov.nsf.inboxservice.api.model.MessageType;
+import gov.nsf.inboxservice.common.util.Constants;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * RowMapper for retrieving MessageCount objects
+ */
+public class MessageCountRowMapper implements RowMapper<MessageCount> {
+
+    /**
+     * Returns MessageCount object from SQL row
+     * @param resultSet
+     * @param i
+     * @return MessageCount
+     * @throws SQLException
+     */
+    @Override
+    public MessageCount mapRow(ResultSet resultSet, int i) throws SQLException {
+        return new MessageCount(MessageType.getTypeFromCode(resultSet.getString(Constants.MSG_TYPE_COLNAME).trim()),
+                MessagePriority.getPriorityFromCode(resultSet.getString(Constants.MSG_PRIORITY_COLNAME).trim()),
+                resultSet.getInt(Constants.ACTIVE_COUNT_COLNAME),
+                resultSet.getInt(Constants.INACTIVE_COUNT_COLNAME));
+    }
+}
@@ -18,6 +18,10 @@ public class MessageResultSetExtractor implements ResultSetExtractor<List<Messag
     public MessageResultSetExtractor(){
         this.rowMapper = new MessageRowMapper();
     }
+
+    public MessageResultSetExtractor(boolean includeSummary){
+        this.rowMapper = new MessageRowMapper(includeSummary);
+    }
     /**
      * Returns List of Messages stored in DB
      * @param resultSet
@@ -8,12 +8,49 @@ import org.springframework.jdbc.core.RowMapper;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * RowMapper for retrieving Message objects
+ *
+ * Column indexes are resolved once per ResultSet, and repeated values (lan ID, action label, last update user)
+ * share one trimmed String per distinct raw value. Instances keep that state, so use one instance per query.
  */
 public class MessageRowMapper implements RowMapper<Message>{
 
+    //Upper bound on the distinct raw values remembered per mapper, so a wide query cannot grow the map without limit
+    private static final int MAX_SHARED_VALUES = 256;
+
+    private final boolean includeSummary;
+
+    private final Map<String, String> sharedValues = new HashMap<String, String>();
+
+    private ResultSet indexedResultSet;
+    private int idIndex;
+    private int lanIdIndex;
+    private int summaryIndex;
+    private int creationDateIndex;
+    private int priorityIndex;
+    private int typeIndex;
+    private int actionLinkIndex;
+    private int actionLabelIndex;
+    private int internalIndex;
+    private int expirationDateIndex;
+    private int lastUpdtUserIndex;
+
+    public MessageRowMapper(){
+        this(true);
+    }
+
+    /**
+     * @param includeSummary
+     *      - false when the query only selects Constants.MESSAGE_HEADER_COLUMNS
+     */
+    public MessageRowMapper(boolean includeSummary){
+        this.includeSummary = includeSummary;
+    }
+
     /**
      * Returns Message object from SQL row
      * @param resultSet
@@ -23,34 +60,86 @@ public class MessageRowMapper implements RowMapper<Message>{
      */
     @Override
     public Message mapRow(ResultSet resultSet, int i) throws SQLException {
+        if( resultSet != indexedResultSet ){
+            resolveColumnIndexes(resultSet);
+        }
 
         Message message = new Message();
-        message.setId(getStringFromColumn(resultSet, Constants.MSG_ID_COLNAME));
-        message.setLanId(getStringFromColumn(resultSet, Constants.MSG_LAN_ID_COLNAME));
-        message.setSummary(getStringFromColumn(resultSet, Constants.MSG_SUMMARY_COLNAME));
-        message.setCreationDate(getStringFromColumn(resultSet, Constants.MSG_CREATION_DATE_COLNAME));
-        message.setPriority(MessagePriority.getPriorityFromCode(resultSet.getString(Constants.MSG_PRIORITY_COLNAME)));
-        message.setType(MessageType.getTypeFromCode(resultSet.getString(Constants.MSG_TYPE_COLNAME)));
-        message.setActionLink(getStringFromColumn(resultSet, Constants.MSG_ACTION_LINK_COLNAME));
-        message.setActionLabel(getStringFromColumn(resultSet, Constants.MSG_ACTION_LABEL_COLNAME));
-        message.setInternal(resultSet.getBoolean(Constants.MSG_INTERNAL_COLNAME) );
-        message.setExpirationDate(getStringFromColumn(resultSet, Constants.MSG_EXP_DATE_COLNAME));
-        message.setLastUpdtUser(getStringFromColumn(resultSet, Constants.LAST_UPDT_USER_COLNAME));
+        message.setId(getStringFromColumn(resultSet, idIndex));
+        message.setLanId(getSharedStringFromColumn(resultSet, lanIdIndex));
+        if( includeSummary ){
+            message.setSummary(getStringFromColumn(resultSet, summaryIndex));
+        }
+        message.setCreationDate(getStringFromColumn(resultSet, creationDateIndex));
+        message.setPriority(MessagePriority.getPriorityFromCode(resultSet.getString(priorityIndex)));
+        message.setType(MessageType.getTypeFromCode(resultSet.getString(typeIndex)));
+        message.setActionLink(getStringFromColumn(resultSet, actionLinkIndex));
+        message.setActionLabel(getSharedStringFromColumn(resultSet, actionLabelIndex));
+        message.setInternal(resultSet.getBoolean(internalIndex));
+        message.setExpirationDate(getStringFromColumn(resultSet, expirationDateIndex));
+        message.setLastUpdtUser(getSharedStringFromColumn(resultSet, lastUpdtUserIndex));
 
         return message;
     }
 
     /**
-     * Returns the value at the passed column name, trimming white space
+     * Looks up the index of every mapped column in the passed ResultSet
      *
-     * Returns empty string if column value is null
      * @param resultSet
-     * @param columnName
+     * @throws SQLException if a mapped column is not in the ResultSet
+     */
+    private void resolveColumnIndexes(ResultSet resultSet) throws SQLException {
+        idIndex = resultSet.findColumn(Constants.MSG_ID_COLNAME);
+        lanIdIndex = resultSet.findColumn(Constants.MSG_LAN_ID_COLNAME);
+        summaryIndex = includeSummary ? resultSet.findColumn(Constants.MSG_SUMMARY_COLNAME) : 0;
+        creationDateIndex = resultSet.findColumn(Constants.MSG_CREATION_DATE_COLNAME);
+        priorityIndex = resultSet.findColumn(Constants.MSG_PRIORITY_COLNAME);
+        typeIndex = resultSet.findColumn(Constants.MSG_TYPE_COLNAME);
+        actionLinkIndex = resultSet.findColumn(Constants.MSG_ACTION_LINK_COLNAME);
+        actionLabelIndex = resultSet.findColumn(Constants.MSG_ACTION_LABEL_COLNAME);
+        internalIndex = resultSet.findColumn(Constants.MSG_INTERNAL_COLNAME);
+        expirationDateIndex = resultSet.findColumn(Constants.MSG_EXP_DATE_COLNAME);
+        lastUpdtUserIndex = resultSet.findColumn(Constants.LAST_UPDT_USER_COLNAME);
+        indexedResultSet = resultSet;
+    }
+
+    /**
+     * Returns the value at the passed column index, trimming white space
+     *
+     * Returns empty string if column value is null. String.trim() returns the same instance when there is no padding
+     * @param resultSet
+     * @param columnIndex
+     * @return
+     * @throws SQLException
+     */
+    private static String getStringFromColumn(ResultSet resultSet, int columnIndex) throws SQLException{
+        String value = resultSet.getString(columnIndex);
+        return value != null ? value.trim() : "";
+    }
+
+    /**
+     * Same as getStringFromColumn, for low-cardinality columns
+     *
+     * The trimmed value is remembered by its raw (padded) value, so rows repeating a value return the same
+     * instance instead of trimming a new copy
+     * @param resultSet
+     * @param columnIndex
      * @return
      * @throws SQLException
      */
-    private static String getStringFromColumn(ResultSet resultSet, String columnName) throws SQLException{
-        String value = resultSet.getString(columnName);
-        return value != null ? value.trim()  : "";
+    private String getSharedStringFromColumn(ResultSet resultSet, int columnIndex) throws SQLException{
+        String value = resultSet.getString(columnIndex);
+        if( value == null ){
+            return "";
+        }
+
+        String shared = sharedValues.get(value);
+        if( shared == null ){
+            shared = value.trim();
+            if( sharedValues.size() < MAX_SHARED_VALUES ){
+                sharedValues.put(value, shared);
+            }
+        }
+        return shared;
     }
 }
@@ -0,0 +1,235 @@
+package gov.nsf.inboxservice.datasource;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import gov.nsf.inboxservice.common.util.Constants;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import javax.sql.DataSource;
+
+/**
+ * Builds the primary DataSource, either the container's or an in-app HikariCP pool
+ *
+ * When enabled, the pool opens its own connections to jdbcUrl and reports to the ConnectionPoolMetrics.
+ * When disabled, the container DataSource is returned unchanged and the metrics stay at zero.
+ */
+public class ConnectionPoolFactoryBean implements FactoryBean<DataSource>, InitializingBean, DisposableBean {
+
+    private static final Logger LOGGER = Logger.getLogger(ConnectionPoolFactoryBean.class);
+
+    private boolean enabled;
+    private DataSource containerDataSource;
+    private String poolName = Constants.DEFAULT_POOL_NAME;
+    private String jdbcUrl;
+    private String driverClassName;
+    private String username;
+    private String password;
+    private int maximumPoolSize = Constants.DEFAULT_POOL_MAX_SIZE;
+    private int minimumIdle = Constants.DEFAULT_POOL_MIN_IDLE;
+    private long connectionTimeoutMillis = Constants.DEFAULT_POOL_CONNECTION_TIMEOUT_MILLIS;
+    private long idleTimeoutMillis = Constants.DEFAULT_POOL_IDLE_TIMEOUT_MILLIS;
+    private long maxLifetimeMillis = Constants.DEFAULT_POOL_MAX_LIFETIME_MILLIS;
+    private String connectionTestQuery;
+    private ConnectionPoolMetrics poolMetrics;
+
+    private DataSource dataSource;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public DataSource getContainerDataSource() {
+        return containerDataSource;
+    }
+
+    /**
+     * @param containerDataSource
+     *      - used as is while the pool is disabled
+     */
+    public void setContainerDataSource(DataSource containerDataSource) {
+        this.containerDataSource = containerDataSource;
+    }
+
+    public String getPoolName() {
+        return poolName;
+    }
+
+    public void setPoolName(String poolName) {
+        this.poolName = poolName;
+    }
+
+    public String getJdbcUrl() {
+        return jdbcUrl;
+    }
+
+    public void setJdbcUrl(String jdbcUrl) {
+        this.jdbcUrl = jdbcUrl;
+    }
+
+    public String getDriverClassName() {
+        return driverClassName;
+    }
+
+    /**
+     * @param driverClassName
+     *      - blank to find the driver from the URL
+     */
+    public void setDriverClassName(String driverClassName) {
+        this.driverClassName = driverClassName;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public int getMaximumPoolSize() {
+        return maximumPoolSize;
+    }
+
+    public void setMaximumPoolSize(int maximumPoolSize) {
+        if( maximumPoolSize < 1 ){
+            throw new IllegalArgumentException("maximumPoolSize must be positive");
+        }
+        this.maximumPoolSize = maximumPoolSize;
+    }
+
+    public int getMinimumIdle() {
+        return minimumIdle;
+    }
+
+    public void setMinimumIdle(int minimumIdle) {
+        if( minimumIdle < 0 ){
+            throw new IllegalArgumentException("minimumIdle cannot be negative");
+        }
+        this.minimumIdle = minimumIdle;
+    }
+
+    public long getConnectionTimeoutMillis() {
+        return connectionTimeoutMillis;
+    }
+
+    /**
+     * @param connectionTimeoutMillis
+     *      - how long a request waits for a connection before failing, at least 250
+     */
+    public void setConnectionTimeoutMillis(long connectionTimeoutMillis) {
+        if( connectionTimeoutMillis < Constants.MIN_POOL_CONNECTION_TIMEOUT_MILLIS ){
+            throw new IllegalArgumentException("connectionTimeoutMillis must be at least " + Constants.MIN_POOL_CONNECTION_TIMEOUT_MILLIS);
+        }
+        this.connectionTimeoutMillis = connectionTimeoutMillis;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public long getMaxLifetimeMillis() {
+        return maxLifetimeMillis;
+    }
+
+    public void setMaxLifetimeMillis(long maxLifetimeMillis) {
+        this.maxLifetimeMillis = maxLifetimeMillis;
+    }
+
+    public String getConnectionTestQuery() {
+        return connectionTestQuery;
+    }
+
+    /**
+     * @param connectionTestQuery
+     *      - blank to validate with Connection.isValid(), for drivers without JDBC4 support
+     */
+    public void setConnectionTestQuery(String connectionTestQuery) {
+        this.connectionTestQuery = connectionTestQuery;
+    }
+
+    public ConnectionPoolMetrics getPoolMetrics() {
+        return poolMetrics;
+    }
+
+    public void setPoolMetrics(ConnectionPoolMetrics poolMetrics) {
+        this.poolMetrics = poolMetrics;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if( !enabled ){
+            if( containerDataSource == null ){
+                throw new IllegalArgumentException("containerDataSource is required while the pool is disabled");
+            }
+            dataSource = containerDataSource;
+            return;
+        }
+        if( StringUtils.isBlank(jdbcUrl) ){
+            throw new IllegalArgumentException("jdbcUrl is required when the pool is enabled");
+        }
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(poolName);
+        config.setJdbcUrl(jdbcUrl.trim());
+        if( StringUtils.isNotBlank(driverClassName) ){
+            config.setDriverClassName(driverClassName.trim());
+        }
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setMaximumPoolSize(maximumPoolSize);
+        config.setMinimumIdle(Math.min(minimumIdle, maximumPoolSize));
+        config.setConnectionTimeout(connectionTimeoutMillis);
+        config.setIdleTimeout(idleTimeoutMillis);
+        config.setMaxLifetime(maxLifetimeMillis);
+        if( StringUtils.isNotBlank(connectionTestQuery) ){
+            config.setConnectionTestQuery(connectionTestQuery);
+        }
+        if( poolMetrics != null ){
+            config.setMetricsTrackerFactory(poolMetrics);
+        }
+
+        dataSource = new HikariDataSource(config);
+        LOGGER.info("Started connection pool " + poolName + " with at most " + maximumPoolSize + " connections");
+    }
+
+    @Override
+    public DataSource getObject() {
+        return dataSource;
+    }
+
+    @Override
+    public Class<?> getObjectType() {
+        return DataSource.class;
+    }
+
+    @Override
+    public boolean isSingleton() {
+        return true;
+    }
+
+    /**
+     * Closes the in-app pool, the container DataSource is left to the container
+     */
+    @Override
+    public void destroy() {
+        if( dataSource instanceof HikariDataSource ){
+            ((HikariDataSource) dataSource).close();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package gov.nsf.inboxservice.datasource;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Saturation metrics of the in-app connection pool, exported over JMX
+ *
+ * Gauges (active, idle, pending, total) come from the pool and are refreshed at most once a second.
+ * Acquire and usage latencies are kept in histograms, so the pool can be sized from the wait times seen per node.
+ * All values are zero while the pool is disabled.
+ */
+@ManagedResource(objectName = "gov.nsf.inboxservice:name=ConnectionPool",
+        description = "In-app DB connection pool metrics")
+public class ConnectionPoolMetrics implements MetricsTrackerFactory {
+
+    private volatile PoolStats poolStats;
+
+    private final LatencyHistogram acquireHistogram = new LatencyHistogram();
+    private final LatencyHistogram usageHistogram = new LatencyHistogram();
+    private final LatencyHistogram creationHistogram = new LatencyHistogram();
+    private final AtomicLong acquireTimeouts = new AtomicLong();
+
+    /**
+     * Called by the pool when it starts
+     *
+     * @param poolName
+     * @param poolStats
+     * @return the tracker the pool reports each acquire, use and timeout to
+     */
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolStats = poolStats;
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+                creationHistogram.recordMillis(connectionCreatedMillis);
+            }
+
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquireHistogram.recordNanos(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                usageHistogram.recordMillis(elapsedBorrowedMillis);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                acquireTimeouts.incrementAndGet();
+            }
+        };
+    }
+
+    @ManagedAttribute(description = "True once the in-app pool has started")
+    public boolean isPoolStarted() {
+        return poolStats != null;
+    }
+
+    @ManagedAttribute(description = "Connections in use")
+    public int getActiveConnections() {
+        return poolStats != null ? poolStats.getActiveConnections() : 0;
+    }
+
+    @ManagedAttribute(description = "Connections open and not in use")
+    public int getIdleConnections() {
+        return poolStats != null ? poolStats.getIdleConnections() : 0;
+    }
+
+    @ManagedAttribute(description = "Threads waiting for a connection")
+    public int getPendingThreads() {
+        return poolStats != null ? poolStats.getPendingThreads() : 0;
+    }
+
+    @ManagedAttribute(description = "Connections open")
+    public int getTotalConnections() {
+        return poolStats != null ? poolStats.getTotalConnections() : 0;
+    }
+
+    @ManagedAttribute(description = "Maximum pool size")
+    public int getMaxConnections() {
+        return poolStats != null ? poolStats.getMaxConnections() : 0;
+    }
+
+    @ManagedAttribute(description = "Connections handed out")
+    public long getAcquireCount() {
+        return acquireHistogram.getCount();
+    }
+
+    @ManagedAttribute(description = "Requests that gave up waiting for a connection")
+    public long getAcquireTimeouts() {
+        return acquireTimeouts.get();
+    }
+
+    @ManagedAttribute(description = "Upper bounds in ms of the histogram buckets, the last bucket is unbounded")
+    public long[] getHistogramBoundsMillis() {
+        return acquireHistogram.getBoundsMillis();
+    }
+
+    @ManagedAttribute(description = "Connection acquire latency, count per bucket")
+    public long[] getAcquireHistogram() {
+        return acquireHistogram.getCounts();
+    }
+
+    @ManagedAttribute(description = "Mean connection acquire latency in ms")
+    public double getAcquireMeanMillis() {
+        return acquireHistogram.getMeanMillis();
+    }
+
+    @ManagedAttribute(description = "Maximum connection acquire latency in ms")
+    public double getAcquireMaxMillis() {
+        return acquireHistogram.getMaxMillis();
+    }
+
+    @ManagedAttribute(description = "Bucket bound in ms holding the median acquire latency")
+    public long getAcquireP50Millis() {
+        return acquireHistogram.getPercentileMillis(50);
+    }
+
+    @ManagedAttribute(description = "Bucket bound in ms holding the 99th percentile acquire latency, -1 above the largest bound")
+    public long getAcquireP99Millis() {
+        return acquireHistogram.getPercentileMillis(99);
+    }
+
+    @ManagedAttribute(description = "Time connections are held, count per bucket")
+    public long[] getUsageHistogram() {
+        return usageHistogram.getCounts();
+    }
+
+    @ManagedAttribute(description = "Bucket bound in ms holding the 99th percentile time a connection is held, -1 above the largest bound")
+    public long getUsageP99Millis() {
+        return usageHistogram.getPercentileMillis(99);
+    }
+
+    @ManagedAttribute(description = "Time to open a physical connection, count per bucket")
+    public long[] getCreationHistogram() {
+        return creationHistogram.getCounts();
+    }
+}
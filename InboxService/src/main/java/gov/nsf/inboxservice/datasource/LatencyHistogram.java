@@ -0,0 +1,119 @@
+package gov.nsf.inboxservice.datasource;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with fixed millisecond buckets
+ *
+ * Bucket i counts the samples up to BOUNDS_MILLIS[i]. The last bucket counts the samples above the largest bound.
+ * Percentiles are reported as the upper bound of the bucket they fall in.
+ */
+public class LatencyHistogram {
+
+    private static final long[] BOUNDS_MILLIS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+    private static final long[] BOUNDS_NANOS = new long[BOUNDS_MILLIS.length];
+
+    static {
+        for( int i = 0; i < BOUNDS_MILLIS.length; i++ ){
+            BOUNDS_NANOS[i] = TimeUnit.MILLISECONDS.toNanos(BOUNDS_MILLIS[i]);
+        }
+    }
+
+    private final AtomicLongArray counts = new AtomicLongArray(BOUNDS_MILLIS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records one sample
+     *
+     * @param nanos
+     *      - the latency in nanoseconds, negative values count as 0
+     */
+    public void recordNanos(long nanos) {
+        long sample = Math.max(0, nanos);
+        int bucket = 0;
+        while( bucket < BOUNDS_NANOS.length && sample > BOUNDS_NANOS[bucket] ){
+            bucket++;
+        }
+        counts.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalNanos.addAndGet(sample);
+        maxNanos.accumulateAndGet(sample, Math::max);
+    }
+
+    /**
+     * Records one sample
+     *
+     * @param millis
+     *      - the latency in milliseconds
+     */
+    public void recordMillis(long millis) {
+        recordNanos(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    /**
+     * Returns the upper bound in milliseconds of each bucket but the last, which is unbounded
+     *
+     * @return bucket bounds
+     */
+    public long[] getBoundsMillis() {
+        return BOUNDS_MILLIS.clone();
+    }
+
+    /**
+     * Returns the number of samples in each bucket, one more entry than getBoundsMillis()
+     *
+     * @return bucket counts
+     */
+    public long[] getCounts() {
+        long[] snapshot = new long[counts.length()];
+        for( int i = 0; i < snapshot.length; i++ ){
+            snapshot[i] = counts.get(i);
+        }
+        return snapshot;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public double getMeanMillis() {
+        long samples = count.get();
+        return samples == 0 ? 0 : totalNanos.get() / (double) samples / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getMaxMillis() {
+        return maxNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the passed percentile, or -1 if it is above the largest bound
+     *
+     * @param percentile
+     *      - between 0 and 100
+     * @return milliseconds, 0 when there are no samples
+     */
+    public long getPercentileMillis(double percentile) {
+        long[] snapshot = getCounts();
+        long samples = 0;
+        for( long bucketCount : snapshot ){
+            samples += bucketCount;
+        }
+        if( samples == 0 ){
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(samples * Math.min(100, Math.max(0, percentile)) / 100);
+        long seen = 0;
+        for( int i = 0; i < BOUNDS_MILLIS.length; i++ ){
+            seen += snapshot[i];
+            if( seen >= Math.max(1, rank) ){
+                return BOUNDS_MILLIS[i];
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,187 @@
+package gov.nsf.inboxservice.datasource;
+
+import gov.nsf.inboxservice.common.util.Constants;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the users and messages written on this node for windowMillis, so their reads can be sent to the
+ * primary instead of a replica that may not have caught up yet
+ *
+ * The window starts again when the writing transaction commits, since replication starts from the commit.
+ * Writes made on other nodes are not seen here.
+ */
+@ManagedResource(objectName = "gov.nsf.inboxservice:name=ReadYourWritesTracker",
+        description = "Users and messages read from the primary after a write")
+public class ReadYourWritesTracker {
+
+    private static final String USER_KEY_PREFIX = "user:";
+    private static final String MESSAGE_KEY_PREFIX = "msg:";
+
+    private boolean enabled = true;
+    private long windowMillis = Constants.DEFAULT_READ_YOUR_WRITES_WINDOW_MILLIS;
+    private int maxEntries = Constants.DEFAULT_READ_YOUR_WRITES_MAX_ENTRIES;
+
+    private final Map<String, Long> recentWrites = new ConcurrentHashMap<String, Long>();
+
+    @ManagedAttribute(description = "False sends all read-only transactions to the replicas")
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @ManagedAttribute
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @ManagedAttribute(description = "How long reads go to the primary after a write")
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    @ManagedAttribute
+    public void setWindowMillis(long windowMillis) {
+        if( windowMillis < 0 ){
+            throw new IllegalArgumentException("windowMillis cannot be negative");
+        }
+        this.windowMillis = windowMillis;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @param maxEntries
+     *      - the size at which expired entries are purged
+     */
+    public void setMaxEntries(int maxEntries) {
+        if( maxEntries < 1 ){
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    @ManagedAttribute(description = "Users and messages currently tracked")
+    public int getSize() {
+        return recentWrites.size();
+    }
+
+    /**
+     * Records a write to the passed users' messages
+     *
+     * @param lanIds
+     */
+    public void recordUserWrites(Collection<String> lanIds) {
+        List<String> keys = new ArrayList<String>(lanIds.size());
+        for( String lanId : lanIds ){
+            keys.add(userKey(lanId));
+        }
+        record(keys);
+    }
+
+    /**
+     * Records a write to the passed messages
+     *
+     * @param msgIds
+     */
+    public void recordMessageWrites(Collection<String> msgIds) {
+        List<String> keys = new ArrayList<String>(msgIds.size());
+        for( String msgId : msgIds ){
+            keys.add(messageKey(msgId));
+        }
+        record(keys);
+    }
+
+    /**
+     * Returns true if the passed user's messages were written within the window
+     *
+     * @param lanId
+     * @return boolean
+     */
+    public boolean isUserWriteRecent(String lanId) {
+        return isRecent(userKey(lanId));
+    }
+
+    /**
+     * Returns true if the passed message was written within the window
+     *
+     * @param msgId
+     * @return boolean
+     */
+    public boolean isMessageWriteRecent(String msgId) {
+        return isRecent(messageKey(msgId));
+    }
+
+    private void record(Collection<String> keys) {
+        if( !enabled || keys.isEmpty() ){
+            return;
+        }
+
+        put(keys);
+        if( TransactionSynchronizationManager.isSynchronizationActive() ){
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    put(keys);
+                }
+            });
+        }
+    }
+
+    private void put(Collection<String> keys) {
+        Long until = System.currentTimeMillis() + windowMillis;
+        for( String key : keys ){
+            recentWrites.put(key, until);
+        }
+        if( recentWrites.size() > maxEntries ){
+            purgeExpired();
+        }
+    }
+
+    private boolean isRecent(String key) {
+        if( !enabled ){
+            return false;
+        }
+
+        Long until = recentWrites.get(key);
+        if( until == null ){
+            return false;
+        }
+        if( System.currentTimeMillis() >= until ){
+            recentWrites.remove(key, until);
+            return false;
+        }
+        return true;
+    }
+
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        recentWrites.values().removeIf(until -> now >= until);
+    }
+
+    private static String userKey(String lanId) {
+        return USER_KEY_PREFIX + lanId.toLowerCase().trim();
+    }
+
+    private static String messageKey(String msgId) {
+        return MESSAGE_KEY_PREFIX + msgId.trim();
+    }
+
+    /**
+     * Forgets every tracked write
+     */
+    @ManagedOperation(description = "Forgets every tracked write")
+    public void clear() {
+        recentWrites.clear();
+    }
+}
@@ -0,0 +1,188 @@
+package gov.nsf.inboxservice.datasource;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.jdbc.datasource.lookup.JndiDataSourceLookup;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DataSource sending read-only transactions to the replicas and everything else to the primary
+ *
+ * Replicas are taken in turn. Connections made outside a transaction, in a read-write transaction, or while
+ * setPrimaryRequired(true) is in effect on the thread go to the primary. With no replicas configured every
+ * connection goes to the primary.
+ *
+ * The read-only flag is only set once the transaction has begun, so this DataSource must sit behind a
+ * LazyConnectionDataSourceProxy, which defers taking the connection to the first statement.
+ */
+@ManagedResource(objectName = "gov.nsf.inboxservice:name=ReplicaRoutingDataSource",
+        description = "Routes read-only transactions to the DB replicas")
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final Logger LOGGER = Logger.getLogger(ReplicaRoutingDataSource.class);
+
+    private static final String PRIMARY_KEY = "primary";
+    private static final String REPLICA_KEY_PREFIX = "replica";
+
+    private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = new ThreadLocal<Boolean>();
+
+    private Object primaryDataSource;
+    private List<Object> replicaDataSources = new ArrayList<Object>();
+    private boolean enabled = true;
+
+    private List<String> replicaKeys = Collections.emptyList();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    private final AtomicLong primaryConnections = new AtomicLong();
+    private final AtomicLong replicaConnections = new AtomicLong();
+
+    public ReplicaRoutingDataSource() {
+        //JNDI names are looked up as given, like the JndiObjectFactoryBean of the primary
+        JndiDataSourceLookup dataSourceLookup = new JndiDataSourceLookup();
+        dataSourceLookup.setResourceRef(false);
+        setDataSourceLookup(dataSourceLookup);
+    }
+
+    /**
+     * Sends the connections of the current thread to the primary, even in read-only transactions
+     *
+     * Set it before the first statement of the transaction and restore the returned value in a finally block
+     *
+     * @param required
+     * @return the previous value
+     */
+    public static boolean setPrimaryRequired(boolean required) {
+        boolean previous = isPrimaryRequired();
+        if( required ){
+            PRIMARY_REQUIRED.set(Boolean.TRUE);
+        } else {
+            PRIMARY_REQUIRED.remove();
+        }
+        return previous;
+    }
+
+    /**
+     * Returns true if the connections of the current thread go to the primary regardless of the transaction
+     *
+     * @return boolean
+     */
+    public static boolean isPrimaryRequired() {
+        return Boolean.TRUE.equals(PRIMARY_REQUIRED.get());
+    }
+
+    public Object getPrimaryDataSource() {
+        return primaryDataSource;
+    }
+
+    /**
+     * @param primaryDataSource
+     *      - a DataSource or the JNDI name of one
+     */
+    public void setPrimaryDataSource(Object primaryDataSource) {
+        this.primaryDataSource = primaryDataSource;
+    }
+
+    public List<Object> getReplicaDataSources() {
+        return replicaDataSources;
+    }
+
+    /**
+     * @param replicaDataSources
+     *      - DataSources or JNDI names of the replicas
+     */
+    public void setReplicaDataSources(List<Object> replicaDataSources) {
+        this.replicaDataSources = replicaDataSources != null ? new ArrayList<Object>(replicaDataSources) : new ArrayList<Object>();
+    }
+
+    /**
+     * Sets the replicas from a comma separated list of JNDI names, blank for none
+     *
+     * @param replicaJndiNames
+     */
+    public void setReplicaJndiNames(String replicaJndiNames) {
+        List<Object> names = new ArrayList<Object>();
+        for( String name : StringUtils.split(StringUtils.defaultString(replicaJndiNames), ',') ){
+            if( StringUtils.isNotBlank(name) ){
+                names.add(name.trim());
+            }
+        }
+        setReplicaDataSources(names);
+    }
+
+    @ManagedAttribute(description = "False sends every connection to the primary")
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @ManagedAttribute
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @ManagedAttribute(description = "Number of replicas")
+    public int getReplicaCount() {
+        return replicaKeys.size();
+    }
+
+    @ManagedAttribute(description = "Connections routed to the primary")
+    public long getPrimaryConnections() {
+        return primaryConnections.get();
+    }
+
+    @ManagedAttribute(description = "Connections routed to a replica")
+    public long getReplicaConnections() {
+        return replicaConnections.get();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if( primaryDataSource == null ){
+            throw new IllegalArgumentException("primaryDataSource is required");
+        }
+
+        Map<Object, Object> targets = new HashMap<Object, Object>();
+        targets.put(PRIMARY_KEY, primaryDataSource);
+        List<String> keys = new ArrayList<String>();
+        for( Object replica : replicaDataSources ){
+            String key = REPLICA_KEY_PREFIX + keys.size();
+            targets.put(key, replica);
+            keys.add(key);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primaryDataSource);
+        setLenientFallback(false);
+        super.afterPropertiesSet();
+
+        replicaKeys = Collections.unmodifiableList(keys);
+        LOGGER.info("Routing read-only transactions to " + replicaKeys.size() + " replica(s)");
+    }
+
+    /**
+     * Returns the key of the replica to use for a read-only transaction, or of the primary otherwise
+     *
+     * @return lookup key
+     */
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if( !enabled || replicaKeys.isEmpty() || isPrimaryRequired()
+                || !TransactionSynchronizationManager.isActualTransactionActive()
+                || !TransactionSynchronizationManager.isCurrentTransactionReadOnly() ){
+            primaryConnections.incrementAndGet();
+            return PRIMARY_KEY;
+        }
+
+        replicaConnections.incrementAndGet();
+        return replicaKeys.get(Math.floorMod(nextReplica.getAndIncrement(), replicaKeys.size()));
+    }
+}
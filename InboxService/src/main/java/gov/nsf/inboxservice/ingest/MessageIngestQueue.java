@@ -0,0 +1,604 @@
+package gov.nsf.inboxservice.ingest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gov.nsf.common.exception.FormValidationException;
+import gov.nsf.common.exception.ResourceNotFoundException;
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.inboxservice.api.model.CreateMessageRequest;
+import gov.nsf.inboxservice.common.util.Constants;
+import gov.nsf.inboxservice.service.InboxIngestService;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind queue for create requests
+ *
+ * accept() appends the request to the local MessageJournal and returns once it is on disk, without touching the DB.
+ * A single drainer thread applies the journaled requests in order, batchSize per transaction, and checkpoints the
+ * journal after each batch. A failing batch is retried one request at a time with a growing pause, so one bad request
+ * holds up the queue but does not fail its neighbours. A request that cannot succeed (a missing recipient group, a
+ * reused key) is moved to the dead letter file at once, any other after maxAttempts, or earlier over JMX.
+ *
+ * start() replays the requests journaled after the last checkpoint, also when async ingest is disabled, so turning it
+ * off does not strand acknowledged requests. stop() stops accepting and drains for up to shutdownTimeoutMillis;
+ * whatever is left is replayed on the next start. Each request is applied under an idempotency key made of the
+ * journal's ID and its sequence, so a crash between a commit and its checkpoint does not apply that batch twice as
+ * long as the keys are retained.
+ */
+@ManagedResource(objectName = "gov.nsf.inboxservice:name=MessageIngestQueue",
+        description = "Write-behind queue for create requests")
+public class MessageIngestQueue {
+
+    private static final Logger LOGGER = Logger.getLogger(MessageIngestQueue.class);
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String DEAD_LETTER_FILE = "rejected.jsonl";
+    private static final String JOURNAL_ID_FILE = "journal.id";
+    private static final String IDEMPOTENCY_KEY_PREFIX = "ingest:";
+
+    private InboxIngestService inboxIngestService;
+
+    private boolean enabled;
+    private String journalDir;
+    private int segmentSizeBytes = Constants.DEFAULT_INGEST_SEGMENT_SIZE_BYTES;
+    private int maxPending = Constants.DEFAULT_INGEST_MAX_PENDING;
+    private int batchSize = Constants.DEFAULT_INGEST_BATCH_SIZE;
+    private long retryMillis = Constants.DEFAULT_INGEST_RETRY_MILLIS;
+    private int maxAttempts = Constants.DEFAULT_INGEST_MAX_ATTEMPTS;
+    private long shutdownTimeoutMillis = Constants.DEFAULT_INGEST_SHUTDOWN_TIMEOUT_MILLIS;
+
+    private static final class Entry {
+        private final long seq;
+        private final CreateMessageRequest request;
+
+        private Entry(long seq, CreateMessageRequest request) {
+            this.seq = seq;
+            this.request = request;
+        }
+    }
+
+    //Journaled requests not applied yet, in sequence order. Guarded by this
+    private final Deque<Entry> pending = new ArrayDeque<Entry>();
+    private MessageJournal journal;
+    private String journalId;
+    private Thread drainer;
+    private volatile boolean accepting;
+    private boolean draining;
+    private boolean stopRequested;
+    private long failingSeq;
+    private long skipSeq;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failedApplies = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+    private volatile long replayed;
+    private volatile String lastError;
+
+    public InboxIngestService getInboxIngestService() {
+        return inboxIngestService;
+    }
+
+    public void setInboxIngestService(InboxIngestService inboxIngestService) {
+        this.inboxIngestService = inboxIngestService;
+    }
+
+    @ManagedAttribute(description = "True if async ingest was enabled at startup")
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getJournalDir() {
+        return journalDir;
+    }
+
+    /**
+     * @param journalDir
+     *      - local directory of the journal, required when enabled. It must survive restarts, so not a temp directory,
+     *      and is replayed on start whenever it exists
+     */
+    public void setJournalDir(String journalDir) {
+        this.journalDir = journalDir;
+    }
+
+    public int getSegmentSizeBytes() {
+        return segmentSizeBytes;
+    }
+
+    public void setSegmentSizeBytes(int segmentSizeBytes) {
+        if( segmentSizeBytes <= MessageJournal.RECORD_HEADER_BYTES ){
+            throw new IllegalArgumentException("segmentSizeBytes must be larger than " + MessageJournal.RECORD_HEADER_BYTES);
+        }
+        this.segmentSizeBytes = segmentSizeBytes;
+    }
+
+    @ManagedAttribute(description = "Requests waiting to be applied at which new requests are rejected")
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    @ManagedAttribute
+    public void setMaxPending(int maxPending) {
+        if( maxPending < 1 ){
+            throw new IllegalArgumentException("maxPending must be positive");
+        }
+        this.maxPending = maxPending;
+    }
+
+    @ManagedAttribute(description = "Requests applied per transaction")
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @ManagedAttribute
+    public void setBatchSize(int batchSize) {
+        if( batchSize < 1 ){
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.batchSize = batchSize;
+    }
+
+    public long getRetryMillis() {
+        return retryMillis;
+    }
+
+    public void setRetryMillis(long retryMillis) {
+        if( retryMillis < 1 ){
+            throw new IllegalArgumentException("retryMillis must be positive");
+        }
+        this.retryMillis = retryMillis;
+    }
+
+    @ManagedAttribute(description = "Attempts at a request before it is moved to the dead letter file, 0 to retry until skipped")
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param maxAttempts
+     *      - attempts at a single request before it is dead lettered. While the DB is down every request fails, so
+     *      keep it high enough for the retries to span an outage; 0 retries until skipped over JMX
+     */
+    @ManagedAttribute
+    public void setMaxAttempts(int maxAttempts) {
+        if( maxAttempts < 0 ){
+            throw new IllegalArgumentException("maxAttempts cannot be negative");
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    public long getShutdownTimeoutMillis() {
+        return shutdownTimeoutMillis;
+    }
+
+    public void setShutdownTimeoutMillis(long shutdownTimeoutMillis) {
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+    }
+
+    /**
+     * Opens the journal, queues the requests journaled after the last checkpoint and starts the drainer
+     *
+     * When disabled, only replays an existing journal directory and does not accept requests
+     *
+     * @throws IOException if the journal cannot be opened, so startup fails rather than strand journaled requests
+     */
+    public synchronized void start() throws IOException {
+        if( journal != null ){
+            return;
+        }
+        if( enabled && StringUtils.isBlank(journalDir) ){
+            throw new IllegalArgumentException("journalDir is required when async ingest is enabled");
+        }
+        if( !enabled && (StringUtils.isBlank(journalDir) || !Files.isDirectory(Paths.get(journalDir.trim()))) ){
+            return;
+        }
+
+        Path directory = Paths.get(journalDir.trim());
+        Files.createDirectories(directory);
+        journalId = readJournalId(directory);
+        journal = new MessageJournal(directory, segmentSizeBytes, (seq, payload) -> {
+            try {
+                pending.addLast(new Entry(seq, OBJECT_MAPPER.readValue(payload, CreateMessageRequest.class)));
+            } catch (IOException ex) {
+                LOGGER.error("Journaled request " + seq + " cannot be read: " + ex);
+                deadLetter(seq, payload);
+            }
+        });
+        replayed = pending.size();
+        if( replayed > 0 ){
+            LOGGER.info("Replaying " + replayed + " journaled create requests");
+        }
+
+        stopRequested = false;
+        draining = !enabled;
+        accepting = enabled;
+        drainer = new Thread(this::drain, "inbox-ingest-drainer");
+        drainer.start();
+    }
+
+    /**
+     * Stops accepting requests and applies the pending ones for up to shutdownTimeoutMillis before closing the journal
+     *
+     * @throws InterruptedException
+     */
+    public void stop() throws InterruptedException {
+        Thread drainerThread;
+        synchronized( this ){
+            if( journal == null ){
+                return;
+            }
+            accepting = false;
+            draining = true;
+            notifyAll();
+            drainerThread = drainer;
+        }
+
+        drainerThread.join(shutdownTimeoutMillis);
+        synchronized( this ){
+            stopRequested = true;
+            notifyAll();
+        }
+        //Lets a batch in flight finish, it is replayed if it does not
+        drainerThread.join(shutdownTimeoutMillis);
+
+        synchronized( this ){
+            if( !pending.isEmpty() ){
+                LOGGER.warn(pending.size() + " create requests were not applied before shutdown and will be replayed on the next start");
+            }
+            try {
+                journal.close();
+            } catch (IOException ex) {
+                LOGGER.error(Constants.ERROR_INGEST_JOURNAL + ex);
+            }
+            journal = null;
+            pending.clear();
+        }
+    }
+
+    /**
+     * Returns true if accept() takes requests
+     *
+     * @return boolean
+     */
+    @ManagedAttribute(description = "True while requests are accepted")
+    public boolean isAccepting() {
+        return accepting;
+    }
+
+    /**
+     * Journals the passed create request and returns once it is on disk
+     *
+     * @param request
+     *      - a validated create request
+     * @return the request's journal sequence
+     * @throws RollbackException if the queue is not accepting, is full or cannot write the journal
+     */
+    public long accept(CreateMessageRequest request) throws RollbackException {
+        byte[] payload;
+        try {
+            payload = OBJECT_MAPPER.writeValueAsBytes(request);
+        } catch (IOException ex) {
+            throw new RollbackException(Constants.ERROR_INGEST_JOURNAL + ex);
+        }
+
+        long seq;
+        MessageJournal acceptingJournal;
+        synchronized( this ){
+            if( !accepting ){
+                throw new RollbackException(Constants.ERROR_INGEST_NOT_ACCEPTING);
+            }
+            if( pending.size() >= maxPending ){
+                rejected.incrementAndGet();
+                throw new RollbackException(Constants.ERROR_INGEST_QUEUE_FULL);
+            }
+            try {
+                seq = journal.append(payload);
+            } catch (IOException ex) {
+                throw journalFailed(ex);
+            }
+            pending.addLast(new Entry(seq, request));
+            acceptingJournal = journal;
+        }
+
+        try {
+            acceptingJournal.sync(seq);
+        } catch (IOException ex) {
+            synchronized( this ){
+                throw journalFailed(ex);
+            }
+        }
+        synchronized( this ){
+            notifyAll();
+        }
+        accepted.incrementAndGet();
+        return seq;
+    }
+
+    /**
+     * Moves the request the drainer is retrying to the dead letter file in the journal directory
+     */
+    @ManagedOperation(description = "Moves the request the drainer keeps failing on to the dead letter file")
+    public synchronized void skipFailingRequest() {
+        skipSeq = failingSeq;
+        notifyAll();
+    }
+
+    @ManagedAttribute(description = "Requests journaled and acknowledged")
+    public long getAccepted() {
+        return accepted.get();
+    }
+
+    @ManagedAttribute(description = "Requests rejected because the queue was full")
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    @ManagedAttribute(description = "Requests applied to the DB")
+    public long getApplied() {
+        return applied.get();
+    }
+
+    @ManagedAttribute(description = "Transactions committed by the drainer")
+    public long getBatches() {
+        return batches.get();
+    }
+
+    @ManagedAttribute(description = "Failed attempts to apply requests")
+    public long getFailedApplies() {
+        return failedApplies.get();
+    }
+
+    @ManagedAttribute(description = "Requests moved to the dead letter file")
+    public long getDeadLettered() {
+        return deadLettered.get();
+    }
+
+    @ManagedAttribute(description = "Requests replayed from the journal at startup")
+    public long getReplayed() {
+        return replayed;
+    }
+
+    @ManagedAttribute(description = "Requests journaled and not applied yet")
+    public synchronized int getPending() {
+        return pending.size();
+    }
+
+    @ManagedAttribute(description = "Journal syncs, fewer than accepted requests when they arrive together")
+    public synchronized long getJournalSyncs() {
+        return journal != null ? journal.getSyncCount() : 0;
+    }
+
+    @ManagedAttribute(description = "Sequence of the request the drainer is retrying, 0 if none")
+    public synchronized long getFailingSeq() {
+        return failingSeq;
+    }
+
+    @ManagedAttribute(description = "Last error applying requests")
+    public String getLastError() {
+        return lastError;
+    }
+
+    private RollbackException journalFailed(IOException ex) {
+        //A journal that cannot be written cannot acknowledge anything, so stop accepting until restarted
+        accepting = false;
+        LOGGER.error(Constants.ERROR_INGEST_JOURNAL + ex);
+        return new RollbackException(Constants.ERROR_INGEST_JOURNAL + ex);
+    }
+
+    private void drain() {
+        List<Entry> batch;
+        while( (batch = nextBatch()) != null ){
+            if( apply(batch) == null ){
+                complete(batch);
+                continue;
+            }
+
+            //Retry one request at a time, so a bad request only holds up itself
+            for( Entry entry : batch ){
+                long delay = retryMillis;
+                List<Entry> single = Collections.singletonList(entry);
+                Exception failure = apply(single);
+                int attempts = 1;
+                while( failure != null ){
+                    if( isPoison(failure) || (maxAttempts > 0 && attempts >= maxAttempts) ){
+                        LOGGER.error("Giving up on create request " + entry.seq + " after " + attempts + " attempts");
+                        deadLetter(entry);
+                        break;
+                    }
+                    if( pause(entry.seq, delay) ){
+                        failure = apply(single);
+                        attempts++;
+                    } else if( isSkipped(entry.seq) ){
+                        deadLetter(entry);
+                        break;
+                    } else {
+                        return;
+                    }
+                    delay = Math.min(delay * 2, Constants.MAX_INGEST_RETRY_MILLIS);
+                }
+                complete(single);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the failure is the request's own and retrying it cannot succeed
+     */
+    private static boolean isPoison(Exception failure) {
+        return failure instanceof ResourceNotFoundException || failure instanceof FormValidationException;
+    }
+
+    /**
+     * Waits for the next durable requests and returns up to batchSize of them, or null once stopped
+     */
+    private synchronized List<Entry> nextBatch() {
+        while( true ){
+            if( stopRequested ){
+                return null;
+            }
+
+            long durableSeq = journal.getDurableSeq();
+            if( !pending.isEmpty() && pending.peekFirst().seq <= durableSeq ){
+                List<Entry> batch = new ArrayList<Entry>(Math.min(batchSize, pending.size()));
+                Iterator<Entry> iterator = pending.iterator();
+                while( iterator.hasNext() && batch.size() < batchSize ){
+                    Entry entry = iterator.next();
+                    if( entry.seq > durableSeq ){
+                        break;
+                    }
+                    batch.add(entry);
+                }
+                return batch;
+            }
+            if( draining ){
+                return null;
+            }
+
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Applies the batch in one transaction
+     *
+     * @return null if it was committed, the failure otherwise
+     */
+    private Exception apply(List<Entry> batch) {
+        Map<String, CreateMessageRequest> requests = new LinkedHashMap<String, CreateMessageRequest>();
+        for( Entry entry : batch ){
+            requests.put(IDEMPOTENCY_KEY_PREFIX + journalId + ":" + entry.seq, entry.request);
+        }
+
+        try {
+            getInboxIngestService().createMessages(requests);
+            batches.incrementAndGet();
+            return null;
+        } catch (RollbackException ex) {
+            recordFailure(ex.getErrMsg());
+            return ex;
+        } catch (FormValidationException | RuntimeException ex) {
+            recordFailure(String.valueOf(ex));
+            return ex;
+        }
+    }
+
+    private void recordFailure(String error) {
+        failedApplies.incrementAndGet();
+        lastError = error;
+        LOGGER.error(Constants.ERROR_APPLYING_INGESTED_MESSAGES + error);
+    }
+
+    /**
+     * Waits before retrying the request with the passed sequence
+     *
+     * @return true to retry, false if the request was skipped or the queue stopped
+     */
+    private synchronized boolean pause(long seq, long millis) {
+        failingSeq = seq;
+        long until = System.currentTimeMillis() + millis;
+        long remaining = millis;
+        while( remaining > 0 && !stopRequested && skipSeq != seq ){
+            try {
+                wait(remaining);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            remaining = until - System.currentTimeMillis();
+        }
+        return !stopRequested && skipSeq != seq;
+    }
+
+    private synchronized boolean isSkipped(long seq) {
+        return skipSeq == seq && !stopRequested;
+    }
+
+    /**
+     * Removes the applied requests from the head of the queue and checkpoints the journal past them
+     */
+    private synchronized void complete(List<Entry> batch) {
+        if( journal == null ){
+            //stop() gave up waiting and closed the journal, the batch is replayed on the next start
+            return;
+        }
+        for( int i = 0; i < batch.size(); i++ ){
+            pending.pollFirst();
+        }
+        applied.addAndGet(batch.size());
+        failingSeq = 0;
+        try {
+            journal.checkpoint(batch.get(batch.size() - 1).seq);
+        } catch (IOException ex) {
+            //The batch is replayed after a restart unless a later checkpoint succeeds
+            LOGGER.error(Constants.ERROR_INGEST_JOURNAL + ex);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Returns the ID of the journal in the passed directory, generated the first time it is opened
+     *
+     * Sequences restart when the directory is recreated and every instance has its own journal, so the ID keeps the
+     * requests' idempotency keys apart
+     */
+    private static String readJournalId(Path directory) throws IOException {
+        Path file = directory.resolve(JOURNAL_ID_FILE);
+        if( Files.exists(file) ){
+            return new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+        }
+        String id = UUID.randomUUID().toString();
+        Files.write(file, id.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE_NEW, StandardOpenOption.SYNC);
+        return id;
+    }
+
+    private void deadLetter(Entry entry) {
+        try {
+            deadLetter(entry.seq, OBJECT_MAPPER.writeValueAsBytes(entry.request));
+        } catch (IOException ex) {
+            LOGGER.error("Could not write request " + entry.seq + " to the dead letter file: " + ex);
+        }
+    }
+
+    private void deadLetter(long seq, byte[] payload) {
+        deadLettered.incrementAndGet();
+        Path file = Paths.get(journalDir.trim()).resolve(DEAD_LETTER_FILE);
+        String line = seq + "\t" + new String(payload, StandardCharsets.UTF_8) + System.lineSeparator();
+        try {
+            Files.write(file, line.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            LOGGER.warn("Moved create request " + seq + " to " + file);
+        } catch (IOException ex) {
+            LOGGER.error("Could not write request " + seq + " to the dead letter file: " + ex);
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package gov.nsf.inboxservice.ingest;
+
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Local write-ahead journal of opaque records, numbered by a sequence that increases by one per record
+ *
+ * Records are appended to fixed-size, memory-mapped segment files named after their first sequence. Each record is
+ * stored as (payload length, sequence, CRC32 of sequence and payload, payload). A new segment file is zero-filled, so
+ * a zero length marks the end of the written records, and a record failing its CRC marks the end of a torn write.
+ *
+ * append() only writes to the mapped memory. sync() makes everything appended so far durable with one force of the
+ * segment, so concurrent callers waiting for their records share a single fsync. checkpoint() records the last
+ * sequence that no longer needs replaying and deletes the segments holding nothing newer.
+ *
+ * Not intended for multiple processes; one journal directory belongs to one node.
+ */
+public class MessageJournal implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(MessageJournal.class);
+
+    static final int RECORD_HEADER_BYTES = 4 + 8 + 4;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String CHECKPOINT_TEMP_FILE = "checkpoint.tmp";
+
+    /**
+     * Receives the records read back when the journal is opened
+     */
+    @FunctionalInterface
+    public interface RecordHandler {
+        void handle(long seq, byte[] payload) throws IOException;
+    }
+
+    private static final class Segment {
+        private final Path path;
+        private final long firstSeq;
+        private final MappedByteBuffer buffer;
+        private long lastSeq;
+
+        private Segment(Path path, long firstSeq, MappedByteBuffer buffer) {
+            this.path = path;
+            this.firstSeq = firstSeq;
+            this.buffer = buffer;
+            this.lastSeq = firstSeq - 1;
+        }
+    }
+
+    private final Path directory;
+    private final int segmentSizeBytes;
+
+    private final List<Segment> segments = new ArrayList<Segment>();
+    private Segment active;
+    private long nextSeq;
+    private long writtenSeq;
+    private long checkpointSeq;
+
+    private final Object syncLock = new Object();
+    private volatile long durableSeq;
+    private long syncCount;
+
+    /**
+     * Opens the journal in the passed directory, creating it if needed, and passes every record after the
+     * checkpoint to the handler in sequence order
+     *
+     * @param directory
+     * @param segmentSizeBytes
+     *      - the size of each segment file, which bounds the size of a record
+     * @param handler
+     *      - receives the records to replay
+     * @throws IOException
+     */
+    public MessageJournal(Path directory, int segmentSizeBytes, RecordHandler handler) throws IOException {
+        if( segmentSizeBytes <= RECORD_HEADER_BYTES ){
+            throw new IllegalArgumentException("segmentSizeBytes must be larger than " + RECORD_HEADER_BYTES);
+        }
+        this.directory = directory;
+        this.segmentSizeBytes = segmentSizeBytes;
+
+        Files.createDirectories(directory);
+        Files.deleteIfExists(directory.resolve(CHECKPOINT_TEMP_FILE));
+        checkpointSeq = readCheckpoint();
+        nextSeq = checkpointSeq + 1;
+
+        for( Path path : listSegmentFiles() ){
+            Segment segment = mapSegment(path, parseFirstSeq(path), false);
+            segments.add(segment);
+            replaySegment(segment, handler);
+        }
+        active = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        writtenSeq = nextSeq - 1;
+        durableSeq = writtenSeq;
+        deleteCheckpointedSegments();
+    }
+
+    /**
+     * Appends a record, which is durable only once sync() has returned for its sequence
+     *
+     * @param payload
+     * @return the record's sequence
+     * @throws IOException
+     */
+    public synchronized long append(byte[] payload) throws IOException {
+        int recordBytes = RECORD_HEADER_BYTES + payload.length;
+        if( recordBytes > segmentSizeBytes ){
+            throw new IllegalArgumentException("Record of " + payload.length + " bytes does not fit in a journal segment");
+        }
+        if( active == null || active.buffer.remaining() < recordBytes ){
+            roll();
+        }
+
+        long seq = nextSeq++;
+        active.buffer.putInt(payload.length).putLong(seq).putInt(checksum(seq, payload)).put(payload);
+        active.lastSeq = seq;
+        writtenSeq = seq;
+        return seq;
+    }
+
+    /**
+     * Returns once the record with the passed sequence, and every record before it, is on disk
+     *
+     * The caller that finds the sequence not yet durable forces the segment for every record written so far,
+     * so callers arriving meanwhile find their records durable without forcing again
+     *
+     * @param seq
+     * @throws IOException
+     */
+    public void sync(long seq) throws IOException {
+        synchronized( syncLock ){
+            if( durableSeq >= seq ){
+                return;
+            }
+
+            Segment segment;
+            long target;
+            synchronized( this ){
+                segment = active;
+                target = writtenSeq;
+            }
+            //Segments before the active one were forced when the journal rolled over
+            segment.buffer.force();
+            syncCount++;
+            durableSeq = target;
+        }
+    }
+
+    /**
+     * Returns the sequence of the last record known to be on disk
+     *
+     * @return sequence
+     */
+    public long getDurableSeq() {
+        return durableSeq;
+    }
+
+    public synchronized long getWrittenSeq() {
+        return writtenSeq;
+    }
+
+    public synchronized long getCheckpointSeq() {
+        return checkpointSeq;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Returns the number of forces made by sync(), fewer than the records synced when appends are concurrent
+     *
+     * @return count
+     */
+    public long getSyncCount() {
+        synchronized( syncLock ){
+            return syncCount;
+        }
+    }
+
+    /**
+     * Records that the passed sequence and every record before it no longer need replaying, and deletes
+     * the segments holding only such records
+     *
+     * @param seq
+     * @throws IOException
+     */
+    public synchronized void checkpoint(long seq) throws IOException {
+        if( seq <= checkpointSeq ){
+            return;
+        }
+
+        Path temp = directory.resolve(CHECKPOINT_TEMP_FILE);
+        try( FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING) ){
+            ByteBuffer buffer = ByteBuffer.allocate(8 + 4);
+            buffer.putLong(seq).putInt(checksum(seq, new byte[0]));
+            buffer.flip();
+            while( buffer.hasRemaining() ){
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        checkpointSeq = seq;
+        deleteCheckpointedSegments();
+    }
+
+    /**
+     * Forces every segment to disk and releases the journal
+     *
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for( Segment segment : segments ){
+            segment.buffer.force();
+        }
+        segments.clear();
+        active = null;
+    }
+
+    private void roll() throws IOException {
+        if( active != null ){
+            active.buffer.force();
+        }
+        Path path = directory.resolve(String.format("%020d", nextSeq) + SEGMENT_SUFFIX);
+        active = mapSegment(path, nextSeq, true);
+        segments.add(active);
+    }
+
+    private Segment mapSegment(Path path, long firstSeq, boolean create) throws IOException {
+        try( RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw") ){
+            if( create ){
+                file.setLength(segmentSizeBytes);
+            }
+            FileChannel channel = file.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            if( create ){
+                channel.force(true);
+            }
+            //The mapping stays valid after the file is closed
+            return new Segment(path, firstSeq, buffer);
+        }
+    }
+
+    /**
+     * Reads the records of a segment up to the first empty or torn record and leaves the buffer positioned after
+     * the last valid one, with the rest of the segment zeroed so later appends are never followed by stale bytes
+     */
+    private void replaySegment(Segment segment, RecordHandler handler) throws IOException {
+        MappedByteBuffer buffer = segment.buffer;
+        long expectedSeq = segment.firstSeq;
+        if( expectedSeq > nextSeq ){
+            LOGGER.error("Journal segment " + segment.path + " starts at " + expectedSeq + ", records " + nextSeq + " to " + (expectedSeq - 1) + " are missing");
+        }
+
+        while( buffer.remaining() >= RECORD_HEADER_BYTES ){
+            int start = buffer.position();
+            int length = buffer.getInt();
+            if( length <= 0 || length > buffer.remaining() - 8 - 4 ){
+                buffer.position(start);
+                break;
+            }
+            long seq = buffer.getLong();
+            int crc = buffer.getInt();
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            if( seq != expectedSeq || crc != checksum(seq, payload) ){
+                LOGGER.warn("Journal segment " + segment.path + " ends with a torn record at offset " + start);
+                buffer.position(start);
+                break;
+            }
+
+            segment.lastSeq = seq;
+            expectedSeq++;
+            if( seq > checkpointSeq ){
+                handler.handle(seq, payload);
+            }
+        }
+
+        int end = buffer.position();
+        for( int i = end; i < buffer.limit(); i++ ){
+            if( buffer.get(i) != 0 ){
+                buffer.put(i, (byte) 0);
+            }
+        }
+        nextSeq = Math.max(nextSeq, segment.lastSeq + 1);
+    }
+
+    private void deleteCheckpointedSegments() throws IOException {
+        Iterator<Segment> iterator = segments.iterator();
+        while( iterator.hasNext() ){
+            Segment segment = iterator.next();
+            if( segment != active && segment.lastSeq <= checkpointSeq ){
+                Files.deleteIfExists(segment.path);
+                iterator.remove();
+            }
+        }
+    }
+
+    private long readCheckpoint() throws IOException {
+        Path path = directory.resolve(CHECKPOINT_FILE);
+        if( !Files.exists(path) ){
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        if( buffer.remaining() < 8 + 4 ){
+            throw new IOException("Journal checkpoint " + path + " is corrupt");
+        }
+        long seq = buffer.getLong();
+        if( buffer.getInt() != checksum(seq, new byte[0]) ){
+            throw new IOException("Journal checkpoint " + path + " is corrupt");
+        }
+        return seq;
+    }
+
+    private List<Path> listSegmentFiles() throws IOException {
+        List<Path> paths = new ArrayList<Path>();
+        try( DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX) ){
+            for( Path path : stream ){
+                paths.add(path);
+            }
+        }
+        paths.sort((first, second) -> Long.compare(parseFirstSeq(first), parseFirstSeq(second)));
+        return paths;
+    }
+
+    private static long parseFirstSeq(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static int checksum(long seq, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(8).putLong(seq).array());
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,477 @@
+package gov.nsf.inboxservice.service;
+
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.inboxservice.api.model.MessageType;
+import gov.nsf.inboxservice.common.util.Constants;
+import gov.nsf.inboxservice.dao.ArchiveDao;
+import gov.nsf.inboxservice.dao.BroadcastDao;
+import gov.nsf.inboxservice.dao.IdempotencyDao;
+import gov.nsf.inboxservice.dao.InboxDao;
+import gov.nsf.inboxservice.dao.LeaseDao;
+import gov.nsf.inboxservice.dao.MessageCountDao;
+import org.apache.log4j.Logger;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scheduled job that deletes expired messages across all users
+ *
+ * Rows are deleted in chunks of chunkSize, each in its own transaction, with a pause between
+ * chunks so inserts are never queued behind a long delete. Only the node holding the
+ * sweeper lease in dbo.inbx_lock sweeps; the lease is renewed after every chunk.
+ *
+ * In archive mode rows are moved to dbo.inbx_msg_arch instead and retention drops whole archive partitions
+ *
+ * Each run ends by recounting the expired message counters, which the chunked deletes do not maintain,
+ * deleting idempotency keys older than idempotencyKeyRetentionHours, deleting expired global broadcasts
+ * and deleting the normalized message content no message points to any more
+ *
+ * Progress and throughput are exposed over JMX
+ */
+@ManagedResource(objectName = "gov.nsf.inboxservice:name=ExpiredMessageSweeper",
+        description = "Deletes expired messages across all users")
+public class ExpiredMessageSweeper {
+
+    private InboxDao inboxDao;
+    private LeaseDao leaseDao;
+    private ArchiveDao archiveDao;
+    private MessageCountDao messageCountDao;
+    private IdempotencyDao idempotencyDao;
+    private BroadcastDao broadcastDao;
+
+    private boolean enabled = true;
+    private int chunkSize = Constants.DEFAULT_SWEEP_CHUNK_SIZE;
+    private long pauseMillis = Constants.DEFAULT_SWEEP_PAUSE_MILLIS;
+    private int maxChunksPerRun = Constants.DEFAULT_SWEEP_MAX_CHUNKS_PER_RUN;
+    private int leaseSeconds = Constants.DEFAULT_SWEEP_LEASE_SECONDS;
+    private int idempotencyKeyRetentionHours = Constants.DEFAULT_IDEMPOTENCY_KEY_RETENTION_HOURS;
+    private boolean archive;
+    private Map<MessageType, Integer> maxAgeDays = Collections.emptyMap();
+    private Map<MessageType, Integer> retentionMonths = Collections.emptyMap();
+
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName() + ":" + UUID.randomUUID();
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong skippedRuns = new AtomicLong();
+    private final AtomicLong failedRuns = new AtomicLong();
+    private final AtomicLong totalRowsDeleted = new AtomicLong();
+    private final AtomicLong totalChunks = new AtomicLong();
+    private final AtomicLong totalPartitionsDropped = new AtomicLong();
+    private final AtomicLong totalIdempotencyKeysDeleted = new AtomicLong();
+    private final AtomicLong totalContentRowsDeleted = new AtomicLong();
+    private final AtomicLong totalBroadcastsDeleted = new AtomicLong();
+    private volatile boolean running;
+    private volatile long currentRunRowsDeleted;
+    private int currentRunChunks;
+    private volatile long lastRunStartMillis;
+    private volatile long lastRunDurationMillis;
+    private volatile long lastRunRowsDeleted;
+
+    private static final Logger LOGGER = Logger.getLogger(ExpiredMessageSweeper.class);
+
+    /**
+     * Deletes expired messages in chunks until none are left, maxChunksPerRun is reached or the lease is lost
+     *
+     * In archive mode expired messages, then messages older than maxAgeDays for their type, are moved to the
+     * archive instead, after which archive partitions older than retentionMonths for their type are dropped
+     *
+     * Does nothing when disabled or when another node holds the lease
+     */
+    @ManagedOperation(description = "Runs one sweep now")
+    public synchronized void sweep() {
+        if( !enabled ){
+            return;
+        }
+
+        try {
+            if( !getLeaseDao().acquireLease(Constants.EXPIRED_MESSAGE_SWEEPER_LOCK, owner, leaseSeconds) ){
+                skippedRuns.incrementAndGet();
+                return;
+            }
+        } catch (RollbackException ex) {
+            failedRuns.incrementAndGet();
+            LOGGER.error(Constants.ERROR_SWEEPING_EXPIRED_MESSAGES + ex.getErrMsg());
+            return;
+        }
+
+        runs.incrementAndGet();
+        running = true;
+        currentRunRowsDeleted = 0;
+        long startMillis = System.currentTimeMillis();
+        lastRunStartMillis = startMillis;
+        currentRunChunks = 0;
+        try {
+            if( archive ){
+                boolean completed = runChunks(size -> getArchiveDao().archiveExpiredMessagesChunk(size));
+                for( Map.Entry<MessageType, Integer> maxAge : maxAgeDays.entrySet() ){
+                    if( completed ){
+                        Timestamp createdBefore = Timestamp.valueOf(LocalDateTime.now().minusDays(maxAge.getValue()));
+                        completed = runChunks(size -> getArchiveDao().archiveAgedMessagesChunk(maxAge.getKey(), createdBefore, size));
+                    }
+                }
+                for( Map.Entry<MessageType, Integer> retention : retentionMonths.entrySet() ){
+                    YearMonth monthBefore = YearMonth.now().minusMonths(retention.getValue());
+                    totalPartitionsDropped.addAndGet(getArchiveDao().dropArchivePartitions(retention.getKey(),
+                            monthBefore.getYear() * 100 + monthBefore.getMonthValue()));
+                }
+            } else {
+                runChunks(size -> getInboxDao().deleteExpiredMessagesChunk(size));
+            }
+            if( messageCountDao != null ){
+                getMessageCountDao().recountExpiredCounts();
+            }
+            if( idempotencyDao != null ){
+                Timestamp storedBefore = Timestamp.valueOf(LocalDateTime.now().minusHours(idempotencyKeyRetentionHours));
+                totalIdempotencyKeysDeleted.addAndGet(getIdempotencyDao().deleteKeys(storedBefore));
+            }
+            if( broadcastDao != null ){
+                totalBroadcastsDeleted.addAndGet(getBroadcastDao().deleteExpiredBroadcasts(new Timestamp(System.currentTimeMillis())));
+            }
+            deleteOrphanedContent();
+        } catch (RollbackException ex) {
+            failedRuns.incrementAndGet();
+            LOGGER.error(Constants.ERROR_SWEEPING_EXPIRED_MESSAGES + ex.getErrMsg());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running = false;
+            lastRunDurationMillis = System.currentTimeMillis() - startMillis;
+            lastRunRowsDeleted = currentRunRowsDeleted;
+            releaseLease();
+            LOGGER.info("Expired message sweep " + (archive ? "archived " : "deleted ") + lastRunRowsDeleted + " rows in " + currentRunChunks + " chunks in "
+                    + lastRunDurationMillis + " ms (" + getLastRunRowsPerSecond() + " rows/s)");
+        }
+    }
+
+    /**
+     * Runs the chunk operation until it returns a partial chunk
+     *
+     * @param operation
+     * @return false if the run stopped early because maxChunksPerRun was reached or the lease was lost
+     * @throws RollbackException
+     * @throws InterruptedException
+     */
+    private boolean runChunks(ChunkOperation operation) throws RollbackException, InterruptedException {
+        while( true ){
+            int rows = operation.run(chunkSize);
+            currentRunChunks++;
+            currentRunRowsDeleted += rows;
+            totalRowsDeleted.addAndGet(rows);
+            totalChunks.incrementAndGet();
+
+            if( rows < chunkSize ){
+                return true;
+            }
+            if( currentRunChunks >= maxChunksPerRun ){
+                return false;
+            }
+
+            Thread.sleep(pauseMillis);
+            if( !getLeaseDao().acquireLease(Constants.EXPIRED_MESSAGE_SWEEPER_LOCK, owner, leaseSeconds) ){
+                LOGGER.warn("Expired message sweeper lost its lease after " + currentRunChunks + " chunks");
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Deletes the orphaned content rows in chunks, without pausing since no message insert waits on them
+     *
+     * @throws RollbackException
+     */
+    private void deleteOrphanedContent() throws RollbackException {
+        Timestamp storedBefore = Timestamp.valueOf(LocalDateTime.now().minusMinutes(Constants.ORPHANED_CONTENT_MIN_AGE_MINUTES));
+        int rows;
+        int chunks = 0;
+        do {
+            rows = getInboxDao().deleteOrphanedContentChunk(storedBefore, chunkSize);
+            totalContentRowsDeleted.addAndGet(rows);
+        } while( rows == chunkSize && ++chunks < maxChunksPerRun );
+    }
+
+    /**
+     * One chunked delete or move, returning the number of rows removed from dbo.inbx_msg
+     */
+    private interface ChunkOperation {
+        int run(int chunkSize) throws RollbackException;
+    }
+
+    private void releaseLease() {
+        try {
+            getLeaseDao().releaseLease(Constants.EXPIRED_MESSAGE_SWEEPER_LOCK, owner);
+        } catch (RollbackException ex) {
+            //The lease runs out on its own
+            LOGGER.warn(ex.getErrMsg());
+        }
+    }
+
+    @ManagedAttribute(description = "Number of sweeps run by this node")
+    public long getRuns() {
+        return runs.get();
+    }
+
+    @ManagedAttribute(description = "Number of sweeps skipped because another node held the lease")
+    public long getSkippedRuns() {
+        return skippedRuns.get();
+    }
+
+    @ManagedAttribute(description = "Number of sweeps that ended with a DB error")
+    public long getFailedRuns() {
+        return failedRuns.get();
+    }
+
+    @ManagedAttribute(description = "Archive partitions dropped by this node since startup")
+    public long getTotalPartitionsDropped() {
+        return totalPartitionsDropped.get();
+    }
+
+    @ManagedAttribute(description = "Idempotency keys deleted by this node since startup")
+    public long getTotalIdempotencyKeysDeleted() {
+        return totalIdempotencyKeysDeleted.get();
+    }
+
+    @ManagedAttribute(description = "Orphaned message content rows deleted by this node since startup")
+    public long getTotalContentRowsDeleted() {
+        return totalContentRowsDeleted.get();
+    }
+
+    @ManagedAttribute(description = "Expired global broadcasts deleted by this node since startup")
+    public long getTotalBroadcastsDeleted() {
+        return totalBroadcastsDeleted.get();
+    }
+
+    @ManagedAttribute(description = "Rows deleted or archived by this node since startup")
+    public long getTotalRowsDeleted() {
+        return totalRowsDeleted.get();
+    }
+
+    @ManagedAttribute(description = "Chunks deleted by this node since startup")
+    public long getTotalChunks() {
+        return totalChunks.get();
+    }
+
+    @ManagedAttribute(description = "True while a sweep is in progress")
+    public boolean isRunning() {
+        return running;
+    }
+
+    @ManagedAttribute(description = "Rows deleted so far by the current or last sweep")
+    public long getCurrentRunRowsDeleted() {
+        return currentRunRowsDeleted;
+    }
+
+    @ManagedAttribute(description = "Start time of the last sweep in epoch milliseconds")
+    public long getLastRunStartMillis() {
+        return lastRunStartMillis;
+    }
+
+    @ManagedAttribute(description = "Duration of the last completed sweep in milliseconds")
+    public long getLastRunDurationMillis() {
+        return lastRunDurationMillis;
+    }
+
+    @ManagedAttribute(description = "Rows deleted by the last completed sweep")
+    public long getLastRunRowsDeleted() {
+        return lastRunRowsDeleted;
+    }
+
+    @ManagedAttribute(description = "Delete throughput of the last completed sweep")
+    public long getLastRunRowsPerSecond() {
+        return lastRunDurationMillis > 0 ? lastRunRowsDeleted * 1000 / lastRunDurationMillis : lastRunRowsDeleted;
+    }
+
+    public InboxDao getInboxDao() {
+        return inboxDao;
+    }
+
+    public void setInboxDao(InboxDao inboxDao) {
+        this.inboxDao = inboxDao;
+    }
+
+    public LeaseDao getLeaseDao() {
+        return leaseDao;
+    }
+
+    public void setLeaseDao(LeaseDao leaseDao) {
+        this.leaseDao = leaseDao;
+    }
+
+    public ArchiveDao getArchiveDao() {
+        return archiveDao;
+    }
+
+    public void setArchiveDao(ArchiveDao archiveDao) {
+        this.archiveDao = archiveDao;
+    }
+
+    public MessageCountDao getMessageCountDao() {
+        return messageCountDao;
+    }
+
+    public void setMessageCountDao(MessageCountDao messageCountDao) {
+        this.messageCountDao = messageCountDao;
+    }
+
+    public IdempotencyDao getIdempotencyDao() {
+        return idempotencyDao;
+    }
+
+    public void setIdempotencyDao(IdempotencyDao idempotencyDao) {
+        this.idempotencyDao = idempotencyDao;
+    }
+
+    public BroadcastDao getBroadcastDao() {
+        return broadcastDao;
+    }
+
+    public void setBroadcastDao(BroadcastDao broadcastDao) {
+        this.broadcastDao = broadcastDao;
+    }
+
+    public int getIdempotencyKeyRetentionHours() {
+        return idempotencyKeyRetentionHours;
+    }
+
+    /**
+     * Idempotency key retention setter
+     *
+     * Must be longer than callers keep retrying a request, otherwise a late retry stores the messages again
+     *
+     * @param idempotencyKeyRetentionHours
+     */
+    public void setIdempotencyKeyRetentionHours(int idempotencyKeyRetentionHours) {
+        if( idempotencyKeyRetentionHours < 1 ){
+            throw new IllegalArgumentException("idempotencyKeyRetentionHours must be greater than 0: " + idempotencyKeyRetentionHours);
+        }
+        this.idempotencyKeyRetentionHours = idempotencyKeyRetentionHours;
+    }
+
+    @ManagedAttribute(description = "True if expired messages are archived instead of deleted")
+    public boolean isArchive() {
+        return archive;
+    }
+
+    public void setArchive(boolean archive) {
+        this.archive = archive;
+    }
+
+    public Map<MessageType, Integer> getMaxAgeDays() {
+        return maxAgeDays;
+    }
+
+    /**
+     * Archive age setter
+     *
+     * In archive mode messages of a listed type created more than the mapped number of days ago are archived.
+     * Archived messages that have not expired yet are only returned by ALL reads, not by ACTIVE or INACTIVE ones
+     *
+     * @param maxAgeDays
+     */
+    public void setMaxAgeDays(Map<MessageType, Integer> maxAgeDays) {
+        this.maxAgeDays = new EnumMap<MessageType, Integer>(MessageType.class);
+        for( Map.Entry<MessageType, Integer> entry : maxAgeDays.entrySet() ){
+            if( entry.getValue() > 0 ){
+                this.maxAgeDays.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    public Map<MessageType, Integer> getRetentionMonths() {
+        return retentionMonths;
+    }
+
+    /**
+     * Archive retention setter
+     *
+     * In archive mode archive partitions of a listed type older than the mapped number of months are dropped
+     *
+     * @param retentionMonths
+     */
+    public void setRetentionMonths(Map<MessageType, Integer> retentionMonths) {
+        this.retentionMonths = new EnumMap<MessageType, Integer>(MessageType.class);
+        for( Map.Entry<MessageType, Integer> entry : retentionMonths.entrySet() ){
+            if( entry.getValue() > 0 ){
+                this.retentionMonths.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @ManagedAttribute(description = "False to skip scheduled sweeps")
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @ManagedAttribute
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Chunk size setter
+     *
+     * Keep below the DB lock promotion threshold so a chunk never escalates to a table lock
+     *
+     * @param chunkSize
+     */
+    public void setChunkSize(int chunkSize) {
+        if( chunkSize < 1 ){
+            throw new IllegalArgumentException("chunkSize must be greater than 0: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    public long getPauseMillis() {
+        return pauseMillis;
+    }
+
+    public void setPauseMillis(long pauseMillis) {
+        if( pauseMillis < 0 ){
+            throw new IllegalArgumentException("pauseMillis cannot be negative: " + pauseMillis);
+        }
+        this.pauseMillis = pauseMillis;
+    }
+
+    public int getMaxChunksPerRun() {
+        return maxChunksPerRun;
+    }
+
+    public void setMaxChunksPerRun(int maxChunksPerRun) {
+        if( maxChunksPerRun < 1 ){
+            throw new IllegalArgumentException("maxChunksPerRun must be greater than 0: " + maxChunksPerRun);
+        }
+        this.maxChunksPerRun = maxChunksPerRun;
+    }
+
+    public int getLeaseSeconds() {
+        return leaseSeconds;
+    }
+
+    /**
+     * Lease length setter
+     *
+     * Must be longer than one chunk plus the pause, otherwise another node can take over mid-sweep
+     *
+     * @param leaseSeconds
+     */
+    public void setLeaseSeconds(int leaseSeconds) {
+        if( leaseSeconds < 1 ){
+            throw new IllegalArgumentException("leaseSeconds must be greater than 0: " + leaseSeconds);
+        }
+        this.leaseSeconds = leaseSeconds;
+    }
+}
@@ -0,0 +1,55 @@
+package gov.nsf.inboxservice.service;
+
+import gov.nsf.common.exception.FormValidationException;
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.inboxservice.api.model.DedupeMode;
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessageResponseWrapper;
+
+import java.util.List;
+
+/**
+ * InboxIdempotencyService interface
+ *
+ * Create requests carrying an Idempotency-Key header, which callers can retry without duplicating messages
+ */
+public interface InboxIdempotencyService {
+
+    /**
+     * Stores the message for each of the passed lan IDs once per idempotency key
+     *
+     * A repeated key returns the response of the first request without storing the messages again
+     *
+     * @param message
+     *      - the message to store
+     * @param lanIds
+     *      - the recipients' lan IDs
+     * @param dedupe
+     *      - how recipients with an identical active message are treated, null for DedupeMode.None
+     * @param idempotencyKey
+     *      - the caller's key for this request
+     * @return MessageResponseWrapper containing the stored Message objects
+     * @throws FormValidationException if the key was used for a different request
+     * @throws RollbackException
+     */
+    public MessageResponseWrapper createMessage(Message message, List<String> lanIds, DedupeMode dedupe, String idempotencyKey) throws RollbackException, FormValidationException;
+
+    /**
+     * Stores the message for the passed lan IDs and the members of the named recipient groups once per idempotency key
+     *
+     * @param message
+     *      - the message to store
+     * @param lanIds
+     *      - the recipients' lan IDs, may be empty when groups are passed
+     * @param groups
+     *      - the names of stored recipient groups, may be null
+     * @param dedupe
+     *      - how recipients with an identical active message are treated, null for DedupeMode.None
+     * @param idempotencyKey
+     *      - the caller's key for this request
+     * @return MessageResponseWrapper containing the stored Message objects
+     * @throws FormValidationException if the key was used for a different request
+     * @throws RollbackException
+     */
+    public MessageResponseWrapper createMessage(Message message, List<String> lanIds, List<String> groups, DedupeMode dedupe, String idempotencyKey) throws RollbackException, FormValidationException;
+}
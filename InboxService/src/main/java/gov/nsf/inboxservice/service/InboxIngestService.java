@@ -0,0 +1,25 @@
+package gov.nsf.inboxservice.service;
+
+import gov.nsf.common.exception.FormValidationException;
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.inboxservice.api.model.CreateMessageRequest;
+
+import java.util.Map;
+
+/**
+ * InboxIngestService interface
+ *
+ * Applies create requests accepted by the async ingest queue, which only runs inside the service
+ */
+public interface InboxIngestService {
+
+    /**
+     * Stores the messages of all passed create requests in a single transaction, once per idempotency key
+     *
+     * @param requests
+     *      - validated create requests by idempotency key, in the order to apply them
+     * @throws FormValidationException if a key was used for a different request
+     * @throws RollbackException
+     */
+    public void createMessages(Map<String, CreateMessageRequest> requests) throws RollbackException, FormValidationException;
+}
@@ -1,19 +1,63 @@
 package gov.nsf.inboxservice.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gov.nsf.common.exception.FormValidationException;
+import gov.nsf.common.exception.ResourceNotFoundException;
 import gov.nsf.common.exception.RollbackException;
+import gov.nsf.common.model.BaseError;
 import gov.nsf.common.model.BaseResponseWrapper;
 import gov.nsf.common.model.ExpirationFilter;
+import gov.nsf.inboxservice.api.model.CreateMessageRequest;
+import gov.nsf.inboxservice.api.model.DedupeMode;
+import gov.nsf.inboxservice.api.model.DeleteMessageResult;
+import gov.nsf.inboxservice.api.model.DeleteMessageStatus;
+import gov.nsf.inboxservice.api.model.DeleteMessagesResponseWrapper;
 import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessageCount;
+import gov.nsf.inboxservice.api.model.MessageCountResponseWrapper;
+import gov.nsf.inboxservice.api.model.MessagePriority;
 import gov.nsf.inboxservice.api.model.MessageResponseWrapper;
+import gov.nsf.inboxservice.api.model.MessageType;
+import gov.nsf.inboxservice.api.model.RecipientGroupResponseWrapper;
 import gov.nsf.inboxservice.api.service.InboxService;
+import gov.nsf.inboxservice.cache.BroadcastCache;
+import gov.nsf.inboxservice.cache.IdempotencyCache;
+import gov.nsf.inboxservice.cache.InboxCache;
+import gov.nsf.inboxservice.cache.MessageCache;
+import gov.nsf.inboxservice.common.util.Constants;
+import gov.nsf.inboxservice.dao.BroadcastDao;
+import gov.nsf.inboxservice.dao.IdempotencyDao;
+import gov.nsf.inboxservice.dao.IdempotencyRecord;
 import gov.nsf.inboxservice.dao.InboxDao;
+import gov.nsf.inboxservice.dao.MessageCountDao;
+import gov.nsf.inboxservice.dao.MessageCursor;
+import gov.nsf.inboxservice.dao.MessageHandler;
+import gov.nsf.inboxservice.dao.MessageTemplateDao;
+import gov.nsf.inboxservice.dao.RecipientGroupDao;
+import gov.nsf.inboxservice.dao.UserDeleteResult;
+import gov.nsf.inboxservice.datasource.ReadYourWritesTracker;
+import gov.nsf.inboxservice.datasource.ReplicaRoutingDataSource;
+import gov.nsf.inboxservice.validator.MessageTemplateValidator;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.AccessDeniedException;
 
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -21,11 +65,53 @@ import java.util.stream.Collectors;
  * InboxServiceImpl implements the InboxService interface
  *
  */
-public class InboxServiceImpl implements InboxService {
+public class InboxServiceImpl implements InboxService, InboxStreamService, InboxIngestService, InboxIdempotencyService {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
     @Autowired
     private InboxDao inboxDao;
 
+    @Autowired
+    private MessageCountDao messageCountDao;
+
+    @Autowired
+    private InboxCache inboxCache;
+
+    @Autowired
+    private MessageCache messageCache;
+
+    @Autowired
+    private ReadYourWritesTracker readYourWritesTracker;
+
+    @Autowired
+    private IdempotencyDao idempotencyDao;
+
+    @Autowired
+    private IdempotencyCache idempotencyCache;
+
+    @Autowired
+    private MessageTemplateDao messageTemplateDao;
+
+    @Autowired
+    private RecipientGroupDao recipientGroupDao;
+
+    @Autowired
+    private BroadcastDao broadcastDao;
+
+    @Autowired
+    private BroadcastCache broadcastCache;
+
+    private int groupPageSize = Constants.DEFAULT_INSERT_BATCH_SIZE;
+
+    /**
+     * A read that may have to be sent to the primary
+     */
+    @FunctionalInterface
+    private interface Read<T> {
+        T read() throws RollbackException;
+    }
+
     /**
      * InboxDao getter
      *
@@ -42,6 +128,187 @@ public class InboxServiceImpl implements InboxService {
         this.inboxDao = inboxDao;
     }
 
+    /**
+     * MessageCountDao getter
+     *
+     * @return messageCountDao
+     */
+    public MessageCountDao getMessageCountDao() {
+        return messageCountDao;
+    }
+
+    /**
+     * MessageCountDao setter
+     */
+    public void setMessageCountDao(MessageCountDao messageCountDao) {
+        this.messageCountDao = messageCountDao;
+    }
+
+    /**
+     * InboxCache getter
+     *
+     * @return inboxCache
+     */
+    public InboxCache getInboxCache() {
+        return inboxCache;
+    }
+
+    /**
+     * InboxCache setter
+     */
+    public void setInboxCache(InboxCache inboxCache) {
+        this.inboxCache = inboxCache;
+    }
+
+    /**
+     * MessageCache getter
+     *
+     * @return messageCache
+     */
+    public MessageCache getMessageCache() {
+        return messageCache;
+    }
+
+    /**
+     * MessageCache setter
+     */
+    public void setMessageCache(MessageCache messageCache) {
+        this.messageCache = messageCache;
+    }
+
+    /**
+     * ReadYourWritesTracker getter
+     *
+     * @return readYourWritesTracker
+     */
+    public ReadYourWritesTracker getReadYourWritesTracker() {
+        return readYourWritesTracker;
+    }
+
+    /**
+     * ReadYourWritesTracker setter
+     */
+    public void setReadYourWritesTracker(ReadYourWritesTracker readYourWritesTracker) {
+        this.readYourWritesTracker = readYourWritesTracker;
+    }
+
+    /**
+     * IdempotencyDao getter
+     *
+     * @return idempotencyDao
+     */
+    public IdempotencyDao getIdempotencyDao() {
+        return idempotencyDao;
+    }
+
+    /**
+     * IdempotencyDao setter
+     */
+    public void setIdempotencyDao(IdempotencyDao idempotencyDao) {
+        this.idempotencyDao = idempotencyDao;
+    }
+
+    /**
+     * IdempotencyCache getter
+     *
+     * @return idempotencyCache
+     */
+    public IdempotencyCache getIdempotencyCache() {
+        return idempotencyCache;
+    }
+
+    /**
+     * IdempotencyCache setter
+     */
+    public void setIdempotencyCache(IdempotencyCache idempotencyCache) {
+        this.idempotencyCache = idempotencyCache;
+    }
+
+    /**
+     * MessageTemplateDao getter
+     *
+     * @return messageTemplateDao
+     */
+    public MessageTemplateDao getMessageTemplateDao() {
+        return messageTemplateDao;
+    }
+
+    /**
+     * MessageTemplateDao setter
+     */
+    public void setMessageTemplateDao(MessageTemplateDao messageTemplateDao) {
+        this.messageTemplateDao = messageTemplateDao;
+    }
+
+    /**
+     * RecipientGroupDao getter
+     *
+     * @return recipientGroupDao
+     */
+    public RecipientGroupDao getRecipientGroupDao() {
+        return recipientGroupDao;
+    }
+
+    /**
+     * RecipientGroupDao setter
+     */
+    public void setRecipientGroupDao(RecipientGroupDao recipientGroupDao) {
+        this.recipientGroupDao = recipientGroupDao;
+    }
+
+    /**
+     * BroadcastDao getter
+     *
+     * @return broadcastDao
+     */
+    public BroadcastDao getBroadcastDao() {
+        return broadcastDao;
+    }
+
+    /**
+     * BroadcastDao setter
+     */
+    public void setBroadcastDao(BroadcastDao broadcastDao) {
+        this.broadcastDao = broadcastDao;
+    }
+
+    /**
+     * BroadcastCache getter
+     *
+     * @return broadcastCache
+     */
+    public BroadcastCache getBroadcastCache() {
+        return broadcastCache;
+    }
+
+    /**
+     * BroadcastCache setter
+     */
+    public void setBroadcastCache(BroadcastCache broadcastCache) {
+        this.broadcastCache = broadcastCache;
+    }
+
+    /**
+     * Group page size getter
+     *
+     * @return the number of group members read and stored at a time
+     */
+    public int getGroupPageSize() {
+        return groupPageSize;
+    }
+
+    /**
+     * Group page size setter
+     *
+     * @param groupPageSize
+     */
+    public void setGroupPageSize(int groupPageSize) {
+        if( groupPageSize < 1 ){
+            throw new IllegalArgumentException("groupPageSize must be greater than 0: " + groupPageSize);
+        }
+        this.groupPageSize = groupPageSize;
+    }
+
 
     /**
      * Retrieves the message for the passed message ID
@@ -52,14 +319,20 @@ public class InboxServiceImpl implements InboxService {
      * @throws RollbackException
      */
     @Override
+    @Transactional(value = "flp", readOnly = true)
     public MessageResponseWrapper getMessage(String msgId) throws RollbackException {
-        Message message = this.getInboxDao().getMessageById(msgId);
+        //Cached messages are served for the cache's TTL, so the loader never reads a lagging replica
+        Message message = read(isMessageWriteRecent(msgId), () -> this.getMessageCache() != null ?
+                this.getMessageCache().getMessage(msgId, id -> read(true, () -> this.getInboxDao().getMessageById(id))) :
+                this.getInboxDao().getMessageById(msgId));
         return new MessageResponseWrapper(message);
     }
 
     /**
      * Retrieves the messages for the passed user's lan ID filtered by the "active" parameter
      *
+     * The global broadcasts the user has not dismissed follow the user's own messages
+     *
      * @param lanId
      *      - the user's lan ID
      * @param activeFilter
@@ -70,11 +343,343 @@ public class InboxServiceImpl implements InboxService {
      * @throws RollbackException
      */
     @Override
+    @Transactional(value = "flp", readOnly = true)
     public MessageResponseWrapper getMessages(String lanId, ExpirationFilter activeFilter) throws RollbackException {
-        List<Message> messages = this.getInboxDao().getMessagesForUser(lanId, activeFilter);
+        boolean primaryRequired = isUserWriteRecent(lanId);
+        List<Message> messages = read(primaryRequired, () -> {
+            if( isCacheEnabled() ){
+                //The cache stores the ALL list and filters it in memory, loaded from the primary like the message cache
+                return this.getInboxCache().getMessages(lanId, activeFilter,
+                        user -> read(true, () -> this.getInboxDao().getMessagesForUser(user, ExpirationFilter.ALL)));
+            }
+            return this.getInboxDao().getMessagesForUser(lanId, activeFilter);
+        });
+
+        List<Message> broadcasts = BroadcastCache.filter(getBroadcastsForUser(lanId, primaryRequired), activeFilter);
+        if( !broadcasts.isEmpty() ){
+            messages = new ArrayList<Message>(messages);
+            messages.addAll(broadcasts);
+        }
         return new MessageResponseWrapper(messages);
     }
 
+    /**
+     * Retrieves one page of messages for the passed user's lan ID filtered by the "active" parameter
+     *
+     * One extra row is read to find out whether another page follows. The first page also carries the global
+     * broadcasts the user has not dismissed, after the user's own messages. They do not count against the limit
+     * and the cursor only walks the user's own messages, so later pages never repeat them.
+     *
+     * @param lanId
+     *      - the user's lan ID
+     * @param activeFilter
+     *      - the expiration filter
+     * @param limit
+     *      - the maximum number of messages to return
+     * @param after
+     *      - the next cursor of the previous page, null for the first page
+     * @return MessageResponseWrapper containing the retrieved Message objects and the next cursor
+     * @throws RollbackException
+     */
+    @Override
+    @Transactional(value = "flp", readOnly = true)
+    public MessageResponseWrapper getMessages(String lanId, ExpirationFilter activeFilter, int limit, String after) throws RollbackException {
+        MessageCursor cursor = StringUtils.isEmpty(after) ? null : MessageCursor.decode(after);
+        boolean primaryRequired = isUserWriteRecent(lanId);
+        List<Message> messages = isCacheEnabled() ? this.getInboxCache().getMessagesPage(lanId, activeFilter, limit + 1, cursor, true) : null;
+        if( messages == null ){
+            messages = read(primaryRequired, () -> this.getInboxDao().getMessagesForUser(lanId, activeFilter, limit + 1, cursor));
+        }
+        MessageResponseWrapper wrapper = getMessagesPage(messages, limit);
+        if( cursor == null ){
+            addBroadcasts(wrapper, lanId, activeFilter, true, primaryRequired);
+        }
+        return wrapper;
+    }
+
+    /**
+     * Retrieves one page of message headers for the passed user's lan ID filtered by the "active" parameter
+     *
+     * The first page also carries the headers of the user's broadcasts, as for getMessages
+     *
+     * @param lanId
+     *      - the user's lan ID
+     * @param activeFilter
+     *      - the expiration filter
+     * @param limit
+     *      - the maximum number of messages to return
+     * @param after
+     *      - the next cursor of the previous page, null for the first page
+     * @return MessageResponseWrapper containing the retrieved Message headers and the next cursor
+     * @throws RollbackException
+     */
+    @Override
+    @Transactional(value = "flp", readOnly = true)
+    public MessageResponseWrapper getMessageHeaders(String lanId, ExpirationFilter activeFilter, int limit, String after) throws RollbackException {
+        MessageCursor cursor = StringUtils.isEmpty(after) ? null : MessageCursor.decode(after);
+        boolean primaryRequired = isUserWriteRecent(lanId);
+        List<Message> messages = isCacheEnabled() ? this.getInboxCache().getMessagesPage(lanId, activeFilter, limit + 1, cursor, false) : null;
+        if( messages == null ){
+            messages = read(primaryRequired, () -> this.getInboxDao().getMessageHeadersForUser(lanId, activeFilter, limit + 1, cursor));
+        }
+        MessageResponseWrapper wrapper = getMessagesPage(messages, limit);
+        if( cursor == null ){
+            addBroadcasts(wrapper, lanId, activeFilter, false, primaryRequired);
+        }
+        return wrapper;
+    }
+
+    /**
+     * Passes the messages for the passed user's lan ID filtered by the "active" parameter to the handler
+     * as they are read, without collecting them
+     *
+     * Streaming bypasses the inbox cache, which would hold the whole inbox in memory. The user's broadcasts
+     * follow the user's own messages, as for getMessages
+     *
+     * @param lanId
+     *      - the user's lan ID
+     * @param activeFilter
+     *      - the expiration filter
+     * @param handler
+     *      - receives each message
+     * @throws RollbackException
+     * @throws IOException if the handler fails to write a message
+     */
+    @Override
+    @Transactional(value = "flp", readOnly = true)
+    public void streamMessages(String lanId, ExpirationFilter activeFilter, MessageHandler handler) throws RollbackException, IOException {
+        boolean primaryRequired = ReplicaRoutingDataSource.setPrimaryRequired(ReplicaRoutingDataSource.isPrimaryRequired() || isUserWriteRecent(lanId));
+        try {
+            this.getInboxDao().streamMessagesForUser(lanId, activeFilter, handler);
+            for( Message broadcast : BroadcastCache.filter(getBroadcastsForUser(lanId, false), activeFilter) ){
+                handler.handle(broadcast);
+            }
+        } finally {
+            ReplicaRoutingDataSource.setPrimaryRequired(primaryRequired);
+        }
+    }
+
+    /**
+     * Retrieves the number of messages for the passed user's lan ID per message type and priority
+     *
+     * Counts are read from the maintained counters. Every type and priority is returned, with zero counts if the user has none.
+     * The global broadcasts the user has not dismissed are added to the counts
+     *
+     * @param lanId
+     *      - the user's lan ID
+     * @return MessageCountResponseWrapper containing one MessageCount per type and priority
+     * @throws RollbackException
+     */
+    @Override
+    @Transactional(value = "flp", readOnly = true)
+    public MessageCountResponseWrapper getMessageCounts(String lanId) throws RollbackException {
+        boolean primaryRequired = isUserWriteRecent(lanId);
+        Map<MessageType, Map<MessagePriority, MessageCount>> storedCounts = new EnumMap<MessageType, Map<MessagePriority, MessageCount>>(MessageType.class);
+        for( MessageCount count : read(primaryRequired, () -> this.getMessageCountDao().getMessageCounts(lanId)) ){
+            storedCounts.computeIfAbsent(count.getType(), type -> new EnumMap<MessagePriority, MessageCount>(MessagePriority.class))
+                    .put(count.getPriority(), count);
+        }
+
+        List<MessageCount> counts = new ArrayList<MessageCount>();
+        for( MessageType type : MessageType.values() ){
+            for( MessagePriority priority : MessagePriority.values() ){
+                if( type == MessageType.Invalid || priority == MessagePriority.Invalid ){
+                    continue;
+                }
+                MessageCount count = storedCounts.containsKey(type) ? storedCounts.get(type).get(priority) : null;
+                counts.add(count != null ? count : new MessageCount(type, priority, 0, 0));
+            }
+        }
+
+        List<Message> broadcasts = getBroadcastsForUser(lanId, primaryRequired);
+        if( !broadcasts.isEmpty() ){
+            counts = counts.stream().map(count -> addBroadcastCounts(count, broadcasts)).collect(Collectors.toList());
+        }
+        return new MessageCountResponseWrapper(counts);
+    }
+
+    /**
+     * Returns the global broadcasts the user has not dismissed, as messages of the user
+     *
+     * The broadcasts come from the broadcast cache. The user's dismissals are only read when there are broadcasts
+     *
+     * @param lanId
+     *      - the user's lan ID
+     * @param primaryRequired
+     *      - true right after the user's own write
+     * @return List of Message objects
+     * @throws RollbackException
+     */
+    private List<Message> getBroadcastsForUser(String lanId, boolean primaryRequired) throws RollbackException {
+        List<Message> broadcasts = read(primaryRequired, () -> this.getBroadcastCache() != null
+                ? this.getBroadcastCache().getBroadcasts(() -> this.getBroadcastDao().getBroadcasts())
+                : this.getBroadcastDao().getBroadcasts());
+        if( broadcasts.isEmpty() ){
+            return broadcasts;
+        }
+
+        Set<String> dismissed = read(primaryRequired, () -> this.getBroadcastDao().getDismissedBroadcastIds(lanId));
+        List<Message> userBroadcasts = new ArrayList<Message>(broadcasts.size());
+        for( Message broadcast : broadcasts ){
+            if( !dismissed.contains(broadcast.getId()) ){
+                userBroadcasts.add(toUserBroadcast(broadcast, lanId));
+            }
+        }
+        return userBroadcasts;
+    }
+
+    /**
+     * Adds the user's broadcasts matching the filter after the messages of the page, without their summaries for a header page
+     */
+    private void addBroadcasts(MessageResponseWrapper wrapper, String lanId, ExpirationFilter activeFilter, boolean summary, boolean primaryRequired) throws RollbackException {
+        List<Message> broadcasts = BroadcastCache.filter(getBroadcastsForUser(lanId, primaryRequired), activeFilter);
+        if( broadcasts.isEmpty() ){
+            return;
+        }
+        List<Message> messages = new ArrayList<Message>(wrapper.getMessages());
+        for( Message broadcast : broadcasts ){
+            if( !summary ){
+                broadcast.setSummary(null);
+            }
+            messages.add(broadcast);
+        }
+        wrapper.setMessage(messages);
+    }
+
+    /**
+     * Returns a copy of the broadcast addressed to the passed user, the cached broadcast is shared by every user
+     */
+    private static Message toUserBroadcast(Message broadcast, String lanId) {
+        Message message = new Message();
+        message.setId(broadcast.getId());
+        message.setLanId(lanId.trim());
+        message.setSummary(broadcast.getSummary());
+        message.setCreationDate(broadcast.getCreationDate());
+        message.setPriority(broadcast.getPriority());
+        message.setType(broadcast.getType());
+        message.setActionLink(broadcast.getActionLink());
+        message.setActionLabel(broadcast.getActionLabel());
+        message.setInternal(broadcast.isInternal());
+        message.setExpirationDate(broadcast.getExpirationDate());
+        message.setLastUpdtUser(broadcast.getLastUpdtUser());
+        return message;
+    }
+
+    /**
+     * Returns the count with the broadcasts of its type and priority added
+     */
+    private static MessageCount addBroadcastCounts(MessageCount count, List<Message> broadcasts) {
+        List<Message> matching = broadcasts.stream()
+                .filter(broadcast -> broadcast.getType() == count.getType() && broadcast.getPriority() == count.getPriority())
+                .collect(Collectors.toList());
+        if( matching.isEmpty() ){
+            return count;
+        }
+
+        MessageCount merged = new MessageCount(count.getType(), count.getPriority(),
+                count.getActive() + BroadcastCache.filter(matching, ExpirationFilter.ACTIVE).size(),
+                count.getInactive() + BroadcastCache.filter(matching, ExpirationFilter.INACTIVE).size());
+        merged.setAll(count.getAll() + matching.size());
+        return merged;
+    }
+
+    /**
+     * Returns true if reads go through the inbox cache
+     *
+     * @return boolean
+     */
+    private boolean isCacheEnabled() {
+        return this.getInboxCache() != null && this.getInboxCache().isEnabled();
+    }
+
+    private boolean isUserWriteRecent(String lanId) {
+        return this.getReadYourWritesTracker() != null && this.getReadYourWritesTracker().isUserWriteRecent(lanId);
+    }
+
+    private boolean isMessageWriteRecent(String msgId) {
+        return this.getReadYourWritesTracker() != null && this.getReadYourWritesTracker().isMessageWriteRecent(msgId);
+    }
+
+    /**
+     * Runs the read, on the primary if primaryRequired is set, and on a replica otherwise when in a read-only transaction
+     *
+     * The connection is only routed on the transaction's first statement, so primaryRequired has to be set
+     * by the first read of the transaction
+     *
+     * @param primaryRequired
+     *      - true right after the caller's own write, which a replica may not have yet
+     * @param read
+     * @return the read's result
+     * @throws RollbackException
+     */
+    private static <T> T read(boolean primaryRequired, Read<T> read) throws RollbackException {
+        boolean previous = ReplicaRoutingDataSource.setPrimaryRequired(ReplicaRoutingDataSource.isPrimaryRequired() || primaryRequired);
+        try {
+            return read.read();
+        } finally {
+            ReplicaRoutingDataSource.setPrimaryRequired(previous);
+        }
+    }
+
+    /**
+     * Returns the hex SHA-256 of the create request's JSON
+     */
+    private static String hashRequest(Message message, List<String> lanIds, List<String> groups, DedupeMode dedupe) throws RollbackException {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(OBJECT_MAPPER.writeValueAsBytes(new CreateMessageRequest(message, lanIds, groups, dedupe)));
+            return String.format("%064x", new BigInteger(1, digest));
+        } catch (IOException | NoSuchAlgorithmException ex) {
+            throw new RollbackException(Constants.ERROR_STORING_IDEMPOTENCY_KEY + ex);
+        }
+    }
+
+    /**
+     * Returns the response stored for the key, provided it was stored for the same request
+     */
+    private static MessageResponseWrapper replayResponse(IdempotencyRecord record, String requestHash) throws RollbackException, FormValidationException {
+        if( !record.getRequestHash().equals(requestHash) ){
+            throw new FormValidationException(Constants.INVALID_FORM_DATA, Collections.singletonList(
+                    new BaseError(Constants.IDEMPOTENCY_KEY_HEADER, Constants.IDEMPOTENCY_KEY_REUSED + record.getKey())));
+        }
+        try {
+            return OBJECT_MAPPER.readValue(record.getResponse(), MessageResponseWrapper.class);
+        } catch (IOException ex) {
+            throw new RollbackException(Constants.ERROR_REPLAYING_IDEMPOTENT_RESPONSE + record.getKey() + ": " + ex);
+        }
+    }
+
+    /**
+     * Sends the passed users' and messages' reads to the primary for the read-your-writes window
+     *
+     * @param lanIds
+     * @param msgIds
+     */
+    private void recordWrites(Collection<String> lanIds, Collection<String> msgIds) {
+        if( this.getReadYourWritesTracker() != null ){
+            this.getReadYourWritesTracker().recordUserWrites(lanIds);
+            this.getReadYourWritesTracker().recordMessageWrites(msgIds);
+        }
+    }
+
+    /**
+     * Trims the messages read with one extra row down to the page and sets the next cursor if rows were left over
+     *
+     * @param messages
+     * @param limit
+     * @return MessageResponseWrapper
+     */
+    private static MessageResponseWrapper getMessagesPage(List<Message> messages, int limit) {
+        String nextCursor = null;
+        if( messages.size() > limit ){
+            messages = new ArrayList<Message>(messages.subList(0, limit));
+            nextCursor = MessageCursor.fromMessage(messages.get(limit - 1)).encode();
+        }
+
+        MessageResponseWrapper wrapper = new MessageResponseWrapper(messages);
+        wrapper.setNextCursor(nextCursor);
+        return wrapper;
+    }
+
     /**
      * Stores the message for the given list of user lan IDs
      *
@@ -88,18 +693,475 @@ public class InboxServiceImpl implements InboxService {
     @Override
     @Transactional(value = "flp", readOnly = false, propagation = Propagation.REQUIRES_NEW, rollbackFor = {RuntimeException.class, RollbackException.class})
     public MessageResponseWrapper createMessage(Message message, List<String> lanIds) throws RollbackException {
+        //Runs in this transaction, the call does not go through the transactional proxy
+        return createMessage(message, lanIds, DedupeMode.None);
+    }
+
+    /**
+     * Stores the message for the given list of user lan IDs, skipping or refreshing the recipients that already
+     * have an active message with the same content
+     *
+     * With DedupeMode.Skip the existing message is returned in place of a new one. With DedupeMode.Refresh the
+     * existing message is moved to the top of the inbox with the new priority and expiration date, and the
+     * recipient's counts are recomputed since the priority may have changed.
+     *
+     * @param message
+     *      - the message to store
+     * @param lanIds
+     *      - the list of user's lan IDs
+     * @param dedupe
+     *      - how recipients with an identical active message are treated, null for DedupeMode.None
+     * @return MessageResponseWrapper containing the created, skipped and refreshed Message objects
+     * @throws RollbackException
+     */
+    @Override
+    @Transactional(value = "flp", readOnly = false, propagation = Propagation.REQUIRES_NEW, rollbackFor = {RuntimeException.class, RollbackException.class})
+    public MessageResponseWrapper createMessage(Message message, List<String> lanIds, DedupeMode dedupe) throws RollbackException {
         //Java 8 lambda function for removing duplicate Strings ignoring case and trailing white space
         Set<String> sanitizedLanIds = lanIds.stream().map(lanId -> lanId.toLowerCase().trim()).collect(Collectors.toSet());
 
+        return new MessageResponseWrapper(createMessageForRecipients(message, sanitizedLanIds, dedupe));
+    }
+
+    /**
+     * Stores the message for the given lan IDs and for the members of the named recipient groups
+     *
+     * The members are never collected in one list: they are read a page of groupPageSize lan IDs at a time,
+     * in lan ID order, and each page is stored like a create request for those lan IDs before the next page is read.
+     * Every page runs in this transaction, so a failing page stores nothing. A recipient listed in lanIds or in
+     * several groups receives the message once
+     *
+     * @param message
+     *      - the message to store
+     * @param lanIds
+     *      - the list of user's lan IDs, may be empty when groups are passed
+     * @param groups
+     *      - the names of stored recipient groups, may be null
+     * @param dedupe
+     *      - how recipients with an identical active message are treated, null for DedupeMode.None
+     * @return MessageResponseWrapper containing the created, skipped and refreshed Message objects
+     * @throws ResourceNotFoundException if a group is not stored
+     * @throws RollbackException
+     */
+    @Override
+    @Transactional(value = "flp", readOnly = false, propagation = Propagation.REQUIRES_NEW, rollbackFor = {RuntimeException.class, RollbackException.class})
+    public MessageResponseWrapper createMessage(Message message, List<String> lanIds, List<String> groups, DedupeMode dedupe) throws RollbackException {
+        if( groups == null || groups.isEmpty() ){
+            //Runs in this transaction, the call does not go through the transactional proxy
+            return createMessage(message, lanIds, dedupe);
+        }
+
+        Set<String> sanitizedLanIds = lanIds == null ? Collections.<String>emptySet()
+                : lanIds.stream().map(lanId -> lanId.toLowerCase().trim()).collect(Collectors.toSet());
+        Set<String> groupNames = new LinkedHashSet<String>(groups);
+        List<String> missingGroups = new ArrayList<String>(groupNames);
+        missingGroups.removeAll(this.getRecipientGroupDao().getGroupNames(groupNames));
+        if( !missingGroups.isEmpty() ){
+            throw new ResourceNotFoundException(Constants.RECIPIENT_GROUP_NOT_FOUND + String.join(", ", missingGroups));
+        }
+
         List<Message> returnedMessages = new ArrayList<Message>();
-        for( String lanId : sanitizedLanIds ){
-            message.setLanId(lanId);
-            returnedMessages.add(this.getInboxDao().createMessage(message));
+        if( !sanitizedLanIds.isEmpty() ){
+            returnedMessages.addAll(createMessageForRecipients(message, sanitizedLanIds, dedupe));
         }
 
+        List<String> members;
+        String afterLanId = "";
+        do {
+            members = this.getRecipientGroupDao().getMembersPage(groupNames, afterLanId, groupPageSize);
+            if( !members.isEmpty() ){
+                afterLanId = members.get(members.size() - 1);
+                Set<String> pageLanIds = new LinkedHashSet<String>(members);
+                pageLanIds.removeAll(sanitizedLanIds);
+                if( !pageLanIds.isEmpty() ){
+                    returnedMessages.addAll(createMessageForRecipients(message, pageLanIds, dedupe));
+                }
+            }
+        } while( members.size() == groupPageSize );
+
         return new MessageResponseWrapper(returnedMessages);
     }
 
+    /**
+     * Stores the message for the passed sanitized lan IDs, skipping or refreshing the duplicates as the dedupe mode asks
+     *
+     * @param message
+     * @param sanitizedLanIds
+     *      - lower case, trimmed and distinct lan IDs
+     * @param dedupe
+     * @return List of the created, skipped and refreshed Message objects
+     * @throws RollbackException
+     */
+    private List<Message> createMessageForRecipients(Message message, Set<String> sanitizedLanIds, DedupeMode dedupe) throws RollbackException {
+        Map<String, Message> duplicates = Collections.emptyMap();
+        if( dedupe == DedupeMode.Skip || dedupe == DedupeMode.Refresh ){
+            duplicates = this.getInboxDao().getDuplicateMessages(message, sanitizedLanIds);
+        }
+        Set<String> newLanIds = sanitizedLanIds;
+        if( !duplicates.isEmpty() ){
+            newLanIds = new HashSet<String>(sanitizedLanIds);
+            newLanIds.removeAll(duplicates.keySet());
+        }
+
+        List<Message> returnedMessages = new ArrayList<Message>(sanitizedLanIds.size());
+        if( !newLanIds.isEmpty() ){
+            returnedMessages.addAll(this.getInboxDao().createMessages(message, newLanIds));
+            this.getMessageCountDao().incrementCounts(message, newLanIds);
+        }
+        if( !duplicates.isEmpty() ){
+            if( dedupe == DedupeMode.Refresh ){
+                List<Long> duplicateIds = duplicates.values().stream().map(duplicate -> Long.valueOf(duplicate.getId())).collect(Collectors.toList());
+                this.getInboxDao().refreshMessages(message, duplicateIds);
+                this.getMessageCountDao().recountMessages(duplicates.keySet());
+                returnedMessages.addAll(this.getInboxDao().getMessagesByIds(duplicateIds));
+            } else {
+                returnedMessages.addAll(duplicates.values());
+            }
+        }
+        recordCreatedMessages(sanitizedLanIds, returnedMessages);
+        return returnedMessages;
+    }
+
+    /**
+     * Renders the registered template once per recipient and stores the rendered messages in a single transaction
+     *
+     * Every recipient is rendered and checked before the first insert, so a request with a missing placeholder
+     * value or an over-long rendered message stores nothing. The rendered messages are inserted in JDBC batches
+     *
+     * @param templateId
+     *      - the ID of the registered template
+     * @param recipients
+     *      - the values of the template's {name} placeholders keyed by recipient lan ID
+     * @param expirationDate
+     *      - the expiration date of the messages in Sybase format, required for Information templates
+     * @return MessageResponseWrapper containing the created Message objects
+     * @throws FormValidationException if a recipient is missing a placeholder value or a rendered message is invalid
+     * @throws RollbackException
+     */
+    @Override
+    @Transactional(value = "flp", readOnly = false, propagation = Propagation.REQUIRES_NEW, rollbackFor = {RuntimeException.class, RollbackException.class})
+    public MessageResponseWrapper createTemplatedMessage(String templateId, Map<String, Map<String, String>> recipients, String expirationDate) throws RollbackException, FormValidationException {
+        Message template = this.getMessageTemplateDao().getTemplate(templateId);
+        if( template.getType() == MessageType.Information && StringUtils.isEmpty(expirationDate) ){
+            throw new FormValidationException(Constants.INVALID_FORM_DATA, Collections.singletonList(
+                    new BaseError(Constants.MSG_EXP_DATE_FIELD, Constants.MISSING_NULL_EMPTY_FIELD + Constants.MSG_EXP_DATE_FIELD)));
+        }
+
+        //Lan IDs differing only in case or trailing white space are one recipient, the last one's values are used
+        Map<String, Map<String, String>> sanitizedRecipients = new LinkedHashMap<String, Map<String, String>>();
+        recipients.forEach((lanId, parameters) -> sanitizedRecipients.put(lanId.toLowerCase().trim(), parameters));
+
+        MessageTemplateRenderer renderer = new MessageTemplateRenderer(template);
+        List<Message> messages = new ArrayList<Message>(sanitizedRecipients.size());
+        List<BaseError> errors = new ArrayList<BaseError>();
+        for( Map.Entry<String, Map<String, String>> recipient : sanitizedRecipients.entrySet() ){
+            Set<String> missingParameters = renderer.getMissingParameters(recipient.getValue());
+            if( !missingParameters.isEmpty() ){
+                errors.addAll(MessageTemplateValidator.getMissingParameterErrors(recipient.getKey(), missingParameters));
+                continue;
+            }
+            Message message = renderer.render(recipient.getKey(), recipient.getValue(), expirationDate);
+            errors.addAll(MessageTemplateValidator.validateRenderedMessage(message));
+            messages.add(message);
+        }
+        if( !errors.isEmpty() ){
+            throw new FormValidationException(Constants.INVALID_FORM_DATA, errors);
+        }
+
+        List<Message> storedMessages = this.getInboxDao().createMessages(messages);
+        //Type, priority and expiration date come from the template and the request, so every rendered message counts alike
+        this.getMessageCountDao().incrementCounts(messages.get(0), sanitizedRecipients.keySet());
+        recordCreatedMessages(sanitizedRecipients.keySet(), storedMessages);
+        return new MessageResponseWrapper(storedMessages);
+    }
+
+    /**
+     * Registers the passed message as a template, replacing the template stored under the same ID
+     *
+     * @param templateId
+     *      - the template ID
+     * @param template
+     *      - the validated template message
+     * @return MessageResponseWrapper containing the stored template
+     * @throws RollbackException
+     */
+    @Override
+    @Transactional(value = "flp", readOnly = false, propagation = Propagation.REQUIRES_NEW, rollbackFor = {RuntimeException.class, RollbackException.class})
+    public MessageResponseWrapper saveMessageTemplate(String templateId, Message template) throws RollbackException {
+        this.getMessageTemplateDao().saveTemplate(templateId, template);
+        return new MessageResponseWrapper(this.getMessageTemplateDao().getTemplate(templateId));
+    }
+
+    /**
+     * Retrieves the template registered under the passed ID
+     *
+     * Templates are read from the primary, a sender usually creates messages right after registering a template
+     *
+     * @param templateId
+     *      - the template ID
+     * @return MessageResponseWrapper containing the template
+     * @throws RollbackException
+     */
+    @Override
+    @Transactional(value = "flp", readOnly = true)
+    public MessageResponseWrapper getMessageTemplate(String templateId) throws RollbackException {
+        return new MessageResponseWrapper(read(true, () -> this.getMessageTemplateDao().getTemplate(templateId)));
+    }
+
+    /**
+     * Adds and removes members of the named recipient group, creating the group on its first update
+     *
+     * The version is incremented before the members change, which holds the group's row lock until the commit,
+     * so concurrent updates of one group are applied one after the other. A lan ID passed in both lists ends up a member
+     *
+     * @param groupName
+     *      - the group name
+     * @param add
+     *      - the lan IDs to add, may be null
+     * @param remove
+     *      - the lan IDs to remove, may be null
+     * @param version
+     *      - the group version the deltas were computed against, null to apply them to any version, 0 to only create the group
+     * @param lastUpdtUser
+     *      - the user updating the group
+     * @return RecipientGroupResponseWrapper containing the updated group
+     * @throws FormValidationException if the group is no longer at the passed version
+     * @throws ResourceNotFoundException if a version other than 0 is passed for a group that is not stored
+     * @throws RollbackException
+     */
+    @Override
+    @Transactional(value = "flp", readOnly = false, propagation = Propagation.REQUIRES_NEW, rollbackFor = {RuntimeException.class, RollbackException.class})
+    public RecipientGroupResponseWrapper updateRecipientGroup(String groupName, List<String> add, List<String> remove, Integer version, String lastUpdtUser) throws RollbackException, FormValidationException {
+        boolean createOnly = version != null && version == 0;
+        boolean updated = !createOnly && this.getRecipientGroupDao().incrementVersion(groupName, version, lastUpdtUser);
+        if( !updated && (version == null || createOnly) ){
+            //A concurrent first update may have inserted the group in between, it is then updated at any version
+            updated = this.getRecipientGroupDao().insertGroup(groupName, lastUpdtUser)
+                    || (version == null && this.getRecipientGroupDao().incrementVersion(groupName, null, lastUpdtUser));
+        }
+        if( !updated ){
+            int currentVersion = this.getRecipientGroupDao().getGroup(groupName).getVersion();
+            throw new FormValidationException(Constants.INVALID_FORM_DATA, Collections.singletonList(
+                    new BaseError(Constants.REQUEST_VERSION_FIELD, Constants.RECIPIENT_GROUP_VERSION_CONFLICT + currentVersion)));
+        }
+
+        if( remove != null && !remove.isEmpty() ){
+            this.getRecipientGroupDao().removeMembers(groupName, remove.stream().map(lanId -> lanId.toLowerCase().trim()).collect(Collectors.toSet()));
+        }
+        if( add != null && !add.isEmpty() ){
+            this.getRecipientGroupDao().addMembers(groupName, add.stream().map(lanId -> lanId.toLowerCase().trim()).collect(Collectors.toSet()));
+        }
+        return new RecipientGroupResponseWrapper(this.getRecipientGroupDao().getGroup(groupName));
+    }
+
+    /**
+     * Retrieves the named recipient group's version and member count
+     *
+     * Groups are read from the primary, a sender usually addresses a group right after updating it
+     *
+     * @param groupName
+     *      - the group name
+     * @return RecipientGroupResponseWrapper containing the group
+     * @throws RollbackException
+     */
+    @Override
+    @Transactional(value = "flp", readOnly = true)
+    public RecipientGroupResponseWrapper getRecipientGroup(String groupName) throws RollbackException {
+        return new RecipientGroupResponseWrapper(read(true, () -> this.getRecipientGroupDao().getGroup(groupName)));
+    }
+
+    /**
+     * Stores the passed message once as a global broadcast, shown to every user
+     *
+     * The write is a single row whatever the number of users. Other nodes show the broadcast once the
+     * invalidation published with it reaches them
+     *
+     * @param message
+     *      - the broadcast message, its lan ID is ignored
+     * @return MessageResponseWrapper containing the stored broadcast
+     * @throws RollbackException
+     */
+    @Override
+    @Transactional(value = "flp", readOnly = false, propagation = Propagation.REQUIRES_NEW, rollbackFor = {RuntimeException.class, RollbackException.class})
+    public MessageResponseWrapper createBroadcast(Message message) throws RollbackException {
+        Message broadcast = this.getBroadcastDao().insertBroadcast(message);
+        if( this.getBroadcastCache() != null ){
+            this.getBroadcastCache().invalidate();
+        }
+        return new MessageResponseWrapper(broadcast);
+    }
+
+    /**
+     * Deletes the global broadcast and its dismissals for every user
+     *
+     * @param broadcastId
+     *      - the broadcast ID, "B" followed by an integer
+     * @return MessageResponseWrapper containing the deleted broadcast
+     * @throws ResourceNotFoundException if the broadcast does not exist
+     * @throws RollbackException
+     */
+    @Override
+    @Transactional(value = "flp", readOnly = false, propagation = Propagation.REQUIRES_NEW, rollbackFor = {RuntimeException.class, RollbackException.class})
+    public MessageResponseWrapper deleteBroadcast(String broadcastId) throws RollbackException {
+        Long id = parseBroadcastId(broadcastId);
+        if( id == null ){
+            throw new ResourceNotFoundException(Constants.BROADCAST_NOT_FOUND + broadcastId);
+        }
+
+        Message broadcast = this.getBroadcastDao().getBroadcast(id);
+        if( this.getBroadcastCache() != null ){
+            this.getBroadcastCache().invalidate();
+        }
+        if( !this.getBroadcastDao().deleteBroadcast(id) ){
+            throw new ResourceNotFoundException(Constants.BROADCAST_NOT_FOUND + broadcastId);
+        }
+        return new MessageResponseWrapper(broadcast);
+    }
+
+    /**
+     * Records that the user dismissed the broadcast, which stays stored for every other user
+     *
+     * Task broadcasts cannot be dismissed, like Task messages cannot be deleted. A broadcast the user
+     * already dismissed maps to 404, like a message that was already deleted
+     *
+     * @param lanId
+     *      - the user's lan ID
+     * @param broadcastId
+     *      - the numeric broadcast ID
+     * @return MessageResponseWrapper containing the dismissed broadcast as a message of the user
+     * @throws RollbackException
+     */
+    private MessageResponseWrapper dismissBroadcast(String lanId, long broadcastId) throws RollbackException {
+        Message broadcast = this.getBroadcastDao().getBroadcast(broadcastId);
+        if( broadcast.getType() == MessageType.Task ){
+            throw new AccessDeniedException(Constants.ERROR_ACCESS_DENIED);
+        }
+        if( !this.getBroadcastDao().dismissBroadcast(broadcastId, lanId.trim()) ){
+            throw new ResourceNotFoundException(Constants.MSG_NOT_FOUND + broadcast.getId());
+        }
+        recordWrites(Collections.singleton(lanId), Collections.<String>emptySet());
+        return new MessageResponseWrapper(toUserBroadcast(broadcast, lanId));
+    }
+
+    /**
+     * Drops the cached entries of the created messages and their recipients and records the writes
+     *
+     * @param lanIds
+     *      - the recipients' lan IDs
+     * @param createdMessages
+     *      - the stored messages
+     * @throws RollbackException
+     */
+    private void recordCreatedMessages(Set<String> lanIds, List<Message> createdMessages) throws RollbackException {
+        List<String> msgIds = createdMessages.stream().map(Message::getId).collect(Collectors.toList());
+        if( this.getMessageCache() != null ){
+            //Drops not found entries cached for the new IDs
+            this.getMessageCache().invalidate(msgIds);
+        }
+        if( isCacheEnabled() ){
+            this.getInboxCache().invalidate(lanIds);
+        }
+        recordWrites(lanIds, msgIds);
+    }
+
+    /**
+     * Stores the message for each of the passed lan IDs once per idempotency key
+     *
+     * The key is claimed before the messages are inserted, in the same transaction, so a concurrent request
+     * with the same key waits on the claim and then replays the committed response. A replay returns the
+     * response of the first request without touching dbo.inbx_msg.
+     *
+     * @param message
+     *      - the message to store
+     * @param lanIds
+     *      - the recipients' lan IDs
+     * @param dedupe
+     *      - how recipients with an identical active message are treated, null for DedupeMode.None
+     * @param idempotencyKey
+     *      - the caller's key for this request
+     * @return MessageResponseWrapper containing the stored Message objects
+     * @throws FormValidationException if the key was used for a different request
+     * @throws RollbackException
+     */
+    @Override
+    @Transactional(value = "flp", readOnly = false, propagation = Propagation.REQUIRES_NEW, rollbackFor = {RuntimeException.class, RollbackException.class})
+    public MessageResponseWrapper createMessage(Message message, List<String> lanIds, DedupeMode dedupe, String idempotencyKey) throws RollbackException, FormValidationException {
+        //Runs in this transaction, the call does not go through the transactional proxy
+        return createMessage(message, lanIds, null, dedupe, idempotencyKey);
+    }
+
+    /**
+     * Stores the message for the passed lan IDs and the members of the named recipient groups once per idempotency key
+     *
+     * @param message
+     *      - the message to store
+     * @param lanIds
+     *      - the recipients' lan IDs, may be empty when groups are passed
+     * @param groups
+     *      - the names of stored recipient groups, may be null
+     * @param dedupe
+     *      - how recipients with an identical active message are treated, null for DedupeMode.None
+     * @param idempotencyKey
+     *      - the caller's key for this request
+     * @return MessageResponseWrapper containing the stored Message objects
+     * @throws FormValidationException if the key was used for a different request
+     * @throws RollbackException
+     */
+    @Override
+    @Transactional(value = "flp", readOnly = false, propagation = Propagation.REQUIRES_NEW, rollbackFor = {RuntimeException.class, RollbackException.class})
+    public MessageResponseWrapper createMessage(Message message, List<String> lanIds, List<String> groups, DedupeMode dedupe, String idempotencyKey) throws RollbackException, FormValidationException {
+        String key = idempotencyKey.trim();
+        String requestHash = hashRequest(message, lanIds, groups, dedupe);
+
+        IdempotencyRecord record = this.getIdempotencyCache() != null ? this.getIdempotencyCache().get(key) : null;
+        if( record == null && !this.getIdempotencyDao().insertKey(key, requestHash) ){
+            record = this.getIdempotencyDao().getRecord(key);
+            if( record == null || record.getResponse() == null ){
+                //Only possible if the sweeper deleted the key in between
+                throw new RollbackException(Constants.ERROR_REPLAYING_IDEMPOTENT_RESPONSE + key);
+            }
+        }
+        if( record != null ){
+            return replayResponse(record, requestHash);
+        }
+
+        //Runs in this transaction, the call does not go through the transactional proxy
+        MessageResponseWrapper wrapper = createMessage(message, lanIds, groups, dedupe);
+        String response;
+        try {
+            response = OBJECT_MAPPER.writeValueAsString(wrapper);
+        } catch (IOException ex) {
+            throw new RollbackException(Constants.ERROR_STORING_IDEMPOTENCY_KEY + ex);
+        }
+        this.getIdempotencyDao().updateResponse(key, response);
+        if( this.getIdempotencyCache() != null ){
+            //Registered for afterCommit, a rolled back key must not answer the retry
+            this.getIdempotencyCache().put(new IdempotencyRecord(key, requestHash, response));
+        }
+        return wrapper;
+    }
+
+    /**
+     * Stores the messages of all passed create requests in a single transaction, once per idempotency key
+     *
+     * Used by the async ingest queue, so a burst of small requests costs one commit per batch instead of one per request.
+     * The keys make a batch replayed after a crash between its commit and the journal checkpoint a no-op.
+     *
+     * @param requests
+     *      - validated create requests by idempotency key, in the order to apply them
+     * @throws FormValidationException if a key was used for a different request
+     * @throws RollbackException
+     */
+    @Override
+    @Transactional(value = "flp", readOnly = false, propagation = Propagation.REQUIRES_NEW, rollbackFor = {RuntimeException.class, RollbackException.class, FormValidationException.class})
+    public void createMessages(Map<String, CreateMessageRequest> requests) throws RollbackException, FormValidationException {
+        for( Map.Entry<String, CreateMessageRequest> entry : requests.entrySet() ){
+            CreateMessageRequest request = entry.getValue();
+            //Runs in this transaction, the call does not go through the transactional proxy
+            createMessage(request.getMessage(), request.getLanIds(), request.getGroups(), request.getDedupe(), entry.getKey());
+        }
+    }
+
     /**
      * Deletes the stored message give its message ID
      * @param msgId
@@ -110,10 +1172,144 @@ public class InboxServiceImpl implements InboxService {
     @Override
     @Transactional(value = "flp", readOnly = false, propagation = Propagation.REQUIRES_NEW, rollbackFor = {RuntimeException.class, RollbackException.class})
     public MessageResponseWrapper deleteMessage(String msgId) throws RollbackException {
+        if( this.getMessageCache() != null ){
+            this.getMessageCache().invalidate(Collections.singleton(msgId));
+        }
+        this.getMessageCountDao().decrementCount(msgId);
         Message message = this.getInboxDao().deleteMessage(msgId);
+        if( isCacheEnabled() ){
+            this.getInboxCache().invalidate(Collections.singleton(message.getLanId()));
+        }
+        recordWrites(Collections.singleton(message.getLanId()), Collections.singleton(msgId));
+        return new MessageResponseWrapper(message);
+    }
+
+    /**
+     * Deletes the stored message given its message ID if it is owned by the passed user and is not a Task
+     *
+     * The owner-scoped delete runs first and its counter is decremented from the deleted row. Only when
+     * nothing was deleted is the message probed by ID, to tell a missing message (404) from another
+     * user's message or a Task (403).
+     *
+     * A global broadcast ID records the user's dismissal of the broadcast instead, see dismissBroadcast
+     *
+     * @param lanId
+     *      - the owner's lan ID
+     * @param msgId
+     *      - the integer message ID, or a broadcast ID
+     * @return MessageResponseWrapper containing the deleted Message object
+     * @throws ResourceNotFoundException if the message does not exist
+     * @throws AccessDeniedException if the message belongs to another user or is a Task
+     * @throws RollbackException
+     */
+    @Override
+    @Transactional(value = "flp", readOnly = false, propagation = Propagation.REQUIRES_NEW, rollbackFor = {RuntimeException.class, RollbackException.class})
+    public MessageResponseWrapper deleteMessageForUser(String lanId, String msgId) throws RollbackException {
+        Long broadcastId = parseBroadcastId(msgId);
+        if( broadcastId != null ){
+            return dismissBroadcast(lanId, broadcastId);
+        }
+
+        UserDeleteResult result = this.getInboxDao().deleteMessageForUser(msgId, lanId);
+        if( result.getStatus() == UserDeleteResult.Status.NotFound ){
+            throw new ResourceNotFoundException(Constants.MSG_NOT_FOUND + msgId);
+        }
+        if( result.getStatus() == UserDeleteResult.Status.Forbidden ){
+            throw new AccessDeniedException(Constants.ERROR_ACCESS_DENIED);
+        }
+
+        //Only the delete that removed the row counts it down
+        Message message = result.getMessage();
+
+        if( this.getMessageCache() != null ){
+            this.getMessageCache().invalidate(Collections.singleton(msgId));
+        }
+        this.getMessageCountDao().decrementCount(message);
+        if( isCacheEnabled() ){
+            this.getInboxCache().invalidate(Collections.singleton(message.getLanId()));
+        }
+        recordWrites(Collections.singleton(message.getLanId()), Collections.singleton(msgId));
         return new MessageResponseWrapper(message);
     }
 
+    /**
+     * Deletes the stored messages given their message IDs in a single transaction
+     *
+     * The messages are read and deleted with chunked IN lists, and the counters of their owners are
+     * rebuilt once afterwards. IDs that are not integers are reported as Invalid, IDs that do not
+     * exist as NotFound.
+     *
+     * @param msgIds
+     *      - the integer message IDs
+     * @return DeleteMessagesResponseWrapper containing the outcome of each message ID, in request order
+     * @throws RollbackException
+     */
+    @Override
+    @Transactional(value = "flp", readOnly = false, propagation = Propagation.REQUIRES_NEW, rollbackFor = {RuntimeException.class, RollbackException.class})
+    public DeleteMessagesResponseWrapper deleteMessages(List<String> msgIds) throws RollbackException {
+        Set<Long> ids = new LinkedHashSet<Long>();
+        for( String msgId : msgIds ){
+            Long id = parseMessageId(msgId);
+            if( id != null ){
+                ids.add(id);
+            }
+        }
+
+        Set<Long> deletedIds = new HashSet<Long>();
+        Set<String> lanIds = new HashSet<String>();
+        if( !ids.isEmpty() ){
+            for( Message message : this.getInboxDao().getMessagesByIds(ids) ){
+                deletedIds.add(Long.valueOf(message.getId().trim()));
+                lanIds.add(message.getLanId().toLowerCase().trim());
+            }
+        }
+
+        if( !deletedIds.isEmpty() ){
+            if( this.getMessageCache() != null ){
+                this.getMessageCache().invalidate(deletedIds.stream().map(String::valueOf).collect(Collectors.toList()));
+            }
+            this.getInboxDao().deleteMessages(deletedIds);
+            this.getMessageCountDao().recountMessages(lanIds);
+            if( isCacheEnabled() ){
+                this.getInboxCache().invalidate(lanIds);
+            }
+            recordWrites(lanIds, deletedIds.stream().map(String::valueOf).collect(Collectors.toList()));
+        }
+
+        List<DeleteMessageResult> results = new ArrayList<DeleteMessageResult>(msgIds.size());
+        for( String msgId : msgIds ){
+            Long id = parseMessageId(msgId);
+            DeleteMessageStatus status = id == null ? DeleteMessageStatus.Invalid :
+                    deletedIds.contains(id) ? DeleteMessageStatus.Deleted : DeleteMessageStatus.NotFound;
+            results.add(new DeleteMessageResult(msgId, status));
+        }
+        return new DeleteMessagesResponseWrapper(results);
+    }
+
+    private static Long parseBroadcastId(String msgId) {
+        if( msgId == null || !msgId.trim().startsWith(Constants.BROADCAST_ID_PREFIX) ){
+            return null;
+        }
+        try {
+            long id = Long.parseLong(msgId.trim().substring(Constants.BROADCAST_ID_PREFIX.length()));
+            return id > 0 ? id : null;
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private static Long parseMessageId(String msgId) {
+        if( msgId == null ){
+            return null;
+        }
+        try {
+            long id = Long.parseLong(msgId.trim());
+            return id > 0 ? id : null;
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
     /**
      * Deletes all expired information messages for the passed user's lan ID
      *
@@ -125,7 +1321,16 @@ public class InboxServiceImpl implements InboxService {
     @Override
     @Transactional(value = "flp", readOnly = false, propagation = Propagation.REQUIRES_NEW, rollbackFor = {RuntimeException.class, RollbackException.class})
     public BaseResponseWrapper deleteExpiredMessages(String lanId) throws RollbackException {
+        //Counters first, so a counter expiring in between outlives its messages until the sweeper recounts it
+        this.getMessageCountDao().deleteExpiredCounts(lanId);
         this.getInboxDao().deleteExpiredMessages(lanId);
+        if( this.getMessageCache() != null ){
+            this.getMessageCache().evictUser(lanId);
+        }
+        if( isCacheEnabled() ){
+            this.getInboxCache().invalidate(Collections.singleton(lanId));
+        }
+        recordWrites(Collections.singleton(lanId), Collections.<String>emptyList());
         return new BaseResponseWrapper();
     }
 }
@@ -0,0 +1,30 @@
+package gov.nsf.inboxservice.service;
+
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.common.model.ExpirationFilter;
+import gov.nsf.inboxservice.dao.MessageHandler;
+
+import java.io.IOException;
+
+/**
+ * InboxStreamService interface
+ *
+ * Streaming reads, which only make sense inside the service and are not offered by the client
+ */
+public interface InboxStreamService {
+
+    /**
+     * Passes the messages for the passed user's lan ID filtered by the "active" parameter to the handler
+     * as they are read, without collecting them
+     *
+     * @param lanId
+     *      - the user's lan ID
+     * @param activeFilter
+     *      - the expiration filter
+     * @param handler
+     *      - receives each message
+     * @throws RollbackException
+     * @throws IOException if the handler fails to write a message
+     */
+    public void streamMessages(String lanId, ExpirationFilter activeFilter, MessageHandler handler) throws RollbackException, IOException;
+}
@@ -0,0 +1,157 @@
+package gov.nsf.inboxservice.service;
+
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessageType;
+import org.apache.commons.lang3.StringEscapeUtils;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Renders a message template for a recipient by replacing its {name} placeholders
+ *
+ * The template is parsed once, so rendering it for each recipient of a large request only concatenates strings.
+ * Placeholder values are escaped for where they land: HTML in the summary, URL encoding in the action link,
+ * and as is in the plain text action label
+ */
+public class MessageTemplateRenderer {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{([A-Za-z0-9_]+)\\}");
+
+    private interface Escaper {
+        String escape(String value);
+    }
+
+    private static final Escaper HTML = StringEscapeUtils::escapeHtml4;
+    private static final Escaper URL = MessageTemplateRenderer::encodeUrl;
+    private static final Escaper NONE = value -> value;
+
+    private final Message template;
+    private final Text summary;
+    private final Text actionLink;
+    private final Text actionLabel;
+    private final Set<String> placeholders = new LinkedHashSet<String>();
+
+    /**
+     * Text split at its placeholders, literals[i] precedes names[i] and the last literal ends the text
+     */
+    private static class Text {
+        private final List<String> literals = new ArrayList<String>();
+        private final List<String> names = new ArrayList<String>();
+
+        private Text(String text) {
+            Matcher matcher = PLACEHOLDER.matcher(text);
+            int end = 0;
+            while( matcher.find() ){
+                literals.add(text.substring(end, matcher.start()));
+                names.add(matcher.group(1));
+                end = matcher.end();
+            }
+            literals.add(text.substring(end));
+        }
+
+        private String render(Map<String, String> parameters, Escaper escaper) {
+            if( names.isEmpty() ){
+                return literals.get(0);
+            }
+            StringBuilder rendered = new StringBuilder();
+            for( int i = 0; i < names.size(); i++ ){
+                rendered.append(literals.get(i)).append(escaper.escape(parameters.get(names.get(i))));
+            }
+            return rendered.append(literals.get(names.size())).toString();
+        }
+    }
+
+    /**
+     * @param template
+     *      - the registered template
+     */
+    public MessageTemplateRenderer(Message template) {
+        this.template = template;
+        this.summary = parse(template.getSummary());
+        boolean task = template.getType() == MessageType.Task;
+        this.actionLink = task ? parse(template.getActionLink()) : null;
+        this.actionLabel = task ? parse(template.getActionLabel()) : null;
+    }
+
+    private Text parse(String text) {
+        Text parsed = new Text(text != null ? text : "");
+        placeholders.addAll(parsed.names);
+        return parsed;
+    }
+
+    /**
+     * Returns the names of the template's placeholders
+     *
+     * @return Set of placeholder names
+     */
+    public Set<String> getPlaceholders() {
+        return Collections.unmodifiableSet(placeholders);
+    }
+
+    /**
+     * Returns the names of the template's placeholders that have no value in the passed map
+     *
+     * @param parameters
+     * @return Set of placeholder names, empty if the template can be rendered
+     */
+    public Set<String> getMissingParameters(Map<String, String> parameters) {
+        Set<String> missing = new LinkedHashSet<String>();
+        for( String name : placeholders ){
+            if( parameters == null || parameters.get(name) == null ){
+                missing.add(name);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Renders the template for the passed recipient
+     *
+     * @param lanId
+     *      - the recipient's lan ID
+     * @param parameters
+     *      - a value for each of the template's placeholders
+     * @param expirationDate
+     *      - the expiration date of the message, only kept for Information templates
+     * @return the rendered Message
+     */
+    public Message render(String lanId, Map<String, String> parameters, String expirationDate) {
+        Message message = new Message();
+        message.setLanId(lanId);
+        message.setSummary(summary.render(parameters, HTML));
+        message.setPriority(template.getPriority());
+        message.setType(template.getType());
+        if( template.getType() == MessageType.Task ){
+            message.setActionLink(actionLink.render(parameters, URL));
+            message.setActionLabel(actionLabel.render(parameters, NONE));
+        } else {
+            message.setExpirationDate(expirationDate);
+        }
+        message.setInternal(template.isInternal());
+        message.setLastUpdtUser(template.getLastUpdtUser());
+        return message;
+    }
+
+    /**
+     * URL encodes the value, with spaces as %20 so it can be used in a path as well as a query string
+     *
+     * @param value
+     * @return encoded value
+     */
+    private static String encodeUrl(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package gov.nsf.inboxservice.validator;
+
+import gov.nsf.common.exception.FormValidationException;
+import gov.nsf.common.model.BaseError;
+import gov.nsf.common.util.NsfValidationUtils;
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.common.util.Constants;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Validator class for global broadcast requests
+ */
+public class BroadcastValidator {
+
+    private BroadcastValidator(){
+    }
+
+    /**
+     * Validates a broadcast sent to be stored for every user, converting its expiration date to Sybase format
+     *
+     * The broadcast is validated as a message, it has no recipients
+     *
+     * @param message
+     * @throws FormValidationException
+     */
+    public static void validateRequest(Message message) throws FormValidationException {
+        List<BaseError> errors = CreateMessageValidator.validateMessage(message);
+        if (!errors.isEmpty()) {
+            throw new FormValidationException(Constants.INVALID_FORM_DATA, errors);
+        }
+    }
+
+    /**
+     * Validates the broadcast ID of a broadcast request
+     *
+     * @param broadcastId
+     * @throws FormValidationException
+     */
+    public static void validateBroadcastIdRequest(String broadcastId) throws FormValidationException {
+        List<BaseError> errors = new ArrayList<BaseError>();
+
+        if( StringUtils.isEmpty(broadcastId) ){
+            errors.add(new BaseError(Constants.BROADCAST_ID_FIELD, Constants.MISSING_NULL_EMPTY_FIELD + Constants.BROADCAST_ID_FIELD));
+        } else if( !isBroadcastId(broadcastId) ){
+            errors.add(new BaseError(Constants.BROADCAST_ID_FIELD, Constants.BROADCAST_ID_INVALID));
+        }
+
+        if( !errors.isEmpty() ){
+            throw new FormValidationException(Constants.INVALID_FORM_DATA, errors);
+        }
+    }
+
+    /**
+     * Returns true if the passed ID is a broadcast ID, the prefix followed by an integer
+     *
+     * @param id
+     * @return boolean
+     */
+    public static boolean isBroadcastId(String id) {
+        return id != null && id.startsWith(Constants.BROADCAST_ID_PREFIX)
+                && NsfValidationUtils.isValidIdNumberString(id.substring(Constants.BROADCAST_ID_PREFIX.length()));
+    }
+}
@@ -5,6 +5,7 @@ import gov.nsf.common.exception.FormValidationException;
 import gov.nsf.common.model.BaseError;
 import gov.nsf.common.util.NsfValidationUtils;
 import gov.nsf.inboxservice.api.model.CreateMessageRequest;
+import gov.nsf.inboxservice.api.model.DedupeMode;
 import gov.nsf.inboxservice.api.model.Message;
 import gov.nsf.inboxservice.api.model.MessagePriority;
 import gov.nsf.inboxservice.api.model.MessageType;
@@ -27,10 +28,36 @@ public class CreateMessageValidator {
     }
 
     public static void validateRequest(CreateMessageRequest request) throws FormValidationException {
+        validateRequest(request, null);
+    }
+
+    /**
+     * Validates a create request sent with the passed Idempotency-Key header
+     *
+     * @param request
+     * @param idempotencyKey
+     *      - the header value, null if the header was not sent
+     * @throws FormValidationException
+     */
+    public static void validateRequest(CreateMessageRequest request, String idempotencyKey) throws FormValidationException {
         List<BaseError> errors = new ArrayList<BaseError>();
 
         errors.addAll(validateMessage(request.getMessage()));
-        errors.addAll(validateLanIds(request.getLanIds()));
+        if( request.getGroups() != null && !request.getGroups().isEmpty() ){
+            //Recipients may come from the groups alone
+            errors.addAll(RecipientGroupValidator.validateGroupNames(request.getGroups()));
+            if( request.getLanIds() != null && !request.getLanIds().isEmpty() ){
+                errors.addAll(validateLanIds(request.getLanIds()));
+            }
+        } else {
+            errors.addAll(validateLanIds(request.getLanIds()));
+        }
+        if( request.getDedupe() == DedupeMode.Invalid ){
+            errors.add(new BaseError(Constants.REQUEST_DEDUPE_FIELD, Constants.INVALID_DEDUPE_MODE));
+        }
+        if( idempotencyKey != null ){
+            errors.addAll(validateIdempotencyKey(idempotencyKey));
+        }
 
         if (!errors.isEmpty()) {
             throw new FormValidationException(Constants.INVALID_FORM_DATA, errors);
@@ -67,20 +94,7 @@ public class CreateMessageValidator {
         } else if (message.getType() == MessageType.Invalid) {
             errors.add(new BaseError(Constants.MSG_TYPE_FIELD, Constants.INVALID_MESSAGE_TYPE));
         } else if (message.getType() == MessageType.Information) {
-            if (StringUtils.isEmpty(message.getExpirationDate())) {
-                errors.add(new BaseError(Constants.MSG_EXP_DATE_FIELD, Constants.MISSING_NULL_EMPTY_FIELD + Constants.MSG_EXP_DATE_FIELD));
-            } else if (!NsfValidationUtils.isValidUTF8(message.getExpirationDate())) {
-                errors.add(new BaseError(Constants.MSG_EXP_DATE_FIELD, Constants.UNSUPPORTED_CHARACTERS_FIELD + Constants.MSG_EXP_DATE_FIELD));
-            } else if (!NsfDateTimeUtil.isValidDateTime(message.getExpirationDate())) {
-                errors.add(new BaseError(Constants.MSG_EXP_DATE_FIELD, Constants.INVALID_DATE_TIME + Constants.MSG_EXP_DATE_FIELD));
-            } else {
-                String sybaseExpDate = NsfDateTimeUtil.convertToSybaseDateTimeString(message.getExpirationDate());
-                String sybaseCurrDate = NsfDateTimeUtil.convertToSybaseDateTimeString(new DateTime().toString());
-                if (sybaseExpDate.compareTo(sybaseCurrDate) < 0) {
-                    errors.add(new BaseError(Constants.MSG_EXP_DATE_FIELD, Constants.EXP_DATE_LESS_THAN_CURRENT_DATE));
-                }
-                message.setExpirationDate(sybaseExpDate);
-            }
+            message.setExpirationDate(validateExpirationDate(message.getExpirationDate(), errors));
         } else if (message.getType() == MessageType.Task) {
             if (StringUtils.isEmpty(message.getActionLink())) {
                 errors.add(new BaseError(Constants.MSG_ACTION_LINK_FIELD, Constants.MISSING_NULL_EMPTY_FIELD + Constants.MSG_ACTION_LINK_FIELD));
@@ -106,6 +120,52 @@ public class CreateMessageValidator {
         return errors;
     }
 
+    /**
+     * Validates the expiration date of an Information message
+     *
+     * @param expirationDate
+     * @param errors
+     *      - the errors found are added to this list
+     * @return the expiration date in Sybase format, or the passed value if it is not a valid date/time
+     */
+    protected static String validateExpirationDate(String expirationDate, List<BaseError> errors) {
+        if (StringUtils.isEmpty(expirationDate)) {
+            errors.add(new BaseError(Constants.MSG_EXP_DATE_FIELD, Constants.MISSING_NULL_EMPTY_FIELD + Constants.MSG_EXP_DATE_FIELD));
+        } else if (!NsfValidationUtils.isValidUTF8(expirationDate)) {
+            errors.add(new BaseError(Constants.MSG_EXP_DATE_FIELD, Constants.UNSUPPORTED_CHARACTERS_FIELD + Constants.MSG_EXP_DATE_FIELD));
+        } else if (!NsfDateTimeUtil.isValidDateTime(expirationDate)) {
+            errors.add(new BaseError(Constants.MSG_EXP_DATE_FIELD, Constants.INVALID_DATE_TIME + Constants.MSG_EXP_DATE_FIELD));
+        } else {
+            String sybaseExpDate = NsfDateTimeUtil.convertToSybaseDateTimeString(expirationDate);
+            String sybaseCurrDate = NsfDateTimeUtil.convertToSybaseDateTimeString(new DateTime().toString());
+            if (sybaseExpDate.compareTo(sybaseCurrDate) < 0) {
+                errors.add(new BaseError(Constants.MSG_EXP_DATE_FIELD, Constants.EXP_DATE_LESS_THAN_CURRENT_DATE));
+            }
+            return sybaseExpDate;
+        }
+        return expirationDate;
+    }
+
+    /**
+     * Validates the Idempotency-Key header value
+     *
+     * @param idempotencyKey
+     * @return List of BaseErrors
+     */
+    protected static List<BaseError> validateIdempotencyKey(String idempotencyKey) {
+        String key = idempotencyKey.trim();
+        if( key.isEmpty() ){
+            return Collections.singletonList(new BaseError(Constants.IDEMPOTENCY_KEY_HEADER, Constants.MISSING_NULL_EMPTY_FIELD + Constants.IDEMPOTENCY_KEY_HEADER));
+        }
+        if( key.length() > Constants.IDEMPOTENCY_KEY_MAX_LENGTH ){
+            return Collections.singletonList(new BaseError(Constants.IDEMPOTENCY_KEY_HEADER, Constants.FIELD_LENGTH_TOO_LONG + Constants.IDEMPOTENCY_KEY_MAX_LENGTH));
+        }
+        if( !StringUtils.isAsciiPrintable(key) ){
+            return Collections.singletonList(new BaseError(Constants.IDEMPOTENCY_KEY_HEADER, Constants.INVALID_IDEMPOTENCY_KEY + Constants.IDEMPOTENCY_KEY_HEADER));
+        }
+        return Collections.emptyList();
+    }
+
     /**
      * Validates the List of lanIds
      *
@@ -18,4 +18,16 @@ public class DeleteMessageValidator {
     public static void validateRequest(String msgId) throws FormValidationException {
         GetMessageValidator.validateRequest(msgId);
     }
+
+    /**
+     * Validates a session user's delete request, where the msgId may also be a global broadcast ID
+     *
+     * @param msgId
+     * @throws FormValidationException
+     */
+    public static void validateUserRequest(String msgId) throws FormValidationException {
+        if( !BroadcastValidator.isBroadcastId(msgId) ){
+            validateRequest(msgId);
+        }
+    }
 }
@@ -0,0 +1,41 @@
+package gov.nsf.inboxservice.validator;
+
+import gov.nsf.common.exception.FormValidationException;
+import gov.nsf.common.model.BaseError;
+import gov.nsf.inboxservice.api.model.DeleteMessagesRequest;
+import gov.nsf.inboxservice.common.util.Constants;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Validator class for DeleteMessages requests
+ *
+ * Individual message IDs are not validated here, invalid IDs are reported per ID in the response
+ */
+public class DeleteMessagesValidator {
+
+    private DeleteMessagesValidator(){
+
+    }
+
+    /**
+     * Validates the request by ensuring it carries between 1 and DELETE_MESSAGES_MAX_IDS message IDs
+     *
+     * @param request
+     * @throws FormValidationException
+     */
+    public static void validateRequest(DeleteMessagesRequest request) throws FormValidationException {
+        List<BaseError> errors = new ArrayList<BaseError>();
+
+        if( request == null || request.getMsgIds() == null || request.getMsgIds().isEmpty() ){
+            errors.add(new BaseError(Constants.REQUEST_MSG_IDS_FIELD, Constants.MISSING_NULL_EMPTY_FIELD + Constants.REQUEST_MSG_IDS_FIELD));
+        } else if( request.getMsgIds().size() > Constants.DELETE_MESSAGES_MAX_IDS ){
+            errors.add(new BaseError(Constants.REQUEST_MSG_IDS_FIELD, Constants.TOO_MANY_MSG_IDS + Constants.DELETE_MESSAGES_MAX_IDS));
+        }
+
+        if( !errors.isEmpty() ){
+            throw new FormValidationException(Constants.INVALID_FORM_DATA, errors);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package gov.nsf.inboxservice.validator;
 import gov.nsf.common.exception.FormValidationException;
 import gov.nsf.common.model.BaseError;
 import gov.nsf.inboxservice.common.util.Constants;
+import gov.nsf.inboxservice.dao.MessageCursor;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.ArrayList;
@@ -23,6 +24,53 @@ public class GetMessagesValidator {
      * @throws FormValidationException
      */
     public static void validateRequest(String lanId) throws FormValidationException {
+        List<BaseError> errors = validateLanId(lanId);
+
+        if (!errors.isEmpty()) {
+            throw new FormValidationException(Constants.INVALID_FORM_DATA, errors);
+        }
+    }
+
+    /**
+     * Validates a paged request by ensuring the passed lanId, page limit and cursor are valid
+     *
+     * @param lanId
+     * @param limit
+     *      - optional page size
+     * @param after
+     *      - optional paging cursor
+     * @throws FormValidationException
+     */
+    public static void validateRequest(String lanId, String limit, String after) throws FormValidationException {
+        List<BaseError> errors = validateLanId(lanId);
+
+        if (!StringUtils.isEmpty(limit)) {
+            if (!StringUtils.isNumeric(limit) || limit.length() > 9) {
+                errors.add(new BaseError(Constants.PAGE_LIMIT_FIELD, Constants.INVALID_PAGE_LIMIT + Constants.PAGE_LIMIT_FIELD));
+            } else {
+                int pageLimit = Integer.parseInt(limit);
+                if (pageLimit < 1 || pageLimit > Constants.MAX_PAGE_LIMIT) {
+                    errors.add(new BaseError(Constants.PAGE_LIMIT_FIELD, Constants.INVALID_PAGE_LIMIT + Constants.PAGE_LIMIT_FIELD));
+                }
+            }
+        }
+
+        if (!StringUtils.isEmpty(after) && !MessageCursor.isValid(after)) {
+            errors.add(new BaseError(Constants.PAGE_AFTER_FIELD, Constants.INVALID_PAGE_CURSOR + Constants.PAGE_AFTER_FIELD));
+        }
+
+        if (!errors.isEmpty()) {
+            throw new FormValidationException(Constants.INVALID_FORM_DATA, errors);
+        }
+    }
+
+    /**
+     * Validates the passed lanId
+     *
+     * @param lanId
+     * @return List of BaseErrors
+     */
+    protected static List<BaseError> validateLanId(String lanId) {
         List<BaseError> errors = new ArrayList<BaseError>();
 
         if (StringUtils.isEmpty(lanId)) {
@@ -33,9 +81,7 @@ public class GetMessagesValidator {
             errors.add(new BaseError(Constants.MSG_LAN_ID_FIELD, Constants.INVALID_LAN_ID + Constants.MSG_LAN_ID_FIELD));
         }
 
-        if (!errors.isEmpty()) {
-            throw new FormValidationException(Constants.INVALID_FORM_DATA, errors);
-        }
+        return errors;
     }
 
 }
@@ -0,0 +1,177 @@
+package gov.nsf.inboxservice.validator;
+
+import gov.nsf.common.exception.FormValidationException;
+import gov.nsf.common.model.BaseError;
+import gov.nsf.common.util.NsfValidationUtils;
+import gov.nsf.inboxservice.api.model.CreateTemplatedMessageRequest;
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessageType;
+import gov.nsf.inboxservice.common.util.Constants;
+import org.apache.commons.lang3.StringUtils;
+import org.jsoup.Jsoup;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Validator class for message template and templated Create Message requests
+ */
+public class MessageTemplateValidator {
+
+    //Template IDs and recipient group names are used in URLs as is
+    static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z0-9._-]+");
+
+    private MessageTemplateValidator(){
+    }
+
+    /**
+     * Validates a template sent to be registered under the passed ID
+     *
+     * The template is validated as a message, except for the expiration date which is sent with each templated request
+     *
+     * @param templateId
+     * @param template
+     * @throws FormValidationException
+     */
+    public static void validateTemplate(String templateId, Message template) throws FormValidationException {
+        List<BaseError> errors = new ArrayList<BaseError>();
+
+        errors.addAll(validateTemplateId(templateId));
+        for( BaseError error : CreateMessageValidator.validateMessage(template) ){
+            if( !Constants.MSG_EXP_DATE_FIELD.equals(error.getField()) ){
+                errors.add(error);
+            }
+        }
+
+        if (!errors.isEmpty()) {
+            throw new FormValidationException(Constants.INVALID_FORM_DATA, errors);
+        }
+    }
+
+    /**
+     * Validates the template ID of a template request
+     *
+     * @param templateId
+     * @throws FormValidationException
+     */
+    public static void validateTemplateIdRequest(String templateId) throws FormValidationException {
+        List<BaseError> errors = validateTemplateId(templateId);
+        if (!errors.isEmpty()) {
+            throw new FormValidationException(Constants.INVALID_FORM_DATA, errors);
+        }
+    }
+
+    /**
+     * Validates a templated create request, converting its expiration date to Sybase format
+     *
+     * The placeholder values are checked against the template when the messages are rendered
+     *
+     * @param request
+     * @throws FormValidationException
+     */
+    public static void validateRequest(CreateTemplatedMessageRequest request) throws FormValidationException {
+        List<BaseError> errors = new ArrayList<BaseError>();
+
+        errors.addAll(validateTemplateId(request.getTemplateId()));
+        if( request.getExpirationDate() != null ){
+            request.setExpirationDate(CreateMessageValidator.validateExpirationDate(request.getExpirationDate(), errors));
+        }
+        errors.addAll(validateRecipients(request.getRecipients()));
+
+        if (!errors.isEmpty()) {
+            throw new FormValidationException(Constants.INVALID_FORM_DATA, errors);
+        }
+    }
+
+    /**
+     * Validates a message rendered from a template for one recipient
+     *
+     * Placeholder values change the length of the summary and action label, so the limits are checked again
+     *
+     * @param message
+     * @return List of BaseErrors
+     */
+    public static List<BaseError> validateRenderedMessage(Message message) {
+        List<BaseError> errors = new ArrayList<BaseError>();
+        String field = Constants.REQUEST_RECIPIENTS_FIELD + "." + message.getLanId() + ".";
+
+        String messagePlainText = Jsoup.parse(message.getSummary()).text().trim();
+        if (messagePlainText.length() > Constants.MESSAGE_PLAIN_TEXT_MAX_LENGTH) {
+            errors.add(new BaseError(field + Constants.MSG_SUMMARY_FIELD, Constants.FIELD_LENGTH_TOO_LONG + Constants.MESSAGE_PLAIN_TEXT_MAX_LENGTH));
+        }
+        if( message.getType() == MessageType.Task && message.getActionLabel().length() > Constants.MSG_ACTION_LABEL_MAX_LEGNTH ){
+            errors.add(new BaseError(field + Constants.MSG_ACTION_LABEL_FIELD, Constants.FIELD_LENGTH_TOO_LONG + Constants.MSG_ACTION_LABEL_MAX_LEGNTH));
+        }
+        return errors;
+    }
+
+    /**
+     * Returns the errors of a recipient that has no value for the passed placeholders
+     *
+     * @param lanId
+     * @param missingParameters
+     * @return List of BaseErrors
+     */
+    public static List<BaseError> getMissingParameterErrors(String lanId, Collection<String> missingParameters) {
+        List<BaseError> errors = new ArrayList<BaseError>(missingParameters.size());
+        for( String name : missingParameters ){
+            errors.add(new BaseError(Constants.REQUEST_RECIPIENTS_FIELD + "." + lanId, Constants.MISSING_TEMPLATE_PARAMETER + name));
+        }
+        return errors;
+    }
+
+    /**
+     * Validates the template ID, which is used in URLs as is
+     *
+     * @param templateId
+     * @return List of BaseErrors
+     */
+    protected static List<BaseError> validateTemplateId(String templateId) {
+        if( StringUtils.isEmpty(templateId) ){
+            return Collections.singletonList(new BaseError(Constants.REQUEST_TEMPLATE_ID_FIELD, Constants.MISSING_NULL_EMPTY_FIELD + Constants.REQUEST_TEMPLATE_ID_FIELD));
+        }
+        if( templateId.length() > Constants.TEMPLATE_ID_MAX_LENGTH ){
+            return Collections.singletonList(new BaseError(Constants.REQUEST_TEMPLATE_ID_FIELD, Constants.FIELD_LENGTH_TOO_LONG + Constants.TEMPLATE_ID_MAX_LENGTH));
+        }
+        if( !NAME_PATTERN.matcher(templateId).matches() ){
+            return Collections.singletonList(new BaseError(Constants.REQUEST_TEMPLATE_ID_FIELD, Constants.INVALID_NAME_CHARACTERS + Constants.REQUEST_TEMPLATE_ID_FIELD));
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Validates the recipients' lan IDs and placeholder values
+     *
+     * @param recipients
+     * @return List of BaseErrors
+     */
+    protected static List<BaseError> validateRecipients(Map<String, Map<String, String>> recipients) {
+        if( recipients == null || recipients.isEmpty() ){
+            return Collections.singletonList(new BaseError(Constants.REQUEST_RECIPIENTS_FIELD, Constants.MISSING_NULL_EMPTY_FIELD + Constants.REQUEST_RECIPIENTS_FIELD));
+        }
+
+        List<BaseError> errors = new ArrayList<BaseError>();
+        for( BaseError error : CreateMessageValidator.validateLanIds(new ArrayList<String>(recipients.keySet())) ){
+            errors.add(new BaseError(Constants.REQUEST_RECIPIENTS_FIELD, error.getErrorMessage()));
+        }
+        for( Map<String, String> parameters : recipients.values() ){
+            if( !errors.isEmpty() ){
+                break;
+            }
+            if( parameters == null ){
+                continue;
+            }
+            for( String value : parameters.values() ){
+                if( value != null && !NsfValidationUtils.isValidUTF8(value) ){
+                    errors.add(new BaseError(Constants.REQUEST_RECIPIENTS_FIELD, Constants.CONTAINS_UNSUPPORTED_CHARACTERS_STRING));
+                    break;
+                }
+            }
+        }
+        return errors;
+    }
+}
@@ -0,0 +1,122 @@
+package gov.nsf.inboxservice.validator;
+
+import gov.nsf.common.exception.FormValidationException;
+import gov.nsf.common.model.BaseError;
+import gov.nsf.common.util.NsfValidationUtils;
+import gov.nsf.inboxservice.api.model.UpdateRecipientGroupRequest;
+import gov.nsf.inboxservice.common.util.Constants;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Validator class for recipient group requests and the groups named in Create Message requests
+ */
+public class RecipientGroupValidator {
+
+    private RecipientGroupValidator(){
+    }
+
+    /**
+     * Validates a membership update of the named group
+     *
+     * @param groupName
+     * @param request
+     * @throws FormValidationException
+     */
+    public static void validateRequest(String groupName, UpdateRecipientGroupRequest request) throws FormValidationException {
+        List<BaseError> errors = new ArrayList<BaseError>();
+
+        errors.addAll(validateGroupName(groupName, Constants.REQUEST_GROUP_NAME_FIELD));
+        boolean adds = request.getAdd() != null && !request.getAdd().isEmpty();
+        boolean removes = request.getRemove() != null && !request.getRemove().isEmpty();
+        if( !adds && !removes ){
+            errors.add(new BaseError(Constants.REQUEST_ADD_FIELD, Constants.MISSING_GROUP_DELTA + Constants.REQUEST_ADD_FIELD));
+        }
+        if( adds ){
+            errors.addAll(validateMembers(request.getAdd(), Constants.REQUEST_ADD_FIELD));
+        }
+        if( removes ){
+            errors.addAll(validateMembers(request.getRemove(), Constants.REQUEST_REMOVE_FIELD));
+        }
+        if( request.getVersion() != null && request.getVersion() < 0 ){
+            errors.add(new BaseError(Constants.REQUEST_VERSION_FIELD, Constants.INVALID_GROUP_VERSION + Constants.REQUEST_VERSION_FIELD));
+        }
+        if( StringUtils.isEmpty(request.getLastUpdtUser()) ){
+            errors.add(new BaseError(Constants.MSG_LAST_UPDT_USER_FIELD, Constants.MISSING_NULL_EMPTY_FIELD + Constants.MSG_LAST_UPDT_USER_FIELD));
+        } else if (!NsfValidationUtils.isValidUTF8(request.getLastUpdtUser())) {
+            errors.add(new BaseError(Constants.MSG_LAST_UPDT_USER_FIELD, Constants.UNSUPPORTED_CHARACTERS_FIELD + Constants.MSG_LAST_UPDT_USER_FIELD));
+        }
+
+        if (!errors.isEmpty()) {
+            throw new FormValidationException(Constants.INVALID_FORM_DATA, errors);
+        }
+    }
+
+    /**
+     * Validates the group name of a group request
+     *
+     * @param groupName
+     * @throws FormValidationException
+     */
+    public static void validateGroupNameRequest(String groupName) throws FormValidationException {
+        List<BaseError> errors = validateGroupName(groupName, Constants.REQUEST_GROUP_NAME_FIELD);
+        if (!errors.isEmpty()) {
+            throw new FormValidationException(Constants.INVALID_FORM_DATA, errors);
+        }
+    }
+
+    /**
+     * Validates the group names of a Create Message request
+     *
+     * @param groups
+     * @return List of BaseErrors
+     */
+    protected static List<BaseError> validateGroupNames(List<String> groups) {
+        for( String groupName : groups ){
+            List<BaseError> errors = validateGroupName(groupName, Constants.REQUEST_GROUPS_FIELD);
+            if( !errors.isEmpty() ){
+                return errors;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Validates a group name, which is used in URLs as is
+     *
+     * @param groupName
+     * @param field
+     *      - the field the errors are reported for
+     * @return List of BaseErrors
+     */
+    protected static List<BaseError> validateGroupName(String groupName, String field) {
+        if( StringUtils.isEmpty(groupName) ){
+            return Collections.singletonList(new BaseError(field, Constants.MISSING_NULL_EMPTY_FIELD + field));
+        }
+        if( groupName.length() > Constants.GROUP_NAME_MAX_LENGTH ){
+            return Collections.singletonList(new BaseError(field, Constants.FIELD_LENGTH_TOO_LONG + Constants.GROUP_NAME_MAX_LENGTH));
+        }
+        if( !MessageTemplateValidator.NAME_PATTERN.matcher(groupName).matches() ){
+            return Collections.singletonList(new BaseError(field, Constants.INVALID_NAME_CHARACTERS + field));
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Validates the lan IDs of an add or remove list, reporting the errors for that list
+     *
+     * @param lanIds
+     * @param field
+     * @return List of BaseErrors
+     */
+    private static List<BaseError> validateMembers(List<String> lanIds, String field) {
+        List<BaseError> errors = new ArrayList<BaseError>();
+        for( BaseError error : CreateMessageValidator.validateLanIds(lanIds) ){
+            errors.add(new BaseError(field, error.getErrorMessage()));
+        }
+        return errors;
+    }
+}
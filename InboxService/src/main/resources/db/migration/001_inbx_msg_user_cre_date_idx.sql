@@ -0,0 +1,6 @@
+-- Supports keyset paging of a user's messages ordered by (cre_date, inbx_msg_id)
+-- used by GET /users/{lanId}/messages?limit=&after=
+
+create nonclustered index inbx_msg_user_cre_date_idx
+    on dbo.inbx_msg (user_lan_id, cre_date, inbx_msg_id)
+go
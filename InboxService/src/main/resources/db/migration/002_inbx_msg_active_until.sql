@@ -0,0 +1,40 @@
+-- Adds the persisted active_until column so the ACTIVE, INACTIVE and expired-delete
+-- queries can use a single range predicate instead of an OR over type and exp_date.
+--   Information messages : active_until = exp_date
+--   Task messages        : active_until = 9999-12-31 23:59:59 (never expire)
+
+alter table dbo.inbx_msg add active_until datetime null
+go
+
+-- Nodes still running the previous service version insert rows without active_until
+-- until the cutover, which the ACTIVE and INACTIVE reads would then never return.
+-- This trigger fills it in for them; 014_inbx_msg_active_until_cutover.sql drops it
+-- once every node runs the version that writes the column.
+create trigger inbx_msg_active_until_trg on dbo.inbx_msg for insert as
+    update dbo.inbx_msg
+       set active_until = case when dbo.inbx_msg.type = 'I' then dbo.inbx_msg.exp_date else '9999-12-31 23:59:59' end
+      from dbo.inbx_msg, inserted
+     where dbo.inbx_msg.inbx_msg_id = inserted.inbx_msg_id
+       and dbo.inbx_msg.active_until is null
+go
+
+-- Backfill in chunks to keep the transaction log and lock footprint small
+set rowcount 10000
+go
+declare @rows int
+select @rows = 1
+while @rows > 0
+begin
+    update dbo.inbx_msg
+       set active_until = case when type = 'I' then exp_date else '9999-12-31 23:59:59' end
+     where active_until is null
+       and (type != 'I' or exp_date is not null)
+    select @rows = @@rowcount
+end
+go
+set rowcount 0
+go
+
+create nonclustered index inbx_msg_user_active_until_idx
+    on dbo.inbx_msg (user_lan_id, active_until)
+go
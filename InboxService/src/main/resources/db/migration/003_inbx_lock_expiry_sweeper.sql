@@ -0,0 +1,19 @@
+-- Lease table for cluster-wide background jobs. A node holds a lease while
+-- ownr is set and lease_until is in the future (compared with the DB clock).
+
+create table dbo.inbx_lock (
+    lock_name   varchar(64)  not null,
+    ownr        varchar(255) null,
+    lease_until datetime     null,
+    constraint inbx_lock_pk primary key (lock_name)
+) lock datarows
+go
+
+insert into dbo.inbx_lock (lock_name, ownr, lease_until) values ('EXPIRED_MSG_SWEEPER', null, null)
+go
+
+-- Supports the expiry sweeper's "delete top N ... where active_until < getdate()"
+-- across all users
+create nonclustered index inbx_msg_active_until_idx
+    on dbo.inbx_msg (active_until)
+go
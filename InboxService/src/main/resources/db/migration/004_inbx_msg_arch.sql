@@ -0,0 +1,64 @@
+-- Archive for messages moved out of dbo.inbx_msg by the sweeper in archive mode
+-- (InboxSvc.Archive.Enabled=true). Rows keep their inbx_msg_id.
+--
+-- Range partitioned on (arch_month, type) so retention per message type can
+-- truncate whole partitions. Partitions are named p<yyyymm><type code>, which is
+-- what ArchiveDaoImpl's default drop statement expects, and truncating keeps the
+-- partition in place for reuse.
+--
+-- Partitions are created through 203012 and nothing adds later ones. A row whose
+-- arch_month is past the last partition cannot be inserted, so once archiving
+-- reaches that month every sweep fails its move (logged as "Could not archive
+-- messages") and messages stay in dbo.inbx_msg. Before then, extend the table by
+-- running the partition loop below on its own with @from set to the month after
+-- the current last partition and @through set to the new last month, e.g.
+-- @from = 203101 and @through = 203512. Partitions can only be added at the high end.
+
+create table dbo.inbx_msg_arch (
+    inbx_msg_id     numeric(10,0) not null,
+    user_lan_id     char(8)       not null,
+    smry            varchar(1500) not null,
+    cre_date        datetime      not null,
+    prty            numeric(2,0)  not null,
+    type            char(1)       not null,
+    actn_link       varchar(1000) null,
+    actn_lbl        varchar(1000) null,
+    innl            bit           not null,
+    exp_date        datetime      null,
+    active_until    datetime      null,
+    last_updt_user  varchar(1000) not null,
+    last_updt_pgm   varchar(1000) not null,
+    last_updt_tmsp  varchar(1000) not null,
+    arch_month      int           not null
+) lock datarows
+partition by range (arch_month, type)
+(p201612T values <= (201612, 'T'))
+go
+
+declare @from int, @through int, @month int, @sql varchar(512)
+select @from = 201701, @through = 203012
+select @month = @from
+while @month <= @through
+begin
+    select @sql = 'alter table dbo.inbx_msg_arch add partition ('
+        + 'p' + convert(varchar(6), @month) + 'I values <= (' + convert(varchar(6), @month) + ', ''I''), '
+        + 'p' + convert(varchar(6), @month) + 'T values <= (' + convert(varchar(6), @month) + ', ''T''))'
+    exec (@sql)
+    select @month = case when @month % 100 = 12 then @month + 89 else @month + 1 end
+end
+go
+
+-- Global: the sweeper's "not exists" check probes by ID without knowing the partition
+create unique nonclustered index inbx_msg_arch_id_idx
+    on dbo.inbx_msg_arch (inbx_msg_id)
+go
+
+-- Local: INACTIVE and ALL reads page through a user's archived messages
+create nonclustered index inbx_msg_arch_user_cre_date_idx
+    on dbo.inbx_msg_arch (user_lan_id, cre_date, inbx_msg_id) local index
+go
+
+-- Supports archiving messages older than the per-type maximum age
+create nonclustered index inbx_msg_type_cre_date_idx
+    on dbo.inbx_msg (type, cre_date)
+go
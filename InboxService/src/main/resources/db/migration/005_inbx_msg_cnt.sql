@@ -0,0 +1,28 @@
+-- Per-user message counters behind GET /users/{lanId}/messages/counts.
+-- One row per user, type, priority and active day holds the number of
+-- dbo.inbx_msg rows with those values. The active day stored in active_until is the
+-- midnight starting the day the messages' active_until falls on, so a user has at most
+-- one row per type and priority for each day messages expire on. Counts are split into
+-- ACTIVE and INACTIVE at read time by comparing the active day with the current day:
+-- messages count as ACTIVE until the end of the day they expire on.
+-- Information messages without an exp_date have no active_until and are not counted.
+-- Only dbo.inbx_msg is counted; messages moved to dbo.inbx_msg_arch drop out of the
+-- counts even though archive mode INACTIVE and ALL reads still return them.
+--
+-- The counters are filled by 015_inbx_msg_cnt_backfill.sql at the cutover, not here:
+-- messages stored by the previous service version after this migration are not counted.
+
+create table dbo.inbx_msg_cnt (
+    user_lan_id  char(8)       not null,
+    type         char(1)       not null,
+    prty         numeric(2, 0) not null,
+    active_until datetime      not null,
+    msg_cnt      int           not null,
+    constraint inbx_msg_cnt_pk primary key (user_lan_id, type, prty, active_until)
+) lock datarows
+go
+
+-- Supports the sweeper's recount of expired counters across all users
+create nonclustered index inbx_msg_cnt_active_until_idx
+    on dbo.inbx_msg_cnt (active_until)
+go
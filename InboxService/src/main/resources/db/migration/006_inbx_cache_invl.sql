@@ -0,0 +1,16 @@
+-- Change table for the per-user inbox cache. Each change to a user's messages
+-- inserts a row in the same transaction; every node polls for rows stamped since
+-- its previous poll (minus an overlap) and drops those users' cached inboxes.
+-- Rows past the retention are deleted by the polling nodes.
+
+create table dbo.inbx_cache_invl (
+    inbx_cache_invl_id numeric(10, 0) identity,
+    user_lan_id        char(8)  not null,
+    cre_date           datetime not null,
+    constraint inbx_cache_invl_pk primary key (inbx_cache_invl_id)
+) lock datarows
+go
+
+create nonclustered index inbx_cache_invl_cre_date_idx
+    on dbo.inbx_cache_invl (cre_date)
+go
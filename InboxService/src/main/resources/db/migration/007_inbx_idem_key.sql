@@ -0,0 +1,19 @@
+-- Idempotency keys of POST /messages requests. The row is inserted before the
+-- messages, in the same transaction, so a concurrent retry with the same key
+-- waits on the primary key and then finds the committed response. rsp_body holds
+-- the MessageResponseWrapper JSON returned to the first request, req_hash the
+-- SHA-256 of that request so a key reused for a different request is rejected.
+-- Rows older than the retention are deleted by the expired message sweeper.
+
+create table dbo.inbx_idem_key (
+    idem_key varchar(64) not null,
+    req_hash char(64)    not null,
+    rsp_body text        null,
+    cre_date datetime    not null,
+    constraint inbx_idem_key_pk primary key (idem_key)
+) lock datarows
+go
+
+create nonclustered index inbx_idem_key_cre_date_idx
+    on dbo.inbx_idem_key (cre_date)
+go
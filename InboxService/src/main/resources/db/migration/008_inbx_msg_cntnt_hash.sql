@@ -0,0 +1,13 @@
+-- SHA-256 of a message's content (type, summary, action link/label, sender),
+-- stored on insert so createMessage can skip or refresh an identical active
+-- message instead of inserting a duplicate. The recipient is not part of the
+-- hash; the index leads with the hash and then the lan ID so the duplicates of
+-- every recipient of a batch are found with a single query. Existing rows keep
+-- a null hash and are never treated as duplicates.
+
+alter table dbo.inbx_msg add cntnt_hash binary(32) null
+go
+
+create nonclustered index inbx_msg_cntnt_hash_idx
+    on dbo.inbx_msg (cntnt_hash, user_lan_id)
+go
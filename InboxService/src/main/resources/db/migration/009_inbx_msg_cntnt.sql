@@ -0,0 +1,27 @@
+-- Normalized broadcast storage. With InboxSvc.NormalizedStorage.Enabled a message
+-- sent to several recipients writes its summary, action link and action label
+-- once to dbo.inbx_msg_cntnt, and each recipient row in dbo.inbx_msg only keeps
+-- cntnt_id and its own state (priority, dates, type). Reads left join the content
+-- and fall back to the recipient row, so rows written either way are read alike.
+-- Archived rows get their own copy of the content when they are moved.
+-- Content no recipient row points to is deleted by the expired message sweeper.
+
+create table dbo.inbx_msg_cntnt (
+    cntnt_id       numeric(10, 0) identity,
+    smry           varchar(1500)  not null,
+    actn_link      varchar(1000)  null,
+    actn_lbl       varchar(1000)  null,
+    last_updt_tmsp datetime       not null,
+    constraint inbx_msg_cntnt_pk primary key (cntnt_id)
+) lock datarows
+go
+
+alter table dbo.inbx_msg add cntnt_id numeric(10, 0) null
+go
+
+alter table dbo.inbx_msg modify smry varchar(1500) null
+go
+
+create nonclustered index inbx_msg_cntnt_id_idx
+    on dbo.inbx_msg (cntnt_id)
+go
@@ -0,0 +1,20 @@
+-- Registered message templates. A sender stores the shared notice once, with
+-- {name} placeholders in the summary, action link and action label, and then
+-- sends POST /messages/templated with the template ID and the placeholder values
+-- of each recipient. The rendered messages are stored in dbo.inbx_msg like any
+-- other message, so nothing reads this table once they are created.
+
+create table dbo.inbx_msg_tmpl (
+    tmpl_id        varchar(64)   not null,
+    smry           varchar(1500) not null,
+    prty           numeric(2, 0) not null,
+    type           char(1)       not null,
+    actn_link      varchar(1000) null,
+    actn_lbl       varchar(1000) null,
+    innl           bit           not null,
+    last_updt_user varchar(1000) not null,
+    last_updt_pgm  varchar(1000) not null,
+    last_updt_tmsp datetime      not null,
+    constraint inbx_msg_tmpl_pk primary key (tmpl_id)
+) lock datarows
+go
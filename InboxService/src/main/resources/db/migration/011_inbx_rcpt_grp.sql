@@ -0,0 +1,23 @@
+-- Named recipient groups. A create request may name groups instead of listing
+-- every recipient in lanIds; the service reads the members page by page in
+-- user_lan_id order and inserts each page as one JDBC batch.
+-- Membership is changed with add/remove deltas through POST /groups/{name}/members,
+-- and every update increments vrsn so callers can detect a concurrent update.
+
+create table dbo.inbx_rcpt_grp (
+    grp_name       varchar(64)   not null,
+    vrsn           int           not null,
+    last_updt_user varchar(1000) not null,
+    last_updt_pgm  varchar(1000) not null,
+    last_updt_tmsp datetime      not null,
+    constraint inbx_rcpt_grp_pk primary key (grp_name)
+) lock datarows
+go
+
+-- The primary key serves the paged member reads of a single group
+create table dbo.inbx_rcpt_grp_mbr (
+    grp_name    varchar(64) not null,
+    user_lan_id char(8)     not null,
+    constraint inbx_rcpt_grp_mbr_pk primary key (grp_name, user_lan_id)
+) lock datarows
+go
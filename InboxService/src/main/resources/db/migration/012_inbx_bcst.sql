@@ -0,0 +1,37 @@
+-- Global broadcasts. An announcement for every user is stored once in
+-- dbo.inbx_bcst instead of as one dbo.inbx_msg row per user. The service keeps
+-- the broadcasts in memory and merges them into each user's message list at read
+-- time, under the ID "B" + bcst_id.
+-- A user deleting a broadcast only records a dismissal in dbo.inbx_bcst_dsms,
+-- which is read with one primary key range scan per inbox read.
+-- Expired broadcasts and their dismissals are deleted by the expired message sweeper.
+
+create table dbo.inbx_bcst (
+    bcst_id        numeric(10, 0) identity,
+    smry           varchar(1500)  not null,
+    cre_date       datetime       not null,
+    prty           numeric(2, 0)  not null,
+    type           char(1)        not null,
+    actn_link      varchar(1000)  null,
+    actn_lbl       varchar(1000)  null,
+    innl           bit            not null,
+    exp_date       datetime       null,
+    active_until   datetime       not null,
+    last_updt_user varchar(1000)  not null,
+    last_updt_pgm  varchar(1000)  not null,
+    last_updt_tmsp datetime       not null,
+    constraint inbx_bcst_pk primary key (bcst_id)
+) lock datarows
+go
+
+create table dbo.inbx_bcst_dsms (
+    user_lan_id char(8)        not null,
+    bcst_id     numeric(10, 0) not null,
+    constraint inbx_bcst_dsms_pk primary key (user_lan_id, bcst_id)
+) lock datarows
+go
+
+-- Serves the delete of a broadcast's dismissals
+create nonclustered index inbx_bcst_dsms_bcst_idx
+    on dbo.inbx_bcst_dsms (bcst_id)
+go
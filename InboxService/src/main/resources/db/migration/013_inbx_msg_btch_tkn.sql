@@ -0,0 +1,12 @@
+-- Random token shared by the rows of one multi-recipient insert batch. The
+-- service reads the inserted rows back by this token, so two batches for the
+-- same users and sender stored within the same datetime tick (1/300 s) never
+-- return each other's rows. Rows inserted one at a time are identified by their
+-- generated key and leave the token null, as do existing rows.
+
+alter table dbo.inbx_msg add btch_tkn binary(16) null
+go
+
+create nonclustered index inbx_msg_btch_tkn_idx
+    on dbo.inbx_msg (btch_tkn)
+go
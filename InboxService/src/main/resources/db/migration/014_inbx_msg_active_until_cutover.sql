@@ -0,0 +1,23 @@
+-- Run once every node runs a service version that writes active_until itself.
+-- Drops the insert trigger added by 002_inbx_msg_active_until.sql and repeats its
+-- backfill, so no row written by the previous version before the cutover is left
+-- with a null active_until.
+
+drop trigger inbx_msg_active_until_trg
+go
+
+set rowcount 10000
+go
+declare @rows int
+select @rows = 1
+while @rows > 0
+begin
+    update dbo.inbx_msg
+       set active_until = case when type = 'I' then exp_date else '9999-12-31 23:59:59' end
+     where active_until is null
+       and (type != 'I' or exp_date is not null)
+    select @rows = @@rowcount
+end
+go
+set rowcount 0
+go
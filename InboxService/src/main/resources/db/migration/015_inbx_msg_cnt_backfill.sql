@@ -0,0 +1,26 @@
+-- Fills the message counters created by 005_inbx_msg_cnt.sql from dbo.inbx_msg.
+--
+-- Run at the cutover to the service version that maintains the counters: after the
+-- last node of the previous version has stopped and before the new version takes
+-- writes. Run earlier, messages the previous version stores afterwards are never
+-- counted; run while the new version takes writes, its counter updates race with the
+-- rebuild.
+--
+-- Rebuilds the counters from scratch, so it can be rerun in a later maintenance window,
+-- with writes stopped, to reconcile drifted counters.
+
+begin transaction
+go
+
+delete from dbo.inbx_msg_cnt
+go
+
+insert into dbo.inbx_msg_cnt (user_lan_id, type, prty, active_until, msg_cnt)
+select user_lan_id, type, prty, dateadd(dd, datediff(dd, '1900-01-01', active_until), '1900-01-01'), count(*)
+  from dbo.inbx_msg
+ where active_until is not null
+ group by user_lan_id, type, prty, dateadd(dd, datediff(dd, '1900-01-01', active_until), '1900-01-01')
+go
+
+commit transaction
+go
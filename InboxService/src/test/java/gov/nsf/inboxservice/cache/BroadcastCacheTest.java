@@ -0,0 +1,150 @@
+package gov.nsf.inboxservice.cache;
+
+import gov.nsf.common.model.ExpirationFilter;
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessageType;
+import gov.nsf.inboxservice.common.util.Constants;
+import gov.nsf.inboxservice.common.util.TestUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for BroadcastCache
+ */
+public class BroadcastCacheTest {
+
+    private BroadcastCache cache;
+    private AtomicInteger loads;
+
+    @Before
+    public void setUp(){
+        cache = new BroadcastCache();
+        loads = new AtomicInteger();
+    }
+
+    /**
+     * Tests that the broadcasts are loaded once and served from the cache until ttlMillis passes
+     *
+     * @throws Exception
+     */
+    @Test
+    public void readThroughTest() throws Exception {
+        cache.setTtlMillis(50);
+
+        List<Message> first = cache.getBroadcasts(this::load);
+        List<Message> second = cache.getBroadcasts(this::load);
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getSize());
+
+        Thread.sleep(60);
+        cache.getBroadcasts(this::load);
+        assertEquals(2, loads.get());
+        assertEquals(2, cache.getLoads());
+    }
+
+    /**
+     * Tests that invalidate() drops the cached broadcasts
+     *
+     * @throws Exception
+     */
+    @Test
+    public void invalidateTest() throws Exception {
+        cache.getBroadcasts(this::load);
+        cache.invalidate();
+        assertEquals(0, cache.getSize());
+
+        cache.getBroadcasts(this::load);
+        assertEquals(2, loads.get());
+    }
+
+    /**
+     * Tests that invalidations are published under the broadcast key and that only that key drops the list
+     * when received from another node
+     *
+     * @throws Exception
+     */
+    @Test
+    public void invalidationChannelTest() throws Exception {
+        List<String> published = new ArrayList<String>();
+        List<Consumer<String>> listeners = new ArrayList<Consumer<String>>();
+        cache.setInvalidationChannel(new InvalidationChannel() {
+            @Override
+            public void publish(Collection<String> lanIds) {
+                published.addAll(lanIds);
+            }
+
+            @Override
+            public void addListener(Consumer<String> listener) {
+                listeners.add(listener);
+            }
+        });
+
+        cache.invalidate();
+        assertEquals(Collections.singletonList(Constants.BROADCAST_INVALIDATION_KEY), published);
+
+        cache.getBroadcasts(this::load);
+        listeners.get(0).accept("test");
+        assertEquals(1, cache.getSize());
+
+        //char(8) values may come back blank padded
+        listeners.get(0).accept(String.format("%-8s", Constants.BROADCAST_INVALIDATION_KEY));
+        assertEquals(0, cache.getSize());
+        assertEquals(1, cache.getRemoteInvalidations());
+    }
+
+    /**
+     * Tests that a disabled cache loads on every read
+     *
+     * @throws Exception
+     */
+    @Test
+    public void disabledTest() throws Exception {
+        cache.setEnabled(false);
+
+        cache.getBroadcasts(this::load);
+        cache.getBroadcasts(this::load);
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.getSize());
+    }
+
+    /**
+     * Tests that broadcasts are filtered by expiration like cached inboxes
+     */
+    @Test
+    public void filterTest() {
+        Message active = TestUtils.getMockMessageForUser("");
+        Message expired = TestUtils.getMockMessageForUser("");
+        expired.setExpirationDate(new Timestamp(System.currentTimeMillis() - 60000).toString());
+        Message task = TestUtils.getMockMessageForUser("");
+        task.setType(MessageType.Task);
+        task.setExpirationDate("");
+        List<Message> broadcasts = Arrays.asList(active, expired, task);
+
+        assertEquals(Arrays.asList(active, task), BroadcastCache.filter(broadcasts, ExpirationFilter.ACTIVE));
+        assertEquals(Collections.singletonList(expired), BroadcastCache.filter(broadcasts, ExpirationFilter.INACTIVE));
+        assertEquals(broadcasts, BroadcastCache.filter(broadcasts, ExpirationFilter.ALL));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidTtlTest() {
+        cache.setTtlMillis(0);
+    }
+
+    private List<Message> load() {
+        loads.incrementAndGet();
+        return Collections.singletonList(TestUtils.getMockMessageForUser(""));
+    }
+}
@@ -0,0 +1,98 @@
+package gov.nsf.inboxservice.cache;
+
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.inboxservice.dao.CacheInvalidationDao;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * JUnit tests for DbPolledInvalidationChannel
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class DbPolledInvalidationChannelTest {
+
+    @InjectMocks
+    private DbPolledInvalidationChannel channel;
+
+    @Mock
+    private CacheInvalidationDao cacheInvalidationDao;
+
+    private final List<String> received = new ArrayList<String>();
+
+    @Before
+    public void setUp(){
+        channel.setOverlapMillis(1000);
+        channel.setRetentionMillis(60000);
+        channel.addListener(received::add);
+    }
+
+    /**
+     * Tests that publish records the invalidations in the DB
+     *
+     * @throws Exception
+     */
+    @Test
+    public void publishTest() throws Exception {
+        channel.publish(Collections.singleton("test"));
+
+        verify(cacheInvalidationDao).insertInvalidations(Collections.singleton("test"));
+    }
+
+    /**
+     * Tests that the first poll only records the DB time and later polls read back from the previous poll minus the overlap
+     *
+     * @throws Exception
+     */
+    @Test
+    public void pollTest() throws Exception {
+        when(cacheInvalidationDao.getCurrentTime()).thenReturn(new Timestamp(100000), new Timestamp(102000));
+        when(cacheInvalidationDao.getInvalidatedLanIds(new Timestamp(99000))).thenReturn(Arrays.asList("a", "b"));
+
+        channel.poll();
+        verify(cacheInvalidationDao, never()).getInvalidatedLanIds(any(Timestamp.class));
+        assertEquals(0, received.size());
+
+        channel.poll();
+        assertEquals(Arrays.asList("a", "b"), received);
+        verify(cacheInvalidationDao).deleteInvalidations(new Timestamp(42000));
+        assertEquals(2, channel.getPolls());
+        assertEquals(2, channel.getReceived());
+    }
+
+    /**
+     * Tests that a failed poll is counted and the next poll reads from the last successful one
+     *
+     * @throws Exception
+     */
+    @Test
+    public void pollFailureTest() throws Exception {
+        when(cacheInvalidationDao.getCurrentTime()).thenReturn(new Timestamp(100000), new Timestamp(102000), new Timestamp(104000));
+        when(cacheInvalidationDao.getInvalidatedLanIds(new Timestamp(99000)))
+                .thenThrow(new RollbackException("DB down"))
+                .thenReturn(Collections.singletonList("a"));
+
+        channel.poll();
+        channel.poll();
+        assertEquals(1, channel.getFailedPolls());
+        assertEquals(0, received.size());
+
+        channel.poll();
+        assertEquals(Collections.singletonList("a"), received);
+    }
+}
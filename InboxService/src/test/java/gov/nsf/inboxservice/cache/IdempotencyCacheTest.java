@@ -0,0 +1,80 @@
+package gov.nsf.inboxservice.cache;
+
+import gov.nsf.inboxservice.dao.IdempotencyRecord;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for IdempotencyCache
+ */
+public class IdempotencyCacheTest {
+
+    /**
+     * Tests that stored keys are returned and counted as hits
+     */
+    @Test
+    public void putAndGetTest() {
+        IdempotencyCache cache = new IdempotencyCache();
+        IdempotencyRecord record = new IdempotencyRecord("key1", "hash", "{}");
+
+        assertNull(cache.get("key1"));
+        cache.put(record);
+
+        assertSame(record, cache.get("key1"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    /**
+     * Tests that the least recently used key is evicted beyond maxEntries
+     */
+    @Test
+    public void maxEntriesTest() {
+        IdempotencyCache cache = new IdempotencyCache();
+        cache.setMaxEntries(2);
+        cache.put(new IdempotencyRecord("key1", "hash", "{}"));
+        cache.put(new IdempotencyRecord("key2", "hash", "{}"));
+        cache.get("key1");
+        cache.put(new IdempotencyRecord("key3", "hash", "{}"));
+
+        assertEquals(2, cache.getSize());
+        assertNotNull(cache.get("key1"));
+        assertNull(cache.get("key2"));
+    }
+
+    /**
+     * Tests that a key stored inside a transaction is only cached once it commits
+     */
+    @Test
+    public void putInsideTransactionTest() {
+        IdempotencyCache cache = new IdempotencyCache();
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cache.put(new IdempotencyRecord("key1", "hash", "{}"));
+            assertNull(cache.get("key1"));
+
+            for( TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations() ){
+                synchronization.afterCommit();
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertNotNull(cache.get("key1"));
+    }
+
+    /**
+     * Tests that nothing is cached while disabled
+     */
+    @Test
+    public void disabledTest() {
+        IdempotencyCache cache = new IdempotencyCache();
+        cache.setEnabled(false);
+        cache.put(new IdempotencyRecord("key1", "hash", "{}"));
+
+        assertNull(cache.get("key1"));
+        assertEquals(0, cache.getSize());
+    }
+}
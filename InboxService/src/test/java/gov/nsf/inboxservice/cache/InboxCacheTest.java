@@ -0,0 +1,263 @@
+package gov.nsf.inboxservice.cache;
+
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.common.model.ExpirationFilter;
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessagePriority;
+import gov.nsf.inboxservice.api.model.MessageType;
+import gov.nsf.inboxservice.dao.MessageCursor;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * JUnit tests for InboxCache
+ */
+public class InboxCacheTest {
+
+    private InboxCache cache;
+    private AtomicInteger loads;
+
+    private final List<Message> inbox = Arrays.asList(
+            createMessage("3", "2017-02-01 00:00:00.0", MessageType.Information, "2017-03-01 00:00:00.0"),
+            createMessage("1", "2017-01-01 00:00:00.0", MessageType.Task, null),
+            createMessage("2", "2017-01-01 00:00:00.0", MessageType.Information, "9999-12-31 00:00:00.0"));
+
+    @Before
+    public void setUp(){
+        cache = new InboxCache();
+        loads = new AtomicInteger();
+    }
+
+    /**
+     * Tests that the first read loads the inbox and the second is served from the cache in cursor order
+     *
+     * @throws Exception
+     */
+    @Test
+    public void readThroughTest() throws Exception {
+        assertEquals(Arrays.asList("1", "2", "3"), ids(cache.getMessages("test", ExpirationFilter.ALL, this::load)));
+        assertEquals(Arrays.asList("1", "2", "3"), ids(cache.getMessages("TEST ", ExpirationFilter.ALL, this::load)));
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.5, cache.getHitRatio(), 0.001);
+        assertEquals(1, cache.getSize());
+    }
+
+    /**
+     * Tests that the ACTIVE and INACTIVE lists are derived from the cached ALL list
+     *
+     * @throws Exception
+     */
+    @Test
+    public void derivedFiltersTest() throws Exception {
+        assertEquals(Arrays.asList("1", "2"), ids(cache.getMessages("test", ExpirationFilter.ACTIVE, this::load)));
+        assertEquals(Collections.singletonList("3"), ids(cache.getMessages("test", ExpirationFilter.INACTIVE, this::load)));
+        assertEquals(1, loads.get());
+    }
+
+    /**
+     * Tests that a blank expiration date on an Information message matches neither ACTIVE nor INACTIVE
+     */
+    @Test
+    public void filterBlankExpirationDateTest(){
+        List<Message> messages = Collections.singletonList(createMessage("1", "2017-01-01 00:00:00.0", MessageType.Information, ""));
+
+        assertTrue(InboxCache.filter(messages, ExpirationFilter.ACTIVE, System.currentTimeMillis()).isEmpty());
+        assertTrue(InboxCache.filter(messages, ExpirationFilter.INACTIVE, System.currentTimeMillis()).isEmpty());
+        assertEquals(1, InboxCache.filter(messages, ExpirationFilter.ALL, System.currentTimeMillis()).size());
+    }
+
+    /**
+     * Tests that pages are only served once the inbox is cached and that headers have no summary
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getMessagesPageTest() throws Exception {
+        assertNull(cache.getMessagesPage("test", ExpirationFilter.ALL, 2, null, true));
+        assertEquals(0, loads.get());
+
+        cache.getMessages("test", ExpirationFilter.ALL, this::load);
+
+        List<Message> page = cache.getMessagesPage("test", ExpirationFilter.ALL, 2, null, true);
+        assertEquals(Arrays.asList("1", "2"), ids(page));
+        assertNotNull(page.get(0).getSummary());
+
+        page = cache.getMessagesPage("test", ExpirationFilter.ALL, 2, MessageCursor.fromMessage(page.get(1)), false);
+        assertEquals(Collections.singletonList("3"), ids(page));
+        assertNull(page.get(0).getSummary());
+
+        assertEquals(Collections.singletonList("2"), ids(cache.getMessagesPage("test", ExpirationFilter.ACTIVE, 5,
+                MessageCursor.fromMessage(inbox.get(1)), true)));
+    }
+
+    /**
+     * Tests that the least recently used inbox is evicted to stay within the size bound
+     *
+     * @throws Exception
+     */
+    @Test
+    public void sizeEvictionTest() throws Exception {
+        long weight = InboxCache.weigh(inbox);
+        cache.setMaxWeightBytes(weight * 2);
+
+        cache.getMessages("a", ExpirationFilter.ALL, this::load);
+        cache.getMessages("b", ExpirationFilter.ALL, this::load);
+        cache.getMessages("a", ExpirationFilter.ALL, this::load);
+        cache.getMessages("c", ExpirationFilter.ALL, this::load);
+
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, cache.getSize());
+        assertEquals(weight * 2, cache.getWeightBytes());
+        assertNotNull(cache.getMessagesPage("a", ExpirationFilter.ALL, 1, null, true));
+        assertNull(cache.getMessagesPage("b", ExpirationFilter.ALL, 1, null, true));
+    }
+
+    /**
+     * Tests that an inbox larger than the whole cache is returned but not cached
+     *
+     * @throws Exception
+     */
+    @Test
+    public void oversizedLoadTest() throws Exception {
+        cache.setMaxWeightBytes(InboxCache.weigh(inbox) - 1);
+
+        assertEquals(3, cache.getMessages("test", ExpirationFilter.ALL, this::load).size());
+        assertEquals(0, cache.getSize());
+        assertEquals(1, cache.getOversizedLoads());
+    }
+
+    /**
+     * Tests that entries are reloaded after the TTL
+     *
+     * @throws Exception
+     */
+    @Test
+    public void ttlExpirationTest() throws Exception {
+        cache.setTtlMillis(1);
+
+        cache.getMessages("test", ExpirationFilter.ALL, this::load);
+        Thread.sleep(5);
+        cache.getMessages("test", ExpirationFilter.ALL, this::load);
+
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.getExpirations());
+    }
+
+    /**
+     * Tests that invalidate publishes to the channel and drops the local entry
+     *
+     * @throws Exception
+     */
+    @Test
+    public void invalidateTest() throws Exception {
+        InvalidationChannel channel = mock(InvalidationChannel.class);
+        cache.setInvalidationChannel(channel);
+        cache.getMessages("test", ExpirationFilter.ALL, this::load);
+
+        cache.invalidate(Collections.singleton("test"));
+
+        verify(channel).publish(Collections.singleton("test"));
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getWeightBytes());
+        assertEquals(1, cache.getLocalInvalidations());
+    }
+
+    /**
+     * Tests that invalidations received from the channel drop the local entry
+     *
+     * @throws Exception
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void remoteInvalidationTest() throws Exception {
+        InvalidationChannel channel = mock(InvalidationChannel.class);
+        cache.setInvalidationChannel(channel);
+        ArgumentCaptor<Consumer> listener = ArgumentCaptor.forClass(Consumer.class);
+        verify(channel).addListener(listener.capture());
+
+        cache.getMessages("test", ExpirationFilter.ALL, this::load);
+        listener.getValue().accept("test    ");
+
+        assertEquals(0, cache.getSize());
+        assertEquals(1, cache.getRemoteInvalidations());
+    }
+
+    /**
+     * Tests that a load racing an invalidation is returned but not cached
+     *
+     * @throws Exception
+     */
+    @Test
+    public void invalidationDuringLoadTest() throws Exception {
+        cache.getMessages("test", ExpirationFilter.ALL, lanId -> {
+            cache.invalidate(Collections.singleton(lanId));
+            return load(lanId);
+        });
+
+        assertEquals(0, cache.getSize());
+    }
+
+    /**
+     * Tests that the cache is bypassed in archive mode
+     *
+     * @throws Exception
+     */
+    @Test
+    public void archiveModeBypassTest() throws Exception {
+        InvalidationChannel channel = mock(InvalidationChannel.class);
+        cache.setInvalidationChannel(channel);
+        cache.setArchiveEnabled(true);
+
+        cache.getMessages("test", ExpirationFilter.ALL, this::load);
+        cache.getMessages("test", ExpirationFilter.ALL, this::load);
+        cache.invalidate(Collections.singleton("test"));
+
+        assertFalse(cache.isEnabled());
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.getSize());
+        verify(channel, never()).publish(any(Collection.class));
+    }
+
+    private List<Message> load(String lanId) throws RollbackException {
+        loads.incrementAndGet();
+        return new ArrayList<Message>(inbox);
+    }
+
+    private static List<String> ids(List<Message> messages) {
+        List<String> ids = new ArrayList<String>();
+        for( Message message : messages ){
+            ids.add(message.getId());
+        }
+        return ids;
+    }
+
+    private static Message createMessage(String id, String creationDate, MessageType type, String expirationDate) {
+        Message message = new Message();
+        message.setId(id);
+        message.setLanId("test");
+        message.setCreationDate(creationDate);
+        message.setType(type);
+        message.setPriority(MessagePriority.Low);
+        message.setSummary("Summary " + id);
+        message.setExpirationDate(expirationDate);
+        return message;
+    }
+}
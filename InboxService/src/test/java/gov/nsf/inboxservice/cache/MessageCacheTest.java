@@ -0,0 +1,233 @@
+package gov.nsf.inboxservice.cache;
+
+import gov.nsf.common.exception.ResourceNotFoundException;
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.common.util.Constants;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for MessageCache
+ */
+public class MessageCacheTest {
+
+    private MessageCache cache;
+    private AtomicInteger loads;
+
+    @Before
+    public void setUp(){
+        cache = new MessageCache();
+        loads = new AtomicInteger();
+    }
+
+    /**
+     * Tests that the second read of a message is served from the cache
+     *
+     * @throws Exception
+     */
+    @Test
+    public void readThroughTest() throws Exception {
+        Message first = cache.getMessage("1", this::load);
+        Message second = cache.getMessage("1", this::load);
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    /**
+     * Tests that a missing message ID is cached until notFoundTtlMillis passes
+     *
+     * @throws Exception
+     */
+    @Test
+    public void notFoundCachedTest() throws Exception {
+        cache.setNotFoundTtlMillis(50);
+
+        assertNotFound("404");
+        assertNotFound("404");
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getNotFoundHits());
+
+        Thread.sleep(60);
+        assertNotFound("404");
+        assertEquals(2, loads.get());
+    }
+
+    /**
+     * Tests that DB errors are not cached
+     *
+     * @throws Exception
+     */
+    @Test
+    public void rollbackNotCachedTest() throws Exception {
+        for( int i = 0; i < 2; i++ ){
+            try {
+                cache.getMessage("1", msgId -> {
+                    loads.incrementAndGet();
+                    throw new RollbackException("DB down");
+                });
+                fail("Expected RollbackException");
+            } catch (ResourceNotFoundException ex) {
+                fail("Expected RollbackException");
+            } catch (RollbackException ex) {
+                //Expected
+            }
+        }
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.getSize());
+    }
+
+    /**
+     * Tests that found messages are reloaded after the TTL
+     *
+     * @throws Exception
+     */
+    @Test
+    public void ttlExpirationTest() throws Exception {
+        cache.setTtlMillis(1);
+
+        cache.getMessage("1", this::load);
+        Thread.sleep(5);
+        cache.getMessage("1", this::load);
+
+        assertEquals(2, loads.get());
+    }
+
+    /**
+     * Tests that the least recently used message is evicted to stay within maxEntries
+     *
+     * @throws Exception
+     */
+    @Test
+    public void sizeEvictionTest() throws Exception {
+        cache.setMaxEntries(2);
+
+        cache.getMessage("1", this::load);
+        cache.getMessage("2", this::load);
+        cache.getMessage("1", this::load);
+        cache.getMessage("3", this::load);
+        cache.getMessage("1", this::load);
+
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(3, loads.get());
+    }
+
+    /**
+     * Tests that invalidate evicts messages and missing message IDs
+     *
+     * @throws Exception
+     */
+    @Test
+    public void invalidateTest() throws Exception {
+        cache.getMessage("1", this::load);
+        assertNotFound("404");
+
+        cache.invalidate(Arrays.asList("1", "404"));
+
+        assertEquals(0, cache.getSize());
+    }
+
+    /**
+     * Tests that evictUser only evicts the user's messages
+     *
+     * @throws Exception
+     */
+    @Test
+    public void evictUserTest() throws Exception {
+        cache.getMessage("1", this::load);
+        cache.getMessage("2", msgId -> createMessage(msgId, "other"));
+
+        cache.evictUser("TEST    ");
+
+        assertEquals(1, cache.getSize());
+        cache.getMessage("2", this::load);
+        assertEquals(1, cache.getHits());
+    }
+
+    /**
+     * Tests that evictUser only evicts what is still cached for the user after size evictions,
+     * invalidations and reloads for another user
+     *
+     * @throws Exception
+     */
+    @Test
+    public void evictUserAfterEvictionsTest() throws Exception {
+        cache.setMaxEntries(2);
+        cache.getMessage("1", this::load);
+        cache.getMessage("2", this::load);
+        cache.getMessage("3", msgId -> createMessage(msgId, "other"));
+        cache.invalidate(Collections.singleton("2"));
+        cache.getMessage("2", msgId -> createMessage(msgId, "other"));
+
+        cache.evictUser("test");
+        assertEquals(2, cache.getSize());
+
+        cache.evictUser("OTHER");
+        assertEquals(0, cache.getSize());
+    }
+
+    /**
+     * Tests that a load racing an invalidation is returned but not cached
+     *
+     * @throws Exception
+     */
+    @Test
+    public void invalidationDuringLoadTest() throws Exception {
+        cache.getMessage("1", msgId -> {
+            cache.invalidate(Collections.singleton(msgId));
+            return load(msgId);
+        });
+
+        assertEquals(0, cache.getSize());
+    }
+
+    /**
+     * Tests that every read goes to the DB when the cache is disabled
+     *
+     * @throws Exception
+     */
+    @Test
+    public void disabledTest() throws Exception {
+        cache.setEnabled(false);
+
+        cache.getMessage("1", this::load);
+        cache.getMessage("1", this::load);
+
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.getSize());
+    }
+
+    private void assertNotFound(String msgId) throws RollbackException {
+        try {
+            cache.getMessage(msgId, this::load);
+            fail("Expected ResourceNotFoundException");
+        } catch (ResourceNotFoundException ex) {
+            assertEquals(Constants.MSG_NOT_FOUND + msgId, ex.getErrMsg());
+        }
+    }
+
+    private Message load(String msgId) throws RollbackException {
+        loads.incrementAndGet();
+        if( "404".equals(msgId) ){
+            throw new ResourceNotFoundException(Constants.MSG_NOT_FOUND + msgId);
+        }
+        return createMessage(msgId, "test");
+    }
+
+    private static Message createMessage(String msgId, String lanId) {
+        Message message = new Message();
+        message.setId(msgId);
+        message.setLanId(lanId);
+        return message;
+    }
+}
@@ -1,6 +1,7 @@
 package gov.nsf.inboxservice.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import gov.nsf.common.exception.ResourceNotFoundException;
 import gov.nsf.common.exception.RollbackException;
 import gov.nsf.common.model.BaseResponseWrapper;
 import gov.nsf.common.model.ExpirationFilter;
@@ -8,18 +9,40 @@ import gov.nsf.components.authorization.model.UserPrincipal;
 import gov.nsf.components.rolemanager.model.Identity;
 import gov.nsf.components.rolemanager.model.UserData;
 import gov.nsf.inboxservice.api.model.CreateMessageRequest;
+import gov.nsf.inboxservice.api.model.CreateTemplatedMessageRequest;
+import gov.nsf.inboxservice.api.model.DedupeMode;
+import gov.nsf.inboxservice.api.model.DeleteMessageResult;
+import gov.nsf.inboxservice.api.model.DeleteMessageStatus;
+import gov.nsf.inboxservice.api.model.DeleteMessagesRequest;
+import gov.nsf.inboxservice.api.model.DeleteMessagesResponseWrapper;
 import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessageCount;
+import gov.nsf.inboxservice.api.model.MessageCountResponseWrapper;
+import gov.nsf.inboxservice.api.model.MessagePriority;
 import gov.nsf.inboxservice.api.model.MessageResponseWrapper;
+import gov.nsf.inboxservice.api.model.MessageType;
+import gov.nsf.inboxservice.api.model.RecipientGroup;
+import gov.nsf.inboxservice.api.model.RecipientGroupResponseWrapper;
+import gov.nsf.inboxservice.api.model.UpdateRecipientGroupRequest;
 import gov.nsf.inboxservice.api.service.InboxService;
+import gov.nsf.inboxservice.common.util.Constants;
 import gov.nsf.inboxservice.common.util.TestUtils;
+import gov.nsf.inboxservice.dao.MessageCursor;
+import gov.nsf.inboxservice.dao.MessageHandler;
+import gov.nsf.inboxservice.service.InboxIdempotencyService;
+import gov.nsf.inboxservice.service.InboxStreamService;
+import gov.nsf.inboxservice.ingest.MessageIngestQueue;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -27,16 +50,27 @@ import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import java.sql.Timestamp;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -53,11 +87,25 @@ public class InboxControllerTest {
     @Mock
     private InboxService inboxService;
 
+    @Mock
+    private InboxStreamService inboxStreamService;
+
+    @Mock
+    private MessageIngestQueue messageIngestQueue;
+
+    @Mock
+    private InboxIdempotencyService inboxIdempotencyService;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
     private MockMvc mockMvc;
 
     @Before
     public void setUp() {
-        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
+                .setMessageConverters(new MappingJackson2HttpMessageConverter(objectMapper))
+                .build();
     }
 
     private final String TEST_LAN_ID = "test";
@@ -207,6 +255,94 @@ public class InboxControllerTest {
         verify(inboxService, times(0)).getMessages(TEST_LAN_ID, ExpirationFilter.ACTIVE);
     }
 
+    /**
+     * Tests that the getMessageCountsForSessionUser happy path behavior returns with a 200 response
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getMessageCountsRequestHappyPathTest() throws Exception {
+        when(inboxService.getMessageCounts(TEST_LAN_ID)).thenReturn(new MessageCountResponseWrapper(
+                Collections.singletonList(new MessageCount(MessageType.Task, MessagePriority.High, 1, 0))));
+        setupMockSecurityContext(TEST_LAN_ID);
+        String URL = "/users/" + TEST_LAN_ID + "/messages/counts";
+        mockMvc.perform(get(URL).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk()).andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8));
+        verify(inboxService, times(1)).getMessageCounts(TEST_LAN_ID);
+        verify(inboxService, times(0)).getMessage(any(String.class));
+    }
+
+    /**
+     * Tests that the getMessageCountsForSessionUser returns with a 403 when the passed lanId != sessionId
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getMessageCountsRequestSessionIdNotEqualsPassedLanIdTest() throws Exception {
+        setupMockSecurityContext("differentSessionId");
+        String URL = "/users/" + TEST_LAN_ID + "/messages/counts";
+        mockMvc.perform(get(URL).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isForbidden());
+        verify(inboxService, times(0)).getMessageCounts(TEST_LAN_ID);
+    }
+
+    /**
+     * Tests that a paged getMessagesForUser request passes the limit and cursor to the service
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getMessagesPagedRequestHappyPathTest() throws Exception {
+        List<Message> mockedMessages = TestUtils.getMockMessagesForUser(TEST_LAN_ID, 2);
+        String after = new MessageCursor(Timestamp.valueOf("2017-01-01 23:30:32.0"), 1).encode();
+        when(inboxService.getMessages(TEST_LAN_ID, ExpirationFilter.ACTIVE, 2, after)).thenReturn(new MessageResponseWrapper(mockedMessages));
+        setupMockSecurityContext(TEST_LAN_ID);
+        String URL = "/users/" + TEST_LAN_ID + "/messages?active=true&limit=2&after=" + after;
+        mockMvc.perform(get(URL).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk()).andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8));
+        verify(inboxService, times(1)).getMessages(TEST_LAN_ID, ExpirationFilter.ACTIVE, 2, after);
+        verify(inboxService, times(0)).getMessages(TEST_LAN_ID, ExpirationFilter.ACTIVE);
+    }
+
+    /**
+     * Tests that a cursor without a limit uses the default page limit
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getMessagesPagedRequestDefaultLimitTest() throws Exception {
+        String after = new MessageCursor(Timestamp.valueOf("2017-01-01 23:30:32.0"), 1).encode();
+        when(inboxService.getMessages(TEST_LAN_ID, ExpirationFilter.ALL, Constants.DEFAULT_PAGE_LIMIT, after)).thenReturn(new MessageResponseWrapper(TestUtils.getMockMessagesForUser(TEST_LAN_ID, 1)));
+        String URL = "/auth/users/" + TEST_LAN_ID + "/messages?after=" + after;
+        mockMvc.perform(get(URL).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
+        verify(inboxService, times(1)).getMessages(TEST_LAN_ID, ExpirationFilter.ALL, Constants.DEFAULT_PAGE_LIMIT, after);
+    }
+
+    /**
+     * Tests that summary=false reads a page of headers even without a limit
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getMessageHeadersRequestTest() throws Exception {
+        when(inboxService.getMessageHeaders(TEST_LAN_ID, ExpirationFilter.ALL, Constants.DEFAULT_PAGE_LIMIT, null)).thenReturn(new MessageResponseWrapper(TestUtils.getMockMessagesForUser(TEST_LAN_ID, 1)));
+        String URL = "/auth/users/" + TEST_LAN_ID + "/messages?summary=false";
+        mockMvc.perform(get(URL).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
+        verify(inboxService, times(1)).getMessageHeaders(TEST_LAN_ID, ExpirationFilter.ALL, Constants.DEFAULT_PAGE_LIMIT, null);
+        verify(inboxService, times(0)).getMessages(TEST_LAN_ID, ExpirationFilter.ALL);
+    }
+
+    /**
+     * Tests that an invalid page limit or cursor returns with a 400 response
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getMessagesPagedRequestBadRequestTest() throws Exception {
+        String URL = "/auth/users/" + TEST_LAN_ID + "/messages?limit=0";
+        mockMvc.perform(get(URL).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isBadRequest());
+        URL = "/auth/users/" + TEST_LAN_ID + "/messages?limit=10&after=garbage";
+        mockMvc.perform(get(URL).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isBadRequest());
+        verify(inboxService, times(0)).getMessages(any(String.class), any(ExpirationFilter.class), any(Integer.class), any(String.class));
+    }
+
     /**
      * Tests that the createMessage happy path behavior returns with a 200 response
      *
@@ -224,6 +360,180 @@ public class InboxControllerTest {
         verify(inboxService, times(1)).createMessage(any(Message.class), any(List.class));
     }
 
+    /**
+     * Tests that stream=true writes every message the service hands over inside the usual wrapper
+     *
+     * @throws Exception
+     */
+    @Test
+    public void streamMessagesRequestHappyPathTest() throws Exception {
+        List<Message> mockedMessages = TestUtils.getMockMessagesForUser(TEST_LAN_ID, 3);
+        doAnswer(invocation -> {
+            MessageHandler handler = (MessageHandler) invocation.getArguments()[2];
+            for( Message message : mockedMessages ){
+                handler.handle(message);
+            }
+            return null;
+        }).when(inboxStreamService).streamMessages(eq(TEST_LAN_ID), eq(ExpirationFilter.ACTIVE), any(MessageHandler.class));
+
+        String body = mockMvc.perform(get("/auth/users/" + TEST_LAN_ID + "/messages?stream=true&active=true"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8))
+                .andReturn().getResponse().getContentAsString();
+
+        MessageResponseWrapper wrapper = new ObjectMapper().treeToValue(
+                new ObjectMapper().readTree(body).get(Constants.MESSAGE_RESPONSE_WRAPPER), MessageResponseWrapper.class);
+        assertEquals(3, wrapper.getMessages().size());
+        verify(inboxService, never()).getMessages(anyString(), any(ExpirationFilter.class));
+    }
+
+    /**
+     * Tests that the streamed response is the same JSON as the non-streamed one for the same messages
+     *
+     * @throws Exception
+     */
+    @Test
+    public void streamMessagesMatchesNonStreamedTest() throws Exception {
+        List<Message> mockedMessages = TestUtils.getMockMessagesForUser(TEST_LAN_ID, 3);
+        mockedMessages.get(1).setActionLink(null);
+        when(inboxService.getMessages(TEST_LAN_ID, ExpirationFilter.ALL)).thenReturn(new MessageResponseWrapper(mockedMessages));
+        doAnswer(invocation -> {
+            MessageHandler handler = (MessageHandler) invocation.getArguments()[2];
+            for( Message message : mockedMessages ){
+                handler.handle(message);
+            }
+            return null;
+        }).when(inboxStreamService).streamMessages(eq(TEST_LAN_ID), eq(ExpirationFilter.ALL), any(MessageHandler.class));
+
+        String body = mockMvc.perform(get("/auth/users/" + TEST_LAN_ID + "/messages"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        String streamedBody = mockMvc.perform(get("/auth/users/" + TEST_LAN_ID + "/messages?stream=true"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals(objectMapper.readTree(body), objectMapper.readTree(streamedBody));
+    }
+
+    /**
+     * Tests that streaming another user's inbox returns with a 403 response for the non-auth route
+     *
+     * @throws Exception
+     */
+    @Test
+    public void streamMessagesRequestSessionIdNotEqualsPassedLanIdTest() throws Exception {
+        setupMockSecurityContext("differentSessionId");
+        mockMvc.perform(get("/users/" + TEST_LAN_ID + "/messages?stream=true")).andExpect(status().isForbidden());
+        verify(inboxStreamService, never()).streamMessages(anyString(), any(ExpirationFilter.class), any(MessageHandler.class));
+    }
+
+    /**
+     * Tests that the deleteMessages happy path returns the per ID outcomes with a 200 response
+     *
+     * @throws Exception
+     */
+    @Test
+    public void bulkDeleteMessagesRequestHappyPathTest() throws Exception {
+        List<String> msgIds = Arrays.asList("1", "2");
+        String jsonBody = new ObjectMapper().writeValueAsString(new DeleteMessagesRequest(msgIds));
+        when(inboxService.deleteMessages(msgIds)).thenReturn(new DeleteMessagesResponseWrapper(Arrays.asList(
+                new DeleteMessageResult("1", DeleteMessageStatus.Deleted), new DeleteMessageResult("2", DeleteMessageStatus.NotFound))));
+        String URL = "/auth/messages/delete";
+        mockMvc.perform(post(URL).content(jsonBody).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"NotFound\"")));
+        verify(inboxService, times(1)).deleteMessages(msgIds);
+    }
+
+    /**
+     * Tests that a deleteMessages request without IDs returns with a 400 response
+     *
+     * @throws Exception
+     */
+    @Test
+    public void bulkDeleteMessagesRequestEmptyTest() throws Exception {
+        String jsonBody = new ObjectMapper().writeValueAsString(new DeleteMessagesRequest(Collections.<String>emptyList()));
+        String URL = "/auth/messages/delete";
+        mockMvc.perform(post(URL).content(jsonBody).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isBadRequest());
+        verify(inboxService, never()).deleteMessages(any(List.class));
+    }
+
+    /**
+     * Tests that a request with an Idempotency-Key header is stored through the idempotency service
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createMessageIdempotencyKeyTest() throws Exception {
+        Message message = TestUtils.getMockMessageForUser(TEST_LAN_ID);
+        String jsonBody = new ObjectMapper().writeValueAsString(new CreateMessageRequest(message, Collections.singletonList(TEST_LAN_ID)));
+        when(inboxIdempotencyService.createMessage(any(Message.class), any(List.class), any(DedupeMode.class), eq("key1"))).thenReturn(new MessageResponseWrapper(message));
+
+        mockMvc.perform(post("/messages").header(Constants.IDEMPOTENCY_KEY_HEADER, "key1").content(jsonBody).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
+        verify(inboxIdempotencyService, times(1)).createMessage(any(Message.class), any(List.class), any(DedupeMode.class), eq("key1"));
+        verify(inboxService, never()).createMessage(any(Message.class), any(List.class));
+    }
+
+    /**
+     * Tests that an invalid Idempotency-Key header returns with a 400 response
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createMessageInvalidIdempotencyKeyTest() throws Exception {
+        Message message = TestUtils.getMockMessageForUser(TEST_LAN_ID);
+        String jsonBody = new ObjectMapper().writeValueAsString(new CreateMessageRequest(message, Collections.singletonList(TEST_LAN_ID)));
+
+        mockMvc.perform(post("/messages").header(Constants.IDEMPOTENCY_KEY_HEADER, TestUtils.generateStringWithLength(Constants.IDEMPOTENCY_KEY_MAX_LENGTH + 1))
+                .content(jsonBody).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isBadRequest());
+        verify(inboxIdempotencyService, never()).createMessage(any(Message.class), any(List.class), any(DedupeMode.class), anyString());
+    }
+
+    /**
+     * Tests that async=true journals the request and returns 202 without storing the messages
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createMessageAsyncRequestAcceptedTest() throws Exception {
+        Message message = TestUtils.getMockMessageForUser(TEST_LAN_ID);
+        String jsonBody = new ObjectMapper().writeValueAsString(new CreateMessageRequest(message, Collections.singletonList(TEST_LAN_ID)));
+        when(messageIngestQueue.isAccepting()).thenReturn(true);
+
+        mockMvc.perform(post("/messages?async=true").content(jsonBody).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isAccepted());
+        verify(messageIngestQueue, times(1)).accept(any(CreateMessageRequest.class));
+        verify(inboxService, never()).createMessage(any(Message.class), any(List.class), any(DedupeMode.class));
+    }
+
+    /**
+     * Tests that async=true stores the messages before returning while async ingest is disabled
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createMessageAsyncRequestIngestDisabledTest() throws Exception {
+        Message message = TestUtils.getMockMessageForUser(TEST_LAN_ID);
+        String jsonBody = new ObjectMapper().writeValueAsString(new CreateMessageRequest(message, Collections.singletonList(TEST_LAN_ID)));
+
+        mockMvc.perform(post("/auth/messages?async=true").content(jsonBody).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isAccepted());
+        verify(messageIngestQueue, never()).accept(any(CreateMessageRequest.class));
+        verify(inboxService, times(1)).createMessage(any(Message.class), any(List.class), any(DedupeMode.class));
+    }
+
+    /**
+     * Tests that async=true validates the request before journaling it
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createMessageAsyncRequestBadRequestTest() throws Exception {
+        Message message = TestUtils.getMockMessageForUser(TEST_LAN_ID);
+        String jsonBody = new ObjectMapper().writeValueAsString(new CreateMessageRequest(message, Collections.<String>emptyList()));
+        when(messageIngestQueue.isAccepting()).thenReturn(true);
+
+        mockMvc.perform(post("/messages?async=true").content(jsonBody).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isBadRequest());
+        verify(messageIngestQueue, never()).accept(any(CreateMessageRequest.class));
+    }
+
     /**
      * Tests that the createMessage server error (RollbackException) returns with a 500 response
      *
@@ -263,12 +573,13 @@ public class InboxControllerTest {
     @Test
     public void deleteMessageByIdRequestWithoutAuthHappyPathTest() throws Exception {
         Message mockedMessage = TestUtils.getMockMessageForUser(TEST_LAN_ID);
-        when(inboxService.getMessage(mockedMessage.getId())).thenReturn(new MessageResponseWrapper(mockedMessage));
-        when(inboxService.deleteMessage(mockedMessage.getId())).thenReturn(new MessageResponseWrapper(mockedMessage));
+        when(inboxService.deleteMessageForUser(mockedMessage.getLanId(), mockedMessage.getId())).thenReturn(new MessageResponseWrapper(mockedMessage));
         setupMockSecurityContext(TEST_LAN_ID);
         String URL = "/users/"+mockedMessage.getLanId()+"/messages/" + mockedMessage.getId();
         mockMvc.perform(delete(URL).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk()).andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8));
-        verify(inboxService, times(1)).deleteMessage(mockedMessage.getId());
+        verify(inboxService, times(1)).deleteMessageForUser(mockedMessage.getLanId(), mockedMessage.getId());
+        verify(inboxService, never()).getMessage(anyString());
+        verify(inboxService, never()).deleteMessage(anyString());
     }
 
     /**
@@ -279,12 +590,39 @@ public class InboxControllerTest {
     @Test
     public void deleteMessageByIdRequestWithoutAuthServerErrorTest() throws Exception {
         Message mockedMessage = TestUtils.getMockMessageForUser(TEST_LAN_ID);
-        when(inboxService.getMessage(mockedMessage.getId())).thenReturn(new MessageResponseWrapper(mockedMessage));
-        when(inboxService.deleteMessage(mockedMessage.getId())).thenThrow(new RollbackException("Some service exception was thrown"));
+        when(inboxService.deleteMessageForUser(mockedMessage.getLanId(), mockedMessage.getId())).thenThrow(new RollbackException("Some service exception was thrown"));
         setupMockSecurityContext(TEST_LAN_ID);
         String URL = "/users/"+mockedMessage.getLanId()+"/messages/" + mockedMessage.getId();
         mockMvc.perform(delete(URL).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isInternalServerError());
-        verify(inboxService, times(1)).deleteMessage(mockedMessage.getId());
+        verify(inboxService, times(1)).deleteMessageForUser(mockedMessage.getLanId(), mockedMessage.getId());
+    }
+
+    /**
+     * Tests that a Task or another user's message returns a 403 response for the non-auth route
+     *
+     * @throws Exception
+     */
+    @Test
+    public void deleteMessageByIdRequestWithoutAuthTaskAccessDeniedTest() throws Exception {
+        Message mockedMessage = TestUtils.getMockMessageForUser(TEST_LAN_ID);
+        when(inboxService.deleteMessageForUser(mockedMessage.getLanId(), mockedMessage.getId())).thenThrow(new AccessDeniedException(Constants.ERROR_ACCESS_DENIED));
+        setupMockSecurityContext(TEST_LAN_ID);
+        String URL = "/users/"+mockedMessage.getLanId()+"/messages/" + mockedMessage.getId();
+        mockMvc.perform(delete(URL).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isForbidden());
+    }
+
+    /**
+     * Tests that a missing message returns a 404 response for the non-auth route
+     *
+     * @throws Exception
+     */
+    @Test
+    public void deleteMessageByIdRequestWithoutAuthNotFoundTest() throws Exception {
+        Message mockedMessage = TestUtils.getMockMessageForUser(TEST_LAN_ID);
+        when(inboxService.deleteMessageForUser(mockedMessage.getLanId(), mockedMessage.getId())).thenThrow(new ResourceNotFoundException(Constants.MSG_NOT_FOUND + mockedMessage.getId()));
+        setupMockSecurityContext(TEST_LAN_ID);
+        String URL = "/users/"+mockedMessage.getLanId()+"/messages/" + mockedMessage.getId();
+        mockMvc.perform(delete(URL).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isNotFound());
     }
 
 
@@ -297,13 +635,13 @@ public class InboxControllerTest {
     public void deleteMessageByIdRequestWithoutAuthAccessDeniedTest() throws Exception {
         Message mockedMessage = TestUtils.getMockMessageForUser(TEST_LAN_ID);
         mockedMessage.setLanId("SomeOthe");
-        when(inboxService.getMessage(mockedMessage.getId())).thenReturn(new MessageResponseWrapper(mockedMessage));
         setupMockSecurityContext(TEST_LAN_ID);
         String URL = "/users/"+mockedMessage.getLanId().trim()+"/messages/" + mockedMessage.getId();
         System.out.println(URL);
         mockMvc.perform(delete(URL).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isForbidden());
         
         verify(inboxService, times(0)).deleteMessage(mockedMessage.getId());
+        verify(inboxService, times(0)).deleteMessageForUser(anyString(), anyString());
     }
 
     /**
@@ -389,4 +727,194 @@ public class InboxControllerTest {
         when((auth.getPrincipal())).thenReturn(new UserPrincipal("username", "pwd", Collections.emptyList(), new UserData(id)));
         SecurityContextHolder.setContext(ctx);
     }
+
+    /**
+     * Tests that the dedupe mode of the request is passed to the service
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createMessageDedupeTest() throws Exception {
+        Message message = TestUtils.getMockMessageForUser(TEST_LAN_ID);
+        String jsonBody = new ObjectMapper().writeValueAsString(new CreateMessageRequest(message, Collections.singletonList(TEST_LAN_ID), DedupeMode.Skip));
+        when(inboxService.createMessage(any(Message.class), any(List.class), eq(DedupeMode.Skip))).thenReturn(new MessageResponseWrapper(message));
+
+        mockMvc.perform(post("/messages").content(jsonBody).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
+        verify(inboxService, times(1)).createMessage(any(Message.class), any(List.class), eq(DedupeMode.Skip));
+        verify(inboxService, never()).createMessage(any(Message.class), any(List.class));
+    }
+
+    /**
+     * Tests that an unknown dedupe mode returns with a 400 response
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createMessageInvalidDedupeTest() throws Exception {
+        Message message = TestUtils.getMockMessageForUser(TEST_LAN_ID);
+        String jsonBody = new ObjectMapper().writeValueAsString(new CreateMessageRequest(message, Collections.singletonList(TEST_LAN_ID)))
+                .replace("}", ",\"dedupe\":\"Sometimes\"}");
+
+        mockMvc.perform(post("/messages").content(jsonBody).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isBadRequest());
+        verify(inboxService, never()).createMessage(any(Message.class), any(List.class), any(DedupeMode.class));
+    }
+
+    /**
+     * Tests that a templated create request is passed to the service
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createTemplatedMessageTest() throws Exception {
+        Map<String, Map<String, String>> recipients = Collections.singletonMap(TEST_LAN_ID, Collections.singletonMap("id", "1"));
+        String jsonBody = new ObjectMapper().writeValueAsString(new CreateTemplatedMessageRequest("proposal-due", recipients, null));
+        when(inboxService.createTemplatedMessage(eq("proposal-due"), anyMap(), any(String.class)))
+                .thenReturn(new MessageResponseWrapper(TestUtils.getMockMessagesForUser(TEST_LAN_ID, 1)));
+
+        mockMvc.perform(post("/messages/templated").content(jsonBody).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
+        verify(inboxService, times(1)).createTemplatedMessage("proposal-due", recipients, null);
+    }
+
+    /**
+     * Tests that a templated create request without recipients returns with a 400 response
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createTemplatedMessageBadRequestTest() throws Exception {
+        String jsonBody = new ObjectMapper().writeValueAsString(new CreateTemplatedMessageRequest("proposal-due", null, null));
+
+        mockMvc.perform(post("/messages/templated").content(jsonBody).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isBadRequest());
+        verify(inboxService, never()).createTemplatedMessage(anyString(), anyMap(), anyString());
+    }
+
+    /**
+     * Tests that a valid template is saved and an invalid template ID returns with a 400 response
+     *
+     * @throws Exception
+     */
+    @Test
+    public void saveMessageTemplateTest() throws Exception {
+        Message template = TestUtils.getMockMessageForUser(TEST_LAN_ID);
+        template.setExpirationDate(null);
+        String jsonBody = new ObjectMapper().writeValueAsString(template);
+        when(inboxService.saveMessageTemplate(eq("proposal-due"), any(Message.class))).thenReturn(new MessageResponseWrapper(template));
+
+        mockMvc.perform(put("/templates/proposal-due").content(jsonBody).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
+        mockMvc.perform(put("/templates/proposal due").content(jsonBody).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isBadRequest());
+        verify(inboxService, times(1)).saveMessageTemplate(eq("proposal-due"), any(Message.class));
+    }
+
+    /**
+     * Tests that a template is returned by ID and an unknown ID returns with a 404 response
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getMessageTemplateTest() throws Exception {
+        when(inboxService.getMessageTemplate("proposal-due")).thenReturn(new MessageResponseWrapper(TestUtils.getMockMessageForUser(TEST_LAN_ID)));
+        when(inboxService.getMessageTemplate("missing")).thenThrow(new ResourceNotFoundException(Constants.TEMPLATE_NOT_FOUND + "missing"));
+
+        mockMvc.perform(get("/templates/proposal-due")).andExpect(status().isOk());
+        mockMvc.perform(get("/templates/missing")).andExpect(status().isNotFound());
+    }
+
+
+    /**
+     * Tests that a create request naming groups without lanIds is passed to the service with its groups
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createMessageForGroupsTest() throws Exception {
+        Message message = TestUtils.getMockMessageForUser(TEST_LAN_ID);
+        List<String> groups = Collections.singletonList("bio-division");
+        String jsonBody = new ObjectMapper().writeValueAsString(new CreateMessageRequest(message, null, groups, null));
+        when(inboxService.createMessage(any(Message.class), any(List.class), eq(groups), any(DedupeMode.class))).thenReturn(new MessageResponseWrapper(message));
+
+        mockMvc.perform(post("/messages").content(jsonBody).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
+        mockMvc.perform(post("/messages").header(Constants.IDEMPOTENCY_KEY_HEADER, "key1").content(jsonBody).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
+        verify(inboxService, times(1)).createMessage(any(Message.class), any(List.class), eq(groups), any(DedupeMode.class));
+        verify(inboxIdempotencyService, times(1)).createMessage(any(Message.class), any(List.class), eq(groups), any(DedupeMode.class), eq("key1"));
+        verify(inboxService, never()).createMessage(any(Message.class), any(List.class));
+    }
+
+    /**
+     * Tests that group deltas are passed to the service and an invalid group name returns with a 400 response
+     *
+     * @throws Exception
+     */
+    @Test
+    public void updateRecipientGroupTest() throws Exception {
+        List<String> add = Arrays.asList(TEST_LAN_ID, "user2");
+        String jsonBody = new ObjectMapper().writeValueAsString(new UpdateRecipientGroupRequest(add, null, 3, "DivisionSvc"));
+        when(inboxService.updateRecipientGroup(eq("bio-division"), any(List.class), any(List.class), any(Integer.class), anyString()))
+                .thenReturn(new RecipientGroupResponseWrapper(new RecipientGroup("bio-division", 4, 2, "DivisionSvc")));
+
+        mockMvc.perform(post("/groups/bio-division/members").content(jsonBody).contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk()).andExpect(content().string(containsString("\"version\":4")));
+        mockMvc.perform(post("/groups/bio division/members").content(jsonBody).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isBadRequest());
+        verify(inboxService, times(1)).updateRecipientGroup("bio-division", add, null, 3, "DivisionSvc");
+    }
+
+    /**
+     * Tests that a group is returned by name and an unknown name returns with a 404 response
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getRecipientGroupTest() throws Exception {
+        when(inboxService.getRecipientGroup("bio-division")).thenReturn(new RecipientGroupResponseWrapper(new RecipientGroup("bio-division", 4, 2, "DivisionSvc")));
+        when(inboxService.getRecipientGroup("missing")).thenThrow(new ResourceNotFoundException(Constants.RECIPIENT_GROUP_NOT_FOUND + "missing"));
+
+        mockMvc.perform(get("/groups/bio-division")).andExpect(status().isOk());
+        mockMvc.perform(get("/groups/missing")).andExpect(status().isNotFound());
+    }
+
+
+    /**
+     * Tests that a broadcast is passed to the service and an invalid broadcast returns with a 400 response
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createBroadcastTest() throws Exception {
+        Message message = TestUtils.getMockMessageForUser(null);
+        when(inboxService.createBroadcast(any(Message.class))).thenReturn(new MessageResponseWrapper(message));
+
+        mockMvc.perform(post("/broadcasts").content(new ObjectMapper().writeValueAsString(message)).contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        message.setSummary(null);
+        mockMvc.perform(post("/broadcasts").content(new ObjectMapper().writeValueAsString(message)).contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        verify(inboxService, times(1)).createBroadcast(any(Message.class));
+    }
+
+    /**
+     * Tests that a broadcast is deleted by ID and a message ID returns with a 400 response
+     *
+     * @throws Exception
+     */
+    @Test
+    public void deleteBroadcastTest() throws Exception {
+        when(inboxService.deleteBroadcast("B1")).thenReturn(new MessageResponseWrapper(TestUtils.getMockMessageForUser("")));
+
+        mockMvc.perform(delete("/broadcasts/B1")).andExpect(status().isOk());
+        mockMvc.perform(delete("/broadcasts/1")).andExpect(status().isBadRequest());
+        verify(inboxService, times(1)).deleteBroadcast(anyString());
+    }
+
+    /**
+     * Tests that the session user's delete route passes a broadcast ID to the service
+     *
+     * @throws Exception
+     */
+    @Test
+    public void deleteBroadcastForSessionUserTest() throws Exception {
+        when(inboxService.deleteMessageForUser(TEST_LAN_ID, "B1")).thenReturn(new MessageResponseWrapper(TestUtils.getMockMessageForUser(TEST_LAN_ID)));
+        setupMockSecurityContext(TEST_LAN_ID);
+
+        mockMvc.perform(delete("/users/" + TEST_LAN_ID + "/messages/B1").contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
+        verify(inboxService, times(1)).deleteMessageForUser(TEST_LAN_ID, "B1");
+    }
 }
@@ -0,0 +1,195 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.model.ExpirationFilter;
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessageCount;
+import gov.nsf.inboxservice.api.model.MessagePriority;
+import gov.nsf.inboxservice.api.model.MessageType;
+import gov.nsf.inboxservice.common.util.Constants;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Embedded DB integration tests for ArchiveDao and archive mode reads
+ *
+ * Every test moves seed data, so the DB is reloaded after each one
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {"Embedded-InboxDaoTest-Context.xml"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class ArchiveDaoIntgTest {
+
+    @Autowired
+    private ArchiveDaoImpl archiveDao;
+
+    @Autowired
+    private InboxDaoImpl inboxDao;
+
+    @Autowired
+    private InboxDaoImpl archivingInboxDao;
+
+    @Autowired
+    private MessageCountDaoImpl messageCountDao;
+
+    @Test
+    public void archiveExpiredMessagesTest() throws Exception {
+        List<Message> inactive = inboxDao.getMessagesForUser("test", ExpirationFilter.INACTIVE);
+        List<Message> all = inboxDao.getMessagesForUser("test", ExpirationFilter.ALL);
+        assertEquals(2, inactive.size());
+
+        assertEquals(1, archiveDao.archiveExpiredMessagesChunk(1));
+        assertEquals(1, archiveDao.archiveExpiredMessagesChunk(10));
+        assertEquals(0, archiveDao.archiveExpiredMessagesChunk(10));
+
+        //Hot table only
+        assertTrue(inboxDao.getMessagesForUser("test", ExpirationFilter.INACTIVE).isEmpty());
+
+        //Archive mode reads both
+        assertEquals(getIds(inactive), getIds(archivingInboxDao.getMessagesForUser("test", ExpirationFilter.INACTIVE)));
+        assertEquals(getIds(all), getIds(archivingInboxDao.getMessagesForUser("test", ExpirationFilter.ALL)));
+        assertEquals(all.size() - inactive.size(), archivingInboxDao.getMessagesForUser("test", ExpirationFilter.ACTIVE).size());
+    }
+
+    @Test
+    public void archivedMessagesPagedTest() throws Exception {
+        List<Message> all = inboxDao.getMessagesForUser("test", ExpirationFilter.ALL);
+        archiveDao.archiveExpiredMessagesChunk(10);
+
+        List<Message> paged = new ArrayList<Message>();
+        MessageCursor after = null;
+        List<Message> page;
+        do {
+            page = archivingInboxDao.getMessagesForUser("test", ExpirationFilter.ALL, 2, after);
+            paged.addAll(page);
+            if( !page.isEmpty() ){
+                after = MessageCursor.fromMessage(page.get(page.size() - 1));
+            }
+        } while( page.size() == 2 );
+
+        assertEquals(all.size(), paged.size());
+        assertEquals(getIds(all), getIds(paged));
+
+        List<Message> headers = archivingInboxDao.getMessageHeadersForUser("test", ExpirationFilter.INACTIVE, 10, null);
+        assertEquals(2, headers.size());
+        assertNull(headers.get(0).getSummary());
+    }
+
+    @Test
+    public void archiveInterruptedMoveTest() throws Exception {
+        //A copy that was never followed by its delete
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(Constants.MSG_IDS_PARAM, Collections.singletonList(2L));
+        parameters.put(Constants.ARCH_MONTH_COLNAME, archiveDao.getCurrentArchiveMonth());
+        assertEquals(1, archiveDao.getJdbcTemplate().update(Constants.COPY_TO_ARCHIVE_QUERY, parameters));
+
+        assertEquals(2, archiveDao.archiveExpiredMessagesChunk(10));
+        assertEquals(2, archivingInboxDao.getMessagesForUser("test", ExpirationFilter.INACTIVE).size());
+    }
+
+    @Test
+    public void archiveAgedMessagesTest() throws Exception {
+        Timestamp tomorrow = new Timestamp(System.currentTimeMillis() + 24L * 60 * 60 * 1000);
+        assertEquals(3, archiveDao.archiveAgedMessagesChunk(MessageType.Task, tomorrow, 10));
+        assertEquals(0, archiveDao.archiveAgedMessagesChunk(MessageType.Task, tomorrow, 10));
+
+        assertTrue(inboxDao.getMessagesForUser("test", ExpirationFilter.ACTIVE).isEmpty());
+        assertEquals(2, inboxDao.getMessagesForUser("test", ExpirationFilter.INACTIVE).size());
+
+        //The archived tasks are still active, so archive mode only returns them under ALL
+        assertEquals(2, archivingInboxDao.getMessagesForUser("test", ExpirationFilter.INACTIVE).size());
+        assertEquals(2, archivingInboxDao.getMessagesForUser("test", ExpirationFilter.INACTIVE, 10, null).size());
+        assertEquals(5, archivingInboxDao.getMessagesForUser("test", ExpirationFilter.ALL).size());
+        assertEquals(5, archivingInboxDao.getMessagesForUser("test", ExpirationFilter.ALL, 10, null).size());
+
+        //The archived tasks are no longer counted
+        List<MessageCount> counts = messageCountDao.getMessageCounts("test");
+        assertEquals(1, counts.size());
+        assertEquals(MessageType.Information, counts.get(0).getType());
+        assertEquals(0, counts.get(0).getActive());
+        assertEquals(2, counts.get(0).getInactive());
+    }
+
+    @Test
+    public void archiveDeleteExpiredMessagesTest() throws Exception {
+        archiveDao.archiveExpiredMessagesChunk(10);
+        archivingInboxDao.deleteExpiredMessages("test");
+        assertTrue(archivingInboxDao.getMessagesForUser("test", ExpirationFilter.INACTIVE).isEmpty());
+    }
+
+    @Test
+    public void dropArchivePartitionsTest() throws Exception {
+        Timestamp tomorrow = new Timestamp(System.currentTimeMillis() + 24L * 60 * 60 * 1000);
+        archiveDao.archiveExpiredMessagesChunk(10);
+        archiveDao.archiveAgedMessagesChunk(MessageType.Task, tomorrow, 10);
+        int month = archiveDao.getCurrentArchiveMonth();
+
+        assertEquals(0, archiveDao.dropArchivePartitions(MessageType.Information, month));
+        assertEquals(1, archiveDao.dropArchivePartitions(MessageType.Information, month + 1));
+
+        //Task partition is kept, its messages are still active
+        List<Message> archived = archivingInboxDao.getMessagesForUser("test", ExpirationFilter.ALL);
+        assertEquals(3, archived.size());
+        for( Message message : archived ){
+            assertEquals(MessageType.Task, message.getType());
+        }
+    }
+
+    @Test
+    public void dropPartitionStatementTest() {
+        ArchiveDaoImpl sybaseArchiveDao = new ArchiveDaoImpl();
+        assertEquals("truncate table dbo.inbx_msg_arch partition p201701I",
+                sybaseArchiveDao.getDropPartitionStatement(MessageType.Information, 201701));
+    }
+
+    private static Set<String> getIds(List<Message> messages) {
+        Set<String> ids = new HashSet<String>();
+        for( Message message : messages ){
+            assertTrue(ids.add(message.getId()));
+        }
+        return ids;
+    }
+
+    @Test
+    public void archiveNormalizedMessagesTest() throws Exception {
+        Message message = new Message();
+        message.setType(MessageType.Task);
+        message.setActionLink("http://archived.com");
+        message.setActionLabel("Open");
+        message.setSummary("Archived broadcast");
+        message.setPriority(MessagePriority.Low);
+        message.setLastUpdtUser("BroadcastSvc");
+        inboxDao.setNormalizedStorage(true);
+        try {
+            inboxDao.createMessages(message, Arrays.asList("archnrm1", "archnrm2"));
+        } finally {
+            inboxDao.setNormalizedStorage(false);
+        }
+
+        Timestamp tomorrow = new Timestamp(System.currentTimeMillis() + 24L * 60 * 60 * 1000);
+        archiveDao.archiveAgedMessagesChunk(MessageType.Task, tomorrow, 10);
+
+        //The archive holds its own copy, so the content row can go
+        assertEquals(1, inboxDao.deleteOrphanedContentChunk(tomorrow, 10));
+        List<Message> archived = archivingInboxDao.getMessagesForUser("archnrm1", ExpirationFilter.ALL);
+        assertEquals(1, archived.size());
+        assertEquals("Archived broadcast", archived.get(0).getSummary());
+        assertEquals("http://archived.com", archived.get(0).getActionLink());
+        assertEquals("Open", archived.get(0).getActionLabel());
+    }
+}
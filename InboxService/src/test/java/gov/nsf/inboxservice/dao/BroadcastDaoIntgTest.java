@@ -0,0 +1,111 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.exception.ResourceNotFoundException;
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessageType;
+import gov.nsf.inboxservice.common.util.TestUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Embedded DB integration tests for BroadcastDao
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {"Embedded-InboxDaoTest-Context.xml"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class BroadcastDaoIntgTest {
+
+    @Autowired
+    private BroadcastDaoImpl broadcastDao;
+
+    @Test
+    public void insertAndGetBroadcastsTest() throws Exception {
+        Message stored = broadcastDao.insertBroadcast(TestUtils.getMockMessageForUser("ignored"));
+        assertTrue(stored.getId().startsWith("B"));
+        assertEquals("", stored.getLanId());
+
+        Message task = getTaskBroadcast();
+        Message storedTask = broadcastDao.insertBroadcast(task);
+
+        List<Message> broadcasts = broadcastDao.getBroadcasts();
+        assertEquals(2, broadcasts.size());
+        assertEquals(stored.getId(), broadcasts.get(0).getId());
+        assertEquals("", broadcasts.get(0).getLanId());
+        assertEquals("Message for ignored", broadcasts.get(0).getSummary());
+        assertEquals(MessageType.Information, broadcasts.get(0).getType());
+        assertEquals(storedTask.getId(), broadcasts.get(1).getId());
+        assertEquals("Review", broadcasts.get(1).getActionLabel());
+
+        Message byId = broadcastDao.getBroadcast(Long.parseLong(storedTask.getId().substring(1)));
+        assertEquals(storedTask.getSummary(), byId.getSummary());
+    }
+
+    @Test(expected = ResourceNotFoundException.class)
+    public void getMissingBroadcastTest() throws Exception {
+        broadcastDao.getBroadcast(42);
+    }
+
+    @Test
+    public void dismissBroadcastTest() throws Exception {
+        Message first = broadcastDao.insertBroadcast(TestUtils.getMockMessageForUser("ignored"));
+        Message second = broadcastDao.insertBroadcast(TestUtils.getMockMessageForUser("ignored"));
+        long firstId = Long.parseLong(first.getId().substring(1));
+        long secondId = Long.parseLong(second.getId().substring(1));
+
+        assertTrue(broadcastDao.getDismissedBroadcastIds("user1").isEmpty());
+        assertTrue(broadcastDao.dismissBroadcast(firstId, "user1"));
+        assertFalse(broadcastDao.dismissBroadcast(firstId, "user1"));
+        assertTrue(broadcastDao.dismissBroadcast(secondId, "user2"));
+
+        assertEquals(Collections.singleton(first.getId()), broadcastDao.getDismissedBroadcastIds("user1"));
+        assertEquals(Collections.singleton(second.getId()), broadcastDao.getDismissedBroadcastIds("user2"));
+    }
+
+    @Test
+    public void deleteBroadcastTest() throws Exception {
+        Message stored = broadcastDao.insertBroadcast(TestUtils.getMockMessageForUser("ignored"));
+        long id = Long.parseLong(stored.getId().substring(1));
+        broadcastDao.dismissBroadcast(id, "user1");
+
+        assertTrue(broadcastDao.deleteBroadcast(id));
+        assertFalse(broadcastDao.deleteBroadcast(id));
+        assertTrue(broadcastDao.getBroadcasts().isEmpty());
+        assertTrue(broadcastDao.getDismissedBroadcastIds("user1").isEmpty());
+    }
+
+    @Test
+    public void deleteExpiredBroadcastsTest() throws Exception {
+        Message expiring = TestUtils.getMockMessageForUser("ignored");
+        expiring.setExpirationDate(new Timestamp(System.currentTimeMillis() + 1000).toString());
+        Message expired = broadcastDao.insertBroadcast(expiring);
+        broadcastDao.dismissBroadcast(Long.parseLong(expired.getId().substring(1)), "user1");
+        Message task = broadcastDao.insertBroadcast(getTaskBroadcast());
+        Message active = broadcastDao.insertBroadcast(TestUtils.getMockMessageForUser("ignored"));
+
+        assertEquals(1, broadcastDao.deleteExpiredBroadcasts(new Timestamp(System.currentTimeMillis() + 60000)));
+
+        List<String> ids = Arrays.asList(task.getId(), active.getId());
+        assertEquals(ids, Arrays.asList(broadcastDao.getBroadcasts().get(0).getId(), broadcastDao.getBroadcasts().get(1).getId()));
+        assertTrue(broadcastDao.getDismissedBroadcastIds("user1").isEmpty());
+    }
+
+    private static Message getTaskBroadcast() {
+        Message task = TestUtils.getMockMessageForUser("ignored");
+        task.setType(MessageType.Task);
+        task.setActionLink("http://example.com/review");
+        task.setActionLabel("Review");
+        task.setExpirationDate(null);
+        return task;
+    }
+}
@@ -0,0 +1,65 @@
+package gov.nsf.inboxservice.dao;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Embedded DB integration tests for CacheInvalidationDao
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {"Embedded-InboxDaoTest-Context.xml"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class CacheInvalidationDaoIntgTest {
+
+    @Autowired
+    private CacheInvalidationDaoImpl cacheInvalidationDao;
+
+    @Test
+    public void insertAndGetInvalidationsTest() throws Exception {
+        Timestamp since = cacheInvalidationDao.getCurrentTime();
+        cacheInvalidationDao.insertInvalidations(Arrays.asList("test", "test2", "test"));
+
+        List<String> lanIds = cacheInvalidationDao.getInvalidatedLanIds(since);
+
+        assertEquals(2, lanIds.size());
+        assertEquals(new HashSet<String>(Arrays.asList("test", "test2")), trim(lanIds));
+    }
+
+    @Test
+    public void getInvalidationsSinceLaterTimeTest() throws Exception {
+        cacheInvalidationDao.insertInvalidations(Collections.singleton("test"));
+
+        Timestamp later = new Timestamp(cacheInvalidationDao.getCurrentTime().getTime() + 86400000L);
+        assertTrue(cacheInvalidationDao.getInvalidatedLanIds(later).isEmpty());
+    }
+
+    @Test
+    public void deleteInvalidationsTest() throws Exception {
+        cacheInvalidationDao.insertInvalidations(Arrays.asList("test", "test2"));
+        Timestamp now = cacheInvalidationDao.getCurrentTime();
+
+        assertEquals(0, cacheInvalidationDao.deleteInvalidations(now));
+        assertEquals(2, cacheInvalidationDao.deleteInvalidations(new Timestamp(now.getTime() + 1)));
+        assertTrue(cacheInvalidationDao.getInvalidatedLanIds(new Timestamp(0)).isEmpty());
+    }
+
+    private static HashSet<String> trim(List<String> lanIds) {
+        HashSet<String> trimmed = new HashSet<String>();
+        for( String lanId : lanIds ){
+            trimmed.add(lanId.trim());
+        }
+        return trimmed;
+    }
+}
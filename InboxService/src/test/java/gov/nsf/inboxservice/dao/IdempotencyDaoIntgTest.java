@@ -0,0 +1,60 @@
+package gov.nsf.inboxservice.dao;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.sql.Timestamp;
+
+import static org.junit.Assert.*;
+
+/**
+ * Embedded DB integration tests for IdempotencyDao
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {"Embedded-InboxDaoTest-Context.xml"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class IdempotencyDaoIntgTest {
+
+    private static final String HASH = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+
+    @Autowired
+    private IdempotencyDaoImpl idempotencyDao;
+
+    @Autowired
+    private CacheInvalidationDaoImpl cacheInvalidationDao;
+
+    @Test
+    public void insertKeyOnceTest() throws Exception {
+        assertTrue(idempotencyDao.insertKey("key1", HASH));
+        assertFalse(idempotencyDao.insertKey("key1", HASH));
+        assertTrue(idempotencyDao.insertKey("key2", HASH));
+    }
+
+    @Test
+    public void updateAndGetRecordTest() throws Exception {
+        assertNull(idempotencyDao.getRecord("key1"));
+
+        idempotencyDao.insertKey("key1", HASH);
+        IdempotencyRecord claimed = idempotencyDao.getRecord("key1");
+        assertEquals("key1", claimed.getKey());
+        assertEquals(HASH, claimed.getRequestHash());
+        assertNull(claimed.getResponse());
+
+        idempotencyDao.updateResponse("key1", "{\"messages\":[]}");
+        assertEquals("{\"messages\":[]}", idempotencyDao.getRecord("key1").getResponse());
+    }
+
+    @Test
+    public void deleteKeysTest() throws Exception {
+        idempotencyDao.insertKey("key1", HASH);
+        Timestamp now = cacheInvalidationDao.getCurrentTime();
+
+        assertEquals(0, idempotencyDao.deleteKeys(new Timestamp(now.getTime() - 60000)));
+        assertEquals(1, idempotencyDao.deleteKeys(new Timestamp(now.getTime() + 1)));
+        assertNull(idempotencyDao.getRecord("key1"));
+    }
+}
@@ -0,0 +1,94 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.model.ExpirationFilter;
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessagePriority;
+import gov.nsf.inboxservice.api.model.MessageType;
+import gov.nsf.inboxservice.common.util.TestUtils;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for InMemoryInboxDao, running the InboxDaoContractTest tests on the db/insert-data.sql messages
+ */
+public class InMemoryInboxDaoTest extends InboxDaoContractTest {
+
+    private static final String SEED_DATE = "2017-01-01 23:30:32";
+
+    private InMemoryInboxDao inMemoryInboxDao;
+
+    @Override
+    protected InboxDao getInboxDao() {
+        inMemoryInboxDao = new InMemoryInboxDao(4);
+        inMemoryInboxDao.load(Arrays.asList(
+                getSeedMessage(1, MessageType.Task, "Test Approval is Due", SEED_DATE),
+                getSeedMessage(2, MessageType.Information, "Test Notification", SEED_DATE),
+                getSeedMessage(3, MessageType.Task, "Test Task is Due", SEED_DATE),
+                getSeedMessage(4, MessageType.Information, "Test Notification - part 2", "2017-03-01 23:30:32"),
+                getSeedMessage(5, MessageType.Task, "Test Notification - part 2", "2017-03-01 23:30:32")));
+        return inMemoryInboxDao;
+    }
+
+    /**
+     * Tests that new messages get IDs above the loaded ones and that reloading a message replaces it
+     *
+     * @throws Exception
+     */
+    @Test
+    public void loadTest() throws Exception {
+        assertEquals(5, inMemoryInboxDao.getMessageCount());
+        assertEquals("6", inMemoryInboxDao.createMessage(TestUtils.getMockMessageForUser("test")).getId());
+
+        inMemoryInboxDao.load(Collections.singletonList(getSeedMessage(2, MessageType.Information, "Reloaded", SEED_DATE)));
+        assertEquals(6, inMemoryInboxDao.getMessageCount());
+        assertEquals("Reloaded", inMemoryInboxDao.getMessageById("2").getSummary());
+    }
+
+    /**
+     * Tests that the messages of many users spread over the lock stripes stay in their own inboxes
+     *
+     * @throws Exception
+     */
+    @Test
+    public void manyUsersTest() throws Exception {
+        for( int i = 0; i < 100; i++ ){
+            inMemoryInboxDao.createMessages(TestUtils.getMockMessageForUser(""), Arrays.asList("user" + i, "other" + i));
+        }
+        assertEquals(205, inMemoryInboxDao.getMessageCount());
+
+        List<Message> messages = inMemoryInboxDao.getMessagesForUser("user42", ExpirationFilter.ALL);
+        assertEquals(1, messages.size());
+        assertEquals("user42", messages.get(0).getLanId());
+        assertEquals(1, inMemoryInboxDao.deleteMessages(Collections.singletonList(Long.parseLong(messages.get(0).getId()))));
+        assertTrue(inMemoryInboxDao.getMessagesForUser("user42", ExpirationFilter.ALL).isEmpty());
+        assertEquals(1, inMemoryInboxDao.getMessagesForUser("other42", ExpirationFilter.ALL).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidStripeCountTest() {
+        new InMemoryInboxDao(3);
+    }
+
+    private static Message getSeedMessage(int msgId, MessageType type, String summary, String expirationDate) {
+        Message message = new Message();
+        message.setId(String.valueOf(msgId));
+        message.setLanId("test");
+        message.setType(type);
+        message.setSummary(summary);
+        message.setCreationDate(SEED_DATE);
+        message.setExpirationDate(expirationDate);
+        message.setPriority(MessagePriority.Low);
+        message.setInternal(true);
+        message.setLastUpdtUser("MeetingSvc");
+        if( type == MessageType.Task ){
+            message.setActionLink("http://lol.com");
+            message.setActionLabel("lol");
+        }
+        return message;
+    }
+}
@@ -0,0 +1,528 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.exception.ResourceNotFoundException;
+import gov.nsf.common.model.ExpirationFilter;
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessagePriority;
+import gov.nsf.inboxservice.api.model.MessageType;
+import gov.nsf.inboxservice.common.util.Constants;
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Contract tests every InboxDao engine has to pass
+ *
+ * Subclasses provide the engine, seeded with the messages of db/insert-data.sql
+ */
+public abstract class InboxDaoContractTest {
+
+    protected InboxDao inboxDao;
+
+    /**
+     * Returns the engine under test, holding the seed messages
+     *
+     * @return InboxDao
+     */
+    protected abstract InboxDao getInboxDao();
+
+    /**
+     * Insert batch size of engines sending JDBC batches, so the tests span several batches
+     *
+     * @return batch size
+     */
+    protected int getBatchSize() {
+        return Constants.DEFAULT_INSERT_BATCH_SIZE;
+    }
+
+    protected void setBatchSize(int batchSize) {
+    }
+
+    protected void setStreamFetchSize(int streamFetchSize) {
+    }
+
+    @Before
+    public void setUpInboxDao() {
+        inboxDao = getInboxDao();
+        assertNotNull(inboxDao);
+    }
+
+    @Test
+    public void getMessageByIdHappyPathTest() throws Exception {
+        Message message = inboxDao.getMessageById("1");
+        assertNotNull(message);
+        System.out.println(message);
+    }
+
+    @Test(expected= ResourceNotFoundException.class)
+    public void getMessageByIdDoesNotExistTest() throws Exception {
+        inboxDao.getMessageById("10000");
+    }
+
+    @Test
+    public void getMessagesHappyPathTest() throws Exception {
+        List<Message> messages = inboxDao.getMessagesForUser("test", ExpirationFilter.ACTIVE);
+        assertNotNull(messages);
+        System.out.println("MEssages ---------------###########"+ messages.toString());
+        assertTrue(messages.size() > 0);
+        for(Message message : messages ){
+            System.out.println(ToStringBuilder.reflectionToString(message));
+            assertNotNull(message);
+        }
+    }
+
+    @Test
+    public void getMessagesNoneExistTest() throws Exception {
+        List<Message> messages = inboxDao.getMessagesForUser("LOLOL", ExpirationFilter.ACTIVE);
+        assertNotNull(messages);
+        assertTrue(messages.isEmpty());
+    }
+
+    @Test
+    public void getMessagesPagedTest() throws Exception {
+        List<Message> allMessages = inboxDao.getMessagesForUser("test", ExpirationFilter.ALL);
+        assertTrue(allMessages.size() > 2);
+
+        List<Message> pagedMessages = new ArrayList<Message>();
+        MessageCursor after = null;
+        List<Message> page;
+        do {
+            page = inboxDao.getMessagesForUser("test", ExpirationFilter.ALL, 2, after);
+            assertTrue(page.size() <= 2);
+            pagedMessages.addAll(page);
+            if( !page.isEmpty() ){
+                after = MessageCursor.fromMessage(page.get(page.size() - 1));
+            }
+        } while( page.size() == 2 );
+
+        assertEquals(allMessages.size(), pagedMessages.size());
+        Set<String> pagedIds = new HashSet<String>();
+        MessageCursor previous = null;
+        for( Message message : pagedMessages ){
+            assertTrue(pagedIds.add(message.getId()));
+            MessageCursor current = MessageCursor.fromMessage(message);
+            if( previous != null ){
+                int dateOrder = current.getCreationDate().compareTo(previous.getCreationDate());
+                assertTrue(dateOrder > 0 || (dateOrder == 0 && current.getMsgId() > previous.getMsgId()));
+            }
+            previous = current;
+        }
+        for( Message message : allMessages ){
+            assertTrue(pagedIds.contains(message.getId()));
+        }
+    }
+
+    @Test
+    public void getMessageHeadersPagedTest() throws Exception {
+        List<Message> messages = inboxDao.getMessagesForUser("test", ExpirationFilter.ALL, 3, null);
+        List<Message> headers = inboxDao.getMessageHeadersForUser("test", ExpirationFilter.ALL, 3, null);
+        assertEquals(messages.size(), headers.size());
+        for( int i = 0; i < headers.size(); i++ ){
+            assertEquals(messages.get(i).getId(), headers.get(i).getId());
+            assertEquals(messages.get(i).getCreationDate(), headers.get(i).getCreationDate());
+            assertFalse(messages.get(i).getSummary().isEmpty());
+            assertNull(headers.get(i).getSummary());
+        }
+    }
+
+    @Test
+    public void createMessageHappyPathTest() throws Exception {
+        Message _message = new Message();
+        _message.setLanId("test");
+        _message.setInternal(false);
+        _message.setType(MessageType.Information);
+        _message.setExpirationDate("2017-01-01 23:30:32.0");
+        _message.setActionLink("http://LOL.com");
+        _message.setCreationDate("2017-01-01 23:30:32.0");
+        _message.setSummary("LOLOL");
+        _message.setPriority(MessagePriority.High);
+        _message.setLastUpdtUser("MeetingSvc");
+
+        Message returnedMessage = inboxDao.createMessage(_message);
+
+        assertNotNull(returnedMessage);
+        Message storedMessage = inboxDao.getMessageById(returnedMessage.getId());
+        assertEquals(storedMessage.getLanId(), returnedMessage.getLanId());
+        assertEquals(storedMessage.getSummary(), returnedMessage.getSummary());
+        assertEquals(storedMessage.getType(), returnedMessage.getType());
+        assertEquals(storedMessage.getCreationDate(), returnedMessage.getCreationDate());
+    }
+
+    @Test
+    public void createMessageConcurrentInsertsTest() throws Exception {
+        final int threads = 8;
+        final int messagesPerThread = 10;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<List<Message>>> futures = new ArrayList<Future<List<Message>>>();
+        for( int t = 0; t < threads; t++ ){
+            final String lanId = "conc" + t;
+            futures.add(executor.submit(new Callable<List<Message>>() {
+                @Override
+                public List<Message> call() throws Exception {
+                    List<Message> created = new ArrayList<Message>();
+                    for( int i = 0; i < messagesPerThread; i++ ){
+                        Message _message = new Message();
+                        _message.setLanId(lanId);
+                        _message.setType(MessageType.Information);
+                        _message.setExpirationDate("2090-01-01 23:30:32.0");
+                        _message.setSummary("Concurrent " + lanId + " " + i);
+                        _message.setPriority(MessagePriority.Low);
+                        _message.setLastUpdtUser("ConcurrencySvc");
+                        created.add(inboxDao.createMessage(_message));
+                    }
+                    return created;
+                }
+            }));
+        }
+        executor.shutdown();
+
+        Set<String> msgIds = new HashSet<String>();
+        for( Future<List<Message>> future : futures ){
+            for( Message returnedMessage : future.get(30, TimeUnit.SECONDS) ){
+                assertTrue("Duplicate message ID returned: " + returnedMessage.getId(), msgIds.add(returnedMessage.getId()));
+                Message storedMessage = inboxDao.getMessageById(returnedMessage.getId());
+                assertEquals(returnedMessage.getLanId(), storedMessage.getLanId());
+                assertEquals(returnedMessage.getSummary(), storedMessage.getSummary());
+            }
+        }
+        assertEquals(threads * messagesPerThread, msgIds.size());
+    }
+
+    @Test
+    public void createMessagesHappyPathTest() throws Exception {
+        Message _message = new Message();
+        _message.setInternal(false);
+        _message.setType(MessageType.Task);
+        _message.setActionLink("http://LOL.com");
+        _message.setActionLabel("LOL");
+        _message.setSummary("Batched LOLOL");
+        _message.setPriority(MessagePriority.Low);
+        _message.setLastUpdtUser("BatchSvc");
+
+        List<String> lanIds = Arrays.asList("batch1", "batch2", "batch3");
+        int batchSize = getBatchSize();
+        setBatchSize(2);
+        List<Message> returnedMessages;
+        try {
+            returnedMessages = inboxDao.createMessages(_message, lanIds);
+        } finally {
+            setBatchSize(batchSize);
+        }
+
+        assertEquals(lanIds.size(), returnedMessages.size());
+        Set<String> returnedLanIds = new HashSet<String>();
+        for( Message message : returnedMessages ){
+            returnedLanIds.add(message.getLanId());
+            assertEquals(_message.getSummary(), message.getSummary());
+            assertEquals(message.getLanId(), inboxDao.getMessageById(message.getId()).getLanId());
+        }
+        assertEquals(new HashSet<String>(lanIds), returnedLanIds);
+    }
+
+    @Test
+    public void createRenderedMessagesTest() throws Exception {
+        List<Message> messages = new ArrayList<Message>();
+        for( String lanId : Arrays.asList("render1", "render2", "render3") ){
+            Message _message = new Message();
+            _message.setLanId(lanId);
+            _message.setInternal(false);
+            _message.setType(MessageType.Task);
+            _message.setActionLink("http://LOL.com/" + lanId);
+            _message.setActionLabel("LOL");
+            _message.setSummary("Rendered for " + lanId);
+            _message.setPriority(MessagePriority.High);
+            _message.setLastUpdtUser("TemplateSvc");
+            messages.add(_message);
+        }
+
+        int batchSize = getBatchSize();
+        setBatchSize(2);
+        List<Message> returnedMessages;
+        try {
+            returnedMessages = inboxDao.createMessages(messages);
+        } finally {
+            setBatchSize(batchSize);
+        }
+
+        assertEquals(messages.size(), returnedMessages.size());
+        for( Message message : returnedMessages ){
+            assertEquals("Rendered for " + message.getLanId(), message.getSummary());
+            Message storedMessage = inboxDao.getMessageById(message.getId());
+            assertEquals("Rendered for " + message.getLanId(), storedMessage.getSummary());
+            assertEquals("http://LOL.com/" + message.getLanId(), storedMessage.getActionLink());
+        }
+    }
+
+    @Test
+    public void deleteMessageHappyPathTest() throws Exception {
+        String messageId = "1";
+        Message message = inboxDao.deleteMessage(messageId);
+        assertNotNull(message);
+        System.out.println(message);
+
+        try {
+            inboxDao.getMessageById(messageId);
+            fail("Expected a ResourceNotFoundException");
+        } catch(ResourceNotFoundException ex){
+            //Expected
+        }
+    }
+
+    @Test(expected= ResourceNotFoundException.class)
+    public void deleteMessageNotFoundTest() throws Exception {
+        inboxDao.deleteMessage("10000");
+    }
+
+    /**
+     * Tests that a message ID past the int range that is not stored is not found, rather than failing to parse
+     *
+     * @throws Exception
+     */
+    @Test
+    public void largeMessageIdNotFoundTest() throws Exception {
+        String msgId = String.valueOf(Integer.MAX_VALUE + 10L);
+        try {
+            inboxDao.getMessageById(msgId);
+            fail("Expected a ResourceNotFoundException");
+        } catch(ResourceNotFoundException ex){
+            //Expected
+        }
+        try {
+            inboxDao.deleteMessage(msgId);
+            fail("Expected a ResourceNotFoundException");
+        } catch(ResourceNotFoundException ex){
+            //Expected
+        }
+        assertEquals(UserDeleteResult.Status.NotFound, inboxDao.deleteMessageForUser(msgId, "test").getStatus());
+        assertTrue(inboxDao.getMessagesByIds(Collections.singletonList(Long.parseLong(msgId))).isEmpty());
+        assertEquals(0, inboxDao.deleteMessages(Collections.singletonList(Long.parseLong(msgId))));
+    }
+
+    @Test
+    public void streamMessagesForUserTest() throws Exception {
+        List<Message> streamed = new ArrayList<Message>();
+        setStreamFetchSize(1);
+        try {
+            inboxDao.streamMessagesForUser("test", ExpirationFilter.ALL, streamed::add);
+        } finally {
+            setStreamFetchSize(Constants.DEFAULT_STREAM_FETCH_SIZE);
+        }
+
+        List<Message> messages = inboxDao.getMessagesForUser("test", ExpirationFilter.ALL);
+        assertFalse(streamed.isEmpty());
+        assertEquals(messages.size(), streamed.size());
+        for( int i = 0; i < messages.size(); i++ ){
+            assertEquals(messages.get(i).getId(), streamed.get(i).getId());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void streamMessagesForUserHandlerFailureTest() throws Exception {
+        inboxDao.streamMessagesForUser("test", ExpirationFilter.ALL, message -> {
+            throw new IOException("Client went away");
+        });
+    }
+
+    @Test
+    @DirtiesContext
+    public void getAndDeleteMessagesByIdsTest() throws Exception {
+        setBatchSize(2);
+        try {
+            List<Long> msgIds = Arrays.asList(3L, 5L, 10000L);
+            List<Message> messages = inboxDao.getMessagesByIds(msgIds);
+            assertEquals(2, messages.size());
+
+            assertEquals(2, inboxDao.deleteMessages(msgIds));
+            assertTrue(inboxDao.getMessagesByIds(msgIds).isEmpty());
+        } finally {
+            setBatchSize(Constants.DEFAULT_INSERT_BATCH_SIZE);
+        }
+    }
+
+    @Test
+    @DirtiesContext
+    public void deleteMessageForUserTest() throws Exception {
+        Message _message = new Message();
+        _message.setLanId("test");
+        _message.setInternal(false);
+        _message.setType(MessageType.Information);
+        _message.setExpirationDate("9999-01-01 00:00:00.0");
+        _message.setSummary("Owned message");
+        _message.setPriority(MessagePriority.Low);
+        _message.setLastUpdtUser("MeetingSvc");
+        String msgId = inboxDao.createMessage(_message).getId();
+
+        //Another user's message and a Task are forbidden, a missing message is not found, and none is deleted
+        assertEquals(UserDeleteResult.Status.Forbidden, inboxDao.deleteMessageForUser(msgId, "test2").getStatus());
+        assertEquals(UserDeleteResult.Status.Forbidden, inboxDao.deleteMessageForUser("3", "test").getStatus());
+        assertEquals(UserDeleteResult.Status.NotFound, inboxDao.deleteMessageForUser("10000", "test").getStatus());
+        assertNotNull(inboxDao.getMessageById("3"));
+        assertNotNull(inboxDao.getMessageById(msgId));
+
+        UserDeleteResult result = inboxDao.deleteMessageForUser(msgId, "test");
+        assertEquals(UserDeleteResult.Status.Deleted, result.getStatus());
+        Message deleted = result.getMessage();
+        assertEquals(msgId, deleted.getId());
+        assertEquals("Owned message", deleted.getSummary());
+        assertEquals(MessagePriority.Low, deleted.getPriority());
+        try {
+            inboxDao.getMessageById(msgId);
+            fail("Expected a ResourceNotFoundException");
+        } catch(ResourceNotFoundException ex){
+            //Expected
+        }
+
+        //Only the first delete removes it
+        assertEquals(UserDeleteResult.Status.NotFound, inboxDao.deleteMessageForUser(msgId, "test").getStatus());
+    }
+
+    @Test
+    public void deleteExpiredMessagesHappyPathTest() throws Exception {
+        List<Message> messages = inboxDao.getMessagesForUser("test", ExpirationFilter.INACTIVE);
+        System.out.println("MEssages ---------------###########"+ messages.toString());
+        System.out.println("Size: "+ messages.size());
+        for(Message message : messages ){
+            System.out.println(ToStringBuilder.reflectionToString(message));
+        }
+        assertFalse(messages.isEmpty());
+        inboxDao.deleteExpiredMessages("test");
+
+        messages = inboxDao.getMessagesForUser("test", ExpirationFilter.INACTIVE);
+        System.out.println("MEssages ---------------###########"+ messages.toString());
+        System.out.println("Size: "+ messages.size());
+        for(Message message : messages ){
+            System.out.println(ToStringBuilder.reflectionToString(message));
+        }
+        assertTrue(messages.isEmpty());
+    }
+
+    //Sweeps every user's expired rows, so the seed data is reloaded afterwards
+    @Test
+    @DirtiesContext
+    public void deleteExpiredMessagesChunkTest() throws Exception {
+        for( int i = 0; i < 3; i++ ){
+            Message expired = new Message();
+            expired.setLanId("sweep" + i);
+            expired.setSummary("Expired notification");
+            expired.setType(MessageType.Information);
+            expired.setPriority(MessagePriority.High);
+            expired.setExpirationDate("2017-01-01 23:30:32");
+            expired.setLastUpdtUser("InboxDaoIntgTest");
+            inboxDao.createMessage(expired);
+        }
+        List<Message> tasks = inboxDao.getMessagesForUser("test", ExpirationFilter.ACTIVE);
+
+        assertEquals(2, inboxDao.deleteExpiredMessagesChunk(2));
+        int deleted;
+        do {
+            deleted = inboxDao.deleteExpiredMessagesChunk(2);
+        } while( deleted == 2 );
+
+        for( int i = 0; i < 3; i++ ){
+            assertTrue(inboxDao.getMessagesForUser("sweep" + i, ExpirationFilter.ALL).isEmpty());
+        }
+        assertTrue(inboxDao.getMessagesForUser("test", ExpirationFilter.INACTIVE).isEmpty());
+        assertEquals(tasks.size(), inboxDao.getMessagesForUser("test", ExpirationFilter.ACTIVE).size());
+    }
+
+    @Test
+    public void createMessageActiveUntilTest() throws Exception {
+        Message task = new Message();
+        task.setLanId("actvuntl");
+        task.setSummary("Task that never expires");
+        task.setType(MessageType.Task);
+        task.setPriority(MessagePriority.High);
+        task.setActionLink("http://lol.com");
+        task.setActionLabel("lol");
+        task.setLastUpdtUser("InboxDaoIntgTest");
+        inboxDao.createMessage(task);
+
+        Message expired = new Message();
+        expired.setLanId("actvuntl");
+        expired.setSummary("Expired notification");
+        expired.setType(MessageType.Information);
+        expired.setPriority(MessagePriority.High);
+        expired.setExpirationDate("2017-01-01 23:30:32");
+        expired.setLastUpdtUser("InboxDaoIntgTest");
+        inboxDao.createMessage(expired);
+
+        List<Message> active = inboxDao.getMessagesForUser("actvuntl", ExpirationFilter.ACTIVE);
+        assertEquals(1, active.size());
+        assertEquals(MessageType.Task, active.get(0).getType());
+
+        List<Message> inactive = inboxDao.getMessagesForUser("actvuntl", ExpirationFilter.INACTIVE);
+        assertEquals(1, inactive.size());
+        assertEquals(MessageType.Information, inactive.get(0).getType());
+
+        inboxDao.deleteExpiredMessages("actvuntl");
+        assertTrue(inboxDao.getMessagesForUser("actvuntl", ExpirationFilter.INACTIVE).isEmpty());
+        assertEquals(1, inboxDao.getMessagesForUser("actvuntl", ExpirationFilter.ALL).size());
+    }
+
+    @Test
+    public void getDuplicateMessagesTest() throws Exception {
+        Message _message = new Message();
+        _message.setType(MessageType.Task);
+        _message.setActionLink("http://lol.com");
+        _message.setActionLabel("lol");
+        _message.setSummary("Dedupe me");
+        _message.setPriority(MessagePriority.Low);
+        _message.setLastUpdtUser("DedupeSvc");
+        List<Message> stored = inboxDao.createMessages(_message, Arrays.asList("dedupe1", "dedupe2"));
+
+        Map<String, Message> duplicates = inboxDao.getDuplicateMessages(_message, Arrays.asList("dedupe1", "dedupe3"));
+        assertEquals(Collections.singleton("dedupe1"), duplicates.keySet());
+        assertEquals("Dedupe me", duplicates.get("dedupe1").getSummary());
+
+        //The most recent copy is returned
+        Message latest = inboxDao.createMessages(_message, Collections.singletonList("dedupe1")).get(0);
+        assertEquals(latest.getId(), inboxDao.getDuplicateMessages(_message, Collections.singletonList("dedupe1")).get("dedupe1").getId());
+
+        //Different content or sender is not a duplicate
+        _message.setSummary("Dedupe me too");
+        assertTrue(inboxDao.getDuplicateMessages(_message, Arrays.asList("dedupe1", "dedupe2")).isEmpty());
+        _message.setSummary("Dedupe me");
+        _message.setLastUpdtUser("OtherSvc");
+        assertTrue(inboxDao.getDuplicateMessages(_message, Arrays.asList("dedupe1", "dedupe2")).isEmpty());
+        assertEquals(2, stored.size());
+    }
+
+    @Test
+    public void refreshMessagesTest() throws Exception {
+        Message _message = new Message();
+        _message.setType(MessageType.Information);
+        _message.setExpirationDate("2090-01-01 23:30:32.0");
+        _message.setSummary("Refresh me");
+        _message.setPriority(MessagePriority.Low);
+        _message.setLastUpdtUser("DedupeSvc");
+        Message stored = inboxDao.createMessages(_message, Collections.singletonList("refresh1")).get(0);
+
+        Thread.sleep(10);
+        _message.setPriority(MessagePriority.High);
+        _message.setExpirationDate("2091-01-01 23:30:32.0");
+        assertEquals(1, inboxDao.refreshMessages(_message, Collections.singletonList(Long.valueOf(stored.getId()))));
+
+        Message refreshed = inboxDao.getMessageById(stored.getId());
+        assertEquals(MessagePriority.High, refreshed.getPriority());
+        assertTrue(refreshed.getExpirationDate().startsWith("2091-01-01"));
+        assertTrue(refreshed.getCreationDate().compareTo(stored.getCreationDate()) > 0);
+        assertEquals(stored.getId(), inboxDao.getDuplicateMessages(_message, Collections.singletonList("refresh1")).get("refresh1").getId());
+    }
+}
@@ -1,126 +1,246 @@
 package gov.nsf.inboxservice.dao;
 
-import gov.nsf.common.exception.ResourceNotFoundException;
 import gov.nsf.common.model.ExpirationFilter;
 import gov.nsf.inboxservice.api.model.Message;
 import gov.nsf.inboxservice.api.model.MessagePriority;
 import gov.nsf.inboxservice.api.model.MessageType;
-import org.apache.commons.lang.builder.ToStringBuilder;
+import gov.nsf.inboxservice.common.util.Constants;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
 /**
- * Embedded DB integration tests for InboxDao
+ * Embedded DB integration tests for InboxDaoImpl, running the InboxDaoContractTest tests as well
  */
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration(locations = {"Embedded-InboxDaoTest-Context.xml"})
-public class InboxDaoIntgTest {
+public class InboxDaoIntgTest extends InboxDaoContractTest {
 
     @Autowired
-    private InboxDaoImpl inboxDao;
+    @Qualifier("inboxDao")
+    private InboxDaoImpl inboxDaoImpl;
 
 
     @Before
     public void checkFieldsNotNull(){
-        assertNotNull(inboxDao.getJdbcTemplate());
-        assertNotNull(inboxDao.getDataSource());
+        assertNotNull(inboxDaoImpl.getJdbcTemplate());
+        assertNotNull(inboxDaoImpl.getDataSource());
 
     }
 
-    @Test
-    public void getMessageByIdHappyPathTest() throws Exception {
-        Message message = inboxDao.getMessageById("1");
-        assertNotNull(message);
-        System.out.println(message);
+    @Override
+    protected InboxDao getInboxDao() {
+        return inboxDaoImpl;
     }
 
-    @Test(expected= ResourceNotFoundException.class)
-    public void getMessageByIdDoesNotExistTest() throws Exception {
-        inboxDao.getMessageById("10000");
+    @Override
+    protected int getBatchSize() {
+        return inboxDaoImpl.getBatchSize();
     }
 
-    @Test
-    public void getMessagesHappyPathTest() throws Exception {
-        List<Message> messages = inboxDao.getMessagesForUser("test", ExpirationFilter.ACTIVE);
-        assertNotNull(messages);
-        System.out.println("MEssages ---------------###########"+ messages.toString());
-        assertTrue(messages.size() > 0);
-        for(Message message : messages ){
-            System.out.println(ToStringBuilder.reflectionToString(message));
-            assertNotNull(message);
-        }
+    @Override
+    protected void setBatchSize(int batchSize) {
+        inboxDaoImpl.setBatchSize(batchSize);
     }
 
-    @Test
-    public void getMessagesNoneExistTest() throws Exception {
-        List<Message> messages = inboxDao.getMessagesForUser("LOLOL", ExpirationFilter.ACTIVE);
-        assertNotNull(messages);
-        assertTrue(messages.isEmpty());
+    @Override
+    protected void setStreamFetchSize(int streamFetchSize) {
+        inboxDaoImpl.setStreamFetchSize(streamFetchSize);
     }
 
     @Test
-    public void createMessageHappyPathTest() throws Exception {
+    public void createMessagesNormalizedStorageTest() throws Exception {
         Message _message = new Message();
-        _message.setLanId("test");
         _message.setInternal(false);
-        _message.setType(MessageType.Information);
-        _message.setExpirationDate("2017-01-01 23:30:32.0");
-        _message.setActionLink("http://LOL.com");
-        _message.setCreationDate("2017-01-01 23:30:32.0");
-        _message.setSummary("LOLOL");
+        _message.setType(MessageType.Task);
+        _message.setActionLink("http://normalized.com");
+        _message.setActionLabel("Open");
+        _message.setSummary("Broadcast content");
         _message.setPriority(MessagePriority.High);
-        _message.setLastUpdtUser("MeetingSvc");
-
-        Message returnedMessage = inboxDao.createMessage(_message);
+        _message.setLastUpdtUser("BroadcastSvc");
+
+        List<String> lanIds = Arrays.asList("norm1", "norm2", "norm3");
+        int contentRows = countRows("dbo.inbx_msg_cntnt");
+        int batchSize = inboxDaoImpl.getBatchSize();
+        inboxDaoImpl.setNormalizedStorage(true);
+        inboxDaoImpl.setBatchSize(2);
+        List<Message> returnedMessages;
+        try {
+            returnedMessages = inboxDaoImpl.createMessages(_message, lanIds);
+            //A single recipient keeps its content inline
+            inboxDaoImpl.createMessages(_message, Collections.singletonList("norm4"));
+        } finally {
+            inboxDaoImpl.setNormalizedStorage(false);
+            inboxDaoImpl.setBatchSize(batchSize);
+        }
 
-        assertNotNull(returnedMessage);
+        assertEquals(contentRows + 1, countRows("dbo.inbx_msg_cntnt"));
+        assertEquals(Integer.valueOf(3), inboxDaoImpl.getJdbcTemplate().queryForObject("select count(*) from dbo.inbx_msg where smry is null " +
+                "and user_lan_id in (:user_lan_id)", Collections.singletonMap(Constants.MSG_LAN_ID_COLNAME, lanIds), Integer.class));
+        assertEquals(lanIds.size(), returnedMessages.size());
+        for( Message message : returnedMessages ){
+            assertEquals("Broadcast content", message.getSummary());
+            assertEquals("http://normalized.com", message.getActionLink());
+            assertEquals("Open", message.getActionLabel());
+
+            Message stored = inboxDaoImpl.getMessageById(message.getId());
+            assertEquals("Broadcast content", stored.getSummary());
+            assertEquals("Open", stored.getActionLabel());
+            List<Message> headers = inboxDaoImpl.getMessageHeadersForUser(message.getLanId(), ExpirationFilter.ALL, 10, null);
+            assertEquals(1, headers.size());
+            assertEquals("http://normalized.com", headers.get(0).getActionLink());
+        }
+        assertEquals("Broadcast content", inboxDaoImpl.getMessagesForUser("norm4", ExpirationFilter.ACTIVE).get(0).getSummary());
+        assertEquals(Collections.singleton("norm1"), inboxDaoImpl.getDuplicateMessages(_message, Collections.singletonList("norm1")).keySet());
     }
 
     @Test
-    public void deleteMessageHappyPathTest() throws Exception {
-        String messageId = "1";
-        Message message = inboxDao.deleteMessage(messageId);
-        assertNotNull(message);
-        System.out.println(message);
+    public void deleteOrphanedContentChunkTest() throws Exception {
+        Message _message = new Message();
+        _message.setType(MessageType.Information);
+        _message.setExpirationDate("2090-01-01 23:30:32.0");
+        _message.setSummary("Orphaned content");
+        _message.setPriority(MessagePriority.Low);
+        _message.setLastUpdtUser("BroadcastSvc");
 
+        inboxDaoImpl.setNormalizedStorage(true);
+        List<Message> stored;
         try {
-            inboxDao.getMessageById(messageId);
-            fail("Expected a ResourceNotFoundException");
-        } catch(ResourceNotFoundException ex){
-            //Expected
+            stored = inboxDaoImpl.createMessages(_message, Arrays.asList("orphan1", "orphan2"));
+        } finally {
+            inboxDaoImpl.setNormalizedStorage(false);
         }
+        Timestamp future = new Timestamp(System.currentTimeMillis() + 60000);
+        //Content left behind by other tests
+        inboxDaoImpl.deleteOrphanedContentChunk(future, 1000);
+        assertEquals("Orphaned content", inboxDaoImpl.getMessageById(stored.get(0).getId()).getSummary());
+
+        inboxDaoImpl.deleteMessage(stored.get(0).getId());
+        assertEquals(0, inboxDaoImpl.deleteOrphanedContentChunk(future, 100));
+        assertEquals("Orphaned content", inboxDaoImpl.getMessageById(stored.get(1).getId()).getSummary());
+
+        inboxDaoImpl.deleteMessage(stored.get(1).getId());
+        assertEquals(0, inboxDaoImpl.deleteOrphanedContentChunk(new Timestamp(System.currentTimeMillis() - 60000), 100));
+        assertEquals(1, inboxDaoImpl.deleteOrphanedContentChunk(future, 100));
     }
 
-    @Test(expected= ResourceNotFoundException.class)
-    public void deleteMessageNotFoundTest() throws Exception {
-        inboxDao.deleteMessage("10000");
+    /**
+     * Tests that the Message built after a single insert matches the stored row, creation date included
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createMessageMatchesStoredRowTest() throws Exception {
+        Timestamp creationDate = new Timestamp(System.currentTimeMillis() / 1000 * 1000 + 1237);
+        InboxDaoImpl fixedTimeDao = new InboxDaoImpl() {
+            @Override
+            protected Timestamp getCurrentTime() {
+                return creationDate;
+            }
+        };
+        fixedTimeDao.setDataSource(inboxDaoImpl.getDataSource());
+
+        Message _message = new Message();
+        _message.setLanId(" single ");
+        _message.setType(MessageType.Task);
+        _message.setActionLink("http://LOL.com ");
+        _message.setActionLabel("LOL");
+        _message.setSummary("Single insert");
+        _message.setPriority(MessagePriority.Low);
+        _message.setLastUpdtUser("BatchSvc");
+
+        Message created = fixedTimeDao.createMessage(_message);
+        Message stored = inboxDaoImpl.getMessageById(created.getId());
+        assertEquals(Timestamp.valueOf(stored.getCreationDate()), Timestamp.valueOf(created.getCreationDate()));
+        assertEquals(creationDate.getTime() - 7, Timestamp.valueOf(created.getCreationDate()).getTime());
+        assertEquals(stored.getLanId(), created.getLanId());
+        assertEquals(stored.getActionLink(), created.getActionLink());
+        assertEquals(stored.getSummary(), created.getSummary());
+        assertEquals(stored.getExpirationDate(), created.getExpirationDate());
     }
 
+    /**
+     * Tests that two batches for the same users and sender stored at the same time each read back only their own rows
+     *
+     * @throws Exception
+     */
     @Test
-    public void deleteExpiredMessagesHappyPathTest() throws Exception {
-        List<Message> messages = inboxDao.getMessagesForUser("test", ExpirationFilter.INACTIVE);
-        System.out.println("MEssages ---------------###########"+ messages.toString());
-        System.out.println("Size: "+ messages.size());
-        for(Message message : messages ){
-            System.out.println(ToStringBuilder.reflectionToString(message));
+    public void createMessagesSameCreationDateTest() throws Exception {
+        Timestamp creationDate = new Timestamp(System.currentTimeMillis());
+        InboxDaoImpl sameTimeDao = new InboxDaoImpl() {
+            @Override
+            protected Timestamp getCurrentTime() {
+                return creationDate;
+            }
+        };
+        sameTimeDao.setDataSource(inboxDaoImpl.getDataSource());
+
+        Message _message = new Message();
+        _message.setType(MessageType.Task);
+        _message.setActionLink("http://LOL.com");
+        _message.setActionLabel("LOL");
+        _message.setSummary("Same tick");
+        _message.setPriority(MessagePriority.Low);
+        _message.setLastUpdtUser("BatchSvc");
+
+        List<String> lanIds = Arrays.asList("tick1", "tick2");
+        List<Message> first = sameTimeDao.createMessages(_message, lanIds);
+        List<Message> second = sameTimeDao.createMessages(_message, lanIds);
+
+        assertEquals(2, first.size());
+        assertEquals(2, second.size());
+        for( Message message : second ){
+            for( Message other : first ){
+                assertNotEquals(other.getId(), message.getId());
+            }
         }
-        assertFalse(messages.isEmpty());
-        inboxDao.deleteExpiredMessages("test");
-
-        messages = inboxDao.getMessagesForUser("test", ExpirationFilter.INACTIVE);
-        System.out.println("MEssages ---------------###########"+ messages.toString());
-        System.out.println("Size: "+ messages.size());
-        for(Message message : messages ){
-            System.out.println(ToStringBuilder.reflectionToString(message));
+    }
+
+    /**
+     * Tests that the expiry sweep seeks the active_until index with the range instead of scanning the table
+     */
+    @Test
+    public void expiredChunkDeletePlanTest() {
+        String plan = explain(Constants.DELETE_EXPIRED_MESSAGES_CHUNK_DELETE + 100 + Constants.DELETE_EXPIRED_MESSAGES_CHUNK_FROM_CLAUSE,
+                Collections.<String, Object>emptyMap());
+        assertTrue(plan, plan.contains("\"inbx_msg_active_until_idx\": \"active_until\" < GETDATE()"));
+    }
+
+    /**
+     * Tests that the per-user expiration filters seek on the user's index entries and filter them with a
+     * single active_until comparison
+     */
+    @Test
+    public void expirationFilterPlanTest() {
+        for( String query : Arrays.asList(Constants.GET_ACTIVE_MESSAGES_FOR_USER_QUERY, Constants.GET_INACTIVE_MESSAGES_FOR_USER_QUERY,
+                Constants.DELETE_EXPIRED_MESSAGES_QUERY) ){
+            String plan = explain(query, Collections.<String, Object>singletonMap(Constants.MSG_LAN_ID_COLNAME, "test"));
+            assertTrue(plan, plan.matches("(?s).*\"inbx_msg_user_[a-z_]+_idx\": \"user_lan_id\" = \\?1\\s.*"));
+            assertFalse(plan, plan.contains("tableScan"));
+            String where = plan.substring(plan.lastIndexOf("WHERE"));
+            assertEquals(plan, 1, where.split("\"active_until\" [<>]").length - 1);
+            assertFalse(plan, where.contains(" OR "));
         }
-        assertTrue(messages.isEmpty());
+    }
+
+    private String explain(String query, Map<String, Object> parameters) {
+        return StringUtils.join(inboxDaoImpl.getJdbcTemplate().queryForList("explain " + query, parameters, String.class), "\n");
+    }
+
+    private int countRows(String table) {
+        return inboxDaoImpl.getJdbcTemplate().queryForObject("select count(*) from " + table, Collections.<String, Object>emptyMap(), Integer.class);
     }
 }
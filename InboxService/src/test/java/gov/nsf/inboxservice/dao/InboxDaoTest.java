@@ -11,22 +11,34 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.support.KeyHolder;
 
+import java.sql.Timestamp;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyMap;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -126,6 +138,109 @@ public class InboxDaoTest {
     }
 
 
+    /**
+     * Tests the expected behavior of the happy path case when the DB returns a page of Messages for the passed lanId
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getMessagesPageHappyPathTest() throws Exception {
+        List<Message> mockMessages = TestUtils.getMockMessages("test", "test");
+        when(jdbcTemplate.query(anyString(), anyMap(), any(ResultSetExtractor.class))).thenReturn(mockMessages);
+        MessageCursor after = new MessageCursor(Timestamp.valueOf("2017-01-01 23:30:32.0"), 7);
+        List<Message> returnedMessages = inboxDao.getMessagesForUser("test", ExpirationFilter.ACTIVE, 2, after);
+        assertEquals(mockMessages.size(), returnedMessages.size());
+
+        Map<String, Object> expectedParameters = new HashMap<String, Object>();
+        expectedParameters.put(Constants.MSG_LAN_ID_COLNAME, "test");
+        expectedParameters.put(Constants.AFTER_CREATION_DATE_PARAM, after.getCreationDate());
+        expectedParameters.put(Constants.AFTER_MSG_ID_PARAM, 7L);
+        verify(jdbcTemplate).query(eq(inboxDao.getMessagesPageQuery(ExpirationFilter.ACTIVE, 2, true)), eq(expectedParameters), any(ResultSetExtractor.class));
+    }
+
+    /**
+     * Tests that a header page selects only the header columns
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getMessageHeadersPageHappyPathTest() throws Exception {
+        List<Message> mockMessages = TestUtils.getMockMessages("test", "test");
+        when(jdbcTemplate.query(anyString(), anyMap(), any(ResultSetExtractor.class))).thenReturn(mockMessages);
+        List<Message> returnedMessages = inboxDao.getMessageHeadersForUser("test", ExpirationFilter.ALL, 2, null);
+        assertEquals(mockMessages.size(), returnedMessages.size());
+
+        String expectedQuery = inboxDao.getMessagesPageQuery(ExpirationFilter.ALL, 2, false, Constants.MESSAGE_HEADER_COLUMNS);
+        assertFalse(expectedQuery.contains(Constants.MSG_SUMMARY_COLNAME));
+        verify(jdbcTemplate).query(eq(expectedQuery), anyMap(), any(ResultSetExtractor.class));
+    }
+
+    /**
+     * Tests that no read path selects every column, and that each joins the normalized content
+     */
+    @Test
+    public void messageQueriesProjectColumnsTest(){
+        for( String query : Arrays.asList(Constants.GET_MESSAGE_BY_ID_QUERY, Constants.GET_ACTIVE_MESSAGES_FOR_USER_QUERY,
+                Constants.GET_INACTIVE_MESSAGES_FOR_USER_QUERY, Constants.GET_ALL_MESSAGES_FOR_USER_QUERY,
+                Constants.GET_INSERTED_MESSAGES_QUERY, inboxDao.getMessagesPageQuery(ExpirationFilter.ALL, 2, true)) ){
+            assertFalse(query, query.contains("*"));
+            assertTrue(query, query.contains(Constants.STORED_MESSAGE_COLUMNS));
+            assertTrue(query, query.contains(Constants.MESSAGE_TABLES));
+            assertFalse(query, query.contains(Constants.LAST_UPDT_PGM_COLNAME));
+        }
+    }
+
+    /**
+     * Tests the expected behavior when the DB throws an exception while reading a page
+     *
+     * @throws Exception
+     */
+    @Test(expected= RollbackException.class)
+    public void getMessagesPageExceptionTest() throws Exception {
+        when(jdbcTemplate.query(anyString(), anyMap(), any(ResultSetExtractor.class))).thenThrow(new DataAccessResourceFailureException("Some DB exception occured"));
+        inboxDao.getMessagesForUser("test", ExpirationFilter.ACTIVE, 10, null);
+    }
+
+    /**
+     * Tests that the getMessagesPageQuery method limits, filters and orders the query
+     */
+    @Test
+    public void getMessagesPageQueryTest(){
+        String firstPageQuery = inboxDao.getMessagesPageQuery(ExpirationFilter.INACTIVE, 25, false);
+        assertTrue(firstPageQuery.startsWith(Constants.MESSAGES_PAGE_SELECT + 25 + " "));
+        assertTrue(firstPageQuery.contains(Constants.INACTIVE_MESSAGES_PREDICATE));
+        assertFalse(firstPageQuery.contains(Constants.MESSAGES_PAGE_AFTER_CURSOR_PREDICATE));
+        assertTrue(firstPageQuery.endsWith(Constants.MESSAGES_PAGE_ORDER_BY));
+
+        String nextPageQuery = inboxDao.getMessagesPageQuery(ExpirationFilter.ALL, 25, true);
+        assertTrue(nextPageQuery.contains(Constants.MESSAGES_PAGE_AFTER_CURSOR_PREDICATE + Constants.MESSAGES_PAGE_ORDER_BY));
+        assertFalse(nextPageQuery.contains(Constants.ACTIVE_MESSAGES_PREDICATE));
+    }
+
+    /**
+     * Tests that archive mode pages INACTIVE and ALL over the hot and archive tables but leaves ACTIVE alone
+     */
+    @Test
+    public void getMessagesPageQueryArchiveTest(){
+        inboxDao.setArchiveEnabled(true);
+        String inactiveQuery = inboxDao.getMessagesPageQuery(ExpirationFilter.INACTIVE, 25, true);
+        assertTrue(inactiveQuery.contains("dbo.inbx_msg_arch"));
+        assertTrue(inactiveQuery.contains(Constants.INACTIVE_MESSAGES_PREDICATE + Constants.MESSAGES_PAGE_AFTER_CURSOR_PREDICATE + " union all "));
+        assertTrue(inactiveQuery.contains(Constants.ARCHIVED_MESSAGES_FOR_USER_FROM_CLAUSE + Constants.INACTIVE_MESSAGES_PREDICATE + Constants.MESSAGES_PAGE_AFTER_CURSOR_PREDICATE + ")"));
+        assertTrue(inactiveQuery.endsWith(Constants.MESSAGES_PAGE_ORDER_BY));
+        assertTrue(inboxDao.getMessagesPageQuery(ExpirationFilter.ALL, 25, false).contains("dbo.inbx_msg_arch"));
+        assertFalse(inboxDao.getMessagesPageQuery(ExpirationFilter.ACTIVE, 25, false).contains("dbo.inbx_msg_arch"));
+        assertEquals(Constants.GET_INACTIVE_MESSAGES_WITH_ARCHIVE_FOR_USER_QUERY, inboxDao.getMessagesQuery(ExpirationFilter.INACTIVE));
+    }
+
+    /**
+     * Tests that a non-positive page limit is rejected
+     */
+    @Test(expected=IllegalArgumentException.class)
+    public void getMessagesPageQueryInvalidLimitTest(){
+        inboxDao.getMessagesPageQuery(ExpirationFilter.ALL, 0, false);
+    }
+
     /**
      * Tests the expected behavior of the happy path case the dao successfully inserts the Message
      *
@@ -133,11 +248,24 @@ public class InboxDaoTest {
      */
     @Test
     public void createMessageHappyPathTest() throws Exception {
-        Message mockMessage = TestUtils.getMockMessageForUser("");
-        when(jdbcTemplate.update(anyString(), anyMap())).thenReturn(1);
-        when(jdbcTemplate.queryForObject(anyString(), anyMap(), any(RowMapper.class))).thenReturn(mockMessage);
+        Message mockMessage = TestUtils.getMockMessageForUser("test");
+        when(jdbcTemplate.update(anyString(), any(SqlParameterSource.class), any(KeyHolder.class))).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) throws Throwable {
+                KeyHolder keyHolder = (KeyHolder) invocation.getArguments()[2];
+                keyHolder.getKeyList().add(Collections.<String, Object>singletonMap(Constants.MSG_ID_COLNAME, 42));
+                return 1;
+            }
+        });
         Message returnedMessage = inboxDao.createMessage(mockMessage);
         assertNotNull(returnedMessage);
+        assertEquals("42", returnedMessage.getId());
+        assertEquals(mockMessage.getLanId(), returnedMessage.getLanId());
+        assertEquals(mockMessage.getSummary(), returnedMessage.getSummary());
+        assertEquals(mockMessage.getExpirationDate(), returnedMessage.getExpirationDate());
+        assertEquals("", returnedMessage.getActionLink());
+        assertEquals(0, Timestamp.valueOf(returnedMessage.getCreationDate()).getTime() % Constants.DB_DATETIME_RESOLUTION_MILLIS);
+        verify(jdbcTemplate, never()).queryForObject(anyString(), anyMap(), any(RowMapper.class));
     }
 
     /**
@@ -148,24 +276,103 @@ public class InboxDaoTest {
     @Test(expected=RollbackException.class)
     public void createMessageExceptionDuringInsertTest() throws Exception {
         Message mockMessage = TestUtils.getMockMessageForUser("");
-        when(jdbcTemplate.update(anyString(), anyMap())).thenThrow(new DataAccessResourceFailureException("Some exception occured"));
+        when(jdbcTemplate.update(anyString(), any(SqlParameterSource.class), any(KeyHolder.class))).thenThrow(new DataAccessResourceFailureException("Some exception occured"));
         inboxDao.createMessage(mockMessage);
 
     }
 
     /**
-     * Tests the expected behavior when the DB throws an exception during the retrieve after insert message query
+     * Tests the expected behavior when the DB does not return a generated message ID for the insert
      *
      * @throws Exception
      */
     @Test(expected=RollbackException.class)
-    public void createMessageExceptionDuringRetrieveTest() throws Exception {
+    public void createMessageNoGeneratedKeyTest() throws Exception {
         Message mockMessage = TestUtils.getMockMessageForUser("");
-        when(jdbcTemplate.update(anyString(), anyMap())).thenReturn(1);
-        when(jdbcTemplate.queryForObject(anyString(), anyMap(), any(RowMapper.class))).thenThrow(new DataAccessResourceFailureException("Some exception occured"));
+        when(jdbcTemplate.update(anyString(), any(SqlParameterSource.class), any(KeyHolder.class))).thenReturn(1);
         inboxDao.createMessage(mockMessage);
     }
 
+    /**
+     * Tests that a single recipient is inserted on its own and built from its generated message ID
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createMessagesSingleRecipientTest() throws Exception {
+        when(jdbcTemplate.update(anyString(), any(SqlParameterSource.class), any(KeyHolder.class))).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) throws Throwable {
+                KeyHolder keyHolder = (KeyHolder) invocation.getArguments()[2];
+                keyHolder.getKeyList().add(Collections.<String, Object>singletonMap(Constants.MSG_ID_COLNAME, 42));
+                return 1;
+            }
+        });
+        List<Message> returnedMessages = inboxDao.createMessages(TestUtils.getMockMessageForUser(""), Collections.singletonList("test1"));
+        assertEquals(1, returnedMessages.size());
+        assertEquals("42", returnedMessages.get(0).getId());
+        assertEquals("test1", returnedMessages.get(0).getLanId());
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), any(SqlParameterSource[].class));
+        verify(jdbcTemplate, never()).queryForObject(anyString(), anyMap(), any(RowMapper.class));
+    }
+
+    /**
+     * Tests the expected behavior of the happy path case the dao inserts the Messages in batches
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createMessagesHappyPathTest() throws Exception {
+        Message mockMessage = TestUtils.getMockMessageForUser("");
+        List<String> lanIds = Arrays.asList("test1", "test2", "test3", "test4", "test5");
+        inboxDao.setBatchSize(2);
+        when(jdbcTemplate.batchUpdate(anyString(), any(SqlParameterSource[].class))).thenReturn(new int[]{1, 1});
+        when(jdbcTemplate.query(anyString(), anyMap(), any(ResultSetExtractor.class)))
+                .thenReturn(TestUtils.getMockMessages("test1", "test2"))
+                .thenReturn(TestUtils.getMockMessages("test3", "test4"))
+                .thenReturn(TestUtils.getMockMessages("test5"));
+
+        List<Message> returnedMessages = inboxDao.createMessages(mockMessage, lanIds);
+
+        assertEquals(lanIds.size(), returnedMessages.size());
+        verify(jdbcTemplate, times(3)).batchUpdate(anyString(), any(SqlParameterSource[].class));
+        verify(jdbcTemplate, times(3)).query(anyString(), anyMap(), any(ResultSetExtractor.class));
+        verify(jdbcTemplate, never()).update(anyString(), anyMap());
+    }
+
+    /**
+     * Tests the expected behavior when the DB throws an exception during the batch insert
+     *
+     * @throws Exception
+     */
+    @Test(expected=RollbackException.class)
+    public void createMessagesExceptionDuringInsertTest() throws Exception {
+        Message mockMessage = TestUtils.getMockMessageForUser("");
+        when(jdbcTemplate.batchUpdate(anyString(), any(SqlParameterSource[].class))).thenThrow(new DataAccessResourceFailureException("Some exception occured"));
+        inboxDao.createMessages(mockMessage, Arrays.asList("test1", "test2"));
+    }
+
+    /**
+     * Tests the expected behavior when the DB throws an exception while retrieving the inserted batch
+     *
+     * @throws Exception
+     */
+    @Test(expected=RollbackException.class)
+    public void createMessagesExceptionDuringRetrieveTest() throws Exception {
+        Message mockMessage = TestUtils.getMockMessageForUser("");
+        when(jdbcTemplate.batchUpdate(anyString(), any(SqlParameterSource[].class))).thenReturn(new int[]{1, 1});
+        when(jdbcTemplate.query(anyString(), anyMap(), any(ResultSetExtractor.class))).thenThrow(new DataAccessResourceFailureException("Some exception occured"));
+        inboxDao.createMessages(mockMessage, Arrays.asList("test1", "test2"));
+    }
+
+    /**
+     * Tests that a non-positive batch size is rejected
+     */
+    @Test(expected=IllegalArgumentException.class)
+    public void setBatchSizeInvalidTest(){
+        inboxDao.setBatchSize(0);
+    }
+
     /**
      * Tests that the getMessagesQuery method returns the appropriate query based on the active value
      */
@@ -247,4 +454,59 @@ public class InboxDaoTest {
         when(jdbcTemplate.update(anyString(), anyMap())).thenThrow(new DataAccessResourceFailureException("Some DB exception occured"));
         inboxDao.deleteExpiredMessages("test");
     }
+
+    /**
+     * Tests that a sweep chunk deletes at most chunkSize rows and returns the deleted count
+     *
+     * @throws Exception
+     */
+    @Test
+    public void deleteExpiredMessagesChunkHappyPathTest() throws Exception {
+        when(jdbcTemplate.update(anyString(), anyMap())).thenReturn(42);
+        assertEquals(42, inboxDao.deleteExpiredMessagesChunk(100));
+        verify(jdbcTemplate).update(eq(Constants.DELETE_EXPIRED_MESSAGES_CHUNK_DELETE + 100 + Constants.DELETE_EXPIRED_MESSAGES_CHUNK_FROM_CLAUSE), anyMap());
+    }
+
+    /**
+     * Tests the expected behavior when an exception is thrown from the DB during a sweep chunk
+     *
+     * @throws Exception
+     */
+    @Test(expected=RollbackException.class)
+    public void deleteExpiredMessagesChunkExceptionTest() throws Exception {
+        when(jdbcTemplate.update(anyString(), anyMap())).thenThrow(new DataAccessResourceFailureException("Some DB exception occured"));
+        inboxDao.deleteExpiredMessagesChunk(100);
+    }
+
+    /**
+     * Tests that a non-positive chunk size is rejected
+     *
+     * @throws Exception
+     */
+    @Test(expected=IllegalArgumentException.class)
+    public void deleteExpiredMessagesChunkInvalidSizeTest() throws Exception {
+        inboxDao.deleteExpiredMessagesChunk(0);
+    }
+
+    /**
+     * Tests that archive mode pages the joined hot rows and the archive under the plain column names
+     */
+    @Test
+    public void getMessagesPageQueryArchiveColumnsTest(){
+        inboxDao.setArchiveEnabled(true);
+        String query = inboxDao.getMessagesPageQuery(ExpirationFilter.ALL, 25, false, Constants.MESSAGE_HEADER_COLUMNS);
+        assertTrue(query.startsWith(Constants.MESSAGES_PAGE_SELECT + 25 + " " + Constants.MESSAGE_HEADER_COLUMNS + " from ("));
+        assertTrue(query.contains("select " + Constants.STORED_MESSAGE_HEADER_COLUMNS + " " + Constants.MESSAGES_FOR_USER_FROM_CLAUSE));
+        assertTrue(query.contains("select " + Constants.MESSAGE_HEADER_COLUMNS + " " + Constants.ARCHIVED_MESSAGES_FOR_USER_FROM_CLAUSE));
+    }
+
+    /**
+     * Tests that a non-positive orphaned content chunk size is rejected
+     *
+     * @throws Exception
+     */
+    @Test(expected=IllegalArgumentException.class)
+    public void deleteOrphanedContentChunkInvalidSizeTest() throws Exception {
+        inboxDao.deleteOrphanedContentChunk(new Timestamp(System.currentTimeMillis()), 0);
+    }
 }
@@ -0,0 +1,65 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.inboxservice.common.util.Constants;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Embedded DB integration tests for LeaseDao
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {"Embedded-InboxDaoTest-Context.xml"})
+public class LeaseDaoIntgTest {
+
+    @Autowired
+    private LeaseDaoImpl leaseDao;
+
+    @After
+    public void releaseLeases() throws Exception {
+        leaseDao.releaseLease(Constants.EXPIRED_MESSAGE_SWEEPER_LOCK, "node-a");
+        leaseDao.releaseLease(Constants.EXPIRED_MESSAGE_SWEEPER_LOCK, "node-b");
+    }
+
+    @Test
+    public void acquireLeaseExclusiveTest() throws Exception {
+        assertTrue(leaseDao.acquireLease(Constants.EXPIRED_MESSAGE_SWEEPER_LOCK, "node-a", 60));
+        assertFalse(leaseDao.acquireLease(Constants.EXPIRED_MESSAGE_SWEEPER_LOCK, "node-b", 60));
+
+        //Renewal by the holder
+        assertTrue(leaseDao.acquireLease(Constants.EXPIRED_MESSAGE_SWEEPER_LOCK, "node-a", 60));
+    }
+
+    @Test
+    public void releaseLeaseTest() throws Exception {
+        assertTrue(leaseDao.acquireLease(Constants.EXPIRED_MESSAGE_SWEEPER_LOCK, "node-a", 60));
+
+        //Only the holder can release
+        leaseDao.releaseLease(Constants.EXPIRED_MESSAGE_SWEEPER_LOCK, "node-b");
+        assertFalse(leaseDao.acquireLease(Constants.EXPIRED_MESSAGE_SWEEPER_LOCK, "node-b", 60));
+
+        leaseDao.releaseLease(Constants.EXPIRED_MESSAGE_SWEEPER_LOCK, "node-a");
+        assertTrue(leaseDao.acquireLease(Constants.EXPIRED_MESSAGE_SWEEPER_LOCK, "node-b", 60));
+    }
+
+    @Test
+    public void acquireExpiredLeaseTest() throws Exception {
+        assertTrue(leaseDao.acquireLease(Constants.EXPIRED_MESSAGE_SWEEPER_LOCK, "node-a", 60));
+        leaseDao.getJdbcTemplate().update("update dbo.inbx_lock set lease_until = '2017-01-01 00:00:00' where lock_name = :lock_name",
+                Collections.singletonMap(Constants.LOCK_NAME_COLNAME, Constants.EXPIRED_MESSAGE_SWEEPER_LOCK));
+
+        assertTrue(leaseDao.acquireLease(Constants.EXPIRED_MESSAGE_SWEEPER_LOCK, "node-b", 60));
+    }
+
+    @Test
+    public void acquireUnknownLeaseTest() throws Exception {
+        assertFalse(leaseDao.acquireLease("NO_SUCH_LOCK", "node-a", 60));
+    }
+}
@@ -0,0 +1,208 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.model.ExpirationFilter;
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessageCount;
+import gov.nsf.inboxservice.api.model.MessagePriority;
+import gov.nsf.inboxservice.api.model.MessageType;
+import gov.nsf.inboxservice.common.util.TestUtils;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Embedded DB integration tests for MessageCountDao
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {"Embedded-InboxDaoTest-Context.xml"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class MessageCountDaoIntgTest {
+
+    @Autowired
+    private MessageCountDaoImpl messageCountDao;
+
+    @Autowired
+    private InboxDaoImpl inboxDao;
+
+    @Test
+    public void getMessageCountsTest() throws Exception {
+        List<MessageCount> counts = messageCountDao.getMessageCounts("test");
+        assertEquals(2, counts.size());
+
+        //Seeded tasks never expire, both seeded notices have expired
+        MessageCount tasks = getCount(counts, MessageType.Task, MessagePriority.Low);
+        assertEquals(3, tasks.getActive());
+        assertEquals(0, tasks.getInactive());
+        assertEquals(3, tasks.getAll());
+
+        MessageCount notices = getCount(counts, MessageType.Information, MessagePriority.Low);
+        assertEquals(0, notices.getActive());
+        assertEquals(2, notices.getInactive());
+        assertEquals(2, notices.getAll());
+
+        assertTrue(messageCountDao.getMessageCounts("nobody").isEmpty());
+    }
+
+    @Test
+    public void incrementCountsTest() throws Exception {
+        Message message = TestUtils.getMockMessageForUser("cntinc1");
+        messageCountDao.incrementCounts(message, Arrays.asList("cntinc1", "cntinc2"));
+        messageCountDao.incrementCounts(message, Collections.singletonList("cntinc1"));
+
+        assertEquals(2, getCount(messageCountDao.getMessageCounts("cntinc1"), MessageType.Information, MessagePriority.High).getActive());
+        assertEquals(1, getCount(messageCountDao.getMessageCounts("cntinc2"), MessageType.Information, MessagePriority.High).getActive());
+    }
+
+    @Test
+    public void incrementCountsBatchSizeTest() throws Exception {
+        messageCountDao.setBatchSize(2);
+        try {
+            Message message = TestUtils.getMockMessageForUser("cntbat1");
+            messageCountDao.incrementCounts(message, Arrays.asList("cntbat1", "cntbat2", "cntbat3"));
+
+            for( String lanId : Arrays.asList("cntbat1", "cntbat2", "cntbat3") ){
+                assertEquals(1, getCount(messageCountDao.getMessageCounts(lanId), MessageType.Information, MessagePriority.High).getAll());
+            }
+        } finally {
+            messageCountDao.setBatchSize(500);
+        }
+    }
+
+    @Test
+    public void decrementCountTest() throws Exception {
+        Message message = TestUtils.getMockMessageForUser("cntdec");
+        List<Message> storedMessages = inboxDao.createMessages(message, Collections.singletonList("cntdec"));
+        inboxDao.createMessages(message, Collections.singletonList("cntdec"));
+        messageCountDao.incrementCounts(message, Collections.singletonList("cntdec"));
+        messageCountDao.incrementCounts(message, Collections.singletonList("cntdec"));
+
+        messageCountDao.decrementCount(storedMessages.get(0).getId());
+        inboxDao.deleteMessage(storedMessages.get(0).getId());
+        assertEquals(1, getCount(messageCountDao.getMessageCounts("cntdec"), MessageType.Information, MessagePriority.High).getActive());
+
+        //The counter is deleted once it is empty
+        String msgId = inboxDao.getMessagesForUser("cntdec", ExpirationFilter.ALL).get(0).getId();
+        messageCountDao.decrementCount(msgId);
+        assertTrue(messageCountDao.getMessageCounts("cntdec").isEmpty());
+    }
+
+    @Test
+    public void decrementCountForDeletedMessageTest() throws Exception {
+        Message message = TestUtils.getMockMessageForUser("cntdel");
+        inboxDao.createMessages(message, Arrays.asList("cntdel", "cntdel2"));
+        messageCountDao.incrementCounts(message, Arrays.asList("cntdel", "cntdel2"));
+        String msgId = inboxDao.getMessagesForUser("cntdel", ExpirationFilter.ALL).get(0).getId();
+
+        //Decremented from the deleted row, after the delete
+        messageCountDao.decrementCount(inboxDao.deleteMessageForUser(msgId, "cntdel").getMessage());
+        assertTrue(messageCountDao.getMessageCounts("cntdel").isEmpty());
+        assertEquals(1, getCount(messageCountDao.getMessageCounts("cntdel2"), MessageType.Information, MessagePriority.High).getActive());
+    }
+
+    @Test
+    public void deleteExpiredCountsTest() throws Exception {
+        messageCountDao.deleteExpiredCounts("test");
+
+        List<MessageCount> counts = messageCountDao.getMessageCounts("test");
+        assertEquals(1, counts.size());
+        assertEquals(3, getCount(counts, MessageType.Task, MessagePriority.Low).getActive());
+    }
+
+    @Test
+    public void deleteExpiredCountsKeepsTodaysTest() throws Exception {
+        LocalDate today = LocalDate.now();
+        Assume.assumeTrue(LocalTime.now().isBefore(LocalTime.of(23, 59, 50)));
+        Message expired = getNotice(Timestamp.valueOf(today.atStartOfDay()).toString());
+        Message active = getNotice(Timestamp.valueOf(today.atTime(23, 59, 59)).toString());
+        inboxDao.createMessages(expired, Collections.singletonList("cnttoday"));
+        inboxDao.createMessages(active, Collections.singletonList("cnttoday"));
+        messageCountDao.incrementCounts(expired, Collections.singletonList("cnttoday"));
+        messageCountDao.incrementCounts(active, Collections.singletonList("cnttoday"));
+
+        //H2's getdate() has no time of day, so the expired message is deleted the way Sybase's getdate() would
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("user_lan_id", "cnttoday");
+        parameters.put("now", new Timestamp(System.currentTimeMillis()));
+        assertEquals(1, messageCountDao.getJdbcTemplate().update(
+                "delete from dbo.inbx_msg where user_lan_id = :user_lan_id and active_until < :now", parameters));
+        messageCountDao.deleteExpiredCounts("cnttoday");
+
+        //The day's counter still counts the message expiring tonight
+        MessageCount notices = getCount(messageCountDao.getMessageCounts("cnttoday"), MessageType.Information, MessagePriority.High);
+        assertEquals(1, notices.getActive());
+        assertEquals(0, notices.getInactive());
+    }
+
+    /**
+     * Tests that messages expiring on the same day share one counter, which any format of their expiration finds
+     *
+     * @throws Exception
+     */
+    @Test
+    public void activeDayCounterTest() throws Exception {
+        messageCountDao.incrementCounts(getNotice("2091-01-01 08:00:00"), Collections.singletonList("cntday"));
+        messageCountDao.incrementCounts(getNotice("2091-01-01 23:30:32.5"), Collections.singletonList("cntday"));
+        assertEquals(Integer.valueOf(1), messageCountDao.getJdbcTemplate().queryForObject(
+                "select count(*) from dbo.inbx_msg_cnt where user_lan_id = :user_lan_id",
+                Collections.singletonMap("user_lan_id", "cntday"), Integer.class));
+        assertEquals(2, getCount(messageCountDao.getMessageCounts("cntday"), MessageType.Information, MessagePriority.High).getActive());
+
+        messageCountDao.decrementCount(getNotice("2091-01-01 08:00:00.0"));
+        messageCountDao.decrementCount(getNotice(" 2091-01-01 23:30:32.500 "));
+        assertTrue(messageCountDao.getMessageCounts("cntday").isEmpty());
+    }
+
+    @Test
+    public void recountExpiredCountsTest() throws Exception {
+        //Expired messages removed behind the counters' back, as the sweeper does
+        inboxDao.deleteExpiredMessagesChunk(1);
+
+        assertEquals(1, messageCountDao.recountExpiredCounts());
+        assertEquals(1, getCount(messageCountDao.getMessageCounts("test"), MessageType.Information, MessagePriority.Low).getInactive());
+
+        assertEquals(0, messageCountDao.recountExpiredCounts());
+    }
+
+    @Test
+    public void recountMessagesTest() throws Exception {
+        messageCountDao.getJdbcTemplate().update("update dbo.inbx_msg_cnt set msg_cnt = 42", Collections.<String, Object>emptyMap());
+
+        messageCountDao.recountMessages(Collections.singletonList("test"));
+
+        List<MessageCount> counts = messageCountDao.getMessageCounts("test");
+        assertEquals(3, getCount(counts, MessageType.Task, MessagePriority.Low).getAll());
+        assertEquals(2, getCount(counts, MessageType.Information, MessagePriority.Low).getAll());
+    }
+
+    private static Message getNotice(String expirationDate){
+        Message message = TestUtils.getMockMessageForUser("");
+        message.setLanId("cntday");
+        message.setExpirationDate(expirationDate);
+        return message;
+    }
+
+    private static MessageCount getCount(List<MessageCount> counts, MessageType type, MessagePriority priority){
+        for( MessageCount count : counts ){
+            if( count.getType() == type && count.getPriority() == priority ){
+                return count;
+            }
+        }
+        fail("No count for " + type + " " + priority);
+        return null;
+    }
+}
@@ -0,0 +1,68 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.common.util.TestUtils;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JUnit tests for MessageCursor
+ */
+public class MessageCursorTest {
+
+    /**
+     * Tests that an encoded cursor decodes to the same position
+     */
+    @Test
+    public void encodeDecodeTest() {
+        MessageCursor cursor = new MessageCursor(Timestamp.valueOf("2017-01-01 23:30:32.123"), 12345);
+        MessageCursor decoded = MessageCursor.decode(cursor.encode());
+        assertEquals(cursor.getCreationDate(), decoded.getCreationDate());
+        assertEquals(cursor.getMsgId(), decoded.getMsgId());
+    }
+
+    /**
+     * Tests that the cursor is built from the message's creation date and ID
+     */
+    @Test
+    public void fromMessageTest() {
+        Message message = TestUtils.getMockMessageForUser("test");
+        message.setId("42");
+        MessageCursor cursor = MessageCursor.fromMessage(message);
+        assertEquals(Timestamp.valueOf(message.getCreationDate()), cursor.getCreationDate());
+        assertEquals(42L, cursor.getMsgId());
+    }
+
+    /**
+     * Tests that the encoded cursor is URL-safe
+     */
+    @Test
+    public void encodeUrlSafeTest() {
+        String encoded = new MessageCursor(Timestamp.valueOf("2017-01-01 23:30:32.0"), 1).encode();
+        assertTrue(encoded.matches("[A-Za-z0-9_-]+"));
+    }
+
+    /**
+     * Tests that malformed cursors are rejected
+     */
+    @Test
+    public void isValidTest() {
+        assertTrue(MessageCursor.isValid(new MessageCursor(Timestamp.valueOf("2017-01-01 23:30:32.0"), 1).encode()));
+        assertFalse(MessageCursor.isValid("not a cursor"));
+        assertFalse(MessageCursor.isValid("bm9zZXBhcmF0b3I"));
+        assertFalse(MessageCursor.isValid("MjAxNy0wMS0wMSAyMzozMDozMi4wfGFiYw"));
+    }
+
+    /**
+     * Tests that decoding a malformed cursor throws an IllegalArgumentException
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void decodeInvalidTest() {
+        MessageCursor.decode("not a cursor");
+    }
+}
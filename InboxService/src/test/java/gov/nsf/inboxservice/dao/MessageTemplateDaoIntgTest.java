@@ -0,0 +1,74 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.exception.ResourceNotFoundException;
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessagePriority;
+import gov.nsf.inboxservice.api.model.MessageType;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import static org.junit.Assert.*;
+
+/**
+ * Embedded DB integration tests for MessageTemplateDao
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {"Embedded-InboxDaoTest-Context.xml"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class MessageTemplateDaoIntgTest {
+
+    @Autowired
+    private MessageTemplateDaoImpl messageTemplateDao;
+
+    private static Message getTemplate(String summary) {
+        Message template = new Message();
+        template.setSummary(summary);
+        template.setPriority(MessagePriority.High);
+        template.setType(MessageType.Task);
+        template.setActionLink("https://example.gov/proposals/{id}");
+        template.setActionLabel("Open");
+        template.setInternal(true);
+        template.setLastUpdtUser("ProposalSvc");
+        return template;
+    }
+
+    @Test
+    public void saveAndGetTemplateTest() throws Exception {
+        messageTemplateDao.saveTemplate("proposal-due", getTemplate("Your proposal {id} is due {date}"));
+
+        Message template = messageTemplateDao.getTemplate("proposal-due");
+        assertEquals("proposal-due", template.getId());
+        assertEquals("Your proposal {id} is due {date}", template.getSummary());
+        assertEquals(MessagePriority.High, template.getPriority());
+        assertEquals(MessageType.Task, template.getType());
+        assertEquals("https://example.gov/proposals/{id}", template.getActionLink());
+        assertEquals("Open", template.getActionLabel());
+        assertTrue(template.isInternal());
+        assertEquals("ProposalSvc", template.getLastUpdtUser());
+    }
+
+    @Test
+    public void saveReplacesTemplateTest() throws Exception {
+        messageTemplateDao.saveTemplate("proposal-due", getTemplate("Your proposal {id} is due {date}"));
+
+        Message replacement = getTemplate("Proposal {id} is due");
+        replacement.setType(MessageType.Information);
+        replacement.setPriority(MessagePriority.Low);
+        messageTemplateDao.saveTemplate("proposal-due", replacement);
+
+        Message template = messageTemplateDao.getTemplate("proposal-due");
+        assertEquals("Proposal {id} is due", template.getSummary());
+        assertEquals(MessageType.Information, template.getType());
+        assertEquals(MessagePriority.Low, template.getPriority());
+        assertEquals("", template.getActionLink());
+    }
+
+    @Test(expected = ResourceNotFoundException.class)
+    public void getMissingTemplateTest() throws Exception {
+        messageTemplateDao.getTemplate("missing");
+    }
+}
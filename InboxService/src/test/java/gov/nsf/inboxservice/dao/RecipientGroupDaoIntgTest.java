@@ -0,0 +1,96 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.exception.ResourceNotFoundException;
+import gov.nsf.inboxservice.api.model.RecipientGroup;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Embedded DB integration tests for RecipientGroupDao
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {"Embedded-InboxDaoTest-Context.xml"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class RecipientGroupDaoIntgTest {
+
+    @Autowired
+    private RecipientGroupDaoImpl recipientGroupDao;
+
+    @Test
+    public void insertAndGetGroupTest() throws Exception {
+        assertTrue(recipientGroupDao.insertGroup("bio-division", "DivisionSvc"));
+        assertFalse(recipientGroupDao.insertGroup("bio-division", "DivisionSvc"));
+
+        RecipientGroup group = recipientGroupDao.getGroup("bio-division");
+        assertEquals("bio-division", group.getName());
+        assertEquals(1, group.getVersion());
+        assertEquals(0, group.getMemberCount());
+        assertEquals("DivisionSvc", group.getLastUpdtUser());
+    }
+
+    @Test(expected = ResourceNotFoundException.class)
+    public void getMissingGroupTest() throws Exception {
+        recipientGroupDao.getGroup("missing");
+    }
+
+    @Test
+    public void getGroupNamesTest() throws Exception {
+        recipientGroupDao.insertGroup("bio-division", "DivisionSvc");
+        recipientGroupDao.insertGroup("geo-division", "DivisionSvc");
+
+        assertEquals(Collections.singletonList("geo-division"), recipientGroupDao.getGroupNames(Arrays.asList("geo-division", "missing")));
+    }
+
+    @Test
+    public void incrementVersionTest() throws Exception {
+        assertFalse(recipientGroupDao.incrementVersion("bio-division", null, "DivisionSvc"));
+        recipientGroupDao.insertGroup("bio-division", "DivisionSvc");
+
+        assertTrue(recipientGroupDao.incrementVersion("bio-division", null, "AdminSvc"));
+        assertTrue(recipientGroupDao.incrementVersion("bio-division", 2, "AdminSvc"));
+        assertFalse(recipientGroupDao.incrementVersion("bio-division", 2, "AdminSvc"));
+
+        RecipientGroup group = recipientGroupDao.getGroup("bio-division");
+        assertEquals(3, group.getVersion());
+        assertEquals("AdminSvc", group.getLastUpdtUser());
+    }
+
+    @Test
+    public void addAndRemoveMembersTest() throws Exception {
+        recipientGroupDao.insertGroup("bio-division", "DivisionSvc");
+
+        //batchSize is 2 in the test context, so the lan IDs span several batches
+        recipientGroupDao.addMembers("bio-division", Arrays.asList("user1", "user2", "user3", "user4", "user5"));
+        recipientGroupDao.addMembers("bio-division", Arrays.asList("user5", "user6"));
+        assertEquals(6, recipientGroupDao.getGroup("bio-division").getMemberCount());
+
+        recipientGroupDao.removeMembers("bio-division", Arrays.asList("user1", "user3", "user5", "missing"));
+        assertEquals(Arrays.asList("user2", "user4", "user6"), recipientGroupDao.getMembersPage(Collections.singletonList("bio-division"), "", 10));
+    }
+
+    @Test
+    public void getMembersPageTest() throws Exception {
+        recipientGroupDao.insertGroup("bio-division", "DivisionSvc");
+        recipientGroupDao.insertGroup("geo-division", "DivisionSvc");
+        recipientGroupDao.insertGroup("other", "DivisionSvc");
+        recipientGroupDao.addMembers("bio-division", Arrays.asList("user1", "user3", "user5"));
+        recipientGroupDao.addMembers("geo-division", Arrays.asList("user2", "user3", "user4"));
+        recipientGroupDao.addMembers("other", Collections.singletonList("user9"));
+
+        List<String> groups = Arrays.asList("bio-division", "geo-division");
+        assertEquals(Arrays.asList("user1", "user2"), recipientGroupDao.getMembersPage(groups, "", 2));
+        assertEquals(Arrays.asList("user3", "user4"), recipientGroupDao.getMembersPage(groups, "user2", 2));
+        assertEquals(Collections.singletonList("user5"), recipientGroupDao.getMembersPage(groups, "user4", 2));
+        assertTrue(recipientGroupDao.getMembersPage(groups, "user5", 2).isEmpty());
+    }
+}
@@ -0,0 +1,73 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.inboxservice.api.model.MessageType;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * JUnit tests for ShardedArchiveDao
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ShardedArchiveDaoTest {
+
+    @Mock
+    private ArchiveDao shard0;
+
+    @Mock
+    private ArchiveDao shard1;
+
+    private ShardedArchiveDao archiveDao;
+
+    @Before
+    public void setUp() {
+        archiveDao = new ShardedArchiveDao();
+        archiveDao.setShards(Arrays.asList(shard0, shard1));
+    }
+
+    /**
+     * Tests that a chunk is filled from the shards in order and never exceeds the chunk size
+     *
+     * @throws Exception
+     */
+    @Test
+    public void archiveChunkTest() throws Exception {
+        when(shard0.archiveExpiredMessagesChunk(100)).thenReturn(30);
+        when(shard1.archiveExpiredMessagesChunk(70)).thenReturn(70);
+        assertEquals(100, archiveDao.archiveExpiredMessagesChunk(100));
+
+        Timestamp createdBefore = new Timestamp(0);
+        when(shard0.archiveAgedMessagesChunk(MessageType.Task, createdBefore, 10)).thenReturn(10);
+        assertEquals(10, archiveDao.archiveAgedMessagesChunk(MessageType.Task, createdBefore, 10));
+        verify(shard1, never()).archiveAgedMessagesChunk(any(MessageType.class), any(Timestamp.class), anyInt());
+    }
+
+    /**
+     * Tests that the partitions of every shard are dropped
+     *
+     * @throws Exception
+     */
+    @Test
+    public void dropArchivePartitionsTest() throws Exception {
+        when(shard0.dropArchivePartitions(MessageType.Information, 201701)).thenReturn(1);
+        when(shard1.dropArchivePartitions(MessageType.Information, 201701)).thenReturn(1);
+        assertEquals(2, archiveDao.dropArchivePartitions(MessageType.Information, 201701));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noShardsTest() {
+        archiveDao.setShards(null);
+    }
+}
@@ -0,0 +1,490 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.common.exception.ResourceNotFoundException;
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.common.model.ExpirationFilter;
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.common.util.Constants;
+import gov.nsf.inboxservice.common.util.TestUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.jdbc.datasource.ConnectionHolder;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * JUnit tests for ShardedInboxDao
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ShardedInboxDaoTest {
+
+    private static final long SHARD_1 = 1L << Constants.SHARD_MSG_ID_BITS;
+
+    @Mock
+    private InboxDao shard0;
+
+    @Mock
+    private InboxDao shard1;
+
+    @Mock
+    private DataSource shard0DataSource;
+
+    @Mock
+    private DataSource shard1DataSource;
+
+    @Mock
+    private Connection shard1Connection;
+
+    private ShardedInboxDao inboxDao;
+
+    private String shard0User;
+    private String shard1User;
+
+    @Before
+    public void setUp() {
+        inboxDao = new ShardedInboxDao();
+        inboxDao.setShards(Arrays.asList(shard0, shard1));
+
+        for( int i = 0; shard0User == null || shard1User == null; i++ ){
+            String lanId = "user" + i;
+            if( inboxDao.getShardIndex(lanId) == 0 ){
+                shard0User = shard0User == null ? lanId : shard0User;
+            } else {
+                shard1User = shard1User == null ? lanId : shard1User;
+            }
+        }
+    }
+
+    /**
+     * Tests that users are spread over the shards, the same way whatever the case of the lan ID
+     */
+    @Test
+    public void getShardIndexTest() {
+        int[] users = new int[2];
+        for( int i = 0; i < 1000; i++ ){
+            users[inboxDao.getShardIndex("user" + i)]++;
+        }
+        assertTrue(users[0] > 400 && users[1] > 400);
+        assertEquals(inboxDao.getShardIndex(shard1User), inboxDao.getShardIndex(" " + shard1User.toUpperCase() + " "));
+    }
+
+    /**
+     * Tests that adding a shard only moves users to the new shard
+     */
+    @Test
+    public void addShardMovesUsersToNewShardOnlyTest() {
+        ShardedInboxDao threeShards = new ShardedInboxDao();
+        threeShards.setShards(Arrays.asList(shard0, shard1, shard1));
+
+        for( int i = 0; i < 1000; i++ ){
+            int shardIndex = threeShards.getShardIndex("user" + i);
+            assertTrue(shardIndex == 2 || shardIndex == inboxDao.getShardIndex("user" + i));
+        }
+    }
+
+    /**
+     * Tests that a single shard keeps the unsharded message IDs
+     *
+     * @throws Exception
+     */
+    @Test
+    public void singleShardTest() throws Exception {
+        ShardedInboxDao singleShard = new ShardedInboxDao();
+        singleShard.setShards(Collections.singletonList(shard0));
+        Message stored = getStoredMessage(shard1User, 7);
+        when(shard0.createMessage(any(Message.class))).thenReturn(stored);
+
+        assertEquals("7", singleShard.createMessage(TestUtils.getMockMessageForUser(shard1User)).getId());
+        assertEquals(0, singleShard.getShardIndex(shard1User));
+    }
+
+    /**
+     * Tests that created messages get IDs encoding their shard, which route reads and deletes back to it
+     *
+     * @throws Exception
+     */
+    @Test
+    public void messageIdRoutingTest() throws Exception {
+        when(shard1.createMessage(any(Message.class))).thenReturn(getStoredMessage(shard1User, 7));
+        Message stored = inboxDao.createMessage(TestUtils.getMockMessageForUser(shard1User));
+        String globalId = String.valueOf(SHARD_1 + 7);
+        assertEquals(globalId, stored.getId());
+
+        when(shard1.getMessageById("7")).thenReturn(getStoredMessage(shard1User, 7));
+        assertEquals(globalId, inboxDao.getMessageById(globalId).getId());
+        when(shard1.deleteMessage("7")).thenReturn(getStoredMessage(shard1User, 7));
+        assertEquals(globalId, inboxDao.deleteMessage(globalId).getId());
+        when(shard1.deleteMessageForUser("7", shard1User)).thenReturn(UserDeleteResult.deleted(getStoredMessage(shard1User, 7)));
+        assertEquals(globalId, inboxDao.deleteMessageForUser(globalId, shard1User).getMessage().getId());
+
+        //Someone else's shard is never asked, its messages cannot be this user's
+        assertEquals(UserDeleteResult.Status.Forbidden, inboxDao.deleteMessageForUser(globalId, shard0User).getStatus());
+        verify(shard0, never()).deleteMessageForUser(any(String.class), any(String.class));
+        //Nor is a shard that does not exist
+        assertEquals(UserDeleteResult.Status.NotFound, inboxDao.deleteMessageForUser(String.valueOf(5L << Constants.SHARD_MSG_ID_BITS), shard0User).getStatus());
+    }
+
+    @Test(expected = ResourceNotFoundException.class)
+    public void getMessageOfUnknownShardTest() throws Exception {
+        inboxDao.getMessageById(String.valueOf(5 * SHARD_1 + 1));
+    }
+
+    /**
+     * Tests that the paging cursor reaches the shard with the shard's own message ID
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getMessagesPageTest() throws Exception {
+        Timestamp creationDate = new Timestamp(System.currentTimeMillis());
+        when(shard1.getMessagesForUser(eq(shard1User), eq(ExpirationFilter.ACTIVE), eq(10), any(MessageCursor.class)))
+                .thenAnswer(invocation -> {
+                    assertEquals(7, ((MessageCursor) invocation.getArguments()[3]).getMsgId());
+                    return new ArrayList<Message>(Collections.singletonList(getStoredMessage(shard1User, 8)));
+                });
+
+        List<Message> page = inboxDao.getMessagesForUser(shard1User, ExpirationFilter.ACTIVE, 10,
+                new MessageCursor(creationDate, SHARD_1 + 7));
+        assertEquals(String.valueOf(SHARD_1 + 8), page.get(0).getId());
+    }
+
+    /**
+     * Tests that a create for several users is split by shard and the copies of both shards are returned
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createMessagesTest() throws Exception {
+        Message message = TestUtils.getMockMessageForUser("");
+        when(shard0.createMessages(eq(message), anyCollectionOf(String.class)))
+                .thenReturn(new ArrayList<Message>(Collections.singletonList(getStoredMessage(shard0User, 3))));
+        when(shard1.createMessages(eq(message), anyCollectionOf(String.class)))
+                .thenReturn(new ArrayList<Message>(Collections.singletonList(getStoredMessage(shard1User, 3))));
+
+        List<Message> stored = inboxDao.createMessages(message, Arrays.asList(shard0User, shard1User));
+
+        assertEquals(new HashSet<String>(Arrays.asList("3", String.valueOf(SHARD_1 + 3))),
+                stored.stream().map(Message::getId).collect(Collectors.toSet()));
+        verify(shard0).createMessages(message, Collections.singletonList(shard0User));
+        verify(shard1).createMessages(message, Collections.singletonList(shard1User));
+        assertEquals(1, inboxDao.getMultiShardCalls());
+    }
+
+    /**
+     * Tests that a failing shard fails the whole call
+     *
+     * @throws Exception
+     */
+    @Test(expected = RollbackException.class)
+    public void createMessagesShardFailureTest() throws Exception {
+        Message message = TestUtils.getMockMessageForUser("");
+        when(shard0.createMessages(eq(message), anyCollectionOf(String.class))).thenReturn(new ArrayList<Message>());
+        when(shard1.createMessages(eq(message), anyCollectionOf(String.class))).thenThrow(new RollbackException("shard down"));
+
+        inboxDao.createMessages(message, Arrays.asList(shard0User, shard1User));
+    }
+
+    /**
+     * Tests that a shard handing out an ID beyond its range fails the create
+     *
+     * @throws Exception
+     */
+    @Test(expected = RollbackException.class)
+    public void createMessageIdOutOfRangeTest() throws Exception {
+        when(shard0.createMessage(any(Message.class))).thenReturn(getStoredMessage(shard0User, SHARD_1));
+        inboxDao.createMessage(TestUtils.getMockMessageForUser(shard0User));
+    }
+
+    /**
+     * Tests that lookups by several IDs go to the shards the IDs point to, with the shards' own IDs
+     *
+     * @throws Exception
+     */
+    @Test
+    public void messageIdsTest() throws Exception {
+        Collection<Long> msgIds = Arrays.asList(3L, SHARD_1 + 4, 9 * SHARD_1);
+        when(shard0.deleteMessages(Collections.singletonList(3L))).thenReturn(1);
+        when(shard1.deleteMessages(Collections.singletonList(4L))).thenReturn(1);
+        assertEquals(2, inboxDao.deleteMessages(msgIds));
+
+        when(shard1.getMessagesByIds(Collections.singletonList(4L)))
+                .thenReturn(new ArrayList<Message>(Collections.singletonList(getStoredMessage(shard1User, 4))));
+        when(shard0.getMessagesByIds(Collections.singletonList(3L))).thenReturn(new ArrayList<Message>());
+        assertEquals(String.valueOf(SHARD_1 + 4), inboxDao.getMessagesByIds(msgIds).get(0).getId());
+    }
+
+    /**
+     * Tests that duplicates of both shards are merged with IDs encoding their shard
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getDuplicateMessagesTest() throws Exception {
+        Message message = TestUtils.getMockMessageForUser("");
+        when(shard0.getDuplicateMessages(message, Collections.singletonList(shard0User)))
+                .thenReturn(Collections.singletonMap(shard0User, getStoredMessage(shard0User, 5)));
+        when(shard1.getDuplicateMessages(message, Collections.singletonList(shard1User)))
+                .thenReturn(Collections.singletonMap(shard1User, getStoredMessage(shard1User, 5)));
+
+        Map<String, Message> duplicates = inboxDao.getDuplicateMessages(message, Arrays.asList(shard0User, shard1User));
+        assertEquals("5", duplicates.get(shard0User).getId());
+        assertEquals(String.valueOf(SHARD_1 + 5), duplicates.get(shard1User).getId());
+    }
+
+    /**
+     * Tests that a sweep chunk is filled from the shards in order and never exceeds the chunk size
+     *
+     * @throws Exception
+     */
+    @Test
+    public void deleteExpiredMessagesChunkTest() throws Exception {
+        when(shard0.deleteExpiredMessagesChunk(100)).thenReturn(40);
+        when(shard1.deleteExpiredMessagesChunk(60)).thenReturn(60);
+        assertEquals(100, inboxDao.deleteExpiredMessagesChunk(100));
+
+        when(shard0.deleteOrphanedContentChunk(any(Timestamp.class), eq(100))).thenReturn(100);
+        assertEquals(100, inboxDao.deleteOrphanedContentChunk(new Timestamp(0), 100));
+        verify(shard1, never()).deleteOrphanedContentChunk(any(Timestamp.class), anyInt());
+    }
+
+    /**
+     * Tests that message IDs keep their shard past the int range
+     *
+     * @throws Exception
+     */
+    @Test
+    public void largeMessageIdTest() throws Exception {
+        long localId = Integer.MAX_VALUE + 10L;
+        when(shard1.getMessageById(String.valueOf(localId))).thenReturn(getStoredMessage(shard1User, localId));
+        String globalId = String.valueOf(SHARD_1 + localId);
+        assertEquals(globalId, inboxDao.getMessageById(globalId).getId());
+        assertEquals(1, ShardedInboxDao.shardOf(SHARD_1 + localId));
+        assertEquals(localId, ShardedInboxDao.toLocalId(SHARD_1 + localId));
+    }
+
+    /**
+     * Tests that writes to a remote shard run in a transaction on that shard committed as part of the caller's
+     * commit, while shard 0 stays in the caller's own transaction
+     *
+     * @throws Exception
+     */
+    @Test
+    public void shardTransactionCommitTest() throws Exception {
+        List<TransactionSynchronization> synchronizations = writeInTransaction();
+        verify(shard1Connection).setAutoCommit(false);
+        verify(shard0DataSource, never()).getConnection();
+        verify(shard1Connection, never()).commit();
+
+        for( TransactionSynchronization synchronization : synchronizations ){
+            synchronization.beforeCommit(false);
+        }
+        verify(shard1Connection).commit();
+        for( TransactionSynchronization synchronization : synchronizations ){
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+        verify(shard1Connection).commit();
+        verify(shard1Connection, never()).rollback();
+        verify(shard1Connection).setAutoCommit(true);
+        verify(shard1Connection).close();
+        assertFalse(TransactionSynchronizationManager.hasResource(shard1DataSource));
+    }
+
+    /**
+     * Tests that a remote shard's writes roll back with the caller's transaction
+     *
+     * @throws Exception
+     */
+    @Test
+    public void shardTransactionRollbackTest() throws Exception {
+        for( TransactionSynchronization synchronization : writeInTransaction() ){
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+        verify(shard1Connection).rollback();
+        verify(shard1Connection, never()).commit();
+        verify(shard1Connection).close();
+    }
+
+    /**
+     * Tests that a remote shard failing its commit fails the caller's commit, which then rolls everything back
+     *
+     * @throws Exception
+     */
+    @Test
+    public void shardTransactionFailedCommitTest() throws Exception {
+        doThrow(new SQLException("shard down")).when(shard1Connection).commit();
+        List<TransactionSynchronization> synchronizations = writeInTransaction();
+        try {
+            for( TransactionSynchronization synchronization : synchronizations ){
+                synchronization.beforeCommit(false);
+            }
+            fail("Expected TransactionSystemException");
+        } catch (TransactionSystemException ex) {
+            //Expected, the transaction manager rolls the caller back
+        }
+        for( TransactionSynchronization synchronization : synchronizations ){
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+        verify(shard1Connection).rollback();
+        verify(shard1Connection).close();
+    }
+
+    /**
+     * Tests that the shards of a multi-shard write run in parallel, the remote shard on the executor with its shard
+     * transaction's connection bound there, shard 0 on the caller's thread in the caller's transaction
+     *
+     * @throws Exception
+     */
+    @Test
+    public void parallelShardTransactionTest() throws Exception {
+        AtomicReference<Thread> shard0Thread = new AtomicReference<Thread>();
+        AtomicReference<Thread> shard1Thread = new AtomicReference<Thread>();
+        when(shard0.deleteMessages(Collections.singletonList(3L))).thenAnswer(invocation -> {
+            shard0Thread.set(Thread.currentThread());
+            return 1;
+        });
+
+        List<TransactionSynchronization> synchronizations;
+        inboxDao.start();
+        try {
+            synchronizations = writeInTransaction(() -> shard1Thread.set(Thread.currentThread()));
+        } finally {
+            inboxDao.stop();
+        }
+        assertSame(Thread.currentThread(), shard0Thread.get());
+        assertTrue(shard1Thread.get().getName().startsWith("inbox-shard-"));
+        assertEquals(1, inboxDao.getMultiShardCalls());
+
+        //The shard transaction completes on the caller's thread
+        for( TransactionSynchronization synchronization : synchronizations ){
+            synchronization.beforeCommit(false);
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+        verify(shard1Connection).commit();
+        assertFalse(TransactionSynchronizationManager.hasResource(shard1DataSource));
+    }
+
+    /**
+     * Tests that a failing shard fails the whole call once the other shards are done
+     *
+     * @throws Exception
+     */
+    @Test
+    public void parallelShardFailureTest() throws Exception {
+        when(shard0.deleteMessages(Collections.singletonList(3L))).thenReturn(1);
+        when(shard1.deleteMessages(Collections.singletonList(4L))).thenThrow(new RollbackException("shard down"));
+
+        inboxDao.start();
+        try {
+            inboxDao.deleteMessages(Arrays.asList(3L, SHARD_1 + 4));
+            fail("Expected RollbackException");
+        } catch (RollbackException ex) {
+            assertEquals("shard down", ex.getMessage());
+        } finally {
+            inboxDao.stop();
+        }
+        verify(shard0).deleteMessages(Collections.singletonList(3L));
+    }
+
+    /**
+     * Tests that writes outside a transaction never open a shard connection of their own
+     *
+     * @throws Exception
+     */
+    @Test
+    public void noTransactionTest() throws Exception {
+        inboxDao.setShardDataSources(Arrays.asList(shard0DataSource, shard1DataSource));
+        when(shard1.deleteMessages(Collections.singletonList(4L))).thenReturn(1);
+        assertEquals(1, inboxDao.deleteMessages(Collections.singletonList(SHARD_1 + 4)));
+        verify(shard1DataSource, never()).getConnection();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void missingShardDataSourceTest() throws Exception {
+        inboxDao.setShardDataSources(Collections.singletonList(shard0DataSource));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            inboxDao.joinTransaction(1);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooManyShardsTest() {
+        List<InboxDao> shards = new ArrayList<InboxDao>();
+        for( int i = 0; i <= Constants.MAX_INBOX_SHARDS; i++ ){
+            shards.add(shard0);
+        }
+        inboxDao.setShards(shards);
+    }
+
+    /**
+     * Deletes a message of each shard inside a transaction whose shard 0 DataSource is bound, like the
+     * transaction manager does
+     *
+     * @return the synchronizations registered with the transaction, which is cleared again
+     */
+    private List<TransactionSynchronization> writeInTransaction() throws Exception {
+        when(shard0.deleteMessages(Collections.singletonList(3L))).thenReturn(1);
+        return writeInTransaction(() -> {});
+    }
+
+    /**
+     * Same as writeInTransaction(), running the passed check in shard 1's part
+     */
+    private List<TransactionSynchronization> writeInTransaction(Runnable shard1Check) throws Exception {
+        inboxDao.setShardDataSources(Arrays.asList(shard0DataSource, shard1DataSource));
+        when(shard1DataSource.getConnection()).thenReturn(shard1Connection);
+        when(shard1.deleteMessages(Collections.singletonList(4L))).thenAnswer(invocation -> {
+            ConnectionHolder holder = (ConnectionHolder) TransactionSynchronizationManager.getResource(shard1DataSource);
+            assertSame(shard1Connection, holder.getConnection());
+            shard1Check.run();
+            return 1;
+        });
+
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.bindResource(shard0DataSource, new ConnectionHolder(mock(Connection.class)));
+        try {
+            assertEquals(2, inboxDao.deleteMessages(Arrays.asList(3L, SHARD_1 + 4)));
+            return new ArrayList<TransactionSynchronization>(TransactionSynchronizationManager.getSynchronizations());
+        } finally {
+            TransactionSynchronizationManager.unbindResource(shard0DataSource);
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static Message getStoredMessage(String lanId, long msgId) {
+        Message message = TestUtils.getMockMessageForUser(lanId);
+        message.setId(String.valueOf(msgId));
+        return message;
+    }
+}
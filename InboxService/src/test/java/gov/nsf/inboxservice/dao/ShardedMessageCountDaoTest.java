@@ -0,0 +1,122 @@
+package gov.nsf.inboxservice.dao;
+
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessageCount;
+import gov.nsf.inboxservice.common.util.Constants;
+import gov.nsf.inboxservice.common.util.TestUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * JUnit tests for ShardedMessageCountDao
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ShardedMessageCountDaoTest {
+
+    @Mock
+    private MessageCountDao shard0;
+
+    @Mock
+    private MessageCountDao shard1;
+
+    private ShardedMessageCountDao messageCountDao;
+
+    private String shard0User;
+    private String shard1User;
+
+    @Before
+    public void setUp() {
+        ShardedInboxDao inboxDao = new ShardedInboxDao();
+        inboxDao.setShards(Arrays.<InboxDao>asList(new InMemoryInboxDao(), new InMemoryInboxDao()));
+        messageCountDao = new ShardedMessageCountDao();
+        messageCountDao.setInboxDao(inboxDao);
+        messageCountDao.setShards(Arrays.asList(shard0, shard1));
+
+        for( int i = 0; shard0User == null || shard1User == null; i++ ){
+            String lanId = "user" + i;
+            if( inboxDao.getShardIndex(lanId) == 0 ){
+                shard0User = shard0User == null ? lanId : shard0User;
+            } else {
+                shard1User = shard1User == null ? lanId : shard1User;
+            }
+        }
+    }
+
+    /**
+     * Tests that a user's counts are read from the user's own shard
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getMessageCountsTest() throws Exception {
+        List<MessageCount> counts = Collections.singletonList(new MessageCount());
+        when(shard1.getMessageCounts(shard1User)).thenReturn(counts);
+
+        assertSame(counts, messageCountDao.getMessageCounts(shard1User));
+        verify(shard0, never()).getMessageCounts(anyString());
+    }
+
+    /**
+     * Tests that counting and recounting several users splits them by shard
+     *
+     * @throws Exception
+     */
+    @Test
+    public void countsSplitByShardTest() throws Exception {
+        Message message = TestUtils.getMockMessageForUser("");
+        messageCountDao.incrementCounts(message, Arrays.asList(shard0User, shard1User));
+        verify(shard0).incrementCounts(message, Collections.singletonList(shard0User));
+        verify(shard1).incrementCounts(message, Collections.singletonList(shard1User));
+
+        messageCountDao.recountMessages(Arrays.asList(shard1User, shard0User));
+        verify(shard0).recountMessages(Collections.singletonList(shard0User));
+        verify(shard1).recountMessages(Collections.singletonList(shard1User));
+    }
+
+    /**
+     * Tests that a message ID's counter is stopped on its shard with the shard's own ID
+     *
+     * @throws Exception
+     */
+    @Test
+    public void decrementCountTest() throws Exception {
+        messageCountDao.decrementCount(String.valueOf((1L << Constants.SHARD_MSG_ID_BITS) + 7));
+        verify(shard1).decrementCount("7");
+        verify(shard0, never()).decrementCount(anyString());
+
+        //IDs of unknown shards count nothing
+        messageCountDao.decrementCount(String.valueOf(5L << Constants.SHARD_MSG_ID_BITS));
+        verify(shard1, never()).decrementCount(String.valueOf(0));
+    }
+
+    /**
+     * Tests that expired counters are recounted on every shard
+     *
+     * @throws Exception
+     */
+    @Test
+    public void recountExpiredCountsTest() throws Exception {
+        when(shard0.recountExpiredCounts()).thenReturn(2);
+        when(shard1.recountExpiredCounts()).thenReturn(3);
+        assertEquals(5, messageCountDao.recountExpiredCounts());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shardCountMismatchTest() throws Exception {
+        messageCountDao.setShards(Collections.singletonList(shard0));
+        messageCountDao.getMessageCounts(shard0User);
+    }
+}
@@ -0,0 +1,129 @@
+package gov.nsf.inboxservice.dao.rowmapper;
+
+import gov.nsf.inboxservice.common.util.Constants;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Minimal forward-only ResultSet over inbx_msg rows for the MessageRowMapper tests
+ *
+ * Like a JDBC driver, every getString call returns a new String, and lookups by name go through findColumn
+ */
+class FakeMessageResultSet implements InvocationHandler {
+
+    static final String[] COLUMNS = {
+            Constants.MSG_ID_COLNAME,
+            Constants.MSG_LAN_ID_COLNAME,
+            Constants.MSG_SUMMARY_COLNAME,
+            Constants.MSG_CREATION_DATE_COLNAME,
+            Constants.MSG_PRIORITY_COLNAME,
+            Constants.MSG_TYPE_COLNAME,
+            Constants.MSG_ACTION_LINK_COLNAME,
+            Constants.MSG_ACTION_LABEL_COLNAME,
+            Constants.MSG_INTERNAL_COLNAME,
+            Constants.MSG_EXP_DATE_COLNAME,
+            Constants.LAST_UPDT_USER_COLNAME
+    };
+
+    private final Map<String, Integer> columnIndexes = new HashMap<String, Integer>();
+    private final Object[][] rows;
+    private int row = -1;
+    private int findColumnCalls;
+
+    /**
+     * @param rows
+     *      - values in COLUMNS order
+     */
+    FakeMessageResultSet(Object[]... rows) {
+        for( int i = 0; i < COLUMNS.length; i++ ){
+            columnIndexes.put(COLUMNS[i].toUpperCase(Locale.ROOT), i + 1);
+        }
+        this.rows = rows;
+    }
+
+    /**
+     * Returns a row in COLUMNS order with CHAR(8) padding on the lan ID and last update user
+     */
+    static Object[] row(int msgId, String lanId, String actionLabel, String lastUpdtUser) {
+        return new Object[]{
+                String.valueOf(msgId),
+                pad(lanId, 8),
+                "Summary of message " + msgId,
+                "2017-01-01 23:30:32.123",
+                "1",
+                "I",
+                "https://www.research.gov/inbox/" + msgId,
+                actionLabel,
+                Boolean.FALSE,
+                "2099-01-01 00:00:00.0",
+                pad(lastUpdtUser, 8)
+        };
+    }
+
+    private static String pad(String value, int length) {
+        StringBuilder padded = new StringBuilder(value);
+        while( padded.length() < length ){
+            padded.append(' ');
+        }
+        return padded.toString();
+    }
+
+    ResultSet proxy() {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class}, this);
+    }
+
+    /**
+     * Moves back before the first row, so the same data can be mapped again
+     */
+    void rewind() {
+        row = -1;
+    }
+
+    int getFindColumnCalls() {
+        return findColumnCalls;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if( "next".equals(name) ){
+            return ++row < rows.length;
+        } else if( "getRow".equals(name) ){
+            return row + 1;
+        } else if( "findColumn".equals(name) ){
+            return findColumn((String) args[0]);
+        } else if( "getString".equals(name) ){
+            Object value = rows[row][columnIndex(args[0]) - 1];
+            return value != null ? new String(value.toString()) : null;
+        } else if( "getBoolean".equals(name) ){
+            return Boolean.TRUE.equals(rows[row][columnIndex(args[0]) - 1]);
+        } else if( "close".equals(name) ){
+            return null;
+        } else if( "equals".equals(name) ){
+            return proxy == args[0];
+        } else if( "hashCode".equals(name) ){
+            return System.identityHashCode(proxy);
+        }
+        throw new UnsupportedOperationException(name);
+    }
+
+    private int columnIndex(Object column) throws SQLException {
+        return column instanceof Integer ? (Integer) column : findColumn((String) column);
+    }
+
+    private int findColumn(String column) throws SQLException {
+        findColumnCalls++;
+        Integer index = columnIndexes.get(column.toUpperCase(Locale.ROOT));
+        if( index == null ){
+            throw new SQLException("Column not found: " + column);
+        }
+        return index;
+    }
+}
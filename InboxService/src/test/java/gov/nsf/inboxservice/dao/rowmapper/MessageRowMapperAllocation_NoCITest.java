@@ -0,0 +1,101 @@
+package gov.nsf.inboxservice.dao.rowmapper;
+
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessagePriority;
+import gov.nsf.inboxservice.api.model.MessageType;
+import gov.nsf.inboxservice.common.util.Constants;
+import org.apache.log4j.Logger;
+import org.junit.Test;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.lang.management.ManagementFactory;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the bytes MessageRowMapper allocates per row, against the by-name mapping it replaced
+ *
+ * Excluded from CI builds (see the surefire excludes); run it with the benchmarks profile:
+ * mvn -P service-build,benchmarks test, or on its own with -Dtest=MessageRowMapperAllocation_NoCITest
+ */
+public class MessageRowMapperAllocation_NoCITest {
+
+    private static final Logger LOGGER = Logger.getLogger(MessageRowMapperAllocation_NoCITest.class);
+
+    private static final int ROWS = 1000;
+    private static final int WARMUP_ITERATIONS = 200;
+    private static final int MEASURED_ITERATIONS = 500;
+
+    /**
+     * Logs the allocation per row of both mappers and checks that the current one allocates less
+     */
+    @Test
+    public void allocationPerRowTest() throws SQLException {
+        Object[][] rows = new Object[ROWS][];
+        for( int i = 0; i < ROWS; i++ ){
+            rows[i] = FakeMessageResultSet.row(i, "user" + (i % 4), "View", "admin");
+        }
+        FakeMessageResultSet fake = new FakeMessageResultSet(rows);
+        ResultSet resultSet = fake.proxy();
+
+        long byName = bytesPerRow(fake, resultSet, new ByNameMessageRowMapper());
+        long byIndex = bytesPerRow(fake, resultSet, null);
+        LOGGER.info("MessageRowMapper bytes allocated per row: by name=" + byName + ", by index=" + byIndex);
+
+        assertTrue("by index=" + byIndex + ", by name=" + byName, byIndex < byName);
+    }
+
+    /**
+     * Maps all rows of the ResultSet repeatedly and returns the average bytes allocated per row
+     *
+     * @param rowMapper
+     *      - the mapper to measure, or null for a new MessageRowMapper per pass as InboxDaoImpl does per query
+     */
+    private static long bytesPerRow(FakeMessageResultSet fake, ResultSet resultSet, RowMapper<Message> rowMapper) throws SQLException {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long start = 0;
+        for( int iteration = 0; iteration < WARMUP_ITERATIONS + MEASURED_ITERATIONS; iteration++ ){
+            if( iteration == WARMUP_ITERATIONS ){
+                start = threadBean.getThreadAllocatedBytes(threadId);
+            }
+            RowMapper<Message> mapper = rowMapper != null ? rowMapper : new MessageRowMapper();
+            fake.rewind();
+            while( resultSet.next() ){
+                mapper.mapRow(resultSet, resultSet.getRow());
+            }
+        }
+        return (threadBean.getThreadAllocatedBytes(threadId) - start) / ((long) ROWS * MEASURED_ITERATIONS);
+    }
+
+    /**
+     * The previous MessageRowMapper: every column looked up by name and every value trimmed into its own String
+     */
+    private static class ByNameMessageRowMapper implements RowMapper<Message> {
+
+        @Override
+        public Message mapRow(ResultSet resultSet, int i) throws SQLException {
+            Message message = new Message();
+            message.setId(getStringFromColumn(resultSet, Constants.MSG_ID_COLNAME));
+            message.setLanId(getStringFromColumn(resultSet, Constants.MSG_LAN_ID_COLNAME));
+            message.setSummary(getStringFromColumn(resultSet, Constants.MSG_SUMMARY_COLNAME));
+            message.setCreationDate(getStringFromColumn(resultSet, Constants.MSG_CREATION_DATE_COLNAME));
+            message.setPriority(MessagePriority.getPriorityFromCode(resultSet.getString(Constants.MSG_PRIORITY_COLNAME)));
+            message.setType(MessageType.getTypeFromCode(resultSet.getString(Constants.MSG_TYPE_COLNAME)));
+            message.setActionLink(getStringFromColumn(resultSet, Constants.MSG_ACTION_LINK_COLNAME));
+            message.setActionLabel(getStringFromColumn(resultSet, Constants.MSG_ACTION_LABEL_COLNAME));
+            message.setInternal(resultSet.getBoolean(Constants.MSG_INTERNAL_COLNAME));
+            message.setExpirationDate(getStringFromColumn(resultSet, Constants.MSG_EXP_DATE_COLNAME));
+            message.setLastUpdtUser(getStringFromColumn(resultSet, Constants.LAST_UPDT_USER_COLNAME));
+            return message;
+        }
+
+        private static String getStringFromColumn(ResultSet resultSet, String columnName) throws SQLException {
+            String value = resultSet.getString(columnName);
+            return value != null ? value.trim() : "";
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package gov.nsf.inboxservice.dao.rowmapper;
+
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessagePriority;
+import gov.nsf.inboxservice.api.model.MessageType;
+import org.junit.Test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * JUnit tests for MessageRowMapper
+ */
+public class MessageRowMapperTest {
+
+    /**
+     * Tests that every column is mapped and padded values are trimmed
+     */
+    @Test
+    public void mapRowTest() throws SQLException {
+        FakeMessageResultSet fake = new FakeMessageResultSet(FakeMessageResultSet.row(7, "test", "View", "admin"));
+        ResultSet resultSet = fake.proxy();
+        resultSet.next();
+
+        Message message = new MessageRowMapper().mapRow(resultSet, 1);
+        assertEquals("7", message.getId());
+        assertEquals("test", message.getLanId());
+        assertEquals("Summary of message 7", message.getSummary());
+        assertEquals("2017-01-01 23:30:32.123", message.getCreationDate());
+        assertEquals(MessagePriority.High, message.getPriority());
+        assertEquals(MessageType.Information, message.getType());
+        assertEquals("https://www.research.gov/inbox/7", message.getActionLink());
+        assertEquals("View", message.getActionLabel());
+        assertFalse(message.isInternal());
+        assertEquals("2099-01-01 00:00:00.0", message.getExpirationDate());
+        assertEquals("admin", message.getLastUpdtUser());
+    }
+
+    /**
+     * Tests that null columns map to empty strings
+     */
+    @Test
+    public void mapRowNullColumnsTest() throws SQLException {
+        Object[] row = FakeMessageResultSet.row(7, "test", null, "admin");
+        row[6] = null;
+        ResultSet resultSet = new FakeMessageResultSet(row).proxy();
+        resultSet.next();
+
+        Message message = new MessageRowMapper().mapRow(resultSet, 1);
+        assertEquals("", message.getActionLink());
+        assertEquals("", message.getActionLabel());
+    }
+
+    /**
+     * Tests that column indexes are looked up once per ResultSet, not once per row
+     */
+    @Test
+    public void columnIndexesResolvedOncePerResultSetTest() throws SQLException {
+        FakeMessageResultSet fake = new FakeMessageResultSet(
+                FakeMessageResultSet.row(1, "test", "View", "admin"),
+                FakeMessageResultSet.row(2, "test", "View", "admin"),
+                FakeMessageResultSet.row(3, "test", "View", "admin"));
+
+        List<Message> messages = new MessageResultSetExtractor().extractData(fake.proxy());
+        assertEquals(3, messages.size());
+        assertEquals(FakeMessageResultSet.COLUMNS.length, fake.getFindColumnCalls());
+
+        //A new ResultSet is indexed again
+        MessageRowMapper rowMapper = new MessageRowMapper();
+        ResultSet first = new FakeMessageResultSet(FakeMessageResultSet.row(1, "test", "View", "admin")).proxy();
+        first.next();
+        rowMapper.mapRow(first, 1);
+        FakeMessageResultSet secondFake = new FakeMessageResultSet(FakeMessageResultSet.row(2, "test", "View", "admin"));
+        ResultSet second = secondFake.proxy();
+        second.next();
+        assertEquals("2", rowMapper.mapRow(second, 1).getId());
+        assertEquals(FakeMessageResultSet.COLUMNS.length, secondFake.getFindColumnCalls());
+    }
+
+    /**
+     * Tests that the header-only mapper neither reads nor looks up the summary column
+     */
+    @Test
+    public void mapRowWithoutSummaryTest() throws SQLException {
+        FakeMessageResultSet fake = new FakeMessageResultSet(FakeMessageResultSet.row(7, "test", "View", "admin"));
+        ResultSet resultSet = fake.proxy();
+        resultSet.next();
+
+        Message message = new MessageRowMapper(false).mapRow(resultSet, 1);
+        assertNull(message.getSummary());
+        assertEquals(FakeMessageResultSet.COLUMNS.length - 1, fake.getFindColumnCalls());
+    }
+
+    /**
+     * Tests that repeated low-cardinality values share one String instance across rows
+     */
+    @Test
+    public void repeatedValuesSharedTest() throws SQLException {
+        FakeMessageResultSet fake = new FakeMessageResultSet(
+                FakeMessageResultSet.row(1, "test", "View", "admin"),
+                FakeMessageResultSet.row(2, "test", "View", "admin"),
+                FakeMessageResultSet.row(3, "other", "Open", "admin"));
+
+        List<Message> messages = new MessageResultSetExtractor().extractData(fake.proxy());
+        assertSame(messages.get(0).getLanId(), messages.get(1).getLanId());
+        assertSame(messages.get(0).getActionLabel(), messages.get(1).getActionLabel());
+        assertSame(messages.get(0).getLastUpdtUser(), messages.get(2).getLastUpdtUser());
+        assertEquals("other", messages.get(2).getLanId());
+        assertEquals("Open", messages.get(2).getActionLabel());
+    }
+}
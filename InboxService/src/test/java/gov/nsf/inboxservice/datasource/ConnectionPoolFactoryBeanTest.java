@@ -0,0 +1,97 @@
+package gov.nsf.inboxservice.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * JUnit tests for ConnectionPoolFactoryBean
+ */
+public class ConnectionPoolFactoryBeanTest {
+
+    /**
+     * Tests that the container DataSource is used as is while the pool is disabled
+     */
+    @Test
+    public void disabledReturnsContainerDataSourceTest() {
+        DataSource containerDataSource = mock(DataSource.class);
+        ConnectionPoolFactoryBean factoryBean = new ConnectionPoolFactoryBean();
+        factoryBean.setContainerDataSource(containerDataSource);
+        factoryBean.afterPropertiesSet();
+
+        assertSame(containerDataSource, factoryBean.getObject());
+        factoryBean.destroy();
+    }
+
+    /**
+     * Tests that the enabled pool hands out working connections and reports them to the metrics
+     *
+     * @throws Exception
+     */
+    @Test
+    public void enabledPoolReportsMetricsTest() throws Exception {
+        ConnectionPoolMetrics metrics = new ConnectionPoolMetrics();
+        ConnectionPoolFactoryBean factoryBean = new ConnectionPoolFactoryBean();
+        factoryBean.setEnabled(true);
+        factoryBean.setJdbcUrl("jdbc:h2:mem:poolTest;DB_CLOSE_DELAY=-1");
+        factoryBean.setUsername("sa");
+        factoryBean.setPassword("");
+        factoryBean.setMaximumPoolSize(2);
+        factoryBean.setMinimumIdle(1);
+        factoryBean.setPoolMetrics(metrics);
+        factoryBean.afterPropertiesSet();
+
+        try {
+            DataSource dataSource = factoryBean.getObject();
+            assertTrue(dataSource instanceof HikariDataSource);
+            try( Connection connection = dataSource.getConnection();
+                 ResultSet resultSet = connection.createStatement().executeQuery("select 1") ){
+                assertTrue(resultSet.next());
+            }
+
+            assertTrue(metrics.isPoolStarted());
+            assertEquals(1, metrics.getAcquireCount());
+            assertEquals(2, metrics.getMaxConnections());
+        } finally {
+            factoryBean.destroy();
+        }
+        assertTrue(((HikariDataSource) factoryBean.getObject()).isClosed());
+    }
+
+    /**
+     * Tests that the pool needs a JDBC URL and the disabled pool a container DataSource
+     */
+    @Test
+    public void missingSettingsTest() {
+        ConnectionPoolFactoryBean factoryBean = new ConnectionPoolFactoryBean();
+        try {
+            factoryBean.afterPropertiesSet();
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            //expected
+        }
+
+        factoryBean.setEnabled(true);
+        factoryBean.setJdbcUrl(" ");
+        try {
+            factoryBean.afterPropertiesSet();
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            //expected
+        }
+    }
+
+    /**
+     * Tests that timeouts below the pool's minimum are rejected
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void connectionTimeoutTooShortTest() {
+        new ConnectionPoolFactoryBean().setConnectionTimeoutMillis(100);
+    }
+}
@@ -0,0 +1,71 @@
+package gov.nsf.inboxservice.datasource;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for ConnectionPoolMetrics
+ */
+public class ConnectionPoolMetricsTest {
+
+    /**
+     * Tests that gauges are zero until the pool starts and then come from its PoolStats
+     */
+    @Test
+    public void poolStatsTest() {
+        ConnectionPoolMetrics metrics = new ConnectionPoolMetrics();
+        assertFalse(metrics.isPoolStarted());
+        assertEquals(0, metrics.getActiveConnections());
+
+        metrics.create("test", new PoolStats(0) {
+            @Override
+            protected void update() {
+                totalConnections = 10;
+                idleConnections = 3;
+                activeConnections = 7;
+                pendingThreads = 4;
+                maxConnections = 10;
+            }
+        });
+
+        assertTrue(metrics.isPoolStarted());
+        assertEquals(7, metrics.getActiveConnections());
+        assertEquals(3, metrics.getIdleConnections());
+        assertEquals(4, metrics.getPendingThreads());
+        assertEquals(10, metrics.getTotalConnections());
+        assertEquals(10, metrics.getMaxConnections());
+    }
+
+    /**
+     * Tests that acquires, usage and timeouts reported by the pool are counted
+     */
+    @Test
+    public void trackerTest() {
+        ConnectionPoolMetrics metrics = new ConnectionPoolMetrics();
+        IMetricsTracker tracker = metrics.create("test", new PoolStats(0) {
+            @Override
+            protected void update() {
+            }
+        });
+
+        tracker.recordConnectionAcquiredNanos(TimeUnit.MILLISECONDS.toNanos(3));
+        tracker.recordConnectionAcquiredNanos(TimeUnit.MILLISECONDS.toNanos(3));
+        tracker.recordConnectionUsageMillis(40);
+        tracker.recordConnectionCreatedMillis(20);
+        tracker.recordConnectionTimeout();
+
+        assertEquals(2, metrics.getAcquireCount());
+        assertEquals(1, metrics.getAcquireTimeouts());
+        assertEquals(5, metrics.getAcquireP99Millis());
+        assertEquals(3.0, metrics.getAcquireMeanMillis(), 0.001);
+        assertEquals(50, metrics.getUsageP99Millis());
+        assertEquals(2, metrics.getAcquireHistogram()[2]);
+        assertEquals(1, metrics.getCreationHistogram()[4]);
+        assertEquals(metrics.getHistogramBoundsMillis().length + 1, metrics.getUsageHistogram().length);
+    }
+}
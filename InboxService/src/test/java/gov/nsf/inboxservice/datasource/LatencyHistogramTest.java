@@ -0,0 +1,55 @@
+package gov.nsf.inboxservice.datasource;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for LatencyHistogram
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * Tests that samples land in the bucket of their upper bound, and larger ones in the last bucket
+     */
+    @Test
+    public void bucketsTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(TimeUnit.MICROSECONDS.toNanos(500));
+        histogram.recordMillis(1);
+        histogram.recordMillis(3);
+        histogram.recordMillis(60000);
+        histogram.recordNanos(-5);
+
+        long[] counts = histogram.getCounts();
+        assertEquals(histogram.getBoundsMillis().length + 1, counts.length);
+        assertEquals(3, counts[0]);
+        assertEquals(1, counts[2]);
+        assertEquals(1, counts[counts.length - 1]);
+        assertEquals(5, histogram.getCount());
+        assertEquals(60000.0, histogram.getMaxMillis(), 0.001);
+    }
+
+    /**
+     * Tests the mean and the bucket percentiles
+     */
+    @Test
+    public void percentileTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileMillis(99));
+        assertEquals(0.0, histogram.getMeanMillis(), 0.001);
+
+        for( int i = 0; i < 98; i++ ){
+            histogram.recordMillis(2);
+        }
+        histogram.recordMillis(200);
+        histogram.recordMillis(40000);
+
+        assertEquals(2, histogram.getPercentileMillis(50));
+        assertEquals(250, histogram.getPercentileMillis(99));
+        assertEquals(-1, histogram.getPercentileMillis(100));
+        assertEquals((98 * 2 + 200 + 40000) / 100.0, histogram.getMeanMillis(), 0.001);
+    }
+}
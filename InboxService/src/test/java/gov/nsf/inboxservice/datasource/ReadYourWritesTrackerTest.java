@@ -0,0 +1,134 @@
+package gov.nsf.inboxservice.datasource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for ReadYourWritesTracker
+ */
+public class ReadYourWritesTrackerTest {
+
+    private ReadYourWritesTracker tracker;
+
+    @Before
+    public void setUp() {
+        tracker = new ReadYourWritesTracker();
+    }
+
+    @After
+    public void tearDown() {
+        TransactionTestUtils.endTransaction();
+    }
+
+    /**
+     * Tests that users are tracked ignoring case and padding until the window passes
+     *
+     * @throws Exception
+     */
+    @Test
+    public void userWriteWindowTest() throws Exception {
+        tracker.setWindowMillis(50);
+        tracker.recordUserWrites(Collections.singleton("Test "));
+
+        assertTrue(tracker.isUserWriteRecent("test"));
+        assertFalse(tracker.isUserWriteRecent("other"));
+        assertFalse(tracker.isMessageWriteRecent("test"));
+
+        Thread.sleep(60);
+        assertFalse(tracker.isUserWriteRecent("test"));
+        assertEquals(0, tracker.getSize());
+    }
+
+    /**
+     * Tests that messages are tracked by ID
+     */
+    @Test
+    public void messageWriteTest() {
+        tracker.recordMessageWrites(Arrays.asList("1", " 2"));
+
+        assertTrue(tracker.isMessageWriteRecent("1"));
+        assertTrue(tracker.isMessageWriteRecent("2"));
+        assertFalse(tracker.isMessageWriteRecent("3"));
+        assertFalse(tracker.isUserWriteRecent("1"));
+    }
+
+    /**
+     * Tests that the window starts again when the writing transaction commits
+     *
+     * @throws Exception
+     */
+    @Test
+    public void windowRestartsAfterCommitTest() throws Exception {
+        tracker.setWindowMillis(50);
+        TransactionTestUtils.beginTransaction(false);
+        tracker.recordUserWrites(Collections.singleton("test"));
+
+        Thread.sleep(60);
+        assertFalse(tracker.isUserWriteRecent("test"));
+
+        for( TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations() ){
+            synchronization.afterCommit();
+        }
+        assertTrue(tracker.isUserWriteRecent("test"));
+    }
+
+    /**
+     * Tests that a disabled tracker neither records nor reports writes
+     */
+    @Test
+    public void disabledTest() {
+        tracker.setEnabled(false);
+        tracker.recordUserWrites(Collections.singleton("test"));
+        assertEquals(0, tracker.getSize());
+
+        tracker.setEnabled(true);
+        tracker.recordUserWrites(Collections.singleton("test"));
+        tracker.setEnabled(false);
+        assertFalse(tracker.isUserWriteRecent("test"));
+    }
+
+    /**
+     * Tests that expired entries are purged once maxEntries is passed
+     *
+     * @throws Exception
+     */
+    @Test
+    public void purgeExpiredTest() throws Exception {
+        tracker.setMaxEntries(2);
+        tracker.setWindowMillis(20);
+        tracker.recordUserWrites(Arrays.asList("a", "b"));
+        Thread.sleep(30);
+
+        tracker.setWindowMillis(5000);
+        tracker.recordUserWrites(Collections.singleton("c"));
+        assertEquals(1, tracker.getSize());
+        assertTrue(tracker.isUserWriteRecent("c"));
+    }
+
+    /**
+     * Tests that invalid settings are rejected
+     */
+    @Test
+    public void invalidSettingsTest() {
+        try {
+            tracker.setWindowMillis(-1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            //expected
+        }
+        try {
+            tracker.setMaxEntries(0);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            //expected
+        }
+    }
+}
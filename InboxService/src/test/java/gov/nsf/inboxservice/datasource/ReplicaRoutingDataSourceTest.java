@@ -0,0 +1,155 @@
+package gov.nsf.inboxservice.datasource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * JUnit tests for ReplicaRoutingDataSource
+ */
+public class ReplicaRoutingDataSourceTest {
+
+    private DataSource primary;
+    private DataSource replica1;
+    private DataSource replica2;
+    private Connection primaryConnection;
+    private Connection replica1Connection;
+    private Connection replica2Connection;
+
+    private ReplicaRoutingDataSource routingDataSource;
+
+    @Before
+    public void setUp() throws Exception {
+        primary = mock(DataSource.class);
+        replica1 = mock(DataSource.class);
+        replica2 = mock(DataSource.class);
+        primaryConnection = mock(Connection.class);
+        replica1Connection = mock(Connection.class);
+        replica2Connection = mock(Connection.class);
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        when(replica1.getConnection()).thenReturn(replica1Connection);
+        when(replica2.getConnection()).thenReturn(replica2Connection);
+
+        routingDataSource = new ReplicaRoutingDataSource();
+        routingDataSource.setPrimaryDataSource(primary);
+        routingDataSource.setReplicaDataSources(Arrays.<Object>asList(replica1, replica2));
+        routingDataSource.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() {
+        TransactionTestUtils.endTransaction();
+        ReplicaRoutingDataSource.setPrimaryRequired(false);
+    }
+
+    /**
+     * Tests that connections outside a transaction go to the primary
+     *
+     * @throws Exception
+     */
+    @Test
+    public void noTransactionUsesPrimaryTest() throws Exception {
+        assertSame(primaryConnection, routingDataSource.getConnection());
+        assertEquals(1, routingDataSource.getPrimaryConnections());
+    }
+
+    /**
+     * Tests that read-write transactions go to the primary
+     *
+     * @throws Exception
+     */
+    @Test
+    public void readWriteTransactionUsesPrimaryTest() throws Exception {
+        TransactionTestUtils.beginTransaction(false);
+        assertSame(primaryConnection, routingDataSource.getConnection());
+    }
+
+    /**
+     * Tests that read-only transactions take the replicas in turn
+     *
+     * @throws Exception
+     */
+    @Test
+    public void readOnlyTransactionUsesReplicasTest() throws Exception {
+        TransactionTestUtils.beginTransaction(true);
+        Connection first = routingDataSource.getConnection();
+        Connection second = routingDataSource.getConnection();
+        Connection third = routingDataSource.getConnection();
+
+        assertNotSame(first, second);
+        assertTrue(first == replica1Connection || first == replica2Connection);
+        assertTrue(second == replica1Connection || second == replica2Connection);
+        assertSame(first, third);
+        assertEquals(3, routingDataSource.getReplicaConnections());
+        assertEquals(0, routingDataSource.getPrimaryConnections());
+    }
+
+    /**
+     * Tests that setPrimaryRequired sends read-only transactions to the primary and restores the previous value
+     *
+     * @throws Exception
+     */
+    @Test
+    public void primaryRequiredTest() throws Exception {
+        TransactionTestUtils.beginTransaction(true);
+        boolean previous = ReplicaRoutingDataSource.setPrimaryRequired(true);
+        try {
+            assertFalse(previous);
+            assertSame(primaryConnection, routingDataSource.getConnection());
+        } finally {
+            ReplicaRoutingDataSource.setPrimaryRequired(previous);
+        }
+        assertFalse(ReplicaRoutingDataSource.isPrimaryRequired());
+        assertNotSame(primaryConnection, routingDataSource.getConnection());
+    }
+
+    /**
+     * Tests that without replicas, or when disabled, read-only transactions go to the primary
+     *
+     * @throws Exception
+     */
+    @Test
+    public void noReplicasOrDisabledUsesPrimaryTest() throws Exception {
+        TransactionTestUtils.beginTransaction(true);
+        routingDataSource.setEnabled(false);
+        assertSame(primaryConnection, routingDataSource.getConnection());
+
+        ReplicaRoutingDataSource noReplicas = new ReplicaRoutingDataSource();
+        noReplicas.setPrimaryDataSource(primary);
+        noReplicas.setReplicaDataSources(Collections.emptyList());
+        noReplicas.afterPropertiesSet();
+        assertEquals(0, noReplicas.getReplicaCount());
+        assertSame(primaryConnection, noReplicas.getConnection());
+    }
+
+    /**
+     * Tests that blank JNDI name lists configure no replicas
+     */
+    @Test
+    public void replicaJndiNamesTest() {
+        ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource();
+        dataSource.setReplicaJndiNames("");
+        assertTrue(dataSource.getReplicaDataSources().isEmpty());
+        dataSource.setReplicaJndiNames(null);
+        assertTrue(dataSource.getReplicaDataSources().isEmpty());
+        dataSource.setReplicaJndiNames(" jdbc/inbxSvc/Replica1, ,jdbc/inbxSvc/Replica2 ");
+        assertEquals(Arrays.<Object>asList("jdbc/inbxSvc/Replica1", "jdbc/inbxSvc/Replica2"), dataSource.getReplicaDataSources());
+    }
+
+    /**
+     * Tests that the primary is required
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void primaryMissingTest() {
+        new ReplicaRoutingDataSource().afterPropertiesSet();
+    }
+}
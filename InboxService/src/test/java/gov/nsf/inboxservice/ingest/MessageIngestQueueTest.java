@@ -0,0 +1,346 @@
+package gov.nsf.inboxservice.ingest;
+
+import gov.nsf.common.exception.ResourceNotFoundException;
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.inboxservice.api.model.CreateMessageRequest;
+import gov.nsf.inboxservice.common.util.Constants;
+import gov.nsf.inboxservice.common.util.TestUtils;
+import gov.nsf.inboxservice.service.InboxIngestService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for MessageIngestQueue
+ */
+public class MessageIngestQueueTest {
+
+    private static final long WAIT_MILLIS = 10000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private RecordingIngestService ingestService;
+    private MessageIngestQueue queue;
+
+    /**
+     * Records the lan IDs of every applied request and the keys of every attempted one, failing the requests for the
+     * configured lan IDs
+     */
+    private static class RecordingIngestService implements InboxIngestService {
+        private final List<String> applied = new CopyOnWriteArrayList<String>();
+        private final List<String> attemptedKeys = new CopyOnWriteArrayList<String>();
+        private final List<Integer> batchSizes = new CopyOnWriteArrayList<Integer>();
+        private volatile String failingLanId;
+        private volatile String missingLanId;
+        private volatile boolean unavailable;
+
+        @Override
+        public void createMessages(Map<String, CreateMessageRequest> requests) throws RollbackException {
+            attemptedKeys.addAll(requests.keySet());
+            if( unavailable ){
+                throw new RollbackException("DB unavailable");
+            }
+            for( CreateMessageRequest request : requests.values() ){
+                if( request.getLanIds().contains(failingLanId) ){
+                    throw new RollbackException("Bad request for " + failingLanId);
+                }
+                if( request.getLanIds().contains(missingLanId) ){
+                    throw new ResourceNotFoundException("No group for " + missingLanId);
+                }
+            }
+            for( CreateMessageRequest request : requests.values() ){
+                applied.add(request.getLanIds().get(0));
+            }
+            batchSizes.add(requests.size());
+        }
+    }
+
+    @Before
+    public void setup() {
+        ingestService = new RecordingIngestService();
+        queue = newQueue();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        queue.stop();
+    }
+
+    /**
+     * Tests that a disabled queue does not accept requests
+     *
+     * @throws Exception
+     */
+    @Test
+    public void disabledTest() throws Exception {
+        queue.setEnabled(false);
+        queue.start();
+
+        assertFalse(queue.isAccepting());
+        try {
+            queue.accept(request("user1"));
+            fail("Expected RollbackException");
+        } catch (RollbackException ex) {
+            assertEquals(Constants.ERROR_INGEST_NOT_ACCEPTING, ex.getErrMsg());
+        }
+    }
+
+    /**
+     * Tests that accepted requests are applied in order and checkpointed
+     *
+     * @throws Exception
+     */
+    @Test
+    public void acceptAndApplyTest() throws Exception {
+        queue.start();
+        assertTrue(queue.isAccepting());
+
+        assertEquals(1, queue.accept(request("user1")));
+        assertEquals(2, queue.accept(request("user2")));
+        waitForApplied(2);
+
+        assertEquals(2, queue.getAccepted());
+        assertEquals(0, queue.getPending());
+        assertEquals(Arrays.asList("user1", "user2"), ingestService.applied);
+    }
+
+    /**
+     * Tests that requests left unapplied at shutdown are replayed on the next start
+     *
+     * @throws Exception
+     */
+    @Test
+    public void replayAfterRestartTest() throws Exception {
+        ingestService.unavailable = true;
+        queue.setShutdownTimeoutMillis(100);
+        queue.start();
+        queue.accept(request("user1"));
+        queue.accept(request("user2"));
+        queue.stop();
+        assertTrue(ingestService.applied.isEmpty());
+
+        List<String> firstKeys = new ArrayList<String>(ingestService.attemptedKeys);
+        ingestService.attemptedKeys.clear();
+
+        ingestService.unavailable = false;
+        queue = newQueue();
+        queue.start();
+        assertEquals(2, queue.getReplayed());
+        waitForApplied(2);
+        assertEquals(Arrays.asList("user1", "user2"), ingestService.applied);
+        queue.stop();
+
+        //Replayed requests keep their idempotency keys, so a batch committed before a crash is not stored twice
+        assertEquals(2, ingestService.attemptedKeys.size());
+        assertEquals(firstKeys.get(0), ingestService.attemptedKeys.get(0));
+        assertTrue(ingestService.attemptedKeys.get(0).startsWith("ingest:"));
+
+        //Applied requests are checkpointed and not replayed again
+        queue = newQueue();
+        queue.start();
+        assertEquals(0, queue.getReplayed());
+    }
+
+    /**
+     * Tests that requests are rejected once maxPending requests are waiting
+     *
+     * @throws Exception
+     */
+    @Test
+    public void queueFullTest() throws Exception {
+        ingestService.unavailable = true;
+        queue.setShutdownTimeoutMillis(100);
+        queue.setMaxPending(1);
+        queue.start();
+        queue.accept(request("user1"));
+
+        try {
+            queue.accept(request("user2"));
+            fail("Expected RollbackException");
+        } catch (RollbackException ex) {
+            assertEquals(Constants.ERROR_INGEST_QUEUE_FULL, ex.getErrMsg());
+        }
+        assertEquals(1, queue.getRejected());
+    }
+
+    /**
+     * Tests that a bad request is retried on its own without holding back the rest of its batch,
+     * and can be moved to the dead letter file
+     *
+     * @throws Exception
+     */
+    @Test
+    public void failingRequestIsIsolatedTest() throws Exception {
+        ingestService.failingLanId = "bad";
+        queue.setBatchSize(10);
+        queue.start();
+        queue.accept(request("user1"));
+        queue.accept(request("bad"));
+        queue.accept(request("user2"));
+
+        waitFor(() -> queue.getFailingSeq() != 0);
+        assertEquals("user1", ingestService.applied.get(0));
+        assertTrue(queue.getFailedApplies() > 0);
+        assertNotNull(queue.getLastError());
+
+        queue.skipFailingRequest();
+        waitForApplied(2);
+        assertEquals(Arrays.asList("user1", "user2"), ingestService.applied);
+        assertEquals(1, queue.getDeadLettered());
+        assertEquals(0, queue.getFailingSeq());
+
+        Path deadLetters = folder.getRoot().toPath().resolve("rejected.jsonl");
+        List<String> lines = Files.readAllLines(deadLetters, StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains("bad"));
+    }
+
+    /**
+     * Tests that a request failing on a missing recipient group is dead lettered without being retried
+     *
+     * @throws Exception
+     */
+    @Test
+    public void poisonRequestIsDeadLetteredTest() throws Exception {
+        ingestService.missingLanId = "missing";
+        queue.start();
+        queue.accept(request("missing"));
+        queue.accept(request("user1"));
+
+        waitForApplied(1);
+        assertEquals(Collections.singletonList("user1"), ingestService.applied);
+        assertEquals(1, queue.getDeadLettered());
+        assertEquals(2, ingestService.attemptedKeys.stream().filter(key -> key.endsWith(":1")).count());
+    }
+
+    /**
+     * Tests that a request still failing after maxAttempts is dead lettered
+     *
+     * @throws Exception
+     */
+    @Test
+    public void maxAttemptsTest() throws Exception {
+        ingestService.failingLanId = "bad";
+        queue.setMaxAttempts(3);
+        queue.start();
+        queue.accept(request("bad"));
+        queue.accept(request("user1"));
+
+        waitForApplied(1);
+        assertEquals(1, queue.getDeadLettered());
+        //The batch, then three attempts on the bad request alone
+        assertEquals(4, queue.getFailedApplies());
+    }
+
+    /**
+     * Tests that a disabled queue still replays the journal left by an earlier run, without accepting requests
+     *
+     * @throws Exception
+     */
+    @Test
+    public void disabledReplaysJournalTest() throws Exception {
+        ingestService.unavailable = true;
+        queue.setShutdownTimeoutMillis(100);
+        queue.start();
+        queue.accept(request("user1"));
+        queue.stop();
+
+        ingestService.unavailable = false;
+        queue = newQueue();
+        queue.setEnabled(false);
+        queue.start();
+        assertFalse(queue.isAccepting());
+        assertEquals(1, queue.getReplayed());
+        waitForApplied(1);
+        assertEquals(Collections.singletonList("user1"), ingestService.applied);
+    }
+
+    /**
+     * Tests that journaled requests are applied together in batches
+     *
+     * @throws Exception
+     */
+    @Test
+    public void replayedRequestsAreBatchedTest() throws Exception {
+        ingestService.unavailable = true;
+        queue.setShutdownTimeoutMillis(100);
+        queue.start();
+        for( int i = 0; i < 5; i++ ){
+            queue.accept(request("user" + i));
+        }
+        queue.stop();
+
+        ingestService.unavailable = false;
+        queue = newQueue();
+        queue.setBatchSize(2);
+        queue.start();
+        waitForApplied(5);
+
+        assertEquals(Arrays.asList(2, 2, 1), ingestService.batchSizes);
+        assertEquals(3, queue.getBatches());
+    }
+
+    /**
+     * Tests that stop() applies the pending requests before returning
+     *
+     * @throws Exception
+     */
+    @Test
+    public void stopDrainsTest() throws Exception {
+        queue.start();
+        for( int i = 0; i < 20; i++ ){
+            queue.accept(request("user" + i));
+        }
+        queue.stop();
+
+        assertFalse(queue.isAccepting());
+        assertEquals(20, ingestService.applied.size());
+    }
+
+    private MessageIngestQueue newQueue() {
+        MessageIngestQueue ingestQueue = new MessageIngestQueue();
+        ingestQueue.setInboxIngestService(ingestService);
+        ingestQueue.setEnabled(true);
+        ingestQueue.setJournalDir(folder.getRoot().getAbsolutePath());
+        ingestQueue.setSegmentSizeBytes(64 * 1024);
+        ingestQueue.setRetryMillis(10);
+        return ingestQueue;
+    }
+
+    private static CreateMessageRequest request(String lanId) {
+        return new CreateMessageRequest(TestUtils.getMockMessageForUser(lanId), new ArrayList<String>(Collections.singletonList(lanId)));
+    }
+
+    private void waitForApplied(int count) throws InterruptedException {
+        waitFor(() -> ingestService.applied.size() >= count && queue.getPending() == 0);
+    }
+
+    private interface Condition {
+        boolean isMet();
+    }
+
+    private static void waitFor(Condition condition) throws InterruptedException {
+        long until = System.currentTimeMillis() + WAIT_MILLIS;
+        while( !condition.isMet() ){
+            if( System.currentTimeMillis() > until ){
+                fail("Timed out waiting for the queue");
+            }
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package gov.nsf.inboxservice.ingest;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for MessageJournal
+ */
+public class MessageJournalTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> replayed = new ArrayList<String>();
+
+    /**
+     * Tests that synced records are replayed in order after reopening
+     *
+     * @throws Exception
+     */
+    @Test
+    public void appendSyncReplayTest() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try( MessageJournal journal = open(directory) ){
+            assertEquals(1, journal.append(bytes("one")));
+            long seq = journal.append(bytes("two"));
+            assertEquals(2, seq);
+            journal.sync(seq);
+            assertEquals(2, journal.getDurableSeq());
+            assertEquals(1, journal.getSyncCount());
+        }
+
+        try( MessageJournal journal = open(directory) ){
+            assertEquals(2, replayed.size());
+            assertEquals("1:one", replayed.get(0));
+            assertEquals("2:two", replayed.get(1));
+            assertEquals(3, journal.append(bytes("three")));
+        }
+    }
+
+    /**
+     * Tests that a sync covering records appended earlier does not force again
+     *
+     * @throws Exception
+     */
+    @Test
+    public void syncGroupsRecordsTest() throws Exception {
+        try( MessageJournal journal = open(folder.getRoot().toPath()) ){
+            long first = journal.append(bytes("one"));
+            long second = journal.append(bytes("two"));
+            journal.sync(second);
+            journal.sync(first);
+
+            assertEquals(1, journal.getSyncCount());
+        }
+    }
+
+    /**
+     * Tests that checkpointed records are not replayed and their segments are deleted
+     *
+     * @throws Exception
+     */
+    @Test
+    public void checkpointTest() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try( MessageJournal journal = open(directory) ){
+            for( int i = 0; i < 100; i++ ){
+                journal.sync(journal.append(new byte[100]));
+            }
+            assertTrue(journal.getSegmentCount() > 1);
+
+            journal.checkpoint(90);
+            assertEquals(90, journal.getCheckpointSeq());
+            assertEquals(1, journal.getSegmentCount());
+            assertEquals(1, segmentFiles(directory).size());
+        }
+
+        try( MessageJournal journal = open(directory) ){
+            assertEquals(10, replayed.size());
+            assertTrue(replayed.get(0).startsWith("91:"));
+            assertEquals(101, journal.append(bytes("next")));
+        }
+    }
+
+    /**
+     * Tests that sequences continue after every segment was checkpointed and deleted
+     *
+     * @throws Exception
+     */
+    @Test
+    public void checkpointEverythingTest() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try( MessageJournal journal = open(directory) ){
+            journal.sync(journal.append(bytes("one")));
+            journal.checkpoint(1);
+        }
+
+        try( MessageJournal journal = open(directory) ){
+            assertTrue(replayed.isEmpty());
+            assertEquals(2, journal.append(bytes("two")));
+        }
+    }
+
+    /**
+     * Tests that replay stops at a record whose checksum does not match
+     *
+     * @throws Exception
+     */
+    @Test
+    public void tornRecordTest() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try( MessageJournal journal = open(directory) ){
+            journal.append(bytes("one"));
+            journal.sync(journal.append(bytes("two")));
+        }
+
+        //Corrupt the payload of the second record
+        Path segment = segmentFiles(directory).get(0);
+        try( RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw") ){
+            file.seek(2L * MessageJournal.RECORD_HEADER_BYTES + 3);
+            file.write('X');
+        }
+
+        try( MessageJournal journal = open(directory) ){
+            assertEquals(1, replayed.size());
+            assertEquals("1:one", replayed.get(0));
+            journal.sync(journal.append(bytes("again")));
+        }
+
+        replayed.clear();
+        try( MessageJournal journal = open(directory) ){
+            assertEquals(2, replayed.size());
+            assertEquals("2:again", replayed.get(1));
+        }
+    }
+
+    /**
+     * Tests that a record larger than a segment is rejected
+     *
+     * @throws Exception
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void recordTooLargeTest() throws Exception {
+        try( MessageJournal journal = open(folder.getRoot().toPath()) ){
+            journal.append(new byte[SEGMENT_SIZE]);
+        }
+    }
+
+    private MessageJournal open(Path directory) throws IOException {
+        return new MessageJournal(directory, SEGMENT_SIZE,
+                (seq, payload) -> replayed.add(seq + ":" + new String(payload, StandardCharsets.UTF_8)));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<Path> segmentFiles(Path directory) throws IOException {
+        try( Stream<Path> files = Files.list(directory) ){
+            return files.filter(path -> path.toString().endsWith(".seg")).sorted().collect(Collectors.toList());
+        }
+    }
+}
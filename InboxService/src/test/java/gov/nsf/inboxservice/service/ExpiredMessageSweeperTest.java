@@ -0,0 +1,244 @@
+package gov.nsf.inboxservice.service;
+
+import gov.nsf.common.exception.RollbackException;
+import gov.nsf.inboxservice.api.model.MessageType;
+import gov.nsf.inboxservice.common.util.Constants;
+import gov.nsf.inboxservice.dao.ArchiveDao;
+import gov.nsf.inboxservice.dao.IdempotencyDao;
+import gov.nsf.inboxservice.dao.InboxDao;
+import gov.nsf.inboxservice.dao.LeaseDao;
+import gov.nsf.inboxservice.dao.MessageCountDao;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * JUnit tests for ExpiredMessageSweeper
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ExpiredMessageSweeperTest {
+
+    @InjectMocks
+    private ExpiredMessageSweeper sweeper;
+
+    @Mock
+    private InboxDao inboxDao;
+
+    @Mock
+    private LeaseDao leaseDao;
+
+    @Mock
+    private ArchiveDao archiveDao;
+
+    @Mock
+    private MessageCountDao messageCountDao;
+
+    @Mock
+    private IdempotencyDao idempotencyDao;
+
+    @Before
+    public void setUp(){
+        sweeper.setChunkSize(10);
+        sweeper.setPauseMillis(0);
+    }
+
+    /**
+     * Tests that chunks are deleted until a partial chunk comes back and that the lease is renewed and released
+     *
+     * @throws Exception
+     */
+    @Test
+    public void sweepHappyPathTest() throws Exception {
+        when(leaseDao.acquireLease(eq(Constants.EXPIRED_MESSAGE_SWEEPER_LOCK), anyString(), anyInt())).thenReturn(true);
+        when(inboxDao.deleteExpiredMessagesChunk(10)).thenReturn(10, 10, 3);
+
+        sweeper.sweep();
+
+        verify(inboxDao, times(3)).deleteExpiredMessagesChunk(10);
+        verify(leaseDao, times(3)).acquireLease(eq(Constants.EXPIRED_MESSAGE_SWEEPER_LOCK), anyString(), anyInt());
+        verify(leaseDao).releaseLease(eq(Constants.EXPIRED_MESSAGE_SWEEPER_LOCK), anyString());
+        assertEquals(1, sweeper.getRuns());
+        assertEquals(23, sweeper.getLastRunRowsDeleted());
+        assertEquals(23, sweeper.getTotalRowsDeleted());
+        assertEquals(3, sweeper.getTotalChunks());
+        assertFalse(sweeper.isRunning());
+        verify(messageCountDao).recountExpiredCounts();
+    }
+
+    /**
+     * Tests that nothing is deleted while another node holds the lease
+     *
+     * @throws Exception
+     */
+    @Test
+    public void sweepLeaseHeldElsewhereTest() throws Exception {
+        when(leaseDao.acquireLease(eq(Constants.EXPIRED_MESSAGE_SWEEPER_LOCK), anyString(), anyInt())).thenReturn(false);
+
+        sweeper.sweep();
+
+        verify(inboxDao, never()).deleteExpiredMessagesChunk(anyInt());
+        verify(messageCountDao, never()).recountExpiredCounts();
+        verify(leaseDao, never()).releaseLease(anyString(), anyString());
+        assertEquals(0, sweeper.getRuns());
+        assertEquals(1, sweeper.getSkippedRuns());
+    }
+
+    /**
+     * Tests that the sweep stops after maxChunksPerRun chunks
+     *
+     * @throws Exception
+     */
+    @Test
+    public void sweepMaxChunksTest() throws Exception {
+        sweeper.setMaxChunksPerRun(2);
+        when(leaseDao.acquireLease(eq(Constants.EXPIRED_MESSAGE_SWEEPER_LOCK), anyString(), anyInt())).thenReturn(true);
+        when(inboxDao.deleteExpiredMessagesChunk(10)).thenReturn(10);
+
+        sweeper.sweep();
+
+        verify(inboxDao, times(2)).deleteExpiredMessagesChunk(10);
+        assertEquals(20, sweeper.getLastRunRowsDeleted());
+    }
+
+    /**
+     * Tests that the sweep stops when the lease cannot be renewed
+     *
+     * @throws Exception
+     */
+    @Test
+    public void sweepLeaseLostTest() throws Exception {
+        when(leaseDao.acquireLease(eq(Constants.EXPIRED_MESSAGE_SWEEPER_LOCK), anyString(), anyInt())).thenReturn(true, false);
+        when(inboxDao.deleteExpiredMessagesChunk(10)).thenReturn(10);
+
+        sweeper.sweep();
+
+        verify(inboxDao, times(1)).deleteExpiredMessagesChunk(10);
+        assertEquals(10, sweeper.getLastRunRowsDeleted());
+    }
+
+    /**
+     * Tests that a DB error ends the run, is counted and still releases the lease
+     *
+     * @throws Exception
+     */
+    @Test
+    public void sweepExceptionTest() throws Exception {
+        when(leaseDao.acquireLease(eq(Constants.EXPIRED_MESSAGE_SWEEPER_LOCK), anyString(), anyInt())).thenReturn(true);
+        when(inboxDao.deleteExpiredMessagesChunk(10)).thenThrow(new RollbackException("Some DAO exception occured"));
+
+        sweeper.sweep();
+
+        assertEquals(1, sweeper.getFailedRuns());
+        verify(leaseDao).releaseLease(eq(Constants.EXPIRED_MESSAGE_SWEEPER_LOCK), anyString());
+        verify(messageCountDao, never()).recountExpiredCounts();
+    }
+
+    /**
+     * Tests that archive mode moves expired then aged messages and applies retention instead of deleting
+     *
+     * @throws Exception
+     */
+    @Test
+    public void sweepArchiveModeTest() throws Exception {
+        sweeper.setArchive(true);
+        sweeper.setMaxAgeDays(Collections.singletonMap(MessageType.Task, 365));
+        Map<MessageType, Integer> retention = new HashMap<MessageType, Integer>();
+        retention.put(MessageType.Information, 12);
+        retention.put(MessageType.Task, 0);
+        sweeper.setRetentionMonths(retention);
+        when(leaseDao.acquireLease(eq(Constants.EXPIRED_MESSAGE_SWEEPER_LOCK), anyString(), anyInt())).thenReturn(true);
+        when(archiveDao.archiveExpiredMessagesChunk(10)).thenReturn(10, 4);
+        when(archiveDao.archiveAgedMessagesChunk(eq(MessageType.Task), any(Timestamp.class), eq(10))).thenReturn(2);
+        when(archiveDao.dropArchivePartitions(eq(MessageType.Information), anyInt())).thenReturn(1);
+
+        sweeper.sweep();
+
+        verify(inboxDao, never()).deleteExpiredMessagesChunk(anyInt());
+        verify(archiveDao, times(2)).archiveExpiredMessagesChunk(10);
+        verify(archiveDao, times(1)).archiveAgedMessagesChunk(eq(MessageType.Task), any(Timestamp.class), eq(10));
+        verify(archiveDao, never()).archiveAgedMessagesChunk(eq(MessageType.Information), any(Timestamp.class), anyInt());
+        YearMonth monthBefore = YearMonth.now().minusMonths(12);
+        verify(archiveDao).dropArchivePartitions(MessageType.Information, monthBefore.getYear() * 100 + monthBefore.getMonthValue());
+        verify(archiveDao, never()).dropArchivePartitions(eq(MessageType.Task), anyInt());
+        assertEquals(16, sweeper.getLastRunRowsDeleted());
+        assertEquals(1, sweeper.getTotalPartitionsDropped());
+        verify(messageCountDao).recountExpiredCounts();
+    }
+
+    /**
+     * Tests that a disabled sweeper does not touch the DB
+     *
+     * @throws Exception
+     */
+    @Test
+    public void sweepDisabledTest() throws Exception {
+        sweeper.setEnabled(false);
+
+        sweeper.sweep();
+
+        verify(leaseDao, never()).acquireLease(anyString(), anyString(), anyInt());
+        verify(inboxDao, never()).deleteExpiredMessagesChunk(anyInt());
+    }
+
+    /**
+     * Tests that each sweep deletes the idempotency keys older than the retention
+     *
+     * @throws Exception
+     */
+    @Test
+    public void sweepDeletesIdempotencyKeysTest() throws Exception {
+        when(leaseDao.acquireLease(eq(Constants.EXPIRED_MESSAGE_SWEEPER_LOCK), anyString(), anyInt())).thenReturn(true);
+        when(idempotencyDao.deleteKeys(any(Timestamp.class))).thenReturn(7);
+        sweeper.setIdempotencyKeyRetentionHours(2);
+
+        long before = System.currentTimeMillis();
+        sweeper.sweep();
+
+        ArgumentCaptor<Timestamp> storedBefore = ArgumentCaptor.forClass(Timestamp.class);
+        verify(idempotencyDao).deleteKeys(storedBefore.capture());
+        assertTrue(storedBefore.getValue().getTime() <= before - 2 * 3600000L + 1000);
+        assertTrue(storedBefore.getValue().getTime() >= before - 2 * 3600000L - 1000);
+        assertEquals(7, sweeper.getTotalIdempotencyKeysDeleted());
+    }
+
+    /**
+     * Tests that each sweep deletes orphaned content in chunks until a partial chunk comes back
+     *
+     * @throws Exception
+     */
+    @Test
+    public void sweepDeletesOrphanedContentTest() throws Exception {
+        when(leaseDao.acquireLease(eq(Constants.EXPIRED_MESSAGE_SWEEPER_LOCK), anyString(), anyInt())).thenReturn(true);
+        when(inboxDao.deleteOrphanedContentChunk(any(Timestamp.class), eq(10))).thenReturn(10, 4);
+
+        long before = System.currentTimeMillis();
+        sweeper.sweep();
+
+        ArgumentCaptor<Timestamp> storedBefore = ArgumentCaptor.forClass(Timestamp.class);
+        verify(inboxDao, times(2)).deleteOrphanedContentChunk(storedBefore.capture(), eq(10));
+        assertTrue(storedBefore.getValue().getTime() <= before - Constants.ORPHANED_CONTENT_MIN_AGE_MINUTES * 60000L + 1000);
+        assertEquals(14, sweeper.getTotalContentRowsDeleted());
+    }
+}
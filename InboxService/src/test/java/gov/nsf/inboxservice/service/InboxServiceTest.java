@@ -1,25 +1,73 @@
 package gov.nsf.inboxservice.service;
 
+import gov.nsf.common.exception.FormValidationException;
+import gov.nsf.common.exception.ResourceNotFoundException;
 import gov.nsf.common.exception.RollbackException;
 import gov.nsf.common.model.BaseResponseWrapper;
 import gov.nsf.common.model.ExpirationFilter;
+import gov.nsf.inboxservice.api.model.DeleteMessageResult;
+import gov.nsf.inboxservice.api.model.DeleteMessageStatus;
+import gov.nsf.inboxservice.api.model.DeleteMessagesResponseWrapper;
+import gov.nsf.inboxservice.api.model.CreateMessageRequest;
+import gov.nsf.inboxservice.api.model.DedupeMode;
 import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessageCount;
+import gov.nsf.inboxservice.api.model.MessageCountResponseWrapper;
+import gov.nsf.inboxservice.api.model.MessagePriority;
 import gov.nsf.inboxservice.api.model.MessageResponseWrapper;
+import gov.nsf.inboxservice.api.model.MessageType;
+import gov.nsf.inboxservice.api.model.RecipientGroup;
+import gov.nsf.inboxservice.api.model.RecipientGroupResponseWrapper;
+import gov.nsf.inboxservice.cache.IdempotencyCache;
+import gov.nsf.inboxservice.cache.InboxCache;
+import gov.nsf.inboxservice.cache.MessageCache;
 import gov.nsf.inboxservice.common.util.TestUtils;
+import gov.nsf.inboxservice.dao.BroadcastDao;
+import gov.nsf.inboxservice.dao.IdempotencyDao;
+import gov.nsf.inboxservice.dao.IdempotencyRecord;
 import gov.nsf.inboxservice.dao.InboxDaoImpl;
+import gov.nsf.inboxservice.dao.MessageCountDaoImpl;
+import gov.nsf.inboxservice.dao.MessageCursor;
+import gov.nsf.inboxservice.dao.MessageHandler;
+import gov.nsf.inboxservice.dao.MessageTemplateDao;
+import gov.nsf.inboxservice.dao.RecipientGroupDao;
+import gov.nsf.inboxservice.dao.UserDeleteResult;
+import gov.nsf.inboxservice.datasource.ReadYourWritesTracker;
+import gov.nsf.inboxservice.datasource.ReplicaRoutingDataSource;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
@@ -34,6 +82,27 @@ public class InboxServiceTest {
     @Mock
     private InboxDaoImpl inboxDao;
 
+    @Mock
+    private MessageCountDaoImpl messageCountDao;
+
+    @Mock
+    private InboxCache inboxCache;
+
+    @Mock
+    private IdempotencyDao idempotencyDao;
+
+    @Mock
+    private MessageTemplateDao messageTemplateDao;
+
+    @Mock
+    private RecipientGroupDao recipientGroupDao;
+
+    @Mock
+    private BroadcastDao broadcastDao;
+
+    @Spy
+    private IdempotencyCache idempotencyCache = new IdempotencyCache();
+
 
     /**
      * Tests the expected behavior of the happy path case
@@ -87,6 +156,90 @@ public class InboxServiceTest {
         inboxService.getMessages("test", ExpirationFilter.ACTIVE);
     }
 
+    /**
+     * Tests that a page is trimmed to the limit and carries a next cursor when more messages exist
+     *
+     * Mocks the DAO to return one message more than the limit
+     * @throws Exception
+     */
+    @Test
+    public void getMessagesPageWithMoreMessagesTest() throws Exception {
+        List<Message> mockedMessages = TestUtils.getMockMessagesForUser("test", 3);
+        when(inboxDao.getMessagesForUser("test", ExpirationFilter.ACTIVE, 3, null)).thenReturn(mockedMessages);
+        MessageResponseWrapper returnedWrapper = inboxService.getMessages("test", ExpirationFilter.ACTIVE, 2, null);
+        assertEquals(2, returnedWrapper.getMessages().size());
+        assertNotNull(returnedWrapper.getNextCursor());
+
+        MessageCursor nextCursor = MessageCursor.decode(returnedWrapper.getNextCursor());
+        assertEquals(Long.parseLong(mockedMessages.get(1).getId()), nextCursor.getMsgId());
+    }
+
+    /**
+     * Tests that the last page has no next cursor and that the passed cursor reaches the DAO
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getMessagesLastPageTest() throws Exception {
+        MessageCursor after = new MessageCursor(Timestamp.valueOf("2017-01-01 23:30:32.0"), 5);
+        List<Message> mockedMessages = TestUtils.getMockMessagesForUser("test", 1);
+        when(inboxDao.getMessagesForUser(eq("test"), eq(ExpirationFilter.ALL), eq(3), any(MessageCursor.class))).thenReturn(mockedMessages);
+        MessageResponseWrapper returnedWrapper = inboxService.getMessages("test", ExpirationFilter.ALL, 2, after.encode());
+        assertEquals(1, returnedWrapper.getMessages().size());
+        assertNull(returnedWrapper.getNextCursor());
+
+        ArgumentCaptor<MessageCursor> cursorCaptor = ArgumentCaptor.forClass(MessageCursor.class);
+        verify(inboxDao).getMessagesForUser(eq("test"), eq(ExpirationFilter.ALL), eq(3), cursorCaptor.capture());
+        assertEquals(after.getCreationDate(), cursorCaptor.getValue().getCreationDate());
+        assertEquals(after.getMsgId(), cursorCaptor.getValue().getMsgId());
+    }
+
+    /**
+     * Tests that a header page reads headers from the DAO and is trimmed like a full page
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getMessageHeadersPageTest() throws Exception {
+        List<Message> mockedMessages = TestUtils.getMockMessagesForUser("test", 3);
+        when(inboxDao.getMessageHeadersForUser("test", ExpirationFilter.ACTIVE, 3, null)).thenReturn(mockedMessages);
+        MessageResponseWrapper returnedWrapper = inboxService.getMessageHeaders("test", ExpirationFilter.ACTIVE, 2, null);
+        assertEquals(2, returnedWrapper.getMessages().size());
+        assertNotNull(returnedWrapper.getNextCursor());
+        verify(inboxDao, times(0)).getMessagesForUser(eq("test"), eq(ExpirationFilter.ACTIVE), any(Integer.class), any(MessageCursor.class));
+    }
+
+    /**
+     * Tests that every type and priority is returned, with zero counts for the ones without counters
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getMessageCountsTest() throws Exception {
+        when(messageCountDao.getMessageCounts("test")).thenReturn(Collections.singletonList(new MessageCount(MessageType.Task, MessagePriority.High, 2, 0)));
+
+        MessageCountResponseWrapper wrapper = inboxService.getMessageCounts("test");
+        assertEquals(4, wrapper.getCounts().size());
+        for( MessageCount count : wrapper.getCounts() ){
+            boolean stored = count.getType() == MessageType.Task && count.getPriority() == MessagePriority.High;
+            assertEquals(stored ? 2 : 0, count.getActive());
+            assertEquals(0, count.getInactive());
+            assertEquals(stored ? 2 : 0, count.getAll());
+        }
+        verify(inboxDao, never()).getMessagesForUser(anyString(), any(ExpirationFilter.class));
+    }
+
+    /**
+     * Tests the expected behavior when exceptions are thrown from the DAO
+     *
+     * @throws Exception
+     */
+    @Test(expected = RollbackException.class)
+    public void getMessageCountsExceptionTest() throws Exception {
+        when(messageCountDao.getMessageCounts(anyString())).thenThrow(new RollbackException("Some DAO exception occured"));
+        inboxService.getMessageCounts("test");
+    }
+
     /**
      * Tests the expected behavior of the happy path case
      *
@@ -99,11 +252,14 @@ public class InboxServiceTest {
         List<String> lanIds = new ArrayList<String>();
         lanIds.add("test");
         lanIds.add("test");
-        when(inboxDao.createMessage(any(Message.class))).thenReturn(TestUtils.getMockMessageForUser("test")).
-                                                         thenReturn(TestUtils.getMockMessageForUser("test"));
+        lanIds.add("test2");
+        when(inboxDao.createMessages(any(Message.class), anyCollection())).thenReturn(TestUtils.getMockMessages("test", "test2"));
         MessageResponseWrapper returnedMessageWrapper = inboxService.createMessage(message, lanIds);
         assertNotNull(returnedMessageWrapper);
-        verify(inboxDao, times(lanIds.size())).createMessage(any(Message.class));
+        assertEquals(2, returnedMessageWrapper.getMessages().size());
+        verify(inboxDao, times(1)).createMessages(message, new HashSet<String>(Arrays.asList("test", "test2")));
+        verify(inboxDao, never()).createMessage(any(Message.class));
+        verify(messageCountDao, times(1)).incrementCounts(message, new HashSet<String>(Arrays.asList("test", "test2")));
     }
 
     /**
@@ -118,11 +274,11 @@ public class InboxServiceTest {
         List<String> lanIds = new ArrayList<String>();
         lanIds.add("test");
         lanIds.add("test ");
-        when(inboxDao.createMessage(any(Message.class))).thenReturn(TestUtils.getMockMessageForUser("test")).
-                thenReturn(TestUtils.getMockMessageForUser("test"));
+        lanIds.add("TEST");
+        when(inboxDao.createMessages(any(Message.class), anyCollection())).thenReturn(TestUtils.getMockMessages("test"));
         MessageResponseWrapper returnedMessageWrapper = inboxService.createMessage(message, lanIds);
         assertNotNull(returnedMessageWrapper);
-        verify(inboxDao, times(1)).createMessage(any(Message.class));
+        verify(inboxDao, times(1)).createMessages(message, Collections.singleton("test"));
     }
 
     /**
@@ -137,7 +293,7 @@ public class InboxServiceTest {
         List<String> lanIds = new ArrayList<String>();
         lanIds.add("test");
         lanIds.add("test");
-        when(inboxDao.createMessage(any(Message.class))).thenThrow(new RollbackException("Some DAO exception occured"));
+        when(inboxDao.createMessages(any(Message.class), anyCollection())).thenThrow(new RollbackException("Some DAO exception occured"));
         inboxService.createMessage(message, lanIds);
     }
 
@@ -154,6 +310,11 @@ public class InboxServiceTest {
         when(inboxDao.deleteMessage(mockedMessage.getId())).thenReturn(mockedMessage);
         MessageResponseWrapper returnedWrapper = inboxService.deleteMessage(mockedMessage.getId());
         assertNotNull(returnedWrapper);
+
+        //The counter is found through the message row, so it is updated first
+        InOrder inOrder = inOrder(messageCountDao, inboxDao);
+        inOrder.verify(messageCountDao).decrementCount(mockedMessage.getId());
+        inOrder.verify(inboxDao).deleteMessage(mockedMessage.getId());
     }
 
     /**
@@ -179,6 +340,7 @@ public class InboxServiceTest {
         doNothing().when(inboxDao).deleteExpiredMessages(lanId);
         BaseResponseWrapper wrapper = inboxService.deleteExpiredMessages(lanId);
         assertNotNull(wrapper);
+        verify(messageCountDao, times(1)).deleteExpiredCounts(lanId);
 
     }
 
@@ -193,4 +355,978 @@ public class InboxServiceTest {
         doThrow(new RollbackException("Some DAO exception occured")).when(inboxDao).deleteExpiredMessages(lanId);
         inboxService.deleteExpiredMessages(lanId);
     }
+
+    /**
+     * Tests that unpaged reads go through the cache when it is enabled
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getMessagesFromCacheTest() throws Exception {
+        List<Message> mockedMessages = TestUtils.getMockMessages("test");
+        when(inboxCache.isEnabled()).thenReturn(true);
+        when(inboxCache.getMessages(eq("test"), eq(ExpirationFilter.ACTIVE), any(InboxCache.Loader.class))).thenReturn(mockedMessages);
+
+        MessageResponseWrapper wrapper = inboxService.getMessages("test", ExpirationFilter.ACTIVE);
+
+        assertEquals(mockedMessages, wrapper.getMessages());
+        verify(inboxDao, never()).getMessagesForUser(anyString(), any(ExpirationFilter.class));
+    }
+
+    /**
+     * Tests that a paged read is served from the cache when the user's inbox is cached
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getMessagesPageFromCacheTest() throws Exception {
+        List<Message> mockedMessages = TestUtils.getMockMessages("test");
+        when(inboxCache.isEnabled()).thenReturn(true);
+        when(inboxCache.getMessagesPage("test", ExpirationFilter.ACTIVE, 4, null, true)).thenReturn(mockedMessages);
+
+        MessageResponseWrapper wrapper = inboxService.getMessages("test", ExpirationFilter.ACTIVE, 3, null);
+
+        assertEquals(mockedMessages.size(), wrapper.getMessages().size());
+        verify(inboxDao, never()).getMessagesForUser(anyString(), any(ExpirationFilter.class), any(Integer.class), any(MessageCursor.class));
+    }
+
+    /**
+     * Tests that a paged read falls back to the DAO when the user's inbox is not cached
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getMessageHeadersCacheMissTest() throws Exception {
+        List<Message> mockedMessages = TestUtils.getMockMessages("test");
+        when(inboxCache.isEnabled()).thenReturn(true);
+        when(inboxCache.getMessagesPage("test", ExpirationFilter.ACTIVE, 4, null, false)).thenReturn(null);
+        when(inboxDao.getMessageHeadersForUser("test", ExpirationFilter.ACTIVE, 4, null)).thenReturn(mockedMessages);
+
+        MessageResponseWrapper wrapper = inboxService.getMessageHeaders("test", ExpirationFilter.ACTIVE, 3, null);
+
+        assertEquals(mockedMessages.size(), wrapper.getMessages().size());
+        verify(inboxCache).getMessagesPage("test", ExpirationFilter.ACTIVE, 4, null, false);
+    }
+
+    /**
+     * Tests that writes invalidate the affected users' cached inboxes
+     *
+     * @throws Exception
+     */
+    @Test
+    public void writesInvalidateCacheTest() throws Exception {
+        when(inboxCache.isEnabled()).thenReturn(true);
+
+        Message message = TestUtils.getMockMessageForUser("");
+        when(inboxDao.createMessages(any(Message.class), anyCollection())).thenReturn(TestUtils.getMockMessages("test", "test2"));
+        inboxService.createMessage(message, Arrays.asList("test", "test2"));
+        verify(inboxCache).invalidate(new HashSet<String>(Arrays.asList("test", "test2")));
+
+        Message mockedMessage = TestUtils.getMockMessageForUser("test");
+        when(inboxDao.deleteMessage(mockedMessage.getId())).thenReturn(mockedMessage);
+        inboxService.deleteMessage(mockedMessage.getId());
+        verify(inboxCache).invalidate(Collections.singleton(mockedMessage.getLanId()));
+
+        inboxService.deleteExpiredMessages("test3");
+        verify(inboxCache).invalidate(Collections.singleton("test3"));
+    }
+
+    /**
+     * Tests that repeated message reads are served from the message cache and that deletes evict it
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getMessageFromMessageCacheTest() throws Exception {
+        inboxService.setMessageCache(new MessageCache());
+        Message mockedMessage = TestUtils.getMockMessageForUser("test");
+        mockedMessage.setId("1");
+        when(inboxDao.getMessageById("1")).thenReturn(mockedMessage);
+        when(inboxDao.deleteMessage("1")).thenReturn(mockedMessage);
+
+        inboxService.getMessage("1");
+        assertEquals(mockedMessage, inboxService.getMessage("1").getMessages().get(0));
+        verify(inboxDao, times(1)).getMessageById("1");
+
+        inboxService.deleteMessage("1");
+        inboxService.getMessage("1");
+        verify(inboxDao, times(2)).getMessageById("1");
+    }
+
+    /**
+     * Tests that the message and inbox cache loaders read from the primary, since the loaded rows stay cached
+     *
+     * @throws Exception
+     */
+    @Test
+    public void cacheLoadersReadPrimaryTest() throws Exception {
+        inboxService.setMessageCache(new MessageCache());
+        List<Boolean> primaryRequired = new ArrayList<Boolean>();
+        when(inboxDao.getMessageById("1")).thenAnswer(invocation -> {
+            primaryRequired.add(ReplicaRoutingDataSource.isPrimaryRequired());
+            return TestUtils.getMockMessageForUser("test");
+        });
+        when(inboxCache.isEnabled()).thenReturn(true);
+        when(inboxCache.getMessages(eq("test"), eq(ExpirationFilter.ALL), any(InboxCache.Loader.class))).thenAnswer(invocation ->
+                ((InboxCache.Loader) invocation.getArguments()[2]).load("test"));
+        when(inboxDao.getMessagesForUser("test", ExpirationFilter.ALL)).thenAnswer(invocation -> {
+            primaryRequired.add(ReplicaRoutingDataSource.isPrimaryRequired());
+            return Collections.emptyList();
+        });
+
+        inboxService.getMessage("1");
+        inboxService.getMessages("test", ExpirationFilter.ALL);
+        assertEquals(Arrays.asList(true, true), primaryRequired);
+        assertFalse(ReplicaRoutingDataSource.isPrimaryRequired());
+    }
+
+    /**
+     * Tests that a missing message ID is only looked up once while it is cached
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getMessageNotFoundCachedTest() throws Exception {
+        inboxService.setMessageCache(new MessageCache());
+        when(inboxDao.getMessageById("404")).thenThrow(new ResourceNotFoundException("Message ID does not exist: 404"));
+
+        for( int i = 0; i < 3; i++ ){
+            try {
+                inboxService.getMessage("404");
+                fail("Expected ResourceNotFoundException");
+            } catch (ResourceNotFoundException ex) {
+                //Expected
+            }
+        }
+        verify(inboxDao, times(1)).getMessageById("404");
+    }
+
+    /**
+     * Tests that the owner-scoped delete runs first and decrements the deleted message's counter without a probe
+     *
+     * @throws Exception
+     */
+    @Test
+    public void deleteMessageForUserHappyPathTest() throws Exception {
+        Message mockedMessage = TestUtils.getMockMessageForUser("test");
+        mockedMessage.setType(MessageType.Information);
+        when(inboxDao.deleteMessageForUser(mockedMessage.getId(), "test")).thenReturn(UserDeleteResult.deleted(mockedMessage));
+
+        MessageResponseWrapper wrapper = inboxService.deleteMessageForUser("test", mockedMessage.getId());
+
+        assertEquals(mockedMessage, wrapper.getMessages().get(0));
+        verify(inboxDao, never()).getMessageById(anyString());
+        verify(messageCountDao).decrementCount(mockedMessage);
+        verify(inboxDao, never()).deleteMessage(anyString());
+    }
+
+    /**
+     * Tests that a Task or another user's message deletes nothing and is denied without another lookup
+     *
+     * @throws Exception
+     */
+    @Test
+    public void deleteMessageForUserAccessDeniedTest() throws Exception {
+        Message task = TestUtils.getMockMessageForUser("test");
+        task.setType(MessageType.Task);
+        when(inboxDao.deleteMessageForUser(eq(task.getId()), anyString())).thenReturn(UserDeleteResult.forbidden());
+
+        for( String lanId : Arrays.asList("test", "test2") ){
+            try {
+                inboxService.deleteMessageForUser(lanId, task.getId());
+                fail("Expected AccessDeniedException");
+            } catch (AccessDeniedException ex) {
+                //Expected
+            }
+        }
+        verify(inboxDao, never()).getMessageById(anyString());
+        verify(messageCountDao, never()).decrementCount(any(Message.class));
+        verify(messageCountDao, never()).decrementCount(anyString());
+    }
+
+    /**
+     * Tests that a missing message, or one deleted concurrently, maps to not found
+     *
+     * @throws Exception
+     */
+    @Test
+    public void deleteMessageForUserNotFoundTest() throws Exception {
+        when(inboxDao.deleteMessageForUser("404", "test")).thenReturn(UserDeleteResult.notFound());
+
+        try {
+            inboxService.deleteMessageForUser("test", "404");
+            fail("Expected ResourceNotFoundException");
+        } catch (ResourceNotFoundException ex) {
+            //Expected
+        }
+        verify(inboxDao, never()).getMessageById(anyString());
+        verify(messageCountDao, never()).decrementCount(any(Message.class));
+    }
+
+    /**
+     * Tests that bulk deletes report per ID outcomes and recount the owners once
+     *
+     * @throws Exception
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void deleteMessagesHappyPathTest() throws Exception {
+        Message first = TestUtils.getMockMessageForUser("test");
+        first.setId("1");
+        Message second = TestUtils.getMockMessageForUser("test2");
+        second.setId("2");
+        when(inboxDao.getMessagesByIds(anyCollection())).thenReturn(Arrays.asList(first, second));
+
+        DeleteMessagesResponseWrapper wrapper = inboxService.deleteMessages(Arrays.asList("1", "2", "3", "abc", "1"));
+
+        List<DeleteMessageStatus> statuses = new ArrayList<DeleteMessageStatus>();
+        for( DeleteMessageResult result : wrapper.getResults() ){
+            statuses.add(result.getStatus());
+        }
+        assertEquals(Arrays.asList(DeleteMessageStatus.Deleted, DeleteMessageStatus.Deleted, DeleteMessageStatus.NotFound,
+                DeleteMessageStatus.Invalid, DeleteMessageStatus.Deleted), statuses);
+        verify(inboxDao).getMessagesByIds(new LinkedHashSet<Long>(Arrays.asList(1L, 2L, 3L)));
+        verify(inboxDao).deleteMessages(new HashSet<Long>(Arrays.asList(1L, 2L)));
+        verify(messageCountDao).recountMessages(new HashSet<String>(Arrays.asList("test", "test2")));
+        verify(inboxDao, never()).deleteMessage(anyString());
+    }
+
+    /**
+     * Tests that nothing is deleted when none of the IDs exist
+     *
+     * @throws Exception
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void deleteMessagesNoneFoundTest() throws Exception {
+        when(inboxDao.getMessagesByIds(anyCollection())).thenReturn(Collections.<Message>emptyList());
+
+        DeleteMessagesResponseWrapper wrapper = inboxService.deleteMessages(Arrays.asList("10", "x"));
+
+        assertEquals(DeleteMessageStatus.NotFound, wrapper.getResults().get(0).getStatus());
+        assertEquals(DeleteMessageStatus.Invalid, wrapper.getResults().get(1).getStatus());
+        verify(inboxDao, never()).deleteMessages(anyCollection());
+        verify(messageCountDao, never()).recountMessages(anyCollection());
+    }
+
+    /**
+     * Tests that streaming reads go straight to the DAO
+     *
+     * @throws Exception
+     */
+    @Test
+    public void streamMessagesTest() throws Exception {
+        MessageHandler handler = message -> { };
+
+        inboxService.streamMessages("test", ExpirationFilter.ACTIVE, handler);
+
+        verify(inboxDao).streamMessagesForUser("test", ExpirationFilter.ACTIVE, handler);
+        verify(inboxDao, never()).getMessagesForUser(anyString(), any(ExpirationFilter.class));
+    }
+
+    /**
+     * Tests that creates record the recipients and new message IDs for read-your-writes
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createMessageRecordsWritesTest() throws Exception {
+        ReadYourWritesTracker tracker = new ReadYourWritesTracker();
+        inboxService.setReadYourWritesTracker(tracker);
+        Message created = TestUtils.getMockMessageForUser("test");
+        created.setId("77");
+        when(inboxDao.createMessages(any(Message.class), anyCollection())).thenReturn(Collections.singletonList(created));
+
+        inboxService.createMessage(TestUtils.getMockMessageForUser("test"), Collections.singletonList("Test"));
+        assertTrue(tracker.isUserWriteRecent("test"));
+        assertTrue(tracker.isMessageWriteRecent("77"));
+        assertFalse(tracker.isUserWriteRecent("other"));
+    }
+
+    /**
+     * Tests that reads of a user written to within the window are sent to the primary, and others are not
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getMessagesAfterWriteReadsPrimaryTest() throws Exception {
+        ReadYourWritesTracker tracker = new ReadYourWritesTracker();
+        tracker.recordUserWrites(Collections.singleton("test"));
+        inboxService.setReadYourWritesTracker(tracker);
+        List<Boolean> primaryRequired = new ArrayList<Boolean>();
+        when(inboxDao.getMessagesForUser(anyString(), any(ExpirationFilter.class))).thenAnswer(invocation -> {
+            primaryRequired.add(ReplicaRoutingDataSource.isPrimaryRequired());
+            return Collections.emptyList();
+        });
+
+        inboxService.getMessages("test", ExpirationFilter.ACTIVE);
+        inboxService.getMessages("other", ExpirationFilter.ACTIVE);
+        assertEquals(Arrays.asList(true, false), primaryRequired);
+        assertFalse(ReplicaRoutingDataSource.isPrimaryRequired());
+    }
+
+    /**
+     * Tests that createMessages stores the messages of every passed request under its key, skipping the keys already stored
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createMessagesBatchTest() throws Exception {
+        Message first = TestUtils.getMockMessageForUser("");
+        Message second = TestUtils.getMockMessageForUser("");
+        when(inboxDao.createMessages(any(Message.class), anyCollection())).thenReturn(TestUtils.getMockMessages("test"));
+        when(idempotencyDao.insertKey(anyString(), anyString())).thenReturn(true);
+        Map<String, CreateMessageRequest> requests = new LinkedHashMap<String, CreateMessageRequest>();
+        requests.put("ingest:1", new CreateMessageRequest(first, Collections.singletonList("Test")));
+        requests.put("ingest:2", new CreateMessageRequest(second, Collections.singletonList("test2")));
+
+        inboxService.createMessages(requests);
+        verify(inboxDao, times(1)).createMessages(first, Collections.singleton("test"));
+        verify(inboxDao, times(1)).createMessages(second, Collections.singleton("test2"));
+        verify(idempotencyDao).updateResponse(eq("ingest:1"), anyString());
+        verify(idempotencyDao).updateResponse(eq("ingest:2"), anyString());
+
+        //A replayed batch finds its keys stored
+        ArgumentCaptor<String> requestHash = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<String> response = ArgumentCaptor.forClass(String.class);
+        verify(idempotencyDao).insertKey(eq("ingest:1"), requestHash.capture());
+        verify(idempotencyDao).updateResponse(eq("ingest:1"), response.capture());
+        inboxService.setIdempotencyCache(null);
+        when(idempotencyDao.insertKey(anyString(), anyString())).thenReturn(false);
+        when(idempotencyDao.getRecord("ingest:1")).thenReturn(new IdempotencyRecord("ingest:1", requestHash.getValue(), response.getValue()));
+
+        inboxService.createMessages(Collections.singletonMap("ingest:1", requests.get("ingest:1")));
+        verify(inboxDao, times(1)).createMessages(first, Collections.singleton("test"));
+    }
+
+    /**
+     * Tests that the first request with an idempotency key stores the messages and the response
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createMessageIdempotentFirstRequestTest() throws Exception {
+        Message message = TestUtils.getMockMessageForUser("");
+        when(inboxDao.createMessages(any(Message.class), anyCollection())).thenReturn(TestUtils.getMockMessages("test"));
+        when(idempotencyDao.insertKey(eq("key1"), anyString())).thenReturn(true);
+
+        MessageResponseWrapper wrapper = inboxService.createMessage(message, Collections.singletonList("test"), null, " key1 ");
+
+        assertEquals(1, wrapper.getMessages().size());
+        verify(inboxDao, times(1)).createMessages(message, Collections.singleton("test"));
+        verify(idempotencyDao).updateResponse(eq("key1"), anyString());
+        assertNotNull(idempotencyCache.get("key1"));
+    }
+
+    /**
+     * Tests that the key is only cached once the transaction commits, so a rolled back request is not replayed from the cache
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createMessageIdempotentCachedAfterCommitTest() throws Exception {
+        Message message = TestUtils.getMockMessageForUser("");
+        when(inboxDao.createMessages(any(Message.class), anyCollection())).thenReturn(TestUtils.getMockMessages("test"));
+        when(idempotencyDao.insertKey(eq("key1"), anyString())).thenReturn(true);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            inboxService.createMessage(message, Collections.singletonList("test"), null, "key1");
+            assertNull(idempotencyCache.get("key1"));
+
+            for( TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations() ){
+                synchronization.afterCommit();
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertNotNull(idempotencyCache.get("key1"));
+    }
+
+    /**
+     * Tests that a retry answered from the cache does not store the messages again
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createMessageIdempotentCachedReplayTest() throws Exception {
+        Message message = TestUtils.getMockMessageForUser("");
+        when(inboxDao.createMessages(any(Message.class), anyCollection())).thenReturn(TestUtils.getMockMessages("test"));
+        when(idempotencyDao.insertKey(eq("key1"), anyString())).thenReturn(true);
+        MessageResponseWrapper first = inboxService.createMessage(message, Collections.singletonList("test"), null, "key1");
+
+        MessageResponseWrapper replayed = inboxService.createMessage(message, Collections.singletonList("test"), null, "key1");
+
+        assertEquals(first.getMessages().get(0).getId(), replayed.getMessages().get(0).getId());
+        verify(inboxDao, times(1)).createMessages(any(Message.class), anyCollection());
+        verify(idempotencyDao, times(1)).insertKey(eq("key1"), anyString());
+    }
+
+    /**
+     * Tests that a retry landing on a node without the key cached replays the response stored in the DB
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createMessageIdempotentStoredReplayTest() throws Exception {
+        Message message = TestUtils.getMockMessageForUser("");
+        when(inboxDao.createMessages(any(Message.class), anyCollection())).thenReturn(TestUtils.getMockMessages("test"));
+        when(idempotencyDao.insertKey(eq("key1"), anyString())).thenReturn(true, false);
+        inboxService.createMessage(message, Collections.singletonList("test"), null, "key1");
+
+        ArgumentCaptor<String> requestHash = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<String> response = ArgumentCaptor.forClass(String.class);
+        verify(idempotencyDao).insertKey(eq("key1"), requestHash.capture());
+        verify(idempotencyDao).updateResponse(eq("key1"), response.capture());
+        when(idempotencyDao.getRecord("key1")).thenReturn(new IdempotencyRecord("key1", requestHash.getValue(), response.getValue()));
+        idempotencyCache.clear();
+
+        MessageResponseWrapper replayed = inboxService.createMessage(message, Collections.singletonList("test"), null, "key1");
+
+        assertEquals(1, replayed.getMessages().size());
+        verify(inboxDao, times(1)).createMessages(any(Message.class), anyCollection());
+    }
+
+    /**
+     * Tests that a key reused for a different request is rejected
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createMessageIdempotencyKeyReusedTest() throws Exception {
+        when(inboxDao.createMessages(any(Message.class), anyCollection())).thenReturn(TestUtils.getMockMessages("test"));
+        when(idempotencyDao.insertKey(eq("key1"), anyString())).thenReturn(true);
+        inboxService.createMessage(TestUtils.getMockMessageForUser(""), Collections.singletonList("test"), null, "key1");
+
+        try {
+            inboxService.createMessage(TestUtils.getMockMessageForUser(""), Collections.singletonList("test2"), null, "key1");
+            fail("Expected FormValidationException");
+        } catch (FormValidationException ex) {
+            assertEquals(1, ex.getValidationErrors().size());
+        }
+        verify(inboxDao, times(1)).createMessages(any(Message.class), anyCollection());
+    }
+
+    /**
+     * Tests that DedupeMode.Skip returns the existing message of a recipient instead of storing a new one
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createMessageDedupeSkipTest() throws Exception {
+        Message message = TestUtils.getMockMessageForUser("");
+        Message existing = TestUtils.getMockMessages("test").get(0);
+        when(inboxDao.getDuplicateMessages(any(Message.class), anyCollection())).thenReturn(Collections.singletonMap("test", existing));
+        when(inboxDao.createMessages(any(Message.class), anyCollection())).thenReturn(TestUtils.getMockMessages("test2"));
+
+        MessageResponseWrapper wrapper = inboxService.createMessage(message, Arrays.asList("test", "test2"), DedupeMode.Skip);
+
+        assertEquals(2, wrapper.getMessages().size());
+        assertTrue(wrapper.getMessages().contains(existing));
+        verify(inboxDao, times(1)).createMessages(message, Collections.singleton("test2"));
+        verify(messageCountDao, times(1)).incrementCounts(message, Collections.singleton("test2"));
+        verify(inboxDao, never()).refreshMessages(any(Message.class), anyCollection());
+    }
+
+    /**
+     * Tests that DedupeMode.Refresh refreshes and recounts the existing messages and stores nothing when every recipient has one
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createMessageDedupeRefreshTest() throws Exception {
+        Message message = TestUtils.getMockMessageForUser("");
+        Message existing = TestUtils.getMockMessages("test").get(0);
+        when(inboxDao.getDuplicateMessages(any(Message.class), anyCollection())).thenReturn(Collections.singletonMap("test", existing));
+        when(inboxDao.getMessagesByIds(anyCollection())).thenReturn(Collections.singletonList(existing));
+
+        MessageResponseWrapper wrapper = inboxService.createMessage(message, Collections.singletonList("Test "), DedupeMode.Refresh);
+
+        assertEquals(1, wrapper.getMessages().size());
+        verify(inboxDao, times(1)).refreshMessages(message, Collections.singletonList(Long.valueOf(existing.getId())));
+        verify(messageCountDao, times(1)).recountMessages(Collections.singleton("test"));
+        verify(inboxDao, never()).createMessages(any(Message.class), anyCollection());
+        verify(messageCountDao, never()).incrementCounts(any(Message.class), anyCollection());
+    }
+
+    /**
+     * Tests that DedupeMode.None does not look for duplicates
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createMessageDedupeNoneTest() throws Exception {
+        when(inboxDao.createMessages(any(Message.class), anyCollection())).thenReturn(TestUtils.getMockMessages("test"));
+
+        inboxService.createMessage(TestUtils.getMockMessageForUser(""), Collections.singletonList("test"), DedupeMode.None);
+
+        verify(inboxDao, never()).getDuplicateMessages(any(Message.class), anyCollection());
+        verify(inboxDao, times(1)).createMessages(any(Message.class), anyCollection());
+    }
+
+    private static Message getTaskTemplate() {
+        Message template = new Message();
+        template.setId("proposal-due");
+        template.setSummary("Your proposal {id} is due");
+        template.setPriority(MessagePriority.High);
+        template.setType(MessageType.Task);
+        template.setActionLink("https://example.gov/proposals/{id}");
+        template.setActionLabel("Open");
+        template.setLastUpdtUser("ProposalSvc");
+        return template;
+    }
+
+    /**
+     * Tests that the template is rendered for each recipient and the rendered messages are stored in one call
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createTemplatedMessageTest() throws Exception {
+        when(messageTemplateDao.getTemplate("proposal-due")).thenReturn(getTaskTemplate());
+        when(inboxDao.createMessages(anyListOf(Message.class))).thenReturn(TestUtils.getMockMessages("test", "test2"));
+        Map<String, Map<String, String>> recipients = new HashMap<String, Map<String, String>>();
+        recipients.put("Test ", Collections.singletonMap("id", "1"));
+        recipients.put("test2", Collections.singletonMap("id", "2"));
+
+        MessageResponseWrapper wrapper = inboxService.createTemplatedMessage("proposal-due", recipients, null);
+
+        assertEquals(2, wrapper.getMessages().size());
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(inboxDao, times(1)).createMessages(captor.capture());
+        List<Message> rendered = captor.getValue();
+        assertEquals(2, rendered.size());
+        for( Message message : rendered ){
+            String id = "test".equals(message.getLanId()) ? "1" : "2";
+            assertEquals("Your proposal " + id + " is due", message.getSummary());
+            assertEquals("https://example.gov/proposals/" + id, message.getActionLink());
+            assertEquals("ProposalSvc", message.getLastUpdtUser());
+        }
+        verify(messageCountDao, times(1)).incrementCounts(any(Message.class), eq(new HashSet<String>(Arrays.asList("test", "test2"))));
+    }
+
+    /**
+     * Tests that nothing is stored when a recipient has no value for a placeholder
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createTemplatedMessageMissingParameterTest() throws Exception {
+        when(messageTemplateDao.getTemplate("proposal-due")).thenReturn(getTaskTemplate());
+        Map<String, Map<String, String>> recipients = new HashMap<String, Map<String, String>>();
+        recipients.put("test", Collections.singletonMap("id", "1"));
+        recipients.put("test2", Collections.<String, String>emptyMap());
+
+        try {
+            inboxService.createTemplatedMessage("proposal-due", recipients, null);
+            fail("Expected FormValidationException");
+        } catch (FormValidationException ex) {
+            assertEquals(1, ex.getValidationErrors().size());
+            assertEquals("recipients.test2", ex.getValidationErrors().get(0).getField());
+        }
+        verify(inboxDao, never()).createMessages(anyListOf(Message.class));
+        verify(messageCountDao, never()).incrementCounts(any(Message.class), anyCollection());
+    }
+
+    /**
+     * Tests that an Information template requires an expiration date
+     *
+     * @throws Exception
+     */
+    @Test(expected = FormValidationException.class)
+    public void createTemplatedMessageMissingExpirationDateTest() throws Exception {
+        Message template = getTaskTemplate();
+        template.setType(MessageType.Information);
+        when(messageTemplateDao.getTemplate("proposal-due")).thenReturn(template);
+
+        inboxService.createTemplatedMessage("proposal-due", Collections.singletonMap("test", Collections.singletonMap("id", "1")), null);
+    }
+
+    /**
+     * Tests that an unknown template ID is not found
+     *
+     * @throws Exception
+     */
+    @Test(expected = ResourceNotFoundException.class)
+    public void createTemplatedMessageUnknownTemplateTest() throws Exception {
+        when(messageTemplateDao.getTemplate("missing")).thenThrow(new ResourceNotFoundException("missing"));
+
+        inboxService.createTemplatedMessage("missing", Collections.singletonMap("test", Collections.<String, String>emptyMap()), null);
+    }
+
+    /**
+     * Tests that a saved template is returned as stored
+     *
+     * @throws Exception
+     */
+    @Test
+    public void saveMessageTemplateTest() throws Exception {
+        Message template = getTaskTemplate();
+        when(messageTemplateDao.getTemplate("proposal-due")).thenReturn(template);
+
+        MessageResponseWrapper wrapper = inboxService.saveMessageTemplate("proposal-due", template);
+
+        assertEquals(Collections.singletonList(template), wrapper.getMessages());
+        InOrder inOrder = inOrder(messageTemplateDao);
+        inOrder.verify(messageTemplateDao).saveTemplate("proposal-due", template);
+        inOrder.verify(messageTemplateDao).getTemplate("proposal-due");
+    }
+
+
+    /**
+     * Tests that group members are read and stored a page at a time, skipping the lan IDs listed in the request
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createMessageForGroupsTest() throws Exception {
+        inboxService.setGroupPageSize(2);
+        List<String> groups = Arrays.asList("bio-division", "geo-division");
+        when(recipientGroupDao.getGroupNames(anyCollection())).thenReturn(groups);
+        when(recipientGroupDao.getMembersPage(anyCollection(), eq(""), eq(2))).thenReturn(Arrays.asList("test", "user2"));
+        when(recipientGroupDao.getMembersPage(anyCollection(), eq("user2"), eq(2))).thenReturn(Collections.singletonList("user3"));
+        when(inboxDao.createMessages(any(Message.class), anyCollection())).thenReturn(TestUtils.getMockMessages("test"));
+        Message message = TestUtils.getMockMessageForUser("test");
+
+        MessageResponseWrapper wrapper = inboxService.createMessage(message, Collections.singletonList("Test "), groups, null);
+
+        assertEquals(3, wrapper.getMessages().size());
+        InOrder inOrder = inOrder(inboxDao, recipientGroupDao);
+        inOrder.verify(inboxDao).createMessages(message, Collections.singleton("test"));
+        inOrder.verify(recipientGroupDao).getMembersPage(anyCollection(), eq(""), eq(2));
+        inOrder.verify(inboxDao).createMessages(message, Collections.singleton("user2"));
+        inOrder.verify(recipientGroupDao).getMembersPage(anyCollection(), eq("user2"), eq(2));
+        inOrder.verify(inboxDao).createMessages(message, Collections.singleton("user3"));
+        verify(recipientGroupDao, times(2)).getMembersPage(anyCollection(), anyString(), eq(2));
+        verify(messageCountDao, times(3)).incrementCounts(any(Message.class), anyCollection());
+    }
+
+    /**
+     * Tests that a request naming a group that is not stored stores nothing
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createMessageForMissingGroupTest() throws Exception {
+        when(recipientGroupDao.getGroupNames(anyCollection())).thenReturn(Collections.singletonList("bio-division"));
+
+        try {
+            inboxService.createMessage(TestUtils.getMockMessageForUser("test"), Collections.singletonList("test"), Arrays.asList("bio-division", "missing"), null);
+            fail("Expected ResourceNotFoundException");
+        } catch (ResourceNotFoundException ex) {
+            assertTrue(ex.getMessage().contains("missing"));
+        }
+        verify(inboxDao, never()).createMessages(any(Message.class), anyCollection());
+        verify(recipientGroupDao, never()).getMembersPage(anyCollection(), anyString(), anyInt());
+    }
+
+    /**
+     * Tests that a request naming groups with an Idempotency-Key is stored once and hashed with its groups
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createMessageForGroupsWithIdempotencyKeyTest() throws Exception {
+        when(idempotencyDao.insertKey(eq("key1"), anyString())).thenReturn(true);
+        when(recipientGroupDao.getGroupNames(anyCollection())).thenReturn(Collections.singletonList("bio-division"));
+        when(recipientGroupDao.getMembersPage(anyCollection(), eq(""), anyInt())).thenReturn(Collections.singletonList("test"));
+        when(inboxDao.createMessages(any(Message.class), anyCollection())).thenReturn(TestUtils.getMockMessages("test"));
+
+        MessageResponseWrapper wrapper = inboxService.createMessage(TestUtils.getMockMessageForUser("test"), Collections.<String>emptyList(),
+                Collections.singletonList("bio-division"), null, "key1");
+
+        assertEquals(1, wrapper.getMessages().size());
+        verify(inboxDao, times(1)).createMessages(any(Message.class), eq(Collections.singleton("test")));
+        verify(idempotencyDao, times(1)).updateResponse(eq("key1"), anyString());
+    }
+
+    /**
+     * Tests that the first update of a group creates it and applies its deltas
+     *
+     * @throws Exception
+     */
+    @Test
+    public void updateRecipientGroupCreatesGroupTest() throws Exception {
+        RecipientGroup group = new RecipientGroup("bio-division", 1, 2, "DivisionSvc");
+        when(recipientGroupDao.insertGroup("bio-division", "DivisionSvc")).thenReturn(true);
+        when(recipientGroupDao.getGroup("bio-division")).thenReturn(group);
+
+        RecipientGroupResponseWrapper wrapper = inboxService.updateRecipientGroup("bio-division", Arrays.asList("User1 ", "user2"), null, null, "DivisionSvc");
+
+        assertEquals(group, wrapper.getGroup());
+        InOrder inOrder = inOrder(recipientGroupDao);
+        inOrder.verify(recipientGroupDao).incrementVersion("bio-division", null, "DivisionSvc");
+        inOrder.verify(recipientGroupDao).insertGroup("bio-division", "DivisionSvc");
+        inOrder.verify(recipientGroupDao).addMembers("bio-division", new HashSet<String>(Arrays.asList("user1", "user2")));
+        verify(recipientGroupDao, never()).removeMembers(anyString(), anyCollection());
+    }
+
+    /**
+     * Tests that removals are applied before additions
+     *
+     * @throws Exception
+     */
+    @Test
+    public void updateRecipientGroupDeltasTest() throws Exception {
+        when(recipientGroupDao.incrementVersion("bio-division", 4, "DivisionSvc")).thenReturn(true);
+        when(recipientGroupDao.getGroup("bio-division")).thenReturn(new RecipientGroup("bio-division", 5, 2, "DivisionSvc"));
+
+        RecipientGroupResponseWrapper wrapper = inboxService.updateRecipientGroup("bio-division", Collections.singletonList("user1"),
+                Arrays.asList("user1", "user3"), 4, "DivisionSvc");
+
+        assertEquals(5, wrapper.getGroup().getVersion());
+        InOrder inOrder = inOrder(recipientGroupDao);
+        inOrder.verify(recipientGroupDao).removeMembers("bio-division", new HashSet<String>(Arrays.asList("user1", "user3")));
+        inOrder.verify(recipientGroupDao).addMembers("bio-division", Collections.singleton("user1"));
+        verify(recipientGroupDao, never()).insertGroup(anyString(), anyString());
+    }
+
+    /**
+     * Tests that deltas computed against an older version are rejected with the current version
+     *
+     * @throws Exception
+     */
+    @Test
+    public void updateRecipientGroupVersionConflictTest() throws Exception {
+        when(recipientGroupDao.getGroup("bio-division")).thenReturn(new RecipientGroup("bio-division", 5, 2, "DivisionSvc"));
+
+        try {
+            inboxService.updateRecipientGroup("bio-division", Collections.singletonList("user1"), null, 3, "DivisionSvc");
+            fail("Expected FormValidationException");
+        } catch (FormValidationException ex) {
+            assertEquals("version", ex.getValidationErrors().get(0).getField());
+            assertTrue(ex.getValidationErrors().get(0).getErrorMessage().endsWith("5"));
+        }
+        verify(recipientGroupDao, never()).insertGroup(anyString(), anyString());
+        verify(recipientGroupDao, never()).addMembers(anyString(), anyCollection());
+    }
+
+    /**
+     * Tests that version 0 only creates a group
+     *
+     * @throws Exception
+     */
+    @Test
+    public void updateRecipientGroupCreateOnlyTest() throws Exception {
+        when(recipientGroupDao.getGroup("bio-division")).thenReturn(new RecipientGroup("bio-division", 2, 2, "DivisionSvc"));
+
+        try {
+            inboxService.updateRecipientGroup("bio-division", Collections.singletonList("user1"), null, 0, "DivisionSvc");
+            fail("Expected FormValidationException");
+        } catch (FormValidationException ex) {
+            assertEquals("version", ex.getValidationErrors().get(0).getField());
+        }
+        verify(recipientGroupDao, never()).incrementVersion(anyString(), any(Integer.class), anyString());
+        verify(recipientGroupDao, never()).addMembers(anyString(), anyCollection());
+    }
+
+
+    /**
+     * Tests that the broadcasts the user has not dismissed are merged after the user's messages,
+     * as copies addressed to the user
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getMessagesMergesBroadcastsTest() throws Exception {
+        when(inboxDao.getMessagesForUser("test", ExpirationFilter.ACTIVE)).thenReturn(TestUtils.getMockMessages("test"));
+        Message active = getMockBroadcast("B1");
+        Message dismissed = getMockBroadcast("B2");
+        Message expired = getMockBroadcast("B3");
+        expired.setExpirationDate(new Timestamp(System.currentTimeMillis() - 60000).toString());
+        when(broadcastDao.getBroadcasts()).thenReturn(Arrays.asList(active, dismissed, expired));
+        when(broadcastDao.getDismissedBroadcastIds("test")).thenReturn(Collections.singleton("B2"));
+
+        List<Message> messages = inboxService.getMessages("test", ExpirationFilter.ACTIVE).getMessages();
+
+        assertEquals(2, messages.size());
+        assertEquals("0", messages.get(0).getId());
+        assertEquals("B1", messages.get(1).getId());
+        assertEquals("test", messages.get(1).getLanId());
+        assertEquals("", active.getLanId());
+    }
+
+    /**
+     * Tests that the first page carries the broadcasts after the user's messages without moving the cursor,
+     * and that later pages do not repeat them
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getMessagesPageMergesBroadcastsTest() throws Exception {
+        List<Message> mockedMessages = TestUtils.getMockMessagesForUser("test", 3);
+        when(inboxDao.getMessagesForUser("test", ExpirationFilter.ACTIVE, 3, null)).thenReturn(mockedMessages);
+        when(broadcastDao.getBroadcasts()).thenReturn(Collections.singletonList(getMockBroadcast("B1")));
+        when(broadcastDao.getDismissedBroadcastIds("test")).thenReturn(Collections.<String>emptySet());
+
+        MessageResponseWrapper firstPage = inboxService.getMessages("test", ExpirationFilter.ACTIVE, 2, null);
+        assertEquals(3, firstPage.getMessages().size());
+        assertEquals("B1", firstPage.getMessages().get(2).getId());
+        assertEquals(Long.parseLong(mockedMessages.get(1).getId()), MessageCursor.decode(firstPage.getNextCursor()).getMsgId());
+
+        when(inboxDao.getMessagesForUser(eq("test"), eq(ExpirationFilter.ACTIVE), eq(3), any(MessageCursor.class))).thenReturn(mockedMessages.subList(2, 3));
+        MessageResponseWrapper secondPage = inboxService.getMessages("test", ExpirationFilter.ACTIVE, 2, firstPage.getNextCursor());
+        assertEquals(1, secondPage.getMessages().size());
+        assertNull(secondPage.getNextCursor());
+    }
+
+    /**
+     * Tests that the first header page carries the broadcasts without their summaries
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getMessageHeadersMergesBroadcastsTest() throws Exception {
+        Message broadcast = getMockBroadcast("B1");
+        when(inboxDao.getMessageHeadersForUser("test", ExpirationFilter.ALL, 11, null)).thenReturn(Collections.<Message>emptyList());
+        when(broadcastDao.getBroadcasts()).thenReturn(Collections.singletonList(broadcast));
+        when(broadcastDao.getDismissedBroadcastIds("test")).thenReturn(Collections.<String>emptySet());
+
+        List<Message> headers = inboxService.getMessageHeaders("test", ExpirationFilter.ALL, 10, null).getMessages();
+        assertEquals(1, headers.size());
+        assertEquals("B1", headers.get(0).getId());
+        assertNull(headers.get(0).getSummary());
+        assertNotNull(broadcast.getSummary());
+    }
+
+    /**
+     * Tests that streamed messages are followed by the broadcasts the user has not dismissed
+     *
+     * @throws Exception
+     */
+    @Test
+    public void streamMessagesMergesBroadcastsTest() throws Exception {
+        when(broadcastDao.getBroadcasts()).thenReturn(Arrays.asList(getMockBroadcast("B1"), getMockBroadcast("B2")));
+        when(broadcastDao.getDismissedBroadcastIds("test")).thenReturn(Collections.singleton("B1"));
+        List<String> streamed = new ArrayList<String>();
+
+        inboxService.streamMessages("test", ExpirationFilter.ALL, message -> streamed.add(message.getId()));
+        assertEquals(Collections.singletonList("B2"), streamed);
+    }
+
+    /**
+     * Tests that the dismissals are not read when there are no broadcasts
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getMessagesWithoutBroadcastsTest() throws Exception {
+        List<Message> mockedMessages = TestUtils.getMockMessages("test");
+        when(inboxDao.getMessagesForUser("test", ExpirationFilter.ALL)).thenReturn(mockedMessages);
+        when(broadcastDao.getBroadcasts()).thenReturn(Collections.<Message>emptyList());
+
+        assertEquals(mockedMessages, inboxService.getMessages("test", ExpirationFilter.ALL).getMessages());
+        verify(broadcastDao, never()).getDismissedBroadcastIds(anyString());
+    }
+
+    /**
+     * Tests that the broadcasts the user has not dismissed are added to the counts of their type and priority
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getMessageCountsAddsBroadcastsTest() throws Exception {
+        when(messageCountDao.getMessageCounts("test")).thenReturn(Collections.singletonList(new MessageCount(MessageType.Information, MessagePriority.High, 2, 1)));
+        Message expired = getMockBroadcast("B2");
+        expired.setExpirationDate(new Timestamp(System.currentTimeMillis() - 60000).toString());
+        when(broadcastDao.getBroadcasts()).thenReturn(Arrays.asList(getMockBroadcast("B1"), expired, getMockBroadcast("B3")));
+        when(broadcastDao.getDismissedBroadcastIds("test")).thenReturn(Collections.singleton("B3"));
+
+        for( MessageCount count : inboxService.getMessageCounts("test").getCounts() ){
+            boolean stored = count.getType() == MessageType.Information && count.getPriority() == MessagePriority.High;
+            assertEquals(stored ? 3 : 0, count.getActive());
+            assertEquals(stored ? 2 : 0, count.getInactive());
+            assertEquals(stored ? 5 : 0, count.getAll());
+        }
+    }
+
+    /**
+     * Tests that a user deleting a broadcast records a dismissal instead of deleting it
+     *
+     * @throws Exception
+     */
+    @Test
+    public void deleteMessageForUserDismissesBroadcastTest() throws Exception {
+        when(broadcastDao.getBroadcast(7)).thenReturn(getMockBroadcast("B7"));
+        when(broadcastDao.dismissBroadcast(7, "test")).thenReturn(true);
+
+        MessageResponseWrapper wrapper = inboxService.deleteMessageForUser("test", "B7");
+
+        assertEquals("B7", wrapper.getMessages().get(0).getId());
+        assertEquals("test", wrapper.getMessages().get(0).getLanId());
+        verify(broadcastDao, never()).deleteBroadcast(anyLong());
+        verify(inboxDao, never()).getMessageById(anyString());
+        verify(inboxDao, never()).deleteMessageForUser(anyString(), anyString());
+    }
+
+    /**
+     * Tests that Task broadcasts cannot be dismissed and that a second dismissal maps to not found
+     *
+     * @throws Exception
+     */
+    @Test
+    public void deleteMessageForUserBroadcastDeniedTest() throws Exception {
+        Message task = getMockBroadcast("B7");
+        task.setType(MessageType.Task);
+        when(broadcastDao.getBroadcast(7)).thenReturn(task);
+        try {
+            inboxService.deleteMessageForUser("test", "B7");
+            fail("Expected AccessDeniedException");
+        } catch (AccessDeniedException ex) {
+            //Expected
+        }
+        verify(broadcastDao, never()).dismissBroadcast(anyLong(), anyString());
+
+        when(broadcastDao.getBroadcast(8)).thenReturn(getMockBroadcast("B8"));
+        when(broadcastDao.dismissBroadcast(8, "test")).thenReturn(false);
+        try {
+            inboxService.deleteMessageForUser("test", "B8");
+            fail("Expected ResourceNotFoundException");
+        } catch (ResourceNotFoundException ex) {
+            //Expected
+        }
+    }
+
+    /**
+     * Tests that a broadcast is stored once, whatever the number of users
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createBroadcastTest() throws Exception {
+        Message message = TestUtils.getMockMessageForUser("");
+        when(broadcastDao.insertBroadcast(message)).thenReturn(getMockBroadcast("B1"));
+
+        assertEquals("B1", inboxService.createBroadcast(message).getMessages().get(0).getId());
+        verify(broadcastDao, times(1)).insertBroadcast(message);
+        verify(inboxDao, never()).createMessage(any(Message.class));
+        verify(inboxDao, never()).createMessages(any(Message.class), anyListOf(String.class));
+    }
+
+    /**
+     * Tests that deleting a broadcast removes it for every user, and that a missing broadcast maps to not found
+     *
+     * @throws Exception
+     */
+    @Test
+    public void deleteBroadcastTest() throws Exception {
+        when(broadcastDao.getBroadcast(1)).thenReturn(getMockBroadcast("B1"));
+        when(broadcastDao.deleteBroadcast(1)).thenReturn(true);
+
+        assertEquals("B1", inboxService.deleteBroadcast("B1").getMessages().get(0).getId());
+        verify(broadcastDao).deleteBroadcast(1);
+
+        try {
+            inboxService.deleteBroadcast("1");
+            fail("Expected ResourceNotFoundException");
+        } catch (ResourceNotFoundException ex) {
+            //Expected
+        }
+    }
+
+    private static Message getMockBroadcast(String broadcastId) {
+        Message broadcast = TestUtils.getMockMessageForUser("");
+        broadcast.setId(broadcastId);
+        return broadcast;
+    }
 }
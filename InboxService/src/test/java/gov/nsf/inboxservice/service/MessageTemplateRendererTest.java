@@ -0,0 +1,109 @@
+package gov.nsf.inboxservice.service;
+
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessagePriority;
+import gov.nsf.inboxservice.api.model.MessageType;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JUnit tests for MessageTemplateRenderer
+ */
+public class MessageTemplateRendererTest {
+
+    private static Message getTaskTemplate() {
+        Message template = new Message();
+        template.setId("proposal-due");
+        template.setSummary("Your proposal {id} is due {date}");
+        template.setPriority(MessagePriority.High);
+        template.setType(MessageType.Task);
+        template.setActionLink("https://example.gov/proposals/{id}");
+        template.setActionLabel("Open {id}");
+        template.setInternal(true);
+        template.setLastUpdtUser("ProposalSvc");
+        return template;
+    }
+
+    private static Map<String, String> parameters(String id, String date) {
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put("id", id);
+        parameters.put("date", date);
+        return parameters;
+    }
+
+    /**
+     * Tests that every placeholder is replaced and the template's other fields are copied
+     */
+    @Test
+    public void renderTest() {
+        MessageTemplateRenderer renderer = new MessageTemplateRenderer(getTaskTemplate());
+
+        Message message = renderer.render("test", parameters("1234", "May 1"), "2090-01-01 00:00:00.0");
+
+        assertEquals("test", message.getLanId());
+        assertEquals("Your proposal 1234 is due May 1", message.getSummary());
+        assertEquals("https://example.gov/proposals/1234", message.getActionLink());
+        assertEquals("Open 1234", message.getActionLabel());
+        assertEquals(MessagePriority.High, message.getPriority());
+        assertEquals(MessageType.Task, message.getType());
+        assertTrue(message.isInternal());
+        assertEquals("ProposalSvc", message.getLastUpdtUser());
+        assertEquals(null, message.getExpirationDate());
+    }
+
+    /**
+     * Tests that values are HTML escaped in the summary and URL encoded in the action link
+     */
+    @Test
+    public void renderEscapesValuesTest() {
+        MessageTemplateRenderer renderer = new MessageTemplateRenderer(getTaskTemplate());
+
+        Message message = renderer.render("test", parameters("a b&<c>", "<b>May</b>"), null);
+
+        assertEquals("Your proposal a b&amp;&lt;c&gt; is due &lt;b&gt;May&lt;/b&gt;", message.getSummary());
+        assertEquals("https://example.gov/proposals/a%20b%26%3Cc%3E", message.getActionLink());
+        assertEquals("Open a b&<c>", message.getActionLabel());
+    }
+
+    /**
+     * Tests that an Information template keeps the passed expiration date and has no action
+     */
+    @Test
+    public void renderInformationTest() {
+        Message template = getTaskTemplate();
+        template.setType(MessageType.Information);
+        MessageTemplateRenderer renderer = new MessageTemplateRenderer(template);
+
+        Message message = renderer.render("test", parameters("1", "May 1"), "2090-01-01 00:00:00.0");
+
+        assertEquals("2090-01-01 00:00:00.0", message.getExpirationDate());
+        assertEquals(null, message.getActionLink());
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("id", "date")), renderer.getPlaceholders());
+    }
+
+    /**
+     * Tests that placeholders without a value are reported, and text that is not a placeholder is left alone
+     */
+    @Test
+    public void missingParametersTest() {
+        Message template = getTaskTemplate();
+        template.setSummary("{greeting}, {id} {} { id } is due");
+        MessageTemplateRenderer renderer = new MessageTemplateRenderer(template);
+
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("greeting", "id")), renderer.getMissingParameters(null));
+        assertEquals(Collections.singleton("greeting"), renderer.getMissingParameters(Collections.singletonMap("id", "1")));
+
+        Map<String, String> parameters = parameters("1", null);
+        parameters.put("greeting", "Hi");
+        assertTrue(renderer.getMissingParameters(parameters).isEmpty());
+        assertEquals("Hi, 1 {} { id } is due", renderer.render("test", parameters, null).getSummary());
+    }
+}
@@ -0,0 +1,64 @@
+package gov.nsf.inboxservice.validator;
+
+import gov.nsf.common.exception.FormValidationException;
+import gov.nsf.common.model.BaseError;
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.common.util.Constants;
+import gov.nsf.inboxservice.common.util.TestUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests for BroadcastValidator
+ */
+public class BroadcastValidatorTest {
+
+    /**
+     * Tests that a broadcast is validated as a message, without recipients
+     *
+     * @throws Exception
+     */
+    @Test
+    public void validateRequestTest() throws Exception {
+        BroadcastValidator.validateRequest(TestUtils.getMockMessageForUser(null));
+
+        Message message = TestUtils.getMockMessageForUser(null);
+        message.setSummary(null);
+        message.setLastUpdtUser(null);
+        try {
+            BroadcastValidator.validateRequest(message);
+            fail("Expected FormValidationException");
+        } catch (FormValidationException ex) {
+            TestUtils.assertContains(ex.getValidationErrors(),
+                    new BaseError(Constants.MSG_SUMMARY_FIELD, Constants.MISSING_NULL_EMPTY_FIELD + Constants.MSG_SUMMARY_FIELD),
+                    new BaseError(Constants.MSG_LAST_UPDT_USER_FIELD, Constants.MISSING_NULL_EMPTY_FIELD + Constants.MSG_LAST_UPDT_USER_FIELD));
+            assertEquals(2, ex.getValidationErrors().size());
+        }
+    }
+
+    /**
+     * Tests that a broadcast ID is the prefix followed by an integer
+     *
+     * @throws Exception
+     */
+    @Test
+    public void validateBroadcastIdRequestTest() throws Exception {
+        BroadcastValidator.validateBroadcastIdRequest("B1");
+
+        assertBroadcastIdError(null, new BaseError(Constants.BROADCAST_ID_FIELD, Constants.MISSING_NULL_EMPTY_FIELD + Constants.BROADCAST_ID_FIELD));
+        assertBroadcastIdError("1", new BaseError(Constants.BROADCAST_ID_FIELD, Constants.BROADCAST_ID_INVALID));
+        assertBroadcastIdError("B", new BaseError(Constants.BROADCAST_ID_FIELD, Constants.BROADCAST_ID_INVALID));
+        assertBroadcastIdError("B1.5", new BaseError(Constants.BROADCAST_ID_FIELD, Constants.BROADCAST_ID_INVALID));
+    }
+
+    private static void assertBroadcastIdError(String broadcastId, BaseError error) {
+        try {
+            BroadcastValidator.validateBroadcastIdRequest(broadcastId);
+            fail("Expected FormValidationException");
+        } catch (FormValidationException ex) {
+            TestUtils.assertContains(ex.getValidationErrors(), error);
+            assertEquals(1, ex.getValidationErrors().size());
+        }
+    }
+}
@@ -3,6 +3,7 @@ package gov.nsf.inboxservice.validator;
 import gov.nsf.common.exception.FormValidationException;
 import gov.nsf.common.model.BaseError;
 import gov.nsf.inboxservice.api.model.CreateMessageRequest;
+import gov.nsf.inboxservice.api.model.DedupeMode;
 import gov.nsf.inboxservice.api.model.Message;
 import gov.nsf.inboxservice.api.model.MessagePriority;
 import gov.nsf.inboxservice.api.model.MessageType;
@@ -612,4 +613,58 @@ public class CreateMessageValidatorTest {
         }
 
     }
+
+    /**
+     * Validates that a request with a valid Idempotency-Key passes
+     *
+     * @throws Exception
+     */
+    @Test
+    public void validateRequestIdempotencyKeyHappyPathTest() throws Exception {
+        CreateMessageValidator.validateRequest(new CreateMessageRequest(getValidMessage(), getValidLanIds()), "3f1c2a9e-5b7d-4e21-9c0a-1d2e3f4a5b6c");
+    }
+
+    /**
+     * Validates the behavior when the Idempotency-Key is empty, too long or not printable ASCII
+     * <p>
+     * FormValidationException with the appropriate BaseError(s) is expected
+     *
+     * @throws Exception
+     */
+    @Test
+    public void validateRequestInvalidIdempotencyKeyTest() throws Exception {
+        assertIdempotencyKeyError(" ", Constants.MISSING_NULL_EMPTY_FIELD + Constants.IDEMPOTENCY_KEY_HEADER);
+        assertIdempotencyKeyError(TestUtils.generateStringWithLength(Constants.IDEMPOTENCY_KEY_MAX_LENGTH + 1),
+                Constants.FIELD_LENGTH_TOO_LONG + Constants.IDEMPOTENCY_KEY_MAX_LENGTH);
+        assertIdempotencyKeyError("key\u00e9", Constants.INVALID_IDEMPOTENCY_KEY + Constants.IDEMPOTENCY_KEY_HEADER);
+    }
+
+    private void assertIdempotencyKeyError(String idempotencyKey, String expectedError) {
+        try {
+            CreateMessageValidator.validateRequest(new CreateMessageRequest(getValidMessage(), getValidLanIds()), idempotencyKey);
+            fail("Expected FormValidationException");
+        } catch (FormValidationException ex) {
+            assertEquals(1, ex.getValidationErrors().size());
+            TestUtils.assertContains(ex.getValidationErrors(), new BaseError(Constants.IDEMPOTENCY_KEY_HEADER, expectedError));
+        }
+    }
+
+    /**
+     * Validates the behavior when the dedupe mode is not one of the known values
+     * <p>
+     * FormValidationException with the appropriate BaseError(s) is expected
+     *
+     * @throws Exception
+     */
+    @Test
+    public void validateRequestInvalidDedupeTest() throws Exception {
+        CreateMessageValidator.validateRequest(new CreateMessageRequest(getValidMessage(), getValidLanIds(), DedupeMode.Refresh));
+        try {
+            CreateMessageValidator.validateRequest(new CreateMessageRequest(getValidMessage(), getValidLanIds(), DedupeMode.Invalid));
+            fail("Expected FormValidationException");
+        } catch (FormValidationException ex) {
+            assertEquals(1, ex.getValidationErrors().size());
+            TestUtils.assertContains(ex.getValidationErrors(), new BaseError(Constants.REQUEST_DEDUPE_FIELD, Constants.INVALID_DEDUPE_MODE));
+        }
+    }
 }
@@ -121,4 +121,30 @@ public class DeleteMessageValidatorTest {
                     new BaseError(Constants.MSG_ID_FIELD, Constants.MSG_ID_NON_NUMERIC));
         }
     }
+
+
+    /**
+     * Validates that a session user's delete accepts a global broadcast ID, which the admin delete rejects
+     *
+     * @throws Exception
+     */
+    @Test
+    public void validateUserRequestBroadcastIdTest() throws Exception {
+        DeleteMessageValidator.validateUserRequest("B12");
+        DeleteMessageValidator.validateUserRequest("12");
+        try {
+            DeleteMessageValidator.validateRequest("B12");
+            fail("Expected FormValidationException");
+        } catch(FormValidationException ex){
+            TestUtils.assertContains(ex.getValidationErrors(),
+                    new BaseError(Constants.MSG_ID_FIELD, Constants.MSG_ID_NON_NUMERIC));
+        }
+        try {
+            DeleteMessageValidator.validateUserRequest("Babc");
+            fail("Expected FormValidationException");
+        } catch(FormValidationException ex){
+            TestUtils.assertContains(ex.getValidationErrors(),
+                    new BaseError(Constants.MSG_ID_FIELD, Constants.MSG_ID_NON_NUMERIC));
+        }
+    }
 }
@@ -0,0 +1,93 @@
+package gov.nsf.inboxservice.validator;
+
+import gov.nsf.common.exception.FormValidationException;
+import gov.nsf.common.model.BaseError;
+import gov.nsf.inboxservice.api.model.DeleteMessagesRequest;
+import gov.nsf.inboxservice.common.util.Constants;
+import gov.nsf.inboxservice.common.util.TestUtils;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * JUnit tests for DeleteMessagesValidator class
+ */
+public class DeleteMessagesValidatorTest {
+
+    /**
+     * Validates the happy path behavior, invalid IDs are left to the per ID outcomes
+     *
+     * Expects that no exceptions are thrown
+     * @throws Exception
+     */
+    @Test
+    public void validateRequestHappyPath() throws Exception {
+        DeleteMessagesValidator.validateRequest(new DeleteMessagesRequest(Arrays.asList("1", "2", "abc")));
+    }
+
+    /**
+     * Validates the behavior when the msgIds list is empty
+     *
+     * FormValidationException with the appropriate BaseError(s) is expected
+     *
+     * @throws Exception
+     */
+    @Test
+    public void validateRequestEmptyMsgIdsTest() throws Exception {
+        try {
+            DeleteMessagesValidator.validateRequest(new DeleteMessagesRequest(Collections.<String>emptyList()));
+            fail("Expected FormValidationException");
+        } catch(FormValidationException ex){
+            assertEquals(1, ex.getValidationErrors().size());
+            TestUtils.assertContains(ex.getValidationErrors(),
+                    new BaseError(Constants.REQUEST_MSG_IDS_FIELD, Constants.MISSING_NULL_EMPTY_FIELD + Constants.REQUEST_MSG_IDS_FIELD));
+        }
+    }
+
+    /**
+     * Validates the behavior when the msgIds list is missing
+     *
+     * FormValidationException with the appropriate BaseError(s) is expected
+     *
+     * @throws Exception
+     */
+    @Test
+    public void validateRequestNullMsgIdsTest() throws Exception {
+        try {
+            DeleteMessagesValidator.validateRequest(new DeleteMessagesRequest());
+            fail("Expected FormValidationException");
+        } catch(FormValidationException ex){
+            assertEquals(1, ex.getValidationErrors().size());
+        }
+    }
+
+    /**
+     * Validates the behavior when the request carries more than DELETE_MESSAGES_MAX_IDS message IDs
+     *
+     * FormValidationException with the appropriate BaseError(s) is expected
+     *
+     * @throws Exception
+     */
+    @Test
+    public void validateRequestTooManyMsgIdsTest() throws Exception {
+        List<String> msgIds = new ArrayList<String>();
+        for( int i = 0; i <= Constants.DELETE_MESSAGES_MAX_IDS; i++ ){
+            msgIds.add(String.valueOf(i + 1));
+        }
+
+        try {
+            DeleteMessagesValidator.validateRequest(new DeleteMessagesRequest(msgIds));
+            fail("Expected FormValidationException");
+        } catch(FormValidationException ex){
+            assertEquals(1, ex.getValidationErrors().size());
+            TestUtils.assertContains(ex.getValidationErrors(),
+                    new BaseError(Constants.REQUEST_MSG_IDS_FIELD, Constants.TOO_MANY_MSG_IDS + Constants.DELETE_MESSAGES_MAX_IDS));
+        }
+    }
+}
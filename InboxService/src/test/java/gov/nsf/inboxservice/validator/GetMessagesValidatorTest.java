@@ -4,8 +4,11 @@ import gov.nsf.common.exception.FormValidationException;
 import gov.nsf.common.model.BaseError;
 import gov.nsf.inboxservice.common.util.Constants;
 import gov.nsf.inboxservice.common.util.TestUtils;
+import gov.nsf.inboxservice.dao.MessageCursor;
 import org.junit.Test;
 
+import java.sql.Timestamp;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
@@ -102,4 +105,59 @@ public class GetMessagesValidatorTest {
                     new BaseError(Constants.MSG_LAN_ID_FIELD, Constants.INVALID_LAN_ID + Constants.MSG_LAN_ID_FIELD));
         }
     }
+
+    /**
+     * Validates the happy path behavior when the paging parameters are valid or absent
+     *
+     * Expects that no exceptions are thrown
+     * @throws Exception
+     */
+    @Test
+    public void validatePagedRequestHappyPath() throws Exception {
+        GetMessagesValidator.validateRequest("test", null, null);
+        GetMessagesValidator.validateRequest("test", "1", null);
+        GetMessagesValidator.validateRequest("test", String.valueOf(Constants.MAX_PAGE_LIMIT),
+                new MessageCursor(Timestamp.valueOf("2017-01-01 23:30:32.0"), 1).encode());
+    }
+
+    /**
+     * Validates the behavior when the passed page limit is out of range or not a number
+     *
+     * FormValidationException with the appropriate BaseError(s) is expected
+     *
+     * @throws Exception
+     */
+    @Test
+    public void validatePagedRequestInvalidLimitTest() throws Exception {
+        for( String limit : new String[]{"0", "-1", "abc", String.valueOf(Constants.MAX_PAGE_LIMIT + 1), "99999999999"} ){
+            try {
+                GetMessagesValidator.validateRequest("test", limit, null);
+                fail("Expected FormValidationException for limit " + limit);
+            } catch(FormValidationException ex){
+                assertEquals(1, ex.getValidationErrors().size());
+                TestUtils.assertContains(ex.getValidationErrors(),
+                        new BaseError(Constants.PAGE_LIMIT_FIELD, Constants.INVALID_PAGE_LIMIT + Constants.PAGE_LIMIT_FIELD));
+            }
+        }
+    }
+
+    /**
+     * Validates the behavior when the passed cursor and lanId are invalid
+     *
+     * FormValidationException with the appropriate BaseError(s) is expected
+     *
+     * @throws Exception
+     */
+    @Test
+    public void validatePagedRequestInvalidCursorAndLanIdTest() throws Exception {
+        try {
+            GetMessagesValidator.validateRequest("", "10", "garbage");
+            fail("Expected FormValidationException");
+        } catch(FormValidationException ex){
+            assertEquals(2, ex.getValidationErrors().size());
+            TestUtils.assertContains(ex.getValidationErrors(),
+                    new BaseError(Constants.MSG_LAN_ID_FIELD, Constants.INVALID_LAN_ID + Constants.MSG_LAN_ID_FIELD),
+                    new BaseError(Constants.PAGE_AFTER_FIELD, Constants.INVALID_PAGE_CURSOR + Constants.PAGE_AFTER_FIELD));
+        }
+    }
 }
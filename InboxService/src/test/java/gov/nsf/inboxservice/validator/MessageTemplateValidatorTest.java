@@ -0,0 +1,162 @@
+package gov.nsf.inboxservice.validator;
+
+import gov.nsf.common.exception.FormValidationException;
+import gov.nsf.common.model.BaseError;
+import gov.nsf.inboxservice.api.model.CreateTemplatedMessageRequest;
+import gov.nsf.inboxservice.api.model.Message;
+import gov.nsf.inboxservice.api.model.MessagePriority;
+import gov.nsf.inboxservice.api.model.MessageType;
+import gov.nsf.inboxservice.common.util.Constants;
+import gov.nsf.inboxservice.common.util.TestUtils;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static junit.framework.TestCase.fail;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JUnit tests for MessageTemplateValidator
+ */
+public class MessageTemplateValidatorTest {
+
+    /**
+     * Returns an Information template with all valid fields
+     *
+     * @return Message
+     */
+    private Message getValidTemplate() {
+        Message template = new Message();
+        template.setSummary("Your proposal {id} is due {date}");
+        template.setPriority(MessagePriority.High);
+        template.setType(MessageType.Information);
+        template.setInternal(false);
+        template.setLastUpdtUser("ProposalSvc");
+        return template;
+    }
+
+    private CreateTemplatedMessageRequest getValidRequest() {
+        Map<String, Map<String, String>> recipients = new HashMap<String, Map<String, String>>();
+        recipients.put("test", Collections.singletonMap("id", "1"));
+        recipients.put("test2", Collections.singletonMap("id", "2"));
+        return new CreateTemplatedMessageRequest("proposal-due", recipients, "2090-06-06 11:00:00.0");
+    }
+
+    /**
+     * Tests that a template without an expiration date is valid
+     *
+     * @throws Exception
+     */
+    @Test
+    public void validTemplateTest() throws Exception {
+        MessageTemplateValidator.validateTemplate("proposal-due", getValidTemplate());
+        MessageTemplateValidator.validateTemplate("Proposal_Due.v2", getValidTemplate());
+    }
+
+    /**
+     * Tests that the template is validated as a message and the template ID is checked
+     */
+    @Test
+    public void invalidTemplateTest() {
+        Message template = getValidTemplate();
+        template.setSummary(null);
+        template.setType(MessageType.Task);
+        try {
+            MessageTemplateValidator.validateTemplate("proposal due", template);
+            fail("Expected FormValidationException");
+        } catch (FormValidationException ex) {
+            TestUtils.assertContains(ex.getValidationErrors(),
+                    new BaseError(Constants.REQUEST_TEMPLATE_ID_FIELD, Constants.INVALID_NAME_CHARACTERS + Constants.REQUEST_TEMPLATE_ID_FIELD),
+                    new BaseError(Constants.MSG_SUMMARY_FIELD, Constants.MISSING_NULL_EMPTY_FIELD + Constants.MSG_SUMMARY_FIELD),
+                    new BaseError(Constants.MSG_ACTION_LINK_FIELD, Constants.MISSING_NULL_EMPTY_FIELD + Constants.MSG_ACTION_LINK_FIELD),
+                    new BaseError(Constants.MSG_ACTION_LABEL_FIELD, Constants.MISSING_NULL_EMPTY_FIELD + Constants.MSG_ACTION_LABEL_FIELD));
+            assertEquals(4, ex.getValidationErrors().size());
+        }
+    }
+
+    /**
+     * Tests that missing and over-long template IDs are rejected
+     */
+    @Test
+    public void invalidTemplateIdTest() {
+        assertEquals(Collections.singletonList(new BaseError(Constants.REQUEST_TEMPLATE_ID_FIELD, Constants.MISSING_NULL_EMPTY_FIELD + Constants.REQUEST_TEMPLATE_ID_FIELD)),
+                MessageTemplateValidator.validateTemplateId(""));
+        assertEquals(Collections.singletonList(new BaseError(Constants.REQUEST_TEMPLATE_ID_FIELD, Constants.FIELD_LENGTH_TOO_LONG + Constants.TEMPLATE_ID_MAX_LENGTH)),
+                MessageTemplateValidator.validateTemplateId(TestUtils.generateStringWithLength(Constants.TEMPLATE_ID_MAX_LENGTH + 1)));
+        assertTrue(MessageTemplateValidator.validateTemplateId(TestUtils.generateStringWithLength(Constants.TEMPLATE_ID_MAX_LENGTH)).isEmpty());
+    }
+
+    /**
+     * Tests that a valid request passes and its expiration date is converted to Sybase format
+     *
+     * @throws Exception
+     */
+    @Test
+    public void validRequestTest() throws Exception {
+        CreateTemplatedMessageRequest request = getValidRequest();
+
+        MessageTemplateValidator.validateRequest(request);
+
+        assertTrue(request.getExpirationDate().startsWith("2090-06-06"));
+    }
+
+    /**
+     * Tests that a request without an expiration date passes, Task templates do not need one
+     *
+     * @throws Exception
+     */
+    @Test
+    public void requestWithoutExpirationDateTest() throws Exception {
+        CreateTemplatedMessageRequest request = getValidRequest();
+        request.setExpirationDate(null);
+
+        MessageTemplateValidator.validateRequest(request);
+    }
+
+    /**
+     * Tests that missing recipients, invalid lan IDs and past expiration dates are rejected
+     */
+    @Test
+    public void invalidRequestTest() {
+        CreateTemplatedMessageRequest request = getValidRequest();
+        request.setRecipients(null);
+        request.setExpirationDate("2000-01-01 00:00:00.0");
+        try {
+            MessageTemplateValidator.validateRequest(request);
+            fail("Expected FormValidationException");
+        } catch (FormValidationException ex) {
+            TestUtils.assertContains(ex.getValidationErrors(),
+                    new BaseError(Constants.REQUEST_RECIPIENTS_FIELD, Constants.MISSING_NULL_EMPTY_FIELD + Constants.REQUEST_RECIPIENTS_FIELD),
+                    new BaseError(Constants.MSG_EXP_DATE_FIELD, Constants.EXP_DATE_LESS_THAN_CURRENT_DATE));
+        }
+
+        request = getValidRequest();
+        request.getRecipients().put("not-valid", Collections.<String, String>emptyMap());
+        try {
+            MessageTemplateValidator.validateRequest(request);
+            fail("Expected FormValidationException");
+        } catch (FormValidationException ex) {
+            assertEquals(Collections.singletonList(new BaseError(Constants.REQUEST_RECIPIENTS_FIELD, Constants.LAN_IDS_CONTAINS_INVALID_LAN_ID)),
+                    ex.getValidationErrors());
+        }
+    }
+
+    /**
+     * Tests that the length limits are checked against the rendered message
+     */
+    @Test
+    public void validateRenderedMessageTest() {
+        Message message = TestUtils.getMockMessageForUser("test");
+        assertTrue(MessageTemplateValidator.validateRenderedMessage(message).isEmpty());
+
+        message.setSummary("<b>" + TestUtils.generateStringWithLength(Constants.MESSAGE_PLAIN_TEXT_MAX_LENGTH + 1) + "</b>");
+        message.setType(MessageType.Task);
+        message.setActionLabel(TestUtils.generateStringWithLength(Constants.MSG_ACTION_LABEL_MAX_LEGNTH + 1));
+        TestUtils.assertContains(MessageTemplateValidator.validateRenderedMessage(message),
+                new BaseError("recipients.test.summary", Constants.FIELD_LENGTH_TOO_LONG + Constants.MESSAGE_PLAIN_TEXT_MAX_LENGTH),
+                new BaseError("recipients.test.actionLabel", Constants.FIELD_LENGTH_TOO_LONG + Constants.MSG_ACTION_LABEL_MAX_LEGNTH));
+    }
+}
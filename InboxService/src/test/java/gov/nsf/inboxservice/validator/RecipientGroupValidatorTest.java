@@ -0,0 +1,99 @@
+package gov.nsf.inboxservice.validator;
+
+import gov.nsf.common.exception.FormValidationException;
+import gov.nsf.common.model.BaseError;
+import gov.nsf.inboxservice.api.model.CreateMessageRequest;
+import gov.nsf.inboxservice.api.model.UpdateRecipientGroupRequest;
+import gov.nsf.inboxservice.common.util.Constants;
+import gov.nsf.inboxservice.common.util.TestUtils;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static junit.framework.TestCase.fail;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * JUnit tests for RecipientGroupValidator
+ */
+public class RecipientGroupValidatorTest {
+
+    /**
+     * Tests that a request only adding or only removing members is valid
+     *
+     * @throws Exception
+     */
+    @Test
+    public void validRequestTest() throws Exception {
+        RecipientGroupValidator.validateRequest("bio-division", new UpdateRecipientGroupRequest(Arrays.asList("user1", "user2"), null, null, "DivisionSvc"));
+        RecipientGroupValidator.validateRequest("Bio_Division.v2", new UpdateRecipientGroupRequest(null, Collections.singletonList("user1"), 0, "DivisionSvc"));
+    }
+
+    /**
+     * Tests that the group name, deltas, version and user are checked
+     */
+    @Test
+    public void invalidRequestTest() {
+        try {
+            RecipientGroupValidator.validateRequest("bio division", new UpdateRecipientGroupRequest(Collections.<String>emptyList(), null, -1, null));
+            fail("Expected FormValidationException");
+        } catch (FormValidationException ex) {
+            TestUtils.assertContains(ex.getValidationErrors(),
+                    new BaseError(Constants.REQUEST_GROUP_NAME_FIELD, Constants.INVALID_NAME_CHARACTERS + Constants.REQUEST_GROUP_NAME_FIELD),
+                    new BaseError(Constants.REQUEST_ADD_FIELD, Constants.MISSING_GROUP_DELTA + Constants.REQUEST_ADD_FIELD),
+                    new BaseError(Constants.REQUEST_VERSION_FIELD, Constants.INVALID_GROUP_VERSION + Constants.REQUEST_VERSION_FIELD),
+                    new BaseError(Constants.MSG_LAST_UPDT_USER_FIELD, Constants.MISSING_NULL_EMPTY_FIELD + Constants.MSG_LAST_UPDT_USER_FIELD));
+            assertEquals(4, ex.getValidationErrors().size());
+        }
+    }
+
+    /**
+     * Tests that invalid lan IDs are reported for the list they were sent in
+     */
+    @Test
+    public void invalidMembersTest() {
+        try {
+            RecipientGroupValidator.validateRequest("bio-division", new UpdateRecipientGroupRequest(Collections.singletonList("user1"),
+                    Collections.singletonList("toolonglanid"), null, "DivisionSvc"));
+            fail("Expected FormValidationException");
+        } catch (FormValidationException ex) {
+            assertEquals(Collections.singletonList(new BaseError(Constants.REQUEST_REMOVE_FIELD, Constants.LAN_IDS_CONTAINS_INVALID_LAN_ID)),
+                    ex.getValidationErrors());
+        }
+    }
+
+    /**
+     * Tests that a group name longer than the column is rejected
+     */
+    @Test
+    public void groupNameTooLongTest() {
+        try {
+            RecipientGroupValidator.validateGroupNameRequest(TestUtils.generateStringWithLength(Constants.GROUP_NAME_MAX_LENGTH + 1));
+            fail("Expected FormValidationException");
+        } catch (FormValidationException ex) {
+            assertEquals(Collections.singletonList(new BaseError(Constants.REQUEST_GROUP_NAME_FIELD, Constants.FIELD_LENGTH_TOO_LONG + Constants.GROUP_NAME_MAX_LENGTH)),
+                    ex.getValidationErrors());
+        }
+    }
+
+    /**
+     * Tests that a create request naming groups may leave lanIds empty, and that the group names are checked
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createRequestWithGroupsTest() throws Exception {
+        CreateMessageRequest request = new CreateMessageRequest(TestUtils.getMockMessageForUser("test"), null, Collections.singletonList("bio-division"), null);
+        CreateMessageValidator.validateRequest(request);
+
+        request.setGroups(Arrays.asList("bio-division", "geo division"));
+        try {
+            CreateMessageValidator.validateRequest(request);
+            fail("Expected FormValidationException");
+        } catch (FormValidationException ex) {
+            assertEquals(Collections.singletonList(new BaseError(Constants.REQUEST_GROUPS_FIELD, Constants.INVALID_NAME_CHARACTERS + Constants.REQUEST_GROUPS_FIELD)),
+                    ex.getValidationErrors());
+        }
+    }
+}
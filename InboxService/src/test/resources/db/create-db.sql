@@ -6,7 +6,7 @@ CREATE TABLE
 (
     inbx_msg_id NUMERIC(10, 0) IDENTITY,
     user_lan_id CHAR(8)       NOT NULL,
-    smry        VARCHAR(1500) NOT NULL,
+    smry        VARCHAR(1500) NULL,
     cre_date    DATETIME      NOT NULL,
     prty        NUMERIC(2, 0) NOT NULL,
     type        CHAR(1)       NOT NULL,
@@ -14,14 +14,157 @@ CREATE TABLE
     actn_lbl   VARCHAR(1000) NULL,
     innl        BIT           NOT NULL,
     exp_date DATETIME      NULL,
+    active_until DATETIME  NULL,
+    cntnt_hash  BINARY(32)    NULL,
+    cntnt_id    NUMERIC(10, 0) NULL,
+    btch_tkn    BINARY(16)    NULL,
     last_updt_user    varchar(1000) NOT NULL,
     last_updt_pgm     varchar(1000) NOT NULL,
     last_updt_tmsp    varchar(1000) NOT NULL
 );
 
+CREATE INDEX inbx_msg_user_cre_date_idx ON inbx_msg (user_lan_id, cre_date, inbx_msg_id);
+CREATE INDEX inbx_msg_user_active_until_idx ON inbx_msg (user_lan_id, active_until);
+CREATE INDEX inbx_msg_active_until_idx ON inbx_msg (active_until);
+CREATE INDEX inbx_msg_cntnt_hash_idx ON inbx_msg (cntnt_hash, user_lan_id);
+CREATE INDEX inbx_msg_cntnt_id_idx ON inbx_msg (cntnt_id);
+CREATE INDEX inbx_msg_btch_tkn_idx ON inbx_msg (btch_tkn);
+
+CREATE TABLE
+    inbx_lock
+(
+    lock_name   VARCHAR(64)  NOT NULL PRIMARY KEY,
+    ownr        VARCHAR(255) NULL,
+    lease_until DATETIME     NULL
+);
+
+INSERT INTO inbx_lock (lock_name, ownr, lease_until) VALUES ('EXPIRED_MSG_SWEEPER', null, null);
+
+CREATE INDEX inbx_msg_type_cre_date_idx ON inbx_msg (type, cre_date);
+
+CREATE TABLE
+    inbx_msg_arch
+(
+    inbx_msg_id NUMERIC(10, 0) NOT NULL PRIMARY KEY,
+    user_lan_id CHAR(8)       NOT NULL,
+    smry        VARCHAR(1500) NOT NULL,
+    cre_date    DATETIME      NOT NULL,
+    prty        NUMERIC(2, 0) NOT NULL,
+    type        CHAR(1)       NOT NULL,
+    actn_link   VARCHAR(1000) NULL,
+    actn_lbl   VARCHAR(1000) NULL,
+    innl        BIT           NOT NULL,
+    exp_date DATETIME      NULL,
+    active_until DATETIME  NULL,
+    last_updt_user    varchar(1000) NOT NULL,
+    last_updt_pgm     varchar(1000) NOT NULL,
+    last_updt_tmsp    varchar(1000) NOT NULL,
+    arch_month  INT           NOT NULL
+);
+
+CREATE INDEX inbx_msg_arch_user_cre_date_idx ON inbx_msg_arch (user_lan_id, cre_date, inbx_msg_id);
+
+CREATE TABLE
+    inbx_msg_cnt
+(
+    user_lan_id  CHAR(8)       NOT NULL,
+    type         CHAR(1)       NOT NULL,
+    prty         NUMERIC(2, 0) NOT NULL,
+    active_until DATETIME      NOT NULL,
+    msg_cnt      INT           NOT NULL,
+    PRIMARY KEY (user_lan_id, type, prty, active_until)
+);
+
+CREATE INDEX inbx_msg_cnt_active_until_idx ON inbx_msg_cnt (active_until);
+
+CREATE TABLE
+    inbx_cache_invl
+(
+    inbx_cache_invl_id NUMERIC(10, 0) IDENTITY,
+    user_lan_id        CHAR(8)  NOT NULL,
+    cre_date           DATETIME NOT NULL
+);
+
+CREATE INDEX inbx_cache_invl_cre_date_idx ON inbx_cache_invl (cre_date);
 
+CREATE TABLE
+    inbx_idem_key
+(
+    idem_key VARCHAR(64) NOT NULL PRIMARY KEY,
+    req_hash CHAR(64)    NOT NULL,
+    rsp_body TEXT        NULL,
+    cre_date DATETIME    NOT NULL
+);
 
- 
+CREATE INDEX inbx_idem_key_cre_date_idx ON inbx_idem_key (cre_date);
 
+CREATE TABLE
+    inbx_msg_cntnt
+(
+    cntnt_id       NUMERIC(10, 0) IDENTITY PRIMARY KEY,
+    smry           VARCHAR(1500)  NOT NULL,
+    actn_link      VARCHAR(1000)  NULL,
+    actn_lbl       VARCHAR(1000)  NULL,
+    last_updt_tmsp DATETIME       NOT NULL
+);
 
+CREATE TABLE
+    inbx_msg_tmpl
+(
+    tmpl_id        VARCHAR(64)   NOT NULL PRIMARY KEY,
+    smry           VARCHAR(1500) NOT NULL,
+    prty           NUMERIC(2, 0) NOT NULL,
+    type           CHAR(1)       NOT NULL,
+    actn_link      VARCHAR(1000) NULL,
+    actn_lbl       VARCHAR(1000) NULL,
+    innl           BIT           NOT NULL,
+    last_updt_user VARCHAR(1000) NOT NULL,
+    last_updt_pgm  VARCHAR(1000) NOT NULL,
+    last_updt_tmsp DATETIME      NOT NULL
+);
+
+CREATE TABLE
+    inbx_rcpt_grp
+(
+    grp_name       VARCHAR(64)   NOT NULL PRIMARY KEY,
+    vrsn           INT           NOT NULL,
+    last_updt_user VARCHAR(1000) NOT NULL,
+    last_updt_pgm  VARCHAR(1000) NOT NULL,
+    last_updt_tmsp DATETIME      NOT NULL
+);
+
+CREATE TABLE
+    inbx_rcpt_grp_mbr
+(
+    grp_name    VARCHAR(64) NOT NULL,
+    user_lan_id CHAR(8)     NOT NULL,
+    PRIMARY KEY (grp_name, user_lan_id)
+);
+
+CREATE TABLE
+    inbx_bcst
+(
+    bcst_id        NUMERIC(10, 0) IDENTITY PRIMARY KEY,
+    smry           VARCHAR(1500)  NOT NULL,
+    cre_date       DATETIME       NOT NULL,
+    prty           NUMERIC(2, 0)  NOT NULL,
+    type           CHAR(1)        NOT NULL,
+    actn_link      VARCHAR(1000)  NULL,
+    actn_lbl       VARCHAR(1000)  NULL,
+    innl           BIT            NOT NULL,
+    exp_date       DATETIME       NULL,
+    active_until   DATETIME       NOT NULL,
+    last_updt_user VARCHAR(1000)  NOT NULL,
+    last_updt_pgm  VARCHAR(1000)  NOT NULL,
+    last_updt_tmsp DATETIME       NOT NULL
+);
+
+CREATE TABLE
+    inbx_bcst_dsms
+(
+    user_lan_id CHAR(8)        NOT NULL,
+    bcst_id     NUMERIC(10, 0) NOT NULL,
+    PRIMARY KEY (user_lan_id, bcst_id)
+);
 
+CREATE INDEX inbx_bcst_dsms_bcst_idx ON inbx_bcst_dsms (bcst_id);
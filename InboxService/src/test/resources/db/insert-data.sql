@@ -1,23 +1,35 @@
 INSERT INTO dbo.inbx_msg
-(inbx_msg_id, user_lan_id, smry, cre_date, prty, type, actn_link, actn_lbl, innl, exp_date, last_updt_pgm, last_updt_user, last_updt_tmsp)
-VALUES   (1, 'test', 'Test Approval is Due', '2017-01-01 23:30:32', 0, 'T', 'http://lol.com', 'lol', 1, '2017-01-01 23:30:32', 'MyNSF','MeetingSvc', '2017-01-01 23:30:32');
+(inbx_msg_id, user_lan_id, smry, cre_date, prty, type, actn_link, actn_lbl, innl, exp_date, active_until, last_updt_pgm, last_updt_user, last_updt_tmsp)
+VALUES   (1, 'test', 'Test Approval is Due', '2017-01-01 23:30:32', 0, 'T', 'http://lol.com', 'lol', 1, '2017-01-01 23:30:32', '9999-12-31 23:59:59', 'MyNSF','MeetingSvc', '2017-01-01 23:30:32');
 
 
 INSERT INTO dbo.inbx_msg
-(inbx_msg_id, user_lan_id, smry, cre_date, prty, type, actn_link, actn_lbl, innl, exp_date, last_updt_pgm, last_updt_user, last_updt_tmsp)
-VALUES   (2, 'test', 'Test Notification', '2017-01-01 23:30:32', 0, 'I', null, null, 1, '2017-01-01 23:30:32', 'MyNSF','MeetingSvc', '2017-01-01 23:30:32');
+(inbx_msg_id, user_lan_id, smry, cre_date, prty, type, actn_link, actn_lbl, innl, exp_date, active_until, last_updt_pgm, last_updt_user, last_updt_tmsp)
+VALUES   (2, 'test', 'Test Notification', '2017-01-01 23:30:32', 0, 'I', null, null, 1, '2017-01-01 23:30:32', '2017-01-01 23:30:32', 'MyNSF','MeetingSvc', '2017-01-01 23:30:32');
 
 
 INSERT INTO dbo.inbx_msg
-(inbx_msg_id, user_lan_id, smry, cre_date, prty, type, actn_link, actn_lbl, innl, exp_date, last_updt_pgm, last_updt_user, last_updt_tmsp)
-VALUES   (3, 'test', 'Test Task is Due', '2017-01-01 23:30:32', 0, 'T', 'http://lol.com', 'lol', 1,'2017-01-01 23:30:32', 'MyNSF','MeetingSvc', '2017-01-01 23:30:32');
+(inbx_msg_id, user_lan_id, smry, cre_date, prty, type, actn_link, actn_lbl, innl, exp_date, active_until, last_updt_pgm, last_updt_user, last_updt_tmsp)
+VALUES   (3, 'test', 'Test Task is Due', '2017-01-01 23:30:32', 0, 'T', 'http://lol.com', 'lol', 1,'2017-01-01 23:30:32', '9999-12-31 23:59:59', 'MyNSF','MeetingSvc', '2017-01-01 23:30:32');
 
 
-INSERT INTO dbo.inbx_msg(inbx_msg_id, user_lan_id, smry, cre_date, prty, type, actn_link, actn_lbl, innl, exp_date, last_updt_pgm, last_updt_user, last_updt_tmsp)
-VALUES   (4, 'test', 'Test Notification - part 2', '2017-01-01 23:30:32', 0, 'I', null, null, 1, '2017-03-01 23:30:32', 'MyNSF','MeetingSvc', '2017-01-01 23:30:32');
+INSERT INTO dbo.inbx_msg(inbx_msg_id, user_lan_id, smry, cre_date, prty, type, actn_link, actn_lbl, innl, exp_date, active_until, last_updt_pgm, last_updt_user, last_updt_tmsp)
+VALUES   (4, 'test', 'Test Notification - part 2', '2017-01-01 23:30:32', 0, 'I', null, null, 1, '2017-03-01 23:30:32', '2017-03-01 23:30:32', 'MyNSF','MeetingSvc', '2017-01-01 23:30:32');
 
 
-INSERT INTO dbo.inbx_msg(inbx_msg_id, user_lan_id, smry, cre_date, prty, type, actn_link, actn_lbl, innl, exp_date, last_updt_pgm, last_updt_user, last_updt_tmsp)
-VALUES   (5, 'test', 'Test Notification - part 2', '2017-01-01 23:30:32', 0, 'T', 'http://lol.com', 'lol', 1, '2017-03-01 23:30:32', 'MyNSF','MeetingSvc', '2017-01-01 23:30:32');
+INSERT INTO dbo.inbx_msg(inbx_msg_id, user_lan_id, smry, cre_date, prty, type, actn_link, actn_lbl, innl, exp_date, active_until, last_updt_pgm, last_updt_user, last_updt_tmsp)
+VALUES   (5, 'test', 'Test Notification - part 2', '2017-01-01 23:30:32', 0, 'T', 'http://lol.com', 'lol', 1, '2017-03-01 23:30:32', '9999-12-31 23:59:59', 'MyNSF','MeetingSvc', '2017-01-01 23:30:32');
+
+
+INSERT INTO dbo.inbx_msg_cnt(user_lan_id, type, prty, active_until, msg_cnt)
+VALUES   ('test', 'T', 0, '9999-12-31 00:00:00', 3);
+
+
+INSERT INTO dbo.inbx_msg_cnt(user_lan_id, type, prty, active_until, msg_cnt)
+VALUES   ('test', 'I', 0, '2017-01-01 00:00:00', 1);
+
+
+INSERT INTO dbo.inbx_msg_cnt(user_lan_id, type, prty, active_until, msg_cnt)
+VALUES   ('test', 'I', 0, '2017-03-01 00:00:00', 1);
 
 